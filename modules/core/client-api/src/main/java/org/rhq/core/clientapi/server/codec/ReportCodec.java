@@ -0,0 +1,369 @@
+ /*
+  * RHQ Management Platform
+  * Copyright (C) 2005-2014 Red Hat, Inc.
+  * All rights reserved.
+  *
+  * This program is free software; you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License, version 2, as
+  * published by the Free Software Foundation, and/or the GNU Lesser
+  * General Public License, version 2.1, also as published by the Free
+  * Software Foundation.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  * GNU General Public License and the GNU Lesser General Public License
+  * for more details.
+  *
+  * You should have received a copy of the GNU General Public License
+  * and the GNU Lesser General Public License along with this program;
+  * if not, write to the Free Software Foundation, Inc.,
+  * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+  */
+package org.rhq.core.clientapi.server.codec;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.rhq.core.communications.command.codec.ParameterCodec;
+import org.rhq.core.domain.discovery.AvailabilityReport;
+import org.rhq.core.domain.event.Event;
+import org.rhq.core.domain.event.EventDefinition;
+import org.rhq.core.domain.event.EventSeverity;
+import org.rhq.core.domain.event.EventSource;
+import org.rhq.core.domain.event.transfer.EventReport;
+import org.rhq.core.domain.measurement.AvailabilityType;
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.MeasurementDataPK;
+import org.rhq.core.domain.measurement.MeasurementDataTrait;
+import org.rhq.core.domain.measurement.MeasurementReport;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.core.domain.measurement.calltime.CallTimeData;
+import org.rhq.core.domain.measurement.calltime.CallTimeDataValue;
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceType;
+
+/**
+ * Encodes the measurement, availability and event reports the agent sends to the server in a compact binary format,
+ * so the server does not have to go through Java serialization of the report object graphs. Schedule and resource ids
+ * are written as variable length quantities, timestamps as the difference to the timestamp before and all strings
+ * (metric names, trait values, call destinations, event sources and details, enum names) through a dictionary.
+ * Numeric values that are whole numbers are written as integers.
+ *
+ * <p>The format carries only what the server uses from a report; the transient state the plugin container keeps while
+ * building a report is not part of it. Inventory reports and all other parameters are left to Java serialization.</p>
+ *
+ * <p>The first byte of an encoded report identifies the report type. If the format changes, {@link #NAME} must change
+ * with it - agents and servers only use the codec if both sides know it by the same name.</p>
+ */
+public class ReportCodec implements ParameterCodec {
+    /**
+     * The name of the codec, which includes the version of its format.
+     */
+    public static final String NAME = "rhq-report-1";
+
+    private static final int MEASUREMENT_REPORT = 'M';
+    private static final int AVAILABILITY_REPORT = 'A';
+    private static final int EVENT_REPORT = 'E';
+
+    // the kind of a numeric value, kept in the low bits of the schedule id
+    private static final int NUMERIC_NULL = 0;
+    private static final int NUMERIC_LONG = 1;
+    private static final int NUMERIC_DOUBLE = 2;
+
+    private static final long NEGATIVE_ZERO_BITS = Double.doubleToRawLongBits(-0.0d);
+    private static final double MAX_EXACT_LONG = 9007199254740992.0d; // 2^53
+
+    private static final int AVAILABILITY_CHANGES_ONLY = 0x01;
+    private static final int AVAILABILITY_ENABLEMENT = 0x02;
+    private static final int AVAILABILITY_SERVER_SIDE = 0x04;
+
+    public String getName() {
+        return NAME;
+    }
+
+    public boolean canEncode(Object parameter) {
+        return (parameter instanceof MeasurementReport) || (parameter instanceof AvailabilityReport)
+            || (parameter instanceof EventReport);
+    }
+
+    public byte[] encode(Object parameter) throws IOException {
+        if (parameter instanceof MeasurementReport) {
+            return encodeMeasurementReport((MeasurementReport) parameter);
+        } else if (parameter instanceof AvailabilityReport) {
+            return encodeAvailabilityReport((AvailabilityReport) parameter);
+        } else if (parameter instanceof EventReport) {
+            return encodeEventReport((EventReport) parameter);
+        }
+        throw new IOException("Cannot encode [" + ((parameter != null) ? parameter.getClass().getName() : null) + "]");
+    }
+
+    public Object decode(byte[] data) throws IOException {
+        try {
+            ReportInput in = new ReportInput(data);
+            Object report;
+            int type = in.readByte();
+            switch (type) {
+            case MEASUREMENT_REPORT:
+                report = decodeMeasurementReport(in);
+                break;
+            case AVAILABILITY_REPORT:
+                report = decodeAvailabilityReport(in);
+                break;
+            case EVENT_REPORT:
+                report = decodeEventReport(in);
+                break;
+            default:
+                throw new IOException("Unknown report type [" + type + "]");
+            }
+            if (!in.isAtEnd()) {
+                throw new IOException("Trailing data after encoded report");
+            }
+            return report;
+        } catch (IOException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            // the domain objects reject some values a well formed report never contains
+            throw new IOException("Cannot decode report: " + e, e);
+        }
+    }
+
+    private byte[] encodeMeasurementReport(MeasurementReport report) throws IOException {
+        // a numeric datum usually takes 4 to 6 bytes, the rest is a rough guess
+        ReportOutput out = new ReportOutput(64 + (int) report.getDataCount() * 8);
+        out.writeByte(MEASUREMENT_REPORT);
+        out.writeVarLong(report.getCollectionTime());
+
+        Set<MeasurementDataNumeric> numerics = report.getNumericData();
+        out.writeVarInt(numerics.size());
+        for (MeasurementDataNumeric numeric : numerics) {
+            long scheduleId = numeric.getScheduleId() & 0xFFFFFFFFL;
+            Double value = numeric.getValue();
+            if (value == null) {
+                out.writeVarLong((scheduleId << 2) | NUMERIC_NULL);
+                out.writeTimestamp(numeric.getTimestamp());
+            } else {
+                double v = value.doubleValue();
+                if (v == Math.rint(v) && Math.abs(v) < MAX_EXACT_LONG
+                    && Double.doubleToRawLongBits(v) != NEGATIVE_ZERO_BITS) {
+                    out.writeVarLong((scheduleId << 2) | NUMERIC_LONG);
+                    out.writeTimestamp(numeric.getTimestamp());
+                    out.writeSignedVarLong((long) v);
+                } else {
+                    out.writeVarLong((scheduleId << 2) | NUMERIC_DOUBLE);
+                    out.writeTimestamp(numeric.getTimestamp());
+                    out.writeDouble(v);
+                }
+            }
+            out.writeString(numeric.getName());
+        }
+
+        Set<MeasurementDataTrait> traits = report.getTraitData();
+        out.writeVarInt(traits.size());
+        for (MeasurementDataTrait trait : traits) {
+            out.writeVarInt(trait.getScheduleId());
+            out.writeTimestamp(trait.getTimestamp());
+            out.writeString(trait.getName());
+            out.writeString(trait.getValue());
+        }
+
+        Set<CallTimeData> callTimes = report.getCallTimeData();
+        out.writeVarInt(callTimes.size());
+        for (CallTimeData callTime : callTimes) {
+            Map<String, CallTimeDataValue> values = callTime.getValues();
+            out.writeVarInt(callTime.getScheduleId());
+            out.writeVarInt(values.size());
+            for (Map.Entry<String, CallTimeDataValue> entry : values.entrySet()) {
+                CallTimeDataValue value = entry.getValue();
+                if (value.getCount() <= 0L) {
+                    // CallTimeData cannot be rebuilt with such a value, leave the report to serialization
+                    throw new IOException("Call-time value without calls for [" + entry.getKey() + "]");
+                }
+                out.writeString(entry.getKey());
+                out.writeTimestamp(value.getBeginTime());
+                out.writeVarLong(value.getEndTime() - value.getBeginTime());
+                out.writeDouble(value.getMinimum());
+                out.writeDouble(value.getMaximum());
+                out.writeDouble(value.getTotal());
+                out.writeVarLong(value.getCount());
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    private MeasurementReport decodeMeasurementReport(ReportInput in) throws IOException {
+        MeasurementReport report = new MeasurementReport();
+        report.setCollectionTime(in.readVarLong());
+
+        int numericCount = in.readVarInt();
+        for (int i = 0; i < numericCount; i++) {
+            long header = in.readVarLong();
+            int scheduleId = (int) (header >>> 2);
+            long timestamp = in.readTimestamp();
+            Double value;
+            switch ((int) (header & 0x03)) {
+            case NUMERIC_NULL:
+                value = null;
+                break;
+            case NUMERIC_LONG:
+                value = Double.valueOf(in.readSignedVarLong());
+                break;
+            case NUMERIC_DOUBLE:
+                value = Double.valueOf(in.readDouble());
+                break;
+            default:
+                throw new IOException("Unknown numeric value kind in [" + header + "]");
+            }
+            MeasurementDataNumeric numeric = new MeasurementDataNumeric(timestamp, scheduleId, value);
+            numeric.setName(in.readString());
+            report.addData(numeric);
+        }
+
+        int traitCount = in.readVarInt();
+        for (int i = 0; i < traitCount; i++) {
+            int scheduleId = in.readVarInt();
+            long timestamp = in.readTimestamp();
+            String name = in.readString();
+            MeasurementDataTrait trait = new MeasurementDataTrait(new MeasurementDataPK(timestamp, scheduleId),
+                in.readString());
+            trait.setName(name);
+            report.addData(trait);
+        }
+
+        int callTimeCount = in.readVarInt();
+        for (int i = 0; i < callTimeCount; i++) {
+            int scheduleId = in.readVarInt();
+            CallTimeData callTime = new CallTimeData(new MeasurementScheduleRequest(scheduleId, null, 0L, true,
+                DataType.CALLTIME));
+            int valueCount = in.readVarInt();
+            for (int j = 0; j < valueCount; j++) {
+                String destination = in.readString();
+                long beginTime = in.readTimestamp();
+                long endTime = beginTime + in.readVarLong();
+                double minimum = in.readDouble();
+                double maximum = in.readDouble();
+                double total = in.readDouble();
+                long count = in.readVarLong();
+                callTime.addAggregatedCallData(destination, new Date(beginTime), new Date(endTime), minimum, maximum,
+                    total, count);
+            }
+            report.addData(callTime);
+        }
+
+        return report;
+    }
+
+    private byte[] encodeAvailabilityReport(AvailabilityReport report) {
+        List<AvailabilityReport.Datum> availabilities = report.getResourceAvailability();
+        ReportOutput out = new ReportOutput(64 + availabilities.size() * 6);
+        out.writeByte(AVAILABILITY_REPORT);
+        out.writeString(report.getAgentName());
+
+        int flags = 0;
+        if (report.isChangesOnlyReport()) {
+            flags |= AVAILABILITY_CHANGES_ONLY;
+        }
+        if (report.isEnablementReport()) {
+            flags |= AVAILABILITY_ENABLEMENT;
+        }
+        if (report.isServerSideReport()) {
+            flags |= AVAILABILITY_SERVER_SIDE;
+        }
+        out.writeByte(flags);
+
+        out.writeVarInt(availabilities.size());
+        for (AvailabilityReport.Datum datum : availabilities) {
+            AvailabilityType type = datum.getAvailabilityType();
+            out.writeVarInt(datum.getResourceId());
+            out.writeString((type != null) ? type.name() : null);
+            out.writeTimestamp(datum.getStartTime());
+        }
+
+        return out.toByteArray();
+    }
+
+    private AvailabilityReport decodeAvailabilityReport(ReportInput in) throws IOException {
+        String agentName = in.readString();
+        int flags = in.readByte();
+
+        AvailabilityReport report = new AvailabilityReport((flags & AVAILABILITY_CHANGES_ONLY) != 0, agentName);
+        report.setEnablementReport((flags & AVAILABILITY_ENABLEMENT) != 0);
+        report.setServerSideReport((flags & AVAILABILITY_SERVER_SIDE) != 0);
+
+        int count = in.readVarInt();
+        for (int i = 0; i < count; i++) {
+            int resourceId = in.readVarInt();
+            String type = in.readString();
+            long startTime = in.readTimestamp();
+            report.addAvailability(new AvailabilityReport.Datum(resourceId, (type != null) ? AvailabilityType
+                .valueOf(type) : null, startTime));
+        }
+
+        return report;
+    }
+
+    private byte[] encodeEventReport(EventReport report) {
+        Map<EventSource, Set<Event>> events = report.getEvents();
+        ReportOutput out = new ReportOutput(1024);
+        out.writeByte(EVENT_REPORT);
+        out.writeVarInt(report.getMaxEventsPerSource());
+        out.writeVarInt(report.getMaxEventsPerReport());
+
+        out.writeVarInt(events.size());
+        for (Map.Entry<EventSource, Set<Event>> entry : events.entrySet()) {
+            EventSource source = entry.getKey();
+            EventDefinition definition = source.getEventDefinition();
+            out.writeString(source.getLocation());
+            out.writeString(definition.getName());
+            out.writeString(definition.getResourceType().getName());
+            out.writeString(definition.getResourceType().getPlugin());
+            out.writeVarInt(source.getResource().getId());
+
+            Set<Event> sourceEvents = entry.getValue();
+            out.writeVarInt(sourceEvents.size());
+            for (Event event : sourceEvents) {
+                out.writeTimestamp(event.getTimestamp());
+                out.writeString(event.getSeverity().name());
+                out.writeString(event.getDetail());
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    private EventReport decodeEventReport(ReportInput in) throws IOException {
+        EventReport report = new EventReport(in.readVarInt(), in.readVarInt());
+        Map<EventSource, Set<Event>> events = report.getEvents();
+
+        int sourceCount = in.readVarInt();
+        for (int i = 0; i < sourceCount; i++) {
+            String location = in.readString();
+            String definitionName = in.readString();
+            String resourceTypeName = in.readString();
+            String plugin = in.readString();
+            int resourceId = in.readVarInt();
+
+            ResourceType resourceType = new ResourceType(resourceTypeName, plugin, null, null);
+            EventSource source = new EventSource(location, new EventDefinition(resourceType, definitionName),
+                new Resource(resourceId));
+
+            // added as they are - the agent already applied the report limits and may have added warnings beyond them
+            int eventCount = in.readVarInt();
+            Set<Event> sourceEvents = new LinkedHashSet<Event>(Math.min(eventCount, 1024) * 2);
+            for (int j = 0; j < eventCount; j++) {
+                long timestamp = in.readTimestamp();
+                EventSeverity severity = EventSeverity.valueOf(in.readString());
+                sourceEvents.add(new Event(definitionName, location, timestamp, severity, in.readString(), source));
+            }
+            events.put(source, sourceEvents);
+        }
+
+        return report;
+    }
+}
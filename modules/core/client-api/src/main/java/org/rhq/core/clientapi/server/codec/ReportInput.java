@@ -0,0 +1,110 @@
+ /*
+  * RHQ Management Platform
+  * Copyright (C) 2005-2014 Red Hat, Inc.
+  * All rights reserved.
+  *
+  * This program is free software; you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License, version 2, as
+  * published by the Free Software Foundation, and/or the GNU Lesser
+  * General Public License, version 2.1, also as published by the Free
+  * Software Foundation.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  * GNU General Public License and the GNU Lesser General Public License
+  * for more details.
+  *
+  * You should have received a copy of the GNU General Public License
+  * and the GNU Lesser General Public License along with this program;
+  * if not, write to the Free Software Foundation, Inc.,
+  * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+  */
+package org.rhq.core.clientapi.server.codec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads what a {@link ReportOutput} wrote.
+ */
+class ReportInput {
+    private final byte[] buffer;
+    private int position;
+    private final List<String> strings = new ArrayList<String>();
+    private long lastTimestamp;
+
+    ReportInput(byte[] buffer) {
+        this.buffer = buffer;
+    }
+
+    int readByte() throws IOException {
+        if (position >= buffer.length) {
+            throw new IOException("Unexpected end of encoded report at byte [" + position + "]");
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    long readVarLong() throws IOException {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length quantity at byte [" + position + "]");
+    }
+
+    int readVarInt() throws IOException {
+        return (int) readVarLong();
+    }
+
+    long readSignedVarLong() throws IOException {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1L);
+    }
+
+    double readDouble() throws IOException {
+        long bits = 0L;
+        for (int i = 0; i < 8; i++) {
+            bits = (bits << 8) | readByte();
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    long readTimestamp() throws IOException {
+        lastTimestamp += readSignedVarLong();
+        return lastTimestamp;
+    }
+
+    String readString() throws IOException {
+        int index = readVarInt();
+        if (index == 0) {
+            return null;
+        }
+
+        int size = strings.size();
+        if (index <= size) {
+            return strings.get(index - 1);
+        }
+        if (index != size + 1) {
+            throw new IOException("Unknown string [" + index + "] at byte [" + position + "]");
+        }
+
+        int length = readVarInt();
+        if (length < 0 || length > buffer.length - position) {
+            throw new IOException("Invalid string length [" + length + "] at byte [" + position + "]");
+        }
+        String value = new String(buffer, position, length, ReportOutput.UTF_8);
+        position += length;
+        strings.add(value);
+        return value;
+    }
+
+    boolean isAtEnd() {
+        return position == buffer.length;
+    }
+}
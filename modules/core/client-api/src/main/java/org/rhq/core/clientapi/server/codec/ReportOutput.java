@@ -0,0 +1,130 @@
+ /*
+  * RHQ Management Platform
+  * Copyright (C) 2005-2014 Red Hat, Inc.
+  * All rights reserved.
+  *
+  * This program is free software; you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License, version 2, as
+  * published by the Free Software Foundation, and/or the GNU Lesser
+  * General Public License, version 2.1, also as published by the Free
+  * Software Foundation.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  * GNU General Public License and the GNU Lesser General Public License
+  * for more details.
+  *
+  * You should have received a copy of the GNU General Public License
+  * and the GNU Lesser General Public License along with this program;
+  * if not, write to the Free Software Foundation, Inc.,
+  * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+  */
+package org.rhq.core.clientapi.server.codec;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The buffer the {@link ReportCodec} writes an encoded report into. Integers are written as variable length
+ * quantities (7 bits per byte, low order group first), timestamps as the zig-zag encoded difference to the timestamp
+ * written before and strings through a dictionary, so that a string that occurs more than once is only written once.
+ */
+class ReportOutput {
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private byte[] buffer;
+    private int count;
+    private final Map<String, Integer> strings = new HashMap<String, Integer>();
+    private long lastTimestamp;
+
+    ReportOutput(int initialSize) {
+        buffer = new byte[Math.max(initialSize, 16)];
+    }
+
+    void writeByte(int b) {
+        ensureCapacity(1);
+        buffer[count++] = (byte) b;
+    }
+
+    /**
+     * Writes the given value as an unsigned variable length quantity.
+     */
+    void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0L) {
+            buffer[count++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[count++] = (byte) value;
+    }
+
+    /**
+     * Writes the given value as an unsigned variable length quantity; negative values take five bytes.
+     */
+    void writeVarInt(int value) {
+        writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Writes the given value zig-zag encoded, so that values close to zero take few bytes no matter their sign.
+     */
+    void writeSignedVarLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    void writeDouble(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        ensureCapacity(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[count++] = (byte) (bits >>> shift);
+        }
+    }
+
+    void writeTimestamp(long timestamp) {
+        writeSignedVarLong(timestamp - lastTimestamp);
+        lastTimestamp = timestamp;
+    }
+
+    /**
+     * Writes 0 for <code>null</code>, the dictionary index plus one for a string that was written before, or the size
+     * of the dictionary plus one followed by the UTF-8 bytes of a string that is new to the dictionary.
+     */
+    void writeString(String value) {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+
+        Integer index = strings.get(value);
+        if (index != null) {
+            writeVarInt(index.intValue() + 1);
+            return;
+        }
+
+        int size = strings.size();
+        strings.put(value, Integer.valueOf(size));
+        writeVarInt(size + 1);
+
+        byte[] bytes = value.getBytes(UTF_8);
+        writeVarInt(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    byte[] toByteArray() {
+        byte[] bytes = new byte[count];
+        System.arraycopy(buffer, 0, bytes, 0, count);
+        return bytes;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (count + needed > buffer.length) {
+            byte[] larger = new byte[Math.max(buffer.length * 2, count + needed)];
+            System.arraycopy(buffer, 0, larger, 0, count);
+            buffer = larger;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+ /*
+  * RHQ Management Platform
+  * Copyright (C) 2005-2014 Red Hat, Inc.
+  * All rights reserved.
+  *
+  * This program is free software; you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License, version 2, as
+  * published by the Free Software Foundation, and/or the GNU Lesser
+  * General Public License, version 2.1, also as published by the Free
+  * Software Foundation.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  * GNU General Public License and the GNU Lesser General Public License
+  * for more details.
+  *
+  * You should have received a copy of the GNU General Public License
+  * and the GNU Lesser General Public License along with this program;
+  * if not, write to the Free Software Foundation, Inc.,
+  * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+  */
+package org.rhq.core.clientapi.server.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Date;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.discovery.AvailabilityReport;
+import org.rhq.core.domain.event.Event;
+import org.rhq.core.domain.event.EventDefinition;
+import org.rhq.core.domain.event.EventSeverity;
+import org.rhq.core.domain.event.EventSource;
+import org.rhq.core.domain.event.transfer.EventReport;
+import org.rhq.core.domain.measurement.AvailabilityType;
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.MeasurementDataTrait;
+import org.rhq.core.domain.measurement.MeasurementReport;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.core.domain.measurement.calltime.CallTimeData;
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceCategory;
+import org.rhq.core.domain.resource.ResourceType;
+
+/**
+ * Compares the size and the encoding and decoding throughput of the {@link ReportCodec} with plain Java serialization,
+ * which is what the reports are sent with when the codec is not negotiated. The reports look like what a busy agent
+ * sends: a measurement report with a few thousand numerics, some traits and call-time data, a full availability report
+ * and an event report of repetitive log entries. These are not run as part of the regular build; run them explicitly
+ * with <code>mvn test -Dtest=ReportCodecPerfTests</code>.
+ */
+public class ReportCodecPerfTests {
+
+    private final Log log = LogFactory.getLog(ReportCodecPerfTests.class);
+
+    private static final int ITERATIONS = 200;
+
+    @Test
+    public void measurementReport() throws Exception {
+        Random random = new Random(42L);
+        long now = System.currentTimeMillis();
+        MeasurementReport report = new MeasurementReport();
+        for (int i = 0; i < 2000; i++) {
+            int scheduleId = 100000 + (i % 500);
+            String name = "metric" + (i % 40);
+            double value = (i % 3 == 0) ? random.nextInt(100000) : random.nextDouble() * 1000.0;
+            long timestamp = now - (i / 500) * 30000L + random.nextInt(50);
+            report.addData(new MeasurementDataNumeric(timestamp, new MeasurementScheduleRequest(scheduleId, name,
+                30000L, true, DataType.MEASUREMENT), value));
+        }
+        for (int i = 0; i < 100; i++) {
+            report.addData(new MeasurementDataTrait(now, new MeasurementScheduleRequest(200000 + i, "version",
+                600000L, true, DataType.TRAIT), "5.0." + (i % 3)));
+        }
+        for (int i = 0; i < 10; i++) {
+            CallTimeData callTime = new CallTimeData(new MeasurementScheduleRequest(300000 + i, "calls", 600000L,
+                true, DataType.CALLTIME));
+            for (int j = 0; j < 20; j++) {
+                for (int k = 0; k < 5; k++) {
+                    callTime.addCallData("/app" + i + "/page" + j + ".jsp", new Date(now - random.nextInt(600000)),
+                        random.nextInt(2000));
+                }
+            }
+            report.addData(callTime);
+        }
+        compare("MeasurementReport", report);
+    }
+
+    @Test
+    public void availabilityReport() throws Exception {
+        long now = System.currentTimeMillis();
+        AvailabilityReport report = new AvailabilityReport(false, "agent-1.example.com");
+        for (int i = 0; i < 1000; i++) {
+            report.addAvailability(new AvailabilityReport.Datum(10000 + i, (i % 50 == 0) ? AvailabilityType.DOWN
+                : AvailabilityType.UP, now + i));
+        }
+        compare("AvailabilityReport", report);
+    }
+
+    @Test
+    public void eventReport() throws Exception {
+        ResourceType type = new ResourceType("JBossAS7 Standalone Server", "JBossAS7", ResourceCategory.SERVER, null);
+        EventDefinition definition = new EventDefinition(type, "logEntry");
+        EventReport report = new EventReport(200, 1000);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            EventSource source = new EventSource("/opt/jboss/standalone/log/server" + i + ".log", definition,
+                new Resource(5000 + i));
+            for (int j = 0; j < 200; j++) {
+                report.addEvent(new Event("logEntry", source.getLocation(), now + j * 10L, (j % 10 == 0)
+                    ? EventSeverity.ERROR : EventSeverity.WARN, "Connection to jdbc:postgresql://db:5432/app failed: "
+                    + (j % 10 == 0 ? "timeout" : "refused"), source), source);
+            }
+        }
+        compare("EventReport", report);
+    }
+
+    private void compare(String name, Object report) throws Exception {
+        ReportCodec codec = new ReportCodec();
+        byte[] encoded = codec.encode(report);
+        byte[] serialized = serialize(report);
+
+        // warm up both before timing them
+        for (int i = 0; i < ITERATIONS / 4; i++) {
+            codec.decode(codec.encode(report));
+            deserialize(serialize(report));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            codec.encode(report);
+        }
+        long encodeTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            codec.decode(encoded);
+        }
+        long decodeTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            serialize(report);
+        }
+        long serializeTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            deserialize(serialized);
+        }
+        long deserializeTime = System.nanoTime() - start;
+
+        log.info(name + ": encoded " + encoded.length + " bytes, serialized " + serialized.length + " bytes; "
+            + ITERATIONS + " encodes took " + (encodeTime / 1000000L) + " ms, decodes "
+            + (decodeTime / 1000000L) + " ms; serializations took " + (serializeTime / 1000000L)
+            + " ms, deserializations " + (deserializeTime / 1000000L) + " ms");
+    }
+
+    private byte[] serialize(Object report) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(report);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private Object deserialize(byte[] data) throws Exception {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+ /*
+  * RHQ Management Platform
+  * Copyright (C) 2005-2014 Red Hat, Inc.
+  * All rights reserved.
+  *
+  * This program is free software; you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License, version 2, as
+  * published by the Free Software Foundation, and/or the GNU Lesser
+  * General Public License, version 2.1, also as published by the Free
+  * Software Foundation.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  * GNU General Public License and the GNU Lesser General Public License
+  * for more details.
+  *
+  * You should have received a copy of the GNU General Public License
+  * and the GNU Lesser General Public License along with this program;
+  * if not, write to the Free Software Foundation, Inc.,
+  * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+  */
+package org.rhq.core.clientapi.server.codec;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.discovery.AvailabilityReport;
+import org.rhq.core.domain.event.Event;
+import org.rhq.core.domain.event.EventDefinition;
+import org.rhq.core.domain.event.EventSeverity;
+import org.rhq.core.domain.event.EventSource;
+import org.rhq.core.domain.event.transfer.EventReport;
+import org.rhq.core.domain.measurement.AvailabilityType;
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.MeasurementDataTrait;
+import org.rhq.core.domain.measurement.MeasurementReport;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.core.domain.measurement.calltime.CallTimeData;
+import org.rhq.core.domain.measurement.calltime.CallTimeDataValue;
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceCategory;
+import org.rhq.core.domain.resource.ResourceType;
+import org.rhq.core.util.stream.StreamUtil;
+
+@Test
+public class ReportCodecTest {
+    private final ReportCodec codec = new ReportCodec();
+
+    public void testCanEncode() {
+        assertTrue(codec.canEncode(new MeasurementReport()));
+        assertTrue(codec.canEncode(new AvailabilityReport("agent")));
+        assertTrue(codec.canEncode(new EventReport(10, 10)));
+        assertFalse(codec.canEncode("report"));
+        assertFalse(codec.canEncode(null));
+    }
+
+    public void testMeasurementReport() throws Exception {
+        long now = System.currentTimeMillis();
+        MeasurementReport report = new MeasurementReport();
+        report.setCollectionTime(1234L);
+        report.addData(new MeasurementDataNumeric(now, request(1, "Heap Used", DataType.MEASUREMENT), 123456789.0));
+        report.addData(new MeasurementDataNumeric(now, request(2, "CPU", DataType.MEASUREMENT), 0.37));
+        report.addData(new MeasurementDataNumeric(now + 5, request(3, "Delta", DataType.MEASUREMENT), -42.0));
+        report.addData(new MeasurementDataNumeric(now - 60000, request(Integer.MAX_VALUE, "Big", DataType.MEASUREMENT),
+            -0.0));
+        report.addData(new MeasurementDataNumeric(now, request(4, "NaN", DataType.MEASUREMENT), Double.NaN));
+        report.addData(new MeasurementDataNumeric(now, 5, null));
+        report.addData(new MeasurementDataNumeric(now, request(6, "Huge", DataType.MEASUREMENT), 1.0e300));
+        report.addData(new MeasurementDataTrait(now, request(10, "Version", DataType.TRAIT), "5.0.1"));
+        report.addData(new MeasurementDataTrait(now, request(11, "Name", DataType.TRAIT), "élève 漢字"));
+        report.addData(new MeasurementDataTrait(now, request(12, "Empty", DataType.TRAIT), null));
+
+        CallTimeData callTime = new CallTimeData(request(20, "Calls", DataType.CALLTIME));
+        callTime.addCallData("/index.html", new Date(now - 1000), 250L);
+        callTime.addCallData("/index.html", new Date(now - 900), 50L);
+        callTime.addAggregatedCallData("/other", new Date(now - 60000), new Date(now), 1.5, 20.25, 1000.0, 100L);
+        report.addData(callTime);
+
+        MeasurementReport decoded = (MeasurementReport) codec.decode(codec.encode(report));
+
+        assertEquals(decoded.getCollectionTime(), 1234L);
+        assertEquals(decoded.getNumericData().size(), report.getNumericData().size());
+        Iterator<MeasurementDataNumeric> decodedNumerics = decoded.getNumericData().iterator();
+        for (MeasurementDataNumeric numeric : report.getNumericData()) {
+            MeasurementDataNumeric decodedNumeric = decodedNumerics.next();
+            assertEquals(decodedNumeric.getScheduleId(), numeric.getScheduleId());
+            assertEquals(decodedNumeric.getTimestamp(), numeric.getTimestamp());
+            assertEquals(decodedNumeric.getName(), numeric.getName());
+            if (numeric.getValue() == null) {
+                assertNull(decodedNumeric.getValue());
+            } else {
+                assertEquals(Double.doubleToRawLongBits(decodedNumeric.getValue()),
+                    Double.doubleToRawLongBits(numeric.getValue()), "value of " + numeric);
+            }
+        }
+
+        assertEquals(decoded.getTraitData().size(), 3);
+        Iterator<MeasurementDataTrait> decodedTraits = decoded.getTraitData().iterator();
+        for (MeasurementDataTrait trait : report.getTraitData()) {
+            MeasurementDataTrait decodedTrait = decodedTraits.next();
+            assertEquals(decodedTrait.getScheduleId(), trait.getScheduleId());
+            assertEquals(decodedTrait.getTimestamp(), trait.getTimestamp());
+            assertEquals(decodedTrait.getName(), trait.getName());
+            assertEquals(decodedTrait.getValue(), trait.getValue());
+        }
+
+        assertEquals(decoded.getCallTimeData().size(), 1);
+        CallTimeData decodedCallTime = decoded.getCallTimeData().iterator().next();
+        assertEquals(decodedCallTime.getScheduleId(), 20);
+        assertEquals(decodedCallTime.getValues().size(), 2);
+        for (Map.Entry<String, CallTimeDataValue> entry : callTime.getValues().entrySet()) {
+            CallTimeDataValue value = entry.getValue();
+            CallTimeDataValue decodedValue = decodedCallTime.getValues().get(entry.getKey());
+            assertEquals(decodedValue.getBeginTime(), value.getBeginTime());
+            assertEquals(decodedValue.getEndTime(), value.getEndTime());
+            assertEquals(decodedValue.getMinimum(), value.getMinimum());
+            assertEquals(decodedValue.getMaximum(), value.getMaximum());
+            assertEquals(decodedValue.getTotal(), value.getTotal());
+            assertEquals(decodedValue.getCount(), value.getCount());
+        }
+    }
+
+    public void testAvailabilityReport() throws Exception {
+        long now = System.currentTimeMillis();
+        AvailabilityReport report = new AvailabilityReport(true, "agent-1");
+        report.setEnablementReport(true);
+        report.addAvailability(new AvailabilityReport.Datum(1, AvailabilityType.UP, now));
+        report.addAvailability(new AvailabilityReport.Datum(2, AvailabilityType.DOWN, now - 30000));
+        report.addAvailability(new AvailabilityReport.Datum(3, AvailabilityType.DISABLED, now));
+
+        AvailabilityReport decoded = (AvailabilityReport) codec.decode(codec.encode(report));
+
+        assertEquals(decoded.getAgentName(), "agent-1");
+        assertTrue(decoded.isChangesOnlyReport());
+        assertTrue(decoded.isEnablementReport());
+        // enablement reports are always server side reports
+        assertTrue(decoded.isServerSideReport());
+        List<AvailabilityReport.Datum> data = decoded.getResourceAvailability();
+        assertEquals(data.size(), 3);
+        for (int i = 0; i < data.size(); i++) {
+            AvailabilityReport.Datum datum = report.getResourceAvailability().get(i);
+            assertEquals(data.get(i).getResourceId(), datum.getResourceId());
+            assertEquals(data.get(i).getAvailabilityType(), datum.getAvailabilityType());
+            assertEquals(data.get(i).getStartTime(), datum.getStartTime());
+        }
+    }
+
+    public void testEventReport() throws Exception {
+        ResourceType type = new ResourceType("JBossAS Server", "JBossAS", ResourceCategory.SERVER, null);
+        EventDefinition definition = new EventDefinition(type, "logEntry");
+        EventSource log = new EventSource("/var/log/server.log", definition, new Resource(7));
+        EventSource other = new EventSource("/var/log/boot.log", definition, new Resource(8));
+
+        long now = System.currentTimeMillis();
+        EventReport report = new EventReport(2, 10);
+        report.addEvent(new Event("logEntry", log.getLocation(), now, EventSeverity.ERROR, "Connection refused", log),
+            log);
+        report.addEvent(new Event("logEntry", log.getLocation(), now + 1, EventSeverity.ERROR, "Connection refused",
+            log), log);
+        report.addEvent(new Event("logEntry", log.getLocation(), now + 2, EventSeverity.INFO, "dropped", log), log);
+        report.addEvent(new Event("logEntry", other.getLocation(), now, EventSeverity.WARN, "Slow boot", other), other);
+        assertTrue(report.addLimitWarningEvents());
+
+        EventReport decoded = (EventReport) codec.decode(codec.encode(report));
+
+        assertEquals(decoded.getMaxEventsPerSource(), 2);
+        assertEquals(decoded.getMaxEventsPerReport(), 10);
+        assertEquals(decoded.getEvents().size(), 2);
+        for (Map.Entry<EventSource, Set<Event>> entry : report.getEvents().entrySet()) {
+            EventSource source = entry.getKey();
+            Set<Event> decodedEvents = decoded.getEvents().get(source);
+            // the limit warning is sent as well
+            assertEquals(decodedEvents, entry.getValue());
+            for (EventSource decodedSource : decoded.getEvents().keySet()) {
+                if (decodedSource.equals(source)) {
+                    assertEquals(decodedSource.getResource().getId(), source.getResource().getId());
+                    assertEquals(decodedSource.getEventDefinition().getResourceType().getName(), "JBossAS Server");
+                    assertEquals(decodedSource.getEventDefinition().getResourceType().getPlugin(), "JBossAS");
+                }
+            }
+            for (Event event : decodedEvents) {
+                assertEquals(event.getSource(), source);
+                assertEquals(event.getSourceLocation(), source.getLocation());
+            }
+        }
+    }
+
+    public void testEncodedReportIsSmallerThanSerialized() throws Exception {
+        long now = System.currentTimeMillis();
+        MeasurementReport report = new MeasurementReport();
+        for (int i = 0; i < 1000; i++) {
+            report.addData(new MeasurementDataNumeric(now, request(10000 + i, "metric" + (i % 50),
+                DataType.MEASUREMENT), i * 1.25));
+        }
+
+        int encoded = codec.encode(report).length;
+        int serialized = StreamUtil.serialize(report).length;
+        assertTrue(encoded * 3 < serialized, "encoded=" + encoded + ", serialized=" + serialized);
+    }
+
+    public void testCorruptDataIsRejected() throws Exception {
+        AvailabilityReport report = new AvailabilityReport("agent-1");
+        report.addAvailability(new AvailabilityReport.Datum(1, AvailabilityType.UP, 1000L));
+        byte[] data = codec.encode(report);
+
+        List<byte[]> corrupt = new ArrayList<byte[]>();
+        corrupt.add(new byte[0]);
+        corrupt.add(new byte[] { 'X' });
+        byte[] truncated = new byte[data.length - 1];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        corrupt.add(truncated);
+        byte[] trailing = new byte[data.length + 1];
+        System.arraycopy(data, 0, trailing, 0, data.length);
+        corrupt.add(trailing);
+
+        for (byte[] bytes : corrupt) {
+            try {
+                codec.decode(bytes);
+                fail("decoded " + bytes.length + " corrupt bytes");
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    private MeasurementScheduleRequest request(int scheduleId, String name, DataType dataType) {
+        return new MeasurementScheduleRequest(scheduleId, name, 60000L, true, dataType);
+    }
+}
@@ -0,0 +1,73 @@
+ /*
+  * RHQ Management Platform
+  * Copyright (C) 2005-2014 Red Hat, Inc.
+  * All rights reserved.
+  *
+  * This program is free software; you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License, version 2, as
+  * published by the Free Software Foundation, and/or the GNU Lesser
+  * General Public License, version 2.1, also as published by the Free
+  * Software Foundation.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  * GNU General Public License and the GNU Lesser General Public License
+  * for more details.
+  *
+  * You should have received a copy of the GNU General Public License
+  * and the GNU Lesser General Public License along with this program;
+  * if not, write to the Free Software Foundation, Inc.,
+  * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+  */
+package org.rhq.core.communications.command.codec;
+
+import java.io.IOException;
+
+/**
+ * Encodes parameters of remote POJO invocations into a compact binary form and decodes them back. A codec is an
+ * alternative to plain Java serialization for the parameter types it knows about. The sending side only encodes a
+ * parameter with a codec the receiving side has told it it can decode; all other parameters are serialized as usual.
+ *
+ * <p>Implementations must be thread safe.</p>
+ */
+public interface ParameterCodec {
+    /**
+     * The name that identifies this codec and the version of its format. Both sides of a remote invocation must agree
+     * on the name, so a codec whose format changes must change its name.
+     *
+     * @return the name of the codec, e.g. <code>rhq-report-1</code>
+     */
+    String getName();
+
+    /**
+     * Determines if this codec knows how to encode the given parameter.
+     *
+     * @param  parameter the parameter of a remote POJO invocation (may be <code>null</code>)
+     *
+     * @return <code>true</code> if {@link #encode(Object)} can be called with the parameter
+     */
+    boolean canEncode(Object parameter);
+
+    /**
+     * Encodes the given parameter.
+     *
+     * @param  parameter a parameter this codec {@link #canEncode(Object) can encode}
+     *
+     * @return the encoded parameter
+     *
+     * @throws IOException if the parameter could not be encoded
+     */
+    byte[] encode(Object parameter) throws IOException;
+
+    /**
+     * Decodes a parameter that was {@link #encode(Object) encoded} by a codec with the same name.
+     *
+     * @param  data the encoded parameter
+     *
+     * @return the decoded parameter
+     *
+     * @throws IOException if the data could not be decoded
+     */
+    Object decode(byte[] data) throws IOException;
+}
@@ -0,0 +1,173 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.core.db.upgrade;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import mazz.i18n.Logger;
+
+import org.rhq.core.db.DatabaseType;
+import org.rhq.core.db.DatabaseTypeFactory;
+import org.rhq.core.db.DbUtilsI18NFactory;
+import org.rhq.core.db.DbUtilsI18NResourceKeys;
+
+/**
+ * Converts the tables that are purged by age into tables range partitioned on their purge column, in epoch
+ * milliseconds, so that the data purge can drop whole expired partitions rather than delete rows:
+ * <ul>
+ * <li>RHQ_EVENT on TIMESTAMP</li>
+ * <li>RHQ_CALLTIME_DATA_VALUE on END_TIME</li>
+ * </ul>
+ * Both columns are set once, when the row is inserted. RHQ_AVAILABILITY is left alone: its END_TIME is updated when
+ * the next availability is reported, which would move rows across partitions.<br>
+ * <br>
+ * This needs Postgres 11 or later (for keys, indexes and a default partition on a partitioned table), or Oracle with
+ * the partitioning option. Other databases keep the plain tables, which the data purge deletes rows from. The task
+ * runs on upgrades and on new installs, and leaves tables that are already partitioned alone.<br>
+ * <br>
+ * Existing rows are copied into a single history partition. On Postgres the partitions of the current and the upcoming
+ * days are created here, later ones by the data purge, and a default partition catches rows outside of them. On Oracle
+ * the tables are interval partitioned, so the database creates the daily partitions itself.
+ */
+public class TimePartitionedTablesUpgradeTask implements DatabaseUpgradeTask {
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    /** Same as the default number of partitions the data purge keeps ahead */
+    private static final int PRECREATED_PARTITIONS = 7;
+
+    private static final int POSTGRES_MAJOR_VERSION = 11;
+
+    private final Logger log = DbUtilsI18NFactory.getLogger(TimePartitionedTablesUpgradeTask.class);
+
+    private DatabaseType databaseType;
+    private Connection connection;
+
+    public void execute(DatabaseType databaseType, Connection connection) throws SQLException {
+        this.databaseType = databaseType;
+        this.connection = connection;
+
+        if (!isPartitioningSupported()) {
+            log.info(DbUtilsI18NResourceKeys.MESSAGE, "Partitioning is not available on " + databaseType
+                + ", RHQ_EVENT and RHQ_CALLTIME_DATA_VALUE are not partitioned");
+            return;
+        }
+
+        long today = System.currentTimeMillis();
+        today -= today % DAY;
+
+        List<String> eventIndexes = new ArrayList<String>();
+        eventIndexes.add("CREATE INDEX RHQ_EVENT_IDX ON RHQ_EVENT (EVENT_SOURCE_ID, TIMESTAMP)" + getLocalIndex());
+        eventIndexes.add("ALTER TABLE RHQ_EVENT ADD CONSTRAINT RHQ_EVENT_SOURCE_FK "
+            + "FOREIGN KEY (EVENT_SOURCE_ID) REFERENCES RHQ_EVENT_SOURCE (ID)");
+        partition("RHQ_EVENT", "TIMESTAMP", eventIndexes, today);
+
+        List<String> callTimeIndexes = new ArrayList<String>();
+        callTimeIndexes.add("CREATE INDEX RHQ_CT_DA_VA_END_TIM_IDX ON RHQ_CALLTIME_DATA_VALUE (END_TIME)"
+            + getLocalIndex());
+        callTimeIndexes.add("ALTER TABLE RHQ_CALLTIME_DATA_VALUE ADD CONSTRAINT RHQ_CALLTIME_DATA_KEY_FK "
+            + "FOREIGN KEY (KEY_ID) REFERENCES RHQ_CALLTIME_DATA_KEY (ID)");
+        partition("RHQ_CALLTIME_DATA_VALUE", "END_TIME", callTimeIndexes, today);
+    }
+
+    private boolean isPartitioningSupported() throws SQLException {
+        if (DatabaseTypeFactory.isPostgres(databaseType)) {
+            return connection.getMetaData().getDatabaseMajorVersion() >= POSTGRES_MAJOR_VERSION;
+        }
+        if (DatabaseTypeFactory.isOracle(databaseType)) {
+            try {
+                List<Object[]> rows = databaseType.executeSelectSql(connection,
+                    "SELECT VALUE FROM V$OPTION WHERE PARAMETER = 'Partitioning'");
+                return !rows.isEmpty() && "TRUE".equals(rows.get(0)[0]);
+            } catch (SQLException e) {
+                log.warn(DbUtilsI18NResourceKeys.MESSAGE, "Cannot tell whether the partitioning option is installed: "
+                    + e.getMessage());
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private boolean isPartitioned(String table) throws SQLException {
+        String sql;
+        if (DatabaseTypeFactory.isPostgres(databaseType)) {
+            sql = "SELECT relname FROM pg_class WHERE relname = '" + table.toLowerCase()
+                + "' AND relkind = 'p' AND pg_table_is_visible(oid)";
+        } else {
+            sql = "SELECT TABLE_NAME FROM USER_PART_TABLES WHERE TABLE_NAME = '" + table + "'";
+        }
+        return !databaseType.executeSelectSql(connection, sql).isEmpty();
+    }
+
+    /**
+     * Moves the table aside, creates the partitioned table in its place, copies the rows over and recreates the keys
+     * and indexes. The primary key has to include the partition column.
+     */
+    private void partition(String table, String column, List<String> indexes, long today) throws SQLException {
+        if (isPartitioned(table)) {
+            log.info(DbUtilsI18NResourceKeys.MESSAGE, table + " is already partitioned");
+            return;
+        }
+
+        String unpartitioned = table + "_UNPART";
+        List<String> sql = new ArrayList<String>();
+        sql.add("ALTER TABLE " + table + " RENAME TO " + unpartitioned);
+        if (DatabaseTypeFactory.isPostgres(databaseType)) {
+            sql.add("CREATE TABLE " + table + " (LIKE " + unpartitioned + ") PARTITION BY RANGE (" + column + ")");
+            sql.add("CREATE TABLE " + table + "_PHISTORY PARTITION OF " + table + " FOR VALUES FROM (MINVALUE) TO ("
+                + today + ")");
+            for (int i = 0; i <= PRECREATED_PARTITIONS; i++) {
+                long lower = today + i * DAY;
+                sql.add("CREATE TABLE " + table + "_P" + formatPartitionDay(lower) + " PARTITION OF " + table
+                    + " FOR VALUES FROM (" + lower + ") TO (" + (lower + DAY) + ")");
+            }
+            sql.add("CREATE TABLE " + table + "_PDEFAULT PARTITION OF " + table + " DEFAULT");
+            sql.add("INSERT INTO " + table + " SELECT * FROM " + unpartitioned);
+        } else {
+            sql.add("CREATE TABLE " + table + " PARTITION BY RANGE (" + column + ") INTERVAL (" + DAY
+                + ") (PARTITION PHISTORY VALUES LESS THAN (" + today + ")) AS SELECT * FROM " + unpartitioned);
+        }
+        sql.add("DROP TABLE " + unpartitioned);
+        sql.add("ALTER TABLE " + table + " ADD CONSTRAINT " + table + "_PKEY PRIMARY KEY (ID, " + column + ")"
+            + (DatabaseTypeFactory.isOracle(databaseType) ? " USING INDEX LOCAL" : ""));
+        sql.addAll(indexes);
+
+        for (String statement : sql) {
+            log.debug(DbUtilsI18NResourceKeys.EXECUTING_SQL, statement);
+            databaseType.executeSql(connection, statement);
+        }
+        log.info(DbUtilsI18NResourceKeys.MESSAGE, table + " is now partitioned on " + column);
+    }
+
+    private String getLocalIndex() {
+        return DatabaseTypeFactory.isOracle(databaseType) ? " LOCAL" : "";
+    }
+
+    private static String formatPartitionDay(long time) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMddHH");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(time));
+    }
+}
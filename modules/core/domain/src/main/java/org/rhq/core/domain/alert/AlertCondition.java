@@ -79,6 +79,7 @@ import org.rhq.core.domain.operation.OperationRequestStatus;
         + "     AND ( res.agent.id = :agentId OR :agentId IS NULL ) " //
         + "     AND ad.enabled = TRUE " //
         + "     AND ad.deleted = FALSE " //
+        + "     AND ( ad.id IN ( :alertDefinitionIds ) OR :allAlertDefinitions = 1 ) " //
         + "     AND ms.definition = md " //
         + "     AND ms.resource = res " //
         + "     AND mb IS NOT NULL " //
@@ -94,6 +95,7 @@ import org.rhq.core.domain.operation.OperationRequestStatus;
         + "     AND ( res.agent.id = :agentId OR :agentId IS NULL ) " //
         + "     AND ad.enabled = TRUE " //
         + "     AND ad.deleted = FALSE " //
+        + "     AND ( ad.id IN ( :alertDefinitionIds ) OR :allAlertDefinitions = 1 ) " //
         + "     AND ms.definition = md " //
         + "     AND ms.resource = res " //
         + "     AND mb IS NOT NULL " //
@@ -113,6 +115,7 @@ import org.rhq.core.domain.operation.OperationRequestStatus;
         + "     AND ( res.agent.id = :agentId OR :agentId IS NULL ) " //
         + "     AND ad.enabled = TRUE " //
         + "     AND ad.deleted = FALSE " //
+        + "     AND ( ad.id IN ( :alertDefinitionIds ) OR :allAlertDefinitions = 1 ) " //
         + "     AND ms.definition = md " //
         + "     AND ms.resource = res " //
         + "     AND ac.category = 'CHANGE' " //
@@ -142,6 +145,7 @@ import org.rhq.core.domain.operation.OperationRequestStatus;
         + "     AND ( res.agent.id = :agentId OR :agentId IS NULL ) " //
         + "     AND ad.enabled = TRUE " //
         + "     AND ad.deleted = FALSE " //
+        + "     AND ( ad.id IN ( :alertDefinitionIds ) OR :allAlertDefinitions = 1 ) " //
         + "     AND ms.definition = md " //
         + "     AND ms.resource = res " //
         + "     AND ac.category = 'TRAIT' " //
@@ -167,6 +171,7 @@ import org.rhq.core.domain.operation.OperationRequestStatus;
         + "     AND ( res.agent.id = :agentId OR :agentId IS NULL ) " //
         + "     AND ad.enabled = TRUE " //
         + "     AND ad.deleted = FALSE " //
+        + "     AND ( ad.id IN ( :alertDefinitionIds ) OR :allAlertDefinitions = 1 ) " //
         + "     AND ac.category = :category " //
         + "ORDER BY ac.id"), //
     @NamedQuery(name = AlertCondition.QUERY_BY_CATEGORY_CONTROL, query = "" //
@@ -189,6 +194,7 @@ import org.rhq.core.domain.operation.OperationRequestStatus;
         + "     AND ( res.agent.id = :agentId OR :agentId IS NULL ) " //
         + "     AND ad.enabled = TRUE " //
         + "     AND ad.deleted = FALSE " //
+        + "     AND ( ad.id IN ( :alertDefinitionIds ) OR :allAlertDefinitions = 1 ) " //
         + "     AND ac.category = 'CONTROL' " //
         + "ORDER BY ac.id"), //
     @NamedQuery(name = AlertCondition.QUERY_BY_CATEGORY_THRESHOLD, query = "" //
@@ -206,6 +212,7 @@ import org.rhq.core.domain.operation.OperationRequestStatus;
         + "     AND ( res.agent.id = :agentId OR :agentId IS NULL ) " //
         + "     AND ad.enabled = TRUE " //
         + "     AND ad.deleted = FALSE " //
+        + "     AND ( ad.id IN ( :alertDefinitionIds ) OR :allAlertDefinitions = 1 ) " //
         + "     AND ms.definition = md " //
         + "     AND ms.resource = res " //
         + "     AND ac.category = 'THRESHOLD' " //
@@ -223,6 +230,7 @@ import org.rhq.core.domain.operation.OperationRequestStatus;
         + "     AND ( res.agent.id = :agentId OR :agentId IS NULL ) " //
         + "     AND ad.enabled = TRUE " //
         + "     AND ad.deleted = FALSE " //
+        + "     AND ( ad.id IN ( :alertDefinitionIds ) OR :allAlertDefinitions = 1 ) " //
         + "     AND ac.category = 'EVENT' " //
         + "ORDER BY ac.id"), //
     @NamedQuery(name = AlertCondition.QUERY_BY_CATEGORY_RESOURCE_CONFIG, query = "" //
@@ -240,6 +248,7 @@ import org.rhq.core.domain.operation.OperationRequestStatus;
         + "     AND ( res.agent.id = :agentId OR :agentId IS NULL ) " //
         + "     AND ad.enabled = TRUE " //
         + "     AND ad.deleted = FALSE " //
+        + "     AND ( ad.id IN ( :alertDefinitionIds ) OR :allAlertDefinitions = 1 ) " //
         + "     AND ac.category = 'RESOURCE_CONFIG' " //
         + "ORDER BY ac.id"), //
     @NamedQuery(name = AlertCondition.QUERY_BY_CATEGORY_DRIFT, query = "" //
@@ -255,6 +264,7 @@ import org.rhq.core.domain.operation.OperationRequestStatus;
         + "     AND ( res.agent.id = :agentId OR :agentId IS NULL ) " //
         + "     AND ad.enabled = TRUE " //
         + "     AND ad.deleted = FALSE " //
+        + "     AND ( ad.id IN ( :alertDefinitionIds ) OR :allAlertDefinitions = 1 ) " //
         + "     AND ac.category = 'DRIFT' " //
         + "ORDER BY ac.id"), //
     @NamedQuery(name = AlertCondition.QUERY_BY_CATEGORY_RANGE, query = "" //
@@ -272,6 +282,7 @@ import org.rhq.core.domain.operation.OperationRequestStatus;
         + "     AND ( res.agent.id = :agentId OR :agentId IS NULL ) " //
         + "     AND ad.enabled = TRUE " //
         + "     AND ad.deleted = FALSE " //
+        + "     AND ( ad.id IN ( :alertDefinitionIds ) OR :allAlertDefinitions = 1 ) " //
         + "     AND ms.definition = md " //
         + "     AND ms.resource = res " //
         + "     AND ac.category = 'RANGE' " //
@@ -285,7 +296,18 @@ import org.rhq.core.domain.operation.OperationRequestStatus;
         + "     AND ( res.agent.id = :agentId OR :agentId IS NULL ) " //
         + "     AND ad.enabled = TRUE " //
         + "     AND ad.deleted = FALSE " //
+        + "     AND ( ad.id IN ( :alertDefinitionIds ) OR :allAlertDefinitions = 1 ) " //
         + "     AND ac.category = :category "),
+    @NamedQuery(name = AlertCondition.QUERY_FIND_CACHE_STATE_BY_AGENT, query = "" //
+        + "  SELECT ac.id, ad.id, ad.mtime " //
+        + "    FROM AlertCondition AS ac " //
+        + "    JOIN ac.alertDefinition ad " //
+        + "    JOIN ad.resource res " //
+        + "   WHERE " + AlertCondition.RECOVERY_CONDITIONAL_EXPRESSION //
+        + "     AND res.agent.id = :agentId " //
+        + "     AND ad.enabled = TRUE " //
+        + "     AND ad.deleted = FALSE " //
+        + "     AND ac.category IN ( :categories ) "),
     @NamedQuery(name = AlertCondition.QUERY_FIND_RESOURCE_STATUS_BY_CONDITION_ID, query = "" //
         + "  SELECT res.inventoryStatus " //
         + "    FROM AlertCondition AS ac " //
@@ -325,6 +347,7 @@ public class AlertCondition implements Serializable {
     public static final String QUERY_BY_CATEGORY_COUNT_BASELINE = "AlertCondition.byCategoryCountBaseline";
     public static final String QUERY_BY_CATEGORY_COUNT_PARAMETERIZED = "AlertCondition.byCategoryCountParameterized";
 
+    public static final String QUERY_FIND_CACHE_STATE_BY_AGENT = "AlertCondition.findCacheStateByAgent";
     public static final String QUERY_FIND_RESOURCE_STATUS_BY_CONDITION_ID = "AlertCondition.findResourceStatus";
 
     public static final String QUERY_DELETE_ORPHANED = "AlertCondition.deleteOrphaned";
@@ -54,6 +54,7 @@ import javax.persistence.Table;
     @NamedQuery(name = FailoverListDetails.QUERY_DELETE_VIA_AGENT, query = "DELETE FROM FailoverListDetails fld WHERE fld.failoverList IN ( SELECT fl FROM FailoverList fl WHERE fl.agent = :agent )"),
     @NamedQuery(name = FailoverListDetails.QUERY_DELETE_VIA_SERVER, query = "DELETE FROM FailoverListDetails fld WHERE fld.server.id = :serverId"),
     @NamedQuery(name = FailoverListDetails.QUERY_GET_ASSIGNED_LOADS, query = "SELECT new org.rhq.core.domain.cloud.composite.FailoverListDetailsComposite(fld.ordinal, fld.serverId, COUNT(fld.serverId)) FROM FailoverListDetails fld GROUP BY fld.ordinal, fld.serverId ORDER BY fld.ordinal ASC"),
+    @NamedQuery(name = FailoverListDetails.QUERY_GET_PRIMARY_SERVER_IDS, query = "SELECT fld.failoverList.agentId, fld.serverId FROM FailoverListDetails fld WHERE fld.ordinal = 0"),
     @NamedQuery(name = FailoverListDetails.QUERY_TRUNCATE, query = "DELETE FROM FailoverListDetails") })
 @SequenceGenerator(allocationSize = org.rhq.core.domain.util.Constants.ALLOCATION_SIZE, name = "RHQ_FAILOVER_DETAILS_ID_SEQ", sequenceName = "RHQ_FAILOVER_DETAILS_ID_SEQ")
 @Table(name = "RHQ_FAILOVER_DETAILS")
@@ -66,6 +67,7 @@ public class FailoverListDetails implements Serializable {
     public static final String QUERY_DELETE_VIA_AGENT = "FailoverListDetails.deleteViaAgent";
     public static final String QUERY_DELETE_VIA_SERVER = "FailoverListDetails.deleteViaServer";
     public static final String QUERY_GET_ASSIGNED_LOADS = "FailoverListDetails.getAssignedLoads";
+    public static final String QUERY_GET_PRIMARY_SERVER_IDS = "FailoverListDetails.getPrimaryServerIds";
     public static final String QUERY_TRUNCATE = "FailoverListDetails.truncate";
 
     @Column(name = "ID", nullable = false)
@@ -34,7 +34,8 @@ public class ServerWithAgentCountComposite implements Serializable {
     private static final long serialVersionUID = -7553274660445454259L;
     private Server server;
     private int agentCount;
-    
+    private double load;
+
     public ServerWithAgentCountComposite() {
      // GWT needs this
     }
@@ -53,4 +54,16 @@ public class ServerWithAgentCountComposite implements Serializable {
         return agentCount;
     }
 
+    /**
+     * @return the summed load of the agents this server is the primary server of, relative to an average agent
+     *         load of 1.0
+     */
+    public double getLoad() {
+        return load;
+    }
+
+    public void setLoad(double load) {
+        this.load = load;
+    }
+
 }
@@ -195,6 +195,23 @@ import org.rhq.core.domain.util.OSGiVersionComparator;
         + "   AND pv.installedPackages IS EMPTY "
         + "   AND pv.installedPackageHistory IS EMPTY "
         + "   AND pb.blob.bits IS NULL "),
+
+    // finds the content ids of all orphaned PVs, so their bits can be deleted from the blob store
+    @NamedQuery(name = PackageVersion.FIND_SHA256_IF_NO_CONTENT_SOURCES_OR_REPOS, query = "SELECT DISTINCT pv.sha256 "
+        + "  FROM PackageVersion pv "
+        + " WHERE pv.id NOT IN (SELECT pvcs.packageVersion.id "
+        + "                       FROM PackageVersionContentSource pvcs) "
+        + "   AND pv.repoPackageVersions IS EMPTY "
+        + "   AND pv.installedPackages IS EMPTY "
+        + "   AND pv.installedPackageHistory IS EMPTY "
+        + "   AND pv.sha256 IS NOT NULL "),
+    @NamedQuery(name = PackageVersion.QUERY_COUNT_BY_SHA256, query = "SELECT COUNT(pv) FROM PackageVersion pv "
+        + " WHERE LOWER(pv.sha256) = :sha256 "),
+    @NamedQuery(name = PackageVersion.QUERY_FIND_IDS_WITH_PACKAGE_BITS, query = "SELECT pv.id "
+        + "  FROM PackageVersion pv "
+        + " WHERE pv.id > :lastId "
+        + "   AND pv.packageBits IS NOT NULL "
+        + " ORDER BY pv.id "),
     @NamedQuery(name = PackageVersion.QUERY_FIND_COMPOSITE_BY_ID, query = "SELECT new org.rhq.core.domain.content.composite.PackageVersionComposite( "
         + "          pv, "
         + "          pv.generalPackage.packageType.name, "
@@ -293,6 +310,9 @@ public class PackageVersion implements Serializable {
     public static final String DELETE_PVPV_IF_NO_CONTENT_SOURCES_OR_REPOS = "PackageVersion.deletePVPVIfNoContentSourcesOrRepos";
     public static final String FIND_EXTRA_PROPS_IF_NO_CONTENT_SOURCES_OR_REPOS = "PackageVersion.findOrphanedExtraProps";
     public static final String FIND_FILES_IF_NO_CONTENT_SOURCES_OR_REPOS = "PackageVersion.findOrphanedFiles";
+    public static final String FIND_SHA256_IF_NO_CONTENT_SOURCES_OR_REPOS = "PackageVersion.findOrphanedSha256";
+    public static final String QUERY_COUNT_BY_SHA256 = "PackageVersion.countBySha256";
+    public static final String QUERY_FIND_IDS_WITH_PACKAGE_BITS = "PackageVersion.findIdsWithPackageBits";
     public static final String QUERY_FIND_COMPOSITE_BY_ID = "PackageVersion.findCompositeById";
     public static final String QUERY_FIND_COMPOSITE_BY_ID_WITH_PROPS = "PackageVersion.findCompositeByIdWithProps";
     public static final String QUERY_FIND_COMPOSITES_BY_IDS = "PackageVersion.findCompositesByIds";
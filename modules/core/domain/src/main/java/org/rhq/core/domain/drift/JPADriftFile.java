@@ -70,6 +70,13 @@ public class JPADriftFile extends AbstractJPADriftFile implements Serializable,
         + "   AND (HASH_ID NOT IN (SELECT NEW_DRIFT_FILE FROM RHQ_DRIFT)) " //
         + "   AND CTIME < ?";
 
+    // the drift files NATIVE_DELETE_ORPHANED_DRIFT_FILES deletes, so their content can be deleted too
+    public static final String NATIVE_FIND_ORPHANED_DRIFT_FILES = "" //
+        + "SELECT HASH_ID FROM RHQ_DRIFT_FILE " //
+        + " WHERE (HASH_ID NOT IN (SELECT OLD_DRIFT_FILE FROM RHQ_DRIFT)) " //
+        + "   AND (HASH_ID NOT IN (SELECT NEW_DRIFT_FILE FROM RHQ_DRIFT)) " //
+        + "   AND CTIME < ?";
+
     // this is a hash/digest that should uniquely identify the content
     @Id
     @Column(name = "HASH_ID", nullable = false)
@@ -48,10 +48,15 @@ import javax.persistence.Table;
 @Entity
 @Table(name = "RHQ_DRIFT_FILE")
 @NamedQueries({
-    @NamedQuery(name = JPADriftFileBits.QUERY_FIND_BY_ID, query = "FROM JPADriftFileBits WHERE hashId = :hashId")
+    @NamedQuery(name = JPADriftFileBits.QUERY_FIND_BY_ID, query = "FROM JPADriftFileBits WHERE hashId = :hashId"),
+    @NamedQuery(name = JPADriftFileBits.QUERY_FIND_IDS_WITH_DATA, query = "" //
+        + "SELECT df.hashId FROM JPADriftFileBits df " //
+        + " WHERE df.hashId > :lastHashId AND df.status = :status AND df.data IS NOT NULL " //
+        + " ORDER BY df.hashId")
 })
 public class JPADriftFileBits extends AbstractJPADriftFile implements Serializable {
     public static final String QUERY_FIND_BY_ID = "JPADriftFileBits.findById";
+    public static final String QUERY_FIND_IDS_WITH_DATA = "JPADriftFileBits.findIdsWithData";
 
     private static final long serialVersionUID = 1L;
 
@@ -137,7 +137,12 @@ import org.rhq.core.domain.resource.Resource;
         + " WHERE av.resource.id = " //
         + "   ( SELECT res.id FROM Resource res " //
         + "      WHERE res.agent.id = :agentId " //
-        + "        AND res.parentResource.id IS NULL )") })
+        + "        AND res.parentResource.id IS NULL )"), //
+    @NamedQuery(name = Availability.FIND_LATEST_STATE_BY_AGENT, query = "" //
+        + "SELECT av.resource.id, av.availabilityType, av.startTime " //
+        + "  FROM Availability av " //
+        + " WHERE av.resource.agent.id = :agentId " //
+        + "   AND av.endTime IS NULL ") })
 @SequenceGenerator(allocationSize = org.rhq.core.domain.util.Constants.ALLOCATION_SIZE, name = "RHQ_AVAILABILITY_ID_SEQ", sequenceName = "RHQ_AVAILABILITY_ID_SEQ")
 @Table(name = "RHQ_AVAILABILITY")
 @XmlRootElement
@@ -156,6 +161,19 @@ public class Availability implements Serializable {
     public static final String FIND_BY_RESOURCE_AND_DATE = "Availability.findByResourceAndDate";
     public static final String QUERY_DELETE_BY_RESOURCES = "Availability.deleteByResources";
     public static final String FIND_FOR_AGENT_PLATFORM = "Availability.findForAgentPlatform";
+    public static final String FIND_LATEST_STATE_BY_AGENT = "Availability.findLatestStateByAgent";
+
+    // Closes the latest interval, but only if it is still the one the caller believes it is (same start and type)
+    public static final String NATIVE_UPDATE_END_LATEST = "" //
+        + "UPDATE RHQ_AVAILABILITY SET END_TIME = ? " //
+        + " WHERE RESOURCE_ID = ? AND END_TIME IS NULL AND START_TIME = ? AND AVAILABILITY_TYPE = ?";
+    // %s is the id sequence nextval expression
+    public static final String NATIVE_INSERT_LATEST = "" //
+        + "INSERT INTO RHQ_AVAILABILITY ( ID, RESOURCE_ID, START_TIME, END_TIME, AVAILABILITY_TYPE ) " //
+        + "     VALUES ( %s, ?, ?, NULL, ? )";
+    // the resources, out of @@RESOURCE_IDS@@, that still have an open ended interval
+    public static final String NATIVE_QUERY_OPEN_RESOURCE_IDS = "" //
+        + "SELECT RESOURCE_ID FROM RHQ_AVAILABILITY WHERE END_TIME IS NULL AND RESOURCE_ID IN ( @@RESOURCE_IDS@@ )";
 
     /**
      * @deprecated as of RHQ 4.13, no longer used
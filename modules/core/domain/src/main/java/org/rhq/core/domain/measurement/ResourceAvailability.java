@@ -95,6 +95,9 @@ public class ResourceAvailability implements Serializable {
     public static final String UPDATE_PLATFORM_BY_AGENT_ID = "ResourceAvailability.updatePlatformByAgentId";
     public static final String QUERY_IS_AGENT_BACKFILLED = "ResourceAvailability.isAgentBackfilled";
 
+    public static final String NATIVE_UPDATE_BY_RESOURCE_ID = "" //
+        + "UPDATE " + TABLE_NAME + " SET AVAILABILITY_TYPE = ? WHERE RESOURCE_ID = ?";
+
     @SuppressWarnings("unused")
     @Column(name = "ID", nullable = false)
     @GeneratedValue(strategy = GenerationType.AUTO, generator = "RHQ_RESOURCE_AVAIL_ID_SEQ")
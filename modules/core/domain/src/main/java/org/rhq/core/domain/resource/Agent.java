@@ -78,7 +78,7 @@ import org.rhq.core.domain.cloud.Server;
         + "       ) "
         + "  FROM Agent a " + " WHERE a.lastAvailabilityPing < :dateThreshold "),
     @NamedQuery(name = Agent.QUERY_FIND_ALL_WITH_STATUS_BY_SERVER, query = "" //
-        + "SELECT a.id " //
+        + "SELECT a.id, a.status " //
         + "  FROM Agent a " //
         + " WHERE a.server.name = :serverName " //
         + "   AND a.status <> 0 "), //
@@ -111,15 +111,23 @@ import org.rhq.core.domain.cloud.Server;
     @NamedQuery(name = Agent.QUERY_UPDATE_STATUS_BY_RESOURCE, query = "" //
         + " UPDATE Agent a " //
         + "    SET a.status = -1 " // negative numbers so that bitmask strategy does not conflict with this one
-        + "  WHERE a.status = 0 " // we only need the first guy to set it
+        + "  WHERE a.status >= 0 " // we only need the first guy to set it, but it supersedes the alert definition bit
+        + "    AND a.id = ( SELECT resA.id " // only update ourselves;
+        + "                   FROM Resource res " //
+        + "                   JOIN res.agent resA " //
+        + "                  WHERE res.id = :resourceId ) "), //
+    @NamedQuery(name = Agent.QUERY_UPDATE_ALERT_DEFINITION_STATUS_BY_RESOURCE, query = "" //
+        + " UPDATE Agent a " //
+        + "    SET a.status = :status " // the alert definition bit, its caches only need to be refreshed
+        + "  WHERE a.status = 0 " // we only need the first guy to set it, and must not override a full reload
         + "    AND a.id = ( SELECT resA.id " // only update ourselves;
         + "                   FROM Resource res " //
         + "                   JOIN res.agent resA " //
         + "                  WHERE res.id = :resourceId ) "), //
     @NamedQuery(name = Agent.QUERY_UPDATE_STATUS_BY_ALERT_DEFINITION, query = "" //
         + " UPDATE Agent a " //
-        + "    SET a.status = -1 " // negative numbers so that bitmask strategy does not conflict with this one
-        + "  WHERE a.status = 0 " // we only need the first guy to set it
+        + "    SET a.status = :status " // the alert definition bit, its caches only need to be refreshed
+        + "  WHERE a.status = 0 " // we only need the first guy to set it, and must not override a full reload
         + "    AND a.id = ( SELECT resA.id " // only update ourselves;
         + "                   FROM AlertDefinition ad " //
         + "                   JOIN ad.resource res " //
@@ -128,7 +136,7 @@ import org.rhq.core.domain.cloud.Server;
     @NamedQuery(name = Agent.QUERY_UPDATE_STATUS_BY_MEASUREMENT_BASELINE, query = "" //
         + " UPDATE Agent a " //
         + "    SET a.status = -1 " // negative numbers so that bitmask strategy does not conflict with this one
-        + "  WHERE a.status = 0 " // we only need the first guy to set it
+        + "  WHERE a.status >= 0 " // we only need the first guy to set it, but it supersedes the alert definition bit
         + "    AND a.id = ( SELECT resA.id " // only update ourselves;
         + "                   FROM MeasurementBaseline mb " //
         + "                   JOIN mb.schedule ms " //
@@ -138,12 +146,18 @@ import org.rhq.core.domain.cloud.Server;
     @NamedQuery(name = Agent.QUERY_UPDATE_STATUS_BY_AGENT, query = "" //
         + " UPDATE Agent a " //
         + "    SET a.status = -1 " // negative numbers so that bitmask strategy does not conflict with this one
-        + "  WHERE a.status = 0 " // we only need the first guy to set it
+        + "  WHERE a.status >= 0 " // we only need the first guy to set it, but it supersedes the alert definition bit
+        + "    AND a.id = :agentId "), //
+    @NamedQuery(name = Agent.QUERY_UPDATE_AVAILABILITY_STATUS_BY_AGENT, query = "" //
+        + " UPDATE Agent a " //
+        + "    SET a.status = a.status + :status " // the availability bit, added to whatever else is set
+        + "  WHERE a.status >= 0 " // a full reload supersedes it
+        + "    AND a.status < :status " // it is the highest bit, so a lower status does not have it set yet
         + "    AND a.id = :agentId "), //
     @NamedQuery(name = Agent.QUERY_UPDATE_STATUS_FOR_ALL, query = "" //
         + " UPDATE Agent a " //
         + "    SET a.status = -1 " // negative numbers so that bitmask strategy does not conflict with this one
-        + "  WHERE a.status = 0 "), //
+        + "  WHERE a.status >= 0 "), //
     @NamedQuery(name = Agent.QUERY_UPDATE_LAST_AVAIL_REPORT, query = "" //
         + " UPDATE Agent a " //
         + "    SET lastAvailabilityReport = :reportTime, backFilled = FALSE " //
@@ -155,7 +169,27 @@ import org.rhq.core.domain.cloud.Server;
     @NamedQuery(name = Agent.QUERY_UPDATE_LAST_AVAIL_PING_FORCE, query = "" //
         + " UPDATE Agent a " //
         + "    SET lastAvailabilityPing = :now " //
-        + "  WHERE name = :agentName ") //
+        + "  WHERE name = :agentName "), //
+    @NamedQuery(name = Agent.QUERY_FIND_DATAPOINTS_PER_MINUTE_BY_AGENT, query = "" //
+        + "SELECT res.agent.id, SUM(60000.0 / ms.interval) " //
+        + "  FROM MeasurementSchedule ms " //
+        + "  JOIN ms.resource res " //
+        + " WHERE ms.enabled = true " //
+        + "   AND ms.interval > 0 " //
+        + "   AND res.inventoryStatus = :inventoryStatus " //
+        + "GROUP BY res.agent.id "), //
+    @NamedQuery(name = Agent.QUERY_COUNT_RESOURCES_BY_AGENT, query = "" //
+        + "SELECT res.agent.id, COUNT(res) " //
+        + "  FROM Resource res " //
+        + " WHERE res.inventoryStatus = :inventoryStatus " //
+        + "GROUP BY res.agent.id "), //
+    @NamedQuery(name = Agent.QUERY_COUNT_EVENTS_BY_AGENT, query = "" //
+        + "SELECT res.agent.id, COUNT(ev) " //
+        + "  FROM Event ev " //
+        + "  JOIN ev.source evs " //
+        + "  JOIN evs.resource res " //
+        + " WHERE ev.timestamp >= :begin " //
+        + "GROUP BY res.agent.id ") //
 
 })
 @SequenceGenerator(allocationSize = org.rhq.core.domain.util.Constants.ALLOCATION_SIZE, name = "RHQ_AGENT_ID_SEQ", sequenceName = "RHQ_AGENT_ID_SEQ")
@@ -189,14 +223,21 @@ public class Agent implements Serializable {
 
     public static final String QUERY_UPDATE_STATUS_BY_RESOURCE = "Agent.updateStatusByResource";
     public static final String QUERY_UPDATE_STATUS_BY_ALERT_DEFINITION = "Agent.updateStatusByAlertDefinition";
+    public static final String QUERY_UPDATE_ALERT_DEFINITION_STATUS_BY_RESOURCE = "Agent.updateAlertDefinitionStatusByResource";
     public static final String QUERY_UPDATE_STATUS_BY_MEASUREMENT_BASELINE = "Agent.updateStatusByMeasurementBasleine";
     public static final String QUERY_UPDATE_STATUS_BY_AGENT = "Agent.updateStatusByAgent";
+    public static final String QUERY_UPDATE_AVAILABILITY_STATUS_BY_AGENT = "Agent.updateAvailabilityStatusByAgent";
     public static final String QUERY_UPDATE_STATUS_FOR_ALL = "Agent.updateStatusForAll";
 
     public static final String QUERY_UPDATE_LAST_AVAIL_REPORT = "Agent.updateLastAvailReport";
     public static final String QUERY_UPDATE_LAST_AVAIL_PING = "Agent.updateLastAvailPing";
     public static final String QUERY_UPDATE_LAST_AVAIL_PING_FORCE = "Agent.updateLastAvailPingForce";
 
+    // used to estimate the load of each agent, see FailoverListManagerBean
+    public static final String QUERY_FIND_DATAPOINTS_PER_MINUTE_BY_AGENT = "Agent.findDatapointsPerMinuteByAgent";
+    public static final String QUERY_COUNT_RESOURCES_BY_AGENT = "Agent.countResourcesByAgent";
+    public static final String QUERY_COUNT_EVENTS_BY_AGENT = "Agent.countEventsByAgent";
+
     // this value is set, when authorized user wants to reset the token
     public static final String SECURITY_TOKEN_RESET = "@#$reset$#@";
 
@@ -493,7 +534,8 @@ public class Agent implements Serializable {
 
         RESOURCE_HIERARCHY_UPDATED(1, "This agent's managed resource hierarchy has been updated"), //
         BASELINES_CALCULATED(2, "This agent's baselines have been recalculated"), //
-        ALERT_DEFINITION(4, "Some alert definition with an agent-specific condition category was updated");
+        ALERT_DEFINITION(4, "Some alert definition with an agent-specific condition category was updated"), //
+        AVAILABILITY_UPDATED(8, "Some of this agent's resource availabilities were set outside of its reports");
 
         public final int mask;
         public final String message;
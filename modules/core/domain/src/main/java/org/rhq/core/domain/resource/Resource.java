@@ -980,6 +980,84 @@ public class Resource implements Comparable<Resource>, Serializable {
         + "    FROM parentResource AS pr " //
         + "   WHERE ( pr.parentResourceId IS NULL ) ";
 
+    // RHQ_RESOURCE_ANCESTOR is the closure of the resource hierarchy. It has a row for every resource and each of its
+    // ancestors, including the resource itself at depth 0, so lineage and descendant queries need no recursion. A
+    // resource persisted without going through inventory has no rows at all, not even the one for itself.
+    public static final String QUERY_NATIVE_FIND_DESCENDANTS_BY_ANCESTOR = "" //
+        + "   SELECT a.descendant_id " //
+        + "     FROM rhq_resource_ancestor a " //
+        + "    WHERE a.ancestor_id = :resourceId " //
+        + " ORDER BY a.depth ";
+    /**
+     *  Note, special parameter values to represent NULL, do not use NULL:<pre>
+     *    :resourceTypeId = 0
+     *    :resourceName   = "$$$null$$$"</pre>
+     */
+    public static final String QUERY_NATIVE_FIND_DESCENDANTS_BY_ANCESTOR_TYPE_AND_NAME = "" //
+        + "   SELECT r.id " //
+        + "     FROM rhq_resource r " //
+        + "     JOIN rhq_resource_ancestor a ON (r.id = a.descendant_id) " //
+        + "    WHERE a.ancestor_id = :resourceId " //
+        + "      AND ( r.resource_type_id = :resourceTypeId OR :resourceTypeId = 0 ) " //
+        + "      AND ( UPPER(r.name) LIKE :resourceName OR :resourceName = '$$$null$$$' ) " //
+        + " ORDER BY a.depth ";
+    // the resource itself first, then its parent, and so on up to the platform
+    public static final String QUERY_NATIVE_FIND_ANCESTORS = "" //
+        + "   SELECT a.ancestor_id " //
+        + "     FROM rhq_resource_ancestor a " //
+        + "    WHERE a.descendant_id = :resourceId " //
+        + " ORDER BY a.depth ";
+    public static final String QUERY_NATIVE_FIND_PLATFORM_BY_ANCESTOR = "" //
+        + " SELECT r.id " //
+        + "   FROM rhq_resource r " //
+        + "   JOIN rhq_resource_ancestor a ON (r.id = a.ancestor_id) " //
+        + "  WHERE a.descendant_id = :resourceId " //
+        + "    AND r.parent_resource_id IS NULL ";
+    public static final String QUERY_NATIVE_COUNT_ANCESTOR_SELF = "" //
+        + " SELECT COUNT(*) " //
+        + "   FROM rhq_resource_ancestor a " //
+        + "  WHERE a.ancestor_id = :resourceId " //
+        + "    AND a.descendant_id = :resourceId ";
+    public static final String QUERY_NATIVE_INSERT_ANCESTOR_SELF = "" //
+        + " INSERT INTO rhq_resource_ancestor ( ancestor_id, descendant_id, depth ) " //
+        + "      VALUES ( :resourceId, :resourceId, 0 ) ";
+    public static final String QUERY_NATIVE_FIND_ANCESTOR_SELF_BY_RESOURCES = "" //
+        + " SELECT a.descendant_id " //
+        + "   FROM rhq_resource_ancestor a " //
+        + "  WHERE a.ancestor_id = a.descendant_id " //
+        + "    AND a.descendant_id IN ( :resourceIds ) ";
+    public static final String QUERY_NATIVE_INSERT_ANCESTOR_SELF_BY_RESOURCES = "" //
+        + " INSERT INTO rhq_resource_ancestor ( ancestor_id, descendant_id, depth ) " //
+        + "      SELECT r.id, r.id, 0 " //
+        + "        FROM rhq_resource r " //
+        + "       WHERE r.id IN ( :resourceIds ) ";
+    // links new resources, which have no descendants yet, to their parents and all of their ancestors
+    public static final String QUERY_NATIVE_INSERT_ANCESTORS_OF_PARENTS_BY_RESOURCES = "" //
+        + " INSERT INTO rhq_resource_ancestor ( ancestor_id, descendant_id, depth ) " //
+        + "      SELECT p.ancestor_id, r.id, p.depth + 1 " //
+        + "        FROM rhq_resource r, rhq_resource_ancestor p " //
+        + "       WHERE p.descendant_id = r.parent_resource_id " //
+        + "         AND r.id IN ( :resourceIds ) ";
+    // links the resource and all of its descendants to the parent and all of its ancestors
+    public static final String QUERY_NATIVE_INSERT_ANCESTORS_OF_SUBTREE = "" //
+        + " INSERT INTO rhq_resource_ancestor ( ancestor_id, descendant_id, depth ) " //
+        + "      SELECT p.ancestor_id, d.descendant_id, p.depth + d.depth + 1 " //
+        + "        FROM rhq_resource_ancestor p, rhq_resource_ancestor d " //
+        + "       WHERE p.descendant_id = :parentId " //
+        + "         AND d.ancestor_id = :resourceId ";
+    // unlinks the resource and all of its descendants from the resource's former ancestors
+    public static final String QUERY_NATIVE_DELETE_ANCESTORS_OF_SUBTREE = "" //
+        + " DELETE FROM rhq_resource_ancestor " //
+        + "       WHERE descendant_id IN ( SELECT d.descendant_id " //
+        + "                                  FROM rhq_resource_ancestor d " //
+        + "                                 WHERE d.ancestor_id = :resourceId ) " //
+        + "         AND ancestor_id NOT IN ( SELECT d.descendant_id " //
+        + "                                    FROM rhq_resource_ancestor d " //
+        + "                                   WHERE d.ancestor_id = :resourceId ) ";
+    public static final String QUERY_NATIVE_DELETE_ANCESTORS_BY_RESOURCES = "" //
+        + " DELETE FROM rhq_resource_ancestor " //
+        + "       WHERE descendant_id IN ( :resourceIds ) ";
+
     private static final int UUID_LENGTH = 36;
 
     private static final long serialVersionUID = 1L;
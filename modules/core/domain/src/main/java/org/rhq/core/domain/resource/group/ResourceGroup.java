@@ -373,7 +373,24 @@ public class ResourceGroup extends Group {
         + "         select res.ID, ? " // groupId
         + "           from RHQ_RESOURCE res " //
         + "          where res.ID in ( @@RESOURCE_IDS@@ ) ";
+    public static final String QUERY_NATIVE_ADD_DESCENDANTS_TO_GROUP_IMPLICIT = "" //
+        + "    insert into RHQ_RESOURCE_GROUP_RES_IMP_MAP ( RESOURCE_ID, RESOURCE_GROUP_ID ) " //
+        + "         select anc.DESCENDANT_ID, ? " // groupId
+        + "           from RHQ_RESOURCE_ANCESTOR anc " //
+        + "          where anc.ANCESTOR_ID = ? "; // resourceId
     public static final String QUERY_NATIVE_ADD_RESOURCES_TO_GROUP_IMPLICIT_RECURSIVE = "" //
+        + "    insert into RHQ_RESOURCE_GROUP_RES_IMP_MAP ( RESOURCE_ID, RESOURCE_GROUP_ID ) " //
+        + "         select res.ID, ? " // groupId
+        + "           from RHQ_RESOURCE res " //
+        + "          where ( res.ID = ? or " // resourceId
+        + "                  res.ID in ( select anc.DESCENDANT_ID " //
+        + "                                from RHQ_RESOURCE_ANCESTOR anc " //
+        + "                               where anc.ANCESTOR_ID = ? ) ) " // resourceId
+        + "            and ( res.ID not in ( select implicitMap.RESOURCE_ID " //
+        + "                                    from RHQ_RESOURCE_GROUP_RES_IMP_MAP implicitMap " //
+        + "                                   where implicitMap.RESOURCE_GROUP_ID = ? ) ) "; // groupId
+    // for resources missing from the hierarchy closure (RHQ_RESOURCE_ANCESTOR), only walks six levels of parents
+    public static final String QUERY_NATIVE_ADD_RESOURCES_TO_GROUP_IMPLICIT_RECURSIVE_BY_PARENTS = "" //
         + "    insert into RHQ_RESOURCE_GROUP_RES_IMP_MAP ( RESOURCE_ID, RESOURCE_GROUP_ID ) " //
         + "         select res.ID, ? " // groupId
         + "           from RHQ_RESOURCE res " //
@@ -404,6 +421,20 @@ public class ResourceGroup extends Group {
         + "          where RESOURCE_GROUP_ID = ? " // groupId
         + "            and RESOURCE_ID in ( @@RESOURCE_IDS@@ ) ";
     public static final String QUERY_NATIVE_REMOVE_RESOURCES_FROM_GROUP_IMPLICIT_RECURSIVE = "" //
+        + "   delete from RHQ_RESOURCE_GROUP_RES_IMP_MAP " // delete mappings
+        + "         where RESOURCE_GROUP_ID = ? " // groupId
+        + "           and ( RESOURCE_ID = ? or " // from any descendant of resourceId, including itself
+        + "                 RESOURCE_ID in ( select anc.DESCENDANT_ID " //
+        + "                                    from RHQ_RESOURCE_ANCESTOR anc " //
+        + "                                   where anc.ANCESTOR_ID = ? ) ) " // resourceId
+        + "           and RESOURCE_ID not in " // which aren't already descendants of members in the explicit set
+        + "               ( select anc.DESCENDANT_ID " //
+        + "                   from RHQ_RESOURCE_GROUP_RES_EXP_MAP alreadyMember, RHQ_RESOURCE_ANCESTOR anc " //
+        + "                  where alreadyMember.RESOURCE_GROUP_ID = ? " // groupId
+        + "                    and alreadyMember.RESOURCE_ID <> ? " // resourceId
+        + "                    and anc.ANCESTOR_ID = alreadyMember.RESOURCE_ID ) ";
+    // for resources missing from the hierarchy closure (RHQ_RESOURCE_ANCESTOR), only walks six levels of parents
+    public static final String QUERY_NATIVE_REMOVE_RESOURCES_FROM_GROUP_IMPLICIT_RECURSIVE_BY_PARENTS = "" //
         + "   delete from RHQ_RESOURCE_GROUP_RES_IMP_MAP " // delete mappings
         + "         where RESOURCE_GROUP_ID = ? " // groupId
         + "           and RESOURCE_ID in " // from any descendant of resourceId, including itself
@@ -23,6 +23,7 @@
 package org.rhq.core.domain.test;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -32,6 +33,7 @@ import javax.persistence.EntityManager;
 import javax.persistence.Query;
 
 import org.rhq.core.domain.alert.AlertCondition;
+import org.rhq.core.domain.alert.AlertConditionCategory;
 import org.rhq.core.domain.configuration.Configuration;
 import org.rhq.core.domain.content.ContentSource;
 import org.rhq.core.domain.content.ContentSourceType;
@@ -89,8 +91,10 @@ public class QueriesTest extends AbstractEJB3Test {
         add(MeasurementBaseline.QUERY_FIND_BY_COMPUTE_TIME, new Object[] { "computeTime", 1L, "numericType",
             NumericType.DYNAMIC });
 
-        Object a[] = new Object[]{ "agentId", null };
-        Object ac[] = new Object[]{ "agentId", null, "category", null };
+        List<Integer> noDefinitions = Collections.singletonList(0);
+        Object a[] = new Object[]{ "agentId", null, "alertDefinitionIds", noDefinitions, "allAlertDefinitions", 1 };
+        Object ac[] = new Object[]{ "agentId", null, "category", null, "alertDefinitionIds", noDefinitions,
+            "allAlertDefinitions", 1 };
         add(AlertCondition.QUERY_BY_CATEGORY_AVAILABILITY, ac);
         add(AlertCondition.QUERY_BY_CATEGORY_BASELINE, a);
         add(AlertCondition.QUERY_BY_CATEGORY_CHANGE, a);
@@ -103,6 +107,8 @@ public class QueriesTest extends AbstractEJB3Test {
         add(AlertCondition.QUERY_BY_CATEGORY_RESOURCE_CONFIG, a);
         add(AlertCondition.QUERY_BY_CATEGORY_THRESHOLD, a);
         add(AlertCondition.QUERY_BY_CATEGORY_TRAIT, a);
+        add(AlertCondition.QUERY_FIND_CACHE_STATE_BY_AGENT, new Object[] { "agentId", 1, "categories",
+            Collections.singletonList(AlertConditionCategory.THRESHOLD) });
 
         //
         ////////////////////////////////////////////
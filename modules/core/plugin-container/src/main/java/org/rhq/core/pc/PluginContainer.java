@@ -71,6 +71,7 @@ import org.rhq.core.pc.support.SupportManager;
 import org.rhq.core.pc.util.ComponentService;
 import org.rhq.core.pc.util.ComponentServiceImpl;
 import org.rhq.core.pc.util.LoggingThreadFactory;
+import org.rhq.core.pc.util.StartupTimeline;
 import org.rhq.core.pluginapi.util.FileUtils;
 
 /**
@@ -277,6 +278,8 @@ public class PluginContainer {
                 configuration = new PluginContainerConfiguration();
             }
 
+            StartupTimeline timeline = new StartupTimeline();
+
             purgeTmpDirectoryContents();
 
             if (configuration.isStartManagementBean()) {
@@ -287,9 +290,12 @@ public class PluginContainer {
             ResourceContainer.initialize(configuration);
 
             PluginLifecycleListenerManager pluginLifecycle = new PluginLifecycleListenerManagerImpl();
-            pluginManager = new PluginManager(configuration, pluginLifecycle);
+            pluginManager = new PluginManager(configuration, pluginLifecycle, timeline);
+            long phaseStart = StartupTimeline.now();
             inventoryManager = new InventoryManager(configuration, agentServiceStreamRemoter, pluginManager);
             inventoryManager.initialize();
+            timeline.phaseFinished("inventory manager", phaseStart);
+            phaseStart = StartupTimeline.now();
             eventManager = inventoryManager.getEventManager();
             eventManager.initialize();
             operationManager = inventoryManager.getOperationManager();
@@ -297,6 +303,8 @@ public class PluginContainer {
             measurementManager.initialize();
             contentManager = inventoryManager.getContentManager();
             contentManager.initialize();
+            timeline.phaseFinished("event, measurement and content managers", phaseStart);
+            phaseStart = StartupTimeline.now();
             pluginComponentFactory = inventoryManager.getPluginComponentFactory();
             ComponentService componentService = new ComponentServiceImpl(pluginManager);
             ConfigManagementFactory factory = new ConfigManagementFactoryImpl(componentService);
@@ -308,6 +316,7 @@ public class PluginContainer {
                 measurementManager);
             driftManager = new DriftManager(configuration, agentServiceStreamRemoter, inventoryManager);
             pingManager = new PingManager(agentServiceStreamRemoter);
+            timeline.phaseFinished("other managers", phaseStart);
 
             for (AgentServiceLifecycleListener ll : agentServiceListeners) {
                 for (AgentService service : services()) {
@@ -317,7 +326,7 @@ public class PluginContainer {
 
             started = true;
 
-            log.info("Plugin Container initialized.");
+            log.info("Plugin Container initialized. " + timeline);
         } finally {
             releaseLock(lock);
         }
@@ -50,6 +50,9 @@ public class PluginContainerConfiguration {
     private static final String DISABLED_RESOURCE_TYPES = PROP_PREFIX + "disabled-resource-types";
     private static final String ROOT_PLUGIN_CLASSLOADER_REGEX_PROP = PROP_PREFIX + "root-plugin-classloader-regex";
     private static final String CREATE_RESOURCE_CLASSLOADERS = PROP_PREFIX + "create-resource-classloaders";
+    private static final String PLUGIN_UNPACK_CACHE_ENABLED_PROP = PROP_PREFIX + "plugin-unpack-cache-enabled";
+    private static final String PLUGIN_LOADER_PARALLELISM_PROP = PROP_PREFIX + "plugin-loader-parallelism";
+    public static final int PLUGIN_LOADER_PARALLELISM_DEFAULT = 4;
     private static final String START_MANAGEMENT_BEAN_PROP = PROP_PREFIX + "start-management-bean";
     private static final String WAIT_FOR_SHUTDOWN_SERVICE_TERMINATION = PROP_PREFIX
         + "wait-for-shutdown-service-termination";
@@ -73,6 +76,8 @@ public class PluginContainerConfiguration {
     public static final long SERVICE_DISCOVERY_PERIOD_DEFAULT = 24 * 60 * 60L; // in seconds
     private static final String CHILD_RESOURCE_DISCOVERY_DELAY_PROP = PROP_PREFIX + "child-resource-discovery-delay";
     public static final long CHILD_RESOURCE_DISCOVERY_DELAY_DEFAULT = 5L; //in seconds
+    private static final String INVENTORY_CHECKPOINT_PERIOD_PROP = PROP_PREFIX + "inventory-checkpoint-period";
+    public static final long INVENTORY_CHECKPOINT_PERIOD_DEFAULT = 5 * 60L; // in seconds
     private static final String RESOURCE_FACTORY_CORE_POOL_SIZE_PROP = PROP_PREFIX + "resource-factory-core-pool-size";
     public static final int RESOURCE_FACTORY_CORE_POOL_SIZE_DEFAULT = 1;
     private static final String RESOURCE_FACTORY_MAX_POOL_SIZE_PROP = PROP_PREFIX + "resource-factory-max-pool-size";
@@ -89,6 +94,11 @@ public class PluginContainerConfiguration {
     public static final long AVAILABILITY_SCAN_PERIOD_DEFAULT = 30L;
     public static final String AVAILABILITY_SCAN_THREADPOOL_SIZE_PROP = "availability-scan-threadpool-size";
     public static final int AVAILABILITY_SCAN_THREADPOOL_SIZE_DEFAULT = 100;
+    private static final String AVAILABILITY_SCAN_PARALLELISM_PROP = PROP_PREFIX + "availability-scan-parallelism";
+    public static final int AVAILABILITY_SCAN_PARALLELISM_DEFAULT = 5;
+    private static final String AVAILABILITY_SCAN_RESOURCE_TIMEOUT_PROP = PROP_PREFIX
+        + "availability-scan-resource-timeout";
+    public static final long AVAILABILITY_SCAN_RESOURCE_TIMEOUT_DEFAULT = 10L; // in seconds
 
     // Measurement ----------
 
@@ -98,6 +108,14 @@ public class PluginContainerConfiguration {
     private static final String MEASUREMENT_COLLECTION_THREADCOUNT_PROP = PROP_PREFIX
         + "measurement-collection-threadpoolsize";
     public static final int MEASUREMENT_COLLECTION_THREADCOUNT_DEFAULT = 5;
+    private static final String MEASUREMENT_COLLECTION_PLUGIN_CONCURRENCY_PROP = PROP_PREFIX
+        + "measurement-collection-plugin-concurrency";
+    public static final int MEASUREMENT_COLLECTION_PLUGIN_CONCURRENCY_DEFAULT = 0; // no per-plugin limit
+    private static final String MEASUREMENT_REPORT_MAX_DATA_COUNT_PROP = PROP_PREFIX
+        + "measurement-report-max-data-count";
+    public static final long MEASUREMENT_REPORT_MAX_DATA_COUNT_DEFAULT = 10000L;
+    private static final String MEASUREMENT_REPORT_MAX_SIZE_PROP = PROP_PREFIX + "measurement-report-max-size";
+    public static final long MEASUREMENT_REPORT_MAX_SIZE_DEFAULT = 1024L * 1024L; // in bytes
 
     // Drift ----------
 
@@ -379,6 +397,54 @@ public class PluginContainerConfiguration {
         configuration.put(CREATE_RESOURCE_CLASSLOADERS, Boolean.valueOf(flag));
     }
 
+    /**
+     * Returns whether or not the jars embedded in the plugin jars are unpacked once into a persistent cache under the
+     * {@link #getDataDirectory() data directory}, keyed by the hash of the plugin jar, instead of into the temporary
+     * directory every time a plugin classloader is created. By default, this is the same as the
+     * {@link #isInsideAgent()} flag.
+     *
+     * @return <code>true</code> if the unpacked embedded jars are cached across plugin container restarts
+     */
+    public boolean isPluginUnpackCacheEnabled() {
+        Object val = configuration.get(PLUGIN_UNPACK_CACHE_ENABLED_PROP);
+
+        if (val == null) {
+            return isInsideAgent();
+        }
+
+        return ((Boolean) val).booleanValue();
+    }
+
+    /**
+     * Sets the flag to indicate if the embedded jars of the plugins are unpacked into a persistent cache.
+     * See {@link #isPluginUnpackCacheEnabled()} for more details of what this flag means.
+     *
+     * @param flag
+     */
+    public void setPluginUnpackCacheEnabled(boolean flag) {
+        configuration.put(PLUGIN_UNPACK_CACHE_ENABLED_PROP, Boolean.valueOf(flag));
+    }
+
+    /**
+     * Returns the number of threads used at startup to parse the plugin descriptors, and to create the classloaders
+     * and initialize the plugins that do not depend on each other.
+     *
+     * @return the number of threads loading the plugins
+     */
+    public int getPluginLoaderParallelism() {
+        Integer parallelism = (Integer) configuration.get(PLUGIN_LOADER_PARALLELISM_PROP);
+        return (parallelism == null) ? PLUGIN_LOADER_PARALLELISM_DEFAULT : parallelism.intValue();
+    }
+
+    /**
+     * Sets the number of threads used at startup to load the plugins.
+     *
+     * @param parallelism the number of threads loading the plugins
+     */
+    public void setPluginLoaderParallelism(int parallelism) {
+        configuration.put(PLUGIN_LOADER_PARALLELISM_PROP, Integer.valueOf(parallelism));
+    }
+
     /**
      * @return True if the management bean of the plugin container should be started (the default).
      * Note that it is only useful to switch this off in tests (and that only on rare occasions).
@@ -502,6 +568,47 @@ public class PluginContainerConfiguration {
         configuration.put(AVAILABILITY_SCAN_THREADPOOL_SIZE_PROP, Integer.valueOf(size));
     }
 
+    /**
+     * Returns the number of resources whose availability can be checked concurrently during a single availability
+     * scan. Independent subtrees of the inventory are scanned in parallel; a resource is always checked before its
+     * children.
+     *
+     * @return the number of threads walking the inventory during an availability scan
+     */
+    public int getAvailabilityScanParallelism() {
+        Integer parallelism = (Integer) configuration.get(AVAILABILITY_SCAN_PARALLELISM_PROP);
+        return (parallelism == null) ? AVAILABILITY_SCAN_PARALLELISM_DEFAULT : parallelism.intValue();
+    }
+
+    /**
+     * Sets the number of resources whose availability can be checked concurrently during a single availability scan.
+     *
+     * @param parallelism the number of threads walking the inventory during an availability scan
+     */
+    public void setAvailabilityScanParallelism(int parallelism) {
+        configuration.put(AVAILABILITY_SCAN_PARALLELISM_PROP, Integer.valueOf(parallelism));
+    }
+
+    /**
+     * Returns the length of time, in seconds, an availability scan waits for the availability check of a single
+     * resource. A resource whose check takes longer keeps its last known availability for that scan.
+     *
+     * @return the per-resource availability check timeout in seconds
+     */
+    public long getAvailabilityScanResourceTimeout() {
+        Long timeout = (Long) configuration.get(AVAILABILITY_SCAN_RESOURCE_TIMEOUT_PROP);
+        return (timeout == null) ? AVAILABILITY_SCAN_RESOURCE_TIMEOUT_DEFAULT : timeout.longValue();
+    }
+
+    /**
+     * Sets the length of time, in seconds, an availability scan waits for the availability check of a single resource.
+     *
+     * @param timeout the per-resource availability check timeout in seconds
+     */
+    public void setAvailabilityScanResourceTimeout(long timeout) {
+        configuration.put(AVAILABILITY_SCAN_RESOURCE_TIMEOUT_PROP, Long.valueOf(timeout));
+    }
+
     /**
      * Returns the length of time, in seconds, before measurements begin getting collected.
      *
@@ -564,6 +671,30 @@ public class PluginContainerConfiguration {
         configuration.put(SERVER_DISCOVERY_PERIOD_PROP, Long.valueOf(period));
     }
 
+    /**
+     * Returns the length of time, in seconds, between each checkpoint of the inventory to the data directory.
+     * A checkpoint only writes the resources that changed since the previous one. A value of 0 or less disables
+     * the periodic checkpoints; the inventory is then only persisted when the plugin container shuts down.
+     *
+     * <p>If this value was never {@link #setInventoryCheckpointPeriod set}, the default will be
+     * {@link #INVENTORY_CHECKPOINT_PERIOD_DEFAULT}.</p>
+     *
+     * @return number of seconds between each inventory checkpoint
+     */
+    public long getInventoryCheckpointPeriod() {
+        Long period = (Long) configuration.get(INVENTORY_CHECKPOINT_PERIOD_PROP);
+        return (period == null) ? INVENTORY_CHECKPOINT_PERIOD_DEFAULT : period.longValue();
+    }
+
+    /**
+     * Sets the length of time, in seconds, between each checkpoint of the inventory to the data directory.
+     *
+     * @param period number of seconds between each inventory checkpoint
+     */
+    public void setInventoryCheckpointPeriod(long period) {
+        configuration.put(INVENTORY_CHECKPOINT_PERIOD_PROP, Long.valueOf(period));
+    }
+
     /**
      * Returns the length of time, in seconds, before auto-discovery of services first begins.
      *
@@ -668,6 +799,67 @@ public class PluginContainerConfiguration {
         configuration.put(MEASUREMENT_COLLECTION_THREADCOUNT_PROP, Integer.valueOf(size));
     }
 
+    /**
+     * The maximum number of measurement collections that can be run concurrently for resources of any one plugin.
+     * This keeps a single plugin whose managed resources are slow or hung from occupying every collection thread.
+     * A value of 0 (or less) means there is no per-plugin limit other than the size of the collection thread pool.
+     *
+     * @return the per-plugin collection concurrency limit
+     */
+    public int getMeasurementCollectionPluginConcurrency() {
+        Integer limit = (Integer) configuration.get(MEASUREMENT_COLLECTION_PLUGIN_CONCURRENCY_PROP);
+        return (limit == null) ? MEASUREMENT_COLLECTION_PLUGIN_CONCURRENCY_DEFAULT : limit.intValue();
+    }
+
+    /**
+     * Defines the number of measurement collections that can run concurrently for resources of any one plugin.
+     *
+     * @param limit the per-plugin limit, 0 (or less) means no limit
+     */
+    public void setMeasurementCollectionPluginConcurrency(int limit) {
+        configuration.put(MEASUREMENT_COLLECTION_PLUGIN_CONCURRENCY_PROP, Integer.valueOf(limit));
+    }
+
+    /**
+     * The number of data items at which a measurement report is sent to the server right away, rather than at the end
+     * of its 30 second send period. A value of 0 (or less) means there is no limit.
+     *
+     * @return the maximum number of data items in a measurement report
+     */
+    public long getMeasurementReportMaxDataCount() {
+        Long count = (Long) configuration.get(MEASUREMENT_REPORT_MAX_DATA_COUNT_PROP);
+        return (count == null) ? MEASUREMENT_REPORT_MAX_DATA_COUNT_DEFAULT : count.longValue();
+    }
+
+    /**
+     * Defines the number of data items at which a measurement report is sent right away.
+     *
+     * @param count the maximum number of data items, 0 (or less) means no limit
+     */
+    public void setMeasurementReportMaxDataCount(long count) {
+        configuration.put(MEASUREMENT_REPORT_MAX_DATA_COUNT_PROP, Long.valueOf(count));
+    }
+
+    /**
+     * The estimated size, in bytes, at which a measurement report is sent to the server right away, rather than at the
+     * end of its 30 second send period. A value of 0 (or less) means there is no limit.
+     *
+     * @return the maximum size of a measurement report in bytes
+     */
+    public long getMeasurementReportMaxSize() {
+        Long size = (Long) configuration.get(MEASUREMENT_REPORT_MAX_SIZE_PROP);
+        return (size == null) ? MEASUREMENT_REPORT_MAX_SIZE_DEFAULT : size.longValue();
+    }
+
+    /**
+     * Defines the estimated size at which a measurement report is sent right away.
+     *
+     * @param size the maximum size in bytes, 0 (or less) means no limit
+     */
+    public void setMeasurementReportMaxSize(long size) {
+        configuration.put(MEASUREMENT_REPORT_MAX_SIZE_PROP, Long.valueOf(size));
+    }
+
     /**
      * Returns the length of time, in seconds, before drift detection first begins.
      *
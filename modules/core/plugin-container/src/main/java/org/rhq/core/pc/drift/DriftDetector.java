@@ -31,11 +31,13 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.logging.Log;
@@ -49,6 +51,7 @@ import org.rhq.core.domain.drift.DriftChangeSetCategory;
 import org.rhq.core.domain.drift.DriftDefinition;
 import org.rhq.core.domain.drift.Filter;
 import org.rhq.core.util.MessageDigestGenerator;
+import org.rhq.core.util.file.FileDigester;
 import org.rhq.core.util.file.FileVisitor;
 
 /**
@@ -67,7 +70,9 @@ public class DriftDetector implements Runnable {
 
     private final ChangeSetManager changeSetMgr;
 
-    private final MessageDigestGenerator digestGenerator = new MessageDigestGenerator(MessageDigestGenerator.SHA_256);
+    // The snapshots already let us skip hashing files whose timestamp and size did not change, so the digester
+    // needs no cache of its own. It hashes the files that do need it in parallel.
+    private final FileDigester digester = new FileDigester(MessageDigestGenerator.SHA_256);
 
     private final DriftClient driftClient;
 
@@ -280,25 +285,26 @@ public class DriftDetector implements Runnable {
             }
 
             // add new files to the snapshotEntries and deltaEntries
-            for (File file : newFiles) {
-                try {
-                    if (log.isInfoEnabled()) {
-                        log.info("Detected added file for " + schedule + " --> " + file.getAbsolutePath());
-                    }
-
-                    FileEntry addedFileEntry = getAddedFileEntry(basedir, file);
-                    if (null != addedFileEntry) {
-                        addedEntries.add(addedFileEntry);
-                    }
+            if (log.isInfoEnabled()) {
+                for (File file : newFiles) {
+                    log.info("Detected added file for " + schedule + " --> " + file.getAbsolutePath());
+                }
+            }
+            digestAddedFiles(new ArrayList<File>(newFiles), new AddedFileCallback(basedir) {
+                @Override
+                void added(FileEntry addedFileEntry) {
+                    addedEntries.add(addedFileEntry);
+                }
 
-                } catch (Throwable t) {
+                @Override
+                void error(File file, Throwable t) {
                     // report the error but keep going, perhaps it is specific to a single file, try to
                     // finish the change set generation.
                     log.error(
                         "An unexpected error occurred while generating a drift change set for file " + file.getPath()
                             + " in schedule " + schedule + ". Skipping file.", t);
                 }
-            }
+            });
 
             // The new snapshot contains all changed, unchanged and added files. Not removed files.
             final List<FileEntry> snapshotEntries = new LinkedList<FileEntry>(unchangedEntries);
@@ -360,36 +366,62 @@ public class DriftDetector implements Runnable {
     }
 
     /**
+     * Receives the entries of added files as their digests are generated, in the order of the files.
+     * <p/>
      * File.canRead() is basically a security check and does not guarantee that the file contents can truly be read.
      * Certain files, like socket files on linux, can not be processed and it's not known until actually trying to
      * construct a FileInputStream, as is done when we actually try to generate the digest. These files will generate
-     * a FileNotFoundException. This method will catch, log and suppress that issue, and return null
-     * indicating the file is not suitable for drift detection.
-     *
-     * @param basedir the drift def base directory
-     * @param file the new file to add
-     * @return the new FileEntry, or null if this file is not appropriate for drift detection (typically if the
-     * underlying file does not support the needed File operations.
-     * @throws IOException if something unexpected occurs, outside of the FileNotFoundException it looks for.
+     * a FileNotFoundException. This callback will log and suppress that issue, and skip the file as not suitable for
+     * drift detection.
      */
-    private FileEntry getAddedFileEntry(File basedir, File file) throws IOException {
-        FileEntry result = null;
+    private abstract class AddedFileCallback implements FileDigester.Callback {
+        private final File basedir;
 
-        try {
-            String sha256 = sha256(file);
-            String relativePath = relativePath(basedir, file);
-            long lastModified = file.lastModified();
-            long length = file.length();
+        AddedFileCallback(File basedir) {
+            this.basedir = basedir;
+        }
 
-            result = addedFileEntry(relativePath, sha256, lastModified, length);
+        /**
+         * @param addedFileEntry the entry of a file that can be added to a change set
+         * @throws IOException if the entry could not be handled
+         */
+        abstract void added(FileEntry addedFileEntry) throws IOException;
 
-        } catch (FileNotFoundException e) {
-            if (log.isDebugEnabled()) {
-                log.debug("Skipping " + file.getPath() + " since it is missing or is not a physically readable file.");
+        /**
+         * @param file the file that could not be added
+         * @param t the unexpected error, anything other than the FileNotFoundException described above
+         */
+        abstract void error(File file, Throwable t);
+
+        @Override
+        public void digested(File file, String sha256) {
+            try {
+                added(addedFileEntry(relativePath(basedir, file), sha256, file.lastModified(), file.length()));
+            } catch (Throwable t) {
+                error(file, t);
             }
         }
 
-        return result;
+        @Override
+        public void failed(File file, IOException e) {
+            if (e instanceof FileNotFoundException) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Skipping " + file.getPath()
+                        + " since it is missing or is not a physically readable file.");
+                }
+            } else {
+                error(file, e);
+            }
+        }
+    }
+
+    private void digestAddedFiles(List<File> files, AddedFileCallback callback) throws IOException {
+        try {
+            digester.digest(files, callback);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while generating the digests of added files");
+        }
     }
 
     static private void safeClear(Collection<?>... collections) {
@@ -436,6 +468,11 @@ public class DriftDetector implements Runnable {
 
         boolean result = false;
 
+        // the entries of the files that still exist, in snapshot order, and those among them that need a SHA
+        // comparison. All of those SHAs are generated at once so that they can be generated in parallel.
+        List<FileEntry> existingEntries = new ArrayList<FileEntry>();
+        final List<File> filesToDigest = new ArrayList<File>();
+
         for (FileEntry entry : snapshotReader) {
             File file = new File(basedir, entry.getFile());
             newFiles.remove(file);
@@ -455,8 +492,7 @@ public class DriftDetector implements Runnable {
                 continue;
 
             } else {
-                String currentSHA = null;
-                boolean isChanged = false;
+                existingEntries.add(entry);
 
                 // perform a SHA comparison if we are unable to compare size and lastModified or if the
                 // size or lastModified test fails.  We may not have size or lastModified values for the
@@ -464,31 +500,59 @@ public class DriftDetector implements Runnable {
                 // pinning scenario.  The server does not store that information and will provide -1 for defaults.
                 if (entry.getLastModified() == -1 || entry.getSize() == -1
                     || entry.getLastModified() != file.lastModified() || entry.getSize() != file.length()) {
-
-                    currentSHA = sha256(file);
-                    isChanged = !entry.getNewSHA().equals(currentSHA);
+                    filesToDigest.add(file);
                 }
+            }
+        }
 
-                if (isChanged) {
-                    FileEntry changedEntry = changedFileEntry(entry.getFile(), entry.getNewSHA(), currentSHA,
-                        file.lastModified(), file.length());
-                    changedEntries.add(changedEntry);
+        final Map<File, String> currentSHAs = new HashMap<File, String>(filesToDigest.size() * 2);
+        final IOException[] failure = new IOException[1];
+        try {
+            digester.digest(filesToDigest, new FileDigester.Callback() {
+                @Override
+                public void digested(File file, String digest) {
+                    currentSHAs.put(file, digest);
+                }
 
-                    if (null != changedPinnedEntries) {
-                        changedPinnedEntries.add(entry);
+                @Override
+                public void failed(File file, IOException error) {
+                    if (failure[0] == null) {
+                        failure[0] = error;
                     }
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while generating the digests of snapshot files");
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
 
-                } else {
-                    if (-1 == entry.getLastModified()) {
-                        entry.setLastModified(file.lastModified());
-                        result = true;
-                    }
-                    if (-1 == entry.getSize()) {
-                        entry.setSize(file.length());
-                        result = true;
-                    }
-                    unchangedEntries.add(entry);
+        for (FileEntry entry : existingEntries) {
+            File file = new File(basedir, entry.getFile());
+            String currentSHA = currentSHAs.get(file);
+            boolean isChanged = currentSHA != null && !entry.getNewSHA().equals(currentSHA);
+
+            if (isChanged) {
+                FileEntry changedEntry = changedFileEntry(entry.getFile(), entry.getNewSHA(), currentSHA,
+                    file.lastModified(), file.length());
+                changedEntries.add(changedEntry);
+
+                if (null != changedPinnedEntries) {
+                    changedPinnedEntries.add(entry);
+                }
+
+            } else {
+                if (-1 == entry.getLastModified()) {
+                    entry.setLastModified(file.lastModified());
+                    result = true;
+                }
+                if (-1 == entry.getSize()) {
+                    entry.setSize(file.length());
+                    result = true;
                 }
+                unchangedEntries.add(entry);
             }
         }
 
@@ -682,41 +746,46 @@ public class DriftDetector implements Runnable {
     }
 
     private void doDirectoryScan(final DriftDetectionSchedule schedule, DriftDefinition driftDef, final File basedir,
-        final ChangeSetWriter writer) {
+        final ChangeSetWriter writer) throws IOException {
 
         List<Filter> includes = driftDef.getIncludes();
         List<Filter> excludes = driftDef.getExcludes();
 
+        // collect the files first so that their digests can be generated in parallel
+        final List<File> files = new ArrayList<File>();
         for (File dir : getScanDirectories(basedir, includes)) {
             forEachFile(dir, new FilterFileVisitor(basedir, includes, excludes, new FileVisitor() {
                 @Override
                 public void visit(File file) {
-                    try {
-                        if (!file.canRead()) {
-                            if (log.isDebugEnabled()) {
-                                log.debug("Skipping " + file.getPath() + " since we do not have read access.");
-                            }
-                            return;
-                        }
-
+                    if (!file.canRead()) {
                         if (log.isDebugEnabled()) {
-                            log.debug("Adding " + file.getPath() + " to coverage change set for " + schedule);
-                        }
-
-                        FileEntry addedFileEntry = getAddedFileEntry(basedir, file);
-                        if (null != addedFileEntry) {
-                            writer.write(addedFileEntry);
+                            log.debug("Skipping " + file.getPath() + " since we do not have read access.");
                         }
+                        return;
+                    }
 
-                    } catch (Throwable t) {
-                        // report the error but keep going, perhaps it is specific to a single file, try to
-                        // finish the detection.
-                        log.error("An unexpected error occurred while generating a coverage change set for file "
-                            + file.getPath() + " in schedule " + schedule + ". Skipping file.", t);
+                    if (log.isDebugEnabled()) {
+                        log.debug("Adding " + file.getPath() + " to coverage change set for " + schedule);
                     }
+                    files.add(file);
                 }
             }));
         }
+
+        digestAddedFiles(files, new AddedFileCallback(basedir) {
+            @Override
+            void added(FileEntry addedFileEntry) throws IOException {
+                writer.write(addedFileEntry);
+            }
+
+            @Override
+            void error(File file, Throwable t) {
+                // report the error but keep going, perhaps it is specific to a single file, try to
+                // finish the detection.
+                log.error("An unexpected error occurred while generating a coverage change set for file "
+                    + file.getPath() + " in schedule " + schedule + ". Skipping file.", t);
+            }
+        });
     }
 
     private String relativePath(File basedir, File file) {
@@ -732,10 +801,6 @@ public class DriftDetector implements Runnable {
         return filePath.substring(basedirLen);
     }
 
-    private String sha256(File file) throws IOException {
-        return digestGenerator.calcDigestString(file);
-    }
-
     private String basedir(int resourceId, DriftDefinition driftDef) {
         return driftClient.getAbsoluteBaseDirectory(resourceId, driftDef).getAbsolutePath();
     }
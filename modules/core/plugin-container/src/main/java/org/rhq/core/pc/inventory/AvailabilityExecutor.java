@@ -27,10 +27,20 @@ import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.logging.Log;
@@ -194,6 +204,7 @@ public class AvailabilityExecutor implements Runnable, Callable<AvailabilityRepo
         }
 
         addScanHistory(scan);
+        inventoryManager.getAvailabilityScanStatistics().scanCompleted(scan);
 
         if (LOG.isDebugEnabled()) {
             long end = System.currentTimeMillis();
@@ -213,27 +224,109 @@ public class AvailabilityExecutor implements Runnable, Callable<AvailabilityRepo
     }
 
     /**
-      * Checks the availability of one resource and then its children.
-      *
-      * @throws InterruptedException if this checking thread was interrupted
-      */
+     * Checks the availability of a resource and then of its descendants. The availability checks themselves run in
+     * the availability check thread pool of the inventory manager, so independent subtrees are checked concurrently
+     * and a slow or hung check only holds up its own subtree. This thread decides which resources need a check,
+     * collects the results and builds the report, and it only moves on to the children of a resource once the
+     * resource has been evaluated. A check that does not complete within the per-resource timeout, counted from when
+     * it starts to run, is abandoned for this scan and the resource keeps its last known availability.
+     *
+     * @throws InterruptedException if this checking thread was interrupted
+     */
     protected void checkInventory(Resource resource, AvailabilityReport availabilityReport,
                                   AvailabilityType parentAvailType, boolean isForced, Scan scan, boolean traceEnabled) throws InterruptedException {
 
+        ExecutorService executor = this.inventoryManager.getAvailabilityCheckExecutor();
+        int parallelism = this.inventoryManager.getAvailabilityScanParallelism();
+        long timeout = this.inventoryManager.getAvailabilityCheckTimeout();
+
+        CompletionService<AvailabilityType> completionService = (null == executor) ? null
+            : new ExecutorCompletionService<AvailabilityType>(executor);
+        LinkedList<Check> ready = new LinkedList<Check>();
+        LinkedList<Check> waiting = new LinkedList<Check>();
+        Map<Future<AvailabilityType>, Check> running = new HashMap<Future<AvailabilityType>, Check>();
+
+        ready.add(new Check(resource, parentAvailType, isForced));
+
+        try {
+            while (!ready.isEmpty() || !waiting.isEmpty() || !running.isEmpty()) {
+                while (!ready.isEmpty()) {
+                    Check check = ready.removeFirst();
+                    if (!prepareCheck(check, scan, traceEnabled)) {
+                        continue;
+                    }
+                    if (null != check.current) {
+                        completeCheck(check, availabilityReport, scan, traceEnabled, ready);
+                    } else if (null == completionService) {
+                        // the inventory manager is not initialized, there is no thread pool to run the check in
+                        checkAvailability(check, traceEnabled);
+                        completeCheck(check, availabilityReport, scan, traceEnabled, ready);
+                    } else {
+                        waiting.add(check);
+                    }
+                }
+
+                while (!waiting.isEmpty() && running.size() < parallelism) {
+                    Check check = waiting.removeFirst();
+                    running.put(completionService.submit(check), check);
+                }
+
+                if (!running.isEmpty()) {
+                    long nextDeadline = Long.MAX_VALUE;
+                    long start = System.currentTimeMillis();
+                    for (Check check : running.values()) {
+                        nextDeadline = Math.min(nextDeadline, check.getDeadline(start, timeout));
+                    }
+                    Future<AvailabilityType> done = completionService.poll(
+                        Math.max(0, nextDeadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    // a future we don't know about is one that timed out and has been canceled
+                    Check check = (null == done) ? null : running.remove(done);
+                    if (null != check) {
+                        checkAvailability(check, done, traceEnabled);
+                        completeCheck(check, availabilityReport, scan, traceEnabled, ready);
+                    }
+
+                    long now = System.currentTimeMillis();
+                    for (Iterator<Map.Entry<Future<AvailabilityType>, Check>> i = running.entrySet().iterator(); i
+                        .hasNext();) {
+                        Map.Entry<Future<AvailabilityType>, Check> entry = i.next();
+                        if (now >= entry.getValue().getDeadline(now, timeout)) {
+                            i.remove();
+                            entry.getKey().cancel(true);
+                            checkTimedOut(entry.getValue(), timeout, scan);
+                            completeCheck(entry.getValue(), availabilityReport, scan, traceEnabled, ready);
+                        }
+                    }
+                }
+            }
+        } finally {
+            for (Future<AvailabilityType> future : running.keySet()) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Determines whether the availability of the resource has to be checked, pushing out its next scheduled check
+     * as needed. If no check is needed the current availability of the check is set.
+     *
+     * @return false if no availability is to be reported for the resource and its descendants
+     */
+    private boolean prepareCheck(Check check, Scan scan, boolean traceEnabled) {
+        Resource resource = check.resource;
+
         // Only report avail for committed Resources - that's all the Server cares about.
         if (resource.getId() == 0 || resource.getInventoryStatus() != InventoryStatus.COMMITTED) {
-            return;
+            return false;
         }
 
         ResourceContainer resourceContainer = this.inventoryManager.getResourceContainer(resource.getId());
         // Only report avail for synchronized Resources, otherwise the Server will likely know nothing of the Resource.
         if (resourceContainer == null
             || resourceContainer.getSynchronizationState() != ResourceContainer.SynchronizationState.SYNCHRONIZED) {
-            return;
+            return false;
         }
-
-        // The avail proxy guarantees fast response time for an avail check
-        AvailabilityFacet resourceAvailabilityProxy = resourceContainer.getAvailabilityProxy();
+        check.resourceContainer = resourceContainer;
 
         ++scan.numResources;
 
@@ -245,7 +338,7 @@ public class AvailabilityExecutor implements Runnable, Callable<AvailabilityRepo
 
         // if no avail check is scheduled or we're forcing the check, schedule the next check. Note that a forcedCheck
         // is "off-schedule" so we need to push out the next check.
-        if ((0 == availabilityScheduleTime) || isForced) {
+        if ((0 == availabilityScheduleTime) || check.isForced) {
             // if there is no availability schedule (platform) then just perform the avail check
             // (note, platforms always return UP anyway).
             if (null == availScheduleRequest) {
@@ -296,16 +389,15 @@ public class AvailabilityExecutor implements Runnable, Callable<AvailabilityRepo
         }
 
         // find out what the avail was the last time we checked it. this may be null
-        Availability previous = this.inventoryManager.getAvailabilityIfKnown(resource);
-        AvailabilityType previousType = (null == previous) ? UNKNOWN : previous.getAvailabilityType();
-        AvailabilityType current = null;
+        check.previous = this.inventoryManager.getAvailabilityIfKnown(resource);
+        check.previousType = (null == check.previous) ? UNKNOWN : check.previous.getAvailabilityType();
 
         // If the resource's parent is DOWN, the rules are that the resource and all of the parent's other
         // descendants, must also be DOWN. So, there's no need to even ask the resource component
         // for its current availability - its current avail is set to the parent avail type and that's that.
         // Otherwise, checkAvail as needed.
-        if (deferToParent || (DOWN == parentAvailType)) {
-            current = parentAvailType;
+        if (deferToParent || (DOWN == check.parentAvailType)) {
+            check.current = check.parentAvailType;
             ++scan.numDeferToParent;
 
             // For the DOWN parent case it's unclear to me whether we should push out the avail check time of
@@ -313,12 +405,12 @@ public class AvailabilityExecutor implements Runnable, Callable<AvailabilityRepo
             // schedule already established.
 
             if (traceEnabled) {
-                LOG.trace("Gave parent availability " + parentAvailType + " to " + resource);
+                LOG.trace("Gave parent availability " + check.parentAvailType + " to " + resource);
             }
         } else {
             // regardless of whether the avail schedule is met, we still must check avail if isForce is true or if
             // it's a full report and we don't yet have an avail for the resource.
-            if (!checkAvail && (isForced || (scan.isFull && null == previous))) {
+            if (!checkAvail && (check.isForced || (scan.isFull && null == check.previous))) {
                 checkAvail = true;
             }
 
@@ -326,46 +418,86 @@ public class AvailabilityExecutor implements Runnable, Callable<AvailabilityRepo
                 if (traceEnabled) {
                     LOG.trace("Now checking availability for " + resource);
                 }
+                ++scan.numGetAvailabilityCalls;
+            } else {
+                check.current = check.previousType;
+            }
+        }
 
-                try {
-                    ++scan.numGetAvailabilityCalls;
+        return true;
+    }
 
-                    // if the component is started, ask what its current availability is as of right now;
-                    // if it's not started, then assume it's down, and the next time we check,
-                    // we'll see if it's started and check for real then - otherwise, keep assuming it's
-                    // down (this is for the case when a plugin component can't start for whatever reason
-                    // or is just slow to start)
-                    if (resourceContainer.getResourceComponentState() == ResourceComponentState.STARTED) {
-                        current = translate(resourceAvailabilityProxy.getAvailability(), previousType);
+    /**
+     * Runs the availability check in the calling thread.
+     */
+    private void checkAvailability(Check check, boolean traceEnabled) {
+        try {
+            setCurrentAvailability(check, check.call(), traceEnabled);
+        } catch (Throwable t) {
+            checkFailed(check, t);
+        }
+    }
 
-                    } else {
-                        // try to start the component and then perform the avail check
-                        this.inventoryManager.activateResource(resource, resourceContainer, false);
-                        if (resourceContainer.getResourceComponentState() == ResourceComponentState.STARTED) {
-                            current = translate(resourceAvailabilityProxy.getAvailability(), previousType);
-                        } else {
-                            current = DOWN;
-                        }
-                    }
-                    if (traceEnabled) {
-                        LOG.trace("Current availability is " + current + " for " + resource);
-                    }
-                } catch (Throwable t) {
-                    ResourceError resourceError = new ResourceError(resource, ResourceErrorType.AVAILABILITY_CHECK,
-                        t.getLocalizedMessage(), ThrowableUtil.getStackAsString(t), System.currentTimeMillis());
-                    this.inventoryManager.sendResourceErrorToServer(resourceError);
-                    LOG.warn("Availability collection failed with exception on " + resource
-                        + ", availability will be reported as " + DOWN.name() + ", reason=" + t.getMessage());
-                    current = DOWN;
-                }
-            } else {
-                current = previousType;
+    /**
+     * Sets the current availability from the result of an availability check that ran in the thread pool.
+     */
+    private void checkAvailability(Check check, Future<AvailabilityType> future, boolean traceEnabled)
+        throws InterruptedException {
+        try {
+            setCurrentAvailability(check, future.get(), traceEnabled);
+        } catch (ExecutionException e) {
+            checkFailed(check, e.getCause());
+        }
+    }
+
+    private void setCurrentAvailability(Check check, AvailabilityType availabilityType, boolean traceEnabled) {
+        if (null == availabilityType) {
+            // the check of a previous scan timed out and is still running, keep the last known availability
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Availability check of a previous scan is still running for " + check.resource
+                    + ", keeping availability " + check.previousType);
             }
+            check.current = check.previousType;
+            return;
+        }
+
+        this.inventoryManager.getAvailabilityScanStatistics().checkCompleted(check.resource.getResourceType(),
+            check.duration);
+        check.current = translate(availabilityType, check.previousType);
+        if (traceEnabled) {
+            LOG.trace("Current availability is " + check.current + " for " + check.resource);
         }
+    }
+
+    private void checkFailed(Check check, Throwable t) {
+        ResourceError resourceError = new ResourceError(check.resource, ResourceErrorType.AVAILABILITY_CHECK,
+            t.getLocalizedMessage(), ThrowableUtil.getStackAsString(t), System.currentTimeMillis());
+        this.inventoryManager.sendResourceErrorToServer(resourceError);
+        LOG.warn("Availability collection failed with exception on " + check.resource
+            + ", availability will be reported as " + DOWN.name() + ", reason=" + t.getMessage());
+        check.current = DOWN;
+    }
+
+    private void checkTimedOut(Check check, long timeout, Scan scan) {
+        ++scan.numTimeouts;
+        this.inventoryManager.getAvailabilityScanStatistics().checkTimedOut(check.resource.getResourceType(), timeout);
+        LOG.warn("Availability check did not complete within [" + timeout + "]ms for " + check.resource
+            + ", availability will be reported as " + check.previousType.name() + " for this scan");
+        check.current = check.previousType;
+    }
+
+    /**
+     * Reports the current availability of the resource and queues the checks of its children.
+     */
+    private void completeCheck(Check check, AvailabilityReport availabilityReport, Scan scan, boolean traceEnabled,
+        List<Check> ready) {
+        Resource resource = check.resource;
+        AvailabilityType current = check.current;
+        boolean isForced = check.isForced;
 
         // Add the availability to the report if it changed from its previous state or if this is a full report.
         // Update the resource container only if the avail has changed.
-        boolean availChanged = (UNKNOWN != current && current != previousType);
+        boolean availChanged = (UNKNOWN != current && current != check.previousType);
 
         if (availChanged || scan.isFull) {
             Availability availability;
@@ -396,10 +528,9 @@ public class AvailabilityExecutor implements Runnable, Callable<AvailabilityRepo
             availabilityReport.addAvailability(availability);
         }
 
-        for (Resource child : this.inventoryManager.getContainerChildren(resource, resourceContainer)) {
-            checkInventory(child, availabilityReport, current, isForced, scan, traceEnabled);
+        for (Resource child : this.inventoryManager.getContainerChildren(resource, check.resourceContainer)) {
+            ready.add(new Check(child, current, isForced));
         }
-
     }
 
     /**
@@ -478,6 +609,77 @@ public class AvailabilityExecutor implements Runnable, Callable<AvailabilityRepo
         }
     }
 
+    /**
+     * The evaluation of one resource during a scan. Only the availability check itself, i.e. {@link #call()}, runs in
+     * the availability check thread pool; everything else is done by the scanning thread.
+     */
+    private class Check implements Callable<AvailabilityType> {
+        final Resource resource;
+        final AvailabilityType parentAvailType;
+        final boolean isForced;
+
+        ResourceContainer resourceContainer;
+        Availability previous;
+        AvailabilityType previousType;
+        AvailabilityType current;
+        volatile long started;
+        long duration;
+
+        Check(Resource resource, AvailabilityType parentAvailType, boolean isForced) {
+            this.resource = resource;
+            this.parentAvailType = parentAvailType;
+            this.isForced = isForced;
+        }
+
+        /**
+         * @return when this check times out. The timeout counts from when the check started to run in the thread
+         *         pool, so a check that has not got a thread yet has used none of it.
+         */
+        long getDeadline(long now, long timeout) {
+            long start = started;
+            return ((0 == start) ? now : start) + timeout;
+        }
+
+        /**
+         * @return the availability reported by the resource component, or <code>null</code> if a check of the
+         *         resource is still running, i.e. one that timed out during a previous scan
+         */
+        @Override
+        public AvailabilityType call() throws Exception {
+            long start = System.currentTimeMillis();
+            started = start;
+
+            Set<Integer> checksInProgress = inventoryManager.getAvailabilityChecksInProgress();
+            if (!checksInProgress.add(resource.getId())) {
+                return null;
+            }
+
+            try {
+                // The avail proxy guarantees fast response time for an avail check
+                AvailabilityFacet resourceAvailabilityProxy = resourceContainer.getAvailabilityProxy();
+
+                // if the component is started, ask what its current availability is as of right now;
+                // if it's not started, then assume it's down, and the next time we check,
+                // we'll see if it's started and check for real then - otherwise, keep assuming it's
+                // down (this is for the case when a plugin component can't start for whatever reason
+                // or is just slow to start)
+                if (resourceContainer.getResourceComponentState() == ResourceComponentState.STARTED) {
+                    return resourceAvailabilityProxy.getAvailability();
+                }
+
+                // try to start the component and then perform the avail check
+                inventoryManager.activateResource(resource, resourceContainer, false);
+                if (resourceContainer.getResourceComponentState() == ResourceComponentState.STARTED) {
+                    return resourceAvailabilityProxy.getAvailability();
+                }
+                return DOWN;
+            } finally {
+                duration = System.currentTimeMillis() - start;
+                checksInProgress.remove(resource.getId());
+            }
+        }
+    }
+
     public static class Scan {
         private final long startTime;
         private long endTime;
@@ -492,6 +694,7 @@ public class AvailabilityExecutor implements Runnable, Callable<AvailabilityRepo
         int numPushedByInterval = 0;
         int numAvailabilityChanges = 0;
         int numDeferToParent = 0;
+        int numTimeouts = 0;
 
         public Scan(long startTime, boolean isFull) {
             this.startTime = startTime;
@@ -551,13 +754,17 @@ public class AvailabilityExecutor implements Runnable, Callable<AvailabilityRepo
             return numDeferToParent;
         }
 
+        public int getNumTimeouts() {
+            return numTimeouts;
+        }
+
         @Override
         public String toString() {
             return "Scan [startTime=" + startTime + ", endTime=" + endTime + ", runtime=" + runtime + ", isFull="
                 + isFull + ", isForced=" + isForced + ", numResources=" + numResources + ", numGetAvailabilityCalls="
                 + numGetAvailabilityCalls + ", numScheduledRandomly=" + numScheduledRandomly + ", numPushedByInterval="
                 + numPushedByInterval + ", numAvailabilityChanges=" + numAvailabilityChanges + ", numDeferToParent="
-                + numDeferToParent + "]";
+                + numDeferToParent + ", numTimeouts=" + numTimeouts + "]";
         }
     }
 }
@@ -0,0 +1,136 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.core.pc.inventory;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.rhq.core.domain.resource.ResourceType;
+
+/**
+ * Keeps track of how long availability scans and the availability checks of individual resources take. One instance
+ * is shared by all the {@link AvailabilityExecutor}s of an {@link InventoryManager}.
+ */
+public class AvailabilityScanStatistics implements AvailabilityScanStatisticsMBean {
+
+    public static final String OBJECT_NAME = "rhq.pc:type=AvailabilityScan";
+
+    private final AtomicLong scansCompleted = new AtomicLong();
+    private final AtomicLong totalScanDuration = new AtomicLong();
+    private final AtomicLong lastScanDuration = new AtomicLong();
+    private final AtomicLong maxScanDuration = new AtomicLong();
+    private final AtomicLong lastScanResourceCount = new AtomicLong();
+    private final AtomicLong checkTimeouts = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> checkTimeoutsByResourceType = new ConcurrentHashMap<String, AtomicLong>();
+    private final ConcurrentMap<String, AtomicLong> slowestChecksByResourceType = new ConcurrentHashMap<String, AtomicLong>();
+
+    void scanCompleted(AvailabilityExecutor.Scan scan) {
+        scansCompleted.incrementAndGet();
+        totalScanDuration.addAndGet(scan.getRuntime());
+        lastScanDuration.set(scan.getRuntime());
+        lastScanResourceCount.set(scan.getNumResources());
+        updateMax(maxScanDuration, scan.getRuntime());
+    }
+
+    void checkCompleted(ResourceType resourceType, long duration) {
+        updateMax(getCounter(slowestChecksByResourceType, getResourceTypeKey(resourceType)), duration);
+    }
+
+    void checkTimedOut(ResourceType resourceType, long duration) {
+        checkTimeouts.incrementAndGet();
+        String key = getResourceTypeKey(resourceType);
+        getCounter(checkTimeoutsByResourceType, key).incrementAndGet();
+        updateMax(getCounter(slowestChecksByResourceType, key), duration);
+    }
+
+    @Override
+    public long getScansCompleted() {
+        return scansCompleted.get();
+    }
+
+    @Override
+    public long getLastScanDuration() {
+        return lastScanDuration.get();
+    }
+
+    @Override
+    public long getMaxScanDuration() {
+        return maxScanDuration.get();
+    }
+
+    @Override
+    public long getAverageScanDuration() {
+        long scans = scansCompleted.get();
+        return (scans == 0) ? 0 : totalScanDuration.get() / scans;
+    }
+
+    @Override
+    public long getLastScanResourceCount() {
+        return lastScanResourceCount.get();
+    }
+
+    @Override
+    public long getAvailabilityCheckTimeouts() {
+        return checkTimeouts.get();
+    }
+
+    @Override
+    public Map<String, Long> getAvailabilityCheckTimeoutsByResourceType() {
+        return toMap(checkTimeoutsByResourceType);
+    }
+
+    @Override
+    public Map<String, Long> getSlowestAvailabilityChecksByResourceType() {
+        return toMap(slowestChecksByResourceType);
+    }
+
+    private static String getResourceTypeKey(ResourceType resourceType) {
+        return resourceType.getPlugin() + ":" + resourceType.getName();
+    }
+
+    private static AtomicLong getCounter(ConcurrentMap<String, AtomicLong> counters, String key) {
+        AtomicLong counter = counters.get(key);
+        if (counter == null) {
+            AtomicLong newCounter = new AtomicLong(0);
+            counter = counters.putIfAbsent(key, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        return counter;
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    private static Map<String, Long> toMap(ConcurrentMap<String, AtomicLong> counters) {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.core.pc.inventory;
+
+import java.util.Map;
+
+/**
+ * Management interface of the availability scan statistics of the plugin container.
+ */
+public interface AvailabilityScanStatisticsMBean {
+
+    /**
+     * @return the number of availability scans that completed
+     */
+    long getScansCompleted();
+
+    /**
+     * @return the time, in milliseconds, the last availability scan took
+     */
+    long getLastScanDuration();
+
+    /**
+     * @return the time, in milliseconds, the longest availability scan took
+     */
+    long getMaxScanDuration();
+
+    /**
+     * @return the average time, in milliseconds, an availability scan took
+     */
+    long getAverageScanDuration();
+
+    /**
+     * @return the number of resources visited by the last availability scan
+     */
+    long getLastScanResourceCount();
+
+    /**
+     * @return the number of availability checks that did not complete within the per-resource timeout
+     */
+    long getAvailabilityCheckTimeouts();
+
+    /**
+     * @return the number of availability check timeouts, keyed by "plugin:resource type name"
+     */
+    Map<String, Long> getAvailabilityCheckTimeoutsByResourceType();
+
+    /**
+     * @return the time, in milliseconds, of the slowest availability check, keyed by "plugin:resource type name"
+     */
+    Map<String, Long> getSlowestAvailabilityChecksByResourceType();
+}
@@ -40,7 +40,9 @@ import org.rhq.core.domain.resource.ResourceType;
 import org.rhq.core.pc.PluginContainer;
 
 /**
- * Provides methods to read and write inventory data to a file.
+ * Provides methods to read and write inventory data to a file. The file is either an {@link InventoryStore}
+ * directory or, for inventories persisted by older agents, a single inventory.dat file holding the whole
+ * serialized inventory.
  *
  * @author John Mazzitelli
  */
@@ -48,6 +50,7 @@ public class InventoryFile {
     private static final Log log = LogFactory.getLog(InventoryFile.class);
 
     private final File inventoryFile;
+    private final InventoryStore inventoryStore; // null for an inventory.dat file
     private Resource platform;
     private Map<String, ResourceContainer> resourceContainers; // keyed on UUID
 
@@ -56,17 +59,31 @@ public class InventoryFile {
     /**
      * Constructor for {@link InventoryFile} that will read and write inventory data to the given file.
      *
-     * @param inventoryFile the path to the inventory.dat file
+     * @param inventoryFile the path to the inventory store directory or to the inventory.dat file
      */
     public InventoryFile(File inventoryFile, InventoryManager inventoryManager) {
+        this(inventoryFile, inventoryFile.isDirectory() ? new InventoryStore(inventoryFile) : null, inventoryManager);
+    }
+
+    /**
+     * Constructor for {@link InventoryFile} that will read and write inventory data to the given store.
+     *
+     * @param inventoryStore the inventory store
+     */
+    public InventoryFile(InventoryStore inventoryStore, InventoryManager inventoryManager) {
+        this(inventoryStore.getDirectory(), inventoryStore, inventoryManager);
+    }
+
+    private InventoryFile(File inventoryFile, InventoryStore inventoryStore, InventoryManager inventoryManager) {
         this.inventoryFile = inventoryFile;
+        this.inventoryStore = inventoryStore;
         this.inventoryManager = inventoryManager;
     }
 
     /**
      * Constructor for {@link InventoryFile} that will read and write inventory data to the given file.
      *
-     * @param inventoryFile the path to the inventory.dat file
+     * @param inventoryFile the path to the inventory store directory or to the inventory.dat file
      */
     public InventoryFile(File inventoryFile) {
         this(inventoryFile, PluginContainer.getInstance().getInventoryManager());
@@ -114,15 +131,21 @@ public class InventoryFile {
     public void loadInventory() throws PluginContainerException {
         FileInputStream fis = null;
         try {
-            fis = new FileInputStream(inventoryFile);
-            ObjectInputStream ois = new ObjectInputStream(fis);
+            if (inventoryStore != null) {
+                InventoryStore.StoredInventory storedInventory = inventoryStore.load();
+                this.platform = storedInventory.getPlatform();
+                this.resourceContainers = storedInventory.getResourceContainers();
+            } else {
+                fis = new FileInputStream(inventoryFile);
+                ObjectInputStream ois = new ObjectInputStream(fis);
+                this.platform = (Resource) ois.readObject();
+                this.resourceContainers = (Map<String, ResourceContainer>) ois.readObject();
+            }
 
             // this list will contain UUIDs of resources that we should ignore usually due to disabled plugins
             Set<String> uuidsToIgnore = new HashSet<String>();
 
-            this.platform = (Resource) ois.readObject();
             connectTypes(this.platform, uuidsToIgnore);
-            this.resourceContainers = (Map<String, ResourceContainer>) ois.readObject();
             for (ResourceContainer resourceContainer : this.resourceContainers.values()) {
                 connectTypes(resourceContainer.getResource(), uuidsToIgnore);
             }
@@ -209,6 +232,13 @@ public class InventoryFile {
      * @throws IOException
      */
     public void storeInventory(Resource platformResource, Map<String, ResourceContainer> containers) throws IOException {
+        if (inventoryStore != null) {
+            inventoryStore.save(platformResource, containers, true);
+            this.platform = platformResource;
+            this.resourceContainers = containers;
+            return;
+        }
+
         FileOutputStream fos = new FileOutputStream(inventoryFile);
         try {
             ObjectOutputStream oos = new ObjectOutputStream(fos);
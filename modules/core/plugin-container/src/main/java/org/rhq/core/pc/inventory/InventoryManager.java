@@ -22,6 +22,7 @@ package org.rhq.core.pc.inventory;
 import static org.rhq.core.util.StringUtil.isNotBlank;
 
 import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -41,12 +42,19 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import gnu.trove.map.TIntObjectMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
 
@@ -134,6 +142,7 @@ import org.rhq.core.pluginapi.inventory.ResourceDiscoveryContext;
 import org.rhq.core.pluginapi.operation.OperationContext;
 import org.rhq.core.pluginapi.upgrade.ResourceUpgradeContext;
 import org.rhq.core.pluginapi.upgrade.ResourceUpgradeFacet;
+import org.rhq.core.pluginapi.util.FileUtils;
 import org.rhq.core.system.SystemInfo;
 import org.rhq.core.system.SystemInfoFactory;
 import org.rhq.core.util.StopWatch;
@@ -157,7 +166,10 @@ public class InventoryManager extends AgentService implements ContainerService,
     private static final Log log = LogFactory.getLog(InventoryManager.class);
 
     private static final String INVENTORY_THREAD_POOL_NAME = "InventoryManager.discovery";
+    private static final String INVENTORY_STORE_DIRECTORY_NAME = "inventory";
+    private static final String LEGACY_INVENTORY_FILE_NAME = "inventory.dat";
     private static final String AVAIL_THREAD_POOL_NAME = "InventoryManager.availability";
+    private static final String AVAIL_CHECK_THREAD_POOL_NAME = "InventoryManager.availability.check";
     private static final int AVAIL_THREAD_POOL_CORE_POOL_SIZE = 1;
 
     private static final int COMPONENT_START_TIMEOUT = 60 * 1000; // 60 seconds
@@ -180,12 +192,22 @@ public class InventoryManager extends AgentService implements ContainerService,
 
     private ScheduledThreadPoolExecutor inventoryThreadPoolExecutor;
     private ScheduledThreadPoolExecutor availabilityThreadPoolExecutor;
+    private ExecutorService availabilityCheckThreadPoolExecutor;
 
     // The executors are Callable
     private final AutoDiscoveryExecutor serverScanExecutor;
     private final RuntimeDiscoveryExecutor serviceScanExecutor;
     private final AvailabilityExecutor availabilityExecutor;
 
+    private final AvailabilityScanStatistics availabilityScanStatistics = new AvailabilityScanStatistics();
+
+    /**
+     * Ids of the resources whose availability check is running in the availability check thread pool. A check that
+     * timed out may still be running when the next scan reaches the resource.
+     */
+    private final Set<Integer> availabilityChecksInProgress = Collections
+        .newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
     private final Agent agent;
 
     /**
@@ -217,6 +239,11 @@ public class InventoryManager extends AgentService implements ContainerService,
     private final Map<String, ResourceContainer> resourceContainersByUUID = new ConcurrentHashMap<String, ResourceContainer>(
         500);
 
+    /**
+     * Persists the inventory in the data directory. Only used inside the agent.
+     */
+    private InventoryStore inventoryStore;
+
     /**
      * ResourceID to ResourceContainer map
      */
@@ -296,10 +323,27 @@ public class InventoryManager extends AgentService implements ContainerService,
             //discoveries.
             activateAndUpgradeResources();
 
-            // Never run more than one avail check at a time.
+            // Never run more than one avail scan at a time.
             availabilityThreadPoolExecutor = new ScheduledThreadPoolExecutor(AVAIL_THREAD_POOL_CORE_POOL_SIZE,
                 new LoggingThreadFactory(AVAIL_THREAD_POOL_NAME, true));
 
+            // The scan itself checks independent subtrees of the inventory concurrently. It never has more checks
+            // running than the scan parallelism, but a check that timed out may keep its thread while it hangs, so
+            // the pool grows rather than queue up checks behind hung ones.
+            availabilityCheckThreadPoolExecutor = new ThreadPoolExecutor(getAvailabilityScanParallelism(),
+                Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new LoggingThreadFactory(
+                    AVAIL_CHECK_THREAD_POOL_NAME, true));
+
+            if (configuration.isStartManagementBean()) {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                try {
+                    server.registerMBean(availabilityScanStatistics, new ObjectName(
+                        AvailabilityScanStatistics.OBJECT_NAME));
+                } catch (JMException e) {
+                    log.error("Unable to register AvailabilityScanStatisticsMBean", e);
+                }
+            }
+
             // Never run more than one discovery scan at a time (service and service scans share the same pool).
             inventoryThreadPoolExecutor = new ScheduledThreadPoolExecutor(1, new LoggingThreadFactory(
                 INVENTORY_THREAD_POOL_NAME, true));
@@ -321,6 +365,17 @@ public class InventoryManager extends AgentService implements ContainerService,
                 inventoryThreadPoolExecutor.scheduleWithFixedDelay(serviceScanExecutor,
                     configuration.getServiceDiscoveryInitialDelay(), configuration.getServiceDiscoveryPeriod(),
                     TimeUnit.SECONDS);
+
+                // Periodically persist the inventory changes (every 5m by default). This shares the pool with the
+                // discovery scans so a checkpoint never sees a scan half-way through.
+                long checkpointPeriod = configuration.getInventoryCheckpointPeriod();
+                if (checkpointPeriod > 0) {
+                    inventoryThreadPoolExecutor.scheduleWithFixedDelay(new Runnable() {
+                        public void run() {
+                            checkpointInventory(false);
+                        }
+                    }, checkpointPeriod, checkpointPeriod, TimeUnit.SECONDS);
+                }
             }
         } finally {
             inventoryLock.writeLock().unlock();
@@ -336,6 +391,15 @@ public class InventoryManager extends AgentService implements ContainerService,
     public void shutdown() {
         PluginContainer.shutdownExecutorService(this.inventoryThreadPoolExecutor, true);
         PluginContainer.shutdownExecutorService(this.availabilityThreadPoolExecutor, true);
+        PluginContainer.shutdownExecutorService(this.availabilityCheckThreadPoolExecutor, true);
+        if (configuration.isStartManagementBean()) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.unregisterMBean(new ObjectName(AvailabilityScanStatistics.OBJECT_NAME));
+            } catch (JMException e) {
+                log.warn("Unable to unregister AvailabilityScanStatisticsMBean", e);
+            }
+        }
         if (this.configuration.isInsideAgent()) {
             this.persistToDisk();
         }
@@ -1135,6 +1199,37 @@ public class InventoryManager extends AgentService implements ContainerService,
         return null;
     }
 
+    /**
+     * @return the thread pool the availability checks of a scan run in, <code>null</code> if the inventory manager
+     *         is not initialized
+     */
+    @Nullable
+    ExecutorService getAvailabilityCheckExecutor() {
+        return availabilityCheckThreadPoolExecutor;
+    }
+
+    /**
+     * @return the number of availability checks a scan runs concurrently
+     */
+    int getAvailabilityScanParallelism() {
+        return Math.max(1, configuration.getAvailabilityScanParallelism());
+    }
+
+    /**
+     * @return the time, in milliseconds, an availability scan waits for the availability check of a single resource
+     */
+    long getAvailabilityCheckTimeout() {
+        return TimeUnit.SECONDS.toMillis(configuration.getAvailabilityScanResourceTimeout());
+    }
+
+    Set<Integer> getAvailabilityChecksInProgress() {
+        return availabilityChecksInProgress;
+    }
+
+    public AvailabilityScanStatistics getAvailabilityScanStatistics() {
+        return availabilityScanStatistics;
+    }
+
     public void handleReport(AvailabilityReport report) {
         // a null report means a non-committed inventory - we are either brand new or our platform was deleted recently
         if (report == null) {
@@ -2420,19 +2515,29 @@ public class InventoryManager extends AgentService implements ContainerService,
     }
 
     /**
-     * Tries to load an existing inventory from the file data/inventory.dat
+     * Tries to load an existing inventory from the store in data/inventory or, if there is none yet, from the file
+     * data/inventory.dat written by older agents. The latter is converted to the store and then deleted.
      */
     private void loadFromDisk() {
         this.inventoryLock.writeLock().lock();
 
         File file = null;
         try {
-            file = new File(this.configuration.getDataDirectory(), "inventory.dat");
-            if (file.exists()) {
+            File dataDir = this.configuration.getDataDirectory();
+            File legacyFile = new File(dataDir, LEGACY_INVENTORY_FILE_NAME);
+            InventoryFile inventoryFile = null;
+            if (getInventoryStore().exists()) {
+                file = getInventoryStore().getDirectory();
+                inventoryFile = new InventoryFile(getInventoryStore(), this);
+            } else if (legacyFile.exists()) {
+                file = legacyFile;
+                inventoryFile = new InventoryFile(legacyFile, this);
+            }
+
+            if (inventoryFile != null) {
                 long start = System.currentTimeMillis();
                 log.info("Loading inventory from data file [" + file + "]...");
 
-                InventoryFile inventoryFile = new InventoryFile(file, this);
                 inventoryFile.loadInventory();
 
                 this.platform = inventoryFile.getPlatform();
@@ -2450,13 +2555,26 @@ public class InventoryManager extends AgentService implements ContainerService,
 
                 log.info("Inventory with size [" + this.resourceContainersByUUID.size()
                     + "] loaded from data file in [" + (System.currentTimeMillis() - start) + "ms]");
+
+                if (file == legacyFile && checkpointInventory(true)) {
+                    log.info("Converted inventory data file [" + legacyFile + "] to ["
+                        + getInventoryStore().getDirectory() + "]");
+                    legacyFile.delete();
+                }
             }
         } catch (Exception e) {
             this.platform = null;
             this.resourceContainersByUUID.clear();
             this.resourceContainerByResourceId.clear();
             if (file != null) {
-                file.renameTo(new File(file.getAbsolutePath() + ".invalid")); // move it out of the way if we can, retain it for later analysis
+                File invalidFile = new File(file.getAbsolutePath() + ".invalid");
+                if (invalidFile.isDirectory()) {
+                    try {
+                        FileUtils.purge(invalidFile, true);
+                    } catch (Exception ignore) {
+                    }
+                }
+                file.renameTo(invalidFile); // move it out of the way if we can, retain it for later analysis
             }
             log.error(
                 "Could not load inventory from data file. The agent has lost knowledge of its previous inventory - "
@@ -2466,6 +2584,37 @@ public class InventoryManager extends AgentService implements ContainerService,
         }
     }
 
+    private InventoryStore getInventoryStore() {
+        if (this.inventoryStore == null) {
+            this.inventoryStore = new InventoryStore(new File(this.configuration.getDataDirectory(),
+                INVENTORY_STORE_DIRECTORY_NAME));
+        }
+        return this.inventoryStore;
+    }
+
+    /**
+     * Persists the changes made to the inventory since the last checkpoint.
+     *
+     * @param compact if <code>true</code>, the whole inventory is written to a new snapshot
+     * @return <code>true</code> if the inventory was persisted
+     */
+    private boolean checkpointInventory(boolean compact) {
+        InventoryStore store = getInventoryStore();
+        synchronized (store) {
+            try {
+                Resource platformResource = this.platform;
+                if (platformResource == null) {
+                    return false; // nothing to persist yet
+                }
+                store.save(platformResource, this.resourceContainersByUUID, compact);
+                return true;
+            } catch (Exception e) {
+                log.error("Could not persist inventory data to disk", e);
+                return false;
+            }
+        }
+    }
+
     // Make sure the child resources are in our desired Set impl
     private void practiceSafeSets(final Resource resource) {
         Set<Resource> children = resource.getChildResources();
@@ -2520,18 +2669,10 @@ public class InventoryManager extends AgentService implements ContainerService,
     private void persistToDisk() {
         try {
             deactivateResource(this.platform);
-            File dataDir = this.configuration.getDataDirectory();
-            if (!dataDir.exists()) {
-                if (!dataDir.mkdirs()) {
-                    throw new RuntimeException("Failed to create data directory [" + dataDir + "].");
-                }
-            }
-            File file = new File(dataDir, "inventory.dat");
-            InventoryFile inventoryFile = new InventoryFile(file, this);
-            inventoryFile.storeInventory(this.platform, this.resourceContainersByUUID);
         } catch (Exception e) {
-            log.error("Could not persist inventory data to disk", e);
+            log.error("Could not deactivate the inventory before persisting it", e);
         }
+        checkpointInventory(true);
     }
 
     /**
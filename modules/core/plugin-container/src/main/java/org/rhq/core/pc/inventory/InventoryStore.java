@@ -0,0 +1,640 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.core.pc.inventory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceType;
+
+/**
+ * Persists the inventory as one record per {@link ResourceContainer}, keyed on the resource UUID, in a directory
+ * holding a snapshot file and an append-only journal.
+ *
+ * <p>{@link #save(Resource, Map, boolean) Saving} only appends the records of the containers that changed since
+ * the previous save, and a removal record for each container that is gone. The journal is compacted into a new
+ * snapshot when it holds more records than the snapshot, or when asked to (e.g. at shutdown). A snapshot is
+ * written to a temporary file and renamed into place; the journal is only reset after that, and it carries the
+ * generation of the snapshot it applies to, so the store can be recovered whenever the writer dies. Each record
+ * carries its length and checksum, so a record torn by a crash ends the journal, and a record that can no longer
+ * be deserialized only loses that one resource.</p>
+ *
+ * <p>A record holds the container and its resource, but not the rest of the resource tree: the parent and child
+ * resources are written as stubs holding only their id and UUID, and the resource types as stubs holding only
+ * their name and plugin. {@link #load()} links the resources back together; the caller must reconnect the
+ * resource types with the plugin metadata.</p>
+ *
+ * <p>This object is not thread safe; the inventory manager is its only user.</p>
+ */
+public class InventoryStore {
+    private static final Log log = LogFactory.getLog(InventoryStore.class);
+
+    static final String SNAPSHOT_FILE_NAME = "inventory.snapshot";
+    static final String JOURNAL_FILE_NAME = "inventory.journal";
+
+    private static final int MAGIC = 0x52485149;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_LENGTH = 16; // magic, version, generation
+
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_REMOVE = 2;
+    private static final byte RECORD_PLATFORM = 3;
+
+    /**
+     * The journal is not compacted before it holds at least this many records.
+     */
+    private static final int MIN_RECORDS_BEFORE_COMPACTION = 1000;
+
+    /**
+     * A container is serialized while the inventory is in use, so a concurrent modification can make it fail.
+     */
+    private static final int MAX_SERIALIZATION_ATTEMPTS = 3;
+
+    private final File directory;
+    private final File snapshotFile;
+    private final File snapshotTmpFile;
+    private final File journalFile;
+    private final File journalTmpFile;
+
+    /**
+     * Checksums of the records last written or read for each resource UUID. A container whose serialized form
+     * has the same checksum is not written again.
+     */
+    private final Map<String, Long> persistedChecksums = new HashMap<String, Long>();
+    private String persistedPlatformUuid;
+
+    /**
+     * The stubs written in place of parent and child resources, keyed on UUID. A new {@link Resource} carries the
+     * current time, so reusing the stubs keeps the serialized form of an unchanged container identical.
+     */
+    private final Map<String, Resource> resourceStubs = new HashMap<String, Resource>();
+
+    private long generation;
+    private long journalLength = -1L; // the length of the valid part of the journal; -1 if it must be created
+    private long journalRecords;
+    private long snapshotRecords;
+
+    /**
+     * Creates a store that keeps its files in the given directory.
+     *
+     * @param directory the store directory; it is created on the first save
+     */
+    public InventoryStore(File directory) {
+        this.directory = directory;
+        this.snapshotFile = new File(directory, SNAPSHOT_FILE_NAME);
+        this.snapshotTmpFile = new File(directory, SNAPSHOT_FILE_NAME + ".tmp");
+        this.journalFile = new File(directory, JOURNAL_FILE_NAME);
+        this.journalTmpFile = new File(directory, JOURNAL_FILE_NAME + ".tmp");
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return <code>true</code> if the store holds an inventory that can be {@link #load() loaded}
+     */
+    public boolean exists() {
+        return snapshotFile.isFile() || snapshotTmpFile.isFile() || journalFile.isFile();
+    }
+
+    /**
+     * Loads the inventory, replaying the journal over the snapshot. Once this returns, {@link #save} only writes
+     * the changes made to the loaded inventory.
+     *
+     * @return the platform and all resource containers, keyed on UUID
+     *
+     * @throws IOException if the store files cannot be read, or the platform record is missing
+     */
+    public StoredInventory load() throws IOException {
+        Map<String, byte[]> records = new LinkedHashMap<String, byte[]>();
+        this.persistedChecksums.clear();
+        this.persistedPlatformUuid = null;
+        this.generation = 0L;
+        this.snapshotRecords = 0L;
+        this.journalRecords = 0L;
+        this.journalLength = -1L;
+
+        if (!snapshotFile.isFile() && snapshotTmpFile.isFile()) {
+            // the writer died after removing the old snapshot, but before renaming the new one into place
+            log.info("Recovering inventory snapshot from [" + snapshotTmpFile + "]");
+            replace(snapshotTmpFile, snapshotFile);
+        }
+
+        if (snapshotFile.isFile()) {
+            this.generation = readFile(snapshotFile, -1L, records);
+            this.snapshotRecords = records.size();
+        }
+
+        if (journalFile.isFile() && journalFile.length() < HEADER_LENGTH) {
+            // torn while it was reset in place, after the snapshot holding all of it was written
+            log.info("Ignoring journal [" + journalFile + "] with an incomplete header");
+        } else if (journalFile.isFile()) {
+            long journalGeneration = readHeader(journalFile);
+            if (journalGeneration == this.generation) {
+                this.journalLength = readFile(journalFile, journalGeneration, records);
+            } else {
+                // the writer died after the snapshot was written, but before the journal was reset
+                log.info("Ignoring journal [" + journalFile + "] of generation [" + journalGeneration
+                    + "] that is already part of the snapshot of generation [" + this.generation + "]");
+            }
+        }
+
+        if (this.persistedPlatformUuid == null) {
+            throw new IOException("Inventory store [" + directory + "] does not identify the platform resource");
+        }
+
+        Map<String, ResourceContainer> containers = new LinkedHashMap<String, ResourceContainer>();
+        for (Map.Entry<String, byte[]> record : records.entrySet()) {
+            String uuid = record.getKey();
+            try {
+                ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(record.getValue()));
+                containers.put(uuid, (ResourceContainer) ois.readObject());
+            } catch (Exception e) {
+                // losing one resource is better than losing the inventory - the server will resend it
+                log.warn("Ignoring persisted resource [" + uuid + "] that cannot be loaded: " + e);
+                this.persistedChecksums.remove(uuid);
+            }
+        }
+
+        ResourceContainer platformContainer = containers.get(this.persistedPlatformUuid);
+        if (platformContainer == null) {
+            throw new IOException("Inventory store [" + directory + "] has no platform resource ["
+                + this.persistedPlatformUuid + "]");
+        }
+
+        linkResources(containers);
+
+        return new StoredInventory(platformContainer.getResource(), containers);
+    }
+
+    /**
+     * Persists the given inventory. Only the containers whose serialized form changed since they were last
+     * saved or loaded are written.
+     *
+     * @param platform the platform resource
+     * @param containers all the resource containers, keyed on UUID
+     * @param compact if <code>true</code>, the whole inventory is written to a new snapshot and the journal is
+     *                reset; otherwise that only happens when the journal got larger than the snapshot
+     *
+     * @throws IOException if the inventory could not be written
+     */
+    public void save(Resource platform, Map<String, ResourceContainer> containers, boolean compact)
+        throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create inventory directory [" + directory + "]");
+        }
+
+        this.resourceStubs.keySet().retainAll(containers.keySet());
+
+        if (compact || this.journalLength < 0L) {
+            writeSnapshot(platform, containers);
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        int written = 0;
+
+        RandomAccessFile journal = new RandomAccessFile(journalFile, "rw");
+        try {
+            journal.setLength(this.journalLength); // drop anything torn by a previous failure
+            journal.seek(this.journalLength);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new RandomAccessFileOutputStream(
+                journal)));
+
+            if (platform != null && !platform.getUuid().equals(this.persistedPlatformUuid)) {
+                writeRecord(out, RECORD_PLATFORM, platform.getUuid(), null);
+                this.persistedPlatformUuid = platform.getUuid();
+                written++;
+            }
+
+            for (Map.Entry<String, ResourceContainer> entry : containers.entrySet()) {
+                String uuid = entry.getKey();
+                byte[] payload = serialize(uuid, entry.getValue());
+                if (payload != null) {
+                    Long checksum = Long.valueOf(checksum(payload));
+                    if (!checksum.equals(this.persistedChecksums.get(uuid))) {
+                        writeRecord(out, RECORD_PUT, uuid, payload);
+                        this.persistedChecksums.put(uuid, checksum);
+                        written++;
+                    }
+                }
+            }
+
+            for (Iterator<String> i = this.persistedChecksums.keySet().iterator(); i.hasNext();) {
+                String uuid = i.next();
+                if (!containers.containsKey(uuid)) {
+                    writeRecord(out, RECORD_REMOVE, uuid, null);
+                    i.remove();
+                    written++;
+                }
+            }
+
+            out.flush();
+            journal.getFD().sync();
+            this.journalLength = journal.getFilePointer();
+            this.journalRecords += written;
+        } catch (IOException e) {
+            // forget what was persisted so the next save rewrites everything in a new snapshot
+            this.journalLength = -1L;
+            this.persistedChecksums.clear();
+            throw e;
+        } finally {
+            journal.close();
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Appended [" + written + "] changed resources to inventory journal in ["
+                + (System.currentTimeMillis() - start) + "ms]");
+        }
+
+        if (this.journalRecords > Math.max(MIN_RECORDS_BEFORE_COMPACTION, this.snapshotRecords)) {
+            writeSnapshot(platform, containers);
+        }
+    }
+
+    /**
+     * Writes the whole inventory to a new snapshot and resets the journal.
+     */
+    private void writeSnapshot(Resource platform, Map<String, ResourceContainer> containers) throws IOException {
+        long start = System.currentTimeMillis();
+        long newGeneration = this.generation + 1;
+        Map<String, Long> checksums = new HashMap<String, Long>();
+
+        FileOutputStream fos = new FileOutputStream(snapshotTmpFile);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            writeHeader(out, newGeneration);
+            if (platform != null) {
+                writeRecord(out, RECORD_PLATFORM, platform.getUuid(), null);
+            }
+            for (Map.Entry<String, ResourceContainer> entry : containers.entrySet()) {
+                byte[] payload = serialize(entry.getKey(), entry.getValue());
+                if (payload != null) {
+                    writeRecord(out, RECORD_PUT, entry.getKey(), payload);
+                    checksums.put(entry.getKey(), Long.valueOf(checksum(payload)));
+                }
+            }
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+
+        replace(snapshotTmpFile, snapshotFile);
+
+        // the snapshot is in place - the old journal is now obsolete, even if the reset below does not happen
+        this.generation = newGeneration;
+        this.persistedChecksums.clear();
+        this.persistedChecksums.putAll(checksums);
+        this.persistedPlatformUuid = (platform != null) ? platform.getUuid() : null;
+        this.snapshotRecords = checksums.size();
+        resetJournal();
+
+        log.info("Persisted inventory with size [" + checksums.size() + "] to [" + snapshotFile + "] in ["
+            + (System.currentTimeMillis() - start) + "ms]");
+    }
+
+    /**
+     * Replaces the journal with an empty one of the current generation. The new journal is written to a temporary
+     * file and renamed into place, so a crash leaves either the old journal or the new one.
+     */
+    private void resetJournal() throws IOException {
+        this.journalLength = -1L;
+        FileOutputStream fos = new FileOutputStream(journalTmpFile);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            writeHeader(out, this.generation);
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        replace(journalTmpFile, journalFile);
+        this.journalLength = HEADER_LENGTH;
+        this.journalRecords = 0L;
+    }
+
+    /**
+     * Renames the complete temporary file over the target. Some platforms do not rename over an existing file, in
+     * which case the target is deleted first; {@link #load()} recovers a snapshot from its temporary file should
+     * the writer die in between, and a missing journal only means the next save writes a snapshot.
+     */
+    private static void replace(File tmpFile, File file) throws IOException {
+        if (!tmpFile.renameTo(file)) {
+            file.delete();
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Failed to rename [" + tmpFile + "] to [" + file + "]");
+            }
+        }
+    }
+
+    /**
+     * Reads the records of a store file into the given map, keyed on UUID; later records replace earlier ones.
+     * Reading stops at the first torn or corrupt record.
+     *
+     * @return the generation of a snapshot if <code>expectedGeneration</code> is -1, otherwise the length of
+     *         the valid part of the file
+     */
+    private long readFile(File file, long expectedGeneration, Map<String, byte[]> records) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            long fileGeneration = readHeader(in, file);
+            long validLength = HEADER_LENGTH;
+            int count = 0;
+
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break; // the normal end of the file
+                }
+
+                byte[] body;
+                try {
+                    if (length < 1 || length > file.length() - validLength) {
+                        throw new IOException("invalid record length [" + length + "]");
+                    }
+                    body = new byte[length];
+                    in.readFully(body);
+                    if (in.readLong() != checksum(body)) {
+                        throw new IOException("checksum mismatch");
+                    }
+                } catch (IOException e) {
+                    log.warn("Inventory file [" + file + "] ends with a damaged record at offset [" + validLength
+                        + "] that is ignored: " + e);
+                    break;
+                }
+
+                applyRecord(body, records);
+                validLength += 4 + length + 8;
+                count++;
+            }
+
+            if (log.isDebugEnabled()) {
+                log.debug("Read [" + count + "] records from inventory file [" + file + "]");
+            }
+            this.journalRecords = (expectedGeneration < 0L) ? 0L : count;
+
+            return (expectedGeneration < 0L) ? fileGeneration : validLength;
+        } finally {
+            in.close();
+        }
+    }
+
+    private void applyRecord(byte[] body, Map<String, byte[]> records) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        byte type = in.readByte();
+        String uuid = in.readUTF();
+
+        switch (type) {
+        case RECORD_PUT: {
+            byte[] payload = new byte[in.available()];
+            in.readFully(payload);
+            records.put(uuid, payload);
+            this.persistedChecksums.put(uuid, Long.valueOf(checksum(payload)));
+            break;
+        }
+        case RECORD_REMOVE: {
+            records.remove(uuid);
+            this.persistedChecksums.remove(uuid);
+            break;
+        }
+        case RECORD_PLATFORM: {
+            this.persistedPlatformUuid = uuid;
+            break;
+        }
+        default: {
+            throw new IOException("Unknown inventory record type [" + type + "]");
+        }
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, byte type, String uuid, byte[] payload)
+        throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + ((payload != null) ? payload.length : 0));
+        DataOutputStream body = new DataOutputStream(bytes);
+        body.writeByte(type);
+        body.writeUTF(uuid);
+        if (payload != null) {
+            body.write(payload);
+        }
+        body.flush();
+
+        byte[] record = bytes.toByteArray();
+        out.writeInt(record.length);
+        out.write(record);
+        out.writeLong(checksum(record));
+    }
+
+    private static void writeHeader(DataOutputStream out, long generation) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(generation);
+    }
+
+    private static long readHeader(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            return readHeader(in, file);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static long readHeader(DataInputStream in, File file) throws IOException {
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an inventory file: " + file);
+            }
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported inventory file version [" + version + "]: " + file);
+            }
+            return in.readLong();
+        } catch (EOFException e) {
+            throw new IOException("Truncated inventory file header: " + file);
+        }
+    }
+
+    /**
+     * Serializes a container without the rest of the resource tree, or returns <code>null</code> if it cannot be
+     * serialized right now, e.g. because it keeps being modified concurrently; it is then written by the next save.
+     */
+    private byte[] serialize(String uuid, ResourceContainer container) {
+        for (int attempt = 1;; attempt++) {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+                ObjectOutputStream oos = new RecordOutputStream(bytes, container.getResource(), this.resourceStubs);
+                oos.writeObject(container);
+                oos.close();
+                return bytes.toByteArray();
+            } catch (Exception e) {
+                if (attempt == MAX_SERIALIZATION_ATTEMPTS) {
+                    log.warn("Resource [" + uuid + "] could not be persisted now and will be retried: " + e);
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the parent and child resource stubs of each loaded resource with the loaded resources.
+     * Stubs of resources that have no container are dropped.
+     */
+    private static void linkResources(Map<String, ResourceContainer> containers) {
+        for (ResourceContainer container : containers.values()) {
+            Resource resource = container.getResource();
+
+            Resource parent = resource.getParentResource();
+            if (parent != null) {
+                ResourceContainer parentContainer = containers.get(parent.getUuid());
+                resource.setParentResource((parentContainer != null) ? parentContainer.getResource() : null);
+            }
+
+            Set<Resource> children = resource.getChildResources();
+            Set<Resource> linkedChildren = new CopyOnWriteArraySet<Resource>();
+            if (children != null) {
+                for (Resource child : children) {
+                    ResourceContainer childContainer = containers.get(child.getUuid());
+                    if (childContainer != null) {
+                        linkedChildren.add(childContainer.getResource());
+                    }
+                }
+            }
+            resource.setChildResources(linkedChildren);
+        }
+    }
+
+    private static long checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+
+    /**
+     * The inventory read by {@link InventoryStore#load()}.
+     */
+    public static class StoredInventory {
+        private final Resource platform;
+        private final Map<String, ResourceContainer> resourceContainers;
+
+        StoredInventory(Resource platform, Map<String, ResourceContainer> resourceContainers) {
+            this.platform = platform;
+            this.resourceContainers = resourceContainers;
+        }
+
+        public Resource getPlatform() {
+            return platform;
+        }
+
+        public Map<String, ResourceContainer> getResourceContainers() {
+            return resourceContainers;
+        }
+    }
+
+    /**
+     * Writes a container, replacing every resource but the container's own by a stub holding its id and UUID,
+     * and every resource type by a stub holding its id, name, plugin and category.
+     */
+    private static class RecordOutputStream extends ObjectOutputStream {
+        private final Resource ownResource;
+        private final Map<String, Resource> resourceStubs;
+
+        RecordOutputStream(OutputStream out, Resource ownResource, Map<String, Resource> resourceStubs)
+            throws IOException {
+            super(out);
+            this.ownResource = ownResource;
+            this.resourceStubs = resourceStubs;
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) throws IOException {
+            if (obj instanceof Resource && obj != this.ownResource) {
+                Resource resource = (Resource) obj;
+                Resource stub = (resource.getUuid() != null) ? this.resourceStubs.get(resource.getUuid()) : null;
+                if (stub == null || stub.getId() != resource.getId()) {
+                    stub = new Resource(resource.getId());
+                    stub.setUuid(resource.getUuid());
+                    if (resource.getUuid() != null) {
+                        this.resourceStubs.put(resource.getUuid(), stub);
+                    }
+                }
+                return stub;
+            }
+            if (obj instanceof ResourceType) {
+                ResourceType type = (ResourceType) obj;
+                ResourceType stub = new ResourceType();
+                stub.setId(type.getId());
+                stub.setName(type.getName());
+                stub.setPlugin(type.getPlugin());
+                stub.setCategory(type.getCategory());
+                return stub;
+            }
+            return obj;
+        }
+    }
+
+    /**
+     * Lets buffered data streams append to a random access file.
+     */
+    private static class RandomAccessFileOutputStream extends OutputStream {
+        private final RandomAccessFile file;
+
+        RandomAccessFileOutputStream(RandomAccessFile file) {
+            this.file = file;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            file.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            file.write(b, off, len);
+        }
+    }
+}
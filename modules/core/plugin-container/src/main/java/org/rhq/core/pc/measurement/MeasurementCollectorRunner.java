@@ -23,7 +23,6 @@ import java.util.ArrayDeque;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Set;
-import java.util.concurrent.Callable;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -32,6 +31,7 @@ import org.rhq.core.domain.measurement.AvailabilityType;
 import org.rhq.core.domain.measurement.MeasurementReport;
 import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
 import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceType;
 import org.rhq.core.pc.inventory.InventoryManager;
 import org.rhq.core.pc.inventory.ResourceContainer;
 import org.rhq.core.pc.util.ComponentUtil;
@@ -41,11 +41,12 @@ import org.rhq.core.util.exception.ThrowableUtil;
 
 /**
 * Executes the collection of measurements. Every call results in one new batch of measurements collected. Each batch is
-* limited to a single resource and the measurements that are due to be collected at that time.
+* limited to a single resource and the measurements that are due to be collected at that time. Batches are handed to
+* this runner by the {@link MeasurementManager}, which may run several batches (for different resources) concurrently.
 *
 * @author Greg Hinkle
 */
-public class MeasurementCollectorRunner implements Callable<MeasurementReport>, Runnable {
+public class MeasurementCollectorRunner {
     private static final Log log = LogFactory.getLog(MeasurementCollectorRunner.class);
 
     private final MeasurementManager measurementManager;
@@ -57,30 +58,47 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
         this.measurementManager = measurementManager;
     }
 
-    public MeasurementReport call() {
-        MeasurementReport report = null;
+    /**
+     * Collects the given batch of measurements and adds the data to the measurement manager's active report. The data
+     * is collected into a report of its own and only added to the active report once the collection is done.
+     *
+     * @param requests the due measurements, all of them belonging to the same resource
+     *
+     * @return the report the data was collected into
+     */
+    public MeasurementReport collect(Set<ScheduledMeasurementInfo> requests) {
+        MeasurementReport report = new MeasurementReport();
         try {
-            this.measurementManager.getLock().readLock().lock();
-
-            report = this.measurementManager.getActiveReport();
             long start = System.currentTimeMillis();
 
             InventoryManager im = this.measurementManager.getInventoryManager();
 
-            Set<ScheduledMeasurementInfo> requests = this.measurementManager.getNextScheduledSet();
-
-            if (requests != null) {
+            if (requests != null && !requests.isEmpty()) {
                 ScheduledMeasurementInfo next = requests.iterator().next();
 
+                Integer resourceId = next.getResourceId();
+                ResourceContainer container = im.getResourceContainer(resourceId);
+                if (container == null) {
+                    // the resource was removed from inventory while its collection was waiting to be run
+                    if (log.isDebugEnabled()) {
+                        log.debug("Measurements not collected for resource [" + resourceId
+                            + "] - it is no longer in inventory");
+                    }
+                    return report;
+                }
+                ResourceType resourceType = container.getResource().getResourceType();
+
                 if ((System.currentTimeMillis() - 30000L) > next.getNextCollection()) {
-                    this.measurementManager.incrementLateCollections(requests.size());
+                    this.measurementManager.incrementLateCollections(resourceType, requests.size());
                     if (log.isDebugEnabled()) {
                         log.debug("Measurement collection is falling behind... Missed requested time by ["
-                            + (System.currentTimeMillis() - requests.iterator().next().getNextCollection()) + "ms]");
+                            + (System.currentTimeMillis() - next.getNextCollection()) + "ms]");
 
-                        if (!scheduleHistory.isEmpty()) {
-                            log.debug("The most recent measurement requests prior to this detected delay: "
-                                + scheduleHistory);
+                        synchronized (scheduleHistory) {
+                            if (!scheduleHistory.isEmpty()) {
+                                log.debug("The most recent measurement requests prior to this detected delay: "
+                                    + scheduleHistory);
+                            }
                         }
                     }
 
@@ -89,8 +107,6 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
                     return report;
                 }
 
-                Integer resourceId = next.getResourceId();
-                ResourceContainer container = im.getResourceContainer(resourceId);
                 if (container.getResourceComponentState() != ResourceContainer.ResourceComponentState.STARTED
                     || container.getAvailability() == null
                     || container.getAvailability().getAvailabilityType() == AvailabilityType.DOWN) {
@@ -105,7 +121,9 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
                             MeasurementManager.FACET_METHOD_TIMEOUT, true, true, true);
 
                     if (log.isDebugEnabled()) {
-                        scheduleHistory.addRequests(requests);
+                        synchronized (scheduleHistory) {
+                            scheduleHistory.addRequests(requests);
+                        }
                     }
 
                     getValues(measurementComponent, report, requests, container.getResource());
@@ -118,7 +136,7 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
         } catch (Throwable t) {
             log.error("Failed to run measurement collection", t);
         } finally {
-            this.measurementManager.getLock().readLock().unlock();
+            this.measurementManager.addToActiveReport(report);
         }
 
         return report;
@@ -139,7 +157,7 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
                 log.info(message);
             }
         } catch (Throwable t) {
-            this.measurementManager.incrementFailedCollections(requests.size());
+            this.measurementManager.incrementFailedCollections(resource.getResourceType(), requests.size());
             if (log.isDebugEnabled()) {
                 log.warn("Failure to collect measurement data for " + resource + ", requests=" + requests
                     + ", report.size()=" + report.getDataCount(), t);
@@ -150,14 +168,6 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
         }
     }
 
-    public void run() {
-        try {
-            call();
-        } catch (Exception e) {
-            log.error("Could not get measurement report.", e);
-        }
-    }
-
     private static class ScheduleHistory extends ArrayDeque<String> {
         private static final long serialVersionUID = 1L;
         private static final int HISTORY_SIZE;
@@ -26,13 +26,18 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.management.JMException;
 import javax.management.MBeanServer;
@@ -79,15 +84,20 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
     public static final String OBJECT_NAME = "rhq.pc:type=MeasurementManager";
 
     private static final String COLLECTOR_THREAD_POOL_NAME = "MeasurementManager.collector";
+    private static final String COLLECTOR_WORKER_THREAD_POOL_NAME = "MeasurementManager.collector.worker";
     private static final String SENDER_THREAD_POOL_NAME = "MeasurementManager.sender";
 
     private static final Random RANDOM = new Random();
 
     static final int FACET_METHOD_TIMEOUT = 30 * 1000; // 30 seconds
 
+    // the number of collection batches that can wait for a free worker, per worker thread
+    private static final int COLLECTION_QUEUE_SIZE_PER_WORKER = 100;
+
     static final Log LOG = LogFactory.getLog(MeasurementManager.class);
 
     private final ScheduledThreadPoolExecutor collectorThreadPool;
+    private final ThreadPoolExecutor collectorWorkerThreadPool;
     private final ScheduledThreadPoolExecutor senderThreadPool;
 
     private final MeasurementSenderRunner measurementSenderRunner;
@@ -95,8 +105,7 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
 
     private final PluginContainerConfiguration configuration;
 
-    private final PriorityQueue<ScheduledMeasurementInfo> scheduledRequests = new PriorityQueue<ScheduledMeasurementInfo>(
-        10000);
+    private final ScheduledMeasurementWheel scheduledRequests = new ScheduledMeasurementWheel();
 
     private final InventoryManager inventoryManager;
 
@@ -104,9 +113,10 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
 
     private final Map<Integer, CachedValue> perMinuteCache = new HashMap<Integer, CachedValue>();
 
-    private volatile MeasurementReport activeReport = new MeasurementReport();
+    private final MeasurementReportBuffer reportBuffer;
 
-    private final ReentrantReadWriteLock measurementLock = new ReentrantReadWriteLock(true);
+    // true while a send of the reports closed before the end of their period is waiting for a sender thread
+    private final AtomicBoolean reportSendScheduled = new AtomicBoolean(false);
 
     // -- monitoring information
     private final AtomicLong collectedMeasurements = new AtomicLong(0);
@@ -114,8 +124,28 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
     private final AtomicLong sinceLastCollectedMeasurements = new AtomicLong(0);
     private final AtomicLong sinceLastCollectedTime = new AtomicLong(System.currentTimeMillis());
 
+    private final AtomicLong reportsSent = new AtomicLong(0);
+    private final AtomicLong reportsClosedEarly = new AtomicLong(0);
+    private final AtomicLong lastReportDataCount = new AtomicLong(0);
+    private final AtomicLong lastReportSize = new AtomicLong(0);
+    private final AtomicLong largestReportSize = new AtomicLong(0);
+    private final AtomicLong lastReportSendTime = new AtomicLong(0);
+    private final AtomicLong totalReportSendTime = new AtomicLong(0);
+
     private final AtomicLong lateCollections = new AtomicLong(0);
     private final AtomicLong failedCollection = new AtomicLong(0);
+    private final ConcurrentMap<String, AtomicLong> lateCollectionsByPlugin = new ConcurrentHashMap<String, AtomicLong>();
+    private final ConcurrentMap<String, AtomicLong> lateCollectionsByResourceType = new ConcurrentHashMap<String, AtomicLong>();
+    private final ConcurrentMap<String, AtomicLong> failedCollectionsByPlugin = new ConcurrentHashMap<String, AtomicLong>();
+    private final ConcurrentMap<String, AtomicLong> failedCollectionsByResourceType = new ConcurrentHashMap<String, AtomicLong>();
+
+    // -- concurrent collection bookkeeping
+    // resources that have a collection batch queued or running - a resource is only ever collected by one thread
+    private final Set<Integer> resourcesInCollection = Collections
+        .newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+    // per-plugin permits, only used if a per-plugin concurrency limit is configured
+    private final ConcurrentMap<String, Semaphore> pluginCollectionPermits = new ConcurrentHashMap<String, Semaphore>();
+    private final int pluginCollectionConcurrency;
 
     public MeasurementManager(PluginContainerConfiguration configuration, AgentServiceStreamRemoter streamRemoter,
         InventoryManager inventoryManager) {
@@ -124,11 +154,18 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
 
         this.configuration = configuration;
         this.inventoryManager = inventoryManager;
+        this.reportBuffer = new MeasurementReportBuffer(configuration.getMeasurementReportMaxDataCount(),
+            configuration.getMeasurementReportMaxSize());
 
         if (configuration.isInsideAgent()) {
-            int threadPoolSize = configuration.getMeasurementCollectionThreadPoolSize();
-            collectorThreadPool = new ScheduledThreadPoolExecutor(threadPoolSize, new LoggingThreadFactory(
+            int threadPoolSize = Math.max(1, configuration.getMeasurementCollectionThreadPoolSize());
+            // the collector pool only runs the requester, which hands due batches over to the bounded worker pool
+            collectorThreadPool = new ScheduledThreadPoolExecutor(1, new LoggingThreadFactory(
                 COLLECTOR_THREAD_POOL_NAME, true));
+            collectorWorkerThreadPool = new ThreadPoolExecutor(threadPoolSize, threadPoolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(threadPoolSize * COLLECTION_QUEUE_SIZE_PER_WORKER),
+                new LoggingThreadFactory(COLLECTOR_WORKER_THREAD_POOL_NAME, true));
+            pluginCollectionConcurrency = configuration.getMeasurementCollectionPluginConcurrency();
             senderThreadPool = new ScheduledThreadPoolExecutor(2, new LoggingThreadFactory(SENDER_THREAD_POOL_NAME,
                 true));
             measurementSenderRunner = new MeasurementSenderRunner(this);
@@ -136,6 +173,8 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
         } else {
             senderThreadPool = null;
             collectorThreadPool = null;
+            collectorWorkerThreadPool = null;
+            pluginCollectionConcurrency = 0;
             measurementSenderRunner = null;
             measurementCollectorRunner = null;
         }
@@ -180,19 +219,12 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
         public void run() {
             try {
                 while (!collectorThreadPool.isShutdown()) {
-                    long next = getNextExpectedCollectionTime();
-                    if (next == Long.MIN_VALUE) {
-                        Thread.sleep(10000);
-                    } else {
-                        long delay = next - System.currentTimeMillis();
-                        if (delay <= 0) {
-                            //                  collectorThreadPool.execute(measurementCollectorRunner);
-                            measurementCollectorRunner.call();
-                        } else {
-                            if (!collectorThreadPool.isShutdown()) {
-                                Thread.sleep(delay);
-                            }
-                        }
+                    Set<ScheduledMeasurementInfo> requests = getNextScheduledSet();
+                    if (requests != null) {
+                        submitCollection(requests);
+                    } else if (!collectorThreadPool.isShutdown()) {
+                        // nothing is due - wait for the schedule wheel to advance to its next tick
+                        Thread.sleep(scheduledRequests.getMillisUntilNextTick(System.currentTimeMillis()));
                     }
                 }
             } catch (InterruptedException e) {
@@ -206,6 +238,88 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
         }
     }
 
+    /**
+     * Hands a batch of due measurements of a single resource over to the collector worker thread pool. A resource is
+     * never collected by more than one thread at a time; if the resource is still busy with a previous collection
+     * (i.e. its measurement facet is overrunning), if the resource's plugin is already running as many collections as
+     * it is allowed to, or if the worker pool is saturated, the batch is not collected now but is rescheduled as a late
+     * collection.
+     *
+     * @param requests the due measurements, all of them belonging to the same resource
+     */
+    void submitCollection(final Set<ScheduledMeasurementInfo> requests) {
+        final int resourceId = requests.iterator().next().getResourceId();
+        ResourceContainer container = this.inventoryManager.getResourceContainer(resourceId);
+        final ResourceType resourceType = (container != null) ? container.getResource().getResourceType() : null;
+
+        if (!this.resourcesInCollection.add(resourceId)) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Measurement collection for resource [" + resourceId
+                    + "] is still in progress - skipping overrun collection of " + requests);
+            }
+            incrementLateCollections(resourceType, requests.size());
+            rescheduleLateCollections(requests);
+            return;
+        }
+
+        final Semaphore pluginPermits = getPluginCollectionPermits(resourceType);
+        if (pluginPermits != null && !pluginPermits.tryAcquire()) {
+            this.resourcesInCollection.remove(resourceId);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Plugin [" + resourceType.getPlugin() + "] reached its limit of ["
+                    + this.pluginCollectionConcurrency + "] concurrent measurement collections - skipping collection of "
+                    + requests);
+            }
+            incrementLateCollections(resourceType, requests.size());
+            rescheduleLateCollections(requests);
+            return;
+        }
+
+        try {
+            this.collectorWorkerThreadPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        measurementCollectorRunner.collect(requests);
+                    } finally {
+                        releaseCollection(resourceId, pluginPermits);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            releaseCollection(resourceId, pluginPermits);
+            if (!this.collectorWorkerThreadPool.isShutdown()) {
+                LOG.debug("Measurement collector worker pool is saturated - skipping collection of " + requests);
+                incrementLateCollections(resourceType, requests.size());
+                rescheduleLateCollections(requests);
+            }
+        }
+    }
+
+    private void releaseCollection(int resourceId, Semaphore pluginPermits) {
+        if (pluginPermits != null) {
+            pluginPermits.release();
+        }
+        this.resourcesInCollection.remove(resourceId);
+    }
+
+    private Semaphore getPluginCollectionPermits(ResourceType resourceType) {
+        if (this.pluginCollectionConcurrency <= 0 || resourceType == null) {
+            return null;
+        }
+
+        String plugin = resourceType.getPlugin();
+        Semaphore permits = this.pluginCollectionPermits.get(plugin);
+        if (permits == null) {
+            Semaphore newPermits = new Semaphore(this.pluginCollectionConcurrency);
+            permits = this.pluginCollectionPermits.putIfAbsent(plugin, newPermits);
+            if (permits == null) {
+                permits = newPermits;
+            }
+        }
+        return permits;
+    }
+
     private void reschedule(Resource resource) {
         if (LOG.isDebugEnabled()) {
             LOG.debug("In Reschedule for: " + resource);
@@ -231,12 +345,52 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
         }
     }
 
+    /**
+     * @return the report that collected measurement data is currently added to
+     */
     public MeasurementReport getActiveReport() {
-        return activeReport;
+        return reportBuffer.getActiveReport();
     }
 
-    ReentrantReadWriteLock getLock() {
-        return measurementLock;
+    /**
+     * Adds the data collected for one batch of measurements to the active report. If that makes the active report
+     * reach its size or data count limit, the report is closed and sent right away rather than at the end of the
+     * send period.
+     *
+     * @param batch the data collected for one batch of measurements
+     */
+    void addToActiveReport(MeasurementReport batch) {
+        if (reportBuffer.add(batch)) {
+            this.reportsClosedEarly.incrementAndGet();
+            if (this.senderThreadPool != null && this.reportSendScheduled.compareAndSet(false, true)) {
+                try {
+                    this.senderThreadPool.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            reportSendScheduled.set(false);
+                            measurementSenderRunner.sendClosedReports();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // shutting down - the report stays queued like the data of the active report does
+                    this.reportSendScheduled.set(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the active report, unless it is empty, so that it is handed out by {@link #pollReport()}.
+     */
+    void closeActiveReport() {
+        reportBuffer.close();
+    }
+
+    /**
+     * @return the oldest closed report that has not been sent yet, null if there is none
+     */
+    MeasurementReport pollReport() {
+        return reportBuffer.poll();
     }
 
     /**
@@ -302,6 +456,11 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
             PluginContainer.shutdownExecutorService(this.collectorThreadPool, true);
         }
 
+        if (this.collectorWorkerThreadPool != null) {
+            LOG.debug("Shutting down measurement collector worker thread pool...");
+            PluginContainer.shutdownExecutorService(this.collectorWorkerThreadPool, true);
+        }
+
         if (this.senderThreadPool != null) {
             LOG.debug("Shutting down measurement sender thread pool...");
             PluginContainer.shutdownExecutorService(this.senderThreadPool, true);
@@ -352,8 +511,7 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
         // TODO GH: Should I kick the pool or should I just go with the 30 second granularity on collections?
         // If I get much more granular then the server could end up with too many small reports from many agents
         // This may be another reason to have a separate sending mechanism from the collection mechanism.
-        clearDuplicateSchedules();
-
+        // Note that there is no need to clear duplicate schedules - the schedule wheel keeps one per schedule id.
     }
 
     /**
@@ -389,7 +547,7 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
         // TODO GH: Should I kick the pool or should I just go with the 30 second granularity on collections?
         // If I get much more granular then the server could end up with too many small reports from many agents
         // This may be another reason to have a separate sending mechanism from the collection mechanism.
-        clearDuplicateSchedules();
+        // Note that there is no need to clear duplicate schedules - the schedule wheel keeps one per schedule id.
     }
 
     /**
@@ -414,38 +572,18 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
 
             info.setNextCollection(firstCollection);
 
-            this.scheduledRequests.remove(info);
-
             // Don't add it if collection is disabled for this resource
             if (info.isEnabled()) {
-                this.scheduledRequests.offer(info);
+                this.scheduledRequests.schedule(info);
+            } else {
+                this.scheduledRequests.remove(info.getScheduleId());
             }
         }
     }
 
     @Override
     public synchronized void unscheduleCollection(Set<Integer> resourceIds) {
-        Iterator<ScheduledMeasurementInfo> itr = this.scheduledRequests.iterator();
-        while (itr.hasNext()) {
-            ScheduledMeasurementInfo info = itr.next();
-            if (resourceIds.contains(info.getResourceId())) {
-                itr.remove();
-            }
-        }
-    }
-
-    private void clearDuplicateSchedules() {
-        HashSet<Integer> set = new HashSet<Integer>(this.scheduledRequests.size());
-        Iterator<ScheduledMeasurementInfo> iter = this.scheduledRequests.iterator();
-        while (iter.hasNext()) {
-            ScheduledMeasurementInfo info = iter.next();
-            if (set.contains(info.getScheduleId())) {
-                LOG.debug("Found duplicate schedule - will remove it: " + info);
-                iter.remove();
-            } else {
-                set.add(info.getScheduleId());
-            }
-        }
+        this.scheduledRequests.removeAll(resourceIds);
     }
 
     // spinder 12/16/11. BZ 760139. Modified to return empty sets instead of 'null' even for erroneous conditions.
@@ -508,35 +646,17 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
 
     @Override
     public long getNextExpectedCollectionTime() {
-        ScheduledMeasurementInfo nextScheduledMeasurement = this.scheduledRequests.peek();
-        if (nextScheduledMeasurement == null) {
-            return Long.MIN_VALUE;
-        } else {
-            return nextScheduledMeasurement.getNextCollection();
-        }
+        return this.scheduledRequests.getNextCollectionTime();
     }
 
     /**
-     * Returns the complete set of scheduled measurement collections.
+     * Returns the next set of measurement collections that are due. All of them belong to the same resource and
+     * are due at the same time. The returned schedules must be {@link #reschedule(Set) rescheduled} after collection.
      *
-     * @return all measurement schedules
+     * @return the due measurement schedules of one resource, or <code>null</code> if nothing is due
      */
-    public synchronized Set<ScheduledMeasurementInfo> getNextScheduledSet() {
-        ScheduledMeasurementInfo first = this.scheduledRequests.peek();
-        if ((first == null) || (first.getNextCollection() > System.currentTimeMillis())) {
-            return null;
-        }
-
-        Set<ScheduledMeasurementInfo> nextScheduledSet = new HashSet<ScheduledMeasurementInfo>();
-
-        ScheduledMeasurementInfo next = this.scheduledRequests.peek();
-        while ((next != null) && (next.getResourceId() == first.getResourceId())
-            && (next.getNextCollection() == first.getNextCollection())) {
-            nextScheduledSet.add(this.scheduledRequests.poll());
-            next = this.scheduledRequests.peek();
-        }
-
-        return nextScheduledSet;
+    public Set<ScheduledMeasurementInfo> getNextScheduledSet() {
+        return this.scheduledRequests.poll(System.currentTimeMillis());
     }
 
     /**
@@ -546,12 +666,12 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
      *
      * @param scheduledMeasurementInfos the schedules to reschedule
      */
-    public synchronized void reschedule(Set<ScheduledMeasurementInfo> scheduledMeasurementInfos) {
+    public void reschedule(Set<ScheduledMeasurementInfo> scheduledMeasurementInfos) {
 
         for (ScheduledMeasurementInfo scheduledMeasurement : scheduledMeasurementInfos) {
             long interval = scheduledMeasurement.getInterval();
             scheduledMeasurement.setNextCollection(scheduledMeasurement.getNextCollection() + interval);
-            this.scheduledRequests.offer(scheduledMeasurement);
+            this.scheduledRequests.reschedule(scheduledMeasurement);
         }
     }
 
@@ -568,7 +688,7 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
      *
      * @param scheduledMeasurementInfos the late schedules to reschedule
      */
-    synchronized void rescheduleLateCollections(Set<ScheduledMeasurementInfo> scheduledMeasurementInfos) {
+    void rescheduleLateCollections(Set<ScheduledMeasurementInfo> scheduledMeasurementInfos) {
 
         if (LOG.isDebugEnabled()) {
             LOG.debug("Rescheduling [" + scheduledMeasurementInfos.size() + "] late collections: "
@@ -594,7 +714,7 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
             }
 
             scheduledMeasurement.setNextCollection(nextCollection);
-            this.scheduledRequests.offer(scheduledMeasurement);
+            this.scheduledRequests.reschedule(scheduledMeasurement);
         }
     }
 
@@ -605,15 +725,28 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
      * @param report
      */
     public void sendMeasurementReport(MeasurementReport report) {
-        this.collectedMeasurements.addAndGet(report.getDataCount());
-        this.sinceLastCollectedMeasurements.addAndGet(report.getDataCount());
+        long dataCount = report.getDataCount();
+        long size = MeasurementReportBuffer.estimateSize(report);
+        this.collectedMeasurements.addAndGet(dataCount);
+        this.sinceLastCollectedMeasurements.addAndGet(dataCount);
         this.totalTimeCollecting.addAndGet(report.getCollectionTime());
         if (configuration.getServerServices() != null) {
+            long start = System.currentTimeMillis();
             try {
                 configuration.getServerServices().getMeasurementServerService().mergeMeasurementReport(report);
             } catch (Exception e) {
                 LOG.warn("Failure to report measurements to server", e);
             }
+            long sendTime = System.currentTimeMillis() - start;
+            this.lastReportSendTime.set(sendTime);
+            this.totalReportSendTime.addAndGet(sendTime);
+        }
+        this.reportsSent.incrementAndGet();
+        this.lastReportDataCount.set(dataCount);
+        this.lastReportSize.set(size);
+        if (size > this.largestReportSize.get()) {
+            // only ever updated by the one thread sending reports
+            this.largestReportSize.set(size);
         }
     }
 
@@ -642,15 +775,13 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
     public Map<String, Object> getMeasurementScheduleInfoForResource(int resourceId) {
         Map<String, Object> results = null;
 
-        for (ScheduledMeasurementInfo info : new PriorityQueue<ScheduledMeasurementInfo>(scheduledRequests)) {
-            if (info.getResourceId() == resourceId) {
-                if (results == null) {
-                    results = new HashMap<String, Object>();
-                }
-                String scheduleId = String.valueOf(info.getScheduleId());
-                String interval = String.valueOf(info.getInterval()) + "ms";
-                results.put(scheduleId, interval);
+        for (ScheduledMeasurementInfo info : this.scheduledRequests.getSchedules(resourceId)) {
+            if (results == null) {
+                results = new HashMap<String, Object>();
             }
+            String scheduleId = String.valueOf(info.getScheduleId());
+            String interval = String.valueOf(info.getInterval()) + "ms";
+            results.put(scheduleId, interval);
         }
 
         return results;
@@ -745,25 +876,20 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
         return lateCollections.get();
     }
 
-    public MeasurementReport swapReport() {
-        try {
-            this.measurementLock.writeLock().lock();
-            MeasurementReport previousReport = this.activeReport;
-
-            this.activeReport = new MeasurementReport();
-
-            return previousReport;
-        } finally {
-            this.measurementLock.writeLock().unlock();
-        }
-    }
-
-    void incrementLateCollections(int count) {
+    void incrementLateCollections(ResourceType resourceType, int count) {
         this.lateCollections.addAndGet(count);
+        if (resourceType != null) {
+            incrementCounter(this.lateCollectionsByPlugin, resourceType.getPlugin(), count);
+            incrementCounter(this.lateCollectionsByResourceType, getResourceTypeKey(resourceType), count);
+        }
     }
 
-    void incrementFailedCollections(int count) {
+    void incrementFailedCollections(ResourceType resourceType, int count) {
         this.failedCollection.addAndGet(count);
+        if (resourceType != null) {
+            incrementCounter(this.failedCollectionsByPlugin, resourceType.getPlugin(), count);
+            incrementCounter(this.failedCollectionsByResourceType, getResourceTypeKey(resourceType), count);
+        }
     }
 
     @Override
@@ -771,6 +897,91 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
         return failedCollection.get();
     }
 
+    @Override
+    public Map<String, Long> getLateCollectionsByPlugin() {
+        return getCounterValues(this.lateCollectionsByPlugin);
+    }
+
+    @Override
+    public Map<String, Long> getLateCollectionsByResourceType() {
+        return getCounterValues(this.lateCollectionsByResourceType);
+    }
+
+    @Override
+    public Map<String, Long> getFailedCollectionsByPlugin() {
+        return getCounterValues(this.failedCollectionsByPlugin);
+    }
+
+    @Override
+    public Map<String, Long> getFailedCollectionsByResourceType() {
+        return getCounterValues(this.failedCollectionsByResourceType);
+    }
+
+    @Override
+    public long getCollectionsInProgress() {
+        return this.resourcesInCollection.size();
+    }
+
+    @Override
+    public long getMeasurementReportsSent() {
+        return this.reportsSent.get();
+    }
+
+    @Override
+    public long getMeasurementReportsClosedEarly() {
+        return this.reportsClosedEarly.get();
+    }
+
+    @Override
+    public long getLastMeasurementReportDataCount() {
+        return this.lastReportDataCount.get();
+    }
+
+    @Override
+    public long getLastMeasurementReportSize() {
+        return this.lastReportSize.get();
+    }
+
+    @Override
+    public long getLargestMeasurementReportSize() {
+        return this.largestReportSize.get();
+    }
+
+    @Override
+    public long getLastMeasurementReportSendTime() {
+        return this.lastReportSendTime.get();
+    }
+
+    @Override
+    public long getAverageMeasurementReportSendTime() {
+        long sent = this.reportsSent.get();
+        return (sent == 0) ? 0 : this.totalReportSendTime.get() / sent;
+    }
+
+    private static String getResourceTypeKey(ResourceType resourceType) {
+        return resourceType.getPlugin() + ":" + resourceType.getName();
+    }
+
+    private static void incrementCounter(ConcurrentMap<String, AtomicLong> counters, String key, int count) {
+        AtomicLong counter = counters.get(key);
+        if (counter == null) {
+            AtomicLong newCounter = new AtomicLong(0);
+            counter = counters.putIfAbsent(key, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        counter.addAndGet(count);
+    }
+
+    private static Map<String, Long> getCounterValues(ConcurrentMap<String, AtomicLong> counters) {
+        Map<String, Long> values = new HashMap<String, Long>(counters.size());
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().get());
+        }
+        return values;
+    }
+
     private static class CachedValue {
         CachedValue(long timestamp, double value) {
             this.timestamp = timestamp;
@@ -22,6 +22,8 @@
   */
 package org.rhq.core.pc.measurement;
 
+import java.util.Map;
+
 /**
  * @author Greg Hinkle
  */
@@ -39,4 +41,65 @@ public interface MeasurementManagerMBean {
     long getLateCollections();
 
     long getFailedCollections();
+
+    /**
+     * @return the number of late collections, keyed by plugin name
+     */
+    Map<String, Long> getLateCollectionsByPlugin();
+
+    /**
+     * @return the number of late collections, keyed by "plugin:resource type name"
+     */
+    Map<String, Long> getLateCollectionsByResourceType();
+
+    /**
+     * @return the number of failed collections, keyed by plugin name
+     */
+    Map<String, Long> getFailedCollectionsByPlugin();
+
+    /**
+     * @return the number of failed collections, keyed by "plugin:resource type name"
+     */
+    Map<String, Long> getFailedCollectionsByResourceType();
+
+    /**
+     * @return the number of resources that currently have a measurement collection queued or running
+     */
+    long getCollectionsInProgress();
+
+    /**
+     * @return the number of measurement reports sent to the server
+     */
+    long getMeasurementReportsSent();
+
+    /**
+     * @return the number of measurement reports that were sent before the end of their send period because they
+     *         reached the maximum data count or size
+     */
+    long getMeasurementReportsClosedEarly();
+
+    /**
+     * @return the number of data items in the last measurement report sent
+     */
+    long getLastMeasurementReportDataCount();
+
+    /**
+     * @return the estimated size, in bytes, of the last measurement report sent
+     */
+    long getLastMeasurementReportSize();
+
+    /**
+     * @return the estimated size, in bytes, of the largest measurement report sent so far
+     */
+    long getLargestMeasurementReportSize();
+
+    /**
+     * @return the time, in milliseconds, it took to send the last measurement report
+     */
+    long getLastMeasurementReportSendTime();
+
+    /**
+     * @return the average time, in milliseconds, it took to send a measurement report
+     */
+    long getAverageMeasurementReportSendTime();
 }
\ No newline at end of file
@@ -0,0 +1,142 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.core.pc.measurement;
+
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.MeasurementDataTrait;
+import org.rhq.core.domain.measurement.MeasurementReport;
+import org.rhq.core.domain.measurement.calltime.CallTimeData;
+import org.rhq.core.domain.measurement.calltime.CallTimeDataValue;
+
+/**
+ * Double-buffers the measurement reports the collector threads fill. Collectors gather the data of a batch in a report
+ * of their own and append it to the active report when they are done, so no lock is held while a plugin collects. When
+ * the active report reaches the maximum number of data items or the maximum estimated size, it is closed and queued
+ * for sending right away, rather than growing until the next periodic send. Closing the active report only exchanges
+ * it for a new one; collectors never wait for a report to be processed or sent.
+ *
+ * <p>Closed reports are handed out in the order they were closed, so the data of a schedule reaches the server in the
+ * order it was collected.</p>
+ */
+class MeasurementReportBuffer {
+
+    // rough serialized sizes, enough to keep a report from growing without bounds
+    private static final int NUMERIC_SIZE = 48;
+    private static final int TRAIT_SIZE = 48;
+    private static final int CALL_TIME_SIZE = 48;
+    private static final int CALL_TIME_VALUE_SIZE = 48;
+
+    private final long maxDataCount;
+    private final long maxSize;
+
+    private MeasurementReport activeReport = new MeasurementReport();
+    private long activeSize;
+    private final LinkedList<MeasurementReport> closedReports = new LinkedList<MeasurementReport>();
+
+    /**
+     * @param maxDataCount the number of data items at which the active report is closed, 0 (or less) for no limit
+     * @param maxSize      the estimated size in bytes at which the active report is closed, 0 (or less) for no limit
+     */
+    MeasurementReportBuffer(long maxDataCount, long maxSize) {
+        this.maxDataCount = maxDataCount;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Appends the data of a collected batch to the active report.
+     *
+     * @param batch the data collected for one batch of measurements
+     *
+     * @return true if the active report reached its limits and was closed, i.e. there is a report to send now
+     */
+    boolean add(MeasurementReport batch) {
+        long batchSize = estimateSize(batch);
+
+        synchronized (this) {
+            for (MeasurementDataNumeric numeric : batch.getNumericData()) {
+                activeReport.addData(numeric);
+            }
+            for (MeasurementDataTrait trait : batch.getTraitData()) {
+                activeReport.addData(trait);
+            }
+            for (CallTimeData callTime : batch.getCallTimeData()) {
+                activeReport.addData(callTime);
+            }
+            activeReport.incrementCollectionTime(batch.getCollectionTime());
+            activeSize += batchSize;
+
+            if ((maxDataCount > 0 && activeReport.getDataCount() >= maxDataCount)
+                || (maxSize > 0 && activeSize >= maxSize)) {
+                close();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Closes the active report, unless it is empty, and starts a new one.
+     */
+    synchronized void close() {
+        if (activeReport.getDataCount() > 0) {
+            closedReports.add(activeReport);
+            activeReport = new MeasurementReport();
+            activeSize = 0;
+        }
+    }
+
+    /**
+     * @return the oldest closed report that was not handed out yet, null if there is none
+     */
+    synchronized MeasurementReport poll() {
+        return closedReports.poll();
+    }
+
+    /**
+     * @return the report collected data is currently added to
+     */
+    synchronized MeasurementReport getActiveReport() {
+        return activeReport;
+    }
+
+    /**
+     * Estimates the serialized size of the data in the given report.
+     *
+     * @param report the report
+     *
+     * @return the estimated size in bytes
+     */
+    static long estimateSize(MeasurementReport report) {
+        long size = (long) report.getNumericData().size() * NUMERIC_SIZE;
+        for (MeasurementDataTrait trait : report.getTraitData()) {
+            String value = trait.getValue();
+            size += TRAIT_SIZE + ((value != null) ? 2L * value.length() : 0L);
+        }
+        for (CallTimeData callTime : report.getCallTimeData()) {
+            size += CALL_TIME_SIZE;
+            for (Map.Entry<String, CallTimeDataValue> value : callTime.getValues().entrySet()) {
+                size += CALL_TIME_VALUE_SIZE + 2L * value.getKey().length();
+            }
+        }
+        return size;
+    }
+}
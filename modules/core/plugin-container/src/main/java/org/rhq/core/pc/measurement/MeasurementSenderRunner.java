@@ -31,6 +31,10 @@ import org.rhq.core.domain.measurement.MeasurementDataTrait;
 import org.rhq.core.domain.measurement.MeasurementReport;
 
 /**
+ * Sends the measurement reports to the server. Run periodically, it closes the measurement manager's active report and
+ * sends it along with any reports that were closed early because they reached their size or data count limit. Reports
+ * are sent one at a time, in the order they were closed.
+ *
  * @author Greg Hinkle
  */
 public class MeasurementSenderRunner implements Callable<MeasurementReport>, Runnable {
@@ -38,17 +42,45 @@ public class MeasurementSenderRunner implements Callable<MeasurementReport>, Run
 
     private MeasurementManager measurementManager;
 
+    // reports are processed one at a time - the trait and per-minute caches are not thread-safe
+    private final Object sendLock = new Object();
+
     public MeasurementSenderRunner(MeasurementManager measurementManager) {
         this.measurementManager = measurementManager;
     }
 
+    /**
+     * Closes the active report and sends all closed reports.
+     *
+     * @return the last report sent, null if there was nothing to send
+     */
     public MeasurementReport call() throws Exception {
-        MeasurementReport report = this.measurementManager.swapReport();
+        this.measurementManager.closeActiveReport();
+        MeasurementReport report = sendClosedReports();
         if (report == null) {
-            LOG.error("Measurement report is null - nothing to do.");
-            return null;
+            LOG.debug("Measurement report contains no data - not sending to Server.");
         }
+        return report;
+    }
 
+    /**
+     * Sends the reports that have been closed, but leaves the active report alone.
+     *
+     * @return the last report sent, null if there was nothing to send
+     */
+    MeasurementReport sendClosedReports() {
+        synchronized (sendLock) {
+            MeasurementReport lastReport = null;
+            MeasurementReport report;
+            while ((report = this.measurementManager.pollReport()) != null) {
+                send(report);
+                lastReport = report;
+            }
+            return lastReport;
+        }
+    }
+
+    private void send(MeasurementReport report) {
         filterUnchangedTraits(report);
         cleanseInvalidNumericValues(report);
         this.measurementManager.perMinuteItizeData(report);
@@ -62,8 +94,6 @@ public class MeasurementSenderRunner implements Callable<MeasurementReport>, Run
         } else {
             LOG.debug("Measurement report contains no data - not sending to Server.");
         }
-
-        return report;
     }
 
     private void filterUnchangedTraits(MeasurementReport report) {
@@ -24,12 +24,12 @@ package org.rhq.core.pc.measurement;
 
 import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
 
- /**
+/**
  * This is an object that has a natural ordering by when a measurement next needs to be collected as well as by its
  * resource. Requests for the same resource that have the same measurement Implementation notes: This class has a
- * natural ordering to it used by the measurement manager in order to track the next collection time. This ordering
- * includes distinctive information that should be unnecessary, but is because the {@link java.util.PriorityQueue}
- * requires that IFF a.compareTo(b) == 0 Then a.equals(b). This is unfortunate and slows us up some.
+ * natural ordering to it that includes distinctive information that should be unnecessary, but is because sorted
+ * collections require that IFF a.compareTo(b) == 0 Then a.equals(b). The measurement manager itself keeps these in a
+ * {@link ScheduledMeasurementWheel}, which does not rely on the natural ordering.
  *
  * @author Greg Hinkle
  */
@@ -38,6 +38,9 @@ public class ScheduledMeasurementInfo extends MeasurementScheduleRequest impleme
     private int resourceId;
     private long nextCollection;
 
+    // the tick of the ScheduledMeasurementWheel slot this schedule is currently kept in
+    transient long wheelTick;
+
     public ScheduledMeasurementInfo(MeasurementScheduleRequest scheduleRequest, Integer resourceId) {
         super(scheduleRequest);
         this.resourceId = resourceId;
@@ -0,0 +1,295 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.core.pc.measurement;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A hashed timing wheel holding the {@link ScheduledMeasurementInfo}s of all scheduled measurement collections.
+ * <p/>
+ * Time is divided into ticks; each schedule is kept in the wheel slot of the tick its next collection falls into.
+ * Schedules that are further away than one turn of the wheel simply stay in their slot for more than one turn. This
+ * makes adding and rescheduling a schedule O(1), compared to O(log n) for a priority queue.
+ * <p/>
+ * Adding and rescheduling is lock-free: schedules are put on a concurrent queue and only moved into their slots by
+ * the single thread that {@link #poll(long) polls} for due collections. Removing a schedule is O(1) as well - the wheel
+ * keeps a registry of the currently scheduled {@link ScheduledMeasurementInfo} per schedule id, and schedules that are
+ * no longer registered are discarded lazily when their slot comes due. This also means there can never be more than
+ * one active collection per schedule id.
+ * <p/>
+ * Due schedules are handed out in batches; each batch contains the schedules of one resource that are due at the
+ * same time, so that they can be collected with one call to the resource's measurement facet.
+ */
+public class ScheduledMeasurementWheel {
+
+    public static final long DEFAULT_TICK_MILLIS = 1000L;
+    public static final int DEFAULT_WHEEL_SIZE = 4096;
+
+    private final long tickMillis;
+    private final int mask;
+    private final List<ScheduledMeasurementInfo>[] slots;
+
+    // the schedules that are currently scheduled, keyed by schedule id
+    private final ConcurrentMap<Integer, ScheduledMeasurementInfo> registry = new ConcurrentHashMap<Integer, ScheduledMeasurementInfo>();
+
+    // schedules that were added or rescheduled but not yet moved into their slots
+    private final Queue<ScheduledMeasurementInfo> pending = new ConcurrentLinkedQueue<ScheduledMeasurementInfo>();
+
+    // due batches that were not yet handed out - only accessed while holding the poll lock
+    private final ArrayDeque<Set<ScheduledMeasurementInfo>> dueBatches = new ArrayDeque<Set<ScheduledMeasurementInfo>>();
+
+    private final Object pollLock = new Object();
+
+    // the first tick that has not been fully processed yet - only accessed while holding the poll lock
+    private long cursorTick = -1L;
+
+    public ScheduledMeasurementWheel() {
+        this(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * @param tickMillis the length of one tick of the wheel, in milliseconds
+     * @param wheelSize the number of slots of the wheel; rounded up to the next power of two
+     */
+    @SuppressWarnings("unchecked")
+    public ScheduledMeasurementWheel(long tickMillis, int wheelSize) {
+        if (tickMillis <= 0L) {
+            throw new IllegalArgumentException("tickMillis must be positive");
+        }
+        if (wheelSize <= 0) {
+            throw new IllegalArgumentException("wheelSize must be positive");
+        }
+
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+
+        this.tickMillis = tickMillis;
+        this.mask = size - 1;
+        this.slots = new List[size];
+        for (int i = 0; i < size; ++i) {
+            this.slots[i] = new ArrayList<ScheduledMeasurementInfo>();
+        }
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * Adds the given schedule to the wheel. Its next collection time must already be set. If there already is a
+     * schedule with the same schedule id it is replaced.
+     *
+     * @param info the schedule to add
+     */
+    public void schedule(ScheduledMeasurementInfo info) {
+        registry.put(info.getScheduleId(), info);
+        pending.offer(info);
+    }
+
+    /**
+     * Puts a schedule that was previously handed out by {@link #poll(long)} back onto the wheel, using its (updated)
+     * next collection time. If the schedule was removed or replaced in the meantime, it is silently dropped.
+     *
+     * @param info the schedule to put back on the wheel
+     *
+     * @return <code>true</code> if the schedule is still active and was put back on the wheel
+     */
+    public boolean reschedule(ScheduledMeasurementInfo info) {
+        if (registry.get(info.getScheduleId()) != info) {
+            return false;
+        }
+        pending.offer(info);
+        return true;
+    }
+
+    /**
+     * Removes the schedule with the given schedule id.
+     *
+     * @param scheduleId the id of the schedule to remove
+     */
+    public void remove(int scheduleId) {
+        registry.remove(scheduleId);
+    }
+
+    /**
+     * Removes all schedules of the given resources.
+     *
+     * @param resourceIds the ids of the resources whose schedules are to be removed
+     */
+    public void removeAll(Set<Integer> resourceIds) {
+        for (ScheduledMeasurementInfo info : registry.values()) {
+            if (resourceIds.contains(info.getResourceId())) {
+                registry.remove(info.getScheduleId(), info);
+            }
+        }
+    }
+
+    /**
+     * @return the number of active schedules, including the ones whose collection is currently in progress
+     */
+    public int size() {
+        return registry.size();
+    }
+
+    /**
+     * @param resourceId the resource id
+     *
+     * @return the active schedules of the given resource
+     */
+    public List<ScheduledMeasurementInfo> getSchedules(int resourceId) {
+        List<ScheduledMeasurementInfo> schedules = new ArrayList<ScheduledMeasurementInfo>();
+        for (ScheduledMeasurementInfo info : registry.values()) {
+            if (info.getResourceId() == resourceId) {
+                schedules.add(info);
+            }
+        }
+        return schedules;
+    }
+
+    /**
+     * Returns the earliest next collection time of all active schedules. This has to look at every schedule and is
+     * only meant for monitoring purposes.
+     *
+     * @return the earliest next collection time, or {@link Long#MIN_VALUE} if nothing is scheduled
+     */
+    public long getNextCollectionTime() {
+        long next = Long.MAX_VALUE;
+        for (ScheduledMeasurementInfo info : registry.values()) {
+            next = Math.min(next, info.getNextCollection());
+        }
+        return (next == Long.MAX_VALUE) ? Long.MIN_VALUE : next;
+    }
+
+    /**
+     * @param now the current time
+     *
+     * @return the number of milliseconds until the wheel advances to its next tick
+     */
+    public long getMillisUntilNextTick(long now) {
+        return tickMillis - (now % tickMillis);
+    }
+
+    /**
+     * Returns the next batch of schedules that are due for collection at the given time. All schedules of a batch
+     * belong to the same resource and have the same next collection time. The returned schedules are no longer on the
+     * wheel; they have to be {@link #reschedule(ScheduledMeasurementInfo) rescheduled} once they are collected.
+     *
+     * @param now the current time
+     *
+     * @return the next due batch, or <code>null</code> if nothing is due
+     */
+    public Set<ScheduledMeasurementInfo> poll(long now) {
+        synchronized (pollLock) {
+            if (dueBatches.isEmpty()) {
+                advance(now);
+            }
+            return dueBatches.poll();
+        }
+    }
+
+    private void advance(long now) {
+        long nowTick = now / tickMillis;
+        if (cursorTick < 0L) {
+            cursorTick = nowTick;
+        }
+
+        drainPending();
+
+        Map<BatchKey, Set<ScheduledMeasurementInfo>> batches = new LinkedHashMap<BatchKey, Set<ScheduledMeasurementInfo>>();
+        long lastTick = Math.min(nowTick, cursorTick + mask);
+        for (long tick = cursorTick; tick <= lastTick; ++tick) {
+            List<ScheduledMeasurementInfo> slot = slots[(int) (tick & mask)];
+            int kept = 0;
+            for (int i = 0, size = slot.size(); i < size; ++i) {
+                ScheduledMeasurementInfo info = slot.get(i);
+                if (registry.get(info.getScheduleId()) != info) {
+                    continue; // removed or replaced - drop it
+                }
+                if (info.wheelTick <= nowTick && info.getNextCollection() <= now) {
+                    BatchKey key = new BatchKey(info.getResourceId(), info.getNextCollection());
+                    Set<ScheduledMeasurementInfo> batch = batches.get(key);
+                    if (batch == null) {
+                        batch = new HashSet<ScheduledMeasurementInfo>();
+                        batches.put(key, batch);
+                    }
+                    batch.add(info);
+                } else {
+                    slot.set(kept++, info);
+                }
+            }
+            // compact the slot, dropping everything that was handed out or discarded
+            for (int i = slot.size() - 1; i >= kept; --i) {
+                slot.remove(i);
+            }
+        }
+
+        // the current tick may still hold schedules that become due later within the tick, so revisit it next time
+        cursorTick = nowTick;
+
+        dueBatches.addAll(batches.values());
+    }
+
+    private void drainPending() {
+        ScheduledMeasurementInfo info;
+        while ((info = pending.poll()) != null) {
+            // anything that is already due goes into the current slot so it is picked up right away
+            info.wheelTick = Math.max(info.getNextCollection() / tickMillis, cursorTick);
+            slots[(int) (info.wheelTick & mask)].add(info);
+        }
+    }
+
+    private static final class BatchKey {
+        private final int resourceId;
+        private final long nextCollection;
+
+        BatchKey(int resourceId, long nextCollection) {
+            this.resourceId = resourceId;
+            this.nextCollection = nextCollection;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof BatchKey)) {
+                return false;
+            }
+            BatchKey that = (BatchKey) o;
+            return resourceId == that.resourceId && nextCollection == that.nextCollection;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * resourceId + (int) (nextCollection ^ (nextCollection >>> 32));
+        }
+    }
+}
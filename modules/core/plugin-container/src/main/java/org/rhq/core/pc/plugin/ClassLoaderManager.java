@@ -57,6 +57,12 @@ public class ClassLoaderManager {
      */
     private final File tmpDir;
 
+    /**
+     * Directory where the jars embedded in plugin jars are unpacked once and reused, or <code>null</code>
+     * if they are unpacked in {@link #tmpDir} by every classloader.
+     */
+    private final File unpackCacheDir;
+
     /**
      * Indicates what plugins are deployed and their hierarchies.
      */
@@ -121,6 +127,25 @@ public class ClassLoaderManager {
      */
     public ClassLoaderManager(Map<String, URL> pluginNamesUrls, PluginDependencyGraph graph,
         ClassLoader rootClassLoader, File tmpDir, boolean createResourceClassLoaders) {
+        this(pluginNamesUrls, graph, rootClassLoader, tmpDir, null, createResourceClassLoaders);
+    }
+
+    /**
+     * Same as {@link #ClassLoaderManager(Map, PluginDependencyGraph, ClassLoader, File, boolean)} except the jars
+     * embedded in the plugin jars are unpacked into a persistent cache directory that is reused by all the
+     * classloaders of a plugin and by later plugin containers.
+     *
+     * @param pluginNamesUrls maps a plugin name with the URL to that plugin's jar file
+     * @param graph the graph that provides plugin dependency information for all plugins that are deployed
+     * @param rootClassLoader the classloader at the top of the classloader hierarchy
+     * @param tmpDir where the classloaders can write out the jars that are embedded in the plugin jars
+     * @param unpackCacheDir where the embedded jars are cached; if <code>null</code>, they are written to
+     *                       <code>tmpDir</code> instead
+     * @param createResourceClassLoaders if <code>true</code>, the classloader manager will create resource classloader
+     *                                   instances when appropriate
+     */
+    public ClassLoaderManager(Map<String, URL> pluginNamesUrls, PluginDependencyGraph graph,
+        ClassLoader rootClassLoader, File tmpDir, File unpackCacheDir, boolean createResourceClassLoaders) {
 
         this.rootClassLoader = rootClassLoader;
         this.pluginClassLoaders = new HashMap<String, ClassLoader>();
@@ -130,7 +155,16 @@ public class ClassLoaderManager {
         this.pluginNamesUrls = pluginNamesUrls;
         this.pluginDependencyGraph = graph;
         this.tmpDir = tmpDir;
+        this.unpackCacheDir = unpackCacheDir;
         this.createResourceClassLoaders = createResourceClassLoaders;
+
+        if (unpackCacheDir != null) {
+            Set<String> pluginJarNames = new HashSet<String>();
+            for (URL pluginUrl : pluginNamesUrls.values()) {
+                pluginJarNames.add(new File(pluginUrl.getPath()).getName());
+            }
+            PluginClassLoader.purgeUnpackCache(unpackCacheDir, pluginJarNames);
+        }
     }
 
     /**
@@ -212,14 +246,21 @@ public class ClassLoaderManager {
      * classloader is that of the the classloader for the required (&ltdepends>) plugin. In other words,
      * this follows the plugin dependency hierarchy as defined in the given
      * {@link #getPluginDependencyGraph() dependency graph}.
+     * <p/>
+     * The classloader is created without holding the lock of this manager, so the classloaders of different
+     * plugins can be created concurrently. If two threads create the classloader of the same plugin, the one
+     * that is registered last is destroyed and the first one is returned to both.
      * 
      * @param pluginName the plugin whose classloader is to be created
      * @return the plugin classloader
      * @throws PluginContainerException
      */
-    public synchronized ClassLoader obtainPluginClassLoader(String pluginName) throws PluginContainerException {
+    public ClassLoader obtainPluginClassLoader(String pluginName) throws PluginContainerException {
 
-        ClassLoader cl = this.pluginClassLoaders.get(pluginName);
+        ClassLoader cl;
+        synchronized (this) {
+            cl = this.pluginClassLoaders.get(pluginName);
+        }
         if (cl == null) {
             URL pluginJarUrl = this.pluginNamesUrls.get(pluginName);
             String useClassesDep = this.pluginDependencyGraph.getUseClassesDependency(pluginName);
@@ -241,7 +282,18 @@ public class ClassLoaderManager {
                 }
             }
             cl = createClassLoader(pluginJarUrl, null, parentClassLoader);
-            this.pluginClassLoaders.put(pluginName, cl);
+
+            synchronized (this) {
+                ClassLoader existing = this.pluginClassLoaders.get(pluginName);
+                if (existing == null) {
+                    this.pluginClassLoaders.put(pluginName, cl);
+                } else {
+                    if (existing != cl && cl != parentClassLoader && cl instanceof PluginClassLoader) {
+                        ((PluginClassLoader) cl).destroy();
+                    }
+                    cl = existing;
+                }
+            }
         }
 
         return cl;
@@ -510,13 +562,14 @@ public class ClassLoaderManager {
             String pluginJarName = new File(mainJarUrl.getPath()).getName();
 
             if (additionalJars == null || additionalJars.size() == 0) {
-                classLoader = PluginClassLoader.create(pluginJarName, mainJarUrl, true, parentClassLoader, this.tmpDir);
+                classLoader = PluginClassLoader.create(pluginJarName, new URL[] { mainJarUrl }, true,
+                    parentClassLoader, this.tmpDir, this.unpackCacheDir);
             } else {
                 List<URL> allJars = new ArrayList<URL>(additionalJars.size() + 1);
                 allJars.add(mainJarUrl);
                 allJars.addAll(additionalJars);
                 classLoader = PluginClassLoader.create(pluginJarName, allJars.toArray(new URL[allJars.size()]), true,
-                    parentClassLoader, this.tmpDir);
+                    parentClassLoader, this.tmpDir, this.unpackCacheDir);
             }
 
             if (log.isDebugEnabled()) {
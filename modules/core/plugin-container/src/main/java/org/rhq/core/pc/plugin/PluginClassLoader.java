@@ -24,14 +24,21 @@ package org.rhq.core.pc.plugin;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -41,14 +48,28 @@ import org.apache.commons.logging.LogFactory;
 
 import org.rhq.core.clientapi.agent.PluginContainerException;
 import org.rhq.core.pluginapi.util.FileUtils;
+import org.rhq.core.util.MessageDigestGenerator;
 
 /**
  * Classloader for the plugin jar itself and any embedded lib/* jars.
  */
 public class PluginClassLoader extends URLClassLoader {
+    private static final Log LOG = LogFactory.getLog(PluginClassLoader.class);
+
+    /**
+     * Name of the file, stored in each unpack cache entry, that lists the classpath entries of that cache entry
+     * in classpath order. It is written last, so an entry without it is incomplete and is never used.
+     */
+    private static final String UNPACK_CACHE_INDEX = "classpath.index";
+
+    private static final String STAGING_SUFFIX = ".classloader";
+
+    private static final Object UNPACK_CACHE_LOCK = new Object();
+
     private final Log log = LogFactory.getLog(this.getClass());
 
     private File embeddedJarsDirectory;
+    private boolean embeddedJarsDirectoryCached;
     private String stringValue;
 
     protected PluginClassLoader(URL[] urls, ClassLoader parent) {
@@ -74,10 +95,13 @@ public class PluginClassLoader extends URLClassLoader {
     }
 
     public void destroy() {
-        try {
-            FileUtils.purge(embeddedJarsDirectory, true);
-        } catch (IOException e) {
-            log.warn("Failed to purge embedded jars directory. Cause: " + e);
+        // a cached directory is shared with other classloaders and is reused the next time the plugin is loaded
+        if (!embeddedJarsDirectoryCached) {
+            try {
+                FileUtils.purge(embeddedJarsDirectory, true);
+            } catch (IOException e) {
+                log.warn("Failed to purge embedded jars directory. Cause: " + e);
+            }
         }
 
         // help GC
@@ -122,6 +146,33 @@ public class PluginClassLoader extends URLClassLoader {
      */
     public static PluginClassLoader create(String pluginJarName, URL[] pluginUrls, boolean unpackNestedJars,
         ClassLoader parent, File tmpDirectory) throws PluginContainerException {
+        return create(pluginJarName, pluginUrls, unpackNestedJars, parent, tmpDirectory, null);
+    }
+
+    /**
+     * Same as {@link #create(String, URL[], boolean, ClassLoader, File)} except the nested jars can be unpacked
+     * into a persistent cache directory. The nested jars of a given plugin jar are then only unpacked once; later
+     * classloaders for the same plugin jar content, including those created by a later plugin container, reuse
+     * the already unpacked jars. The cache entries are keyed on the plugin jar name and the digest of its content,
+     * so an updated plugin jar is unpacked again and the entry of its previous version is removed.
+     *
+     * @param pluginJarName the logical name of the plugin
+     * @param pluginUrls the first element is the location where the plugin jar can be found, the remaining
+     *                   are additional URLs to jars that will be added to the new classloader
+     * @param unpackNestedJars if <code>true</code>, any lib/*.jar files found in the plugin jar
+     *                         are unpacked and put in the classloader. The additional jars are NEVER unpacked.
+     * @param parent the parent classloader for the new classloader being created
+     * @param tmpDirectory the directory where the unpacked nested jars are placed if there is no cache directory
+     * @param unpackCacheDirectory the directory where the unpacked nested jars are cached; if <code>null</code>,
+     *                             the nested jars are unpacked into the <code>tmpDirectory</code> and are
+     *                             deleted when the classloader is destroyed
+     *
+     * @return the new plugin classloader
+     *
+     * @throws PluginContainerException
+     */
+    public static PluginClassLoader create(String pluginJarName, URL[] pluginUrls, boolean unpackNestedJars,
+        ClassLoader parent, File tmpDirectory, File unpackCacheDirectory) throws PluginContainerException {
         List<URL> classpathUrlList = new ArrayList<URL>();
         File unpackedDirectory = null;
         boolean processedPluginJar = false; // after the first URL is processed (which is the plugin jar) this will be true
@@ -132,7 +183,13 @@ public class PluginClassLoader extends URLClassLoader {
             // note that we only ever unpacked the plugin jar itself
             if (!processedPluginJar && unpackNestedJars) {
                 try {
-                    unpackedDirectory = unpackEmbeddedJars(pluginJarName, pluginUrl, classpathUrlList, tmpDirectory);
+                    if (unpackCacheDirectory != null) {
+                        unpackedDirectory = unpackEmbeddedJarsCached(pluginJarName, pluginUrl, classpathUrlList,
+                            unpackCacheDirectory);
+                    } else {
+                        unpackedDirectory = unpackEmbeddedJars(pluginJarName, pluginUrl, classpathUrlList,
+                            tmpDirectory, true);
+                    }
                 } catch (Exception e) {
                     throw new PluginContainerException("Failed to unpack embedded JARs within: " + pluginUrl, e);
                 }
@@ -144,6 +201,7 @@ public class PluginClassLoader extends URLClassLoader {
         URL[] classpath = classpathUrlList.toArray(new URL[classpathUrlList.size()]);
         PluginClassLoader newLoader = new PluginClassLoader(classpath, parent);
         newLoader.embeddedJarsDirectory = unpackedDirectory;
+        newLoader.embeddedJarsDirectoryCached = (unpackCacheDirectory != null);
 
         return newLoader;
     }
@@ -159,13 +217,14 @@ public class PluginClassLoader extends URLClassLoader {
      * @param  urls          the URLs to the tmp directory resources that were unpacked
      * @param  tmpDirectory  the parent directory that will contain the child directory which will contain all extracted
      *                       resources
+     * @param  deleteOnExit  if <code>true</code>, the extracted resources are deleted when the VM exits
      *
      * @return the location where all the extract files are now located
      *
      * @throws IOException       If any IO goes wrong
      */
-    private static File unpackEmbeddedJars(String pluginJarName, URL pluginUrl, List<URL> urls, File tmpDirectory)
-        throws IOException {
+    private static File unpackEmbeddedJars(String pluginJarName, URL pluginUrl, List<URL> urls, File tmpDirectory,
+        boolean deleteOnExit) throws IOException {
         InputStream pluginStream = pluginUrl.openStream();
         ZipInputStream zis = new ZipInputStream(new BufferedInputStream(pluginStream));
         ZipEntry entry;
@@ -178,7 +237,7 @@ public class PluginClassLoader extends URLClassLoader {
                 // Only care about entries in the lib directory
                 if (entryName.startsWith("lib") && (entryName.length() > 4)) {
                     if (extractionDirectory == null) {
-                        extractionDirectory = createTempDirectory(tmpDirectory, pluginJarName);
+                        extractionDirectory = createTempDirectory(tmpDirectory, pluginJarName, deleteOnExit);
                     }
 
                     int i = entryName.lastIndexOf('/');
@@ -218,7 +277,9 @@ public class PluginClassLoader extends URLClassLoader {
                         try {
                             BufferedOutputStream outputStream = new BufferedOutputStream(fileOutputStream);
                             try {
-                                file.deleteOnExit();
+                                if (deleteOnExit) {
+                                    file.deleteOnExit();
+                                }
 
                                 // do NOT close this inputStream since it is buffering the ZipInputStream
                                 // and we are going to still process that input stream later. We close
@@ -254,13 +315,211 @@ public class PluginClassLoader extends URLClassLoader {
         return extractionDirectory;
     }
 
-    private static File createTempDirectory(File tmpDirectory, String pluginName) throws IOException {
+    /**
+     * Adds the URLs of the lib/* resources of the given plugin jar, as unpacked in the cache directory, and returns
+     * the cache entry directory. If the cache has no complete entry for the current content of the plugin jar, the
+     * resources are unpacked into a staging directory that is then renamed to the cache entry directory, so a
+     * partially unpacked entry is never visible, not even after a crash.
+     *
+     * @param  pluginJarName  name of the main plugin jar, used as part of the name of the cache entry directory
+     * @param  pluginUrl      the URL to the main plugin jar we are unpacking
+     * @param  urls           the URLs to the cached resources are added to this list
+     * @param  cacheDirectory the directory containing all the cache entries
+     *
+     * @return the cache entry directory
+     *
+     * @throws IOException If any IO goes wrong
+     */
+    private static File unpackEmbeddedJarsCached(String pluginJarName, URL pluginUrl, List<URL> urls,
+        File cacheDirectory) throws IOException {
+        String entryName = pluginJarName + '-' + MessageDigestGenerator.getDigestString(pluginUrl);
+        File entryDirectory = new File(cacheDirectory, entryName);
+
+        List<URL> cachedUrls = readUnpackCacheIndex(entryDirectory);
+        if (cachedUrls == null) {
+            if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs() && !cacheDirectory.isDirectory()) {
+                throw new IOException("Failed to create plugin unpack cache directory [" + cacheDirectory + "]");
+            }
+
+            File stagingDirectory = createTempDirectory(cacheDirectory, entryName, false);
+            try {
+                List<URL> stagedUrls = new ArrayList<URL>();
+                File extractionDirectory = unpackEmbeddedJars(pluginJarName, pluginUrl, stagedUrls, stagingDirectory,
+                    false);
+                writeUnpackCacheIndex(stagingDirectory, extractionDirectory, stagedUrls);
+
+                synchronized (UNPACK_CACHE_LOCK) {
+                    // another classloader for the same plugin jar may have filled the cache in the meantime
+                    cachedUrls = readUnpackCacheIndex(entryDirectory);
+                    if (cachedUrls == null) {
+                        if (entryDirectory.exists()) {
+                            FileUtils.purge(entryDirectory, true); // an incomplete entry left by a crash
+                        }
+                        if (!stagingDirectory.renameTo(entryDirectory)) {
+                            throw new IOException("Failed to move [" + stagingDirectory + "] to [" + entryDirectory
+                                + "]");
+                        }
+                        pruneUnpackCache(cacheDirectory, pluginJarName, entryName);
+                        cachedUrls = readUnpackCacheIndex(entryDirectory);
+                        if (cachedUrls == null) {
+                            throw new IOException("Failed to read the classpath index of [" + entryDirectory + "]");
+                        }
+                    }
+                }
+            } finally {
+                if (stagingDirectory.exists()) {
+                    FileUtils.purge(stagingDirectory, true);
+                }
+            }
+        } else if (LOG.isDebugEnabled()) {
+            LOG.debug("Reusing the embedded jars of [" + pluginJarName + "] unpacked in [" + entryDirectory + "]");
+        }
+
+        urls.addAll(cachedUrls);
+        return entryDirectory;
+    }
+
+    /**
+     * Writes the classpath index of a staged cache entry. The unpacked resources are in a subdirectory of the
+     * staging directory, so the index entries are relative to the staging directory.
+     */
+    private static void writeUnpackCacheIndex(File stagingDirectory, File extractionDirectory, List<URL> stagedUrls)
+        throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(new File(stagingDirectory, UNPACK_CACHE_INDEX)),
+            "UTF-8");
+        try {
+            for (URL stagedUrl : stagedUrls) {
+                File stagedFile;
+                try {
+                    stagedFile = new File(stagedUrl.toURI());
+                } catch (URISyntaxException e) {
+                    throw new IOException("Invalid unpacked resource URL [" + stagedUrl + "]: " + e);
+                }
+                if (stagedFile.equals(extractionDirectory)) {
+                    writer.write(extractionDirectory.getName());
+                } else {
+                    writer.write(extractionDirectory.getName() + '/' + stagedFile.getName());
+                }
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Returns the URLs listed in the classpath index of the given cache entry, or <code>null</code> if the entry
+     * does not exist or is incomplete.
+     */
+    private static List<URL> readUnpackCacheIndex(File entryDirectory) throws IOException {
+        File indexFile = new File(entryDirectory, UNPACK_CACHE_INDEX);
+        if (!indexFile.isFile()) {
+            return null;
+        }
+
+        List<URL> urls = new ArrayList<URL>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() == 0) {
+                    continue;
+                }
+                File file = new File(entryDirectory, line);
+                if (!file.exists()) {
+                    return null;
+                }
+                urls.add(file.toURI().toURL());
+            }
+        } finally {
+            reader.close();
+        }
+        return urls;
+    }
+
+    /**
+     * Removes the cache entries of other versions of the given plugin jar.
+     */
+    private static void pruneUnpackCache(File cacheDirectory, String pluginJarName, String currentEntryName) {
+        File[] entries = cacheDirectory.listFiles();
+        if (entries == null) {
+            return;
+        }
+
+        for (File entry : entries) {
+            String name = entry.getName();
+            if (entry.isDirectory() && !name.equals(currentEntryName) && isUnpackCacheEntryOf(name, pluginJarName)) {
+                try {
+                    FileUtils.purge(entry, true);
+                    LOG.debug("Removed stale plugin unpack cache entry [" + entry + "]");
+                } catch (IOException e) {
+                    LOG.warn("Failed to remove stale plugin unpack cache entry [" + entry + "]. Cause: " + e);
+                }
+            }
+        }
+    }
+
+    private static boolean isUnpackCacheEntryOf(String entryName, String pluginJarName) {
+        String prefix = pluginJarName + '-';
+        return entryName.startsWith(prefix) && entryName.substring(prefix.length()).matches("[0-9a-fA-F]+");
+    }
+
+    /**
+     * Removes what earlier plugin containers left in the given unpack cache directory that is of no use anymore:
+     * the staging directories of plugin jars they did not finish unpacking, and the cache entries of plugin jars
+     * that are no longer deployed, e.g. because the plugin was removed or an upgrade changed the versioned name of
+     * its jar. This must only be called while no classloader is being created with this cache directory.
+     *
+     * @param unpackCacheDirectory the plugin unpack cache directory
+     * @param pluginJarNames the names of the deployed plugin jars
+     */
+    public static void purgeUnpackCache(File unpackCacheDirectory, Collection<String> pluginJarNames) {
+        File[] entries = unpackCacheDirectory.listFiles();
+        if (entries == null) {
+            return;
+        }
+
+        for (File entry : entries) {
+            if (!entry.isDirectory()) {
+                continue;
+            }
+
+            String name = entry.getName();
+            if (name.endsWith(STAGING_SUFFIX)) {
+                try {
+                    FileUtils.purge(entry, true);
+                } catch (IOException e) {
+                    LOG.warn("Failed to remove plugin unpack cache staging directory [" + entry + "]. Cause: " + e);
+                }
+                continue;
+            }
+
+            boolean deployed = false;
+            for (String pluginJarName : pluginJarNames) {
+                if (isUnpackCacheEntryOf(name, pluginJarName)) {
+                    deployed = true;
+                    break;
+                }
+            }
+            if (!deployed && name.matches(".+-[0-9a-fA-F]+")) {
+                try {
+                    FileUtils.purge(entry, true);
+                    LOG.debug("Removed plugin unpack cache entry of undeployed plugin jar [" + entry + "]");
+                } catch (IOException e) {
+                    LOG.warn("Failed to remove plugin unpack cache entry [" + entry + "]. Cause: " + e);
+                }
+            }
+        }
+    }
+
+    private static File createTempDirectory(File tmpDirectory, String pluginName, boolean deleteOnExit)
+        throws IOException {
         // Let's reuse the algorithm the JDK uses to determine a unique name:
         // 1) create a temp file to get a unique name using JDK createTempFile
         // 2) then quickly delete the file and...
         // 3) convert it to a directory
 
-        File tmpDir = File.createTempFile(pluginName, ".classloader", tmpDirectory); // create file with unique name
+        File tmpDir = File.createTempFile(pluginName, STAGING_SUFFIX, tmpDirectory); // create file with unique name
         boolean deleteOk = tmpDir.delete(); // delete the tmp file and...
         boolean mkdirsOk = tmpDir.mkdirs(); // ...convert it to a directory
 
@@ -268,7 +527,9 @@ public class PluginClassLoader extends URLClassLoader {
             throw new IOException("Failed to create temp classloader directory named [" + tmpDir + "]");
         }
 
-        tmpDir.deleteOnExit();
+        if (deleteOnExit) {
+            tmpDir.deleteOnExit();
+        }
 
         return tmpDir;
     }
@@ -28,6 +28,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -42,6 +48,8 @@ import org.rhq.core.clientapi.descriptor.plugin.PluginDescriptor;
 import org.rhq.core.domain.plugin.Plugin;
 import org.rhq.core.pc.ContainerService;
 import org.rhq.core.pc.PluginContainerConfiguration;
+import org.rhq.core.pc.util.LoggingThreadFactory;
+import org.rhq.core.pc.util.StartupTimeline;
 import org.rhq.core.pluginapi.plugin.PluginContext;
 import org.rhq.core.pluginapi.plugin.PluginLifecycleListener;
 import org.rhq.core.system.SystemInfo;
@@ -69,8 +77,32 @@ public class PluginManager implements ContainerService {
         void execute(PluginDescriptor pluginDescriptor, URL pluginURL);
     }
 
+    /**
+     * A plugin whose classloader and environment are created and whose lifecycle listener is initialized,
+     * but that is not registered yet.
+     */
+    private static class InitializedPlugin {
+        private final URL pluginUrl;
+        private final PluginDescriptor pluginDescriptor;
+        private final PluginEnvironment pluginEnvironment;
+        private final PluginLifecycleListener overseer;
+
+        private InitializedPlugin(URL pluginUrl, PluginDescriptor pluginDescriptor,
+            PluginEnvironment pluginEnvironment, PluginLifecycleListener overseer) {
+            this.pluginUrl = pluginUrl;
+            this.pluginDescriptor = pluginDescriptor;
+            this.pluginEnvironment = pluginEnvironment;
+            this.overseer = overseer;
+        }
+    }
+
     private static final Log log = LogFactory.getLog(PluginManager.class);
 
+    /**
+     * The subdirectory of the data directory where the jars embedded in the plugin jars are unpacked.
+     */
+    private static final String UNPACK_CACHE_DIRECTORY = "plugin-unpack-cache";
+
     /**
      * The map of all plugins keyed on plugin name.
      */
@@ -87,14 +119,33 @@ public class PluginManager implements ContainerService {
 
     private final PluginLifecycleListenerManager pluginLifecycleListenerMgr;
     private final UpdateLoadedPlugins updateLoadedPlugins;
+    private final StartupTimeline timeline;
 
     /**
      * Finds all plugins using the plugin finder defined in the <code>pluginContainerConfiguration</code> and
-     * {@link #loadPlugin(java.net.URL, ClassLoader, org.rhq.core.clientapi.descriptor.plugin.PluginDescriptor) loads}
-     * each plugin found.
+     * loads each plugin found.
      */
     public PluginManager(PluginContainerConfiguration pluginContainerConfiguration,
         PluginLifecycleListenerManager pluginLifecycleListenerManager) {
+        this(pluginContainerConfiguration, pluginLifecycleListenerManager, null);
+    }
+
+    /**
+     * Finds all plugins using the plugin finder defined in the <code>pluginContainerConfiguration</code> and
+     * loads each plugin found.
+     *
+     * <p>The plugin descriptors are parsed concurrently. The plugins are then loaded by dependency level: the
+     * classloaders of the plugins that do not depend on each other are created, and their lifecycle listeners
+     * initialized, concurrently. Their metadata is loaded sequentially, in deployment order. The number of threads
+     * is the {@link PluginContainerConfiguration#getPluginLoaderParallelism() plugin loader parallelism}.</p>
+     *
+     * @param pluginContainerConfiguration the plugin container configuration
+     * @param pluginLifecycleListenerManager manages the lifecycle listeners of the plugins
+     * @param timeline where the durations of the loading phases and of each plugin are recorded;
+     *                 may be <code>null</code>
+     */
+    public PluginManager(PluginContainerConfiguration pluginContainerConfiguration,
+        PluginLifecycleListenerManager pluginLifecycleListenerManager, StartupTimeline timeline) {
 
         if (pluginContainerConfiguration == null) {
             throw new NullPointerException("pluginContainerConfiguration is null");
@@ -105,6 +156,7 @@ public class PluginManager implements ContainerService {
 
         this.pluginContainerConfiguration = pluginContainerConfiguration;
         this.pluginLifecycleListenerMgr = pluginLifecycleListenerManager;
+        this.timeline = (timeline != null) ? timeline : new StartupTimeline();
         loadedPluginEnvironments = new HashMap<String, PluginEnvironment>();
         loadedPlugins = new ArrayList<Plugin>();
         metadataManager = new PluginMetadataManager();
@@ -136,21 +188,48 @@ public class PluginManager implements ContainerService {
         Map<URL, PluginDescriptor> descriptors = new HashMap<URL, PluginDescriptor>();
         PluginDependencyGraph graph = new PluginDependencyGraph();
         boolean createResourceCL = pluginContainerConfiguration.isCreateResourceClassloaders();
-        this.classLoaderManager = new ClassLoaderManager(pluginNamesUrls, graph, rootCL, tmpDir, createResourceCL);
+        File unpackCacheDir = null;
+        if (pluginContainerConfiguration.isPluginUnpackCacheEnabled()) {
+            unpackCacheDir = new File(pluginContainerConfiguration.getDataDirectory(), UNPACK_CACHE_DIRECTORY);
+        }
+        this.classLoaderManager = new ClassLoaderManager(pluginNamesUrls, graph, rootCL, tmpDir, unpackCacheDir,
+            createResourceCL);
 
         if (finder == null) {
             log.warn("No plugin finder was specified in the plugin container configuration - this should only occur within test environments.");
             return;
         }
 
+        int parallelism = pluginContainerConfiguration.getPluginLoaderParallelism();
+        ExecutorService loaderExecutor = null;
+        if (parallelism > 1) {
+            loaderExecutor = Executors.newFixedThreadPool(parallelism, new LoggingThreadFactory("PluginLoader", true));
+        }
+
         try {
-            Collection<URL> pluginUrls = finder.findPlugins();
+            long phaseStart = StartupTimeline.now();
+            List<URL> pluginUrls = new ArrayList<URL>(finder.findPlugins());
+            this.timeline.phaseFinished("find plugins", phaseStart);
 
             // first, we need to parse all descriptors so we can build the dependency graph
-            for (URL url : pluginUrls) {
+            phaseStart = StartupTimeline.now();
+            List<Future<PluginDescriptor>> parsedDescriptors = new ArrayList<Future<PluginDescriptor>>();
+            for (final URL url : pluginUrls) {
                 log.debug("Plugin found at: " + url);
+                parsedDescriptors.add(execute(loaderExecutor, new Callable<PluginDescriptor>() {
+                    public PluginDescriptor call() throws Exception {
+                        long start = StartupTimeline.now();
+                        PluginDescriptor descriptor = AgentPluginDescriptorUtil.loadPluginDescriptorFromUrl(url);
+                        PluginManager.this.timeline.pluginStepFinished(descriptor.getName(), "descriptor", start);
+                        return descriptor;
+                    }
+                }));
+            }
+
+            for (int i = 0; i < pluginUrls.size(); i++) {
+                URL url = pluginUrls.get(i);
                 try {
-                    PluginDescriptor descriptor = AgentPluginDescriptorUtil.loadPluginDescriptorFromUrl(url);
+                    PluginDescriptor descriptor = getResult(parsedDescriptors.get(i));
                     if (!disabledPlugins.contains(descriptor.getName())) {
                         AgentPluginDescriptorUtil.addPluginToDependencyGraph(graph, descriptor);
                         pluginNamesUrls.put(descriptor.getName(), url);
@@ -164,31 +243,51 @@ public class PluginManager implements ContainerService {
                     continue;
                 }
             }
+            this.timeline.phaseFinished("parse descriptors", phaseStart);
 
             // our graph is complete, get the order that we have to deploy the plugins
+            phaseStart = StartupTimeline.now();
             List<String> deploymentOrder = graph.getDeploymentOrder();
 
-            // now deploy the plugins in the proper order, making sure we build the proper classloaders
-            for (String nextPlugin : deploymentOrder) {
-                URL pluginUrl = pluginNamesUrls.get(nextPlugin);
+            // now deploy the plugins in the proper order, making sure we build the proper classloaders.
+            // The plugins of a level only depend on plugins of the previous levels, so they can be initialized
+            // concurrently once the previous levels are registered.
+            for (List<String> deploymentLevel : getDeploymentLevels(graph, deploymentOrder)) {
+                List<Future<InitializedPlugin>> initializedPlugins = new ArrayList<Future<InitializedPlugin>>();
+                for (final String nextPlugin : deploymentLevel) {
+                    final URL pluginUrl = pluginNamesUrls.get(nextPlugin);
+                    final PluginDescriptor descriptor = descriptors.get(pluginUrl);
+                    initializedPlugins.add(execute(loaderExecutor, new Callable<InitializedPlugin>() {
+                        public InitializedPlugin call() throws Exception {
+                            return initializePlugin(nextPlugin, pluginUrl, descriptor);
+                        }
+                    }));
+                }
 
-                try {
-                    ClassLoader pluginClassLoader = this.classLoaderManager.obtainPluginClassLoader(nextPlugin);
-                    PluginDescriptor descriptor = descriptors.get(pluginUrl);
-                    loadPlugin(pluginUrl, pluginClassLoader, descriptor);
-                } catch (Throwable t) {
-                    // for some reason, the plugin failed to load - it will be ignored, and its depending plugins will also fail later
-                    log.error("Plugin [" + nextPlugin + "] at [" + pluginUrl
-                        + "] could not be loaded and will therefore not be deployed.", t);
-                    continue;
+                for (int i = 0; i < deploymentLevel.size(); i++) {
+                    String nextPlugin = deploymentLevel.get(i);
+                    try {
+                        registerPlugin(getResult(initializedPlugins.get(i)));
+                    } catch (Throwable t) {
+                        // for some reason, the plugin failed to load - it will be ignored, and its depending plugins will also fail later
+                        log.error("Plugin [" + nextPlugin + "] at [" + pluginNamesUrls.get(nextPlugin)
+                            + "] could not be loaded and will therefore not be deployed.", t);
+                        continue;
+                    }
                 }
             }
+            this.timeline.phaseFinished("load plugins", phaseStart);
+
             log.info("Deployed plugins: " + this.loadedPlugins);
             metadataManager.cleanupDescriptors();
         } catch (Exception e) {
             shutdown(); // have to clean up the environments (e.g. unpacked jars) we might have already created
             log.error("Error initializing plugin container", e);
             throw new RuntimeException("Cannot initialize the plugin container", e);
+        } finally {
+            if (loaderExecutor != null) {
+                loaderExecutor.shutdownNow();
+            }
         }
     }
 
@@ -284,23 +383,83 @@ public class PluginManager implements ContainerService {
     }
 
     /**
-     * This will create a {@link PluginEnvironment} for the plugin at the given URL. The plugin's descriptor is parsed.
-     * Once this method returns, the plugin's components are ready to be created and used.
+     * Groups the plugins by dependency level. The plugins of the first level have no dependencies, the plugins
+     * of each following level only depend on plugins of the previous levels. Within a level, the plugins keep
+     * their deployment order.
+     *
+     * @param  graph           the plugin dependency graph
+     * @param  deploymentOrder the plugins in deployment order, as returned by the graph
      *
+     * @return the plugins of each level
+     */
+    static List<List<String>> getDeploymentLevels(PluginDependencyGraph graph, List<String> deploymentOrder) {
+        Map<String, Integer> pluginLevels = new HashMap<String, Integer>();
+        List<List<String>> deploymentLevels = new ArrayList<List<String>>();
+
+        for (String plugin : deploymentOrder) {
+            int level = 0;
+            for (String dependency : graph.getPluginDependencies(plugin)) {
+                Integer dependencyLevel = pluginLevels.get(dependency);
+                if (dependencyLevel != null) {
+                    level = Math.max(level, dependencyLevel.intValue() + 1);
+                }
+            }
+            pluginLevels.put(plugin, Integer.valueOf(level));
+
+            while (deploymentLevels.size() <= level) {
+                deploymentLevels.add(new ArrayList<String>());
+            }
+            deploymentLevels.get(level).add(plugin);
+        }
+
+        return deploymentLevels;
+    }
+
+    /**
+     * Runs the task in the executor, or in the calling thread if there is no executor.
+     */
+    private static <T> Future<T> execute(ExecutorService executor, Callable<T> task) {
+        if (executor != null) {
+            return executor.submit(task);
+        }
+        FutureTask<T> future = new FutureTask<T>(task);
+        future.run();
+        return future;
+    }
+
+    private static <T> T getResult(Future<T> future) throws Throwable {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * This will create the classloader and the {@link PluginEnvironment} for the plugin at the given URL and
+     * initialize the plugin's lifecycle listener. This can be called concurrently for plugins that do not depend on
+     * each other. The plugin must then be {@link #registerPlugin(InitializedPlugin) registered}.
+     *
+     * @param  pluginName  the name of the plugin
      * @param  pluginUrl   the new plugin's jar location
-     * @param  classLoader the new plugin's classloader
      * @param  pluginDescriptor the already parsed plugin descriptor for this plugin
+     * @return the initialized plugin
      * @throws PluginContainerException if the plugin fails to load
      */
-    private void loadPlugin(URL pluginUrl, ClassLoader classLoader, PluginDescriptor pluginDescriptor) throws PluginContainerException {
+    private InitializedPlugin initializePlugin(String pluginName, URL pluginUrl, PluginDescriptor pluginDescriptor)
+        throws PluginContainerException {
+
+        long start = StartupTimeline.now();
+        ClassLoader classLoader = this.classLoaderManager.obtainPluginClassLoader(pluginName);
+        this.timeline.pluginStepFinished(pluginName, "classloader", start);
 
         if (log.isDebugEnabled()) {
             log.debug("Loading plugin from [" + pluginUrl + "] in classloader [" + classLoader + "]...");
         }
 
+        start = StartupTimeline.now();
         PluginDescriptorLoader pluginDescriptorLoader = new PluginDescriptorLoader(pluginUrl, classLoader);
         PluginEnvironment pluginEnvironment = new PluginEnvironment(pluginDescriptor.getName(), pluginDescriptorLoader);
-        String pluginName = pluginEnvironment.getPluginName();
 
         // tell the plugin we have loaded it
         PluginLifecycleListener overseer = getPluginLifecycleListener(pluginName, pluginEnvironment, pluginDescriptor);
@@ -316,12 +475,28 @@ public class PluginManager implements ContainerService {
                 Thread.currentThread().setContextClassLoader(originalContextClassLoader);
             }
         }
+        this.timeline.pluginStepFinished(pluginName, "initialize", start);
+
+        return new InitializedPlugin(pluginUrl, pluginDescriptor, pluginEnvironment, overseer);
+    }
+
+    /**
+     * Loads the metadata of an {@link #initializePlugin(String, URL, PluginDescriptor) initialized} plugin and adds
+     * it to the loaded plugins. Once this method returns, the plugin's components are ready to be created and used.
+     * Plugins must be registered one at a time, in deployment order.
+     *
+     * @param  plugin the initialized plugin
+     */
+    private void registerPlugin(InitializedPlugin plugin) {
+        String pluginName = plugin.pluginEnvironment.getPluginName();
 
         // everything is loaded and initialized
-        this.loadedPluginEnvironments.put(pluginName, pluginEnvironment);
-        this.metadataManager.loadPlugin(pluginDescriptor);
-        pluginLifecycleListenerMgr.setListener(pluginDescriptor.getName(), overseer);
-        updateLoadedPlugins.execute(pluginDescriptor, pluginUrl);
+        long start = StartupTimeline.now();
+        this.loadedPluginEnvironments.put(pluginName, plugin.pluginEnvironment);
+        this.metadataManager.loadPlugin(plugin.pluginDescriptor);
+        pluginLifecycleListenerMgr.setListener(pluginName, plugin.overseer);
+        updateLoadedPlugins.execute(plugin.pluginDescriptor, plugin.pluginUrl);
+        this.timeline.pluginStepFinished(pluginName, "metadata", start);
     }
 
     /**
@@ -0,0 +1,179 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.core.pc.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long the phases of the plugin container startup take, and how long each plugin takes in each of
+ * its loading steps. Plugins are loaded concurrently, so the per-plugin durations do not add up to the phase
+ * durations. The {@link #toString() report} lists the phases in the order they finished, followed by the
+ * slowest plugins.
+ *
+ * <p>This object is thread safe.</p>
+ */
+public class StartupTimeline {
+    /**
+     * The number of plugins listed in the report.
+     */
+    public static final int SLOWEST_PLUGINS_REPORTED = 10;
+
+    private final long startNanos;
+    private final Map<String, Long> phaseMillis = new LinkedHashMap<String, Long>();
+    private final Map<String, Map<String, Long>> pluginStepMillis = new HashMap<String, Map<String, Long>>();
+
+    public StartupTimeline() {
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Returns the current time, to be passed to {@link #phaseFinished(String, long)} or
+     * {@link #pluginStepFinished(String, String, long)} once the phase or step is done.
+     *
+     * @return the current value of the nanosecond timer
+     */
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the duration of a startup phase. If the same phase is recorded more than once,
+     * the durations are added up.
+     *
+     * @param phase the name of the phase
+     * @param startNanos the {@link #now() time} the phase started
+     */
+    public synchronized void phaseFinished(String phase, long startNanos) {
+        add(phaseMillis, phase, elapsedMillis(startNanos));
+    }
+
+    /**
+     * Records the duration of a loading step of a plugin.
+     *
+     * @param pluginName the name of the plugin
+     * @param step the name of the step, e.g. "classloader"
+     * @param startNanos the {@link #now() time} the step started
+     */
+    public synchronized void pluginStepFinished(String pluginName, String step, long startNanos) {
+        Map<String, Long> steps = pluginStepMillis.get(pluginName);
+        if (steps == null) {
+            steps = new LinkedHashMap<String, Long>();
+            pluginStepMillis.put(pluginName, steps);
+        }
+        add(steps, step, elapsedMillis(startNanos));
+    }
+
+    /**
+     * @return the duration in milliseconds of each phase, in the order the phases were first recorded
+     */
+    public synchronized Map<String, Long> getPhaseDurations() {
+        return new LinkedHashMap<String, Long>(phaseMillis);
+    }
+
+    /**
+     * @return the total duration in milliseconds of the loading steps of each plugin, slowest plugin first
+     */
+    public synchronized Map<String, Long> getPluginDurations() {
+        final Map<String, Long> totals = new HashMap<String, Long>();
+        for (Map.Entry<String, Map<String, Long>> plugin : pluginStepMillis.entrySet()) {
+            long total = 0L;
+            for (Long millis : plugin.getValue().values()) {
+                total += millis.longValue();
+            }
+            totals.put(plugin.getKey(), Long.valueOf(total));
+        }
+
+        List<String> pluginNames = new ArrayList<String>(totals.keySet());
+        Collections.sort(pluginNames, new Comparator<String>() {
+            public int compare(String name1, String name2) {
+                int c = totals.get(name2).compareTo(totals.get(name1));
+                return (c != 0) ? c : name1.compareTo(name2);
+            }
+        });
+
+        Map<String, Long> durations = new LinkedHashMap<String, Long>();
+        for (String pluginName : pluginNames) {
+            durations.put(pluginName, totals.get(pluginName));
+        }
+        return durations;
+    }
+
+    /**
+     * @return the time in milliseconds since this timeline was created
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis(startNanos);
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder str = new StringBuilder("Startup timeline (total ").append(getElapsedMillis()).append("ms)");
+
+        str.append(": phases=[");
+        appendDurations(str, phaseMillis);
+        str.append(']');
+
+        Map<String, Long> pluginDurations = getPluginDurations();
+        if (!pluginDurations.isEmpty()) {
+            str.append(", slowest plugins=[");
+            int count = 0;
+            for (Map.Entry<String, Long> plugin : pluginDurations.entrySet()) {
+                if (count++ == SLOWEST_PLUGINS_REPORTED) {
+                    break;
+                }
+                if (count > 1) {
+                    str.append(", ");
+                }
+                str.append(plugin.getKey()).append('=').append(plugin.getValue()).append("ms (");
+                appendDurations(str, pluginStepMillis.get(plugin.getKey()));
+                str.append(')');
+            }
+            str.append(']');
+        }
+
+        return str.toString();
+    }
+
+    private static void appendDurations(StringBuilder str, Map<String, Long> durations) {
+        boolean first = true;
+        for (Map.Entry<String, Long> duration : durations.entrySet()) {
+            if (!first) {
+                str.append(", ");
+            }
+            str.append(duration.getKey()).append('=').append(duration.getValue()).append("ms");
+            first = false;
+        }
+    }
+
+    private static void add(Map<String, Long> durations, String name, long millis) {
+        Long previous = durations.get(name);
+        durations.put(name, Long.valueOf((previous == null) ? millis : previous.longValue() + millis));
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.core.pc.inventory;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.resource.ResourceCategory;
+import org.rhq.core.domain.resource.ResourceType;
+
+@Test
+public class AvailabilityScanStatisticsTest {
+
+    private final ResourceType serverType = new ResourceType("server", "plugin", ResourceCategory.SERVER, null);
+    private final ResourceType serviceType = new ResourceType("service", "plugin", ResourceCategory.SERVICE, null);
+
+    public void testScanDurations() {
+        AvailabilityScanStatistics statistics = new AvailabilityScanStatistics();
+        assertEquals(statistics.getAverageScanDuration(), 0);
+
+        statistics.scanCompleted(scan(1000L, 300L));
+        statistics.scanCompleted(scan(2000L, 100L));
+
+        assertEquals(statistics.getScansCompleted(), 2);
+        assertEquals(statistics.getLastScanDuration(), 100);
+        assertEquals(statistics.getMaxScanDuration(), 300);
+        assertEquals(statistics.getAverageScanDuration(), 200);
+    }
+
+    public void testSlowestChecksAreTrackedPerResourceType() {
+        AvailabilityScanStatistics statistics = new AvailabilityScanStatistics();
+
+        statistics.checkCompleted(serverType, 50L);
+        statistics.checkCompleted(serverType, 500L);
+        statistics.checkCompleted(serverType, 20L);
+        statistics.checkCompleted(serviceType, 5L);
+
+        Map<String, Long> slowest = statistics.getSlowestAvailabilityChecksByResourceType();
+        assertEquals(slowest.size(), 2);
+        assertEquals(slowest.get("plugin:server"), Long.valueOf(500L));
+        assertEquals(slowest.get("plugin:service"), Long.valueOf(5L));
+    }
+
+    public void testTimeouts() {
+        AvailabilityScanStatistics statistics = new AvailabilityScanStatistics();
+
+        statistics.checkCompleted(serviceType, 5L);
+        statistics.checkTimedOut(serviceType, 10000L);
+        statistics.checkTimedOut(serviceType, 10000L);
+
+        assertEquals(statistics.getAvailabilityCheckTimeouts(), 2);
+        assertEquals(statistics.getAvailabilityCheckTimeoutsByResourceType().get("plugin:service"), Long.valueOf(2L));
+        assertEquals(statistics.getSlowestAvailabilityChecksByResourceType().get("plugin:service"),
+            Long.valueOf(10000L));
+    }
+
+    private AvailabilityExecutor.Scan scan(long startTime, long runtime) {
+        AvailabilityExecutor.Scan scan = new AvailabilityExecutor.Scan(startTime, false);
+        scan.setEndTime(startTime + runtime);
+        return scan;
+    }
+}
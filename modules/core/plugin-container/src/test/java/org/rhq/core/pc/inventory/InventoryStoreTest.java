@@ -0,0 +1,216 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.core.pc.inventory;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceCategory;
+import org.rhq.core.domain.resource.ResourceType;
+import org.rhq.core.pc.inventory.InventoryStore.StoredInventory;
+import org.rhq.core.util.file.FileUtil;
+
+/**
+ * Unit test for {@link InventoryStore}.
+ */
+@Test
+public class InventoryStoreTest {
+    private static final ResourceType PLATFORM_TYPE = new ResourceType("Test Platform", "test",
+        ResourceCategory.PLATFORM, null);
+    private static final ResourceType SERVER_TYPE = new ResourceType("Test Server", "test", ResourceCategory.SERVER,
+        PLATFORM_TYPE);
+
+    private File directory;
+    private Resource platform;
+    private Map<String, ResourceContainer> containers;
+
+    @BeforeMethod
+    public void createInventory() throws Exception {
+        directory = FileUtil.createTempDirectory("inventory-store-test", null, null);
+        containers = new LinkedHashMap<String, ResourceContainer>();
+        platform = addResource(1, "platform", PLATFORM_TYPE, null);
+        addResource(2, "server-a", SERVER_TYPE, platform);
+        addResource(3, "server-b", SERVER_TYPE, platform);
+    }
+
+    @AfterMethod
+    public void deleteStore() {
+        FileUtil.purge(directory, true);
+    }
+
+    public void testSaveAndLoad() throws Exception {
+        InventoryStore store = new InventoryStore(directory);
+        assertFalse(store.exists());
+        store.save(platform, containers, true);
+        assertTrue(store.exists());
+
+        StoredInventory loaded = new InventoryStore(directory).load();
+        assertEquals(loaded.getPlatform().getUuid(), platform.getUuid());
+        assertEquals(loaded.getResourceContainers().keySet(), containers.keySet());
+        assertEquals(loaded.getPlatform().getChildResources().size(), 2);
+
+        Resource server = loaded.getResourceContainers().get(uuid("server-a")).getResource();
+        assertEquals(server.getId(), 2);
+        assertEquals(server.getResourceType().getName(), SERVER_TYPE.getName());
+        assertTrue(server.getParentResource() == loaded.getPlatform(), "parent was not relinked");
+    }
+
+    public void testIncrementalSaveOnlyAppendsChanges() throws Exception {
+        InventoryStore store = new InventoryStore(directory);
+        store.save(platform, containers, true);
+        File journal = new File(directory, InventoryStore.JOURNAL_FILE_NAME);
+        long emptyJournalLength = journal.length();
+
+        store.save(platform, containers, false);
+        assertEquals(journal.length(), emptyJournalLength, "unchanged resources were written again");
+
+        containers.get(uuid("server-a")).getResource().setName("renamed");
+        Resource removed = containers.remove(uuid("server-b")).getResource();
+        platform.removeChildResource(removed);
+        addResource(4, "server-c", SERVER_TYPE, platform);
+        store.save(platform, containers, false);
+        assertTrue(journal.length() > emptyJournalLength);
+
+        StoredInventory loaded = new InventoryStore(directory).load();
+        assertEquals(loaded.getResourceContainers().keySet(), containers.keySet());
+        assertEquals(loaded.getResourceContainers().get(uuid("server-a")).getResource().getName(), "renamed");
+        assertEquals(loaded.getPlatform().getChildResources().size(), 2);
+    }
+
+    public void testTornJournalTailIsIgnored() throws Exception {
+        InventoryStore store = new InventoryStore(directory);
+        store.save(platform, containers, true);
+        containers.get(uuid("server-a")).getResource().setName("renamed");
+        store.save(platform, containers, false);
+        File journal = new File(directory, InventoryStore.JOURNAL_FILE_NAME);
+        long validLength = journal.length();
+
+        containers.get(uuid("server-b")).getResource().setName("lost");
+        store.save(platform, containers, false);
+        RandomAccessFile raf = new RandomAccessFile(journal, "rw");
+        try {
+            raf.setLength(validLength + (raf.length() - validLength) / 2);
+        } finally {
+            raf.close();
+        }
+
+        InventoryStore reloadedStore = new InventoryStore(directory);
+        StoredInventory loaded = reloadedStore.load();
+        assertEquals(loaded.getResourceContainers().get(uuid("server-a")).getResource().getName(), "renamed");
+        assertEquals(loaded.getResourceContainers().get(uuid("server-b")).getResource().getName(), "server-b");
+
+        // the torn tail is dropped by the next append
+        reloadedStore.save(loaded.getPlatform(), loaded.getResourceContainers(), false);
+        loaded = new InventoryStore(directory).load();
+        assertEquals(loaded.getResourceContainers().size(), 3);
+    }
+
+    public void testStaleJournalIsIgnored() throws Exception {
+        InventoryStore store = new InventoryStore(directory);
+        store.save(platform, containers, true);
+        containers.get(uuid("server-a")).getResource().setName("renamed");
+        store.save(platform, containers, false);
+
+        // simulate a crash between writing a new snapshot and resetting the journal
+        File journal = new File(directory, InventoryStore.JOURNAL_FILE_NAME);
+        File staleJournal = new File(directory, "stale");
+        FileUtil.copyFile(journal, staleJournal);
+        containers.get(uuid("server-a")).getResource().setName("compacted");
+        store.save(platform, containers, true);
+        assertTrue(journal.delete());
+        assertTrue(staleJournal.renameTo(journal));
+
+        StoredInventory loaded = new InventoryStore(directory).load();
+        assertNotNull(loaded.getPlatform());
+        assertEquals(loaded.getResourceContainers().get(uuid("server-a")).getResource().getName(), "compacted");
+    }
+
+    public void testTornJournalHeaderIsIgnored() throws Exception {
+        InventoryStore store = new InventoryStore(directory);
+        store.save(platform, containers, true);
+        containers.get(uuid("server-a")).getResource().setName("compacted");
+        store.save(platform, containers, true);
+
+        // simulate a crash while the journal header was rewritten in place
+        RandomAccessFile journal = new RandomAccessFile(new File(directory, InventoryStore.JOURNAL_FILE_NAME), "rw");
+        try {
+            journal.setLength(5);
+        } finally {
+            journal.close();
+        }
+
+        InventoryStore reloadedStore = new InventoryStore(directory);
+        StoredInventory loaded = reloadedStore.load();
+        assertEquals(loaded.getResourceContainers().get(uuid("server-a")).getResource().getName(), "compacted");
+
+        // the next save starts over with a new snapshot and journal
+        loaded.getResourceContainers().get(uuid("server-a")).getResource().setName("saved");
+        reloadedStore.save(loaded.getPlatform(), loaded.getResourceContainers(), false);
+        loaded = new InventoryStore(directory).load();
+        assertEquals(loaded.getResourceContainers().get(uuid("server-a")).getResource().getName(), "saved");
+    }
+
+    public void testSnapshotIsRecoveredFromTemporaryFile() throws Exception {
+        InventoryStore store = new InventoryStore(directory);
+        store.save(platform, containers, true);
+        containers.get(uuid("server-a")).getResource().setName("renamed");
+        store.save(platform, containers, false);
+        containers.get(uuid("server-a")).getResource().setName("compacted");
+        store.save(platform, containers, true);
+
+        // simulate a crash between deleting the old snapshot and renaming the new one into place
+        File snapshot = new File(directory, InventoryStore.SNAPSHOT_FILE_NAME);
+        assertTrue(snapshot.renameTo(new File(directory, InventoryStore.SNAPSHOT_FILE_NAME + ".tmp")));
+        assertTrue(new InventoryStore(directory).exists());
+
+        StoredInventory loaded = new InventoryStore(directory).load();
+        assertNotNull(loaded.getPlatform());
+        assertEquals(loaded.getResourceContainers().get(uuid("server-a")).getResource().getName(), "compacted");
+        assertTrue(snapshot.isFile());
+    }
+
+    private Resource addResource(int id, String uuid, ResourceType type, Resource parent) {
+        Resource resource = new Resource(uuid + "-key", uuid, type);
+        resource.setId(id);
+        resource.setUuid(uuid);
+        if (parent != null) {
+            parent.addChildResource(resource);
+        }
+        containers.put(resource.getUuid(), new ResourceContainer(resource, getClass().getClassLoader()));
+        return resource;
+    }
+
+    private static String uuid(String name) {
+        Resource resource = new Resource();
+        resource.setUuid(name); // pads the name to a full UUID length
+        return resource.getUuid();
+    }
+}
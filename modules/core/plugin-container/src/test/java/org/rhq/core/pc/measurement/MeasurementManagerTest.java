@@ -0,0 +1,150 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.core.pc.measurement;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceCategory;
+import org.rhq.core.domain.resource.ResourceType;
+import org.rhq.core.pc.PluginContainerConfiguration;
+import org.rhq.core.pc.inventory.InventoryManager;
+import org.rhq.core.pc.inventory.ResourceContainer;
+
+/**
+ * Tests the dispatching of due measurement collections to the collector worker threads.
+ */
+@Test
+public class MeasurementManagerTest {
+
+    private static final String PLUGIN = "TestPlugin";
+
+    private final ResourceType resourceType = new ResourceType("TestServer", PLUGIN, ResourceCategory.SERVER, null);
+
+    private CountDownLatch collectionLatch;
+
+    private MeasurementManager measurementManager;
+
+    @AfterMethod
+    public void shutdown() {
+        if (measurementManager != null) {
+            collectionLatch.countDown();
+            measurementManager.shutdown();
+        }
+    }
+
+    public void testOverrunningCollectionIsRescheduledAsLate() throws Exception {
+        measurementManager = createMeasurementManager(0, 1);
+
+        // the first batch blocks in the worker thread, so the second batch for the same resource is an overrun
+        measurementManager.submitCollection(createRequests(1, 2));
+        measurementManager.submitCollection(createRequests(1, 2));
+
+        assertEquals(measurementManager.getLateCollections(), 2);
+        assertEquals(measurementManager.getLateCollectionsByPlugin().get(PLUGIN), Long.valueOf(2));
+        assertEquals(measurementManager.getLateCollectionsByResourceType().get(PLUGIN + ":TestServer"),
+            Long.valueOf(2));
+
+        collectionLatch.countDown();
+        waitForCollections();
+        assertEquals(measurementManager.getLateCollections(), 2, "the blocked collection should not be late");
+    }
+
+    public void testPluginConcurrencyLimit() throws Exception {
+        measurementManager = createMeasurementManager(1, 1);
+
+        // two different resources of the same plugin, but the plugin is only allowed one collection at a time
+        measurementManager.submitCollection(createRequests(1, 3));
+        measurementManager.submitCollection(createRequests(2, 3));
+
+        assertEquals(measurementManager.getLateCollections(), 3);
+        assertEquals(measurementManager.getLateCollectionsByPlugin().get(PLUGIN), Long.valueOf(3));
+
+        collectionLatch.countDown();
+        waitForCollections();
+
+        // once the plugin is idle again, collections for its resources are dispatched normally
+        measurementManager.submitCollection(createRequests(2, 3));
+        waitForCollections();
+        assertEquals(measurementManager.getLateCollections(), 3);
+    }
+
+    private MeasurementManager createMeasurementManager(int pluginConcurrency, final int blockedResourceId) {
+        collectionLatch = new CountDownLatch(1);
+
+        PluginContainerConfiguration configuration = new PluginContainerConfiguration();
+        configuration.setInsideAgent(true);
+        configuration.setStartManagementBean(false);
+        configuration.setMeasurementCollectionThreadPoolSize(4);
+        configuration.setMeasurementCollectionPluginConcurrency(pluginConcurrency);
+
+        InventoryManager inventoryManager = Mockito.mock(InventoryManager.class);
+        Mockito.when(inventoryManager.getResourceContainer(Mockito.anyInt())).thenAnswer(
+            new Answer<ResourceContainer>() {
+                public ResourceContainer answer(InvocationOnMock invocation) throws Throwable {
+                    int resourceId = (Integer) invocation.getArguments()[0];
+                    if (resourceId == blockedResourceId && Thread.currentThread().getName().startsWith(
+                        "MeasurementManager.collector.worker")) {
+                        collectionLatch.await(30, TimeUnit.SECONDS);
+                    }
+                    Resource resource = new Resource(resourceId);
+                    resource.setResourceType(resourceType);
+                    ResourceContainer container = Mockito.mock(ResourceContainer.class);
+                    Mockito.when(container.getResource()).thenReturn(resource);
+                    return container;
+                }
+            });
+
+        return new MeasurementManager(configuration, null, inventoryManager);
+    }
+
+    private Set<ScheduledMeasurementInfo> createRequests(int resourceId, int count) {
+        Set<ScheduledMeasurementInfo> requests = new HashSet<ScheduledMeasurementInfo>();
+        for (int i = 0; i < count; ++i) {
+            MeasurementScheduleRequest request = new MeasurementScheduleRequest(resourceId * 100 + i, "metric" + i,
+                60000L, true, DataType.MEASUREMENT);
+            ScheduledMeasurementInfo info = new ScheduledMeasurementInfo(request, resourceId);
+            info.setNextCollection(System.currentTimeMillis());
+            requests.add(info);
+        }
+        return requests;
+    }
+
+    private void waitForCollections() throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 10000L;
+        while (measurementManager.getCollectionsInProgress() > 0 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10L);
+        }
+        assertTrue(measurementManager.getCollectionsInProgress() == 0, "collections did not finish");
+    }
+}
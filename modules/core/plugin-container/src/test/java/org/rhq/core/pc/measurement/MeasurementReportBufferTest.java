@@ -0,0 +1,100 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.core.pc.measurement;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.MeasurementDataTrait;
+import org.rhq.core.domain.measurement.MeasurementReport;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+
+@Test
+public class MeasurementReportBufferTest {
+
+    public void testReportIsClosedAtMaxDataCount() {
+        MeasurementReportBuffer buffer = new MeasurementReportBuffer(5, 0);
+
+        assertFalse(buffer.add(batch(0, 3)));
+        assertNull(buffer.poll());
+        assertTrue(buffer.add(batch(3, 3)));
+        assertFalse(buffer.add(batch(6, 1)));
+
+        MeasurementReport closed = buffer.poll();
+        assertEquals(closed.getDataCount(), 6);
+        assertEquals(closed.getCollectionTime(), 20);
+        assertNull(buffer.poll());
+        assertEquals(buffer.getActiveReport().getDataCount(), 1);
+    }
+
+    public void testReportIsClosedAtMaxSize() {
+        MeasurementReportBuffer buffer = new MeasurementReportBuffer(0, 1000);
+
+        MeasurementReport batch = new MeasurementReport();
+        batch.addData(new MeasurementDataTrait(1L, trait(1), "small"));
+        assertFalse(buffer.add(batch));
+
+        batch = new MeasurementReport();
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 500; ++i) {
+            value.append('x');
+        }
+        batch.addData(new MeasurementDataTrait(1L, trait(2), value.toString()));
+        assertTrue(buffer.add(batch));
+        assertEquals(buffer.poll().getTraitData().size(), 2);
+    }
+
+    public void testClosedReportsAreHandedOutInOrder() {
+        MeasurementReportBuffer buffer = new MeasurementReportBuffer(2, 0);
+        buffer.add(batch(0, 2));
+        buffer.add(batch(2, 2));
+        buffer.add(batch(4, 1));
+        MeasurementReport active = buffer.getActiveReport();
+        buffer.close();
+
+        assertEquals(buffer.poll().getNumericData().iterator().next().getScheduleId(), 0);
+        assertEquals(buffer.poll().getNumericData().iterator().next().getScheduleId(), 2);
+        assertSame(buffer.poll(), active);
+        assertNull(buffer.poll());
+
+        // an empty report is not closed
+        buffer.close();
+        assertNull(buffer.poll());
+    }
+
+    private MeasurementScheduleRequest trait(int scheduleId) {
+        return new MeasurementScheduleRequest(scheduleId, "trait" + scheduleId, 60000L, true, DataType.TRAIT);
+    }
+
+    private MeasurementReport batch(int firstScheduleId, int count) {
+        MeasurementReport batch = new MeasurementReport();
+        for (int i = firstScheduleId; i < firstScheduleId + count; ++i) {
+            batch.addData(new MeasurementDataNumeric(1L, i, 1.0));
+        }
+        batch.setCollectionTime(10);
+        return batch;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.core.pc.measurement;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+
+/**
+ * Compares the {@link ScheduledMeasurementWheel} with the priority queue the measurement manager used to keep its
+ * schedules in. Both are driven through the same simulated collection cycles - poll every due batch, reschedule it -
+ * over ten minutes of simulated time. These are not run as part of the regular build; run them explicitly with
+ * <code>mvn test -Dtest=ScheduledMeasurementPerfTests</code>.
+ */
+public class ScheduledMeasurementPerfTests {
+
+    private final Log log = LogFactory.getLog(ScheduledMeasurementPerfTests.class);
+
+    private static final int SCHEDULES_PER_RESOURCE = 20;
+    private static final long[] INTERVALS = { 30000L, 60000L, 600000L, 1200000L };
+    private static final long SIMULATED_TIME = 600000L;
+    private static final long STEP = 1000L;
+
+    @DataProvider(name = "scheduleCounts")
+    public Object[][] scheduleCounts() {
+        return new Object[][] { { 10000 }, { 100000 }, { 1000000 } };
+    }
+
+    @Test(dataProvider = "scheduleCounts")
+    public void priorityQueue(int scheduleCount) {
+        List<ScheduledMeasurementInfo> infos = createSchedules(scheduleCount);
+        PriorityQueue<ScheduledMeasurementInfo> queue = new PriorityQueue<ScheduledMeasurementInfo>(10000);
+
+        long start = System.nanoTime();
+        for (ScheduledMeasurementInfo info : infos) {
+            synchronized (queue) {
+                queue.offer(info);
+            }
+        }
+        long inserted = System.nanoTime();
+
+        long collected = 0;
+        for (long now = 0; now < SIMULATED_TIME; now += STEP) {
+            while (true) {
+                Set<ScheduledMeasurementInfo> batch = new HashSet<ScheduledMeasurementInfo>();
+                synchronized (queue) {
+                    ScheduledMeasurementInfo first = queue.peek();
+                    if (first == null || first.getNextCollection() > now) {
+                        break;
+                    }
+                    ScheduledMeasurementInfo next = first;
+                    while (next != null && next.getResourceId() == first.getResourceId()
+                        && next.getNextCollection() == first.getNextCollection()) {
+                        batch.add(queue.poll());
+                        next = queue.peek();
+                    }
+                }
+                collected += batch.size();
+                for (ScheduledMeasurementInfo info : batch) {
+                    info.setNextCollection(info.getNextCollection() + info.getInterval());
+                    synchronized (queue) {
+                        queue.offer(info);
+                    }
+                }
+            }
+        }
+
+        report("PriorityQueue", scheduleCount, start, inserted, System.nanoTime(), collected);
+    }
+
+    @Test(dataProvider = "scheduleCounts")
+    public void timingWheel(int scheduleCount) {
+        List<ScheduledMeasurementInfo> infos = createSchedules(scheduleCount);
+        ScheduledMeasurementWheel wheel = new ScheduledMeasurementWheel();
+
+        long start = System.nanoTime();
+        for (ScheduledMeasurementInfo info : infos) {
+            wheel.schedule(info);
+        }
+        long inserted = System.nanoTime();
+
+        long collected = 0;
+        for (long now = 0; now < SIMULATED_TIME; now += STEP) {
+            Set<ScheduledMeasurementInfo> batch;
+            while ((batch = wheel.poll(now)) != null) {
+                collected += batch.size();
+                for (ScheduledMeasurementInfo info : batch) {
+                    info.setNextCollection(info.getNextCollection() + info.getInterval());
+                    wheel.reschedule(info);
+                }
+            }
+        }
+
+        report("ScheduledMeasurementWheel", scheduleCount, start, inserted, System.nanoTime(), collected);
+    }
+
+    private List<ScheduledMeasurementInfo> createSchedules(int scheduleCount) {
+        List<ScheduledMeasurementInfo> infos = new ArrayList<ScheduledMeasurementInfo>(scheduleCount);
+        for (int i = 0; i < scheduleCount; ++i) {
+            int resourceId = i / SCHEDULES_PER_RESOURCE;
+            long interval = INTERVALS[resourceId % INTERVALS.length];
+            MeasurementScheduleRequest request = new MeasurementScheduleRequest(i, "metric" + i, interval, true,
+                DataType.MEASUREMENT);
+            ScheduledMeasurementInfo info = new ScheduledMeasurementInfo(request, resourceId);
+            // all schedules of a resource start together, resources are spread over the first interval
+            info.setNextCollection((resourceId * 7919L) % interval);
+            infos.add(info);
+        }
+        return infos;
+    }
+
+    private void report(String name, int scheduleCount, long start, long inserted, long end, long collected) {
+        log.info(name + " with " + scheduleCount + " schedules: insert took " + ((inserted - start) / 1000000L)
+            + " ms, " + collected + " collections over " + (SIMULATED_TIME / 1000L) + "s of simulated time took "
+            + ((end - inserted) / 1000000L) + " ms");
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.core.pc.measurement;
+
+import static java.util.Collections.singleton;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+
+@Test
+public class ScheduledMeasurementWheelTest {
+
+    private static final long START = 1000000000L;
+
+    public void testDueSchedulesAreGroupedPerResource() {
+        ScheduledMeasurementWheel wheel = new ScheduledMeasurementWheel(1000L, 16);
+        wheel.schedule(info(1, 10, START + 5000L));
+        wheel.schedule(info(2, 10, START + 5000L));
+        wheel.schedule(info(3, 20, START + 5000L));
+        wheel.schedule(info(4, 10, START + 9000L));
+
+        assertNull(wheel.poll(START));
+        assertNull(wheel.poll(START + 4999L));
+
+        Set<ScheduledMeasurementInfo> first = wheel.poll(START + 5000L);
+        Set<ScheduledMeasurementInfo> second = wheel.poll(START + 5000L);
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(wheel.poll(START + 5000L));
+
+        Set<ScheduledMeasurementInfo> resource10 = (first.iterator().next().getResourceId() == 10) ? first : second;
+        Set<ScheduledMeasurementInfo> resource20 = (resource10 == first) ? second : first;
+        assertEquals(resource10.size(), 2);
+        assertEquals(resource20.size(), 1);
+
+        Set<ScheduledMeasurementInfo> last = wheel.poll(START + 9500L);
+        assertEquals(last.size(), 1);
+        assertEquals(last.iterator().next().getScheduleId(), 4);
+    }
+
+    public void testRescheduleAcrossMoreThanOneTurnOfTheWheel() {
+        // 16 slots of one second each - a 60 second interval needs almost four turns of the wheel
+        ScheduledMeasurementWheel wheel = new ScheduledMeasurementWheel(1000L, 16);
+        ScheduledMeasurementInfo info = info(1, 10, START);
+        wheel.schedule(info);
+
+        long now = START;
+        for (int i = 0; i < 3; ++i) {
+            Set<ScheduledMeasurementInfo> due = wheel.poll(now);
+            assertEquals(due, singleton(info));
+
+            info.setNextCollection(info.getNextCollection() + info.getInterval());
+            assertTrue(wheel.reschedule(info));
+
+            // nothing may come due before the interval has passed, even though we pass its slot several times
+            for (long t = now + 1000L; t < info.getNextCollection(); t += 1000L) {
+                assertNull(wheel.poll(t), "schedule fired early at " + (t - START));
+            }
+            now = info.getNextCollection();
+        }
+    }
+
+    public void testOverdueScheduleIsDueRightAway() {
+        ScheduledMeasurementWheel wheel = new ScheduledMeasurementWheel(1000L, 16);
+        assertNull(wheel.poll(START + 100000L));
+
+        wheel.schedule(info(1, 10, START));
+        assertNotNull(wheel.poll(START + 100000L));
+    }
+
+    public void testRemovedAndReplacedSchedulesAreDiscarded() {
+        ScheduledMeasurementWheel wheel = new ScheduledMeasurementWheel(1000L, 16);
+        ScheduledMeasurementInfo removed = info(1, 10, START);
+        ScheduledMeasurementInfo replaced = info(2, 10, START);
+        ScheduledMeasurementInfo replacement = info(2, 10, START + 2000L);
+        wheel.schedule(removed);
+        wheel.schedule(replaced);
+        wheel.schedule(info(3, 30, START));
+        assertEquals(wheel.size(), 3);
+
+        wheel.remove(1);
+        wheel.schedule(replacement);
+        wheel.removeAll(singleton(30));
+        assertEquals(wheel.size(), 1);
+
+        assertNull(wheel.poll(START));
+        assertEquals(wheel.poll(START + 2000L), singleton(replacement));
+
+        // a schedule that was replaced while it was being collected is not put back on the wheel
+        assertFalse(wheel.reschedule(replaced));
+        assertTrue(wheel.reschedule(replacement));
+        assertEquals(wheel.getSchedules(10).size(), 1);
+        assertEquals(wheel.getNextCollectionTime(), START + 2000L);
+    }
+
+    private ScheduledMeasurementInfo info(int scheduleId, int resourceId, long nextCollection) {
+        MeasurementScheduleRequest request = new MeasurementScheduleRequest(scheduleId, "metric" + scheduleId, 60000L,
+            true, DataType.MEASUREMENT);
+        ScheduledMeasurementInfo info = new ScheduledMeasurementInfo(request, resourceId);
+        info.setNextCollection(nextCollection);
+        return info;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.core.pc.plugin;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.pluginapi.util.FileUtils;
+
+@Test
+public class PluginClassLoaderTest {
+
+    private File testDir;
+    private File tmpDir;
+    private File cacheDir;
+
+    @BeforeMethod
+    public void createDirectories() throws Exception {
+        testDir = File.createTempFile("plugin-classloader-test", "");
+        testDir.delete();
+        tmpDir = new File(testDir, "tmp");
+        cacheDir = new File(testDir, "cache");
+        assertTrue(tmpDir.mkdirs());
+    }
+
+    @AfterMethod
+    public void deleteDirectories() throws Exception {
+        FileUtils.purge(testDir, true);
+    }
+
+    public void unpackedJarsShouldBeReusedFromCache() throws Exception {
+        File pluginJar = createPluginJar("plugin.jar", "v1");
+
+        PluginClassLoader first = create(pluginJar);
+        URL[] firstUrls = first.getURLs();
+        assertEquals(firstUrls.length, 3, Arrays.toString(firstUrls)); // plugin jar, nested jar, nested resources dir
+        assertEquals(readResource(first, "nested.properties"), "v1");
+        first.destroy();
+
+        // the cached directory survives the classloader and is used by the next one
+        PluginClassLoader second = create(pluginJar);
+        assertEquals(second.getURLs(), firstUrls);
+        assertEquals(readResource(second, "nested.properties"), "v1");
+        second.destroy();
+
+        assertEquals(cacheDir.list().length, 1, Arrays.toString(cacheDir.list()));
+        assertEquals(tmpDir.list().length, 0, "Nothing should be unpacked in the tmp directory");
+    }
+
+    public void updatedPluginJarShouldReplaceCacheEntry() throws Exception {
+        File pluginJar = createPluginJar("plugin.jar", "v1");
+        create(pluginJar).destroy();
+        String[] oldEntries = cacheDir.list();
+
+        pluginJar = createPluginJar("plugin.jar", "v2");
+        PluginClassLoader updated = create(pluginJar);
+        assertEquals(readResource(updated, "nested.properties"), "v2");
+        updated.destroy();
+
+        String[] newEntries = cacheDir.list();
+        assertEquals(newEntries.length, 1, Arrays.toString(newEntries));
+        assertFalse(newEntries[0].equals(oldEntries[0]), "Expected a new cache entry for the updated plugin jar");
+    }
+
+    public void incompleteCacheEntryShouldBeUnpackedAgain() throws Exception {
+        File pluginJar = createPluginJar("plugin.jar", "v1");
+        create(pluginJar).destroy();
+
+        File entry = cacheDir.listFiles()[0];
+        assertTrue(new File(entry, "classpath.index").delete());
+
+        PluginClassLoader loader = create(pluginJar);
+        assertEquals(readResource(loader, "nested.properties"), "v1");
+        assertTrue(new File(entry, "classpath.index").isFile());
+        loader.destroy();
+    }
+
+    public void entriesOfUndeployedPluginJarsShouldBePurged() throws Exception {
+        // an upgrade replaced plugin-1.0.jar with plugin-1.1.jar, other.jar is still deployed
+        create(createPluginJar("plugin-1.0.jar", "v1")).destroy();
+        create(createPluginJar("other.jar", "v1")).destroy();
+        File upgradedJar = createPluginJar("plugin-1.1.jar", "v2");
+        create(upgradedJar).destroy();
+        File unrelated = new File(cacheDir, "unrelated");
+        assertTrue(unrelated.mkdir());
+        assertEquals(cacheDir.list().length, 4, Arrays.toString(cacheDir.list()));
+
+        PluginClassLoader.purgeUnpackCache(cacheDir, Arrays.asList("plugin-1.1.jar", "other.jar"));
+
+        String[] entries = cacheDir.list();
+        Arrays.sort(entries);
+        assertEquals(entries.length, 3, Arrays.toString(entries));
+        assertTrue(entries[0].startsWith("other.jar-"), Arrays.toString(entries));
+        assertTrue(entries[1].startsWith("plugin-1.1.jar-"), Arrays.toString(entries));
+        assertEquals(entries[2], "unrelated");
+
+        PluginClassLoader loader = create(upgradedJar);
+        assertEquals(readResource(loader, "nested.properties"), "v2");
+        loader.destroy();
+    }
+
+    public void uncachedJarsShouldBeDeletedOnDestroy() throws Exception {
+        File pluginJar = createPluginJar("plugin.jar", "v1");
+
+        PluginClassLoader loader = PluginClassLoader.create("plugin.jar", pluginJar.toURI().toURL(), true,
+            getClass().getClassLoader(), tmpDir);
+        assertEquals(readResource(loader, "nested.properties"), "v1");
+        assertEquals(tmpDir.list().length, 1);
+        loader.destroy();
+
+        assertEquals(tmpDir.list().length, 0);
+        assertFalse(cacheDir.exists());
+    }
+
+    private PluginClassLoader create(File pluginJar) throws Exception {
+        return PluginClassLoader.create(pluginJar.getName(), new URL[] { pluginJar.toURI().toURL() }, true,
+            getClass().getClassLoader(), tmpDir, cacheDir);
+    }
+
+    private File createPluginJar(String name, String version) throws IOException {
+        File jar = new File(testDir, name);
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            zip.putNextEntry(new ZipEntry("lib/nested.jar"));
+            ZipOutputStream nested = new ZipOutputStream(zip);
+            nested.putNextEntry(new ZipEntry("nested-" + version + ".txt"));
+            nested.closeEntry();
+            nested.finish();
+            zip.closeEntry();
+
+            zip.putNextEntry(new ZipEntry("lib/nested.properties"));
+            zip.write(version.getBytes("UTF-8"));
+            zip.closeEntry();
+        } finally {
+            zip.close();
+        }
+        return jar;
+    }
+
+    private static String readResource(ClassLoader classLoader, String name) throws IOException {
+        URL resource = classLoader.getResource(name);
+        assertNotNull(resource, "Missing resource " + name);
+        InputStream in = resource.openStream();
+        try {
+            byte[] bytes = new byte[64];
+            int length = in.read(bytes);
+            return new String(bytes, 0, length, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -26,8 +26,11 @@ import static org.testng.Assert.assertTrue;
 import java.io.File;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -37,9 +40,11 @@ import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
 
 import org.rhq.core.clientapi.agent.PluginContainerException;
+import org.rhq.core.clientapi.agent.metadata.PluginDependencyGraph;
 import org.rhq.core.clientapi.descriptor.AgentPluginDescriptorUtil;
 import org.rhq.core.clientapi.descriptor.plugin.PluginDescriptor;
 import org.rhq.core.pc.PluginContainerConfiguration;
+import org.rhq.core.pc.util.StartupTimeline;
 import org.rhq.core.pluginapi.plugin.PluginContext;
 import org.rhq.core.pluginapi.plugin.PluginLifecycleListener;
 
@@ -114,6 +119,49 @@ public class PluginManagerTest {
         verifyPluginsShutdownInCorrectOrder(pluginLifecycleListenerMgr);
     }
 
+    @Test
+    public void pluginsShouldBeLoadedWithoutLoaderThreads() throws Exception {
+        PluginContainerConfiguration configuration = createConfiguration();
+        configuration.setPluginLoaderParallelism(1);
+
+        FakePluginLifecycleListenerManager pluginLifecycleListenerMgr = new FakePluginLifecycleListenerManager();
+        PluginManager pluginMgr = new PluginManager(configuration, pluginLifecycleListenerMgr);
+
+        verifyThatPluginsAreLoaded(pluginMgr);
+        verifyPluginsLoadedInCorrectOrder(pluginLifecycleListenerMgr);
+    }
+
+    @Test
+    public void startupTimelineShouldRecordEachPlugin() throws Exception {
+        PluginContainerConfiguration configuration = createConfiguration();
+        StartupTimeline timeline = new StartupTimeline();
+
+        new PluginManager(configuration, new FakePluginLifecycleListenerManager(), timeline);
+
+        assertTrue(timeline.getPhaseDurations().containsKey("parse descriptors"), timeline.toString());
+        assertTrue(timeline.getPhaseDurations().containsKey("load plugins"), timeline.toString());
+        assertEquals(timeline.getPluginDurations().keySet(), new HashSet<String>(Arrays.asList(
+            descriptorA.getName(), descriptorB.getName(), descriptorC.getName())));
+    }
+
+    @Test
+    public void deploymentLevelsShouldGroupIndependentPlugins() throws Exception {
+        PluginDependencyGraph graph = new PluginDependencyGraph();
+        graph.addPlugin("A", new ArrayList<PluginDependencyGraph.PluginDependency>());
+        graph.addPlugin("B", Arrays.asList(new PluginDependencyGraph.PluginDependency("A")));
+        graph.addPlugin("C", Arrays.asList(new PluginDependencyGraph.PluginDependency("B")));
+        graph.addPlugin("D", new ArrayList<PluginDependencyGraph.PluginDependency>());
+        graph.addPlugin("E", Arrays.asList(new PluginDependencyGraph.PluginDependency("A"),
+            new PluginDependencyGraph.PluginDependency("D")));
+
+        List<List<String>> levels = PluginManager.getDeploymentLevels(graph, graph.getDeploymentOrder());
+
+        assertEquals(levels.size(), 3, levels.toString());
+        assertEquals(new HashSet<String>(levels.get(0)), new HashSet<String>(Arrays.asList("A", "D")));
+        assertEquals(new HashSet<String>(levels.get(1)), new HashSet<String>(Arrays.asList("B", "E")));
+        assertEquals(levels.get(2), Arrays.asList("C"));
+    }
+
     private PluginContainerConfiguration createConfiguration() {
         PluginContainerConfiguration configuration = new PluginContainerConfiguration();
         configuration.setPluginFinder(new PluginFinder() {
@@ -195,7 +243,8 @@ public class PluginManagerTest {
 
     static class FakePluginLifecycleListenerManager implements PluginLifecycleListenerManager {
 
-        Map<String, PluginLifecycleListener> listeners = new HashMap<String, PluginLifecycleListener>();
+        Map<String, PluginLifecycleListener> listeners = Collections
+            .synchronizedMap(new HashMap<String, PluginLifecycleListener>());
 
         PluginLifecycleTracker lifecycleTracker = new PluginLifecycleTracker();
 
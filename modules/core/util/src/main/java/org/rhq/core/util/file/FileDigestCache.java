@@ -0,0 +1,197 @@
+ /*
+  * RHQ Management Platform
+  * Copyright (C) 2005-2014 Red Hat, Inc.
+  * All rights reserved.
+  *
+  * This program is free software; you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License, version 2, as
+  * published by the Free Software Foundation, and/or the GNU Lesser
+  * General Public License, version 2.1, also as published by the Free
+  * Software Foundation.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  * GNU General Public License and the GNU Lesser General Public License
+  * for more details.
+  *
+  * You should have received a copy of the GNU General Public License
+  * and the GNU Lesser General Public License along with this program;
+  * if not, write to the Free Software Foundation, Inc.,
+  * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+  */
+package org.rhq.core.util.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Remembers the digests of files keyed by their path, modification time and size, so that the content of a file that
+ * did not change does not have to be read again to know its digest. The cache is thread safe and can be stored to and
+ * loaded from disk.
+ *
+ * <p>A file modified less than {@link #MTIME_GRANULARITY} ago is never cached: it could be modified again within the
+ * granularity of the file system's modification time without changing its size, and that change would go
+ * unnoticed.</p>
+ */
+public class FileDigestCache {
+
+    private static final Log LOG = LogFactory.getLog(FileDigestCache.class);
+
+    /** The coarsest modification time resolution of the file systems we care about (FAT has 2 seconds). */
+    static final long MTIME_GRANULARITY = 2000L;
+
+    private static final int MAGIC = 0x52485144; // "RHQD"
+    private static final int VERSION = 1;
+
+    private static class Entry {
+        final long lastModified;
+        final long length;
+        final String digest;
+        volatile boolean used;
+
+        Entry(long lastModified, long length, String digest, boolean used) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.digest = digest;
+            this.used = used;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * @param file         the file
+     * @param lastModified the file's current modification time
+     * @param length       the file's current size
+     *
+     * @return the cached digest of the file, <code>null</code> if none is cached or the file changed since
+     */
+    public String get(File file, long lastModified, long length) {
+        Entry entry = entries.get(file.getAbsolutePath());
+        if (entry == null || entry.lastModified != lastModified || entry.length != length) {
+            return null;
+        }
+        entry.used = true;
+        return entry.digest;
+    }
+
+    /**
+     * Caches the digest of a file unless the file was modified too recently to be sure it does not change again
+     * unnoticed.
+     *
+     * @param file         the file
+     * @param lastModified the modification time of the file when its digest was calculated
+     * @param length       the size of the file when its digest was calculated
+     * @param digest       the digest
+     */
+    public void put(File file, long lastModified, long length, String digest) {
+        String path = file.getAbsolutePath();
+        if (lastModified == 0L || System.currentTimeMillis() - lastModified < MTIME_GRANULARITY) {
+            entries.remove(path);
+            return;
+        }
+        entries.put(path, new Entry(lastModified, length, digest, true));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Loads a cache previously {@link #store(File) stored}. A missing or unreadable cache file is not an error, the
+     * cache simply starts out empty.
+     *
+     * @param cacheFile the cache file
+     *
+     * @return the loaded cache
+     */
+    public static FileDigestCache load(File cacheFile) {
+        FileDigestCache cache = new FileDigestCache();
+        if (!cacheFile.isFile()) {
+            return cache;
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    LOG.warn("Ignoring file digest cache [" + cacheFile + "] of an unknown format");
+                    return cache;
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; ++i) {
+                    String path = in.readUTF();
+                    long lastModified = in.readLong();
+                    long length = in.readLong();
+                    String digest = in.readUTF();
+                    cache.entries.put(path, new Entry(lastModified, length, digest, false));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOG.warn("Ignoring unreadable file digest cache [" + cacheFile + "]: " + e);
+            cache.entries.clear();
+        }
+        return cache;
+    }
+
+    /**
+     * Stores the entries that were looked up or added since this cache was loaded, so that entries of files that no
+     * longer exist do not accumulate. The file is replaced atomically where the platform allows it.
+     *
+     * @param cacheFile the cache file
+     *
+     * @throws IOException if the cache could not be written
+     */
+    public void store(File cacheFile) throws IOException {
+        File tmpFile = new File(cacheFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            Map<String, Entry> used = new HashMap<String, Entry>();
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                if (entry.getValue().used) {
+                    used.put(entry.getKey(), entry.getValue());
+                }
+            }
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(used.size());
+            for (Map.Entry<String, Entry> entry : used.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().lastModified);
+                out.writeLong(entry.getValue().length);
+                out.writeUTF(entry.getValue().digest);
+            }
+        } finally {
+            out.close();
+        }
+
+        if (!tmpFile.renameTo(cacheFile)) {
+            // Windows does not rename over an existing file
+            cacheFile.delete();
+            if (!tmpFile.renameTo(cacheFile)) {
+                tmpFile.delete();
+                throw new IOException("Failed to write file digest cache [" + cacheFile + "]");
+            }
+        }
+    }
+}
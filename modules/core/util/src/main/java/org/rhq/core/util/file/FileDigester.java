@@ -0,0 +1,288 @@
+ /*
+  * RHQ Management Platform
+  * Copyright (C) 2005-2014 Red Hat, Inc.
+  * All rights reserved.
+  *
+  * This program is free software; you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License, version 2, as
+  * published by the Free Software Foundation, and/or the GNU Lesser
+  * General Public License, version 2.1, also as published by the Free
+  * Software Foundation.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  * GNU General Public License and the GNU Lesser General Public License
+  * for more details.
+  *
+  * You should have received a copy of the GNU General Public License
+  * and the GNU Lesser General Public License along with this program;
+  * if not, write to the Free Software Foundation, Inc.,
+  * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+  */
+package org.rhq.core.util.file;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Calculates the message digests of files on a pool of threads shared by all digesters, so the content of a large
+ * directory tree is hashed on all cores rather than on one. The pool is bounded to the number of processors and at
+ * most a few files per thread are in flight at any time, regardless of how many files are passed in. Each thread
+ * reuses its read buffer and its {@link MessageDigest}. Large files are memory mapped rather than copied through the
+ * read buffer.
+ *
+ * <p>If a {@link FileDigestCache} is given, a file whose modification time and size did not change since its digest
+ * was cached is not read at all.</p>
+ *
+ * <p>The digest strings are the same as the ones {@link org.rhq.core.util.MessageDigestGenerator} generates.</p>
+ */
+public class FileDigester {
+
+    /**
+     * Informed of the digest of each file, see {@link FileDigester#digest(List, Callback)}.
+     */
+    public interface Callback {
+        /**
+         * @param file   the file
+         * @param digest the digest of the file's content
+         */
+        void digested(File file, String digest);
+
+        /**
+         * @param file  the file whose digest could not be calculated
+         * @param error the cause, e.g. a {@link java.io.FileNotFoundException} if the file cannot be read
+         */
+        void failed(File file, IOException error);
+    }
+
+    /** Files at least this large are memory mapped. */
+    static final long MAP_THRESHOLD = 1024L * 1024 * 4;
+
+    private static final long MAP_CHUNK_SIZE = 1024L * 1024 * 64;
+    private static final int BUFFER_SIZE = 1024 * 64;
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int FILES_IN_FLIGHT_PER_THREAD = 4;
+
+    // mapped files cannot be deleted on Windows until the mapping is garbage collected
+    private static final boolean MAP_FILES = File.separatorChar == '/';
+
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    private static ExecutorService executor;
+
+    private final String algorithm;
+    private final FileDigestCache cache;
+    private final ThreadLocal<MessageDigest> messageDigest = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            return createMessageDigest(algorithm);
+        }
+    };
+
+    /**
+     * @param algorithm the digest algorithm, e.g. {@link org.rhq.core.util.MessageDigestGenerator#SHA_256}
+     *
+     * @throws IllegalStateException if the algorithm is not supported by the VM
+     */
+    public FileDigester(String algorithm) {
+        this(algorithm, null);
+    }
+
+    /**
+     * @param algorithm the digest algorithm, e.g. {@link org.rhq.core.util.MessageDigestGenerator#SHA_256}
+     * @param cache     the cache of digests calculated with the same algorithm, may be <code>null</code>
+     *
+     * @throws IllegalStateException if the algorithm is not supported by the VM
+     */
+    public FileDigester(String algorithm, FileDigestCache cache) {
+        createMessageDigest(algorithm);
+        this.algorithm = algorithm;
+        this.cache = cache;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return the cache this digester looks up and stores digests in, <code>null</code> if it has none
+     */
+    public FileDigestCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Calculates the digest of a single file on the calling thread.
+     *
+     * @param file the file
+     *
+     * @return the digest of the file's content
+     *
+     * @throws IOException if the file could not be read
+     */
+    public String digest(File file) throws IOException {
+        long lastModified = file.lastModified();
+        long length = file.length();
+
+        if (cache != null) {
+            String digest = cache.get(file, lastModified, length);
+            if (digest != null) {
+                return digest;
+            }
+        }
+
+        String digest = calculateDigest(file, length);
+
+        if (cache != null) {
+            cache.put(file, lastModified, length, digest);
+        }
+        return digest;
+    }
+
+    /**
+     * Calculates the digests of the given files in parallel. The callback is called on the calling thread, once per
+     * file and in the order of the given list, so it does not need to be thread safe.
+     *
+     * @param files    the files
+     * @param callback informed of the digest of each file
+     *
+     * @throws InterruptedException if the calling thread was interrupted while waiting for a digest; the files that
+     *                              were not digested yet are not passed to the callback
+     */
+    public void digest(List<File> files, Callback callback) throws InterruptedException {
+        if (files.size() < 2 || THREADS < 2) {
+            for (File file : files) {
+                try {
+                    callback.digested(file, digest(file));
+                } catch (IOException e) {
+                    callback.failed(file, e);
+                }
+            }
+            return;
+        }
+
+        ExecutorService executor = getExecutor();
+        int maxInFlight = THREADS * FILES_IN_FLIGHT_PER_THREAD;
+        LinkedList<Future<String>> inFlight = new LinkedList<Future<String>>();
+        int submitted = 0;
+        int completed = 0;
+
+        try {
+            while (completed < files.size()) {
+                while (submitted < files.size() && inFlight.size() < maxInFlight) {
+                    final File file = files.get(submitted++);
+                    inFlight.add(executor.submit(new Callable<String>() {
+                        public String call() throws IOException {
+                            return digest(file);
+                        }
+                    }));
+                }
+
+                File file = files.get(completed++);
+                try {
+                    callback.digested(file, inFlight.removeFirst().get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        callback.failed(file, (IOException) cause);
+                    } else {
+                        IOException error = new IOException("Failed to calculate the digest of [" + file + "]");
+                        error.initCause(cause);
+                        callback.failed(file, error);
+                    }
+                }
+            }
+        } finally {
+            // only left over if the caller was interrupted or its callback failed
+            for (Future<String> future : inFlight) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private String calculateDigest(File file, long length) throws IOException {
+        MessageDigest digest = messageDigest.get();
+        digest.reset();
+
+        FileInputStream is = new FileInputStream(file);
+        try {
+            if (MAP_FILES && length >= MAP_THRESHOLD) {
+                FileChannel channel = is.getChannel();
+                long size = channel.size();
+                for (long position = 0; position < size; position += MAP_CHUNK_SIZE) {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAP_CHUNK_SIZE, size - position));
+                    digest.update(buffer);
+                }
+            } else {
+                byte[] buffer = BUFFER.get();
+                int len;
+                while ((len = is.read(buffer, 0, buffer.length)) != -1) {
+                    digest.update(buffer, 0, len);
+                }
+            }
+        } finally {
+            is.close();
+        }
+
+        return toDigestString(digest.digest());
+    }
+
+    private static String toDigestString(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    private static MessageDigest createMessageDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(algorithm + " is not a supported algorithm");
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            // idle threads go away, so the pool costs nothing between scans
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(THREADS, THREADS, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "FileDigester-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+        return executor;
+    }
+}
@@ -378,7 +378,7 @@ public class Deployer {
         putDirectoryEntries(original);
 
         ChangesFileHashcodeMap current = original.rescan(this.deploymentData.getDestinationDir(),
-            this.deploymentData.getIgnoreRegex(), reportNewRootFilesAsNew);
+            this.deploymentData.getIgnoreRegex(), reportNewRootFilesAsNew, this.deploymentsMetadata.getFileDigester());
         FileHashcodeMap newFiles = getNewDeploymentFileHashcodeMap();
 
         if (current.getUnknownContent() != null) {
@@ -24,12 +24,19 @@
 package org.rhq.core.util.updater;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.util.MessageDigestGenerator;
+import org.rhq.core.util.file.FileDigestCache;
+import org.rhq.core.util.file.FileDigester;
 import org.rhq.core.util.file.FileUtil;
 
 /**
@@ -43,10 +50,14 @@ public class DeploymentsMetadata {
     public static final String PREVIOUS_DEPLOYMENT_FILE = "previous-deployment.properties";
     public static final String DEPLOYMENT_FILE = "deployment.properties";
     public static final String HASHCODES_FILE = "file-hashcodes.dat";
+    public static final String HASHCODE_CACHE_FILE = "file-hashcode-cache.dat";
     public static final String BACKUP_DIR = "backup";
     public static final String EXT_BACKUP_DIR = "ext-backup";
 
+    private static final Log LOG = LogFactory.getLog(DeploymentsMetadata.class);
+
     private final File rootDirectory;
+    private FileDigester fileDigester;
 
     /**
      * Creates the metadata object given the root directory where the bundle deployment is installed.
@@ -374,9 +385,42 @@ public class DeploymentsMetadata {
 
         deploymentProps.saveToFile(currentDeploymentPropertiesFile);
 
+        storeFileHashcodeCache();
+
         return;
     }
 
+    /**
+     * Returns the digester that calculates the hashcodes of the files in the root directory. It remembers
+     * the hashcodes of files by their modification times and sizes, so files that did not change since the
+     * last deployment are not read again when they are rescanned. The remembered hashcodes are stored in the
+     * metadata directory whenever the current deployment is set.
+     *
+     * @return the digester to use when generating the hashcodes of the live deployment files
+     */
+    public FileDigester getFileDigester() {
+        if (fileDigester == null) {
+            File cacheFile = new File(getMetadataDirectory(), HASHCODE_CACHE_FILE);
+            fileDigester = new FileDigester(MessageDigestGenerator.MD5, FileDigestCache.load(cacheFile));
+        }
+        return fileDigester;
+    }
+
+    private void storeFileHashcodeCache() {
+        if (fileDigester == null) {
+            return;
+        }
+
+        File cacheFile = new File(getMetadataDirectory(), HASHCODE_CACHE_FILE);
+        try {
+            fileDigester.getCache().store(cacheFile);
+        } catch (IOException e) {
+            // the cache only saves time, the next rescan will just have to read all the files again
+            LOG.warn("Failed to store the file hashcode cache: " + e);
+            cacheFile.delete();
+        }
+    }
+
     /**
      * Looks at the live deployment and takes a snapshot of it and stores its metadata in its appropriate
      * deployment metadata directory. The "live deployment" means the actual files in the root directory.
@@ -392,7 +436,8 @@ public class DeploymentsMetadata {
         Set<String> ignored) throws Exception {
 
         // calculate the hashcodes from the live files and write the data to the proper file
-        FileHashcodeMap map = FileHashcodeMap.generateFileHashcodeMap(getRootDirectory(), ignoreRegex, ignored);
+        FileHashcodeMap map = FileHashcodeMap.generateFileHashcodeMap(getRootDirectory(), ignoreRegex, ignored,
+            getFileDigester());
         setCurrentDeployment(deploymentProps, map, true);
         return map;
     }
@@ -25,15 +25,20 @@ package org.rhq.core.util.updater;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.regex.Pattern;
 
 import org.rhq.core.util.MessageDigestGenerator;
+import org.rhq.core.util.file.FileDigester;
 
 /**
  * This provides a hashmap that maps a filename to its hashcode value (md5).
@@ -70,6 +75,23 @@ public class FileHashcodeMap extends TreeMap<String, String> {
      */
     public static FileHashcodeMap generateFileHashcodeMap(File rootDir, Pattern ignoreRegex, Set<String> ignored)
         throws Exception {
+        return generateFileHashcodeMap(rootDir, ignoreRegex, ignored, new FileDigester(MessageDigestGenerator.MD5));
+    }
+
+    /**
+     * Same as {@link #generateFileHashcodeMap(File, Pattern, Set)} except the hashcodes are calculated
+     * by the given digester, which can calculate them in parallel and skip files it has cached hashcodes for.
+     *
+     * @param rootDir existing directory to scan and generate hashcodes for all its files
+     * @param ignoreRegex a regular expression that indicates which files/directories should be ignored.
+     *                    If a relative file/directory path matches this regex, it will be skipped.
+     * @param ignored a set that will contain those files/directories that were ignored while scanning the root dir
+     * @param digester calculates the hashcodes, must use the MD5 algorithm
+     * @returns the map containing all files found and their generated hashcodes
+     * @throws Exception if failed to generate hashcode for the directory
+     */
+    public static FileHashcodeMap generateFileHashcodeMap(File rootDir, Pattern ignoreRegex, Set<String> ignored,
+        FileDigester digester) throws Exception {
 
         if (ignored == null) {
             ignored = new HashSet<String>();
@@ -78,7 +100,9 @@ public class FileHashcodeMap extends TreeMap<String, String> {
         }
 
         FileHashcodeMap map = new FileHashcodeMap();
-        generateFileHashcodeMapRecursive(map, rootDir.getAbsolutePath(), 0, rootDir, ignoreRegex, ignored);
+        Map<String, File> files = new LinkedHashMap<String, File>();
+        generateFileHashcodeMapRecursive(map, files, rootDir.getAbsolutePath(), 0, rootDir, ignoreRegex, ignored);
+        digestFiles(files, digester, map);
         return map;
     }
 
@@ -88,6 +112,7 @@ public class FileHashcodeMap extends TreeMap<String, String> {
      * If given a regular file, a single entry is added to the given map.
      * 
      * @param map         the map where the hashcode data is stored
+     * @param files       the files whose hashcodes are still to be calculated, keyed by their path in the map
      * @param rootPath    the top root directory that is being scanned - all files in the returned map will be relative to this
      * @param level       the level deep in the file hierarchy currently being processed (0==at top root dir)
      * @param fileOrDir   existing directory to scan and generate hashcodes for all its files, or existing
@@ -98,8 +123,8 @@ public class FileHashcodeMap extends TreeMap<String, String> {
      *
      * @throws Exception if failed to generate hashcode for the file/directory
      */
-    private static void generateFileHashcodeMapRecursive(FileHashcodeMap map, String rootPath, int level,
-        File fileOrDir, Pattern ignoreRegex, Set<String> ignored) throws Exception {
+    private static void generateFileHashcodeMapRecursive(FileHashcodeMap map, Map<String, File> files,
+        String rootPath, int level, File fileOrDir, Pattern ignoreRegex, Set<String> ignored) throws Exception {
 
         if (fileOrDir == null || !fileOrDir.exists()) {
             throw new Exception("Non-existent file/directory provided: " + fileOrDir);
@@ -128,24 +153,45 @@ public class FileHashcodeMap extends TreeMap<String, String> {
             File[] children = fileOrDir.listFiles();
             if (children != null) {
                 for (File child : children) {
-                    generateFileHashcodeMapRecursive(map, rootPath, level + 1, child, ignoreRegex, ignored);
+                    generateFileHashcodeMapRecursive(map, files, rootPath, level + 1, child, ignoreRegex, ignored);
                 }
             } else {
                 map.put(path, UNKNOWN_DIR_HASHCODE);
             }
         } else {
-            String hashcode;
-            try {
-                hashcode = MessageDigestGenerator.getDigestString(fileOrDir);
-            } catch (Exception e) {
-                hashcode = UNKNOWN_FILE_HASHCODE;
-            }
-            map.put(path, hashcode);
+            files.put(path, fileOrDir);
         }
 
         return;
     }
 
+    /**
+     * Calculates the hashcodes of the given files and puts them in the given map. Files whose
+     * hashcodes could not be calculated are put in the map with {@link #UNKNOWN_FILE_HASHCODE}.
+     *
+     * @param files    the files keyed by their path in the map
+     * @param digester calculates the hashcodes
+     * @param map      the map where the hashcode data is stored
+     * @throws InterruptedException if interrupted while waiting for the hashcodes
+     */
+    private static void digestFiles(Map<String, File> files, FileDigester digester, final Map<String, String> map)
+        throws InterruptedException {
+
+        // the callback is called in the order of the files
+        final List<String> paths = new ArrayList<String>(files.keySet());
+        digester.digest(new ArrayList<File>(files.values()), new FileDigester.Callback() {
+            private int index = 0;
+
+            public void digested(File file, String digest) {
+                map.put(paths.get(index++), digest);
+            }
+
+            public void failed(File file, IOException error) {
+                map.put(paths.get(index++), UNKNOWN_FILE_HASHCODE);
+            }
+        });
+    }
+
     /**
      * Loads in the file that contains file/hashcode map data.
      *
@@ -221,7 +267,25 @@ public class FileHashcodeMap extends TreeMap<String, String> {
      */
     public ChangesFileHashcodeMap rescan(File rootDir, Pattern ignoreRegex, boolean reportNewRootFilesAsNew)
         throws Exception {
+        return rescan(rootDir, ignoreRegex, reportNewRootFilesAsNew, new FileDigester(MessageDigestGenerator.MD5));
+    }
+
+    /**
+     * Same as {@link #rescan(File, Pattern, boolean)} except the hashcodes are calculated by the given
+     * digester, which can calculate them in parallel and skip files it has cached hashcodes for.
+     *
+     * @param rootDir directory where the relative paths are expected to be
+     * @param ignoreRegex if relative paths of files under rootDir match this, they will be ignored.
+     * @param reportNewRootFilesAsNew do not report as new any unrelated files found in the root dir
+     * @param digester calculates the hashcodes, must use the MD5 algorithm
+     * @return a map with current files/hashcodes, including files that were not found in original.
+     * @throws Exception
+     */
+    public ChangesFileHashcodeMap rescan(File rootDir, Pattern ignoreRegex, boolean reportNewRootFilesAsNew,
+        FileDigester digester) throws Exception {
         ChangesFileHashcodeMap current = new ChangesFileHashcodeMap(this);
+        final List<String> originalFileStrings = new ArrayList<String>();
+        List<File> originalFiles = new ArrayList<File>();
 
         // go through our original files and recalculate their hashcodes
         for (Map.Entry<String, String> entry : entrySet()) {
@@ -240,17 +304,12 @@ public class FileHashcodeMap extends TreeMap<String, String> {
             }
 
             if (originalFile.exists()) {
-                String currentHashcode = FileHashcodeMap.DIRECTORY_HASHCODE;
-                if (!originalFile.isDirectory()) {
-                    currentHashcode = MessageDigestGenerator.getDigestString(originalFile);
-                }
-
-                current.put(originalFileString, currentHashcode);
-
-                // if file has been changed, mark it as such in our return map
-                String originalHashcode = entry.getValue();
-                if (!currentHashcode.equals(originalHashcode)) {
-                    current.getChanges().put(originalFileString, currentHashcode);
+                if (originalFile.isDirectory()) {
+                    current.put(originalFileString, DIRECTORY_HASHCODE);
+                } else {
+                    // hashcodes are calculated all at once below
+                    originalFileStrings.add(originalFileString);
+                    originalFiles.add(originalFile);
                 }
             } else {
                 // file has been deleted! still put an entry in our returned map but mark it as deleted
@@ -259,12 +318,46 @@ public class FileHashcodeMap extends TreeMap<String, String> {
             }
         }
 
+        final String[] currentHashcodes = new String[originalFiles.size()];
+        final IOException[] failure = new IOException[1];
+        digester.digest(originalFiles, new FileDigester.Callback() {
+            private int index = 0;
+
+            public void digested(File file, String digest) {
+                currentHashcodes[index++] = digest;
+            }
+
+            public void failed(File file, IOException error) {
+                index++;
+                if (failure[0] == null) {
+                    failure[0] = error;
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+
+        for (int i = 0; i < currentHashcodes.length; ++i) {
+            String originalFileString = originalFileStrings.get(i);
+            String currentHashcode = currentHashcodes[i];
+            current.put(originalFileString, currentHashcode);
+
+            // if file has been changed, mark it as such in our return map
+            String originalHashcode = get(originalFileString);
+            if (!currentHashcode.equals(originalHashcode)) {
+                current.getChanges().put(originalFileString, currentHashcode);
+            }
+        }
+
         // now recursively traverse the root directory and look for new files that aren't in our original map
         // files that have been added need to be put into our returned map and also marked as added
         FileHashcodeMap newFiles = new FileHashcodeMap();
+        Map<String, File> newFilesToDigest = new LinkedHashMap<String, File>();
         Set<String> skippedFiles = new HashSet<String>();
-        lookForNewFilesRecursive(newFiles, skippedFiles, rootDir.getAbsolutePath(), 0, rootDir, ignoreRegex, current
-            .getIgnored(), reportNewRootFilesAsNew);
+        lookForNewFilesRecursive(newFiles, newFilesToDigest, skippedFiles, rootDir.getAbsolutePath(), 0, rootDir,
+            ignoreRegex, current.getIgnored(), reportNewRootFilesAsNew);
+        digestFiles(newFilesToDigest, digester, newFiles);
         current.putAll(newFiles);
         current.getAdditions().putAll(newFiles);
         current.getSkipped().addAll(skippedFiles);
@@ -276,6 +369,7 @@ public class FileHashcodeMap extends TreeMap<String, String> {
      * This looks for new files under the given fileOrDir and adds them to <code>newFiles</code>.
      * 
      * @param newFiles    the map where the new, current file/hashcode data will be stored
+     * @param newFilesToDigest the new files whose hashcodes are still to be calculated, keyed by their path
      * @param skippedFiles a set where names of unrelated files/directories are stored. The names
      *                     found here after this method returns are those files/dirs that were found
      *                     in the top level root dir, but were skipped over and not processed. This will not
@@ -291,9 +385,9 @@ public class FileHashcodeMap extends TreeMap<String, String> {
      *
      * @throws Exception 
      */
-    private void lookForNewFilesRecursive(FileHashcodeMap newFiles, Set<String> skippedFiles, String rootPath,
-        int level, File fileOrDir, Pattern ignoreRegex, Set<String> ignored, boolean reportNewRootFilesAsNew)
-        throws Exception {
+    private void lookForNewFilesRecursive(FileHashcodeMap newFiles, Map<String, File> newFilesToDigest,
+        Set<String> skippedFiles, String rootPath, int level, File fileOrDir, Pattern ignoreRegex, Set<String> ignored,
+        boolean reportNewRootFilesAsNew) throws Exception {
 
         if (fileOrDir == null || !fileOrDir.exists()) {
             throw new Exception("Non-existent file/directory provided: " + fileOrDir);
@@ -366,8 +460,8 @@ public class FileHashcodeMap extends TreeMap<String, String> {
                 for (File child : children) {
                     // skip this child if we are at the top root dir and it is not related to our fileset
                     if (relatedTopLevelFiles == null || relatedTopLevelFiles.contains(child.getName())) {
-                        lookForNewFilesRecursive(newFiles, skippedFiles, rootPath, level + 1, child, ignoreRegex,
-                            ignored, reportNewRootFilesAsNew);
+                        lookForNewFilesRecursive(newFiles, newFilesToDigest, skippedFiles, rootPath, level + 1, child,
+                            ignoreRegex, ignored, reportNewRootFilesAsNew);
                     } else {
                         skippedFiles.add(child.getName());
                     }
@@ -376,13 +470,7 @@ public class FileHashcodeMap extends TreeMap<String, String> {
         } else {
             // if the file is not yet known to us, add it to the map of new files
             if (!containsKey(path)) {
-                String hashcode;
-                try {
-                    hashcode = MessageDigestGenerator.getDigestString(fileOrDir);
-                } catch (Exception e) {
-                    hashcode = UNKNOWN_FILE_HASHCODE;
-                }
-                newFiles.put(path, hashcode);
+                newFilesToDigest.put(path, fileOrDir);
             }
         }
 
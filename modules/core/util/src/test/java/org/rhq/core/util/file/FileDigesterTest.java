@@ -0,0 +1,174 @@
+ /*
+  * RHQ Management Platform
+  * Copyright (C) 2005-2014 Red Hat, Inc.
+  * All rights reserved.
+  *
+  * This program is free software; you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License, version 2, as
+  * published by the Free Software Foundation, and/or the GNU Lesser
+  * General Public License, version 2.1, also as published by the Free
+  * Software Foundation.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  * GNU General Public License and the GNU Lesser General Public License
+  * for more details.
+  *
+  * You should have received a copy of the GNU General Public License
+  * and the GNU Lesser General Public License along with this program;
+  * if not, write to the Free Software Foundation, Inc.,
+  * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+  */
+package org.rhq.core.util.file;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.util.MessageDigestGenerator;
+
+@Test
+public class FileDigesterTest {
+
+    private File dir;
+
+    @BeforeMethod
+    public void createDir() throws Exception {
+        dir = FileUtil.createTempDirectory("FileDigesterTest", ".dir", null);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void deleteDir() {
+        FileUtil.purge(dir, true);
+    }
+
+    public void digestsAreTheSameAsMessageDigestGenerator() throws Exception {
+        File small = writeFile("small.txt", 1000);
+        File empty = writeFile("empty.txt", 0);
+        File large = writeFile("large.bin", (int) FileDigester.MAP_THRESHOLD + 12345);
+
+        for (String algorithm : new String[] { MessageDigestGenerator.MD5, MessageDigestGenerator.SHA_256 }) {
+            FileDigester digester = new FileDigester(algorithm);
+            MessageDigestGenerator generator = new MessageDigestGenerator(algorithm);
+            for (File file : new File[] { small, empty, large }) {
+                assertEquals(digester.digest(file), generator.calcDigestString(file), algorithm + " of " + file);
+            }
+        }
+    }
+
+    public void digestsListInOrderAndReportsFailures() throws Exception {
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < 200; i++) {
+            files.add(writeFile("file" + i, i * 10));
+        }
+        File missing = new File(dir, "missing");
+        files.add(100, missing);
+
+        final List<File> digested = new ArrayList<File>();
+        final List<String> digests = new ArrayList<String>();
+        final List<IOException> errors = new ArrayList<IOException>();
+        new FileDigester(MessageDigestGenerator.MD5).digest(files, new FileDigester.Callback() {
+            public void digested(File file, String digest) {
+                digested.add(file);
+                digests.add(digest);
+            }
+
+            public void failed(File file, IOException error) {
+                digested.add(file);
+                digests.add(null);
+                errors.add(error);
+            }
+        });
+
+        assertEquals(digested, files, "The callback should have been called for each file, in order");
+        assertEquals(errors.size(), 1);
+        assertTrue(errors.get(0) instanceof FileNotFoundException, "Unexpected error " + errors.get(0));
+        assertNull(digests.get(100));
+        for (int i = 0; i < files.size(); i++) {
+            if (i != 100) {
+                assertEquals(digests.get(i), MessageDigestGenerator.getDigestString(files.get(i)));
+            }
+        }
+    }
+
+    public void cachedDigestIsUsedWhileFileIsUnchanged() throws Exception {
+        File file = writeFile("cached.txt", 100);
+        long lastModified = System.currentTimeMillis() - 60000L;
+        file.setLastModified(lastModified);
+        lastModified = file.lastModified();
+
+        FileDigestCache cache = new FileDigestCache();
+        cache.put(file, lastModified, file.length(), "cached");
+        FileDigester digester = new FileDigester(MessageDigestGenerator.MD5, cache);
+        assertEquals(digester.digest(file), "cached");
+
+        file.setLastModified(lastModified - 60000L);
+        String digest = digester.digest(file);
+        assertEquals(digest, MessageDigestGenerator.getDigestString(file), "The file changed, it should be read");
+        assertEquals(cache.get(file, file.lastModified(), file.length()), digest);
+    }
+
+    public void recentlyModifiedFilesAreNotCached() throws Exception {
+        File file = writeFile("recent.txt", 100);
+
+        FileDigestCache cache = new FileDigestCache();
+        new FileDigester(MessageDigestGenerator.MD5, cache).digest(file);
+        assertEquals(cache.size(), 0, "A file modified just now may still change without its mtime changing");
+    }
+
+    public void storesOnlyUsedEntries() throws Exception {
+        File used = writeFile("used.txt", 10);
+        File unused = writeFile("unused.txt", 10);
+        long lastModified = System.currentTimeMillis() - 60000L;
+        used.setLastModified(lastModified);
+        unused.setLastModified(lastModified);
+
+        File cacheFile = new File(dir, "cache.dat");
+        FileDigestCache cache = new FileDigestCache();
+        cache.put(used, used.lastModified(), used.length(), "1");
+        cache.put(unused, unused.lastModified(), unused.length(), "2");
+        cache.store(cacheFile);
+
+        cache = FileDigestCache.load(cacheFile);
+        assertEquals(cache.size(), 2);
+        assertEquals(cache.get(used, used.lastModified(), used.length()), "1");
+        cache.store(cacheFile);
+
+        cache = FileDigestCache.load(cacheFile);
+        assertEquals(cache.size(), 1, "Entries not used since the last load should not have been stored");
+        assertEquals(cache.get(used, used.lastModified(), used.length()), "1");
+        assertNull(cache.get(used, used.lastModified(), used.length() + 1));
+    }
+
+    public void corruptCacheFileLoadsEmpty() throws Exception {
+        File cacheFile = writeFile("cache.dat", 100);
+        assertEquals(FileDigestCache.load(cacheFile).size(), 0);
+        assertEquals(FileDigestCache.load(new File(dir, "missing.dat")).size(), 0);
+    }
+
+    private File writeFile(String name, int size) throws IOException {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        File file = new File(dir, name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,137 @@
+ /*
+  * RHQ Management Platform
+  * Copyright (C) 2005-2014 Red Hat, Inc.
+  * All rights reserved.
+  *
+  * This program is free software; you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License, version 2, as
+  * published by the Free Software Foundation, and/or the GNU Lesser
+  * General Public License, version 2.1, also as published by the Free
+  * Software Foundation.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  * GNU General Public License and the GNU Lesser General Public License
+  * for more details.
+  *
+  * You should have received a copy of the GNU General Public License
+  * and the GNU Lesser General Public License along with this program;
+  * if not, write to the Free Software Foundation, Inc.,
+  * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+  */
+package org.rhq.core.util.updater;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import org.rhq.core.util.MessageDigestGenerator;
+import org.rhq.core.util.file.FileDigestCache;
+import org.rhq.core.util.file.FileDigester;
+import org.rhq.core.util.file.FileUtil;
+import org.rhq.core.util.file.FileVisitor;
+
+/**
+ * Measures how long it takes to generate and rescan the hashcodes of a synthetic deployment of 100k files spread over
+ * a few hundred directories: one file at a time the way it used to be done, in parallel, and in parallel with a warm
+ * hashcode cache. The number of files can be changed with <code>-DFileHashcodeMapPerfTests.files=N</code>. These are
+ * not run as part of the regular build; run them explicitly with
+ * <code>mvn test -Dtest=FileHashcodeMapPerfTests</code>.
+ */
+public class FileHashcodeMapPerfTests {
+
+    private final Log log = LogFactory.getLog(FileHashcodeMapPerfTests.class);
+
+    private static final int FILES = Integer.getInteger("FileHashcodeMapPerfTests.files", 100000);
+    private static final int FILES_PER_DIR = 250;
+
+    private File rootDir;
+
+    @BeforeClass
+    public void createTree() throws IOException {
+        rootDir = FileUtil.createTempDirectory("FileHashcodeMapPerfTests", ".dir", null);
+        Random random = new Random(42L);
+        // old enough for the hashcode cache to trust their modification times
+        long lastModified = System.currentTimeMillis() - 60000L;
+        byte[] content = new byte[64 * 1024];
+        for (int i = 0; i < FILES; i++) {
+            File dir = new File(rootDir, "dir" + (i / FILES_PER_DIR / 20) + "/sub" + (i / FILES_PER_DIR));
+            if (i % FILES_PER_DIR == 0) {
+                dir.mkdirs();
+            }
+            // mostly small files, a few large ones
+            int size = (i % 1000 == 0) ? content.length : random.nextInt(8 * 1024);
+            random.nextBytes(content);
+            File file = new File(dir, "file" + i + ".txt");
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(content, 0, size);
+            } finally {
+                out.close();
+            }
+            file.setLastModified(lastModified);
+        }
+        log.info("Created " + FILES + " files in " + rootDir);
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void deleteTree() {
+        FileUtil.purge(rootDir, true);
+    }
+
+    @Test
+    public void generateAndRescan() throws Exception {
+        long start = System.nanoTime();
+        final int[] count = new int[1];
+        FileUtil.forEachFile(rootDir, new FileVisitor() {
+            public void visit(File file) {
+                try {
+                    MessageDigestGenerator.getDigestString(file);
+                    count[0]++;
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        log.info("Serial digests of " + count[0] + " files: " + millisSince(start) + "ms");
+
+        start = System.nanoTime();
+        FileHashcodeMap map = FileHashcodeMap.generateFileHashcodeMap(rootDir, null, null,
+            new FileDigester(MessageDigestGenerator.MD5));
+        log.info("Parallel generateFileHashcodeMap of " + map.size() + " files: " + millisSince(start) + "ms");
+
+        start = System.nanoTime();
+        ChangesFileHashcodeMap changes = map.rescan(rootDir, null, true, new FileDigester(MessageDigestGenerator.MD5));
+        log.info("Parallel rescan without cache: " + millisSince(start) + "ms");
+        assert changes.getChanges().isEmpty() : changes.getChanges();
+
+        FileDigestCache cache = new FileDigestCache();
+        map.rescan(rootDir, null, true, new FileDigester(MessageDigestGenerator.MD5, cache));
+        File cacheFile = new File(rootDir.getParentFile(), rootDir.getName() + ".cache");
+        try {
+            start = System.nanoTime();
+            cache.store(cacheFile);
+            cache = FileDigestCache.load(cacheFile);
+            log.info("Stored and loaded a cache of " + cache.size() + " hashcodes: " + millisSince(start) + "ms");
+
+            start = System.nanoTime();
+            changes = map.rescan(rootDir, null, true, new FileDigester(MessageDigestGenerator.MD5, cache));
+            log.info("Parallel rescan with warm cache: " + millisSince(start) + "ms");
+            assert changes.getChanges().isEmpty() : changes.getChanges();
+        } finally {
+            cacheFile.delete();
+        }
+    }
+
+    private static long millisSince(long start) {
+        return (System.nanoTime() - start) / 1000000L;
+    }
+}
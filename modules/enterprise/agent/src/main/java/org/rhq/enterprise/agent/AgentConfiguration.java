@@ -35,7 +35,7 @@ import org.rhq.enterprise.agent.i18n.AgentI18NFactory;
 import org.rhq.enterprise.agent.i18n.AgentI18NResourceKeys;
 import org.rhq.enterprise.communications.ServiceContainerConfiguration;
 import org.rhq.enterprise.communications.command.client.ClientCommandSenderConfiguration;
-import org.rhq.enterprise.communications.command.client.PersistentFifo;
+import org.rhq.enterprise.communications.command.client.SegmentedPersistentFifo;
 import org.rhq.enterprise.communications.util.SecurityUtil;
 
 /**
@@ -659,7 +659,7 @@ public class AgentConfiguration {
 
     /**
      * Returns an array of command spool file parameters. The first element of the array is the maximum file size
-     * threshold. The second element is the purge percentage. See {@link PersistentFifo} for the meanings of these
+     * threshold. The second element is the purge percentage. See {@link SegmentedPersistentFifo} for the meanings of these
      * settings.
      *
      * <p>Because this is a weakly typed method (i.e. you have to know what the elements in the returned array
@@ -741,6 +741,19 @@ public class AgentConfiguration {
         return flag;
     }
 
+    /**
+     * Returns <code>true</code> if the agent may send its measurement, availability and event reports in their
+     * compact binary encoding, provided the server can decode them.
+     *
+     * @return <code>true</code> if reports may be encoded
+     */
+    public boolean isClientSenderReportCodecEnabled() {
+        boolean flag = m_preferences.getBoolean(AgentConfigurationConstants.CLIENT_SENDER_REPORT_CODEC_ENABLED,
+            AgentConfigurationConstants.DEFAULT_CLIENT_SENDER_REPORT_CODEC_ENABLED);
+
+        return flag;
+    }
+
     /**
      * Returns an array of send throttling parameters or <code>null</code> if send throttling is to be disabled. The
      * first element of the array is the maximum number of commands that can be sent before the quiet period must start.
@@ -1137,6 +1150,11 @@ public class AgentConfiguration {
             AgentConfigurationConstants.PLUGINS_CHILD_RESOURCE_DISOVERY_PERIOD,
             AgentConfigurationConstants.DEFAULT_PLUGINS_CHILD_RESOURCE_DISCOVERY_PERIOD);
 
+        // get the time interval in which the inventory changes are persisted
+        long inventory_checkpoint_period = m_preferences.getLong(
+            AgentConfigurationConstants.PLUGINS_INVENTORY_CHECKPOINT_PERIOD,
+            AgentConfigurationConstants.DEFAULT_PLUGINS_INVENTORY_CHECKPOINT_PERIOD);
+
         // get the time interval in which availability scans run
         long avail_scan_period = m_preferences.getLong(AgentConfigurationConstants.PLUGINS_AVAILABILITY_SCAN_PERIOD,
             AgentConfigurationConstants.DEFAULT_PLUGINS_AVAILABILITY_SCAN_PERIOD);
@@ -1149,6 +1167,13 @@ public class AgentConfiguration {
             AgentConfigurationConstants.PLUGINS_AVAILABILITY_SCAN_THREADPOOL_SIZE,
             AgentConfigurationConstants.DEFAULT_PLUGINS_AVAILABILITY_SCAN_THREADPOOL_SIZE);
 
+        int avail_scan_parallelism = m_preferences.getInt(
+            AgentConfigurationConstants.PLUGINS_AVAILABILITY_SCAN_PARALLELISM,
+            AgentConfigurationConstants.DEFAULT_PLUGINS_AVAILABILITY_SCAN_PARALLELISM);
+        long avail_scan_resource_timeout = m_preferences.getLong(
+            AgentConfigurationConstants.PLUGINS_AVAILABILITY_SCAN_RESOURCE_TIMEOUT,
+            AgentConfigurationConstants.DEFAULT_PLUGINS_AVAILABILITY_SCAN_RESOURCE_TIMEOUT);
+
         // get the initial delay before measurement collections begin
         long meas_scan_initial_delay = m_preferences.getLong(
             AgentConfigurationConstants.PLUGINS_MEASUREMENT_COLLECTION_INITIAL_DELAY,
@@ -1162,6 +1187,18 @@ public class AgentConfiguration {
             AgentConfigurationConstants.PLUGINS_MEASUREMENT_COLL_THREADPOOL_SIZE,
             AgentConfigurationConstants.DEFAULT_PLUGINS_MEASUREMENT_COLL_THREADPOOL_SIZE);
 
+        int meas_plugin_concurrency = m_preferences.getInt(
+            AgentConfigurationConstants.PLUGINS_MEASUREMENT_COLL_PLUGIN_CONCURRENCY,
+            AgentConfigurationConstants.DEFAULT_PLUGINS_MEASUREMENT_COLL_PLUGIN_CONCURRENCY);
+
+        long meas_report_max_data_count = m_preferences.getLong(
+            AgentConfigurationConstants.PLUGINS_MEASUREMENT_REPORT_MAX_DATA_COUNT,
+            AgentConfigurationConstants.DEFAULT_PLUGINS_MEASUREMENT_REPORT_MAX_DATA_COUNT);
+
+        long meas_report_max_size = m_preferences.getLong(
+            AgentConfigurationConstants.PLUGINS_MEASUREMENT_REPORT_MAX_SIZE,
+            AgentConfigurationConstants.DEFAULT_PLUGINS_MEASUREMENT_REPORT_MAX_SIZE);
+
         // get the drift settings
         long drift_period = m_preferences.getLong(AgentConfigurationConstants.PLUGINS_DRIFT_DETECTION_PERIOD,
             AgentConfigurationConstants.DEFAULT_PLUGINS_DRIFT_DETECTION_PERIOD);
@@ -1253,6 +1290,12 @@ public class AgentConfiguration {
             clRegex = PluginContainerConfiguration.getDefaultClassLoaderFilter();
         }
 
+        boolean unpack_cache_enabled = m_preferences.getBoolean(
+            AgentConfigurationConstants.PLUGINS_UNPACK_CACHE_ENABLED,
+            AgentConfigurationConstants.DEFAULT_PLUGINS_UNPACK_CACHE_ENABLED);
+        int loader_parallelism = m_preferences.getInt(AgentConfigurationConstants.PLUGINS_LOADER_PARALLELISM,
+            AgentConfigurationConstants.DEFAULT_PLUGINS_LOADER_PARALLELISM);
+
         // now that we have all the individual preferences, let's squirrel them away in a config object
         PluginContainerConfiguration config = new PluginContainerConfiguration();
 
@@ -1264,15 +1307,23 @@ public class AgentConfiguration {
         config.setEnabledPlugins(enabled_plugins);
         config.setDisabledResourceTypes(disabled_types);
         config.setRootPluginClassLoaderRegex(clRegex);
+        config.setPluginUnpackCacheEnabled(unpack_cache_enabled);
+        config.setPluginLoaderParallelism(loader_parallelism);
         config.setServerDiscoveryInitialDelay(server_discovery_initial_delay);
         config.setServerDiscoveryPeriod(server_discovery_period);
         config.setServiceDiscoveryInitialDelay(service_discovery_initial_delay);
         config.setServiceDiscoveryPeriod(service_discovery_period);
         config.setChildResourceDiscoveryDelay(childResourceDiscoveryDelay);
+        config.setInventoryCheckpointPeriod(inventory_checkpoint_period);
         config.setAvailabilityScanInitialDelay(avail_scan_initial_delay);
         config.setAvailabilityScanPeriod(avail_scan_period);
         config.setAvailabilityScanThreadPoolSize(avail_scan_threadpool_size);
+        config.setAvailabilityScanParallelism(avail_scan_parallelism);
+        config.setAvailabilityScanResourceTimeout(avail_scan_resource_timeout);
         config.setMeasurementCollectionThreadPoolSize(meas_threadpool_size);
+        config.setMeasurementCollectionPluginConcurrency(meas_plugin_concurrency);
+        config.setMeasurementReportMaxDataCount(meas_report_max_data_count);
+        config.setMeasurementReportMaxSize(meas_report_max_size);
         config.setMeasurementCollectionInitialDelay(meas_scan_initial_delay);
         config.setDriftDetectionInitialDelay(drift_initial_delay);
         config.setDriftDetectionPeriod(drift_period);
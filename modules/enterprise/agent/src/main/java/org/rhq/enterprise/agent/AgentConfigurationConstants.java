@@ -338,6 +338,17 @@ public interface AgentConfigurationConstants {
      */
     boolean DEFAULT_CLIENT_SENDER_COMMAND_SPOOL_FILE_COMPRESSED = false;
 
+    /**
+     * Property that indicates if measurement, availability and event reports may be sent to the server in their
+     * compact binary encoding rather than serialized. They are only encoded if the server says it can decode them.
+     */
+    String CLIENT_SENDER_REPORT_CODEC_ENABLED = PROPERTY_NAME_PREFIX + "client.report-codec-enabled";
+
+    /**
+     * If the client sender report codec flag is not specified, this is the default.
+     */
+    boolean DEFAULT_CLIENT_SENDER_REPORT_CODEC_ENABLED = true;
+
     /**
      * Property that provides the amount of time, in milliseconds, that the sender will pause before attempting to retry
      * a failed command whose delivery is to be guaranteed.
@@ -575,6 +586,26 @@ public interface AgentConfigurationConstants {
      */
     String PLUGINS_DISABLED_RESOURCE_TYPES = PROPERTY_NAME_PREFIX + "plugins.disabled-resource-types";
 
+    /**
+     * If true, the jars embedded in the plugin jars are unpacked once into a persistent cache in the data directory.
+     */
+    String PLUGINS_UNPACK_CACHE_ENABLED = PROPERTY_NAME_PREFIX + "plugins.unpack-cache.enabled";
+
+    /**
+     * The default is to cache the unpacked embedded jars.
+     */
+    boolean DEFAULT_PLUGINS_UNPACK_CACHE_ENABLED = true;
+
+    /**
+     * Defines how many threads are used at startup to load the plugins.
+     */
+    String PLUGINS_LOADER_PARALLELISM = PROPERTY_NAME_PREFIX + "plugins.loader-parallelism";
+
+    /**
+     * The default plugin loader parallelism.
+     */
+    int DEFAULT_PLUGINS_LOADER_PARALLELISM = PluginContainerConfiguration.PLUGIN_LOADER_PARALLELISM_DEFAULT;
+
     /**
      * Defines, in seconds, the initial delay before the first server discovery scan is run.
      */
@@ -627,6 +658,16 @@ public interface AgentConfigurationConstants {
      */
     long DEFAULT_PLUGINS_CHILD_RESOURCE_DISCOVERY_PERIOD = PluginContainerConfiguration.CHILD_RESOURCE_DISCOVERY_DELAY_DEFAULT;
 
+    /**
+     * Defines, in seconds, how often the changes to the inventory are persisted to the data directory.
+     */
+    String PLUGINS_INVENTORY_CHECKPOINT_PERIOD = PROPERTY_NAME_PREFIX + "plugins.inventory-checkpoint.period-secs";
+
+    /**
+     * The default time period between each inventory checkpoint, in seconds.
+     */
+    long DEFAULT_PLUGINS_INVENTORY_CHECKPOINT_PERIOD = PluginContainerConfiguration.INVENTORY_CHECKPOINT_PERIOD_DEFAULT;
+
     /**
      * Defines, in seconds, the initial delay before the first availability scan is run.
      */
@@ -659,6 +700,27 @@ public interface AgentConfigurationConstants {
      */
     int DEFAULT_PLUGINS_AVAILABILITY_SCAN_THREADPOOL_SIZE = PluginContainerConfiguration.AVAILABILITY_SCAN_THREADPOOL_SIZE_DEFAULT;
 
+    /**
+     * Defines how many resources can have their availability checked concurrently during one availability scan.
+     */
+    String PLUGINS_AVAILABILITY_SCAN_PARALLELISM = PROPERTY_NAME_PREFIX + "plugins.availability-scan.parallelism";
+
+    /**
+     * The default availability scan parallelism.
+     */
+    int DEFAULT_PLUGINS_AVAILABILITY_SCAN_PARALLELISM = PluginContainerConfiguration.AVAILABILITY_SCAN_PARALLELISM_DEFAULT;
+
+    /**
+     * Defines, in seconds, how long an availability scan waits for the availability check of a single resource.
+     */
+    String PLUGINS_AVAILABILITY_SCAN_RESOURCE_TIMEOUT = PROPERTY_NAME_PREFIX
+        + "plugins.availability-scan.resource-timeout-secs";
+
+    /**
+     * The default per-resource availability check timeout, in seconds.
+     */
+    long DEFAULT_PLUGINS_AVAILABILITY_SCAN_RESOURCE_TIMEOUT = PluginContainerConfiguration.AVAILABILITY_SCAN_RESOURCE_TIMEOUT_DEFAULT;
+
     /**
      * If defined, this is to be the size of the measurement collection thread pool. If not defined, the plugin
      * container should default to something it considers appropriate.
@@ -671,6 +733,41 @@ public interface AgentConfigurationConstants {
      */
     int DEFAULT_PLUGINS_MEASUREMENT_COLL_THREADPOOL_SIZE = PluginContainerConfiguration.MEASUREMENT_COLLECTION_THREADCOUNT_DEFAULT;
 
+    /**
+     * If defined, this is the maximum number of measurement collections that can run concurrently for the resources
+     * of any one plugin. A value of 0 means there is no per-plugin limit.
+     */
+    String PLUGINS_MEASUREMENT_COLL_PLUGIN_CONCURRENCY = PROPERTY_NAME_PREFIX
+        + "plugins.measurement-collection.plugin-concurrency";
+
+    /**
+     * The default per-plugin measurement collection concurrency limit.
+     */
+    int DEFAULT_PLUGINS_MEASUREMENT_COLL_PLUGIN_CONCURRENCY = PluginContainerConfiguration.MEASUREMENT_COLLECTION_PLUGIN_CONCURRENCY_DEFAULT;
+
+    /**
+     * If defined, this is the number of data items at which a measurement report is sent to the server right away,
+     * rather than at the end of its send period. A value of 0 means there is no limit.
+     */
+    String PLUGINS_MEASUREMENT_REPORT_MAX_DATA_COUNT = PROPERTY_NAME_PREFIX
+        + "plugins.measurement-report.max-data-count";
+
+    /**
+     * The default maximum number of data items in a measurement report.
+     */
+    long DEFAULT_PLUGINS_MEASUREMENT_REPORT_MAX_DATA_COUNT = PluginContainerConfiguration.MEASUREMENT_REPORT_MAX_DATA_COUNT_DEFAULT;
+
+    /**
+     * If defined, this is the estimated size, in bytes, at which a measurement report is sent to the server right
+     * away, rather than at the end of its send period. A value of 0 means there is no limit.
+     */
+    String PLUGINS_MEASUREMENT_REPORT_MAX_SIZE = PROPERTY_NAME_PREFIX + "plugins.measurement-report.max-size-bytes";
+
+    /**
+     * The default maximum size of a measurement report, in bytes.
+     */
+    long DEFAULT_PLUGINS_MEASUREMENT_REPORT_MAX_SIZE = PluginContainerConfiguration.MEASUREMENT_REPORT_MAX_SIZE_DEFAULT;
+
     /**
      * Defines, in seconds, the initial delay before the first measurement collection is run.
      */
@@ -88,6 +88,7 @@ import org.jboss.util.file.FilenameSuffixFilter;
 import org.rhq.core.clientapi.agent.lifecycle.PluginContainerLifecycle;
 import org.rhq.core.clientapi.server.bundle.BundleServerService;
 import org.rhq.core.clientapi.server.configuration.ConfigurationServerService;
+import org.rhq.core.clientapi.server.codec.ReportCodec;
 import org.rhq.core.clientapi.server.content.ContentServerService;
 import org.rhq.core.clientapi.server.core.AgentNotSupportedException;
 import org.rhq.core.clientapi.server.core.AgentRegistrationException;
@@ -2764,6 +2765,11 @@ public class AgentMain {
 
         ClientCommandSender client_sender = new ClientCommandSender(remote_comm, config, m_previouslyQueueCommands);
 
+        // the reports are only encoded once the server has told the sender it can decode them
+        if (m_configuration.isClientSenderReportCodecEnabled()) {
+            client_sender.addParameterCodec(new ReportCodec());
+        }
+
         for (CommandPreprocessor preproc : client_sender.getCommandPreprocessors()) {
             if (preproc instanceof SecurityTokenCommandPreprocessor) {
                 ((SecurityTokenCommandPreprocessor) preproc).setAgentConfiguration(m_configuration);
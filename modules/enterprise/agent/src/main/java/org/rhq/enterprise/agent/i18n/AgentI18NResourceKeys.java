@@ -2039,7 +2039,8 @@ public interface AgentI18NResourceKeys {
         + "\\                   is not specified, the platform will be shown.\\n\\\n"
         + "\\                   This is ignored if --types is specified.\\n\\\n"
         + "\\ inventory-binary-file : if specified, this contains the inventory data\\n\\\n"
-        + "\\                         in binary form (e.g. data/inventory.dat).\\n\\\n"
+        + "\\                         in binary form (e.g. data/inventory, or the\\n\\\n"
+        + "\\                         data/inventory.dat file of older agents).\\n\\\n"
         + "\\                         If not specified, the inventory currently\\n\\\n"
         + "\\                         in memory will be used. If you specify this,\\n\\\n"
         + "\\                         you cannot specify --types or --id.")
@@ -25,7 +25,7 @@ import org.rhq.enterprise.agent.AgentMain;
 import org.rhq.enterprise.agent.i18n.AgentI18NFactory;
 import org.rhq.enterprise.agent.i18n.AgentI18NResourceKeys;
 import org.rhq.enterprise.communications.command.client.ClientCommandSenderConfiguration;
-import org.rhq.enterprise.communications.command.client.PersistentFifo;
+import org.rhq.enterprise.communications.command.client.SegmentedPersistentFifo;
 import org.rhq.enterprise.communications.util.DumpBytes;
 
 /**
@@ -80,7 +80,7 @@ public class DumpSpoolPromptCommand implements AgentPromptCommand {
         File spool_file = new File(sender_config.dataDirectory, sender_config.commandSpoolFileName);
 
         try {
-            PersistentFifo.dumpContents(agent.getOut(), spool_file, agent_config
+            SegmentedPersistentFifo.dumpContents(agent.getOut(), spool_file, agent_config
                 .isClientSenderCommandSpoolFileCompressed(), raw_byte_base);
         } catch (Exception e) {
             agent.getOut().println(MSG.getMsg(AgentI18NResourceKeys.DUMPSPOOL_ERROR, spool_file, e));
@@ -34,6 +34,7 @@ import org.rhq.core.pc.PluginContainer;
 import org.rhq.core.pc.inventory.InventoryFile;
 import org.rhq.core.pc.inventory.ResourceContainer;
 import org.rhq.core.pc.util.InventoryPrinter;
+import org.rhq.core.util.file.FileUtil;
 import org.rhq.enterprise.agent.AgentMain;
 import org.rhq.enterprise.agent.i18n.AgentI18NFactory;
 import org.rhq.enterprise.agent.i18n.AgentI18NResourceKeys;
@@ -168,7 +169,7 @@ public class InventoryPromptCommand implements AgentPromptCommand {
             return;
         }
 
-        // if being asked to sync, we shutdown the PC, delete inventory.dat and restart PC.
+        // if being asked to sync, we shutdown the PC, delete the persisted inventory and restart PC.
         // all other options are ignored
         if (sync) {
             syncInventory(agent, out);
@@ -264,13 +265,19 @@ public class InventoryPromptCommand implements AgentPromptCommand {
             executePCCommand(agent, "stop");
         }
 
+        // the inventory store directory, and the inventory file persisted by older agents
         File dataDir = agent.getConfiguration().getPluginContainerConfiguration().getDataDirectory();
-        File inventoryDataFile = new File(dataDir, "inventory.dat");
-        inventoryDataFile.delete();
-        if (!inventoryDataFile.exists()) {
-            out.println(MSG.getMsg(AgentI18NResourceKeys.INVENTORY_DATA_FILE_DELETED, inventoryDataFile));
-        } else {
-            out.println(MSG.getMsg(AgentI18NResourceKeys.INVENTORY_DATA_FILE_DELETION_FAILURE, inventoryDataFile));
+        File[] inventoryDataFiles = { new File(dataDir, "inventory"), new File(dataDir, "inventory.dat") };
+        for (File inventoryDataFile : inventoryDataFiles) {
+            if (!inventoryDataFile.exists()) {
+                continue;
+            }
+            FileUtil.purge(inventoryDataFile, true);
+            if (!inventoryDataFile.exists()) {
+                out.println(MSG.getMsg(AgentI18NResourceKeys.INVENTORY_DATA_FILE_DELETED, inventoryDataFile));
+            } else {
+                out.println(MSG.getMsg(AgentI18NResourceKeys.INVENTORY_DATA_FILE_DELETION_FAILURE, inventoryDataFile));
+            }
         }
 
         if (recyclePC) {
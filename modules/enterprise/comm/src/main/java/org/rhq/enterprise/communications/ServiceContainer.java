@@ -29,7 +29,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.prefs.Preferences;
 
@@ -53,6 +55,7 @@ import org.jboss.remoting.security.SSLSocketBuilder;
 import org.jboss.remoting.transport.Connector;
 import org.jboss.remoting.transport.coyote.ssl.RemotingSSLImplementation;
 
+import org.rhq.core.communications.command.codec.ParameterCodec;
 import org.rhq.core.util.ObjectNameFactory;
 import org.rhq.enterprise.communications.command.client.ClientCommandSender;
 import org.rhq.enterprise.communications.command.client.ClientCommandSenderConfiguration;
@@ -246,6 +249,12 @@ public class ServiceContainer {
      */
     private Map<String, Object> m_customData;
 
+    /**
+     * The codecs that can decode remote POJO invocation parameters sent to this container, keyed on their names. Their
+     * names are advertised to clients when they ask this container to identify itself.
+     */
+    private final Map<String, ParameterCodec> m_parameterCodecs;
+
     /**
      * Private to prevent external instantiation.
      */
@@ -254,6 +263,7 @@ public class ServiceContainer {
         m_senderCreationListeners = new Vector<ServiceContainerSenderCreationListener>(); // synchronized
         m_commandListeners = new ArrayList<CommandListener>();
         m_customData = new HashMap<String, Object>();
+        m_parameterCodecs = new ConcurrentHashMap<String, ParameterCodec>();
     }
 
     /**
@@ -828,6 +838,47 @@ public class ServiceContainer {
         m_senderCreationListeners.remove(listener);
     }
 
+    /**
+     * Adds a codec that can decode remote POJO invocation parameters. Clients that identify this container learn the
+     * names of its codecs and may then send the parameters those codecs know about in their encoded form.
+     *
+     * @param codec the codec to add (replaces a codec of the same name)
+     */
+    public void addParameterCodec(ParameterCodec codec) {
+        m_parameterCodecs.put(codec.getName(), codec);
+        LOG.debug(CommI18NResourceKeys.SERVICE_CONTAINER_ADDED_PARAMETER_CODEC, codec.getName());
+    }
+
+    /**
+     * Removes the parameter codec with the given name. Clients will no longer be told about it, though clients that
+     * already know about it may still send parameters encoded with it until they identify this container again.
+     *
+     * @param codec_name the name of the codec to remove
+     */
+    public void removeParameterCodec(String codec_name) {
+        m_parameterCodecs.remove(codec_name);
+    }
+
+    /**
+     * Returns the parameter codec with the given name.
+     *
+     * @param  codec_name the name of the codec
+     *
+     * @return the codec or <code>null</code> if this container has no codec with that name
+     */
+    public ParameterCodec getParameterCodec(String codec_name) {
+        return m_parameterCodecs.get(codec_name);
+    }
+
+    /**
+     * Returns the names of all parameter codecs this container can decode parameters with.
+     *
+     * @return the codec names (never <code>null</code>)
+     */
+    public Set<String> getParameterCodecNames() {
+        return new TreeSet<String>(m_parameterCodecs.keySet());
+    }
+
     /**
      * Adds the given command service to the service container. Once added, the command service will be able to handle
      * incoming requests for those commands it supports.
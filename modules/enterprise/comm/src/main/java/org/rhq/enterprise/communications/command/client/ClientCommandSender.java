@@ -21,9 +21,14 @@ package org.rhq.enterprise.communications.command.client;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
@@ -33,10 +38,16 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import mazz.i18n.Logger;
 
+import org.jboss.remoting.invocation.NameBasedInvocation;
+
+import org.rhq.core.communications.command.codec.ParameterCodec;
+import org.rhq.core.util.exception.ThrowableUtil;
 import org.rhq.core.util.stream.StreamUtil;
 import org.rhq.enterprise.communications.command.Command;
 import org.rhq.enterprise.communications.command.CommandResponse;
 import org.rhq.enterprise.communications.command.impl.generic.GenericCommandClient;
+import org.rhq.enterprise.communications.command.impl.remotepojo.EncodedParameter;
+import org.rhq.enterprise.communications.command.impl.remotepojo.RemotePojoInvocationCommand;
 import org.rhq.enterprise.communications.i18n.CommI18NFactory;
 import org.rhq.enterprise.communications.i18n.CommI18NResourceKeys;
 
@@ -187,7 +198,7 @@ public class ClientCommandSender {
      * {@link #isDeliveryGuaranteed(Command) guaranteed commands}. The actual objects that will be stored in this object
      * will be {@link CommandAndCallback} objects.
      */
-    private PersistentFifo m_commandStore;
+    private SegmentedPersistentFifo m_commandStore;
 
     /**
      * The configuration for this sender.
@@ -214,6 +225,18 @@ public class ClientCommandSender {
      */
     private ClientCommandSenderMetrics m_metrics;
 
+    /**
+     * The codecs this sender may encode remote POJO invocation parameters with, keyed on their names.
+     */
+    private final Map<String, ParameterCodec> m_parameterCodecs = new ConcurrentHashMap<String, ParameterCodec>();
+
+    /**
+     * The names of the parameter codecs the remote endpoint told us it can decode. This is empty until the remote
+     * endpoint has identified itself - until then, and whenever we switch to another remote endpoint, all parameters
+     * are sent serialized.
+     */
+    private volatile Set<String> m_remoteParameterCodecs = Collections.emptySet();
+
     /**
      * Constructor for {@link ClientCommandSender}. Note that if the configuration's queue size is less than or equal to
      * 0, the queue will be unbounded - be careful since this means there will be no way to stop resources from being
@@ -255,7 +278,7 @@ public class ClientCommandSender {
             File cmd_spool_file = new File(config.dataDirectory, config.commandSpoolFileName);
 
             try {
-                m_commandStore = new PersistentFifo(cmd_spool_file, config.commandSpoolFileMaxSize,
+                m_commandStore = new SegmentedPersistentFifo(cmd_spool_file, config.commandSpoolFileMaxSize,
                     config.commandSpoolFilePurgePercentage, config.commandSpoolFileCompressData);
             } catch (Exception e) {
                 m_commandStore = null;
@@ -396,6 +419,9 @@ public class ClientCommandSender {
         // "Writes to and reads of references are always atomic, regardless of whether they are implemented as 32 or 64 bit values."
         m_remoteCommunicator = remote_communicator;
 
+        // the new remote endpoint has to identify itself before we know what parameter codecs it can decode
+        m_remoteParameterCodecs = Collections.emptySet();
+
         return;
     }
 
@@ -421,6 +447,155 @@ public class ClientCommandSender {
         m_preprocessors = ((preprocs != null) && (preprocs.length > 0)) ? preprocs : null;
     }
 
+    /**
+     * Adds a codec this sender may encode remote POJO invocation parameters with. The codec is only used once the
+     * remote endpoint has told us it can decode parameters with a codec of the same name - see
+     * {@link #setRemoteParameterCodecs(Collection)}.
+     *
+     * @param codec the codec to add (replaces a codec of the same name)
+     */
+    public void addParameterCodec(ParameterCodec codec) {
+        m_parameterCodecs.put(codec.getName(), codec);
+    }
+
+    /**
+     * Removes the parameter codec with the given name, parameters it would encode will be serialized from now on.
+     *
+     * @param codec_name the name of the codec to remove
+     */
+    public void removeParameterCodec(String codec_name) {
+        m_parameterCodecs.remove(codec_name);
+    }
+
+    /**
+     * Tells this sender which parameter codecs the remote endpoint can decode parameters with. This is normally called
+     * with what the remote endpoint says when it {@link ServerPollingThread is polled}.
+     *
+     * @param codec_names the names of the codecs the remote endpoint has (<code>null</code> if it did not say)
+     */
+    public void setRemoteParameterCodecs(Collection<String> codec_names) {
+        Set<String> names = (codec_names != null) ? new HashSet<String>(codec_names) : new HashSet<String>();
+
+        if (!names.equals(m_remoteParameterCodecs)) {
+            LOG.debug(CommI18NResourceKeys.CLIENT_COMMAND_SENDER_REMOTE_PARAMETER_CODECS, names);
+            m_remoteParameterCodecs = Collections.unmodifiableSet(names);
+        }
+
+        return;
+    }
+
+    /**
+     * Returns a copy of the given command with its remote POJO invocation parameters encoded with the parameter codecs
+     * the remote endpoint can decode right now. This is done when the command is actually sent, so commands that sit
+     * in the queue or in the spool always hold the plain parameters and are encoded for whatever remote endpoint they
+     * end up being sent to.
+     *
+     * @param  command the command to be sent
+     *
+     * @return the copy with encoded parameters, or <code>command</code> itself if no parameter was encoded
+     */
+    private Command encodeCommand(Command command) {
+        if (!(command instanceof RemotePojoInvocationCommand) || m_remoteParameterCodecs.isEmpty()) {
+            return command;
+        }
+
+        NameBasedInvocation invocation = ((RemotePojoInvocationCommand) command).getNameBasedInvocation();
+        Object[] args = (invocation != null) ? invocation.getParameters() : null;
+
+        if (args == null) {
+            return command;
+        }
+
+        Object[] encoded_args = null;
+
+        for (int i = 0; i < args.length; i++) {
+            Object encoded = encodeParameter(args[i]);
+
+            if (encoded != args[i]) {
+                if (encoded_args == null) {
+                    encoded_args = args.clone();
+                }
+
+                encoded_args[i] = encoded;
+            }
+        }
+
+        if (encoded_args == null) {
+            return command;
+        }
+
+        RemotePojoInvocationCommand encoded_command = new RemotePojoInvocationCommand(command);
+        encoded_command.setNameBasedInvocation(new NameBasedInvocation(invocation.getMethodName(), encoded_args,
+            invocation.getSignature()));
+
+        return encoded_command;
+    }
+
+    /**
+     * Determines if the remote endpoint refused a command because of its encoded parameters - either it does not have
+     * the parameter codec or it does not even know about {@link EncodedParameter}. In both cases the remote POJO was
+     * never invoked, so the command can safely be sent again with its plain parameters.
+     *
+     * @param  t the failure of the command with the encoded parameters (may be <code>null</code>)
+     *
+     * @return <code>true</code> if the encoded parameters were refused
+     */
+    private boolean isParameterCodecRejected(Throwable t) {
+        while (t != null) {
+            if (t instanceof ClassNotFoundException) {
+                return true;
+            }
+
+            String message = t.getMessage();
+
+            if (message != null) {
+                if (message.contains(EncodedParameter.class.getName())) {
+                    return true;
+                }
+
+                for (String codec_name : m_parameterCodecs.keySet()) {
+                    if (message.equals(LOG.getMsgString(CommI18NResourceKeys.UNKNOWN_PARAMETER_CODEC, codec_name))) {
+                        return true;
+                    }
+                }
+            }
+
+            t = (t.getCause() == t) ? null : t.getCause();
+        }
+
+        return false;
+    }
+
+    /**
+     * Encodes the given remote POJO invocation parameter if this sender has a codec for it that the remote endpoint
+     * can decode. If there is no such codec, or the codec fails to encode the parameter, the parameter is returned
+     * as-is and will be serialized along with the command.
+     *
+     * @param  parameter the parameter to encode (may be <code>null</code>)
+     *
+     * @return an {@link EncodedParameter} or the parameter itself
+     */
+    private Object encodeParameter(Object parameter) {
+        if (parameter == null || m_parameterCodecs.isEmpty()) {
+            return parameter;
+        }
+
+        for (String codec_name : m_remoteParameterCodecs) {
+            ParameterCodec codec = m_parameterCodecs.get(codec_name);
+
+            if ((codec != null) && codec.canEncode(parameter)) {
+                try {
+                    return new EncodedParameter(codec_name, codec.encode(parameter));
+                } catch (Exception e) {
+                    LOG.warn(CommI18NResourceKeys.CLIENT_COMMAND_SENDER_PARAMETER_ENCODE_FAILURE, parameter.getClass()
+                        .getName(), codec_name, ThrowableUtil.getAllMessages(e));
+                }
+            }
+        }
+
+        return parameter;
+    }
+
     /**
      * Returns the list of SendCallbacks that are currently assigned to this sender. These objects are called just
      * before and just after the send.
@@ -1070,6 +1245,52 @@ public class ClientCommandSender {
      * @throws Throwable if failed to send the command
      */
     CommandResponse send(Command command) throws Throwable {
+        // parameters are encoded here, once we know what the remote endpoint we are sending to can decode
+        Command encoded_command = encodeCommand(command);
+
+        if (encoded_command == command) {
+            return send(command, command);
+        }
+
+        Throwable rejection;
+
+        try {
+            CommandResponse response = send(command, encoded_command);
+
+            if ((response == null) || response.isSuccessful() || !isParameterCodecRejected(response.getException())) {
+                return response;
+            }
+
+            rejection = response.getException();
+        } catch (Throwable t) {
+            if (!isParameterCodecRejected(t)) {
+                throw t;
+            }
+
+            rejection = t;
+        }
+
+        // the remote endpoint advertised codecs it cannot decode with (or we were switched to another endpoint) - stop
+        // encoding until it identifies itself again and send the plain parameters this time
+        LOG.warn(CommI18NResourceKeys.CLIENT_COMMAND_SENDER_PARAMETER_CODEC_REJECTED, m_remoteParameterCodecs,
+            ThrowableUtil.getAllMessages(rejection));
+        m_remoteParameterCodecs = Collections.emptySet();
+
+        return send(command, command);
+    }
+
+    /**
+     * Sends the command as it is to go over the wire, which is either the command itself or a copy of it with encoded
+     * parameters. The callbacks are always given the command itself.
+     *
+     * @param  command      the command to send
+     * @param  wire_command what to actually send for <code>command</code>
+     *
+     * @return the response of the command as returned by the server
+     *
+     * @throws Throwable if failed to send the command
+     */
+    private CommandResponse send(Command command, Command wire_command) throws Throwable {
         // Keep this method short and simple - all it should do is blindly send the command, return or throw exceptions.
         // Do not attempt to recover or otherwise persist information - callers will be responsible for error handling.
         CommandResponse response;
@@ -1081,7 +1302,7 @@ public class ClientCommandSender {
             executePreSendCallbacks(command);
 
             long start = System.currentTimeMillis();
-            response = client.invoke(command);
+            response = client.invoke(wire_command);
             long elapsed = System.currentTimeMillis() - start;
 
             // Give the post-send callbacks a chance to execute
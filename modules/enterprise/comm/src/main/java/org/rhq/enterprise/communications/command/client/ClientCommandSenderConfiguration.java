@@ -130,7 +130,8 @@ public class ClientCommandSenderConfiguration implements Serializable {
     /**
      * The name of the command spool file (to be located in the {@link #dataDirectory }}. If this value is <code>
      * null</code>, it will be assumed that commands should not be persisted (this means guaranteed delivery will be
-     * implicitly unsupported).
+     * implicitly unsupported). The spooled commands are kept in segment files in a directory named after this file,
+     * see {@link SegmentedPersistentFifo}.
      */
     public String commandSpoolFileName;
 
@@ -143,7 +144,7 @@ public class ClientCommandSenderConfiguration implements Serializable {
     /**
      * If the command spool file crosses its max size threshold and a purge is initiated, this is the percentage of
      * bytes the command spool file will be allowed to be after the purge completes. This is a percentage of
-     * {@link #commandSpoolFileMaxSize}. See {@link PersistentFifo} for more info on this parameter.
+     * {@link #commandSpoolFileMaxSize}. See {@link SegmentedPersistentFifo} for more info on this parameter.
      */
     public int commandSpoolFilePurgePercentage = 75;
 
@@ -0,0 +1,718 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.communications.command.client;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.zip.CRC32;
+
+import mazz.i18n.Logger;
+
+import org.rhq.core.util.stream.StreamUtil;
+import org.rhq.enterprise.communications.i18n.CommI18NFactory;
+import org.rhq.enterprise.communications.i18n.CommI18NResourceKeys;
+
+/**
+ * Persists byte arrays in a FIFO queue that is spread over a directory of memory-mapped segment files. This is the
+ * command spool of the {@link ClientCommandSender}; it replaces the single {@link PersistentFifo} file the spool used
+ * to be kept in.
+ *
+ * <p>Entries are only ever appended to the newest segment. Each entry is written as its length (an <code>int</code>),
+ * the CRC32 checksum of its data (an <code>int</code>) and the data itself. The length is stored plus one, so that a
+ * zero always marks the free space at the end of a segment, even after an empty entry. The length is written last,
+ * so an entry whose length is set is complete; an entry that was torn by a crash is detected by its checksum. Taking
+ * an entry negates its length in place - nothing else is ever rewritten. A put or take forces the segment to disk
+ * before it returns. A segment file is deleted once all its
+ * entries have been taken, and if the spool grows beyond its maximum size its oldest segments are deleted as a whole,
+ * rather than shifting the remaining entries down in the file like {@link PersistentFifo} does.</p>
+ *
+ * <pre>
+ * spool.segments/0000000000000001.seg: len+1 | crc | data | -(len+1) | crc | data | len+1 | crc | data | 0 ...
+ *                                      ^ live entry         ^ taken entry                                ^ free space
+ * </pre>
+ *
+ * <p>The segments are kept in the directory named after the spool file with {@link #DIRECTORY_SUFFIX} appended. If
+ * the spool file itself exists, it is assumed to be an old {@link PersistentFifo} spool and its entries are moved into
+ * the segments when the FIFO is created.</p>
+ *
+ * <p>This class is thread-safe; all access is synchronized on the individual FIFO. Only one FIFO instance may use a
+ * spool directory at any one time - the count of entries and the read and write positions are only kept in memory and
+ * rebuilt from the segment files when the FIFO is created.</p>
+ */
+public class SegmentedPersistentFifo {
+    /**
+     * Logger
+     */
+    private static final Logger LOG = CommI18NFactory.getLogger(SegmentedPersistentFifo.class);
+
+    /**
+     * Appended to the name of the spool file to get the name of the directory the segment files are kept in.
+     */
+    public static final String DIRECTORY_SUFFIX = ".segments";
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int ENTRY_HEADER_SIZE = 8; // the length and the checksum of the entry
+    private static final int MIN_SEGMENT_SIZE = 4096;
+    private static final int MAX_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    private final Object m_lock = new Object();
+    private final File m_file;
+    private final File m_directory;
+    private final long m_maxSizeBytes; // the number of used bytes that, when reached, triggers a purge
+    private final long m_purgeResultMaxBytes; // the number of used bytes there may be after a purge
+    private final int m_segmentSize;
+    private final boolean m_compress; // will be true if we are to compress the data before persisting
+
+    private final LinkedList<Segment> m_segments = new LinkedList<Segment>(); // oldest segment first
+    private Segment m_writeSegment; // the segment new entries are appended to, null if there is none yet
+    private long m_nextSegmentNumber;
+    private long m_count; // the current count of entries in the FIFO
+    private long m_usedBytes; // the bytes written to all segments, including those of entries already taken
+
+    /**
+     * A simple utility that dumps all the data found in the spool to the given stream. See
+     * {@link PersistentFifo#dumpContents(PrintWriter, File, boolean, int)} for the meaning of the arguments. This does
+     * not modify the spool, so it can be used while the spool is in use. If an old {@link PersistentFifo} spool file
+     * has not been moved into the segments yet, its contents are dumped first.
+     *
+     * @param  out           the stream to dump the output
+     * @param  fifo_file     the spool file, see {@link #SegmentedPersistentFifo(File, long, int, boolean)}
+     * @param  compressed    if <code>true</code>, the entries will be assumed to be compressed
+     * @param  raw_byte_base the base to dump the entry data in, 0 to dump entries as objects, -1 to only dump the
+     *                       number of entries
+     *
+     * @throws IOException
+     */
+    public static void dumpContents(PrintWriter out, File fifo_file, boolean compressed, int raw_byte_base)
+        throws IOException {
+        if (fifo_file.isFile()) {
+            PersistentFifo.dumpContents(out, fifo_file, compressed, raw_byte_base);
+        }
+
+        File directory = getDirectory(fifo_file);
+        LinkedList<Segment> segments = new LinkedList<Segment>();
+        long count = 0L;
+
+        for (File segment_file : listSegmentFiles(directory)) {
+            Segment segment = Segment.open(segment_file, true);
+            count += segment.count;
+            segments.add(segment);
+        }
+
+        out.println(directory);
+        out.println(count);
+        out.flush();
+
+        // don't bother to continue, return immediately if caller only wanted to see the number of entries
+        if (raw_byte_base < 0) {
+            return;
+        }
+
+        long entry_num = 0;
+
+        for (Segment segment : segments) {
+            while (segment.count > 0) {
+                byte[] entry = segment.read();
+
+                if (compressed) {
+                    entry = PersistentFifo.decompress(entry);
+                }
+
+                PersistentFifo.dumpEntry(out, entry_num++, entry, raw_byte_base);
+            }
+        }
+
+        out.flush();
+
+        return;
+    }
+
+    /**
+     * Creates a new {@link SegmentedPersistentFifo} object. The <code>max_size_bytes</code> indicates the maximum
+     * number of bytes the segments may hold before a purge is triggered. If this threshold is crossed, the oldest
+     * segments - and the entries in them - are deleted until the segments hold <code>purge_percentage</code> percent of
+     * the maximum or less.
+     *
+     * @param  file             the spool file; the segments are kept in the directory of the same name with
+     *                          {@link #DIRECTORY_SUFFIX} appended
+     * @param  max_size_bytes   the maximum size, in bytes, the spool is allowed to grow before a purge is triggered
+     * @param  purge_percentage when a purge is triggered, it will free up enough space to lower the amount of used
+     *                          space down to this percentage of the total max space
+     * @param  compress         if <code>true</code>, the data spooled should be compressed
+     *
+     * @throws IOException              if the directory or the segment files cannot be created or read
+     * @throws IllegalArgumentException if purge_percentage is not between 0 and 99 or max_size_bytes is less than 1000
+     */
+    public SegmentedPersistentFifo(File file, long max_size_bytes, int purge_percentage, boolean compress)
+        throws IOException {
+        if ((purge_percentage < 0) || (purge_percentage > 99)) {
+            throw new IllegalArgumentException(LOG.getMsgString(CommI18NResourceKeys.INVALID_PURGE_PERCENTAGE,
+                purge_percentage));
+        }
+
+        if (max_size_bytes < 1000L) {
+            throw new IllegalArgumentException(LOG.getMsgString(CommI18NResourceKeys.INVALID_MAX_SIZE, max_size_bytes,
+                1000));
+        }
+
+        m_file = file;
+        m_directory = getDirectory(file);
+        m_maxSizeBytes = max_size_bytes;
+        m_purgeResultMaxBytes = (long) (max_size_bytes * (purge_percentage / 100.0f));
+        m_segmentSize = (int) Math.min(MAX_SEGMENT_SIZE, Math.max(MIN_SEGMENT_SIZE, max_size_bytes / 10L));
+        m_compress = compress;
+
+        synchronized (m_lock) {
+            if (!m_directory.isDirectory() && !m_directory.mkdirs()) {
+                throw new IOException(m_directory.getAbsolutePath());
+            }
+
+            m_nextSegmentNumber = 1L;
+
+            for (File segment_file : listSegmentFiles(m_directory)) {
+                Segment segment = Segment.open(segment_file, false);
+                m_nextSegmentNumber = getSegmentNumber(segment_file) + 1L;
+
+                if (segment.count == 0) {
+                    delete(segment);
+                } else {
+                    m_segments.add(segment);
+                    m_count += segment.count;
+                    m_usedBytes += segment.writePosition;
+                }
+            }
+
+            // we never append to the segments we found - one of them might end with a torn entry
+
+            if (m_file.isFile()) {
+                migrate();
+            }
+        }
+
+        return;
+    }
+
+    /**
+     * Returns the directory the segment files are kept in.
+     *
+     * @return the spool directory
+     */
+    public File getDirectory() {
+        return m_directory;
+    }
+
+    /**
+     * Puts the given Object in the FIFO queue. This method will attempt to serialize the object and store the
+     * serialized bytes via {@link #put(byte[])}. An exception will occur if the serialization fails.
+     *
+     * @param  o the object to serialize and put in the FIFO queue
+     *
+     * @throws IOException      if failed to put the data in the spool
+     * @throws RuntimeException if failed to serialize the data
+     */
+    public void putObject(Serializable o) throws IOException, RuntimeException {
+        byte[] serialized_bytes = StreamUtil.serialize(o);
+        put(serialized_bytes);
+        return;
+    }
+
+    /**
+     * Takes an object from the FIFO, deserializes it and returns it.
+     *
+     * @return the object that was taken from the FIFO and deserialized
+     *
+     * @throws IOException      if failed to access the spool
+     * @throws RuntimeException if failed to deserialize the object after taking its serialized bytes off the FIFO queue
+     */
+    public Object takeObject() throws IOException, RuntimeException {
+        Object o = null;
+
+        byte[] serialized_bytes = take();
+        if (serialized_bytes != null) {
+            o = StreamUtil.deserialize(serialized_bytes);
+        }
+
+        return o;
+    }
+
+    /**
+     * Puts an array of bytes on the FIFO queue.
+     *
+     * @param  bytes the data to put in the queue
+     *
+     * @throws IOException if failed to access the spool
+     */
+    public void put(byte[] bytes) throws IOException {
+        if (m_compress) {
+            bytes = PersistentFifo.compress(bytes);
+        }
+
+        // the checksum does not depend on the spool, no need to hold the lock while calculating it
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        int checksum = (int) crc.getValue();
+
+        synchronized (m_lock) {
+            int entry_size = ENTRY_HEADER_SIZE + bytes.length;
+
+            if ((m_writeSegment == null) || (m_writeSegment.capacity() - m_writeSegment.writePosition < entry_size)) {
+                // an entry larger than a segment gets a segment of its own
+                rollSegment(Math.max(m_segmentSize, entry_size));
+            }
+
+            m_writeSegment.write(bytes, checksum);
+            m_count++;
+            m_usedBytes += entry_size;
+
+            // if we went over the maximum size limit, delete the oldest segments to make room
+            if (m_usedBytes > m_maxSizeBytes) {
+                purge();
+            }
+        }
+
+        return;
+    }
+
+    /**
+     * Takes the next entry from the queue and returns it.
+     *
+     * @return the next entry from the queue, or <code>null</code> if the queue is empty
+     *
+     * @throws IOException if failed to access the spool
+     */
+    public byte[] take() throws IOException {
+        byte[] entry;
+
+        synchronized (m_lock) {
+            // return immediately if there are no entries in the queue
+            if (m_count == 0L) {
+                return null;
+            }
+
+            Segment head = m_segments.getFirst();
+            while (head.count == 0) {
+                // can only be a segment that was emptied by the write segment being rolled over
+                m_segments.removeFirst();
+                m_usedBytes -= head.writePosition;
+                delete(head);
+                head = m_segments.getFirst();
+            }
+
+            entry = head.read();
+            head.markTaken();
+            m_count--;
+
+            if (head.count == 0) {
+                if (head == m_writeSegment) {
+                    // the queue is empty now - start over at the beginning of the segment rather than a new one
+                    m_usedBytes -= head.writePosition;
+                    head.rewind();
+                } else {
+                    m_segments.removeFirst();
+                    m_usedBytes -= head.writePosition;
+                    delete(head);
+                }
+            }
+        }
+
+        if (m_compress) {
+            entry = PersistentFifo.decompress(entry);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Returns <code>true</code> if the spool does not contain any entries in the queue.
+     *
+     * @return <code>true</code> if the queue is empty, <code>false</code> if at least one entry can be taken from the
+     *         queue.
+     */
+    public boolean isEmpty() {
+        synchronized (m_lock) {
+            return m_count == 0L;
+        }
+    }
+
+    /**
+     * Returns the number of entries currently in the FIFO.
+     *
+     * @return the number of entries
+     */
+    public long count() {
+        synchronized (m_lock) {
+            return m_count;
+        }
+    }
+
+    /**
+     * Deletes all entries in the queue along with their segment files.
+     *
+     * @throws IOException if a segment file cannot be deleted
+     */
+    public void clear() throws IOException {
+        synchronized (m_lock) {
+            while (!m_segments.isEmpty()) {
+                delete(m_segments.removeFirst());
+            }
+
+            m_writeSegment = null;
+            m_count = 0L;
+            m_usedBytes = 0L;
+        }
+
+        return;
+    }
+
+    /**
+     * Starts a new segment to append entries to. The previous write segment is deleted if all of its entries have
+     * already been taken.
+     *
+     * @param  size the size of the new segment
+     *
+     * @throws IOException if failed to create the segment file
+     */
+    private void rollSegment(int size) throws IOException {
+        if ((m_writeSegment != null) && (m_writeSegment.count == 0)) {
+            m_segments.remove(m_writeSegment);
+            m_usedBytes -= m_writeSegment.writePosition;
+            delete(m_writeSegment);
+        }
+
+        long number = m_nextSegmentNumber++;
+        File segment_file = new File(m_directory, getSegmentFileName(number));
+
+        m_writeSegment = Segment.create(segment_file, size);
+        m_segments.add(m_writeSegment);
+
+        return;
+    }
+
+    /**
+     * Deletes the oldest segments, including the entries that have not yet been taken from them, until the used space
+     * drops down to the purge percentage.
+     *
+     * @throws IOException if failed to access a segment
+     */
+    private void purge() throws IOException {
+        long purged = 0L;
+
+        while ((m_usedBytes > m_purgeResultMaxBytes) && !m_segments.isEmpty()) {
+            Segment oldest = m_segments.removeFirst();
+            purged += oldest.count;
+            m_count -= oldest.count;
+            m_usedBytes -= oldest.writePosition;
+
+            if (oldest == m_writeSegment) {
+                m_writeSegment = null;
+            }
+
+            delete(oldest);
+        }
+
+        LOG.warn(CommI18NResourceKeys.SEGMENTED_FIFO_PURGED, m_directory, m_maxSizeBytes, purged);
+
+        return;
+    }
+
+    /**
+     * Deletes the file of a segment that is no longer used. If the file cannot be deleted - some platforms do not
+     * allow deleting a file that is still mapped - its remaining entries are marked as taken so they do not come back
+     * the next time the spool is opened.
+     *
+     * @param  segment the segment to delete
+     *
+     * @throws IOException if failed to access the segment
+     */
+    private void delete(Segment segment) throws IOException {
+        File segment_file = segment.file;
+
+        if (!segment_file.delete() && segment_file.exists()) {
+            while (segment.count > 0) {
+                segment.markTaken();
+            }
+
+            segment_file.deleteOnExit();
+            LOG.warn(CommI18NResourceKeys.SEGMENTED_FIFO_DELETE_FAILED, segment_file);
+        }
+
+        return;
+    }
+
+    /**
+     * Moves all entries of the old {@link PersistentFifo} spool file into the segments and then deletes the file. Each
+     * entry is taken from the old file, which decompresses it, and put into the segments, which compresses it again,
+     * so the compression setting must not have been changed in between. The entries are put like any others, so if
+     * there are more than fit into the maximum size the oldest ones are purged.
+     *
+     * @throws IOException if failed to read the old spool file or to write the segments
+     */
+    private void migrate() throws IOException {
+        PersistentFifo old_fifo = new PersistentFifo(m_file, Long.MAX_VALUE, 99, m_compress);
+        long migrated = 0L;
+        byte[] entry;
+
+        while ((entry = old_fifo.take()) != null) {
+            put(entry);
+            migrated++;
+        }
+
+        old_fifo.close();
+
+        if (!m_file.delete()) {
+            // leaving it empty is just as good, we will not find anything in it the next time
+            old_fifo.initializeEmptyFile();
+        }
+
+        LOG.info(CommI18NResourceKeys.SEGMENTED_FIFO_MIGRATED, migrated, m_file, m_directory);
+
+        return;
+    }
+
+    private static File getDirectory(File file) {
+        return new File(file.getParentFile(), file.getName() + DIRECTORY_SUFFIX);
+    }
+
+    private static String getSegmentFileName(long number) {
+        String digits = Long.toString(number);
+        StringBuilder name = new StringBuilder();
+
+        for (int i = digits.length(); i < 16; i++) {
+            name.append('0');
+        }
+
+        return name.append(digits).append(SEGMENT_SUFFIX).toString();
+    }
+
+    private static long getSegmentNumber(File segment_file) {
+        String name = segment_file.getName();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Returns the segment files found in the given directory, oldest first.
+     *
+     * @param  directory the spool directory
+     *
+     * @return the segment files, empty if the directory does not exist
+     */
+    private static File[] listSegmentFiles(File directory) {
+        File[] files = directory.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(SEGMENT_SUFFIX);
+            }
+        });
+
+        if (files == null) {
+            return new File[0];
+        }
+
+        // the file names are zero-padded numbers, sorting the files by name sorts them by number
+        Arrays.sort(files);
+
+        return files;
+    }
+
+    /**
+     * A single memory-mapped segment file.
+     */
+    private static class Segment {
+        private static final byte[] ZEROS = new byte[4096];
+
+        final File file;
+        final MappedByteBuffer buffer;
+        int readPosition; // the position of the next entry to take
+        int writePosition; // the position the next entry will be appended at
+        int count; // the number of entries not taken yet
+
+        private Segment(File file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Creates a new, empty segment file of the given size and maps it.
+         */
+        static Segment create(File file, int size) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+            try {
+                raf.setLength(size);
+                return new Segment(file, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size));
+            } finally {
+                raf.close(); // the mapping stays valid after the file is closed
+            }
+        }
+
+        /**
+         * Maps an existing segment file and finds its entries. The entries are read up to the first one that is not
+         * complete or whose checksum does not match; nothing after that can be trusted.
+         */
+        static Segment open(File file, boolean read_only) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, read_only ? "r" : "rw");
+            Segment segment;
+
+            try {
+                FileChannel.MapMode mode = read_only ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+                segment = new Segment(file, raf.getChannel().map(mode, 0, raf.length()));
+            } finally {
+                raf.close();
+            }
+
+            MappedByteBuffer buffer = segment.buffer;
+            int capacity = buffer.capacity();
+            int position = 0;
+            int first_entry = -1;
+
+            while (capacity - position >= ENTRY_HEADER_SIZE) {
+                int length = buffer.getInt(position);
+
+                if (length == 0) {
+                    break; // the end of the entries that were written
+                }
+
+                int data_size = dataSize(length);
+                if ((data_size < 0) || (data_size > capacity - position - ENTRY_HEADER_SIZE)
+                    || ((length > 0) && (segment.checksum(position + ENTRY_HEADER_SIZE, data_size) != buffer
+                        .getInt(position + 4)))) {
+                    LOG.warn(CommI18NResourceKeys.SEGMENTED_FIFO_CORRUPT_ENTRY, file, position);
+                    break;
+                }
+
+                if (length > 0) {
+                    if (first_entry < 0) {
+                        first_entry = position;
+                    }
+
+                    segment.count++;
+                }
+
+                position += ENTRY_HEADER_SIZE + data_size;
+            }
+
+            segment.writePosition = position;
+            segment.readPosition = (first_entry < 0) ? position : first_entry;
+
+            return segment;
+        }
+
+        int capacity() {
+            return buffer.capacity();
+        }
+
+        /**
+         * Appends an entry. The length goes in last so the entry is not seen before it is complete.
+         */
+        void write(byte[] bytes, int checksum) {
+            ByteBuffer data = buffer.duplicate();
+            data.position(writePosition + ENTRY_HEADER_SIZE);
+            data.put(bytes);
+            buffer.putInt(writePosition + 4, checksum);
+            buffer.putInt(writePosition, bytes.length + 1);
+            buffer.force();
+
+            writePosition += ENTRY_HEADER_SIZE + bytes.length;
+            count++;
+        }
+
+        /**
+         * Reads the entry at the read position without taking it.
+         */
+        byte[] read() {
+            int length = buffer.getInt(readPosition);
+            while (length < 0) {
+                // skip the entries that were taken; only happens in read-only segments opened for a dump
+                readPosition += ENTRY_HEADER_SIZE + dataSize(length);
+                length = buffer.getInt(readPosition);
+            }
+
+            byte[] bytes = new byte[dataSize(length)];
+            ByteBuffer data = buffer.duplicate();
+            data.position(readPosition + ENTRY_HEADER_SIZE);
+            data.get(bytes);
+
+            if (buffer.isReadOnly()) {
+                // a dump just walks over the entries
+                readPosition += ENTRY_HEADER_SIZE + bytes.length;
+                count--;
+            }
+
+            return bytes;
+        }
+
+        /**
+         * Takes the entry at the read position by negating its length.
+         */
+        void markTaken() {
+            int length = buffer.getInt(readPosition);
+            while (length < 0) {
+                readPosition += ENTRY_HEADER_SIZE + dataSize(length);
+                length = buffer.getInt(readPosition);
+            }
+
+            buffer.putInt(readPosition, -length);
+            buffer.force();
+            readPosition += ENTRY_HEADER_SIZE + dataSize(length);
+            count--;
+        }
+
+        /**
+         * Empties a segment whose entries have all been taken so it can be written from the beginning again. The old
+         * entries are zeroed out, otherwise they would be seen as entries following a new, shorter one.
+         */
+        void rewind() {
+            ByteBuffer data = buffer.duplicate();
+            data.position(0);
+            while (data.position() < writePosition) {
+                data.put(ZEROS, 0, Math.min(ZEROS.length, writePosition - data.position()));
+            }
+            buffer.force();
+
+            readPosition = 0;
+            writePosition = 0;
+        }
+
+        /**
+         * Returns the size of the data of an entry from its stored length, which is negative if the entry was taken.
+         */
+        private static int dataSize(int length) {
+            return ((length < 0) ? -length : length) - 1;
+        }
+
+        private int checksum(int position, int size) {
+            byte[] bytes = new byte[size];
+            ByteBuffer data = buffer.duplicate();
+            data.position(position);
+            data.get(bytes);
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            return (int) crc.getValue();
+        }
+    }
+}
@@ -26,6 +26,7 @@ import mazz.i18n.Logger;
 import org.rhq.core.util.exception.ThrowableUtil;
 import org.rhq.enterprise.communications.command.CommandResponse;
 import org.rhq.enterprise.communications.command.impl.identify.IdentifyCommand;
+import org.rhq.enterprise.communications.command.impl.identify.ServerIdentification;
 import org.rhq.enterprise.communications.i18n.CommI18NFactory;
 import org.rhq.enterprise.communications.i18n.CommI18NResourceKeys;
 import org.rhq.enterprise.communications.util.CommUtils;
@@ -117,6 +118,12 @@ class ServerPollingThread extends Thread {
                         throw response.getException();
                     }
 
+                    // the server tells us which parameter codecs it can decode, we will encode parameters accordingly
+                    if (response.getResults() instanceof ServerIdentification) {
+                        m_clientSender.setRemoteParameterCodecs(((ServerIdentification) response.getResults())
+                            .getParameterCodecs());
+                    }
+
                     if (m_clientSender.startSending()) {
                         LOG.info(CommI18NResourceKeys.SERVER_POLLING_THREAD_SERVER_ONLINE);
                         m_warnedAboutConnectionFailure = false; // if we detect the server is down again, lets log the exception again
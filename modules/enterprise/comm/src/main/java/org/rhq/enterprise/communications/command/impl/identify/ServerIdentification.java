@@ -19,6 +19,7 @@
 package org.rhq.enterprise.communications.command.impl.identify;
 
 import java.util.Date;
+import java.util.Set;
 
 /**
  * Identification information about a JON Server.
@@ -31,6 +32,12 @@ public class ServerIdentification extends Identification {
      */
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The names of the parameter codecs the server can decode remote POJO invocation parameters with. This is
+     * <code>null</code> when the identification comes from a server that predates parameter codecs.
+     */
+    private Set<String> m_parameterCodecs;
+
     /**
      * Constructor for {@link ServerIdentification}.
      *
@@ -40,6 +47,31 @@ public class ServerIdentification extends Identification {
         super(type, locatorUri);
     }
 
+    /**
+     * Constructor for {@link ServerIdentification}.
+     *
+     * @param type             the endpoint type
+     * @param locatorUri       the locator endpoint of the server
+     * @param parameter_codecs the names of the parameter codecs the server can decode parameters with
+     *
+     * @see   Identification#Identification(String, String)
+     */
+    public ServerIdentification(String type, String locatorUri, Set<String> parameter_codecs)
+        throws IllegalArgumentException {
+        super(type, locatorUri);
+        m_parameterCodecs = parameter_codecs;
+    }
+
+    /**
+     * Returns the names of the parameter codecs the server can decode remote POJO invocation parameters with. Clients
+     * must not send parameters encoded with any other codec.
+     *
+     * @return the codec names, <code>null</code> if the server did not say
+     */
+    public Set<String> getParameterCodecs() {
+        return m_parameterCodecs;
+    }
+
     /**
      * @see java.lang.Object#toString()
      */
@@ -51,7 +83,8 @@ public class ServerIdentification extends Identification {
         buf.append(getInvokerLocator());
         buf.append("]; timestamp=[");
         buf.append(new Date(getTimestamp()));
-        buf.append("]");
+        buf.append("]; parameter-codecs=");
+        buf.append(m_parameterCodecs);
 
         return buf.toString();
     }
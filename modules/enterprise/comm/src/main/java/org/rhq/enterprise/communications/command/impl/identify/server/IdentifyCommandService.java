@@ -73,7 +73,8 @@ public class IdentifyCommandService extends CommandService {
         if (our_type.equals(Identification.TYPE_AGENT)) {
             our_ident = new AgentIdentification(our_type, locator.getLocatorURI());
         } else if (our_type.equals(Identification.TYPE_SERVER)) {
-            our_ident = new ServerIdentification(our_type, locator.getLocatorURI());
+            our_ident = new ServerIdentification(our_type, locator.getLocatorURI(), getServiceContainer()
+                .getParameterCodecNames());
         } else {
             return new IdentifyCommandResponse(identifyCommand, new Exception(LOG
                 .getMsgString(CommI18NResourceKeys.IDENTIFY_COMMAND_SERVICE_UNKNOWN_ENDPOINT)));
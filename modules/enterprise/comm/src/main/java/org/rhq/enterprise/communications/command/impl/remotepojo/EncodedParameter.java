@@ -0,0 +1,90 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.communications.command.impl.remotepojo;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import org.rhq.core.communications.command.codec.ParameterCodec;
+
+/**
+ * A remote POJO invocation parameter that was encoded with a {@link ParameterCodec}. The receiving side decodes it
+ * with its codec of the same name before it invokes the POJO. This object only carries the codec name and the encoded
+ * bytes, so serializing it costs next to nothing compared to serializing the object it stands for.
+ */
+public class EncodedParameter implements Externalizable {
+    private static final long serialVersionUID = 1L;
+
+    private String m_codecName;
+    private byte[] m_data;
+
+    /**
+     * Only for deserialization.
+     */
+    public EncodedParameter() {
+    }
+
+    /**
+     * Constructor for {@link EncodedParameter}.
+     *
+     * @param codec_name the {@link ParameterCodec#getName() name} of the codec that encoded the parameter
+     * @param data       the encoded parameter
+     */
+    public EncodedParameter(String codec_name, byte[] data) {
+        m_codecName = codec_name;
+        m_data = data;
+    }
+
+    /**
+     * Returns the name of the codec that can decode this parameter.
+     *
+     * @return codec name
+     */
+    public String getCodecName() {
+        return m_codecName;
+    }
+
+    /**
+     * Returns the encoded parameter.
+     *
+     * @return the encoded data
+     */
+    public byte[] getData() {
+        return m_data;
+    }
+
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeUTF(m_codecName);
+        out.writeInt(m_data.length);
+        out.write(m_data);
+    }
+
+    public void readExternal(ObjectInput in) throws IOException {
+        m_codecName = in.readUTF();
+        m_data = new byte[in.readInt()];
+        in.readFully(m_data);
+    }
+
+    @Override
+    public String toString() {
+        return "EncodedParameter[" + m_codecName + ", " + m_data.length + " bytes]";
+    }
+}
@@ -27,6 +27,7 @@ import java.util.Map;
 import mazz.i18n.Logger;
 import org.jboss.remoting.invocation.NameBasedInvocation;
 import org.rhq.core.communications.command.annotation.LimitedConcurrency;
+import org.rhq.core.communications.command.codec.ParameterCodec;
 import org.rhq.core.util.exception.WrappedRemotingException;
 import org.rhq.core.util.stream.StreamUtil;
 import org.rhq.enterprise.communications.command.Command;
@@ -35,6 +36,7 @@ import org.rhq.enterprise.communications.command.CommandResponse;
 import org.rhq.enterprise.communications.command.CommandType;
 import org.rhq.enterprise.communications.command.client.RemoteInputStream;
 import org.rhq.enterprise.communications.command.client.RemoteOutputStream;
+import org.rhq.enterprise.communications.command.impl.remotepojo.EncodedParameter;
 import org.rhq.enterprise.communications.command.impl.remotepojo.RemotePojoInvocationCommand;
 import org.rhq.enterprise.communications.command.impl.remotepojo.RemotePojoInvocationCommandResponse;
 import org.rhq.enterprise.communications.command.server.CommandMBean;
@@ -158,6 +160,9 @@ public class RemotePojoInvocationCommandService extends CommandService implement
                 class_signature[x] = ClassUtil.getClassFromTypeName(signature[x]);
             }
 
+            // the client may have sent some parameters encoded with one of our parameter codecs
+            decodeParameters(params);
+
             // If the remote POJO interface method has limited concurrency allowed, we need to make
             // sure we have permission to invoke that method. None of these calls should throw an exception.
             Class<?> target_interface = Class.forName(target_interface_name);
@@ -214,6 +219,36 @@ public class RemotePojoInvocationCommandService extends CommandService implement
         return response;
     }
 
+    /**
+     * Replaces the {@link EncodedParameter encoded parameters} in the given array with the objects they were encoded
+     * from, using the parameter codecs of our service container.
+     *
+     * @param  params the invocation parameters (may be <code>null</code>)
+     *
+     * @throws Exception if a parameter was encoded with a codec we do not have or could not be decoded
+     */
+    private void decodeParameters(Object[] params) throws Exception {
+        if (params == null) {
+            return;
+        }
+
+        for (int x = 0; x < params.length; x++) {
+            if (params[x] instanceof EncodedParameter) {
+                EncodedParameter encoded = (EncodedParameter) params[x];
+                ParameterCodec codec = getServiceContainer().getParameterCodec(encoded.getCodecName());
+
+                if (codec == null) {
+                    throw new IllegalArgumentException(LOG.getMsgString(CommI18NResourceKeys.UNKNOWN_PARAMETER_CODEC,
+                        encoded.getCodecName()));
+                }
+
+                params[x] = codec.decode(encoded.getData());
+            }
+        }
+
+        return;
+    }
+
     /**
      * Supports {@link RemotePojoInvocationCommand#COMMAND_TYPE}.
      *
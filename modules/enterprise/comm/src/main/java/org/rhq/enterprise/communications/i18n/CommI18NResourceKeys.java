@@ -237,6 +237,33 @@ public interface CommI18NResourceKeys {
         @I18NMessage(value = "Die Maximalgrüße [{0}] muss größer oder gleich [{1}] sein", locale = "de") })
     String INVALID_MAX_SIZE = "PersistentFifo.invalid-max-size";
 
+    @I18NMessages( { @I18NMessage("The spool segment [{0}] has a corrupt entry at position [{1}] - the entries from there to the end of the segment are lost") })
+    String SEGMENTED_FIFO_CORRUPT_ENTRY = "SegmentedPersistentFifo.corrupt-entry";
+
+    @I18NMessages( { @I18NMessage("The spool [{0}] grew beyond its maximum size of [{1}] bytes - [{2}] of its oldest entries were deleted") })
+    String SEGMENTED_FIFO_PURGED = "SegmentedPersistentFifo.purged";
+
+    @I18NMessages( { @I18NMessage("Failed to delete the spool segment [{0}] - its remaining entries were marked as taken instead") })
+    String SEGMENTED_FIFO_DELETE_FAILED = "SegmentedPersistentFifo.delete-failed";
+
+    @I18NMessages( { @I18NMessage("Moved [{0}] entries from the old spool file [{1}] into the spool [{2}]") })
+    String SEGMENTED_FIFO_MIGRATED = "SegmentedPersistentFifo.migrated";
+
+    @I18NMessages( { @I18NMessage("Failed to encode a parameter of type [{0}] with the parameter codec [{1}] - it will be serialized instead. Cause: {2}") })
+    String CLIENT_COMMAND_SENDER_PARAMETER_ENCODE_FAILURE = "ClientCommandSender.parameter-encode-failure";
+
+    @I18NMessages( { @I18NMessage("The remote endpoint accepts parameters encoded with the parameter codecs {0}") })
+    String CLIENT_COMMAND_SENDER_REMOTE_PARAMETER_CODECS = "ClientCommandSender.remote-parameter-codecs";
+
+    @I18NMessages( { @I18NMessage("The remote endpoint refused parameters encoded with the parameter codecs {0} - the command will be sent again with serialized parameters. Cause: {1}") })
+    String CLIENT_COMMAND_SENDER_PARAMETER_CODEC_REJECTED = "ClientCommandSender.parameter-codec-rejected";
+
+    @I18NMessages( { @I18NMessage("Received a parameter encoded with the unknown parameter codec [{0}]") })
+    String UNKNOWN_PARAMETER_CODEC = "RemotePojoInvocationCommandService.unknown-parameter-codec";
+
+    @I18NMessages( { @I18NMessage("Added the parameter codec [{0}]") })
+    String SERVICE_CONTAINER_ADDED_PARAMETER_CODEC = "ServiceContainer.added-parameter-codec";
+
     @I18NMessages( { @I18NMessage("Failed to execute remote POJO method [{0}]. Cause: {1}") })
     String CLIENT_REMOTE_POJO_INVOKER_EXECUTION_FAILURE = "ClientRemotePojoFactory.execution-failure";
 
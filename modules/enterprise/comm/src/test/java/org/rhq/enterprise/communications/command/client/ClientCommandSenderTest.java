@@ -20,12 +20,19 @@ package org.rhq.enterprise.communications.command.client;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
+import org.jboss.remoting.invocation.NameBasedInvocation;
 import org.testng.annotations.Test;
+import org.rhq.core.communications.command.codec.ParameterCodec;
 import org.rhq.enterprise.communications.command.Command;
 import org.rhq.enterprise.communications.command.CommandResponse;
 import org.rhq.enterprise.communications.command.CommandType;
 import org.rhq.enterprise.communications.command.impl.generic.GenericCommand;
+import org.rhq.enterprise.communications.command.impl.remotepojo.EncodedParameter;
+import org.rhq.enterprise.communications.command.impl.remotepojo.RemotePojoInvocationCommand;
 
 /**
  * Tests the sender.
@@ -92,10 +99,8 @@ public class ClientCommandSenderTest {
         config.commandSpoolFileMaxSize = 2000000L;
         config.maxConcurrent = 10;
 
-        File cmd_spool_file = getPersistentFifoFile(true);
+        getPersistentFifoFile(true);
         ClientCommandSender sender = new ClientCommandSender(comm, config);
-        PersistentFifo fifo = new PersistentFifo(cmd_spool_file, config.commandSpoolFileMaxSize,
-            config.commandSpoolFilePurgePercentage, false);
 
         // sent 500 guaranteed and 500 volatile commands, ensure we send all of them
         try {
@@ -114,7 +119,8 @@ public class ClientCommandSenderTest {
             // only volatile commands are returned - guaranteed commands are spooled (why did I do this? I lost the FIFO order of the commands now)
             // after drained, the only messages this sender will send are the spooled/guaranteed commands
             LinkedList<Runnable> drained_commands = sender.drainQueuedCommands();
-            assert fifo.count() == 500 : "did not persist enough: " + fifo.count();
+            long spooled = sender.getMetrics().getNumberCommandsSpooled();
+            assert spooled == 500 : "did not persist enough: " + spooled;
             assert drained_commands.size() == 500 : "missing some volatile commands: " + drained_commands.size();
 
             // create a new sender and reconsitute the queue with our old volatile commands, persisted file has the rest
@@ -131,8 +137,7 @@ public class ClientCommandSenderTest {
             assert comm.getSentCount() == 1000 : "should have been able to send all commands with two senders: "
                 + comm.getSentCount();
             assert comm.getSentSuccessfulCount() == 1000;
-            assert fifo.isEmpty();
-            assert fifo.count() == 0; // just checking - making sure isEmpty was right
+            assert sender.getMetrics().getNumberCommandsSpooled() == 0;
         } finally {
             sender.stopSending(false);
             getPersistentFifoFile(true);
@@ -156,10 +161,8 @@ public class ClientCommandSenderTest {
         config.defaultTimeoutMillis = 500L; // default will be less than the time the comm.send will return
         comm.setSleepPeriod(1000L); // simulate the server taking 1sec to process the request
 
-        File cmd_spool_file = getPersistentFifoFile(true);
+        getPersistentFifoFile(true);
         ClientCommandSender sender = new ClientCommandSender(comm, config);
-        PersistentFifo fifo = new PersistentFifo(cmd_spool_file, config.commandSpoolFileMaxSize,
-            config.commandSpoolFilePurgePercentage, false);
 
         try {
             sender.startSending();
@@ -177,7 +180,7 @@ public class ClientCommandSenderTest {
             assert comm.getSentSuccessfulCount() == 0 : "should not have been able to send the command successfully: "
                 + comm.getSentSuccessfulCount();
 
-            assert fifo.count() == 1 : "not sending so we should have spooled that guaranteed command to disk";
+            assert sender.getMetrics().getNumberCommandsSpooled() == 1 : "not sending so we should have spooled that guaranteed command to disk";
         } finally {
             sender.stopSending(false);
             getPersistentFifoFile(true);
@@ -271,7 +274,7 @@ public class ClientCommandSenderTest {
         DummyRemoteCommunicator comm = new DummyRemoteCommunicator();
         GenericCommand command = createGenericCommand();
         ClientCommandSenderConfiguration config = createConfig();
-        File cmd_spool_file = getPersistentFifoFile(true);
+        getPersistentFifoFile(true);
         ClientCommandSender sender = new ClientCommandSender(comm, config);
 
         try {
@@ -283,13 +286,12 @@ public class ClientCommandSenderTest {
 
             sender.sendAsynchGuaranteed(command, null);
 
-            PersistentFifo fifo = new PersistentFifo(cmd_spool_file, config.commandSpoolFileMaxSize,
-                config.commandSpoolFilePurgePercentage, false);
-            assert fifo.count() == 1 : "not sending so we should have spooled that guaranteed command to disk";
+            ClientCommandSenderMetrics metrics = sender.getMetrics();
+            assert metrics.getNumberCommandsSpooled() == 1 : "not sending so we should have spooled that guaranteed command to disk";
             assert comm.getSentCount() == 0 : "should not have sent any command yet";
             sender.startSending();
             Thread.sleep(1000L); // give it time to dequeue and send; there is no throttling enabled so the sending should happen fast
-            assert fifo.count() == 0 : "the command should have been unspooled after the sender was started";
+            assert metrics.getNumberCommandsSpooled() == 0 : "the command should have been unspooled after the sender was started";
             assert comm.getSentCount() == 1 : "should have sent the command by now";
             assert comm.getSentSuccessfulCount() == 1 : "should have sent the command by now";
         } finally {
@@ -310,7 +312,7 @@ public class ClientCommandSenderTest {
         DummyRemoteCommunicator comm = new DummyRemoteCommunicator();
         GenericCommand command = createGenericCommand();
         ClientCommandSenderConfiguration config = createConfig();
-        File cmd_spool_file = getPersistentFifoFile(true);
+        getPersistentFifoFile(true);
         ClientCommandSender sender = new ClientCommandSender(comm, config);
 
         try {
@@ -329,13 +331,12 @@ public class ClientCommandSenderTest {
                 }
             });
 
-            PersistentFifo fifo = new PersistentFifo(cmd_spool_file, config.commandSpoolFileMaxSize,
-                config.commandSpoolFilePurgePercentage, false);
-            assert fifo.count() == 1 : "not sending so we should have spooled that guaranteed command to disk";
+            ClientCommandSenderMetrics metrics = sender.getMetrics();
+            assert metrics.getNumberCommandsSpooled() == 1 : "not sending so we should have spooled that guaranteed command to disk";
             assert comm.getSentCount() == 0 : "should not have sent any command yet";
             sender.startSending();
             Thread.sleep(1000L); // give it time to dequeue and send; there is no throttling enabled so the sending should happen fast
-            assert fifo.count() == 0 : "the command should have been unspooled after the sender was started";
+            assert metrics.getNumberCommandsSpooled() == 0 : "the command should have been unspooled after the sender was started";
             assert comm.getSentCount() == 1 : "should have sent the command by now";
             assert comm.getSentSuccessfulCount() == 1 : "should have sent the command by now";
         } finally {
@@ -346,6 +347,60 @@ public class ClientCommandSenderTest {
         return;
     }
 
+    /**
+     * Tests that remote POJO parameters are encoded when the command is sent, not in the command itself, and that the
+     * command is sent again with its plain parameters when the remote endpoint refuses the encoded ones.
+     *
+     * @throws Exception
+     */
+    public void testSendEncodedParametersRefused() throws Exception {
+        final List<Object> sent_params = new ArrayList<Object>();
+        DummyRemoteCommunicator comm = new DummyRemoteCommunicator() {
+            @Override
+            public CommandResponse send(Command command) throws Exception {
+                Object param = ((RemotePojoInvocationCommand) command).getNameBasedInvocation().getParameters()[0];
+                sent_params.add(param);
+
+                // this is what a remote endpoint that does not know about encoded parameters fails with
+                if (param instanceof EncodedParameter) {
+                    throw new ClassNotFoundException(EncodedParameter.class.getName());
+                }
+
+                return super.send(command);
+            }
+        };
+
+        ClientCommandSender sender = new ClientCommandSender(comm, createConfig());
+        sender.addParameterCodec(new StringCodec());
+        sender.setRemoteParameterCodecs(Collections.singleton(StringCodec.NAME));
+
+        RemotePojoInvocationCommand command = new RemotePojoInvocationCommand();
+        command.setTargetInterfaceName("test");
+        command.setNameBasedInvocation(new NameBasedInvocation("echo", new Object[] { "hello" },
+            new String[] { String.class.getName() }));
+
+        try {
+            sender.startSending();
+
+            CommandResponse response = sender.sendSynch(command);
+            assert response.isSuccessful() : "the plain parameters should have been accepted: " + response;
+            assert sent_params.size() == 2 : "should have sent the command twice: " + sent_params;
+            assert sent_params.get(0) instanceof EncodedParameter : "should have encoded first: " + sent_params;
+            assert "hello".equals(sent_params.get(1)) : "should have sent the plain parameter again: " + sent_params;
+            assert "hello".equals(command.getNameBasedInvocation().getParameters()[0]) : "command itself was encoded";
+
+            // the codec was refused, so nothing gets encoded until the remote endpoint identifies itself again
+            sent_params.clear();
+            sender.sendSynch(command);
+            assert sent_params.size() == 1 : "should not have tried the codec again: " + sent_params;
+            assert "hello".equals(sent_params.get(0)) : "should have sent the plain parameter: " + sent_params;
+        } finally {
+            sender.stopSending(false);
+        }
+
+        return;
+    }
+
     /**
      * Creates a config - caller can change settings as appropriate.
      *
@@ -403,14 +458,35 @@ public class ClientCommandSenderTest {
         if (delete_it) {
             // in case we can't outright delete it, let's first empty it
             try {
-                new PersistentFifo(ret_file, 10000L, 0, false).initializeEmptyFile();
+                new SegmentedPersistentFifo(ret_file, 10000L, 0, false).clear();
             } catch (IOException ignore) {
             }
 
-            // now try to delete it
+            // now try to delete it along with the segment directory
             ret_file.delete();
+            new File(ret_file.getPath() + SegmentedPersistentFifo.DIRECTORY_SUFFIX).delete();
         }
 
         return ret_file;
     }
-}
\ No newline at end of file
+
+    private static class StringCodec implements ParameterCodec {
+        static final String NAME = "test-string-1";
+
+        public String getName() {
+            return NAME;
+        }
+
+        public boolean canEncode(Object parameter) {
+            return parameter instanceof String;
+        }
+
+        public byte[] encode(Object parameter) throws IOException {
+            return ((String) parameter).getBytes("UTF-8");
+        }
+
+        public Object decode(byte[] data) throws IOException {
+            return new String(data, "UTF-8");
+        }
+    }
+}
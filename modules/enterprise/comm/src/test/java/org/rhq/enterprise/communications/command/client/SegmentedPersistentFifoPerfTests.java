@@ -0,0 +1,127 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.communications.command.client;
+
+import java.io.File;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import org.rhq.core.util.file.FileUtil;
+
+/**
+ * Compares the {@link SegmentedPersistentFifo} with the {@link PersistentFifo} the command spool used to be kept in.
+ * Both spool the same entries the way the client command sender does - a burst of puts while the server is down, all
+ * of them taken once it is back - and then alternate puts and takes. The spool is sized so the burst crosses the
+ * purge threshold. These are not run as part of the regular build; run them explicitly with
+ * <code>mvn test -Dtest=SegmentedPersistentFifoPerfTests</code>.
+ */
+public class SegmentedPersistentFifoPerfTests {
+
+    private final Log log = LogFactory.getLog(SegmentedPersistentFifoPerfTests.class);
+
+    private static final long MAX_SIZE = 10000000L;
+    private static final int PURGE_PERCENTAGE = 75;
+    private static final int ALTERNATING = 10000;
+
+    @DataProvider(name = "entries")
+    public Object[][] entries() {
+        // entry count and size; the last one crosses the maximum size
+        return new Object[][] { { 20000, 200 }, { 5000, 1500 }, { 3000, 5000 } };
+    }
+
+    @Test(dataProvider = "entries")
+    public void persistentFifo(int count, int size) throws Exception {
+        File dir = FileUtil.createTempDirectory("PersistentFifoPerfTests", null, null);
+        try {
+            PersistentFifo fifo = new PersistentFifo(new File(dir, "spool.dat"), MAX_SIZE, PURGE_PERCENTAGE, false);
+            byte[][] entries = createEntries(count, size);
+
+            long start = System.nanoTime();
+            for (byte[] entry : entries) {
+                fifo.put(entry);
+            }
+            long spooled = System.nanoTime();
+            long taken = 0;
+            while (fifo.take() != null) {
+                taken++;
+            }
+            long unspooled = System.nanoTime();
+            for (int i = 0; i < ALTERNATING; i++) {
+                fifo.put(entries[i % count]);
+                fifo.take();
+            }
+
+            report("PersistentFifo", count, size, start, spooled, unspooled, System.nanoTime(), taken);
+            fifo.close();
+        } finally {
+            FileUtil.purge(dir, true);
+        }
+    }
+
+    @Test(dataProvider = "entries")
+    public void segmentedPersistentFifo(int count, int size) throws Exception {
+        File dir = FileUtil.createTempDirectory("SegmentedPersistentFifoPerfTests", null, null);
+        try {
+            SegmentedPersistentFifo fifo = new SegmentedPersistentFifo(new File(dir, "spool.dat"), MAX_SIZE,
+                PURGE_PERCENTAGE, false);
+            byte[][] entries = createEntries(count, size);
+
+            long start = System.nanoTime();
+            for (byte[] entry : entries) {
+                fifo.put(entry);
+            }
+            long spooled = System.nanoTime();
+            long taken = 0;
+            while (fifo.take() != null) {
+                taken++;
+            }
+            long unspooled = System.nanoTime();
+            for (int i = 0; i < ALTERNATING; i++) {
+                fifo.put(entries[i % count]);
+                fifo.take();
+            }
+
+            report("SegmentedPersistentFifo", count, size, start, spooled, unspooled, System.nanoTime(), taken);
+        } finally {
+            FileUtil.purge(dir, true);
+        }
+    }
+
+    private byte[][] createEntries(int count, int size) {
+        Random random = new Random(42L);
+        byte[][] entries = new byte[count][];
+        for (int i = 0; i < count; ++i) {
+            entries[i] = new byte[size];
+            random.nextBytes(entries[i]);
+        }
+        return entries;
+    }
+
+    private void report(String name, int count, int size, long start, long spooled, long unspooled, long end,
+        long taken) {
+        log.info(name + " with " + count + " entries of " + size + " bytes: spooling took "
+            + ((spooled - start) / 1000000L) + " ms, unspooling " + taken + " entries took "
+            + ((unspooled - spooled) / 1000000L) + " ms, " + ALTERNATING + " alternating puts and takes took "
+            + ((end - unspooled) / 1000000L) + " ms");
+    }
+}
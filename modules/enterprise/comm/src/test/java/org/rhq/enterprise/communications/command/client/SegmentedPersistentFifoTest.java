@@ -0,0 +1,260 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.communications.command.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.util.file.FileUtil;
+
+/**
+ * Tests the segmented persistent fifo.
+ */
+@Test(groups = "comm.client")
+public class SegmentedPersistentFifoTest {
+
+    private File tmpDir;
+    private File fifoFile;
+
+    @BeforeMethod
+    public void createTmpDir() throws Exception {
+        tmpDir = FileUtil.createTempDirectory("SegmentedPersistentFifoTest", null, null);
+        fifoFile = new File(tmpDir, "TEST.data");
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void deleteTmpDir() {
+        FileUtil.purge(tmpDir, true);
+    }
+
+    public void testFifo() throws Exception {
+        doFifoTests(false);
+    }
+
+    public void testFifoCompressed() throws Exception {
+        doFifoTests(true);
+    }
+
+    public void testEntriesSurviveReopen() throws Exception {
+        SegmentedPersistentFifo fifo = new SegmentedPersistentFifo(fifoFile, 100000L, 75, false);
+        for (int i = 0; i < 1000; i++) {
+            fifo.put(entry(i, 50));
+        }
+        for (int i = 0; i < 300; i++) {
+            assertEquals(fifo.take(), entry(i, 50));
+        }
+
+        fifo = new SegmentedPersistentFifo(fifoFile, 100000L, 75, false);
+        assertEquals(fifo.count(), 700L);
+        fifo.put(entry(1000, 50));
+        for (int i = 300; i <= 1000; i++) {
+            assertEquals(fifo.take(), entry(i, 50));
+        }
+        assertNull(fifo.take());
+    }
+
+    public void testEmptyEntriesSurviveReopen() throws Exception {
+        SegmentedPersistentFifo fifo = new SegmentedPersistentFifo(fifoFile, 100000L, 75, false);
+        fifo.put(new byte[0]);
+        fifo.put(entry(0, 50));
+        fifo.put(new byte[0]);
+        fifo.put(entry(1, 50));
+        assertEquals(fifo.take(), new byte[0]);
+
+        // neither the empty entry nor the taken one may be mistaken for the end of the segment
+        fifo = new SegmentedPersistentFifo(fifoFile, 100000L, 75, false);
+        assertEquals(fifo.count(), 3L);
+        assertEquals(fifo.take(), entry(0, 50));
+        assertEquals(fifo.take(), new byte[0]);
+        assertEquals(fifo.take(), entry(1, 50));
+        assertNull(fifo.take());
+    }
+
+    public void testTornEntryIsDropped() throws Exception {
+        SegmentedPersistentFifo fifo = new SegmentedPersistentFifo(fifoFile, 100000L, 75, false);
+        fifo.put(entry(0, 100));
+        fifo.put(entry(1, 100));
+        fifo.put(entry(2, 100));
+
+        // simulate a crash in the middle of writing the last entry
+        File[] segments = fifo.getDirectory().listFiles();
+        assertEquals(segments.length, 1);
+        RandomAccessFile raf = new RandomAccessFile(segments[0], "rw");
+        try {
+            raf.seek(2 * 108 + 50);
+            int data = raf.read();
+            raf.seek(2 * 108 + 50);
+            raf.write(data + 1);
+        } finally {
+            raf.close();
+        }
+
+        fifo = new SegmentedPersistentFifo(fifoFile, 100000L, 75, false);
+        assertEquals(fifo.count(), 2L);
+        assertEquals(fifo.take(), entry(0, 100));
+        assertEquals(fifo.take(), entry(1, 100));
+        assertNull(fifo.take());
+    }
+
+    public void testSegmentsAreDeletedOnceTaken() throws Exception {
+        // 10000 byte segments
+        SegmentedPersistentFifo fifo = new SegmentedPersistentFifo(fifoFile, 100000L, 75, false);
+        for (int i = 0; i < 50; i++) {
+            fifo.put(entry(i, 992));
+        }
+        assertEquals(fifo.getDirectory().listFiles().length, 5);
+
+        for (int i = 0; i < 25; i++) {
+            fifo.take();
+        }
+        assertEquals(fifo.getDirectory().listFiles().length, 3);
+
+        while (fifo.take() != null) {
+        }
+        // the last segment is kept to write the next entries to
+        assertEquals(fifo.getDirectory().listFiles().length, 1);
+        assertTrue(fifo.isEmpty());
+
+        fifo.put(entry(50, 992));
+        assertEquals(fifo.take(), entry(50, 992));
+    }
+
+    public void testRewoundSegmentSurvivesReopen() throws Exception {
+        // 10000 byte segments, the entries span more than one block of zeros when the segment is rewound
+        SegmentedPersistentFifo fifo = new SegmentedPersistentFifo(fifoFile, 100000L, 75, false);
+        for (int i = 0; i < 20; i++) {
+            fifo.put(entry(i, 392));
+        }
+        while (fifo.take() != null) {
+        }
+        fifo.put(entry(20, 10));
+
+        // none of the old entries may come back after the new, shorter one
+        fifo = new SegmentedPersistentFifo(fifoFile, 100000L, 75, false);
+        assertEquals(fifo.count(), 1L);
+        assertEquals(fifo.take(), entry(20, 10));
+        assertNull(fifo.take());
+    }
+
+    public void testPurgeDeletesOldestSegments() throws Exception {
+        // 4096 byte segments that hold four entries each, purged down to 5000 bytes
+        SegmentedPersistentFifo fifo = new SegmentedPersistentFifo(fifoFile, 10000L, 50, false);
+        for (int i = 0; i < 30; i++) {
+            fifo.put(entry(i, 992));
+            assertTrue(fifo.count() <= 10L, "count " + fifo.count());
+        }
+
+        long count = fifo.count();
+        for (long i = 30 - count; i < 30; i++) {
+            assertEquals(fifo.take(), entry((int) i, 992));
+        }
+        assertNull(fifo.take());
+    }
+
+    public void testEntryLargerThanSegment() throws Exception {
+        SegmentedPersistentFifo fifo = new SegmentedPersistentFifo(fifoFile, 1000000L, 75, false);
+        fifo.put(entry(0, 10));
+        fifo.put(entry(1, 250000));
+        fifo.put(entry(2, 10));
+
+        fifo = new SegmentedPersistentFifo(fifoFile, 1000000L, 75, false);
+        assertEquals(fifo.take(), entry(0, 10));
+        assertEquals(fifo.take(), entry(1, 250000));
+        assertEquals(fifo.take(), entry(2, 10));
+        assertNull(fifo.take());
+    }
+
+    public void testOldSpoolFileIsMigrated() throws Exception {
+        PersistentFifo oldFifo = new PersistentFifo(fifoFile, 100000L, 75, true);
+        for (int i = 0; i < 10; i++) {
+            oldFifo.put(entry(i, 100));
+        }
+        oldFifo.close();
+
+        SegmentedPersistentFifo fifo = new SegmentedPersistentFifo(fifoFile, 100000L, 75, true);
+        assertFalse(fifoFile.exists());
+        assertEquals(fifo.count(), 10L);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(fifo.take(), entry(i, 100));
+        }
+        assertNull(fifo.take());
+    }
+
+    private void doFifoTests(boolean compress) throws Exception {
+        SegmentedPersistentFifo fifo = new SegmentedPersistentFifo(fifoFile, 1000L, 0, compress);
+
+        assertNull(fifo.take());
+        assertTrue(fifo.isEmpty());
+        assertEquals(fifo.count(), 0L);
+
+        fifo.put("Mazz Was Here 1".getBytes());
+        assertFalse(fifo.isEmpty());
+        assertEquals(fifo.count(), 1L);
+        assertEquals(new String(fifo.take()), "Mazz Was Here 1");
+        assertNull(fifo.take());
+        assertTrue(fifo.isEmpty());
+
+        fifo.put("Mazz Was Here 2!".getBytes());
+        fifo.put("Mazz Was Here 3!!".getBytes());
+        fifo.clear();
+        assertNull(fifo.take());
+        assertEquals(fifo.count(), 0L);
+
+        fifo = new SegmentedPersistentFifo(fifoFile, 1000000L, 75, compress);
+        for (int i = 0; i < 50000; i++) {
+            fifo.put(("0123456789012345678901234567890123456789x-" + i).getBytes());
+        }
+        // 50000 entries of about 50 bytes do not fit into 1MB, the oldest ones got purged
+        long count = fifo.count();
+        assertTrue(count < 50000L, "count " + count);
+
+        byte[] data;
+        byte[] last = null;
+        while ((data = fifo.take()) != null) {
+            last = data;
+        }
+        assertEquals(new String(last), "0123456789012345678901234567890123456789x-49999");
+        assertTrue(fifo.isEmpty());
+
+        fifo.putObject(new float[] { 0.0f, 1.1f, 2.2f });
+        fifo.putObject("Mazz Was Here 4");
+        float[] floats = (float[]) fifo.takeObject();
+        assertEquals(floats.length, 3);
+        assertEquals(floats[2], 2.2f);
+        assertEquals(fifo.takeObject(), "Mazz Was Here 4");
+        assertNull(fifo.takeObject());
+    }
+
+    private byte[] entry(int i, int size) {
+        byte[] entry = new byte[size];
+        for (int j = 0; j < size; j++) {
+            entry[j] = (byte) (i + j);
+        }
+        return entry;
+    }
+}
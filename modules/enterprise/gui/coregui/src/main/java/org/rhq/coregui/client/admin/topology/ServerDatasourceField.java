@@ -50,7 +50,9 @@ public enum ServerDatasourceField {
 
     FIELD_AFFINITY_GROUP_ID("affinityGroupId", "affinityGroupId"),
 
-    FIELD_AGENT_COUNT("agentCount", CoreGUI.getMessages().view_adminTopology_server_agentCount());
+    FIELD_AGENT_COUNT("agentCount", CoreGUI.getMessages().view_adminTopology_server_agentCount()),
+
+    FIELD_LOAD("load", CoreGUI.getMessages().view_adminTopology_server_load());
 
     /**
      * Corresponds to a property name of Server (e.g. operationMode).
@@ -19,6 +19,7 @@
 package org.rhq.coregui.client.admin.topology;
 
 import static org.rhq.coregui.client.admin.topology.ServerDatasourceField.FIELD_AGENT_COUNT;
+import static org.rhq.coregui.client.admin.topology.ServerDatasourceField.FIELD_LOAD;
 
 import java.util.List;
 
@@ -72,6 +73,14 @@ public class ServerWithAgentCountDatasource extends
         });
         agentCountField.setShowHover(true);
         fields.add(agentCountField);
+        ListGridField loadField = FIELD_LOAD.getListGridField("75");
+        loadField.setHoverCustomizer(new HoverCustomizer() {
+            public String hoverHTML(Object value, ListGridRecord record, int rowNum, int colNum) {
+                return MSG.view_adminTopology_message_load(record.getAttributeAsString(FIELD_LOAD.propertyName()));
+            }
+        });
+        loadField.setShowHover(true);
+        fields.add(loadField);
         return fields;
     }
 
@@ -113,6 +122,8 @@ public class ServerWithAgentCountDatasource extends
         }
         record = serverDatasource.copyValues(from.getServer());
         record.setAttribute(FIELD_AGENT_COUNT.propertyName(), from.getAgentCount());
+        // two decimals are plenty for a load relative to the average agent
+        record.setAttribute(FIELD_LOAD.propertyName(), Math.round(from.getLoad() * 100.0) / 100.0);
         return record;
     }
 
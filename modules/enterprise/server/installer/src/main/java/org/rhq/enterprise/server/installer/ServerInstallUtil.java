@@ -70,6 +70,7 @@ import org.rhq.core.db.DbUtil;
 import org.rhq.core.db.OracleDatabaseType;
 import org.rhq.core.db.PostgresqlDatabaseType;
 import org.rhq.core.db.setup.DBSetup;
+import org.rhq.core.db.upgrade.TimePartitionedTablesUpgradeTask;
 import org.rhq.core.domain.cloud.StorageNode;
 import org.rhq.core.domain.cloud.StorageNode.OperationMode;
 import org.rhq.core.util.PropertiesFileUpdate;
@@ -1354,6 +1355,20 @@ public class ServerInstallUtil {
             dbsetup.uninstall(dbsetupSchemaXmlFile);
             dbsetup.setup(dbsetupSchemaXmlFile);
             dbsetup.setup(dbsetupDataXmlFile, null, true, false);
+
+            // partitioning cannot be expressed in the dbsetup files, the same upgrade task that converts existing
+            // schemas partitions the new tables
+            Connection conn = null;
+            DatabaseType db = null;
+            try {
+                conn = getDatabaseConnection(dbUrl, userName, password);
+                db = DatabaseTypeFactory.getDatabaseType(conn);
+                new TimePartitionedTablesUpgradeTask().execute(db, conn);
+            } finally {
+                if (null != db) {
+                    db.closeConnection(conn);
+                }
+            }
         } catch (Exception e) {
             LOG.fatal("Cannot install the database schema - the server will not run properly.", e);
             throw e;
@@ -0,0 +1,264 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.measurement;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.auth.Subject;
+import org.rhq.core.domain.criteria.AvailabilityCriteria;
+import org.rhq.core.domain.discovery.AvailabilityReport;
+import org.rhq.core.domain.measurement.Availability;
+import org.rhq.core.domain.measurement.AvailabilityType;
+import org.rhq.core.domain.resource.Agent;
+import org.rhq.core.domain.resource.InventoryStatus;
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceCategory;
+import org.rhq.core.domain.resource.ResourceType;
+import org.rhq.core.domain.util.PageOrdering;
+import org.rhq.enterprise.server.cloud.StatusManagerLocal;
+import org.rhq.enterprise.server.measurement.AvailabilityManagerBean.MergeInfo;
+import org.rhq.enterprise.server.measurement.AvailabilityStateCache.State;
+import org.rhq.enterprise.server.resource.ResourceManagerLocal;
+import org.rhq.enterprise.server.test.AbstractEJB3Test;
+import org.rhq.enterprise.server.test.TestServerPluginService;
+import org.rhq.enterprise.server.util.LookupUtil;
+
+/**
+ * Tests the merge of plain availability transitions with JDBC batches, and its fallback to the entity based merge
+ * for the transitions whose latest availability is no longer the cached one, as well as the agent status telling
+ * other servers to drop their cached availabilities. Lives in the package of the bean to be able to hand it a
+ * {@link MergeInfo}.
+ */
+@Test
+public class AvailabilityMergeTransitionsTest extends AbstractEJB3Test {
+
+    private AvailabilityManagerLocal availabilityManager;
+    private ResourceManagerLocal resourceManager;
+    private Subject overlord;
+
+    private Agent agent;
+    private ResourceType resourceType;
+    private Resource platform;
+    private List<Resource> resources;
+
+    private TestServerPluginService testServerPluginService;
+
+    @Override
+    protected void beforeMethod() throws Exception {
+        prepareScheduler();
+        AvailabilityStateCache.getInstance().clear();
+
+        availabilityManager = LookupUtil.getAvailabilityManager();
+        resourceManager = LookupUtil.getResourceManager();
+        overlord = LookupUtil.getSubjectManager().getOverlord();
+
+        testServerPluginService = new TestServerPluginService(getTempDir());
+        prepareCustomServerPluginService(testServerPluginService);
+        testServerPluginService.masterConfig.getPluginDirectory().mkdirs();
+        testServerPluginService.startMasterPluginContainer();
+
+        createInventory();
+    }
+
+    @Override
+    protected void afterMethod() throws Exception {
+        try {
+            prepareForTestAgents();
+
+            if (platform != null) {
+                // this also deletes the children and the agent
+                List<Integer> deletedIds = resourceManager.uninventoryResource(overlord, platform.getId());
+                for (Integer deletedResourceId : deletedIds) {
+                    resourceManager.uninventoryResourceAsyncWork(overlord, deletedResourceId);
+                }
+                platform = null;
+            }
+
+            if (resourceType != null) {
+                getTransactionManager().begin();
+                em.remove(em.find(ResourceType.class, resourceType.getId()));
+                getTransactionManager().commit();
+                resourceType = null;
+            }
+        } finally {
+            AvailabilityStateCache.getInstance().clear();
+            unprepareForTestAgents();
+            unprepareScheduler();
+            unprepareServerPluginService();
+            testServerPluginService.stopMasterPluginContainer();
+        }
+    }
+
+    public void transitionsAreWrittenWithJdbcBatches() throws Exception {
+        long up = System.currentTimeMillis() - 60000L;
+        long down = up + 30000L;
+
+        // the first report loads the cache, the second one is a plain transition of every resource
+        mergeReport(up, AvailabilityType.UP);
+        mergeReport(down, AvailabilityType.DOWN);
+
+        Map<Integer, State> cachedStates = AvailabilityStateCache.getInstance().getPartition(agent.getId());
+        assertNotNull("The states of the agent should be cached", cachedStates);
+        for (Resource resource : resources) {
+            assertTimeline(resource, up, down);
+            assertEquals(AvailabilityType.DOWN,
+                availabilityManager.getCurrentAvailabilityTypeForResource(overlord, resource.getId()));
+            assertEquals(AvailabilityType.DOWN, cachedStates.get(resource.getId()).getAvailabilityType());
+            assertEquals(down, cachedStates.get(resource.getId()).getStartTime());
+        }
+    }
+
+    public void staleTransitionsFallBackToTheEntityMerge() throws Exception {
+        long up = System.currentTimeMillis() - 60000L;
+        long down = up + 30000L;
+        mergeReport(up, AvailabilityType.UP);
+
+        // the database changed after the cache was checked, the platform's latest avail started elsewhere
+        Map<Integer, State> cachedStates = new HashMap<Integer, State>();
+        for (Resource resource : resources) {
+            cachedStates.put(resource.getId(), new State(AvailabilityType.UP, up));
+        }
+        cachedStates.put(platform.getId(), new State(AvailabilityType.UP, up - 1000L));
+
+        AvailabilityReport report = new AvailabilityReport(true, agent.getName());
+        MergeInfo mergeInfo = new MergeInfo(report);
+        mergeInfo.setCachedStates(cachedStates);
+        List<Availability> availabilities = new ArrayList<Availability>();
+        for (Resource resource : resources) {
+            availabilities.add(new Availability(new Resource(resource.getId()), down, AvailabilityType.DOWN));
+        }
+
+        availabilityManager.mergeAvailabilitiesInNewTransaction(availabilities, mergeInfo);
+
+        assertEquals(resources.size(), mergeInfo.getNumInserted());
+        for (Resource resource : resources) {
+            assertTimeline(resource, up, down);
+            assertEquals(AvailabilityType.DOWN,
+                availabilityManager.getCurrentAvailabilityTypeForResource(overlord, resource.getId()));
+            State merged = mergeInfo.getMergedStates().get(resource.getId());
+            assertEquals(AvailabilityType.DOWN, merged.getAvailabilityType());
+            assertEquals(down, merged.getStartTime());
+        }
+    }
+
+    public void availabilitiesSetElsewhereMarkTheAgentStatus() throws Exception {
+        StatusManagerLocal statusManager = LookupUtil.getStatusManager();
+
+        statusManager.updateAvailabilityByAgent(agent.getId());
+        statusManager.updateAvailabilityByAgent(agent.getId());
+        assertEquals(Agent.Status.AVAILABILITY_UPDATED.mask, getAgentStatus());
+
+        // the bit adds to the other bits, and a full reload supersedes it
+        setAgentStatus(Agent.Status.ALERT_DEFINITION.mask);
+        statusManager.updateAvailabilityByAgent(agent.getId());
+        assertEquals(Agent.Status.ALERT_DEFINITION.mask | Agent.Status.AVAILABILITY_UPDATED.mask, getAgentStatus());
+
+        setAgentStatus(-1);
+        statusManager.updateAvailabilityByAgent(agent.getId());
+        assertEquals(-1, getAgentStatus());
+    }
+
+    private int getAgentStatus() throws Exception {
+        getTransactionManager().begin();
+        try {
+            return (Integer) em.createQuery("SELECT a.status FROM Agent a WHERE a.id = :agentId")
+                .setParameter("agentId", agent.getId()).getSingleResult();
+        } finally {
+            getTransactionManager().commit();
+        }
+    }
+
+    private void setAgentStatus(int status) throws Exception {
+        getTransactionManager().begin();
+        try {
+            em.createQuery("UPDATE Agent a SET a.status = :status WHERE a.id = :agentId")
+                .setParameter("status", status).setParameter("agentId", agent.getId()).executeUpdate();
+        } finally {
+            getTransactionManager().commit();
+        }
+    }
+
+    private void mergeReport(long startTime, AvailabilityType type) {
+        AvailabilityReport report = new AvailabilityReport(true, agent.getName());
+        for (Resource resource : resources) {
+            report.addAvailability(new AvailabilityReport.Datum(resource.getId(), type, startTime));
+        }
+        availabilityManager.mergeAvailabilityReport(report);
+    }
+
+    // UNKNOWN from the time the resource was created, UP from up to down and DOWN from then on
+    private void assertTimeline(Resource resource, long up, long down) {
+        AvailabilityCriteria criteria = new AvailabilityCriteria();
+        criteria.addFilterResourceId(resource.getId());
+        criteria.addSortStartTime(PageOrdering.ASC);
+        List<Availability> avails = availabilityManager.findAvailabilityByCriteria(overlord, criteria);
+
+        assertEquals("Unexpected timeline " + avails, 3, avails.size());
+        assertEquals(AvailabilityType.UP, avails.get(1).getAvailabilityType());
+        assertEquals(up, avails.get(1).getStartTime().longValue());
+        assertEquals(down, avails.get(1).getEndTime().longValue());
+        assertEquals(AvailabilityType.DOWN, avails.get(2).getAvailabilityType());
+        assertEquals(down, avails.get(2).getStartTime().longValue());
+        assertNull(avails.get(2).getEndTime());
+    }
+
+    private void createInventory() throws Exception {
+        getTransactionManager().begin();
+        try {
+            String prefix = getClass().getSimpleName() + "_" + new Random().nextInt() + "_";
+            agent = new Agent(prefix + "agent", prefix + "host", 1234, "", prefix + "token");
+            em.persist(agent);
+
+            resourceType = new ResourceType(prefix + "type", prefix + "plugin", ResourceCategory.PLATFORM, null);
+            em.persist(resourceType);
+
+            resources = new ArrayList<Resource>();
+            platform = createResource(prefix + "platform", null);
+            for (int i = 0; i < 3; ++i) {
+                createResource(prefix + "child" + i, platform);
+            }
+
+            em.flush();
+            getTransactionManager().commit();
+        } catch (Exception e) {
+            getTransactionManager().rollback();
+            throw e;
+        }
+    }
+
+    private Resource createResource(String key, Resource parent) {
+        Resource resource = new Resource(key, key, resourceType);
+        resource.setUuid("" + new Random().nextInt());
+        resource.setAgent(agent);
+        resource.setInventoryStatus(InventoryStatus.COMMITTED);
+        if (null != parent) {
+            parent.addChildResource(resource);
+        }
+        em.persist(resource);
+        resources.add(resource);
+        return resource;
+    }
+}
@@ -49,6 +49,7 @@ import org.rhq.core.domain.resource.group.composite.ResourceGroupComposite.Group
 import org.rhq.core.domain.util.PageOrdering;
 import org.rhq.enterprise.server.measurement.AvailabilityManagerLocal;
 import org.rhq.enterprise.server.measurement.AvailabilityPoint;
+import org.rhq.enterprise.server.measurement.AvailabilityStateCache;
 import org.rhq.enterprise.server.purge.PurgeManagerLocal;
 import org.rhq.enterprise.server.resource.ResourceAvailabilityManagerLocal;
 import org.rhq.enterprise.server.resource.ResourceManagerLocal;
@@ -94,6 +95,9 @@ public class AvailabilityManagerTest extends AbstractEJB3Test {
         try {
             prepareScheduler();
 
+            // tests write avails behind the server's back, never start from states cached by another test
+            AvailabilityStateCache.getInstance().clear();
+
             this.availabilityManager = LookupUtil.getAvailabilityManager();
             this.purgeManager = LookupUtil.getPurgeManager();
             this.resourceAvailabilityManager = LookupUtil.getResourceAvailabilityManager();
@@ -18,7 +18,9 @@
  */
 package org.rhq.enterprise.server.resource.test;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
 import java.util.UUID;
@@ -170,6 +172,114 @@ public class ResourceManagerBeanTest extends UpdatePluginMetadataTestBase {
         }
     }
 
+    public void testResourceAncestorsFollowMovedSubtree() throws Exception {
+        // platform -> a -> b -> c and platform -> d
+        Resource[] hierarchy = givenATrackedResourceHierarchy(false);
+        Resource platform = hierarchy[0], a = hierarchy[1], b = hierarchy[2], c = hierarchy[3], d = hierarchy[4];
+        try {
+            assertTrue(resourceManager.isResourceAncestorTracked(c.getId()));
+            assertEquals(Arrays.asList(b.getId(), a.getId(), platform.getId()),
+                resourceManager.getResourceIdLineage(c.getId()));
+
+            // when b moves under d, c must move with it
+            getTransactionManager().begin();
+            try {
+                Resource attachedB = em.find(Resource.class, b.getId());
+                attachedB.setParentResource(em.find(Resource.class, d.getId()));
+                resourceManager.updateResourceAncestors(attachedB);
+                getTransactionManager().commit();
+            } catch (Exception e) {
+                getTransactionManager().rollback();
+                throw e;
+            }
+
+            assertEquals(Arrays.asList(d.getId(), platform.getId()), resourceManager.getResourceIdLineage(b.getId()));
+            assertEquals(Arrays.asList(b.getId(), d.getId(), platform.getId()),
+                resourceManager.getResourceIdLineage(c.getId()));
+            assertEquals(Arrays.asList(a.getId()),
+                resourceManager.getResourceDescendantsByTypeAndName(getOverlord(), a.getId(), null, null));
+            assertEquals(Arrays.asList(d.getId(), b.getId(), c.getId()),
+                resourceManager.getResourceDescendantsByTypeAndName(getOverlord(), d.getId(), null, null));
+        } finally {
+            deleteTrackedResourceHierarchy(hierarchy);
+        }
+    }
+
+    public void testResourceAncestorsOfMergeBatch() throws Exception {
+        // platform -> a -> b -> c and platform -> d, added to the closure all at once like a discovery merge batch
+        Resource[] hierarchy = givenATrackedResourceHierarchy(true);
+        Resource platform = hierarchy[0], a = hierarchy[1], b = hierarchy[2], c = hierarchy[3], d = hierarchy[4];
+        try {
+            for (Resource resource : hierarchy) {
+                assertTrue(resourceManager.isResourceAncestorTracked(resource.getId()));
+            }
+            assertEquals(Arrays.asList(b.getId(), a.getId(), platform.getId()),
+                resourceManager.getResourceIdLineage(c.getId()));
+            assertEquals(Arrays.asList(platform.getId()), resourceManager.getResourceIdLineage(d.getId()));
+            assertEquals(Arrays.asList(a.getId(), b.getId(), c.getId()),
+                resourceManager.getResourceDescendantsByTypeAndName(getOverlord(), a.getId(), null, null));
+        } finally {
+            deleteTrackedResourceHierarchy(hierarchy);
+        }
+    }
+
+    public void testResourceAncestorsDroppedOnUninventory() throws Exception {
+        Resource[] hierarchy = givenATrackedResourceHierarchy(false);
+        Resource platform = hierarchy[0], a = hierarchy[1], b = hierarchy[2], c = hierarchy[3], d = hierarchy[4];
+        try {
+            List<Integer> uninventoried = resourceManager.uninventoryResource(getOverlord(), b.getId());
+            assertEquals(2, uninventoried.size());
+
+            assertFalse(resourceManager.isResourceAncestorTracked(b.getId()));
+            assertFalse(resourceManager.isResourceAncestorTracked(c.getId()));
+            assertTrue(resourceManager.isResourceAncestorTracked(a.getId()));
+            assertEquals(Arrays.asList(a.getId()),
+                resourceManager.getResourceDescendantsByTypeAndName(getOverlord(), a.getId(), null, null));
+            // siblings at the same depth come back in no particular order
+            assertEquals(new HashSet<Integer>(Arrays.asList(platform.getId(), a.getId(), d.getId())),
+                new HashSet<Integer>(resourceManager.getResourceDescendantsByTypeAndName(getOverlord(),
+                    platform.getId(), null, null)));
+
+            for (Integer resourceId : uninventoried) {
+                resourceManager.uninventoryResourceAsyncWork(getOverlord(), resourceId);
+            }
+        } finally {
+            deleteTrackedResourceHierarchy(hierarchy);
+        }
+    }
+
+    public void testRecursiveGroupWithResourcesMissingFromAncestors() throws Exception {
+        // resources persisted directly are not in the hierarchy closure, the old recursive queries must find them
+        int leafResourceId = givenASampleResourceHierarchy();
+        List<Resource> resourceLineage = resourceManager.getResourceLineage(leafResourceId);
+        Resource platform = resourceLineage.get(0);
+        assertFalse(resourceManager.isResourceAncestorTracked(platform.getId()));
+
+        ResourceGroup recursiveGroup = new ResourceGroup("testRecursiveGroup" + System.currentTimeMillis());
+        recursiveGroup.setRecursive(true);
+        groupManager.createResourceGroup(getOverlord(), recursiveGroup);
+        try {
+            groupManager.addResourcesToGroup(getOverlord(), recursiveGroup.getId(), new int[] { platform.getId() });
+
+            ResourceGroupCriteria criteria = new ResourceGroupCriteria();
+            criteria.addFilterId(recursiveGroup.getId());
+            criteria.fetchImplicitResources(true);
+            PageList<ResourceGroup> groups = groupManager.findResourceGroupsByCriteria(getOverlord(), criteria);
+            assertEquals("The platform and all its descendants should be implicit members", 4, groups.get(0)
+                .getImplicitResources().size());
+
+            groupManager.removeResourcesFromGroup(getOverlord(), recursiveGroup.getId(),
+                new int[] { platform.getId() });
+            groups = groupManager.findResourceGroupsByCriteria(getOverlord(), criteria);
+            assertEquals(0, groups.get(0).getImplicitResources().size());
+        } finally {
+            groupManager.deleteResourceGroup(getOverlord(), recursiveGroup.getId());
+            for (int i = resourceLineage.size() - 1; i >= 0; i--) {
+                deleteNewResourceAgentResourceType(resourceLineage.get(i));
+            }
+        }
+    }
+
     // Make sure our application exceptions are not wrapped
     public void bz886850Test() {
         try {
@@ -455,6 +565,75 @@ public class ResourceManagerBeanTest extends UpdatePluginMetadataTestBase {
         return leafResourceId;
     }
 
+    /**
+     * @param  inBatch if true the resources are recorded all at once, otherwise one by one
+     *
+     * @return platform -> a -> b -> c and platform -> d, all recorded in the resource hierarchy closure
+     */
+    private Resource[] givenATrackedResourceHierarchy(boolean inBatch) throws Exception {
+        getTransactionManager().begin();
+        try {
+            long now = System.currentTimeMillis();
+            ResourceType platformType = createResourceType("platform" + now, "test", null, ResourceCategory.PLATFORM);
+            ResourceType serverType = createResourceType("server" + now, "test", platformType, ResourceCategory.SERVER);
+            ResourceType serviceType = createResourceType("service" + now, "test", serverType,
+                ResourceCategory.SERVICE);
+            Agent agent = new Agent("agent" + now, "host" + now, 1, "", "token" + now);
+            em.persist(agent);
+            em.flush();
+
+            Resource platform = createResource(platformType, agent, "platform" + now, "platform", null);
+            Resource a = createResource(serverType, agent, "a" + now, "a", platform);
+            Resource b = createResource(serviceType, agent, "b" + now, "b", a);
+            Resource c = createResource(serviceType, agent, "c" + now, "c", b);
+            Resource d = createResource(serverType, agent, "d" + now, "d", platform);
+            Resource[] hierarchy = new Resource[] { platform, a, b, c, d };
+            for (Resource resource : hierarchy) {
+                resource.setInventoryStatus(InventoryStatus.COMMITTED);
+                if (!inBatch) {
+                    resourceManager.updateResourceAncestors(resource);
+                }
+            }
+            if (inBatch) {
+                // parents come before their children
+                resourceManager.updateResourceAncestors(Arrays.asList(hierarchy));
+            }
+
+            getTransactionManager().commit();
+            return hierarchy;
+        } catch (Exception e) {
+            getTransactionManager().rollback();
+            throw e;
+        }
+    }
+
+    private void deleteTrackedResourceHierarchy(Resource[] hierarchy) throws Exception {
+        getTransactionManager().begin();
+        try {
+            List<Integer> deletedIds = resourceManager.uninventoryResource(getOverlord(), hierarchy[0].getId());
+            for (Integer deletedResourceId : deletedIds) {
+                resourceManager.uninventoryResourceAsyncWork(getOverlord(), deletedResourceId);
+            }
+            em.flush();
+
+            // the platform, server and service types, in reverse order of creation
+            int[] typeIds = { hierarchy[3].getResourceType().getId(), hierarchy[1].getResourceType().getId(),
+                hierarchy[0].getResourceType().getId() };
+            for (int typeId : typeIds) {
+                em.remove(em.find(ResourceType.class, typeId));
+            }
+            em.flush();
+
+            getTransactionManager().commit();
+        } catch (Exception e) {
+            try {
+                System.out.println("CANNOT CLEAN UP TEST: Cause: " + e);
+                getTransactionManager().rollback();
+            } catch (Exception ignore) {
+            }
+        }
+    }
+
     private Resource createResource(ResourceType platformType, Agent agent, String resourceKey, String resourceName,
         Resource parent) {
         Resource resource = new Resource(resourceKey, resourceName, platformType);
@@ -144,13 +144,37 @@ public class ResourceTreeHelper {
         }
 
         // only flush when we are in persisting mode
-        if (entityManager != null)
+        if (entityManager != null) {
             entityManager.flush();
 
+            // record the hierarchy closure the way inventory would, parents before their children
+            for (Resource root : roots) {
+                persistAncestors(entityManager, root);
+            }
+        }
+
         return roots;
     }
 
-    public static void deleteForest(EntityManager entityManager, List<Resource> roots) {
+    private static void persistAncestors(EntityManager entityManager, Resource resource) {
+        Query insertSelf = entityManager.createNativeQuery(Resource.QUERY_NATIVE_INSERT_ANCESTOR_SELF);
+        insertSelf.setParameter("resourceId", resource.getId());
+        insertSelf.executeUpdate();
+
+        Resource parent = resource.getParentResource();
+        if (parent != null) {
+            Query link = entityManager.createNativeQuery(Resource.QUERY_NATIVE_INSERT_ANCESTORS_OF_SUBTREE);
+            link.setParameter("parentId", parent.getId());
+            link.setParameter("resourceId", resource.getId());
+            link.executeUpdate();
+        }
+
+        for (Resource child : resource.getChildResources()) {
+            persistAncestors(entityManager, child);
+        }
+    }
+
+        public static void deleteForest(EntityManager entityManager, List<Resource> roots) {
 
         for (Resource root : roots) {
             Resource doomedRoot = entityManager.find(Resource.class, root.getId());
@@ -18,6 +18,9 @@
  */
 package org.rhq.enterprise.server.alert;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -85,11 +88,18 @@ public class AlertConditionManagerBean implements AlertConditionManagerLocal {
         return entityManager.find(AlertCondition.class, alertConditionId);
     }
 
-    @SuppressWarnings("unchecked")
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     @Override
     public PageList<? extends AbstractAlertConditionCategoryComposite> getAlertConditionComposites(Subject user,
         Integer agentId, AlertConditionCategory category, PageControl pageControl) {
+        return getAlertConditionComposites(user, agentId, category, null, pageControl);
+    }
+
+    @SuppressWarnings("unchecked")
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    @Override
+    public PageList<? extends AbstractAlertConditionCategoryComposite> getAlertConditionComposites(Subject user,
+        Integer agentId, AlertConditionCategory category, List<Integer> alertDefinitionIds, PageControl pageControl) {
         if (authorizationManager.isOverlord(user) == false) {
             throw new PermissionException("User [" + user.getName() + "] does not have permission to call "
                 + "getAlertConditionComposites; only the overlord has that right");
@@ -154,6 +164,15 @@ public class AlertConditionManagerBean implements AlertConditionManagerLocal {
         query.setParameter("agentId", agentId);
         queryCount.setParameter("agentId", agentId);
 
+        // IN clauses must not be empty, the id of the filter is never used when all definitions are returned
+        List<Integer> definitionFilter = (alertDefinitionIds == null) ? Collections.singletonList(0)
+            : alertDefinitionIds;
+        int allAlertDefinitions = (alertDefinitionIds == null) ? 1 : 0;
+        query.setParameter("alertDefinitionIds", definitionFilter);
+        query.setParameter("allAlertDefinitions", allAlertDefinitions);
+        queryCount.setParameter("alertDefinitionIds", definitionFilter);
+        queryCount.setParameter("allAlertDefinitions", allAlertDefinitions);
+
         long totalCount = (Long) queryCount.getSingleResult();
         List<? extends AbstractAlertConditionCategoryComposite> list = query.getResultList();
         LOG.debug("Found " + totalCount + " elements of type '" + category + "', list was size " + list.size());
@@ -161,6 +180,22 @@ public class AlertConditionManagerBean implements AlertConditionManagerLocal {
         return new PageList<AbstractAlertConditionCategoryComposite>(list, (int) totalCount, pageControl);
     }
 
+    @SuppressWarnings("unchecked")
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    @Override
+    public List<Object[]> getAlertConditionCacheState(Subject user, int agentId,
+        Collection<AlertConditionCategory> categories) {
+        if (authorizationManager.isOverlord(user) == false) {
+            throw new PermissionException("User [" + user.getName() + "] does not have permission to call "
+                + "getAlertConditionCacheState; only the overlord has that right");
+        }
+
+        Query query = entityManager.createNamedQuery(AlertCondition.QUERY_FIND_CACHE_STATE_BY_AGENT);
+        query.setParameter("agentId", agentId);
+        query.setParameter("categories", new ArrayList<AlertConditionCategory>(categories));
+        return query.getResultList();
+    }
+
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     @Override
     public InventoryStatus getResourceStatusByConditionId(int alertConditionId) {
@@ -18,6 +18,9 @@
  */
 package org.rhq.enterprise.server.alert;
 
+import java.util.Collection;
+import java.util.List;
+
 import javax.ejb.Local;
 
 import org.rhq.core.domain.alert.AlertCondition;
@@ -42,6 +45,23 @@ public interface AlertConditionManagerLocal {
     PageList<? extends AbstractAlertConditionCategoryComposite> getAlertConditionComposites(Subject user,
         Integer agentId, AlertConditionCategory category, PageControl pageControl);
 
+    /**
+     * Like {@link #getAlertConditionComposites(Subject, Integer, AlertConditionCategory, PageControl)}, but only
+     * returns the conditions of the given alert definitions.
+     *
+     * @param alertDefinitionIds the alert definitions to return the conditions of, or null for all of them; at most
+     * 1000 ids can be passed at once
+     */
+    PageList<? extends AbstractAlertConditionCategoryComposite> getAlertConditionComposites(Subject user,
+        Integer agentId, AlertConditionCategory category, List<Integer> alertDefinitionIds, PageControl pageControl);
+
+    /**
+     * Returns what the condition caches of an agent are loaded from, in a form that is cheap to query and compare:
+     * one row per condition the composite queries would consider, holding the condition id, the alert definition id
+     * and the modification time of the alert definition.
+     */
+    List<Object[]> getAlertConditionCacheState(Subject user, int agentId, Collection<AlertConditionCategory> categories);
+
     InventoryStatus getResourceStatusByConditionId(int alertConditionId);
 
     int purgeOrphanedAlertConditions();
@@ -876,9 +876,9 @@ public class AlertDefinitionManagerBean implements AlertDefinitionManagerLocal,
             if (alertDefinition.getResource() != null) {
                 int resourceId = alertDefinition.getResource().getId();
                 if (LOG.isDebugEnabled()) {
-                    LOG.debug("Invoking... agentStatusManager.updateByResource(" + resourceId + ")");
+                    LOG.debug("Invoking... agentStatusManager.updateByNewAlertDefinition(" + resourceId + ")");
                 }
-                agentStatusManager.updateByResource(subject, resourceId);
+                agentStatusManager.updateByNewAlertDefinition(subject, resourceId);
             } else {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("notifyAlertConditionCacheManager skipping alert template or group alert definition");
@@ -18,6 +18,10 @@
  */
 package org.rhq.enterprise.server.alert;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
@@ -60,6 +64,31 @@ public class CachedConditionManagerBean implements CachedConditionManagerLocal {
     @Override
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public Alert processCachedConditionMessage(AbstractAlertConditionMessage conditionMessage, Integer definitionId) {
+        return processMessage(conditionMessage, definitionId);
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public List<Alert> processCachedConditionMessages(List<AbstractAlertConditionMessage> conditionMessages,
+        Map<Integer, Integer> definitionIds) {
+        List<Alert> result = new ArrayList<Alert>();
+
+        for (AbstractAlertConditionMessage conditionMessage : conditionMessages) {
+            Integer definitionId = definitionIds.get(conditionMessage.getAlertConditionId());
+            if (definitionId == null) {
+                continue; // the consumer already decided to discard this one
+            }
+
+            Alert alert = processMessage(conditionMessage, definitionId);
+            if (alert != null) {
+                result.add(alert);
+            }
+        }
+
+        return result;
+    }
+
+    private Alert processMessage(AbstractAlertConditionMessage conditionMessage, Integer definitionId) {
         Alert result = null;
 
         /*
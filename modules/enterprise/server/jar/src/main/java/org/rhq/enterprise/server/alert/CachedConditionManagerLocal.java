@@ -18,6 +18,9 @@
  */
 package org.rhq.enterprise.server.alert;
 
+import java.util.List;
+import java.util.Map;
+
 import javax.ejb.Local;
 import javax.ejb.TransactionAttributeType;
 
@@ -42,4 +45,16 @@ public interface CachedConditionManagerLocal {
      * @return the newly fired alert resulting from the condition message, or null if no alert was fired.
      */
     Alert processCachedConditionMessage(AbstractAlertConditionMessage conditionMessage, Integer definitionId);
+
+    /**
+     * Processes the messages of one batch, in the given order, in one new transaction. Just like
+     * {@link #processCachedConditionMessage(AbstractAlertConditionMessage, Integer)}, everything is visible to the
+     * caller and other threads once this method completes.
+     *
+     * @param conditionMessages the messages to process, usually ordered by timestamp
+     * @param definitionIds the alert definition id of each message's condition, keyed by condition id
+     * @return the newly fired alerts, in the order they were fired; empty if no alert was fired.
+     */
+    List<Alert> processCachedConditionMessages(List<AbstractAlertConditionMessage> conditionMessages,
+        Map<Integer, Integer> definitionIds);
 }
@@ -106,6 +106,10 @@ public class AlertConditionCacheManagerBean implements AlertConditionCacheManage
         AlertConditionCacheCoordinator.getInstance().reloadCachesForAgent(agentId);
     }
 
+    public void refreshCachesForAgent(int agentId) {
+        AlertConditionCacheCoordinator.getInstance().refreshCachesForAgent(agentId);
+    }
+
     public void reloadGlobalCache() {
         AlertConditionCacheCoordinator.getInstance().reloadGlobalCache();
     }
@@ -115,6 +115,13 @@ public interface AlertConditionCacheManagerLocal {
 
     void reloadCachesForAgent(int agentId);
 
+    /**
+     * Only brings the conditions of the alert definitions that were created, updated or deleted since the caches of
+     * the agent were loaded up to date; the conditions of all other alert definitions keep their state. Reloads the
+     * caches if they were not loaded yet, or if they can't be refreshed.
+     */
+    void refreshCachesForAgent(int agentId);
+
     void reloadGlobalCache();
 
     void reloadAllCaches();
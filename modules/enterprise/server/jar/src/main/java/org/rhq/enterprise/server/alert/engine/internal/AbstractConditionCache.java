@@ -26,8 +26,13 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.rhq.core.domain.alert.AlertConditionOperator;
+import org.rhq.core.domain.measurement.MeasurementData;
 import org.rhq.enterprise.server.alert.engine.AlertConditionCacheStats;
+import org.rhq.enterprise.server.alert.engine.jms.AlertConditionBatchTracker;
 import org.rhq.enterprise.server.alert.engine.jms.CachedConditionProducerLocal;
+import org.rhq.enterprise.server.alert.engine.jms.model.ActiveAlertConditionMessage;
+import org.rhq.enterprise.server.alert.engine.jms.model.AlertConditionMessageBatch;
+import org.rhq.enterprise.server.alert.engine.jms.model.InactiveAlertConditionMessage;
 import org.rhq.enterprise.server.alert.engine.model.AbstractCacheElement;
 import org.rhq.enterprise.server.alert.engine.model.CacheElementActivity;
 import org.rhq.enterprise.server.util.LookupUtil;
@@ -40,6 +45,23 @@ abstract class AbstractConditionCache {
     static final Log log = LogFactory.getLog(AlertConditionCacheCoordinator.class);
     static final int PAGE_SIZE = 250;
 
+    /**
+     * The maximum time to wait for a batch of alert condition messages to be processed, see
+     * {@link #sendMessages(AlertConditionMessageBatch, boolean)}.
+     */
+    static final long BATCH_PROCESSING_TIMEOUT;
+
+    static {
+        long batchProcessingTimeout = 10000L;
+        try {
+            batchProcessingTimeout = Long.parseLong(System.getProperty("rhq.server.alerted.event.process.timeout",
+                "10000"));
+        } catch (Throwable t) {
+            //
+        }
+        BATCH_PROCESSING_TIMEOUT = batchProcessingTimeout;
+    }
+
     private CachedConditionProducerLocal cachedConditionProducer;
 
     public AbstractConditionCache() {
@@ -47,34 +69,26 @@ abstract class AbstractConditionCache {
     }
 
     <T extends AbstractCacheElement<S>, S> void processCacheElements(List<T> cacheElements, S providedValue,
-        long timestamp, AlertConditionCacheStats stats, Object... extraParams) {
+        long timestamp, AlertConditionMessageBatch messages, AlertConditionCacheStats stats, Object... extraParams) {
         if (cacheElements == null) {
             return; // nothing to do
         }
 
-        int errors = 0;
-
         for (T cacheElement : cacheElements) {
             boolean matched = cacheElement.process(providedValue, extraParams);
 
-            if (matched) // send positive event in case of a match
+            if (matched) // positive event in case of a match
             {
-                try {
-                    /*
-                     * Set the active property for alertCondition-based cache elements, and send it on its way;
-                     * Thus, even if the element is already active, we're going to send another message with the new
-                     * value
-                     */
-                    cacheElement.setActivity(CacheElementActivity.ACTIVE); // no harm to always set active (though, technically, STATELESS operators don't need it)
-                    cachedConditionProducer.sendActivateAlertConditionMessage(
-                        cacheElement.getAlertConditionTriggerId(), timestamp,
-                        cacheElement.convertValueToString(providedValue), extraParams);
-
-                    stats.matched++;
-                } catch (Exception e) {
-                    log.error("Error processing matched cache element '" + cacheElement + "': " + e.getMessage());
-                    errors++;
-                }
+                /*
+                 * Set the active property for alertCondition-based cache elements, and add it to the batch;
+                 * Thus, even if the element is already active, we're going to send another message with the new
+                 * value
+                 */
+                cacheElement.setActivity(CacheElementActivity.ACTIVE); // no harm to always set active (though, technically, STATELESS operators don't need it)
+                messages.add(new ActiveAlertConditionMessage(cacheElement.getAlertConditionTriggerId(), timestamp,
+                    cacheElement.convertValueToString(providedValue), extraParams));
+
+                stats.matched++;
             } else // no match, negative event
             {
                 /*
@@ -84,15 +98,9 @@ abstract class AbstractConditionCache {
                 if (cacheElement.isType(AlertConditionOperator.Type.STATEFUL) && cacheElement.getActivity().maybeActive()) {
                     cacheElement.setActivity(CacheElementActivity.INACTIVE);
 
-                    try {
-                        // send negative message
-                        cachedConditionProducer.sendDeactivateAlertConditionMessage(
-                            cacheElement.getAlertConditionTriggerId(), timestamp);
-                    } catch (Exception e) {
-                        log.error("Error sending deactivation message for cache element '" + cacheElement + "': "
-                            + e.getMessage());
-                        errors++;
-                    }
+                    // negative message
+                    messages.add(new InactiveAlertConditionMessage(cacheElement.getAlertConditionTriggerId(),
+                        timestamp));
                 } else {
                     /*
                      * negative message, but nothing was active...so do nothing.
@@ -105,14 +113,61 @@ abstract class AbstractConditionCache {
                 }
             }
         }
+    }
+
+    /**
+     * The {@link NumericConditionIndex} counterpart of {@link #processCacheElements(List, Object, long,
+     * AlertConditionMessageBatch, AlertConditionCacheStats, Object...)}: evaluates the numeric data of the batch and
+     * adds the same activations and deactivations, without going through the generic cache elements.
+     */
+    void processNumericConditions(NumericConditionIndex index, MeasurementData[] measurementData,
+        final AlertConditionMessageBatch messages, final AlertConditionCacheStats stats) {
+        index.evaluate(measurementData, new NumericConditionIndex.Listener() {
+            public void activate(int alertConditionTriggerId, long timestamp, double value) {
+                messages.add(new ActiveAlertConditionMessage(alertConditionTriggerId, timestamp, String
+                    .valueOf(value)));
+                stats.matched++;
+            }
+
+            public void deactivate(int alertConditionTriggerId, long timestamp) {
+                messages.add(new InactiveAlertConditionMessage(alertConditionTriggerId, timestamp));
+            }
+        });
+    }
+
+    /**
+     * Sends all activations and deactivations collected by one check as one JMS message.
+     *
+     * @param messages the collected messages; nothing is sent if there are none
+     * @param waitForProcessing if true, blocks until the batch has been processed - including the cache reload
+     * the alerts it fired may have caused - or {@link #BATCH_PROCESSING_TIMEOUT} has passed
+     */
+    void sendMessages(AlertConditionMessageBatch messages, boolean waitForProcessing) {
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        AlertConditionBatchTracker tracker = AlertConditionBatchTracker.getSingleton();
+        if (waitForProcessing) {
+            tracker.track(messages.getId());
+        }
+
+        try {
+            cachedConditionProducer.sendAlertConditionMessages(messages);
+        } catch (Exception e) {
+            tracker.untrack(messages.getId());
+            log.error("There were " + messages.size() + " alert condition messages that could not be sent: "
+                + e.getMessage() + ". Please check the configuration of the JMS subsystem and try again. ");
+            return;
+        }
 
-        if (errors != 0) {
-            log.error("There were " + errors + " alert conditions that did not fire. "
-                + "Please check the configuration of the JMS subsystem and try again. ");
+        if (waitForProcessing && !tracker.await(messages.getId(), BATCH_PROCESSING_TIMEOUT)) {
+            log.warn(messages + " was not processed within " + BATCH_PROCESSING_TIMEOUT + "ms, continuing anyway");
         }
     }
 
-    <T extends AbstractCacheElement<?>> boolean addTo(String mapName, Map<Integer, List<T>> cache, Integer key,
+    // synchronized, the categories of an agent cache are loaded in parallel
+    synchronized <T extends AbstractCacheElement<?>> boolean addTo(String mapName, Map<Integer, List<T>> cache, Integer key,
         T cacheElement, int alertConditionId, AlertConditionCacheStats stats) {
         List<T> cacheElements = cache.get(key);
 
@@ -23,9 +23,16 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import org.rhq.core.domain.alert.AlertCondition;
@@ -55,7 +62,9 @@ import org.rhq.core.domain.util.PageList;
 import org.rhq.enterprise.server.alert.AlertConditionManagerLocal;
 import org.rhq.enterprise.server.alert.engine.AlertConditionCacheStats;
 import org.rhq.enterprise.server.alert.engine.internal.AlertConditionCacheCoordinator.Cache;
+import org.rhq.enterprise.server.alert.engine.jms.model.AlertConditionMessageBatch;
 import org.rhq.enterprise.server.alert.engine.mbean.AlertConditionCacheMonitor;
+import org.rhq.enterprise.server.alert.engine.model.AbstractCacheElement;
 import org.rhq.enterprise.server.alert.engine.model.CallTimeDataCacheElement;
 import org.rhq.enterprise.server.alert.engine.model.CallTimeDataCacheElement.CallTimeElementValue;
 import org.rhq.enterprise.server.alert.engine.model.DriftCacheElement;
@@ -69,19 +78,55 @@ import org.rhq.enterprise.server.alert.engine.model.NumericDoubleCacheElement;
 import org.rhq.enterprise.server.auth.SubjectManagerLocal;
 import org.rhq.enterprise.server.measurement.MeasurementDataManagerLocal;
 import org.rhq.enterprise.server.plugin.pc.drift.DriftChangeSetSummary;
+import org.rhq.enterprise.server.util.LoggingThreadFactory;
 import org.rhq.enterprise.server.util.LookupUtil;
 
 /**
+ * The conditions of the alert definitions of one agent's resources. The caches are loaded once, one thread per
+ * condition category; after that, changes to the alert definitions are {@link #refresh() refreshed}: only the
+ * conditions of the alert definitions that were created, updated or deleted are loaded again, into a copy of the
+ * caches, while all other conditions keep their cache elements and state.
+ *
  * @author Joseph Marques
  */
 class AgentConditionCache extends AbstractConditionCache {
 
-    private Map<Integer, List<NumericDoubleCacheElement>> measurementDataCache; // key: schedule ID
+    /**
+     * The maximum number of condition categories that are loaded in parallel, across all agents.
+     */
+    static final int LOAD_THREADS;
+
+    static {
+        int loadThreads = 4;
+        try {
+            loadThreads = Integer.parseInt(System.getProperty("rhq.server.alert-condition-cache.load-threads", "4"));
+        } catch (Throwable t) {
+            log.warn("Invalid rhq.server.alert-condition-cache.load-threads, using the default of " + loadThreads
+                + " threads: " + t);
+        }
+        LOAD_THREADS = Math.max(1, loadThreads);
+    }
+
+    private static final ExecutorService loadExecutor = Executors.newFixedThreadPool(LOAD_THREADS,
+        new LoggingThreadFactory("AlertConditionCacheLoader", true));
+
+    private static final EnumSet<AlertConditionCategory> SUPPORTED_CATEGORIES = EnumSet.of(
+        AlertConditionCategory.BASELINE, AlertConditionCategory.CHANGE, AlertConditionCategory.TRAIT,
+        AlertConditionCategory.THRESHOLD, AlertConditionCategory.EVENT, AlertConditionCategory.DRIFT,
+        AlertConditionCategory.RANGE);
+
+    // handle the oracle 1000 member IN clause issue
+    private static final int ORACLE_BATCH_SIZE = 1000;
+
+    private NumericConditionIndex measurementDataCache; // key: schedule ID
     private Map<Integer, List<MeasurementTraitCacheElement>> measurementTraitCache; // key: schedule ID
     private Map<Integer, List<CallTimeDataCacheElement>> callTimeCache; // key: schedule ID
     private Map<Integer, List<EventCacheElement>> eventsCache; // key: resource ID
     private Map<Integer, List<DriftCacheElement>> driftCache; // key: resource ID
 
+    // key: alert definition ID, value: the mtime of the definition and the IDs of its conditions, as they were loaded
+    private Map<Integer, Tuple<Long, Set<Integer>>> alertDefinitions;
+
     private AlertConditionManagerLocal alertConditionManager;
     private MeasurementDataManagerLocal measurementDataManager;
     private SubjectManagerLocal subjectManager;
@@ -93,7 +138,7 @@ class AgentConditionCache extends AbstractConditionCache {
 
         this.agentId = agentId;
 
-        measurementDataCache = new HashMap<Integer, List<NumericDoubleCacheElement>>();
+        measurementDataCache = new NumericConditionIndex();
         measurementTraitCache = new HashMap<Integer, List<MeasurementTraitCacheElement>>();
         callTimeCache = new HashMap<Integer, List<CallTimeDataCacheElement>>();
         eventsCache = new HashMap<Integer, List<EventCacheElement>>();
@@ -106,6 +151,29 @@ class AgentConditionCache extends AbstractConditionCache {
         loadCachesForAgent(agentId);
     }
 
+    /**
+     * Copies the caches of the given agent cache, except for the given conditions. The cache elements are shared
+     * with the original, so they keep their state.
+     */
+    private AgentConditionCache(AgentConditionCache original, Set<Integer> removedConditionIds,
+        Map<Integer, Tuple<Long, Set<Integer>>> alertDefinitions) {
+        super();
+
+        this.agentId = original.agentId;
+
+        measurementDataCache = original.measurementDataCache.copy(removedConditionIds);
+        measurementTraitCache = copy(original.measurementTraitCache, removedConditionIds);
+        callTimeCache = copy(original.callTimeCache, removedConditionIds);
+        eventsCache = copy(original.eventsCache, removedConditionIds);
+        driftCache = copy(original.driftCache, removedConditionIds);
+
+        this.alertDefinitions = alertDefinitions;
+
+        alertConditionManager = original.alertConditionManager;
+        measurementDataManager = original.measurementDataManager;
+        subjectManager = original.subjectManager;
+    }
+
     /**
      * This method is used to do the initial loading from the database for a particular agent. In the high availability
      * infrastructure each server instance in the cloud will only be responsible for monitoring a select number of
@@ -122,56 +190,225 @@ class AgentConditionCache extends AbstractConditionCache {
                 log.debug("Loading Alert Condition Caches for agent[id=" + agentId + "]...");
             }
 
-            Subject overlord = subjectManager.getOverlord();
+            /*
+             * the state is loaded first; should an alert definition change while the conditions are loaded, the
+             * state is older than the loaded conditions, and the next refresh will simply load them again
+             */
+            Map<Integer, Tuple<Long, Set<Integer>>> loadedAlertDefinitions = loadAlertDefinitions();
 
-            EnumSet<AlertConditionCategory> supportedCategories = EnumSet.of(AlertConditionCategory.BASELINE,
-                AlertConditionCategory.CHANGE, AlertConditionCategory.TRAIT, AlertConditionCategory.THRESHOLD,
-                AlertConditionCategory.EVENT, AlertConditionCategory.DRIFT, AlertConditionCategory.RANGE);
+            stats = loadAlertConditionComposites(null);
 
-            for (AlertConditionCategory nextCategory : supportedCategories) {
-                // page thru all alert definitions
-                int rowsProcessed = 0;
-                PageControl pc = new PageControl();
-                pc.setPageNumber(0);
-                pc.setPageSize(PAGE_SIZE); // condition composites are small so we can grab alot; use the setter, constructor limits this to 100
+            measurementDataCache.build();
 
-                while (true) {
-                    PageList<? extends AbstractAlertConditionCategoryComposite> alertConditions = null;
-                    alertConditions = alertConditionManager.getAlertConditionComposites(overlord, agentId,
-                        nextCategory, pc);
+            // only a complete cache can be refreshed
+            alertDefinitions = loadedAlertDefinitions;
 
-                    if (alertConditions.isEmpty()) {
-                        break; // didn't get any rows back, must not have any data or no more rows left to process
-                    }
+            if (log.isDebugEnabled()) {
+                log.debug("Loaded Alert Condition Caches for agent[id=" + agentId + "]");
+            }
+        } catch (Throwable t) {
+            // don't let any exceptions bubble up to the calling SLSB layer
+            log.error("Error loading cache for agent[id=" + agentId + "]", t);
+        }
+        return stats;
+    }
 
-                    for (AbstractAlertConditionCategoryComposite nextComposite : alertConditions) {
-                        insertAlertConditionComposite(agentId, nextComposite, stats);
-                    }
+    /**
+     * Finds the alert definitions that were created, updated or deleted since this cache was loaded, and only loads
+     * the conditions of those into a copy of this cache. Unlike {@link #loadCachesForAgent(int)} this throws an
+     * exception if anything goes wrong, in which case the caches should be reloaded instead.
+     *
+     * @return the refreshed copy, or this cache if none of its alert definitions changed
+     */
+    AgentConditionCache refresh() throws Exception {
+        if (alertDefinitions == null) {
+            throw new IllegalStateException("The caches of agent[id=" + agentId + "] were not loaded completely");
+        }
 
-                    rowsProcessed += alertConditions.size();
-                    if (rowsProcessed >= alertConditions.getTotalSize()) {
-                        break; // we've processed all data, we can stop now
-                    }
+        Map<Integer, Tuple<Long, Set<Integer>>> currentAlertDefinitions = loadAlertDefinitions();
 
-                    pc.setPageNumber(pc.getPageNumber() + 1);
-                }
-                if (log.isDebugEnabled()) {
-                    log.debug("Loaded " + rowsProcessed + " Alert Condition Composites of type '" + nextCategory + "'");
-                }
+        Set<Integer> removedConditionIds = new HashSet<Integer>();
+        for (Map.Entry<Integer, Tuple<Long, Set<Integer>>> loaded : alertDefinitions.entrySet()) {
+            if (!loaded.getValue().equals(currentAlertDefinitions.get(loaded.getKey()))) {
+                removedConditionIds.addAll(loaded.getValue().getRighty());
+            }
+        }
+        List<Integer> changedAlertDefinitionIds = new ArrayList<Integer>();
+        for (Map.Entry<Integer, Tuple<Long, Set<Integer>>> current : currentAlertDefinitions.entrySet()) {
+            if (!current.getValue().equals(alertDefinitions.get(current.getKey()))) {
+                changedAlertDefinitionIds.add(current.getKey());
             }
+        }
 
+        if (removedConditionIds.isEmpty() && changedAlertDefinitionIds.isEmpty()) {
             if (log.isDebugEnabled()) {
-                log.debug("Loaded Alert Condition Caches for agent[id=" + agentId + "]");
+                log.debug("No alert definitions of agent[id=" + agentId + "] changed");
             }
-        } catch (Throwable t) {
-            // don't let any exceptions bubble up to the calling SLSB layer
-            log.error("Error loading cache for agent[id=" + agentId + "]", t);
+            return this;
+        }
+
+        AgentConditionCache refreshed = new AgentConditionCache(this, removedConditionIds, currentAlertDefinitions);
+        AlertConditionCacheStats stats = new AlertConditionCacheStats();
+        if (!changedAlertDefinitionIds.isEmpty()) {
+            stats = refreshed.loadAlertConditionComposites(changedAlertDefinitionIds);
+        }
+        refreshed.measurementDataCache.build();
+
+        if (log.isDebugEnabled()) {
+            log.debug("Refreshed Alert Condition Caches for agent[id=" + agentId + "]: removed "
+                + removedConditionIds.size() + " conditions, loaded " + stats.created + " conditions of "
+                + changedAlertDefinitionIds.size() + " alert definitions");
+        }
+        return refreshed;
+    }
+
+    private Map<Integer, Tuple<Long, Set<Integer>>> loadAlertDefinitions() {
+        Subject overlord = subjectManager.getOverlord();
+        List<Object[]> rows = alertConditionManager.getAlertConditionCacheState(overlord, agentId,
+            SUPPORTED_CATEGORIES);
+
+        Map<Integer, Tuple<Long, Set<Integer>>> results = new HashMap<Integer, Tuple<Long, Set<Integer>>>();
+        for (Object[] row : rows) {
+            Integer alertDefinitionId = (Integer) row[1];
+            Tuple<Long, Set<Integer>> alertDefinition = results.get(alertDefinitionId);
+            if (alertDefinition == null) {
+                alertDefinition = new Tuple<Long, Set<Integer>>((Long) row[2], new HashSet<Integer>());
+                results.put(alertDefinitionId, alertDefinition);
+            }
+            alertDefinition.getRighty().add((Integer) row[0]);
+        }
+        return results;
+    }
+
+    /**
+     * Loads the conditions of all categories, each category in its own thread.
+     *
+     * @param alertDefinitionIds the alert definitions to load the conditions of, or null for all of them
+     */
+    private AlertConditionCacheStats loadAlertConditionComposites(final List<Integer> alertDefinitionIds)
+        throws Exception {
+        final Subject overlord = subjectManager.getOverlord();
+
+        List<Future<AlertConditionCacheStats>> results = new ArrayList<Future<AlertConditionCacheStats>>();
+        for (final AlertConditionCategory nextCategory : SUPPORTED_CATEGORIES) {
+            results.add(loadExecutor.submit(new Callable<AlertConditionCacheStats>() {
+                public AlertConditionCacheStats call() {
+                    AlertConditionCacheStats stats = new AlertConditionCacheStats();
+                    if (alertDefinitionIds == null) {
+                        loadAlertConditionComposites(overlord, nextCategory, null, stats);
+                    } else {
+                        for (int i = 0; i < alertDefinitionIds.size(); i += ORACLE_BATCH_SIZE) {
+                            loadAlertConditionComposites(overlord, nextCategory,
+                                alertDefinitionIds.subList(i, Math.min(i + ORACLE_BATCH_SIZE, alertDefinitionIds
+                                    .size())), stats);
+                        }
+                    }
+                    return stats;
+                }
+            }));
+        }
+
+        // wait for all categories, even if one of them failed, so nothing is inserted after we return
+        AlertConditionCacheStats stats = new AlertConditionCacheStats();
+        ExecutionException failure = null;
+        for (Future<AlertConditionCacheStats> result : results) {
+            try {
+                stats.add(result.get());
+            } catch (ExecutionException ee) {
+                failure = (failure == null) ? ee : failure;
+            }
+        }
+        if (failure != null) {
+            throw new RuntimeException("Failed to load alert conditions for agent[id=" + agentId + "]",
+                failure.getCause());
         }
         return stats;
     }
 
+    private void loadAlertConditionComposites(Subject overlord, AlertConditionCategory category,
+        List<Integer> alertDefinitionIds, AlertConditionCacheStats stats) {
+        // page thru all alert definitions
+        int rowsProcessed = 0;
+        PageControl pc = new PageControl();
+        pc.setPageNumber(0);
+        pc.setPageSize(PAGE_SIZE); // condition composites are small so we can grab alot; use the setter, constructor limits this to 100
+
+        while (true) {
+            PageList<? extends AbstractAlertConditionCategoryComposite> alertConditions = null;
+            alertConditions = alertConditionManager.getAlertConditionComposites(overlord, agentId, category,
+                alertDefinitionIds, pc);
+
+            if (alertConditions.isEmpty()) {
+                break; // didn't get any rows back, must not have any data or no more rows left to process
+            }
+
+            Map<Integer, MeasurementDataNumeric> currentNumerics = null;
+            if (category == AlertConditionCategory.CHANGE) {
+                currentNumerics = loadCurrentNumerics(alertConditions);
+            }
+            for (AbstractAlertConditionCategoryComposite nextComposite : alertConditions) {
+                insertAlertConditionComposite(agentId, nextComposite, currentNumerics, stats);
+            }
+
+            rowsProcessed += alertConditions.size();
+            if (rowsProcessed >= alertConditions.getTotalSize()) {
+                break; // we've processed all data, we can stop now
+            }
+
+            pc.setPageNumber(pc.getPageNumber() + 1);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Loaded " + rowsProcessed + " Alert Condition Composites of type '" + category + "'");
+        }
+    }
+
+    /**
+     * Looks up the current values of the measurement schedules of a page of CHANGE conditions all at once.
+     * Call-time conditions have no current value and are left out.
+     *
+     * @return the current values keyed on schedule ID
+     */
+    private Map<Integer, MeasurementDataNumeric> loadCurrentNumerics(
+        List<? extends AbstractAlertConditionCategoryComposite> alertConditions) {
+        Set<Integer> scheduleIds = new HashSet<Integer>();
+        for (AbstractAlertConditionCategoryComposite composite : alertConditions) {
+            if (DataType.CALLTIME != composite.getDataType()) {
+                scheduleIds.add(((AlertConditionChangesCategoryComposite) composite).getScheduleId());
+            }
+        }
+        if (scheduleIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return measurementDataManager.getCurrentNumericForSchedules(scheduleIds);
+    }
+
+    /**
+     * Stops the threads that load the conditions, conditions can no longer be loaded afterwards. This is only to be
+     * called when the server shuts down.
+     */
+    static void shutdownLoadExecutor() {
+        loadExecutor.shutdownNow();
+    }
+
+    private static <T extends AbstractCacheElement<?>> Map<Integer, List<T>> copy(Map<Integer, List<T>> cache,
+        Set<Integer> removedConditionIds) {
+        Map<Integer, List<T>> copy = new HashMap<Integer, List<T>>(cache.size() * 4 / 3 + 1);
+        for (Map.Entry<Integer, List<T>> entry : cache.entrySet()) {
+            List<T> cacheElements = new ArrayList<T>(entry.getValue().size());
+            for (T cacheElement : entry.getValue()) {
+                if (!removedConditionIds.contains(cacheElement.getAlertConditionTriggerId())) {
+                    cacheElements.add(cacheElement);
+                }
+            }
+            if (!cacheElements.isEmpty()) {
+                copy.put(entry.getKey(), cacheElements);
+            }
+        }
+        return copy;
+    }
+
     private void insertAlertConditionComposite(int agentId, AbstractAlertConditionCategoryComposite composite,
-        AlertConditionCacheStats stats) {
+        Map<Integer, MeasurementDataNumeric> currentNumerics, AlertConditionCacheStats stats) {
 
         AlertCondition alertCondition = composite.getCondition();
         int alertConditionId = alertCondition.getId(); // auto-unboxing is safe here because as the PK it's guaranteed to be non-null
@@ -232,8 +469,7 @@ class AgentConditionCache extends AbstractConditionCache {
                     alertConditionOperator, calculatedValue, alertConditionId, optionStatus);
 
                 // auto-boxing (of alertConditionId) is always safe
-                addTo("measurementDataCache", measurementDataCache, baselineComposite.getScheduleId(), cacheElement,
-                    alertConditionId, stats);
+                addTo(measurementDataCache, baselineComposite.getScheduleId(), cacheElement, alertConditionId, stats);
             } catch (InvalidCacheElementException icee) {
                 log.info("Failed to create MeasurementBaselineCacheElement with parameters: "
                     + AlertConditionCacheUtils.getCacheElementErrorString(alertConditionId, alertConditionOperator,
@@ -243,13 +479,13 @@ class AgentConditionCache extends AbstractConditionCache {
             AlertConditionChangesCategoryComposite changesComposite = (AlertConditionChangesCategoryComposite) composite;
             int scheduleId = changesComposite.getScheduleId();
 
-            MeasurementDataNumeric numeric = measurementDataManager.getCurrentNumericForSchedule(scheduleId);
+            MeasurementDataNumeric numeric = currentNumerics.get(scheduleId);
 
             try {
                 MeasurementNumericCacheElement cacheElement = new MeasurementNumericCacheElement(
                     alertConditionOperator, (numeric == null) ? null : numeric.getValue(), alertConditionId);
 
-                addTo("measurementDataCache", measurementDataCache, scheduleId, cacheElement, alertConditionId, stats);
+                addTo(measurementDataCache, scheduleId, cacheElement, alertConditionId, stats);
             } catch (InvalidCacheElementException icee) {
                 log.info("Failed to create MeasurementNumericCacheElement with parameters: "
                     + AlertConditionCacheUtils.getCacheElementErrorString(alertConditionId, alertConditionOperator,
@@ -302,8 +538,7 @@ class AgentConditionCache extends AbstractConditionCache {
             }
 
             if (cacheElement != null) {
-                addTo("measurementDataCache", measurementDataCache, thresholdComposite.getScheduleId(), cacheElement,
-                    alertConditionId, stats);
+                addTo(measurementDataCache, thresholdComposite.getScheduleId(), cacheElement, alertConditionId, stats);
 
             }
         } else if (alertConditionCategory == AlertConditionCategory.EVENT) {
@@ -379,40 +614,50 @@ class AgentConditionCache extends AbstractConditionCache {
             }
 
             if (cacheElement != null) {
-                addTo("measurementDataCache", measurementDataCache, rangeComposite.getScheduleId(), cacheElement,
-                    alertConditionId, stats);
+                addTo(measurementDataCache, rangeComposite.getScheduleId(), cacheElement, alertConditionId, stats);
 
             }
         }
     }
 
+    private synchronized void addTo(NumericConditionIndex cache, int scheduleId, NumericDoubleCacheElement cacheElement,
+        int alertConditionId, AlertConditionCacheStats stats) {
+        if (log.isTraceEnabled()) {
+            log.trace("Inserting 'measurementDataCache' element: " + "key=" + scheduleId + ", " + "value="
+                + cacheElement);
+        }
+
+        cache.add(scheduleId, cacheElement);
+        stats.created++;
+    }
+
     public AlertConditionCacheStats checkConditions(MeasurementData... measurementData) {
         if ((measurementData == null) || (measurementData.length == 0)) {
             return new AlertConditionCacheStats();
         }
 
         AlertConditionCacheStats stats = new AlertConditionCacheStats();
+        AlertConditionMessageBatch messages = new AlertConditionMessageBatch();
         try {
+            // the numeric conditions are evaluated for the whole batch at once, see NumericConditionIndex
+            processNumericConditions(measurementDataCache, measurementData, messages, stats);
+
             for (MeasurementData datum : measurementData) {
                 int scheduleId = datum.getScheduleId();
 
-                if (datum instanceof MeasurementDataNumeric) {
-                    List<? extends NumericDoubleCacheElement> conditionCacheElements = lookupMeasurementDataCacheElements(scheduleId);
-
-                    Double providedValue = ((MeasurementDataNumeric) datum).getValue();
-
-                    processCacheElements(conditionCacheElements, providedValue, datum.getTimestamp(), stats);
-                } else if (datum instanceof MeasurementDataTrait) {
+                if (datum instanceof MeasurementDataTrait) {
                     List<MeasurementTraitCacheElement> cacheElements = lookupMeasurementTraitCacheElements(scheduleId);
 
                     processCacheElements(cacheElements, ((MeasurementDataTrait) datum).getValue(),
-                        datum.getTimestamp(), stats);
-                } else {
+                        datum.getTimestamp(), messages, stats);
+                } else if (!(datum instanceof MeasurementDataNumeric)) {
                     log.error(getClass().getSimpleName() + " does not support " + "checking conditions against "
                         + datum.getClass().getSimpleName() + " types");
                 }
             }
 
+            sendMessages(messages, false);
+
             AlertConditionCacheMonitor.getMBean().incrementMeasurementCacheElementMatches(stats.matched);
             AlertConditionCacheMonitor.getMBean().incrementMeasurementProcessingTime(stats.getAge());
             if (log.isDebugEnabled())
@@ -430,16 +675,20 @@ class AgentConditionCache extends AbstractConditionCache {
         }
 
         AlertConditionCacheStats stats = new AlertConditionCacheStats();
+        AlertConditionMessageBatch messages = new AlertConditionMessageBatch();
         try {
             HashMap<Integer, HashMap<String, ArrayList<CallTimeDataValue>>> order = produceOrderedCallTimeDataStructure(callTime);
             for (Integer scheduleId : order.keySet()) {
                 List<? extends CallTimeDataCacheElement> conditionCacheElements = lookupCallTimeDataCacheElements(scheduleId);
                 for (String callDest : order.get(scheduleId).keySet()) {
                     for (CallTimeDataValue provided : order.get(scheduleId).get(callDest)) {
-                        processCacheElements(conditionCacheElements, provided, provided.getBeginTime(), stats, callDest);
+                        processCacheElements(conditionCacheElements, provided, provided.getBeginTime(), messages,
+                            stats, callDest);
                     }
                 }
             }
+            sendMessages(messages, false);
+
             AlertConditionCacheMonitor.getMBean().incrementCallTimeCacheElementMatches(stats.matched);
             AlertConditionCacheMonitor.getMBean().incrementCallTimeProcessingTime(stats.getAge());
         } catch (Throwable t) {
@@ -518,7 +767,8 @@ class AgentConditionCache extends AbstractConditionCache {
      * This operates differently from the other {{checkConditions()}} methods.  Because it's possible that one
      * batch of events may contain both an event triggering a problem event and also an event triggering its
      * recovery alert, we return after a matched condition to allow for the caller to check remaining
-     * events only after a cache refresh has been performed.
+     * events only after a cache refresh has been performed. In that case we wait for the matched condition
+     * to be processed before returning, so the refreshed cache is in place by the time the caller continues.
      *
      * @param stats not null. the stats object to update
      * @param source
@@ -531,6 +781,8 @@ class AgentConditionCache extends AbstractConditionCache {
             return stats;
         }
 
+        AlertConditionMessageBatch messages = new AlertConditionMessageBatch();
+
         int initialSize = events.size();
         try {
             Resource resource = source.getResource();
@@ -540,13 +792,16 @@ class AgentConditionCache extends AbstractConditionCache {
                 Event event = i.next();
                 i.remove();
                 int matched = stats.matched;
-                processCacheElements(cacheElements, event.getSeverity(), event.getTimestamp(), stats,
+                processCacheElements(cacheElements, event.getSeverity(), event.getTimestamp(), messages, stats,
                     "sourceLocation=" + source.getLocation(), event.getDetail());
                 if (matched < stats.matched) {
                     break;
                 }
             }
 
+            // with events left, wait for the match to be processed so they are checked against the reloaded cache
+            sendMessages(messages, !events.isEmpty());
+
             AlertConditionCacheMonitor.getMBean().incrementEventCacheElementMatches(stats.matched);
             AlertConditionCacheMonitor.getMBean().incrementEventProcessingTime(stats.getAge());
             if (log.isDebugEnabled()) {
@@ -561,12 +816,15 @@ class AgentConditionCache extends AbstractConditionCache {
 
     public AlertConditionCacheStats checkConditions(DriftChangeSetSummary driftChangeSetSummary) {
         AlertConditionCacheStats stats = new AlertConditionCacheStats();
+        AlertConditionMessageBatch messages = new AlertConditionMessageBatch();
         try {
             int resourceId = driftChangeSetSummary.getResourceId();
             List<DriftCacheElement> cacheElements = lookupDriftCacheElements(resourceId);
 
             processCacheElements(cacheElements, DriftCacheElement.UNUSED_CONDITION_VALUE,
-                driftChangeSetSummary.getCreatedTime(), stats, driftChangeSetSummary);
+                driftChangeSetSummary.getCreatedTime(), messages, stats, driftChangeSetSummary);
+
+            sendMessages(messages, false);
 
             AlertConditionCacheMonitor.getMBean().incrementDriftCacheElementMatches(stats.matched);
             AlertConditionCacheMonitor.getMBean().incrementDriftProcessingTime(stats.getAge());
@@ -580,10 +838,6 @@ class AgentConditionCache extends AbstractConditionCache {
         return stats;
     }
 
-    private List<? extends NumericDoubleCacheElement> lookupMeasurementDataCacheElements(int scheduleId) {
-        return measurementDataCache.get(scheduleId); // yup, might be null
-    }
-
     private List<? extends CallTimeDataCacheElement> lookupCallTimeDataCacheElements(int scheduleId) {
         return callTimeCache.get(scheduleId); // yup, might be null
     }
@@ -638,7 +892,7 @@ class AgentConditionCache extends AbstractConditionCache {
     @Override
     public int getCacheSize(Cache cache) {
         if (cache == AlertConditionCacheCoordinator.Cache.MeasurementDataCache) {
-            return AlertConditionCacheUtils.getMapListCount(measurementDataCache);
+            return measurementDataCache.size();
         } else if (cache == AlertConditionCacheCoordinator.Cache.MeasurementTraitCache) {
             return AlertConditionCacheUtils.getMapListCount(measurementTraitCache);
         } else if (cache == AlertConditionCacheCoordinator.Cache.CallTimeDataCache) {
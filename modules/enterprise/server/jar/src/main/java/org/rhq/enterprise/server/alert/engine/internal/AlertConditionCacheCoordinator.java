@@ -62,25 +62,6 @@ public final class AlertConditionCacheCoordinator {
 
     private static final AlertConditionCacheCoordinator instance = new AlertConditionCacheCoordinator();
 
-    /**
-     * When processing EventReport, we may hit an event that triggers problem alert and event that triggers recovery alert within the same report. Firing alert 
-     * is asynchronous task, so if processing events too fast, problem alert is fired after we process recovery event, so we miss recovery alert at all.
-     * To workaround that, we slow down event processing in case we hit any event that triggers alert. When such event exists, we sleep given amount of milis 
-     * to wait for alert to get fired. There is no performance impact on processing events without alert fired, and this delay is set to 500 by default.
-     * Recommended value is from 500 to 1500milis, 500 was tested as reliable enough for low server load cases.
-     */
-    private static final long ALERTED_EVENT_PROCESSING_DELAY;
-
-    static {
-        long alertedEventProcessingDelay = 500L;
-        try {
-            alertedEventProcessingDelay = Long.parseLong(System.getProperty("rhq.server.alerted.event.process.delay", "500"));
-        } catch (Throwable t) {
-            //
-        }
-        ALERTED_EVENT_PROCESSING_DELAY = alertedEventProcessingDelay;
-    }
-
     public enum Cache {
         MeasurementDataCache(Type.Agent), //
         MeasurementTraitCache(Type.Agent), //
@@ -205,6 +186,46 @@ public final class AlertConditionCacheCoordinator {
         }
     }
 
+    public void refreshCachesForAgent(int agentId) {
+        AgentConditionCache agentCache = null;
+        agentReadWriteLock.readLock().lock();
+        try {
+            agentCache = agentCaches.get(agentId);
+        } finally {
+            agentReadWriteLock.readLock().unlock();
+        }
+        if (agentCache == null) {
+            reloadCachesForAgent(agentId);
+            return;
+        }
+
+        AgentConditionCache refreshedCache = null;
+        try {
+            if (log.isDebugEnabled()) {
+                log.debug("Start refreshing cache for agent[id=" + agentId + "]");
+            }
+            // the current cache stays in use while the refreshed copy is loaded
+            refreshedCache = agentCache.refresh();
+        } catch (Throwable t) {
+            log.warn("Could not refresh cache for agent[id=" + agentId + "], reloading it instead: " + t);
+            reloadCachesForAgent(agentId);
+            return;
+        }
+
+        if (refreshedCache != agentCache) {
+            agentReadWriteLock.writeLock().lock();
+            try {
+                // unless the cache was reloaded in the meantime, which makes the refreshed one obsolete
+                if (agentCaches.get(agentId) == agentCache) {
+                    agentCaches.put(agentId, refreshedCache);
+                    log.debug("Refreshed agent[id=" + agentId + "] cache");
+                }
+            } finally {
+                agentReadWriteLock.writeLock().unlock();
+            }
+        }
+    }
+
     public AlertConditionCacheStats checkConditions(MeasurementData... measurementData) {
         if (measurementData == null || measurementData.length == 0) {
             return new AlertConditionCacheStats();
@@ -317,16 +338,9 @@ public final class AlertConditionCacheCoordinator {
                 agentReadWriteLock.readLock().unlock();
             }
             if (agentCache != null) {
+                // returns after the first matching event, once the alert it may have fired has been processed and
+                // recovery alerts activated, in case the remaining events match the pending recovery conditions
                 stats.add(agentCache.checkConditions(source, unprocessedEvents));
-                if (!unprocessedEvents.isEmpty()) {
-                    // delay for a brief time to allow for the matched conditions to potentially fire an alert and
-                    // activate recovery alerts, in case the remaining events match the pending recovery conditions
-                    try {
-                        Thread.sleep(ALERTED_EVENT_PROCESSING_DELAY);
-                    } catch (InterruptedException e) {
-                        // just continue as a best effort
-                    }
-                }
             } else {
                 break;
             }
@@ -458,6 +472,14 @@ public final class AlertConditionCacheCoordinator {
         return result;
     }
 
+    /**
+     * Releases the resources the caches hold on to outside of their own objects, i.e. the threads that load the
+     * agent caches. This is only to be called when the server shuts down.
+     */
+    public void shutdown() {
+        AgentConditionCache.shutdownLoadExecutor();
+    }
+
     public Map<String, Integer> getCacheCounts() {
         Map<String, Integer> counts = new HashMap<String, Integer>();
         for (Cache cache : Cache.values()) {
@@ -45,6 +45,7 @@ import org.rhq.core.domain.util.PageList;
 import org.rhq.enterprise.server.alert.AlertConditionManagerLocal;
 import org.rhq.enterprise.server.alert.engine.AlertConditionCacheStats;
 import org.rhq.enterprise.server.alert.engine.internal.AlertConditionCacheCoordinator.Cache;
+import org.rhq.enterprise.server.alert.engine.jms.model.AlertConditionMessageBatch;
 import org.rhq.enterprise.server.alert.engine.mbean.AlertConditionCacheMonitor;
 import org.rhq.enterprise.server.alert.engine.model.AvailabilityCacheElement;
 import org.rhq.enterprise.server.alert.engine.model.AvailabilityDurationCacheElement;
@@ -210,6 +211,7 @@ class GlobalConditionCache extends AbstractConditionCache {
 
     public AlertConditionCacheStats checkConditions(OperationHistory operationHistory) {
         AlertConditionCacheStats stats = new AlertConditionCacheStats();
+        AlertConditionMessageBatch messages = new AlertConditionMessageBatch();
         try {
             if (operationHistory instanceof ResourceOperationHistory) {
                 ResourceOperationHistory resourceOperationHistory = (ResourceOperationHistory) operationHistory;
@@ -221,13 +223,16 @@ class GlobalConditionCache extends AbstractConditionCache {
                 List<ResourceOperationCacheElement> cacheElements = lookupResourceOperationHistoryCacheElements(
                     resource.getId(), operationDefinition.getId());
 
-                processCacheElements(cacheElements, operationStatus, resourceOperationHistory.getModifiedTime(), stats);
+                processCacheElements(cacheElements, operationStatus, resourceOperationHistory.getModifiedTime(),
+                    messages, stats);
             } else {
                 if (log.isDebugEnabled())
                     log.debug(getClass().getSimpleName() + " does not support checking conditions against "
                         + operationHistory.getClass().getSimpleName() + " types");
             }
 
+            sendMessages(messages, false);
+
             AlertConditionCacheMonitor.getMBean().incrementOperationCacheElementMatches(stats.matched);
             AlertConditionCacheMonitor.getMBean().incrementOperationProcessingTime(stats.getAge());
             if (log.isDebugEnabled())
@@ -245,13 +250,16 @@ class GlobalConditionCache extends AbstractConditionCache {
         }
 
         AlertConditionCacheStats stats = new AlertConditionCacheStats();
+        AlertConditionMessageBatch messages = new AlertConditionMessageBatch();
         try {
             Resource resource = update.getResource();
 
             List<ResourceConfigurationCacheElement> cacheElements = lookupResourceConfigurationCacheElements(resource
                 .getId());
 
-            processCacheElements(cacheElements, update.getConfiguration(), update.getCreatedTime(), stats);
+            processCacheElements(cacheElements, update.getConfiguration(), update.getCreatedTime(), messages, stats);
+
+            sendMessages(messages, false);
 
             AlertConditionCacheMonitor.getMBean().incrementResourceConfigurationCacheElementMatches(stats.matched);
             AlertConditionCacheMonitor.getMBean().incrementResourceConfigurationProcessingTime(stats.getAge());
@@ -270,6 +278,7 @@ class GlobalConditionCache extends AbstractConditionCache {
         }
 
         AlertConditionCacheStats stats = new AlertConditionCacheStats();
+        AlertConditionMessageBatch messages = new AlertConditionMessageBatch();
         try {
             for (Availability availability : availabilities) {
                 Resource resource = availability.getResource();
@@ -277,7 +286,7 @@ class GlobalConditionCache extends AbstractConditionCache {
 
                 List<AvailabilityCacheElement> cacheElements = lookupAvailabilityCacheElements(resource.getId());
 
-                processCacheElements(cacheElements, availabilityType, availability.getStartTime(), stats);
+                processCacheElements(cacheElements, availabilityType, availability.getStartTime(), messages, stats);
 
                 // Avail Duration conditions are evaluated in two parts:
                 // 1) First, an avail change that starts the clock ticking.
@@ -290,6 +299,8 @@ class GlobalConditionCache extends AbstractConditionCache {
                 AvailabilityDurationCacheElement.checkCacheElements(durationCacheElements, resource, availability);
             }
 
+            sendMessages(messages, false);
+
             AlertConditionCacheMonitor.getMBean().incrementAvailabilityCacheElementMatches(stats.matched);
             AlertConditionCacheMonitor.getMBean().incrementAvailabilityProcessingTime(stats.getAge());
             if (log.isDebugEnabled())
@@ -312,6 +323,7 @@ class GlobalConditionCache extends AbstractConditionCache {
         }
 
         AlertConditionCacheStats stats = new AlertConditionCacheStats();
+        AlertConditionMessageBatch messages = new AlertConditionMessageBatch();
         try {
             for (AvailabilityDurationComposite composite : composites) {
 
@@ -328,13 +340,15 @@ class GlobalConditionCache extends AbstractConditionCache {
                             cacheElementAsList.add(cacheElement);
 
                             processCacheElements(cacheElementAsList, composite.getAvailabilityType(),
-                                System.currentTimeMillis(), stats);
+                                System.currentTimeMillis(), messages, stats);
                             break;
                         }
                     }
                 }
             }
 
+            sendMessages(messages, false);
+
             AlertConditionCacheMonitor.getMBean().incrementAvailabilityDurationCacheElementMatches(stats.matched);
             AlertConditionCacheMonitor.getMBean().incrementAvailabilityDurationProcessingTime(stats.getAge());
             if (log.isDebugEnabled())
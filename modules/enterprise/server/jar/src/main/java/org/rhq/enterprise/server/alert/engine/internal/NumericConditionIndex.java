@@ -0,0 +1,525 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.alert.engine.internal;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+
+import org.rhq.core.domain.alert.AlertConditionOperator;
+import org.rhq.core.domain.measurement.MeasurementData;
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.enterprise.server.alert.engine.model.MeasurementRangeNumericCacheElement;
+import org.rhq.enterprise.server.alert.engine.model.NumericDoubleCacheElement;
+import org.rhq.enterprise.server.alert.engine.model.UnsupportedAlertConditionOperatorException;
+
+/**
+ * An index over the numeric measurement conditions of one agent - thresholds, baselines, changes and ranges - that
+ * evaluates whole batches of {@link MeasurementDataNumeric} without boxing and without allocating anything.
+ * <p/>
+ * Conditions are kept in parallel primitive arrays, sorted by schedule id, operator and threshold (the low end of the
+ * range for RANGE conditions). An open-addressing int map yields, per schedule id, the offsets of the per-operator
+ * groups of that schedule's conditions. Because every group is sorted by threshold, the conditions that can match a
+ * value are found with a binary search. The rest of a group is only visited if some of the schedule's stateful
+ * conditions may still be active and need to be deactivated - which, in the steady state, they usually are not.
+ * <p/>
+ * The matching rules are exactly the ones of {@link NumericDoubleCacheElement} and
+ * {@link MeasurementRangeNumericCacheElement}; the elements are still created to validate the conditions, and then
+ * {@link #add(int, NumericDoubleCacheElement) added} to the index. Evaluating updates the activity of the
+ * conditions, and the batches of an agent can be checked concurrently, so every method synchronizes on the index.
+ * The listener is called with the lock held and must not block. Alert definition changes are applied to a
+ * {@link #copy(Set) copy}.
+ */
+public final class NumericConditionIndex {
+
+    /**
+     * Receives the outcome of an evaluation. Activations are reported for every match, deactivations only for
+     * stateful conditions that may have been active before.
+     */
+    public interface Listener {
+        void activate(int alertConditionTriggerId, long timestamp, double value);
+
+        void deactivate(int alertConditionTriggerId, long timestamp);
+    }
+
+    // the operator groups, in the order they are stored for each schedule
+    private static final byte GREATER_THAN = 0;
+    private static final byte LESS_THAN = 1;
+    private static final byte EQUALS = 2;
+    private static final byte RANGE_INSIDE = 3;
+    private static final byte RANGE_INSIDE_INCLUSIVE = 4;
+    private static final byte RANGE_OUTSIDE = 5;
+    private static final byte RANGE_OUTSIDE_INCLUSIVE = 6;
+    private static final byte CHANGES = 7;
+    // stateful conditions that can never match, e.g. baselines that have not been calculated yet
+    private static final byte NEVER = 8;
+    private static final int GROUPS = 9;
+
+    private static final byte UNKNOWN = 0;
+    private static final byte ACTIVE = 1;
+    private static final byte INACTIVE = 2;
+
+    // the conditions, sorted by schedule id, group and threshold once the index is built
+    private int size;
+    private int[] scheduleIds = new int[16];
+    private int[] triggerIds = new int[16];
+    private byte[] groups = new byte[16];
+    private double[] thresholds = new double[16]; // the low end for ranges, the last value for CHANGES
+    private double[] highThresholds = new double[16];
+    private byte[] activities = new byte[16];
+
+    // open-addressing map of schedule id to entry; a slot holds the entry + 1, 0 marks a free slot
+    private int[] slotKeys = new int[0];
+    private int[] slotEntries = new int[0];
+
+    // per entry, the offsets of its GROUPS groups followed by its end offset
+    private int[] groupOffsets = new int[0];
+    // per entry, the number of stateful conditions that are not known to be inactive
+    private int[] activeCounts = new int[0];
+
+    private boolean built = true;
+
+    /**
+     * Adds the condition represented by the given cache element. The index has to be {@link #build() built} again
+     * before it is evaluated.
+     *
+     * @param scheduleId the schedule the condition applies to
+     * @param cacheElement the validated condition
+     */
+    public synchronized void add(int scheduleId, NumericDoubleCacheElement cacheElement) {
+        AlertConditionOperator operator = cacheElement.getAlertConditionOperator();
+        Double value = cacheElement.getAlertConditionValue();
+        double threshold = (value == null) ? Double.NaN : value.doubleValue();
+        double highThreshold = Double.NaN;
+        byte group;
+
+        if (cacheElement instanceof MeasurementRangeNumericCacheElement) {
+            Double hiValue = (Double) cacheElement.getAlertConditionOperatorOption();
+            switch (operator) {
+            case LESS_THAN:
+                group = RANGE_INSIDE;
+                break;
+            case LESS_THAN_OR_EQUAL_TO:
+                group = RANGE_INSIDE_INCLUSIVE;
+                break;
+            case GREATER_THAN:
+                group = RANGE_OUTSIDE;
+                break;
+            case GREATER_THAN_OR_EQUAL_TO:
+                group = RANGE_OUTSIDE_INCLUSIVE;
+                break;
+            default:
+                throw new UnsupportedAlertConditionOperatorException("Range conditions do not support " + operator);
+            }
+            if (hiValue == null || !isValid(threshold)) {
+                group = NEVER;
+            } else {
+                highThreshold = hiValue.doubleValue();
+            }
+        } else {
+            switch (operator) {
+            case GREATER_THAN:
+                group = GREATER_THAN;
+                break;
+            case LESS_THAN:
+                group = LESS_THAN;
+                break;
+            case EQUALS:
+                group = EQUALS;
+                break;
+            case CHANGES:
+                group = CHANGES;
+                break;
+            default:
+                throw new UnsupportedAlertConditionOperatorException("Numeric conditions do not support " + operator);
+            }
+            if (group != CHANGES && !isValid(threshold)) {
+                group = NEVER;
+            }
+        }
+
+        if (size == scheduleIds.length) {
+            int capacity = size * 2;
+            scheduleIds = Arrays.copyOf(scheduleIds, capacity);
+            triggerIds = Arrays.copyOf(triggerIds, capacity);
+            groups = Arrays.copyOf(groups, capacity);
+            thresholds = Arrays.copyOf(thresholds, capacity);
+            highThresholds = Arrays.copyOf(highThresholds, capacity);
+            activities = Arrays.copyOf(activities, capacity);
+        }
+
+        scheduleIds[size] = scheduleId;
+        triggerIds[size] = cacheElement.getAlertConditionTriggerId();
+        groups[size] = group;
+        thresholds[size] = threshold;
+        highThresholds[size] = highThreshold;
+        activities[size] = UNKNOWN;
+        ++size;
+
+        built = false;
+    }
+
+    /**
+     * Copies the index, leaving out the given conditions. The copy keeps the activity and the last values of the
+     * conditions it contains, and has to be {@link #build() built} before it is evaluated.
+     *
+     * @param removedTriggerIds the conditions not to copy
+     * @return the copy
+     */
+    public synchronized NumericConditionIndex copy(Set<Integer> removedTriggerIds) {
+        NumericConditionIndex copy = new NumericConditionIndex();
+        int capacity = Math.max(16, size);
+        copy.scheduleIds = new int[capacity];
+        copy.triggerIds = new int[capacity];
+        copy.groups = new byte[capacity];
+        copy.thresholds = new double[capacity];
+        copy.highThresholds = new double[capacity];
+        copy.activities = new byte[capacity];
+
+        int copied = 0;
+        for (int i = 0; i < size; ++i) {
+            if (removedTriggerIds.contains(triggerIds[i])) {
+                continue;
+            }
+            copy.scheduleIds[copied] = scheduleIds[i];
+            copy.triggerIds[copied] = triggerIds[i];
+            copy.groups[copied] = groups[i];
+            copy.thresholds[copied] = thresholds[i];
+            copy.highThresholds[copied] = highThresholds[i];
+            copy.activities[copied] = activities[i];
+            ++copied;
+        }
+        copy.size = copied;
+        copy.built = false;
+        return copy;
+    }
+
+    /**
+     * @return the number of conditions in the index
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Sorts the conditions and (re)creates the schedule lookup. The activity of the conditions is kept.
+     */
+    public synchronized void build() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer i1, Integer i2) {
+                int c1 = i1.intValue(), c2 = i2.intValue();
+                if (scheduleIds[c1] != scheduleIds[c2]) {
+                    return (scheduleIds[c1] < scheduleIds[c2]) ? -1 : 1;
+                }
+                if (groups[c1] != groups[c2]) {
+                    return groups[c1] - groups[c2];
+                }
+                return Double.compare(thresholds[c1], thresholds[c2]);
+            }
+        });
+
+        int[] sortedScheduleIds = new int[size];
+        int[] sortedTriggerIds = new int[size];
+        byte[] sortedGroups = new byte[size];
+        double[] sortedThresholds = new double[size];
+        double[] sortedHighThresholds = new double[size];
+        byte[] sortedActivities = new byte[size];
+        int entries = 0;
+        for (int i = 0; i < size; ++i) {
+            int c = order[i];
+            sortedScheduleIds[i] = scheduleIds[c];
+            sortedTriggerIds[i] = triggerIds[c];
+            sortedGroups[i] = groups[c];
+            sortedThresholds[i] = thresholds[c];
+            sortedHighThresholds[i] = highThresholds[c];
+            sortedActivities[i] = activities[c];
+            if (i == 0 || sortedScheduleIds[i] != sortedScheduleIds[i - 1]) {
+                ++entries;
+            }
+        }
+        scheduleIds = sortedScheduleIds;
+        triggerIds = sortedTriggerIds;
+        groups = sortedGroups;
+        thresholds = sortedThresholds;
+        highThresholds = sortedHighThresholds;
+        activities = sortedActivities;
+
+        int capacity = 2;
+        while (capacity < entries * 2) {
+            capacity <<= 1;
+        }
+        slotKeys = new int[capacity];
+        slotEntries = new int[capacity];
+        groupOffsets = new int[entries * (GROUPS + 1)];
+        activeCounts = new int[entries];
+
+        int entry = 0;
+        int start = 0;
+        while (start < size) {
+            int end = start;
+            while (end < size && scheduleIds[end] == scheduleIds[start]) {
+                ++end;
+            }
+
+            int slot = slotOf(scheduleIds[start]);
+            while (slotEntries[slot] != 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            slotKeys[slot] = scheduleIds[start];
+            slotEntries[slot] = entry + 1;
+
+            int base = entry * (GROUPS + 1);
+            int offset = start;
+            for (int group = 0; group < GROUPS; ++group) {
+                groupOffsets[base + group] = offset;
+                while (offset < end && groups[offset] == group) {
+                    ++offset;
+                }
+            }
+            groupOffsets[base + GROUPS] = end;
+
+            for (int i = start; i < end; ++i) {
+                if (groups[i] != CHANGES && activities[i] != INACTIVE) {
+                    ++activeCounts[entry];
+                }
+            }
+
+            ++entry;
+            start = end;
+        }
+
+        built = true;
+    }
+
+    /**
+     * Evaluates all numeric data of the given batch; any other kind of data is ignored.
+     *
+     * @param data the collected data
+     * @param listener receives the activations and deactivations
+     */
+    public synchronized void evaluate(MeasurementData[] data, Listener listener) {
+        if (!built) {
+            build();
+        }
+        for (MeasurementData datum : data) {
+            if (datum instanceof MeasurementDataNumeric) {
+                Double value = ((MeasurementDataNumeric) datum).getValue();
+                evaluate(datum.getScheduleId(), (value == null) ? Double.NaN : value.doubleValue(),
+                    datum.getTimestamp(), listener);
+            }
+        }
+    }
+
+    /**
+     * Evaluates the conditions of one schedule against the given value.
+     *
+     * @param scheduleId the schedule the value was collected for
+     * @param value the collected value; NaN and infinite values match no condition
+     * @param timestamp the collection time
+     * @param listener receives the activations and deactivations
+     */
+    public synchronized void evaluate(int scheduleId, double value, long timestamp, Listener listener) {
+        if (!built) {
+            build();
+        }
+        int entry = find(scheduleId);
+        if (entry < 0) {
+            return;
+        }
+
+        int base = entry * (GROUPS + 1);
+        boolean valid = isValid(value);
+
+        for (int group = 0; group < GROUPS; ++group) {
+            int start = groupOffsets[base + group];
+            int end = groupOffsets[base + group + 1];
+            if (start == end) {
+                continue;
+            }
+
+            if (group == CHANGES) {
+                if (valid) {
+                    evaluateChanges(start, end, value, timestamp, listener);
+                }
+                continue;
+            }
+
+            if (!valid || group == NEVER) {
+                deactivate(entry, start, end, timestamp, listener);
+                continue;
+            }
+
+            // [from, to) is the window of conditions whose outcome depends on the value, everything outside of it
+            // either never matches or - for the outside-of-range groups - always matches
+            int from = start;
+            int to;
+            boolean outsideMatches = false;
+            switch (group) {
+            case GREATER_THAN:
+                to = lowerBound(start, end, value);
+                activate(entry, from, to, value, timestamp, listener);
+                break;
+            case LESS_THAN:
+                from = upperBound(start, end, value);
+                to = end;
+                activate(entry, from, to, value, timestamp, listener);
+                break;
+            case EQUALS:
+                from = lowerBound(start, end, value);
+                to = upperBound(from, end, value);
+                activate(entry, from, to, value, timestamp, listener);
+                break;
+            case RANGE_INSIDE:
+                to = lowerBound(start, end, value);
+                for (int i = from; i < to; ++i) {
+                    evaluate(entry, i, Double.compare(value, highThresholds[i]) < 0, value, timestamp, listener);
+                }
+                break;
+            case RANGE_INSIDE_INCLUSIVE:
+                to = upperBound(start, end, value);
+                for (int i = from; i < to; ++i) {
+                    evaluate(entry, i, Double.compare(value, highThresholds[i]) <= 0, value, timestamp, listener);
+                }
+                break;
+            case RANGE_OUTSIDE:
+                to = lowerBound(start, end, value);
+                for (int i = from; i < to; ++i) {
+                    evaluate(entry, i, Double.compare(value, highThresholds[i]) >= 0, value, timestamp, listener);
+                }
+                outsideMatches = true;
+                break;
+            default: // RANGE_OUTSIDE_INCLUSIVE
+                to = upperBound(start, end, value);
+                for (int i = from; i < to; ++i) {
+                    evaluate(entry, i, Double.compare(value, highThresholds[i]) > 0, value, timestamp, listener);
+                }
+                outsideMatches = true;
+                break;
+            }
+
+            if (outsideMatches) {
+                activate(entry, start, from, value, timestamp, listener);
+                activate(entry, to, end, value, timestamp, listener);
+            } else {
+                deactivate(entry, start, from, timestamp, listener);
+                deactivate(entry, to, end, timestamp, listener);
+            }
+        }
+    }
+
+    private void evaluateChanges(int start, int end, double value, long timestamp, Listener listener) {
+        for (int i = start; i < end; ++i) {
+            double previous = thresholds[i];
+            // without a previous value a CHANGES condition never fires, just like NumericDoubleCacheElement
+            if (isValid(previous)) {
+                thresholds[i] = value;
+                if (Double.compare(previous, value) != 0) {
+                    listener.activate(triggerIds[i], timestamp, value);
+                }
+            }
+        }
+    }
+
+    private void evaluate(int entry, int i, boolean matches, double value, long timestamp, Listener listener) {
+        if (matches) {
+            activate(entry, i, i + 1, value, timestamp, listener);
+        } else {
+            deactivate(entry, i, i + 1, timestamp, listener);
+        }
+    }
+
+    private void activate(int entry, int start, int end, double value, long timestamp, Listener listener) {
+        for (int i = start; i < end; ++i) {
+            if (activities[i] == INACTIVE) {
+                ++activeCounts[entry];
+            }
+            activities[i] = ACTIVE;
+            listener.activate(triggerIds[i], timestamp, value);
+        }
+    }
+
+    private void deactivate(int entry, int start, int end, long timestamp, Listener listener) {
+        for (int i = start; i < end && activeCounts[entry] > 0; ++i) {
+            if (activities[i] != INACTIVE) {
+                activities[i] = INACTIVE;
+                --activeCounts[entry];
+                listener.deactivate(triggerIds[i], timestamp);
+            }
+        }
+    }
+
+    // the first index in [start, end) whose threshold is not less than the value
+    private int lowerBound(int start, int end, double value) {
+        int low = start, high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Double.compare(thresholds[mid], value) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // the first index in [start, end) whose threshold is greater than the value
+    private int upperBound(int start, int end, double value) {
+        int low = start, high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Double.compare(thresholds[mid], value) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int find(int scheduleId) {
+        if (slotEntries.length == 0) {
+            return -1;
+        }
+        int mask = slotEntries.length - 1;
+        int slot = slotOf(scheduleId);
+        while (true) {
+            int entry = slotEntries[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            if (slotKeys[slot] == scheduleId) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int slotOf(int scheduleId) {
+        int hash = scheduleId * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (slotEntries.length - 1);
+    }
+
+    private static boolean isValid(double value) {
+        return !Double.isNaN(value) && !Double.isInfinite(value);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.alert.engine.jms;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.rhq.enterprise.server.alert.engine.jms.model.AlertConditionMessageBatch;
+
+/**
+ * Lets the sender of an {@link AlertConditionMessageBatch} wait until the {@link AlertConditionConsumerBean} has
+ * processed it - including the cache reload that alerts fired by the batch may cause. The alert condition queue is
+ * local to each server, so the sender and the consumer of a batch always share this singleton.
+ */
+public class AlertConditionBatchTracker {
+
+    private static final AlertConditionBatchTracker singleton = new AlertConditionBatchTracker();
+
+    private final ConcurrentMap<Long, CountDownLatch> pendingBatches = new ConcurrentHashMap<Long, CountDownLatch>();
+
+    public static AlertConditionBatchTracker getSingleton() {
+        return singleton;
+    }
+
+    /**
+     * Starts tracking the given batch; must be called before the batch is sent.
+     */
+    public void track(long batchId) {
+        pendingBatches.put(batchId, new CountDownLatch(1));
+    }
+
+    /**
+     * Stops tracking the given batch without waiting for it, e.g. because it could not be sent.
+     */
+    public void untrack(long batchId) {
+        pendingBatches.remove(batchId);
+    }
+
+    /**
+     * Waits until the given batch has been processed and stops tracking it.
+     *
+     * @return false if the batch was not processed within the timeout
+     */
+    public boolean await(long batchId, long timeoutMillis) {
+        CountDownLatch latch = pendingBatches.get(batchId);
+        if (latch == null) {
+            return true;
+        }
+        try {
+            return latch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            pendingBatches.remove(batchId);
+        }
+    }
+
+    /**
+     * Called by the consumer once it is done with the given batch, whether it succeeded or not.
+     */
+    public void processed(long batchId) {
+        CountDownLatch latch = pendingBatches.get(batchId);
+        if (latch != null) {
+            latch.countDown();
+        }
+    }
+}
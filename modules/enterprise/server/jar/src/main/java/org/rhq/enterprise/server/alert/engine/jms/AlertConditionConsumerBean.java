@@ -18,6 +18,14 @@
  */
 package org.rhq.enterprise.server.alert.engine.jms;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
 import javax.ejb.ActivationConfigProperty;
 import javax.ejb.EJB;
 import javax.ejb.MessageDriven;
@@ -34,6 +42,7 @@ import org.rhq.enterprise.server.alert.AlertConditionManagerLocal;
 import org.rhq.enterprise.server.alert.AlertManagerLocal;
 import org.rhq.enterprise.server.alert.CachedConditionManagerLocal;
 import org.rhq.enterprise.server.alert.engine.jms.model.AbstractAlertConditionMessage;
+import org.rhq.enterprise.server.alert.engine.jms.model.AlertConditionMessageBatch;
 import org.rhq.enterprise.server.cloud.instance.CacheConsistencyManagerLocal;
 import org.rhq.enterprise.server.util.concurrent.AlertSerializer;
 
@@ -62,47 +71,108 @@ public class AlertConditionConsumerBean implements MessageListener {
 
     @Override
     public void onMessage(Message message) {
-        AbstractAlertConditionMessage conditionMessage = null;
+        AlertConditionMessageBatch batch = null;
 
         try {
             ObjectMessage objectMessage = (ObjectMessage) message;
-            conditionMessage = (AbstractAlertConditionMessage) objectMessage.getObject();
+            batch = (AlertConditionMessageBatch) objectMessage.getObject();
         } catch (Throwable t) {
             log.error("Error getting content of jms message", t);
             return;
         }
 
-        Integer definitionId = null;
         try {
-            if (log.isDebugEnabled()) {
-                log.debug("Received message: " + conditionMessage);
-            }
+            processBatch(batch);
+        } finally {
+            // let a sender that waits for this batch continue
+            AlertConditionBatchTracker.getSingleton().processed(batch.getId());
+        }
+    }
 
+    private void processBatch(AlertConditionMessageBatch batch) {
+        if (log.isDebugEnabled()) {
+            log.debug("Received message: " + batch);
+        }
+
+        List<AbstractAlertConditionMessage> conditionMessages = batch.getMessagesByTimestamp();
+        Map<Integer, Integer> definitionIds = new HashMap<Integer, Integer>();
+        Set<Integer> discardedConditionIds = new HashSet<Integer>();
+        for (AbstractAlertConditionMessage conditionMessage : conditionMessages) {
             int alertConditionId = conditionMessage.getAlertConditionId();
-            InventoryStatus status = alertConditionManager.getResourceStatusByConditionId(alertConditionId);
-            if (status != InventoryStatus.COMMITTED) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Resource for AlertCondition[id=" + alertConditionId
-                        + "] is no longer COMMITTED, status was '" + status + "'; this message will be discarded");
+            if (definitionIds.containsKey(alertConditionId) || discardedConditionIds.contains(alertConditionId)) {
+                continue;
+            }
+            try {
+                Integer definitionId = getDefinitionId(alertConditionId);
+                if (definitionId != null) {
+                    definitionIds.put(alertConditionId, definitionId);
+                } else {
+                    discardedConditionIds.add(alertConditionId);
                 }
-                return;
+            } catch (Throwable t) {
+                log.error("Error handling messages for AlertCondition[id=" + alertConditionId + "] in " + batch
+                    + " - " + t.toString());
+                discardedConditionIds.add(alertConditionId);
             }
+        }
+
+        if (definitionIds.isEmpty()) {
+            return;
+        }
 
-            definitionId = alertConditionManager.getAlertDefinitionByConditionIdInNewTransaction(alertConditionId);
+        // the messages of each definition, still ordered by timestamp
+        Map<Integer, List<AbstractAlertConditionMessage>> messagesByDefinition;
+        messagesByDefinition = new TreeMap<Integer, List<AbstractAlertConditionMessage>>();
+        for (AbstractAlertConditionMessage conditionMessage : conditionMessages) {
+            Integer definitionId = definitionIds.get(conditionMessage.getAlertConditionId());
             if (definitionId == null) {
-                log.info("AlertCondition[id=" + alertConditionId
-                    + "] has been removed after it was triggered; this message will be discarded");
-                return;
+                continue;
             }
+            List<AbstractAlertConditionMessage> definitionMessages = messagesByDefinition.get(definitionId);
+            if (definitionMessages == null) {
+                definitionMessages = new ArrayList<AbstractAlertConditionMessage>();
+                messagesByDefinition.put(definitionId, definitionMessages);
+            }
+            definitionMessages.add(conditionMessage);
+        }
 
-            AlertSerializer.getSingleton().lock(definitionId);
-
-            /*
-             * must be executed in a new, nested transaction so that by it completes and unlocks, the next thread
-             * will see all of its results.
-             */
-            Alert newAlert = cachedConditionManager.processCachedConditionMessage(conditionMessage, definitionId);
+        // only one definition is locked at a time, and only while its alerts are created
+        List<Alert> newAlerts = new ArrayList<Alert>();
+        for (Map.Entry<Integer, List<AbstractAlertConditionMessage>> entry : messagesByDefinition.entrySet()) {
+            Integer definitionId = entry.getKey();
+            List<AbstractAlertConditionMessage> definitionMessages = entry.getValue();
+            boolean locked = false;
+            try {
+                AlertSerializer.getSingleton().lock(definitionId);
+                locked = true;
+
+                /*
+                 * must be executed in a new, nested transaction so that by it completes and unlocks, the next thread
+                 * will see all of its results.
+                 */
+                try {
+                    newAlerts.addAll(cachedConditionManager.processCachedConditionMessages(definitionMessages,
+                        definitionIds));
+                } catch (Throwable t) {
+                    // don't let one bad message take the rest of the definition's messages down with it
+                    log.warn("Error handling the messages of AlertDefinition[id=" + definitionId + "] in " + batch
+                        + " in one transaction, handling them one by one - " + t.toString());
+                    newAlerts.addAll(processMessages(definitionMessages, definitionIds));
+                }
+            } catch (Throwable t) {
+                log.error("Error handling the messages of AlertDefinition[id=" + definitionId + "] in " + batch
+                    + " - " + t.toString());
+            } finally {
+                if (locked) {
+                    try {
+                        AlertSerializer.getSingleton().unlock(definitionId);
+                    } catch (Throwable t) {
+                    }
+                }
+            }
+        }
 
+        try {
             /*
              * In general it's not required to reload the caches directly. Changes made via the AlertDefinitionManager
              * will update the cache indirectly via the status fields on the server (for the global cache) and
@@ -120,23 +190,60 @@ public class AlertConditionConsumerBean implements MessageListener {
              * updated before executing notifications that could initiate recovery processing (like an automated
              * restart of a down resource).  It also makes the alert firing transaction more lean.
              */
-            if (null != newAlert) {
+            if (!newAlerts.isEmpty()) {
                 log.debug("Checking for cache reload due to alert firing");
                 cacheConsistencyManager.reloadServerCacheIfNeeded();
 
-                //  the alert is already persisted, now process notifications
-                alertManager.sendAlertNotifications(newAlert);
+                //  the alerts are already persisted, now process notifications
+                for (Alert newAlert : newAlerts) {
+                    try {
+                        alertManager.sendAlertNotifications(newAlert);
+                    } catch (Throwable t) {
+                        log.error("Error sending notifications for " + newAlert + " - " + t.toString());
+                    }
+                }
             }
 
         } catch (Throwable t) {
-            log.error("Error handling " + conditionMessage + " - " + t.toString());
-        } finally {
+            log.error("Error handling " + batch + " - " + t.toString());
+        }
+    }
+
+    private Integer getDefinitionId(int alertConditionId) {
+        InventoryStatus status = alertConditionManager.getResourceStatusByConditionId(alertConditionId);
+        if (status != InventoryStatus.COMMITTED) {
+            if (log.isDebugEnabled()) {
+                log.debug("Resource for AlertCondition[id=" + alertConditionId
+                    + "] is no longer COMMITTED, status was '" + status + "'; its messages will be discarded");
+            }
+            return null;
+        }
+
+        Integer definitionId = alertConditionManager.getAlertDefinitionByConditionIdInNewTransaction(alertConditionId);
+        if (definitionId == null) {
+            log.info("AlertCondition[id=" + alertConditionId
+                + "] has been removed after it was triggered; its messages will be discarded");
+        }
+        return definitionId;
+    }
+
+    private List<Alert> processMessages(List<AbstractAlertConditionMessage> conditionMessages,
+        Map<Integer, Integer> definitionIds) {
+        List<Alert> newAlerts = new ArrayList<Alert>();
+        for (AbstractAlertConditionMessage conditionMessage : conditionMessages) {
+            Integer definitionId = definitionIds.get(conditionMessage.getAlertConditionId());
+            if (definitionId == null) {
+                continue;
+            }
             try {
-                if (definitionId != null) {
-                    AlertSerializer.getSingleton().unlock(definitionId);
+                Alert newAlert = cachedConditionManager.processCachedConditionMessage(conditionMessage, definitionId);
+                if (newAlert != null) {
+                    newAlerts.add(newAlert);
                 }
             } catch (Throwable t) {
+                log.error("Error handling " + conditionMessage + " - " + t.toString());
             }
         }
+        return newAlerts;
     }
-}
\ No newline at end of file
+}
@@ -30,8 +30,7 @@ import javax.jms.ObjectMessage;
 import javax.jms.Queue;
 import javax.jms.Session;
 
-import org.rhq.enterprise.server.alert.engine.jms.model.ActiveAlertConditionMessage;
-import org.rhq.enterprise.server.alert.engine.jms.model.InactiveAlertConditionMessage;
+import org.rhq.enterprise.server.alert.engine.jms.model.AlertConditionMessageBatch;
 
 /**
  * A convenience class that will be used by the AlertConditionCacheManager to send messages to a JMS queue for
@@ -53,36 +52,16 @@ public class CachedConditionProducerBean implements CachedConditionProducerLocal
     private Queue alertConditionQueue;
 
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
-    public <S> void sendActivateAlertConditionMessage(int alertConditionId,
-        long timestamp, S value, Object... extraParams) throws JMSException {
+    public void sendAlertConditionMessages(AlertConditionMessageBatch messages) throws JMSException {
         Connection connection = factory.createConnection();
         Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
         MessageProducer sender = session.createProducer(alertConditionQueue);
 
         /*
-         * The triggered alert condition gets stored as a string anyway, so until this is made more flexible we'll just
-         * send the string representation of the value for the AbstractCacheElement in the JMS message
+         * activations carry the string representation of the matched value, deactivations (missing "value" element)
+         * are negative events; all of them travel together so the consumer can process them in one transaction
          */
-        ActiveAlertConditionMessage conditionMessage = new ActiveAlertConditionMessage(alertConditionId, timestamp,
-            value.toString(), extraParams);
-
-        ObjectMessage message = session.createObjectMessage(conditionMessage);
-
-        sender.send(message);
-
-        connection.close();
-    }
-
-    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
-    public void sendDeactivateAlertConditionMessage(int alertConditionId, long timestamp) throws JMSException {
-        Connection connection = factory.createConnection();
-        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-        MessageProducer sender = session.createProducer(alertConditionQueue);
-
-        // missing "value" element in the message is a negative event
-        InactiveAlertConditionMessage conditionMessage = new InactiveAlertConditionMessage(alertConditionId, timestamp);
-
-        ObjectMessage message = session.createObjectMessage(conditionMessage);
+        ObjectMessage message = session.createObjectMessage(messages);
 
         sender.send(message);
 
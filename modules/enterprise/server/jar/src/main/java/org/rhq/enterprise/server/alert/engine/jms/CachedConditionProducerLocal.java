@@ -21,7 +21,7 @@ package org.rhq.enterprise.server.alert.engine.jms;
 import javax.ejb.Local;
 import javax.jms.JMSException;
 
-import org.rhq.enterprise.server.alert.engine.model.AbstractCacheElement;
+import org.rhq.enterprise.server.alert.engine.jms.model.AlertConditionMessageBatch;
 
 /**
  * @author Joseph Marques
@@ -30,11 +30,9 @@ import org.rhq.enterprise.server.alert.engine.model.AbstractCacheElement;
 @Local
 public interface CachedConditionProducerLocal {
     /**
-     * Send a message to the appropriate JMS destination for processing. This destination handles creating and
-     * persisting entities corresponding to triggered alert conditions.
+     * Send all activations and deactivations of the given batch as one message to the appropriate JMS destination
+     * for processing. This destination handles creating and persisting entities corresponding to triggered alert
+     * conditions.
      */
-    <S> void sendActivateAlertConditionMessage(int alertConditionId, long timestamp,
-        S value, Object... extraParams) throws JMSException;
-
-    void sendDeactivateAlertConditionMessage(int alertConditionId, long timestamp) throws JMSException;
+    void sendAlertConditionMessages(AlertConditionMessageBatch messages) throws JMSException;
 }
\ No newline at end of file
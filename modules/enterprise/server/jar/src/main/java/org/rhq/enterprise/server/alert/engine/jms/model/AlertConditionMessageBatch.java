@@ -0,0 +1,90 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.alert.engine.jms.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * All activations and deactivations produced by one check of the alert condition caches, e.g. for one measurement
+ * report. The batch is sent as one JMS message and processed by the consumer in one transaction.
+ */
+public class AlertConditionMessageBatch implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final AtomicLong nextId = new AtomicLong();
+
+    private final long id = nextId.incrementAndGet();
+    private final List<AbstractAlertConditionMessage> messages = new ArrayList<AbstractAlertConditionMessage>();
+
+    public AlertConditionMessageBatch() {
+    }
+
+    public AlertConditionMessageBatch(AbstractAlertConditionMessage message) {
+        messages.add(message);
+    }
+
+    /**
+     * @return the id of this batch, unique within this server
+     */
+    public long getId() {
+        return id;
+    }
+
+    public void add(AbstractAlertConditionMessage message) {
+        messages.add(message);
+    }
+
+    public boolean isEmpty() {
+        return messages.isEmpty();
+    }
+
+    public int size() {
+        return messages.size();
+    }
+
+    public List<AbstractAlertConditionMessage> getMessages() {
+        return messages;
+    }
+
+    /**
+     * @return the messages ordered by timestamp; messages with the same timestamp keep the order they were added in
+     */
+    public List<AbstractAlertConditionMessage> getMessagesByTimestamp() {
+        List<AbstractAlertConditionMessage> ordered = new ArrayList<AbstractAlertConditionMessage>(messages);
+        Collections.sort(ordered, new Comparator<AbstractAlertConditionMessage>() {
+            public int compare(AbstractAlertConditionMessage m1, AbstractAlertConditionMessage m2) {
+                if (m1.getTimestamp() == m2.getTimestamp()) {
+                    return 0;
+                }
+                return (m1.getTimestamp() < m2.getTimestamp()) ? -1 : 1;
+            }
+        });
+        return ordered;
+    }
+
+    @Override
+    public String toString() {
+        return "AlertConditionMessageBatch" + "[ " + "id=" + id + ", " + "size=" + messages.size() + " ]";
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.blob;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A store of immutable content keyed by the SHA-256 digest of the content, used to keep drift files and package bits
+ * out of the database. Because the key is derived from the content, storing the same content twice stores it once,
+ * and content that is in the store is always complete.
+ *
+ * <p>Ids are lower case hex digests. All methods but {@link #contains(String)} throw an
+ * {@link IllegalArgumentException} for anything else.
+ * Implementations must be thread safe. The store in use is obtained from {@link BlobStoreFactory}.</p>
+ */
+public interface BlobStore {
+
+    /**
+     * @param id the SHA-256 hex digest of the content
+     *
+     * @return <code>true</code> if the content is in the store, <code>false</code> also if the id is not a SHA-256
+     *         hex digest at all
+     */
+    boolean contains(String id);
+
+    /**
+     * @param id the SHA-256 hex digest of the content
+     *
+     * @return the size of the content in bytes, or -1 if the content is not in the store
+     */
+    long length(String id);
+
+    /**
+     * @param id the SHA-256 hex digest of the content
+     *
+     * @return a stream of the content, to be closed by the caller
+     *
+     * @throws java.io.FileNotFoundException if the content is not in the store
+     * @throws IOException if the content could not be read
+     */
+    InputStream openStream(String id) throws IOException;
+
+    /**
+     * Writes a range of the content to the given stream. Implementations avoid copying the content through the heap
+     * where the stream allows it.
+     *
+     * @param id     the SHA-256 hex digest of the content
+     * @param start  the position of the first byte to write
+     * @param length the number of bytes to write, or -1 to write everything from <code>start</code> on
+     * @param out    where to write the content to; it is left open
+     *
+     * @return the number of bytes written
+     *
+     * @throws java.io.FileNotFoundException if the content is not in the store
+     * @throws IOException if the content could not be read or written
+     */
+    long transferTo(String id, long start, long length, OutputStream out) throws IOException;
+
+    /**
+     * Stores the content read from the stream. The stream is read to its end but not closed.
+     *
+     * @param in the content
+     *
+     * @return the SHA-256 hex digest of the content, which is its id in the store
+     *
+     * @throws IOException if the content could not be read or stored
+     */
+    String store(InputStream in) throws IOException;
+
+    /**
+     * Stores the content read from the stream if its digest is the expected one. The stream is read to its end but
+     * not closed.
+     *
+     * @param id the expected SHA-256 hex digest of the content
+     * @param in the content
+     *
+     * @throws IOException if the content could not be read or stored, or if its digest is not <code>id</code>, in
+     *                     which case nothing is stored
+     */
+    void store(String id, InputStream in) throws IOException;
+
+    /**
+     * @param id the SHA-256 hex digest of the content
+     *
+     * @return <code>true</code> if the content was deleted, <code>false</code> if it was not in the store
+     */
+    boolean delete(String id);
+}
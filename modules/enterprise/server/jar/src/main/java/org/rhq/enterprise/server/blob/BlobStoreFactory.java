@@ -0,0 +1,81 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.blob;
+
+import java.io.File;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jboss.util.StringPropertyReplacer;
+
+/**
+ * Provides the {@link BlobStore} drift files and package bits are stored in. The store is configured with the
+ * {@link #DIRECTORY_PROPERTY} server property; if it is not set, there is no store and that content stays in the
+ * database. A different implementation can be plugged in with the {@link #CLASS_PROPERTY} server property; it must
+ * have a public constructor taking the directory as a {@link File}.
+ */
+public class BlobStoreFactory {
+    private static final Log LOG = LogFactory.getLog(BlobStoreFactory.class);
+
+    public static final String DIRECTORY_PROPERTY = "rhq.server.blob-store.directory";
+    public static final String CLASS_PROPERTY = "rhq.server.blob-store.class";
+
+    private static boolean initialized;
+    private static BlobStore blobStore;
+
+    private BlobStoreFactory() {
+    }
+
+    /**
+     * @return the configured blob store, or <code>null</code> if content is to be stored in the database
+     */
+    public static synchronized BlobStore getBlobStore() {
+        if (!initialized) {
+            blobStore = createBlobStore();
+            initialized = true;
+        }
+        return blobStore;
+    }
+
+    private static BlobStore createBlobStore() {
+        String directory = System.getProperty(DIRECTORY_PROPERTY, "").trim();
+        if (directory.length() == 0) {
+            return null;
+        }
+
+        // allow the configuration to use ${} system property replacement strings
+        File rootDir = new File(StringPropertyReplacer.replaceProperties(directory));
+        String className = System.getProperty(CLASS_PROPERTY, "").trim();
+
+        BlobStore store;
+        if (className.length() == 0) {
+            store = new FileSystemBlobStore(rootDir);
+        } else {
+            try {
+                store = (BlobStore) Class.forName(className).getConstructor(File.class).newInstance(rootDir);
+            } catch (Exception e) {
+                throw new IllegalStateException("Server is misconfigured - cannot create blob store [" + className
+                    + "] from property '" + CLASS_PROPERTY + "'", e);
+            }
+        }
+
+        LOG.info("Drift files and package bits are stored in " + store);
+        return store;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.blob;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.ejb.EJB;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.domain.content.PackageBits;
+import org.rhq.core.domain.content.PackageVersion;
+import org.rhq.core.domain.drift.DriftFileStatus;
+import org.rhq.core.domain.drift.JPADriftFileBits;
+import org.rhq.core.util.jdbc.JDBCUtil;
+import org.rhq.core.util.stream.StreamUtil;
+import org.rhq.enterprise.server.RHQConstants;
+import org.rhq.enterprise.server.content.ContentManagerHelper;
+
+@Stateless
+public class BlobStoreManagerBean implements BlobStoreManagerLocal {
+    private static final Log LOG = LogFactory.getLog(BlobStoreManagerBean.class);
+
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * The SHA-256 of {@link PackageBits#EMPTY_BLOB}, which only a package whose bits really are that one byte has.
+     */
+    private static final String EMPTY_BLOB_SHA256 = "36a9e7f1c95b82ffb99743e0c5c4ce95d83c9a430aac59f84ef3cbfab6145068";
+
+    @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
+    private EntityManager entityManager;
+
+    @javax.annotation.Resource(name = "RHQ_DS", mappedName = RHQConstants.DATASOURCE_JNDI_NAME)
+    private DataSource dataSource;
+
+    @EJB
+    private BlobStoreManagerLocal blobStoreManager;
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public int migrateToBlobStore() {
+        if (BlobStoreFactory.getBlobStore() == null) {
+            return 0;
+        }
+
+        long start = System.currentTimeMillis();
+        int migrated = 0;
+
+        String lastHashId = "";
+        List<String> hashIds = blobStoreManager.findDriftFilesToMigrate(lastHashId, BATCH_SIZE);
+        while (!hashIds.isEmpty()) {
+            for (String hashId : hashIds) {
+                if (blobStoreManager.migrateDriftFile(hashId)) {
+                    ++migrated;
+                }
+                lastHashId = hashId;
+            }
+            hashIds = blobStoreManager.findDriftFilesToMigrate(lastHashId, BATCH_SIZE);
+        }
+
+        int lastId = 0;
+        List<Integer> ids = blobStoreManager.findPackageVersionsToMigrate(lastId, BATCH_SIZE);
+        while (!ids.isEmpty()) {
+            for (Integer id : ids) {
+                if (blobStoreManager.migratePackageBits(id)) {
+                    ++migrated;
+                }
+                lastId = id;
+            }
+            ids = blobStoreManager.findPackageVersionsToMigrate(lastId, BATCH_SIZE);
+        }
+
+        if (migrated > 0) {
+            LOG.info("Moved [" + migrated + "] drift files and package bits from the database to "
+                + BlobStoreFactory.getBlobStore() + " in [" + (System.currentTimeMillis() - start) + "]ms");
+        }
+        return migrated;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<String> findDriftFilesToMigrate(String lastHashId, int max) {
+        return entityManager.createNamedQuery(JPADriftFileBits.QUERY_FIND_IDS_WITH_DATA)
+            .setParameter("lastHashId", lastHashId).setParameter("status", DriftFileStatus.LOADED)
+            .setMaxResults(max).getResultList();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public boolean migrateDriftFile(String hashId) {
+        BlobStore blobStore = BlobStoreFactory.getBlobStore();
+        JPADriftFileBits driftFile = entityManager.find(JPADriftFileBits.class, hashId);
+        if (blobStore == null || driftFile == null || driftFile.getBlob() == null) {
+            return false;
+        }
+
+        try {
+            if (!blobStore.contains(hashId)) {
+                InputStream in = new BufferedInputStream(driftFile.getData());
+                try {
+                    // the hash id is the SHA-256 of the content, which the store verifies
+                    blobStore.store(hashId, in);
+                } finally {
+                    StreamUtil.safeClose(in);
+                }
+            }
+        } catch (Exception e) {
+            LOG.warn("Leaving the content of drift file [" + hashId + "] in the database: " + e);
+            return false;
+        }
+
+        driftFile.setData(null);
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Integer> findPackageVersionsToMigrate(int lastId, int max) {
+        return entityManager.createNamedQuery(PackageVersion.QUERY_FIND_IDS_WITH_PACKAGE_BITS)
+            .setParameter("lastId", lastId).setMaxResults(max).getResultList();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public boolean migratePackageBits(int packageVersionId) {
+        BlobStore blobStore = BlobStoreFactory.getBlobStore();
+        if (blobStore == null) {
+            return false;
+        }
+
+        Connection conn = null;
+        PreparedStatement ps = null;
+        ResultSet results = null;
+        int packageBitsId;
+        try {
+            conn = dataSource.getConnection();
+            ps = conn.prepareStatement("SELECT pb.ID, pb.BITS, pv.FILE_SHA256 FROM " + PackageBits.TABLE_NAME
+                + " pb, RHQ_PACKAGE_VERSION pv WHERE pv.PACKAGE_BITS_ID = pb.ID AND pv.ID = ?");
+            ps.setInt(1, packageVersionId);
+            results = ps.executeQuery();
+            if (!results.next()) {
+                return false;
+            }
+            packageBitsId = results.getInt(1);
+            Blob blob = results.getBlob(2);
+            String sha256 = results.getString(3);
+
+            if (blob == null || isEmptyBlobPlaceholder(blob, sha256)) {
+                return false;
+            }
+
+            PackageVersion packageVersion = entityManager.find(PackageVersion.class, packageVersionId);
+            InputStream in = blob.getBinaryStream();
+            try {
+                ContentManagerHelper.storePackageBits(blobStore, packageVersion, in);
+            } finally {
+                StreamUtil.safeClose(in);
+            }
+        } catch (Exception e) {
+            LOG.warn("Leaving the bits of package version [" + packageVersionId + "] in the database: " + e);
+            return false;
+        } finally {
+            JDBCUtil.safeClose(conn, ps, results);
+        }
+
+        // a bulk update, so that the bits being replaced are not read into memory
+        entityManager.createQuery("UPDATE PackageBitsBlob pbb SET pbb.bits = :bits WHERE pbb.id = :id")
+            .setParameter("bits", PackageBits.EMPTY_BLOB.getBytes()).setParameter("id", packageBitsId)
+            .executeUpdate();
+        return true;
+    }
+
+    /**
+     * Bits that were never loaded, or that are already in the blob store, are exactly the {@link PackageBits#EMPTY_BLOB}
+     * placeholder. Real bits can be that short too, or even empty, so the placeholder is told apart from a package that
+     * really is a single space by the package version's SHA-256.
+     */
+    private static boolean isEmptyBlobPlaceholder(Blob blob, String sha256) throws SQLException {
+        byte[] placeholder = PackageBits.EMPTY_BLOB.getBytes();
+        if (blob.length() != placeholder.length || !Arrays.equals(blob.getBytes(1, placeholder.length), placeholder)) {
+            return false;
+        }
+        return !EMPTY_BLOB_SHA256.equalsIgnoreCase(sha256);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.blob;
+
+import java.util.List;
+
+import javax.ejb.Local;
+
+/**
+ * Moves drift files and package bits that are still stored in the database into the {@link BlobStore}. This is
+ * done in small batches by the {@link org.rhq.enterprise.server.scheduler.jobs.BlobStoreMigrationJob} once a store
+ * is configured; content that is already in the store is left alone, so it is safe to run repeatedly.
+ */
+@Local
+public interface BlobStoreManagerLocal {
+    /**
+     * Migrates everything still in the database. Does nothing if there is no blob store. Each drift file and
+     * package bits is moved in its own transaction.
+     *
+     * @return the number of drift files and package bits that were moved
+     */
+    int migrateToBlobStore();
+
+    /**
+     * @param lastHashId only drift files with a greater hash id are returned, "" for the first batch
+     * @param max the maximum number of ids to return
+     * @return the hash ids of loaded drift files whose content is in the database, in order
+     */
+    List<String> findDriftFilesToMigrate(String lastHashId, int max);
+
+    /**
+     * Moves the content of the drift file into the blob store, and removes it from the database.
+     *
+     * @param hashId the drift file's hash id
+     * @return true if the content was moved
+     */
+    boolean migrateDriftFile(String hashId);
+
+    /**
+     * @param lastId only package versions with a greater id are returned, 0 for the first batch
+     * @param max the maximum number of ids to return
+     * @return the ids of package versions that have package bits, in order
+     */
+    List<Integer> findPackageVersionsToMigrate(int lastId, int max);
+
+    /**
+     * Moves the package version's bits into the blob store, and replaces them in the database with an empty blob.
+     *
+     * @param packageVersionId the package version's id
+     * @return true if the bits were moved
+     */
+    boolean migratePackageBits(int packageVersionId);
+}
@@ -0,0 +1,172 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.blob;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.regex.Pattern;
+
+import org.rhq.core.util.MessageDigestGenerator;
+
+/**
+ * A {@link BlobStore} on the local file system. The content with id <code>abcdef...</code> is stored in the file
+ * <code>ab/cd/abcdef...</code> under the root directory, so no directory holds more than a few thousand entries even
+ * with millions of blobs. Content is first written to a temporary file in the <code>tmp</code> directory under the
+ * root and only renamed into place once it is complete and its digest is known, so readers never see partial content.
+ *
+ * <p>In a server cloud the root directory must be shared by all servers, the same as the package bits directory.</p>
+ */
+public class FileSystemBlobStore implements BlobStore {
+
+    private static final Pattern ID_PATTERN = Pattern.compile("[0-9a-f]{64}");
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File rootDir;
+    private final File tmpDir;
+
+    public FileSystemBlobStore(File rootDir) {
+        this.rootDir = rootDir;
+        this.tmpDir = new File(rootDir, "tmp");
+    }
+
+    public File getRootDirectory() {
+        return rootDir;
+    }
+
+    @Override
+    public boolean contains(String id) {
+        return isId(id) && getFile(id).isFile();
+    }
+
+    @Override
+    public long length(String id) {
+        File file = getFile(id);
+        return file.isFile() ? file.length() : -1L;
+    }
+
+    @Override
+    public InputStream openStream(String id) throws IOException {
+        return new FileInputStream(getFile(id));
+    }
+
+    @Override
+    public long transferTo(String id, long start, long length, OutputStream out) throws IOException {
+        FileInputStream in = new FileInputStream(getFile(id));
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (start >= size) {
+                return 0L;
+            }
+            long count = (length < 0L) ? size - start : Math.min(length, size - start);
+
+            // a file or socket stream lets the kernel copy the bytes directly, anything else is fed from a buffer
+            out.flush();
+            WritableByteChannel target = (out instanceof FileOutputStream) ? ((FileOutputStream) out).getChannel()
+                : Channels.newChannel(out);
+
+            long transferred = 0L;
+            while (transferred < count) {
+                long n = channel.transferTo(start + transferred, count - transferred, target);
+                if (n <= 0L) {
+                    break;
+                }
+                transferred += n;
+            }
+            return transferred;
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public String store(InputStream in) throws IOException {
+        return write(null, in);
+    }
+
+    @Override
+    public void store(String id, InputStream in) throws IOException {
+        getFile(id); // validates the id before reading anything
+        write(id, in);
+    }
+
+    @Override
+    public boolean delete(String id) {
+        return getFile(id).delete();
+    }
+
+    private String write(String expectedId, InputStream in) throws IOException {
+        tmpDir.mkdirs();
+        File tmpFile = File.createTempFile("blob", ".tmp", tmpDir);
+        try {
+            MessageDigestGenerator digest = new MessageDigestGenerator(MessageDigestGenerator.SHA_256);
+            FileOutputStream out = new FileOutputStream(tmpFile);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                    out.write(buffer, 0, n);
+                    digest.add(buffer, 0, n);
+                }
+            } finally {
+                out.close();
+            }
+
+            String id = digest.getDigestString();
+            if (expectedId != null && !expectedId.equals(id)) {
+                throw new IOException("Expected content with SHA-256 [" + expectedId + "] but got [" + id + "]");
+            }
+
+            File file = getFile(id);
+            if (!file.isFile()) {
+                file.getParentFile().mkdirs();
+                // a concurrent store of the same content may win the rename, that is fine
+                if (!tmpFile.renameTo(file) && !file.isFile()) {
+                    throw new IOException("Failed to move [" + tmpFile + "] to [" + file + "]");
+                }
+            }
+            return id;
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    private static boolean isId(String id) {
+        return id != null && ID_PATTERN.matcher(id).matches();
+    }
+
+    File getFile(String id) {
+        if (!isId(id)) {
+            throw new IllegalArgumentException("Not a lower case SHA-256 hex digest: [" + id + "]");
+        }
+        return new File(rootDir, id.substring(0, 2) + File.separator + id.substring(2, 4) + File.separator + id);
+    }
+
+    @Override
+    public String toString() {
+        return "FileSystemBlobStore[" + rootDir + "]";
+    }
+}
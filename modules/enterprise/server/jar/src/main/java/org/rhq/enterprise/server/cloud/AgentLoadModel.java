@@ -0,0 +1,121 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.cloud;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.rhq.core.domain.resource.Agent;
+
+/**
+ * Estimates the load each agent puts on its server from the volume of data it reports: the datapoints it collects per
+ * minute, the resources in its inventory (each one is a datum of a full availability report) and the events it sends
+ * per minute. The loads are relative, normalized such that the average agent has a load of 1.0, so the partitioning
+ * can weigh agents against each other. Every agent has a positive load, even an idle one costs its connection and its
+ * availability pings.
+ */
+public class AgentLoadModel {
+
+    /** The weight of a datapoint collected per minute, the other weights are relative to it. */
+    static final double DATAPOINT_WEIGHT = 1.0;
+
+    /** The weight of a committed resource. */
+    static final double RESOURCE_WEIGHT = 0.5;
+
+    /** The weight of an event sent per minute; events are inserted into the database row by row. */
+    static final double EVENT_WEIGHT = 2.0;
+
+    /** The lowest load an agent can have. */
+    static final double MIN_LOAD = 0.1;
+
+    private final Map<Integer, Double> rawLoads;
+    private final double averageRawLoad;
+
+    /**
+     * Creates a model that gives every agent the same load of 1.0, which is partitioning by agent count.
+     */
+    public AgentLoadModel() {
+        this.rawLoads = Collections.emptyMap();
+        this.averageRawLoad = 0.0;
+    }
+
+    /**
+     * @param agentCount          the number of agents, including the ones that report nothing
+     * @param datapointsPerMinute the datapoints collected per minute, keyed by agent id
+     * @param resourceCounts      the number of committed resources, keyed by agent id
+     * @param eventsPerMinute     the events sent per minute, keyed by agent id
+     */
+    public AgentLoadModel(int agentCount, Map<Integer, Double> datapointsPerMinute, Map<Integer, Long> resourceCounts,
+        Map<Integer, Double> eventsPerMinute) {
+        this.rawLoads = new HashMap<Integer, Double>();
+
+        for (Map.Entry<Integer, Double> entry : datapointsPerMinute.entrySet()) {
+            addRawLoad(entry.getKey(), DATAPOINT_WEIGHT * entry.getValue());
+        }
+        for (Map.Entry<Integer, Long> entry : resourceCounts.entrySet()) {
+            addRawLoad(entry.getKey(), RESOURCE_WEIGHT * entry.getValue());
+        }
+        for (Map.Entry<Integer, Double> entry : eventsPerMinute.entrySet()) {
+            addRawLoad(entry.getKey(), EVENT_WEIGHT * entry.getValue());
+        }
+
+        double total = 0.0;
+        for (double rawLoad : rawLoads.values()) {
+            total += rawLoad;
+        }
+        this.averageRawLoad = (agentCount > 0) ? (total / agentCount) : 0.0;
+    }
+
+    private void addRawLoad(Integer agentId, double rawLoad) {
+        Double current = rawLoads.get(agentId);
+        rawLoads.put(agentId, (null == current) ? rawLoad : (current + rawLoad));
+    }
+
+    /**
+     * @param agent the agent, may be null
+     *
+     * @return the load of the agent relative to the average agent, 0.0 for a null agent
+     */
+    public double getLoad(Agent agent) {
+        if (null == agent) {
+            return 0.0;
+        }
+
+        return getLoad(agent.getId());
+    }
+
+    /**
+     * @param agentId the id of the agent
+     *
+     * @return the load of the agent relative to the average agent
+     */
+    public double getLoad(int agentId) {
+        if (averageRawLoad <= 0.0) {
+            return 1.0;
+        }
+
+        Double rawLoad = rawLoads.get(agentId);
+        if (null == rawLoad) {
+            return MIN_LOAD;
+        }
+
+        return Math.max(rawLoad / averageRawLoad, MIN_LOAD);
+    }
+}
@@ -45,6 +45,7 @@ import org.rhq.core.domain.cloud.composite.FailoverListComposite;
 import org.rhq.core.domain.cloud.composite.FailoverListComposite.ServerEntry;
 import org.rhq.core.domain.cloud.composite.FailoverListDetailsComposite;
 import org.rhq.core.domain.resource.Agent;
+import org.rhq.core.domain.resource.InventoryStatus;
 import org.rhq.enterprise.server.RHQConstants;
 import org.rhq.enterprise.server.core.AgentManagerLocal;
 
@@ -68,6 +69,12 @@ public class FailoverListManagerBean implements FailoverListManagerLocal {
     /** The variation in load between most loaded and least loaded server that indicates balanced load. */
     private static final double ACCEPTABLE_DISPARITY = 0.10;
 
+    /** The reduction of the highest server load that makes a repartition worth its agent churn. */
+    private static final double WORTHWHILE_LOAD_REDUCTION = 0.20;
+
+    /** The period over which the event rate of the agents is measured. */
+    private static final long EVENT_RATE_PERIOD = 60L * 60L * 1000L;
+
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
     private EntityManager entityManager;
 
@@ -137,15 +144,16 @@ public class FailoverListManagerBean implements FailoverListManagerLocal {
         agents.add(agent);
 
         // get the current agent assignments for the servers
-        // TODO (jshaughn) Note that "load" in the query name is not true load but rather the count of agents assigned to
-        // each server (by server list ordinal).  This is fine until we decide to introduce relative load values for the
-        // agents.  Even at that this algorithm may be ok for adding new agents and defer to a full repartition to apply
-        // agent-specific load factors.
+        // Note that "load" in the query name is not true load but rather the count of agents assigned to each server
+        // (by server list ordinal). Agent loads are normalized such that the average agent has load 1.0, so the count
+        // approximates the load well enough for adding a single agent. Measuring the agent loads is left to the full
+        // repartition, which applies the agent-specific load factors.
         Query query = entityManager.createNamedQuery(FailoverListDetails.QUERY_GET_ASSIGNED_LOADS);
         @SuppressWarnings("unchecked")
         List<FailoverListDetailsComposite> existingLoads = query.getResultList();
 
-        Map<Agent, FailoverListComposite> agentServerListMap = getForAgents(event, servers, agents, existingLoads);
+        Map<Agent, FailoverListComposite> agentServerListMap = getForAgents(event, servers, agents, existingLoads,
+            new AgentLoadModel());
         persistComposites(event, agentServerListMap);
         return (agentServerListMap.get(agent));
     }
@@ -155,7 +163,8 @@ public class FailoverListManagerBean implements FailoverListManagerLocal {
         List<Agent> agents = agentManager.getAllAgents();
 
         // persist results immediate, which will be the only writes (as opposed to reads) in this transaction
-        Map<Agent, FailoverListComposite> agentServerListMap = getForAgents(event, servers, agents, null);
+        Map<Agent, FailoverListComposite> agentServerListMap = getForAgents(event, servers, agents, null,
+            getAgentLoadModel(agents.size()));
 
         /* now that the intense in-memory manipulation is complete, let's do the stuff that needs to persist the
          * results to the database; clear out the existing lists **just** before persisting the new ones to keep 
@@ -170,7 +179,8 @@ public class FailoverListManagerBean implements FailoverListManagerLocal {
     public Map<Agent, FailoverListComposite> refresh(PartitionEvent event, List<Server> servers, List<Agent> agents) {
 
         // do not persist results immediately, instead return the results and then delete/persist in quick succession
-        Map<Agent, FailoverListComposite> agentServerListMap = getForAgents(event, servers, agents, null);
+        Map<Agent, FailoverListComposite> agentServerListMap = getForAgents(event, servers, agents, null,
+            getAgentLoadModel());
 
         /* now that the intense in-memory manipulation is complete, let's do the stuff that needs to persist the
          * results to the database; clear out the existing lists **just** before persisting the new ones to keep 
@@ -191,11 +201,22 @@ public class FailoverListManagerBean implements FailoverListManagerLocal {
      *       too long; so, this method no longer does the persistence, which puts the onus on callers to do so; 
      *       some callers will immediately persist the results, otherwise may want to perform other updates or
      *       deletions just prior to persistence - the caller now has that option 
+     *
+     * NOTE: this does not touch the database, which lets the balancing be simulated outside of the container
      */
-    private Map<Agent, FailoverListComposite> getForAgents(PartitionEvent event, List<Server> servers,
-        List<Agent> agents, List<FailoverListDetailsComposite> existingLoads) {
+    Map<Agent, FailoverListComposite> getForAgents(PartitionEvent event, List<Server> servers, List<Agent> agents,
+        List<FailoverListDetailsComposite> existingLoads, final AgentLoadModel loads) {
         Map<Agent, FailoverListComposite> result = new HashMap<Agent, FailoverListComposite>(agents.size());
 
+        // assign the heaviest agents first, the greedy assignment balances the remaining smaller agents around them.
+        // The sort is stable, so agents of equal load keep their order.
+        agents = new ArrayList<Agent>(agents);
+        Collections.sort(agents, new Comparator<Agent>() {
+            public int compare(Agent agent1, Agent agent2) {
+                return Double.compare(loads.getLoad(agent2), loads.getLoad(agent1));
+            }
+        });
+
         // create a bucket for each server to which we will assign agents 
         List<ServerBucket> buckets = new ArrayList<ServerBucket>(servers.size());
         for (Server next : servers) {
@@ -256,7 +277,7 @@ public class FailoverListManagerBean implements FailoverListManagerLocal {
 
                 serverList.add(bestBucket);
                 // note that assigned load takes into consideration compute power of the server
-                bestBucket.assignedLoad += (getAgentLoad(next) / bestBucket.computePower);
+                bestBucket.assignedLoad += (loads.getLoad(next) / bestBucket.computePower);
                 bestBucket.assignedAgents.add(next);
             }
 
@@ -268,7 +289,7 @@ public class FailoverListManagerBean implements FailoverListManagerLocal {
             // - the algorithm is greedy, assigning servers as they are available, this can overload a server near the
             //   end of assignments (due to, for example, constraints avoiding server duplication in a server list).
             // Now, if necessary for load balance, force some agents to new servers.
-            if (balanceLoad(buckets, agentServerListMap)) {
+            if (balanceLoad(buckets, agentServerListMap, loads)) {
                 // for debugging logServerList("Forced Rebalance!", agentServerListMap);
             }
         }
@@ -313,7 +334,8 @@ public class FailoverListManagerBean implements FailoverListManagerLocal {
      * no legal swaps are possible.
      * <pre> 
      */
-    private boolean balanceLoad(List<ServerBucket> buckets, Map<Agent, List<ServerBucket>> agentServerListMap) {
+    private boolean balanceLoad(List<ServerBucket> buckets, Map<Agent, List<ServerBucket>> agentServerListMap,
+        AgentLoadModel loads) {
         boolean done = false;
         boolean rebalanced = false;
 
@@ -366,7 +388,7 @@ public class FailoverListManagerBean implements FailoverListManagerLocal {
                         continue;
                     }
 
-                    load = getAgentLoad(agent);
+                    load = loads.getLoad(agent);
 
                     if (load > highLoad) {
                         // protect against a move that would send too much load to the lowBucket, effectively just
@@ -400,14 +422,95 @@ public class FailoverListManagerBean implements FailoverListManagerLocal {
         return ((highLoad - lowLoad) / highLoad);
     }
 
-    // TODO (jshaughn) figure out how to measure agent load. It should be relative to all other agents, probably normalized such that the average agent
-    // is load 1.0. All agents must have positive load. If the load needs to be computed here perhaps it should be stored on the AgentServerList
-    // to avoid recalculation, if it is expensive.
-    private double getAgentLoad(Agent agent) {
-        if (null == agent)
-            return 0.0;
+    public AgentLoadModel getAgentLoadModel() {
+        Query query = entityManager.createNamedQuery(Agent.QUERY_COUNT_ALL);
+        return getAgentLoadModel(((Number) query.getSingleResult()).intValue());
+    }
+
+    private AgentLoadModel getAgentLoadModel(int agentCount) {
+        Map<Integer, Double> datapointsPerMinute = new HashMap<Integer, Double>();
+        Query query = entityManager.createNamedQuery(Agent.QUERY_FIND_DATAPOINTS_PER_MINUTE_BY_AGENT);
+        query.setParameter("inventoryStatus", InventoryStatus.COMMITTED);
+        for (Object[] row : getRows(query)) {
+            datapointsPerMinute.put((Integer) row[0], ((Number) row[1]).doubleValue());
+        }
+
+        Map<Integer, Long> resourceCounts = new HashMap<Integer, Long>();
+        query = entityManager.createNamedQuery(Agent.QUERY_COUNT_RESOURCES_BY_AGENT);
+        query.setParameter("inventoryStatus", InventoryStatus.COMMITTED);
+        for (Object[] row : getRows(query)) {
+            resourceCounts.put((Integer) row[0], ((Number) row[1]).longValue());
+        }
+
+        Map<Integer, Double> eventsPerMinute = new HashMap<Integer, Double>();
+        query = entityManager.createNamedQuery(Agent.QUERY_COUNT_EVENTS_BY_AGENT);
+        query.setParameter("begin", System.currentTimeMillis() - EVENT_RATE_PERIOD);
+        double minutes = EVENT_RATE_PERIOD / 60000.0;
+        for (Object[] row : getRows(query)) {
+            eventsPerMinute.put((Integer) row[0], ((Number) row[1]).doubleValue() / minutes);
+        }
+
+        return new AgentLoadModel(agentCount, datapointsPerMinute, resourceCounts, eventsPerMinute);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> getRows(Query query) {
+        return query.getResultList();
+    }
+
+    public Map<Integer, Double> getServerLoads() {
+        return getServerLoads(getAgentLoadModel());
+    }
+
+    private Map<Integer, Double> getServerLoads(AgentLoadModel loads) {
+        Map<Integer, Double> result = new HashMap<Integer, Double>();
+
+        Query query = entityManager.createNamedQuery(FailoverListDetails.QUERY_GET_PRIMARY_SERVER_IDS);
+        for (Object[] row : getRows(query)) {
+            addLoad(result, (Integer) row[1], loads.getLoad((Integer) row[0]));
+        }
 
-        return 1.0;
+        return result;
+    }
+
+    public boolean isLoadImbalanced() {
+        List<Server> servers = topologyManager.getAllCloudServers();
+        if (servers.size() < 2) {
+            return false;
+        }
+
+        List<Agent> agents = agentManager.getAllAgents();
+        AgentLoadModel loads = getAgentLoadModel(agents.size());
+
+        // compare the current primary server loads with the ones a repartition would produce
+        Map<Agent, FailoverListComposite> balanced = getForAgents(null, servers, agents, null, loads);
+        Map<Integer, Double> balancedLoads = new HashMap<Integer, Double>();
+        for (Map.Entry<Agent, FailoverListComposite> next : balanced.entrySet()) {
+            if (next.getValue().size() > 0) {
+                addLoad(balancedLoads, next.getValue().get(0).serverId, loads.getLoad(next.getKey()));
+            }
+        }
+
+        double currentMax = getMaxLoad(getServerLoads(loads));
+        double balancedMax = getMaxLoad(balancedLoads);
+        if (log.isDebugEnabled()) {
+            log.debug("Highest server load is " + currentMax + ", a repartition would reduce it to " + balancedMax);
+        }
+
+        return balancedMax < ((1.0 - WORTHWHILE_LOAD_REDUCTION) * currentMax);
+    }
+
+    private static void addLoad(Map<Integer, Double> serverLoads, int serverId, double load) {
+        Double current = serverLoads.get(serverId);
+        serverLoads.put(serverId, (null == current) ? load : (current + load));
+    }
+
+    private static double getMaxLoad(Map<Integer, Double> serverLoads) {
+        double result = 0.0;
+        for (double load : serverLoads.values()) {
+            result = Math.max(result, load);
+        }
+        return result;
     }
 
     @SuppressWarnings("unused")
@@ -90,4 +90,26 @@ public interface FailoverListManagerLocal {
      */
     Map<Agent, FailoverListComposite> refresh(PartitionEvent event, List<Server> servers, List<Agent> agents);
 
+    /**
+     * Measures the load each agent puts on its server from the data it reports. This is what a full repartition
+     * balances the agents by.
+     *
+     * @return the current agent loads
+     */
+    AgentLoadModel getAgentLoadModel();
+
+    /**
+     * Sums the loads of the agents per primary server of their server lists.
+     *
+     * @return the load of each server, keyed by server id. Servers that are no agent's primary server are missing.
+     */
+    Map<Integer, Double> getServerLoads();
+
+    /**
+     * Checks whether a full repartition would balance the agent load noticeably better than the current server lists
+     * do, e.g. because the load of some agents grew. This performs the repartition in memory only.
+     *
+     * @return true if a repartition would reduce the load of the most loaded server considerably
+     */
+    boolean isLoadImbalanced();
 }
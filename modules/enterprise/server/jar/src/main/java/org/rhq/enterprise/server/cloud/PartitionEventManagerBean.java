@@ -200,6 +200,25 @@ public class PartitionEventManagerBean implements PartitionEventManagerLocal {
         }
     }
 
+    @RequiredPermissions({ @RequiredPermission(Permission.MANAGE_SETTINGS),
+        @RequiredPermission(Permission.MANAGE_INVENTORY) })
+    public boolean requestLoadBalancePartition(Subject subject) {
+        Query query = entityManager.createNamedQuery(PartitionEvent.QUERY_FIND_BY_EXECUTION_STATUS);
+        query.setParameter("executionStatus", PartitionEvent.ExecutionStatus.REQUESTED);
+        if (!query.getResultList().isEmpty()) {
+            // a requested repartition balances the load anyway
+            return false;
+        }
+
+        if (!failoverListManager.isLoadImbalanced()) {
+            return false;
+        }
+
+        LOG.info("Agent load is imbalanced across the servers, requesting a repartition");
+        cloudPartitionEventRequest(subject, PartitionEventType.SYSTEM_INITIATED_PARTITION, "Agent load imbalance");
+        return true;
+    }
+
     @RequiredPermission(Permission.MANAGE_INVENTORY)
     public PartitionEvent getPartitionEvent(Subject subject, int partitionEventId) {
         PartitionEvent event = entityManager.find(PartitionEvent.class, partitionEventId);
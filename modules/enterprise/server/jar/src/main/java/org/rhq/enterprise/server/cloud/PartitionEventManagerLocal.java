@@ -83,6 +83,18 @@ public interface PartitionEventManagerLocal {
      */
     void processRequestedPartitionEvents();
 
+    /**
+     * Requests a full repartition, performed by the recurring cluster manager job, if the agent load could be balanced
+     * considerably better than the current server lists do. The load of each agent is estimated from the data it
+     * reports, see {@link AgentLoadModel}. Nothing is requested if a repartition is already pending.
+     *
+     * the subject needs to have MANAGE_INVENTORY and MANAGE_SETTINGS permissions.
+     *
+     * @param subject the caller
+     * @return true if a repartition was requested
+     */
+    boolean requestLoadBalancePartition(Subject subject);
+
     /**
      * This is primarily a test entry point.
      * 
@@ -18,7 +18,10 @@
  */
 package org.rhq.enterprise.server.cloud;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
@@ -87,10 +90,16 @@ public class StatusManagerBean implements StatusManagerLocal {
 
     @SuppressWarnings("unchecked")
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
-    public List<Integer> getAndClearAgentsWithStatusForServer(String serverName) {
+    public Map<Integer, Integer> getAndClearAgentsWithStatusForServer(String serverName) {
         Query selectQuery = entityManager.createNamedQuery(Agent.QUERY_FIND_ALL_WITH_STATUS_BY_SERVER);
         selectQuery.setParameter("serverName", serverName);
-        List<Integer> agentIds = selectQuery.getResultList();
+        List<Object[]> rows = selectQuery.getResultList();
+
+        Map<Integer, Integer> agentStatuses = new HashMap<Integer, Integer>();
+        for (Object[] row : rows) {
+            agentStatuses.put((Integer) row[0], (Integer) row[1]);
+        }
+        List<Integer> agentIds = new ArrayList<Integer>(agentStatuses.keySet());
 
         if (agentIds.size() > 0) {
 
@@ -117,7 +126,7 @@ public class StatusManagerBean implements StatusManagerLocal {
             }
         }
 
-        return agentIds;
+        return agentStatuses;
     }
 
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
@@ -162,11 +171,15 @@ public class StatusManagerBean implements StatusManagerLocal {
          * alert definition is needed to know which caches need to be reloaded to get the new conditions; by the time
          * this method is called, we only have the updated alert definition, thus it's not possible to intelligently
          * know which of the two caches to reload; so, we need to reload them both to be sure the system is consistent
+         *
+         * the agent caches are only marked with the alert definition bit though; they find out on their own which
+         * of their alert definitions changed, and only refresh the conditions of those, see AgentConditionCache
          */
         markGlobalCache(); // use local references to execute in the same transaction
 
         Query updateAgentQuery = entityManager.createNamedQuery(Agent.QUERY_UPDATE_STATUS_BY_ALERT_DEFINITION);
         updateAgentQuery.setParameter("alertDefinitionId", alertDefinitionId);
+        updateAgentQuery.setParameter("status", Agent.Status.ALERT_DEFINITION.mask);
         int agentsUpdated = updateAgentQuery.executeUpdate();
 
         /*
@@ -183,6 +196,27 @@ public class StatusManagerBean implements StatusManagerLocal {
         }
     }
 
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void updateByNewAlertDefinition(Subject subject, int resourceId) {
+        log.debug("About to mark status by new alert definition");
+
+        /*
+         * the new alert definition is not committed yet, so it can't be used to find the agent; but like for updated
+         * alert definitions, the agent caches only need to refresh the conditions of the definition, not reload
+         */
+        markGlobalCache(); // use local references to execute in the same transaction
+
+        Query updateAgentQuery = entityManager
+            .createNamedQuery(Agent.QUERY_UPDATE_ALERT_DEFINITION_STATUS_BY_RESOURCE);
+        updateAgentQuery.setParameter("resourceId", resourceId);
+        updateAgentQuery.setParameter("status", Agent.Status.ALERT_DEFINITION.mask);
+        int agentsUpdated = updateAgentQuery.executeUpdate();
+
+        if (log.isDebugEnabled()) {
+            log.debug("Agents updated: " + agentsUpdated);
+        }
+    }
+
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public void markGlobalCache() {
         Query updateServerQuery = entityManager.createNamedQuery(Server.QUERY_UPDATE_STATUS_BY_NAME);
@@ -245,6 +279,16 @@ public class StatusManagerBean implements StatusManagerLocal {
         }
     }
 
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void updateAvailabilityByAgent(int agentId) {
+        log.debug("About to mark availability status by agent");
+        // only the availability state cache needs to be dropped, not the alert condition caches
+        Query updateAgentQuery = entityManager.createNamedQuery(Agent.QUERY_UPDATE_AVAILABILITY_STATUS_BY_AGENT);
+        updateAgentQuery.setParameter("agentId", agentId);
+        updateAgentQuery.setParameter("status", Agent.Status.AVAILABILITY_UPDATED.mask);
+        updateAgentQuery.executeUpdate();
+    }
+
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public void updateByAutoBaselineCalculationJob() {
         log.debug("About to mark status by autoBaselineCalculationJob");
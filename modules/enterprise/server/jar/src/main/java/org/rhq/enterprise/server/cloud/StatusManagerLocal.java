@@ -18,7 +18,7 @@
  */
 package org.rhq.enterprise.server.cloud;
 
-import java.util.List;
+import java.util.Map;
 
 import javax.ejb.Local;
 
@@ -30,7 +30,10 @@ import org.rhq.core.domain.auth.Subject;
 @Local
 public interface StatusManagerLocal {
 
-    List<Integer> getAndClearAgentsWithStatusForServer(String serverName);
+    /**
+     * @return the status of every agent of the given server whose status was set, keyed by agent id
+     */
+    Map<Integer, Integer> getAndClearAgentsWithStatusForServer(String serverName);
 
     void markGlobalCache();
 
@@ -38,9 +41,17 @@ public interface StatusManagerLocal {
 
     void updateByAlertDefinition(Subject subject, int alertDefinitionId);
 
+    void updateByNewAlertDefinition(Subject subject, int resourceId);
+
     void updateByMeasurementBaseline(int baselineId);
 
     void updateByAgent(int agentId);
 
+    /**
+     * Tells the server the agent is connected to that availabilities of the agent's resources were set outside of
+     * the agent's availability reports, so that it drops the availabilities it has cached for the agent.
+     */
+    void updateAvailabilityByAgent(int agentId);
+
     void updateByAutoBaselineCalculationJob();
 }
@@ -19,6 +19,7 @@
 package org.rhq.enterprise.server.cloud;
 
 import java.util.List;
+import java.util.Map;
 
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
@@ -135,6 +136,12 @@ public class TopologyManagerBean implements TopologyManagerLocal {
         List<ServerWithAgentCountComposite> results = query.getResultList();
         int count = getServerCount();
 
+        Map<Integer, Double> serverLoads = failoverListManager.getServerLoads();
+        for (ServerWithAgentCountComposite next : results) {
+            Double load = serverLoads.get(next.getServer().getId());
+            next.setLoad((null != load) ? load : 0.0);
+        }
+
         return new PageList<ServerWithAgentCountComposite>(results, count, pc);
     }
 
@@ -18,9 +18,9 @@
  */
 package org.rhq.enterprise.server.cloud.instance;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.annotation.Resource;
 import javax.ejb.EJB;
@@ -35,7 +35,9 @@ import javax.ejb.TransactionAttributeType;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.rhq.core.domain.resource.Agent;
 import org.rhq.enterprise.server.alert.engine.AlertConditionCacheManagerLocal;
+import org.rhq.enterprise.server.measurement.AvailabilityStateCache;
 
 /**
  * Each server has partitioned alerts condition cache data.  This session bean exists
@@ -127,12 +129,12 @@ public class CacheConsistencyManagerBean implements CacheConsistencyManagerLocal
          * catch absolutely everything, so that even if this REQUIRES_NEW transaction rollback, 
          * it doesn't rollback the caller (where we reschedule the TIMER to trigger this job again
          */
-        List<Integer> agentIds = new ArrayList<Integer>();
+        Map<Integer, Integer> agentStatuses = new HashMap<Integer, Integer>();
         try {
-            agentIds = serverManager.getAndClearAgentsWithStatus();
+            agentStatuses = serverManager.getAndClearAgentsWithStatus();
 
             // do nothing if nothing to do
-            if (agentIds.size() == 0) {
+            if (agentStatuses.size() == 0) {
                 if (log.isDebugEnabled()) {
                     log.debug("No agent caches need reloading");
                 }
@@ -141,9 +143,26 @@ public class CacheConsistencyManagerBean implements CacheConsistencyManagerLocal
 
             // otherwise print informational messages for poor-man's verification purposes
             long startTime = System.currentTimeMillis();
-            for (Integer nextAgentId : agentIds) {
-                log.debug("Agent[id=" + nextAgentId + "] is stale ");
-                cacheManager.reloadCachesForAgent(nextAgentId);
+            int refreshed = 0;
+            for (Map.Entry<Integer, Integer> nextAgentStatus : agentStatuses.entrySet()) {
+                Integer nextAgentId = nextAgentStatus.getKey();
+                int status = nextAgentStatus.getValue();
+                if (status < 0 || (status & Agent.Status.AVAILABILITY_UPDATED.mask) != 0) {
+                    // availabilities of the agent may have been set by another server, forget the cached ones
+                    AvailabilityStateCache.getInstance().evict(nextAgentId);
+                    status &= ~Agent.Status.AVAILABILITY_UPDATED.mask;
+                }
+                if (status == 0) {
+                    log.debug("Agent[id=" + nextAgentId + "] has changed availabilities ");
+                } else if (status == Agent.Status.ALERT_DEFINITION.mask) {
+                    // only alert definitions changed, the cache can patch in the conditions of those
+                    log.debug("Agent[id=" + nextAgentId + "] has changed alert definitions ");
+                    cacheManager.refreshCachesForAgent(nextAgentId);
+                    refreshed++;
+                } else {
+                    log.debug("Agent[id=" + nextAgentId + "] is stale ");
+                    cacheManager.reloadCachesForAgent(nextAgentId);
+                }
             }
             long endTime = System.currentTimeMillis();
 
@@ -151,17 +170,18 @@ public class CacheConsistencyManagerBean implements CacheConsistencyManagerLocal
 
             if (log.isDebugEnabled()) {
                 log.debug(serverName + " took [" + (endTime - startTime)
-                    + "]ms to reload cache for the follow agentIds: " + agentIds + " agents");
+                    + "]ms to reload cache for the follow agentIds: " + agentStatuses.keySet() + " agents, "
+                    + refreshed + " of them incrementally");
             } else {
-                log.info(serverName + " took [" + (endTime - startTime) + "]ms to reload cache for " + agentIds.size()
-                    + " agents");
+                log.info(serverName + " took [" + (endTime - startTime) + "]ms to reload cache for "
+                    + agentStatuses.size() + " agents, " + refreshed + " of them incrementally");
             }
         } catch (Throwable t) {
             if (log.isDebugEnabled()) {
-                log.debug("Failed to reload caches for the following agents: " + agentIds, t);
+                log.debug("Failed to reload caches for the following agents: " + agentStatuses.keySet(), t);
             } else {
-                log.error("Failed to reload caches for the following agents: " + agentIds + ", cause: "
-                    + t.getMessage());
+                log.error("Failed to reload caches for the following agents: " + agentStatuses.keySet()
+                    + ", cause: " + t.getMessage());
             }
         }
     }
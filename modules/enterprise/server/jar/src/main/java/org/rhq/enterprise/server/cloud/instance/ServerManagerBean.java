@@ -22,6 +22,7 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Resource;
 import javax.ejb.EJB;
@@ -155,8 +156,8 @@ public class ServerManagerBean implements ServerManagerLocal {
         return results;
     }
 
-    public List<Integer> getAndClearAgentsWithStatus() {
-        List<Integer> results = agentStatusManager.getAndClearAgentsWithStatusForServer(getIdentity());
+    public Map<Integer, Integer> getAndClearAgentsWithStatus() {
+        Map<Integer, Integer> results = agentStatusManager.getAndClearAgentsWithStatusForServer(getIdentity());
         return results;
     }
 
@@ -19,6 +19,7 @@
 package org.rhq.enterprise.server.cloud.instance;
 
 import java.util.List;
+import java.util.Map;
 
 import javax.ejb.Local;
 import javax.ejb.Timer;
@@ -71,9 +72,10 @@ public interface ServerManagerLocal {
      * An Agent can have various status settings {@link Agent}.  The Status, when set, indicates
      * that this agent has some necessary work pending, typically processed by a periodic job.
      * 
-     * @return The subset of agents referencing this server that currently have some Status set.
+     * @return The status of the subset of agents referencing this server that currently have some Status set, keyed
+     * by agent id.
      */
-    List<Integer> getAndClearAgentsWithStatus();
+    Map<Integer, Integer> getAndClearAgentsWithStatus();
 
     /**
      * A Server can have various status settings {@link Server}.  The Status, when set, indicates
@@ -108,6 +108,8 @@ import org.rhq.enterprise.server.agentclient.AgentClient;
 import org.rhq.enterprise.server.authz.AuthorizationManagerLocal;
 import org.rhq.enterprise.server.authz.PermissionException;
 import org.rhq.enterprise.server.authz.RequiredPermission;
+import org.rhq.enterprise.server.blob.BlobStore;
+import org.rhq.enterprise.server.blob.BlobStoreFactory;
 import org.rhq.enterprise.server.core.AgentManagerLocal;
 import org.rhq.enterprise.server.plugin.pc.content.PackageDetailsValidationException;
 import org.rhq.enterprise.server.plugin.pc.content.PackageTypeBehavior;
@@ -838,6 +840,12 @@ public class ContentManagerBean implements ContentManagerLocal, ContentManagerRe
         }
         try {
             InstalledPackage installedPackage = entityManager.find(InstalledPackage.class, installedPackageId);
+            BlobStore blobStore = BlobStoreFactory.getBlobStore();
+            String blobId = ContentManagerHelper.getPackageBitsBlobId(blobStore, installedPackage.getPackageVersion());
+            if (blobId != null) {
+                return StreamUtil.slurp(blobStore.openStream(blobId));
+            }
+
             PackageBits bits = installedPackage.getPackageVersion().getPackageBits();
             if (bits == null || bits.getBlob().getBits().length == 0) {
                 long start = System.currentTimeMillis();
@@ -1814,6 +1822,12 @@ public class ContentManagerBean implements ContentManagerLocal, ContentManagerRe
     private PackageBits loadPackageBits(InputStream packageBitStream, int packageVersionId, String packageName,
         String packageVersion, PackageBits existingBits, Map<String, String> contentDetails) {
 
+        BlobStore blobStore = BlobStoreFactory.getBlobStore();
+        if (blobStore != null) {
+            return loadPackageBitsBlobStore(blobStore, packageBitStream, packageVersionId, existingBits,
+                contentDetails);
+        }
+
         // If/When H2 handles blob update/streaming blobs we can get rid of this conditional code
         if (DatabaseTypeFactory.isH2(DatabaseTypeFactory.getDefaultDatabaseType())) {
             return loadPackageBitsH2(packageBitStream, packageVersionId, packageName, packageVersion, existingBits,
@@ -1838,6 +1852,42 @@ public class ContentManagerBean implements ContentManagerLocal, ContentManagerRe
         return bits;
     }
 
+    /**
+     * Writes the bits to the blob store rather than to the database. The package bits row is left with its
+     * EMPTY_BLOB and the bits are found again by the package version's SHA-256.
+     */
+    private PackageBits loadPackageBitsBlobStore(BlobStore blobStore, InputStream packageBitStream,
+        int packageVersionId, PackageBits existingBits, Map<String, String> contentDetails) {
+
+        PackageBits bits = (null == existingBits) ? initializePackageBits(null) : existingBits;
+
+        PackageVersion pv = entityManager.find(PackageVersion.class, packageVersionId);
+        if (null != pv) {
+            pv.setPackageBits(bits);
+            entityManager.flush();
+        }
+
+        String sha256;
+        try {
+            if (null != pv) {
+                sha256 = ContentManagerHelper.storePackageBits(blobStore, pv, packageBitStream);
+            } else {
+                sha256 = blobStore.store(packageBitStream);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to store package bits in " + blobStore, e);
+        } finally {
+            StreamUtil.safeClose(packageBitStream);
+        }
+
+        if (null != contentDetails) {
+            contentDetails.put(UPLOAD_FILE_SIZE, String.valueOf(blobStore.length(sha256)));
+            contentDetails.put(UPLOAD_SHA256, sha256);
+        }
+
+        return bits;
+    }
+
     private PackageBits loadPackageBitsH2(InputStream packageBitStream, int packageVersionId, String packageName,
         String packageVersion, PackageBits existingBits, Map<String, String> contentDetails) {
 
@@ -18,22 +18,29 @@
  */
 package org.rhq.enterprise.server.content;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Comparator;
 import java.util.List;
 
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
 import org.rhq.core.domain.auth.Subject;
 import org.rhq.core.domain.content.ContentSyncResults;
 import org.rhq.core.domain.content.ContentSyncStatus;
 import org.rhq.core.domain.content.InstalledPackage;
 import org.rhq.core.domain.content.Package;
+import org.rhq.core.domain.content.PackageBits;
 import org.rhq.core.domain.content.PackageDetailsKey;
 import org.rhq.core.domain.content.PackageVersion;
 import org.rhq.core.domain.content.PackageVersionFormatDescription;
 import org.rhq.core.domain.content.ValidatablePackageDetailsKey;
 import org.rhq.core.domain.content.transfer.ResourcePackageDetails;
+import org.rhq.enterprise.server.blob.BlobStore;
 import org.rhq.enterprise.server.plugin.pc.MasterServerPluginContainer;
 import org.rhq.enterprise.server.plugin.pc.ServerPluginServiceMBean;
 import org.rhq.enterprise.server.plugin.pc.content.ContentServerPluginContainer;
@@ -46,6 +53,8 @@ import org.rhq.enterprise.server.util.LookupUtil;
  * ContentManagerHelper - Helper class to contain common methods needed by the Content managers.
  */
 public class ContentManagerHelper {
+    private static final Log LOG = LogFactory.getLog(ContentManagerHelper.class);
+
     private EntityManager entityManager;
 
     private static class DefaultPackageTypeBehavior implements PackageTypeBehavior {
@@ -203,5 +212,43 @@ public class ContentManagerHelper {
         PackageTypeBehavior ret = getPackageTypePluginContainer().getPluginManager().getBehavior(packageTypeName);
         return ret == null ? DEFAULT_PACKAGE_TYPE_BEHAVIOR : ret;
     }
-    
+
+    /**
+     * Stores package bits in the blob store rather than in the database. The bits are then found by the SHA-256 of the
+     * package version, so that is set to the digest of what was actually stored. The package bits row keeps its
+     * {@link PackageBits#EMPTY_BLOB}.
+     *
+     * @param blobStore the blob store
+     * @param packageVersion the package version the bits belong to
+     * @param bitsStream the bits, read to the end but not closed
+     * @return the SHA-256 of the bits
+     * @throws IOException if the bits could not be read or stored
+     */
+    public static String storePackageBits(BlobStore blobStore, PackageVersion packageVersion, InputStream bitsStream)
+        throws IOException {
+        String sha256 = blobStore.store(bitsStream);
+        if (packageVersion.getSHA256() != null && !packageVersion.getSHA256().equalsIgnoreCase(sha256)) {
+            LOG.warn("Package bits for [" + packageVersion + "] have SHA-256 [" + sha256 + "] rather than the ["
+                + packageVersion.getSHA256() + "] the package version was created with");
+        }
+        packageVersion.setSHA256(sha256);
+        return sha256;
+    }
+
+    /**
+     * @param blobStore the blob store, may be <code>null</code>
+     * @param packageVersion a package version
+     * @return the id of the package version's bits in the blob store, or <code>null</code> if they are not there
+     */
+    public static String getPackageBitsBlobId(BlobStore blobStore, PackageVersion packageVersion) {
+        if (blobStore == null || packageVersion == null) {
+            return null;
+        }
+        String sha256 = packageVersion.getSHA256();
+        if (sha256 == null) {
+            return null;
+        }
+        sha256 = sha256.toLowerCase();
+        return blobStore.contains(sha256) ? sha256 : null;
+    }
 }
\ No newline at end of file
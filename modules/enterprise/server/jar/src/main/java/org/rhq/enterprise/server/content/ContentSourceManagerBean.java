@@ -33,6 +33,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -49,6 +50,9 @@ import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
 import javax.sql.DataSource;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.Transaction;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -104,6 +108,8 @@ import org.rhq.core.util.stream.StreamUtil;
 import org.rhq.enterprise.server.RHQConstants;
 import org.rhq.enterprise.server.auth.SubjectManagerLocal;
 import org.rhq.enterprise.server.authz.RequiredPermission;
+import org.rhq.enterprise.server.blob.BlobStore;
+import org.rhq.enterprise.server.blob.BlobStoreFactory;
 import org.rhq.enterprise.server.plugin.pc.content.AdvisoryBugDetails;
 import org.rhq.enterprise.server.plugin.pc.content.AdvisoryCVEDetails;
 import org.rhq.enterprise.server.plugin.pc.content.AdvisoryDetails;
@@ -181,6 +187,15 @@ public class ContentSourceManagerBean implements ContentSourceManagerLocal {
         q = entityManager.createNamedQuery(PackageVersion.FIND_FILES_IF_NO_CONTENT_SOURCES_OR_REPOS);
         List<PackageVersionFile> pvFiles = q.getResultList();
 
+        // Likewise get the ids of the bits that may be in the blob store, but delete them only once the deletion of
+        // the package versions has committed, and only if no other package version has the same bits by then.
+        BlobStore blobStore = BlobStoreFactory.getBlobStore();
+        List<String> blobIds = Collections.emptyList();
+        if (blobStore != null) {
+            blobIds = entityManager.createNamedQuery(PackageVersion.FIND_SHA256_IF_NO_CONTENT_SOURCES_OR_REPOS)
+                .getResultList();
+        }
+
         // get ready for bulk delete by clearing entity manager
         entityManager.flush();
         entityManager.clear();
@@ -214,9 +229,62 @@ public class ContentSourceManagerBean implements ContentSourceManagerLocal {
             }
         }
 
+        if (!blobIds.isEmpty()) {
+            purgeOrphanedPackageBlobsAfterCommit(blobIds);
+        }
+
         log.info("User [" + subject + "] purged [" + count + "] orphaned package versions");
     }
 
+    /**
+     * The purge runs in the caller's transaction, and the bits in the blob store cannot be rolled back with it. So they
+     * are only deleted after that transaction has committed.
+     */
+    private void purgeOrphanedPackageBlobsAfterCommit(final List<String> blobIds) {
+        try {
+            Transaction tx = LookupUtil.getTransactionManager().getTransaction();
+            if (tx == null) {
+                contentSourceManager.purgeOrphanedPackageBlobs(blobIds);
+                return;
+            }
+            tx.registerSynchronization(new Synchronization() {
+                public void beforeCompletion() {
+                }
+
+                public void afterCompletion(int status) {
+                    if (status == Status.STATUS_COMMITTED) {
+                        contentSourceManager.purgeOrphanedPackageBlobs(blobIds);
+                    }
+                }
+            });
+        } catch (Exception e) {
+            log.warn("Leaving the bits of [" + blobIds.size() + "] orphaned package versions in the blob store: " + e);
+        }
+    }
+
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void purgeOrphanedPackageBlobs(List<String> blobIds) {
+        BlobStore blobStore = BlobStoreFactory.getBlobStore();
+        if (blobStore == null) {
+            return;
+        }
+
+        int deleted = 0;
+        for (String blobId : blobIds) {
+            blobId = blobId.toLowerCase();
+            try {
+                long users = (Long) entityManager.createNamedQuery(PackageVersion.QUERY_COUNT_BY_SHA256)
+                    .setParameter("sha256", blobId).getSingleResult();
+                if (users == 0L && blobStore.contains(blobId) && blobStore.delete(blobId)) {
+                    ++deleted;
+                }
+            } catch (Exception e) {
+                log.warn("Cannot purge the orphaned package bits [" + blobId + "] from " + blobStore + ": " + e);
+            }
+        }
+        log.debug("Purged the bits of [" + deleted + "] orphaned package versions from " + blobStore);
+    }
+
     @RequiredPermission(Permission.MANAGE_REPOSITORIES)
     public void deleteContentSource(Subject subject, int contentSourceId) {
         log.debug("User [" + subject + "] is deleting content source [" + contentSourceId + "]");
@@ -866,7 +934,12 @@ public class ContentSourceManagerBean implements ContentSourceManagerLocal {
                 pv.setPackageBits(packageBits); // associate the entities
                 entityManager.flush(); // may not be necessary
 
-                if (pk.getContentSource().getDownloadMode() == DownloadMode.DATABASE) {
+                BlobStore blobStore = BlobStoreFactory.getBlobStore();
+                if (pk.getContentSource().getDownloadMode() == DownloadMode.DATABASE && blobStore != null) {
+                    // the package bits row keeps its EMPTY_BLOB, the bits are found by the package version's SHA-256
+                    ContentManagerHelper.storePackageBits(blobStore, pv, bitsStream);
+
+                } else if (pk.getContentSource().getDownloadMode() == DownloadMode.DATABASE) {
                     conn = dataSource.getConnection();
                     // The blob has been initialized to EMPTY_BLOB already by createPackageBits...
                     // we need to lock the row which will be updated so we are using FOR UPDATE
@@ -1101,7 +1174,12 @@ public class ContentSourceManagerBean implements ContentSourceManagerLocal {
                 pv.setPackageBits(packageBits); // associate entities
                 entityManager.flush(); // not sure this is necessary
 
-                if (pk.getContentSource().getDownloadMode() == DownloadMode.DATABASE) {
+                BlobStore blobStore = BlobStoreFactory.getBlobStore();
+                if (pk.getContentSource().getDownloadMode() == DownloadMode.DATABASE && blobStore != null) {
+                    // the package bits row keeps its EMPTY_BLOB, the bits are found by the package version's SHA-256
+                    ContentManagerHelper.storePackageBits(blobStore, pv, bitsStream);
+
+                } else if (pk.getContentSource().getDownloadMode() == DownloadMode.DATABASE) {
                     packageBits = entityManager.find(PackageBits.class, packageBits.getId());
 
                     conn = dataSource.getConnection();
@@ -2241,6 +2319,17 @@ public class ContentSourceManagerBean implements ContentSourceManagerLocal {
                 int contentSourceId = pvcs.getPackageVersionContentSourcePK().getContentSource().getId();
                 bitsStream = adapterMgr.loadPackageBits(contentSourceId, pvcs.getLocation());
             } else {
+                BlobStore blobStore = BlobStoreFactory.getBlobStore();
+                String blobId = ContentManagerHelper.getPackageBitsBlobId(blobStore,
+                    entityManager.find(PackageVersion.class, composite.getPackageVersionId()));
+                if (blobId != null) {
+                    // the bits are in the blob store, let the file system send them without copying them around
+                    long length = (endByte < 0L) ? -1L : (endByte - startByte) + 1;
+                    long bytesRetrieved = blobStore.transferTo(blobId, startByte, length, outputStream);
+                    log.debug("Retrieved and sent [" + bytesRetrieved + "] bytes for [" + packageDetailsKey + "]");
+                    return bytesRetrieved;
+                }
+
                 if (composite.isPackageBitsInDatabase()) {
                     // this is  DownloadMode.DATABASE - put the bits in the database
 
@@ -64,6 +64,14 @@ public interface ContentSourceManagerLocal {
      */
     void purgeOrphanedPackageVersions(Subject subject);
 
+    /**
+     * For transactioning purposes only, part of purgeOrphanedPackageVersions impl. Not to be exposed outside of local
+     * interface. Deletes the given bits from the blob store, unless a package version still has them.
+     *
+     * @param blobIds the SHA-256 of the bits
+     */
+    void purgeOrphanedPackageBlobs(List<String> blobIds);
+
     /**
      * Deletes the identified content source. Any package versions that originated from this content source but are
      * still related to one or more repos will remain.
@@ -59,6 +59,7 @@ import org.rhq.enterprise.server.cloud.PartitionEventManagerLocal;
 import org.rhq.enterprise.server.cloud.instance.ServerManagerLocal;
 import org.rhq.enterprise.server.core.comm.ServerCommunicationsServiceMBean;
 import org.rhq.enterprise.server.core.comm.ServerCommunicationsServiceUtil;
+import org.rhq.enterprise.server.measurement.AvailabilityStateCache;
 import org.rhq.enterprise.server.util.LookupUtil;
 
 /**
@@ -356,6 +357,8 @@ public class CoreServerServiceImpl implements CoreServerService {
         getAgentManager().updateAgent(agent);
 
         getAlertConditionCacheManager().reloadCachesForAgent(agent.getId());
+        // the agent may have been reporting to another server, rebuild its availability states on the next report
+        AvailabilityStateCache.getInstance().evict(agent.getId());
 
         getPartitionEventManager().auditPartitionEvent(getSubjectManager().getOverlord(),
             PartitionEventType.AGENT_CONNECT, agentName + " - " + server.getName());
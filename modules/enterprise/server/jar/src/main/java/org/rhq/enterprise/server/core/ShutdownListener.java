@@ -39,6 +39,7 @@ import org.rhq.core.domain.cloud.Server.OperationMode;
 import org.rhq.core.util.file.FileUtil;
 import org.rhq.core.util.jdbc.JDBCUtil;
 import org.rhq.enterprise.server.RHQConstants;
+import org.rhq.enterprise.server.alert.engine.internal.AlertConditionCacheCoordinator;
 import org.rhq.enterprise.server.cloud.TopologyManagerLocal;
 import org.rhq.enterprise.server.cloud.instance.ServerManagerLocal;
 import org.rhq.enterprise.server.scheduler.SchedulerLocal;
@@ -95,6 +96,7 @@ public class ShutdownListener {
         log.info("Shutdown listener has been told we are shutting down - starting to clean up now...");
         logShutdownTime();
         stopScheduler();
+        stopAlertConditionCacheLoaders();
         updateServerOperationMode();
         stopEmbeddedDatabase();
         log.info("Shutdown listener completed its shutdown tasks. It is safe to shutdown now.");
@@ -172,6 +174,17 @@ public class ShutdownListener {
         }
     }
 
+    /**
+     * This will stop the threads that load the alert condition caches.
+     */
+    private void stopAlertConditionCacheLoaders() {
+        try {
+            AlertConditionCacheCoordinator.getInstance().shutdown();
+        } catch (Throwable t) {
+            log.warn("Failed to stop the alert condition cache loaders: " + t.getMessage());
+        }
+    }
+
     private void updateServerOperationMode() {
         try {
             // Set the server operation mode to DOWN unless in MM
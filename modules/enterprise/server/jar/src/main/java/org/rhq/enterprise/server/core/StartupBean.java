@@ -65,6 +65,7 @@ import org.rhq.enterprise.server.RHQConstants;
 import org.rhq.enterprise.server.alert.engine.internal.AlertConditionCacheCoordinator;
 import org.rhq.enterprise.server.auth.SessionManager;
 import org.rhq.enterprise.server.auth.SubjectManagerLocal;
+import org.rhq.enterprise.server.blob.BlobStoreFactory;
 import org.rhq.enterprise.server.cloud.TopologyManagerLocal;
 import org.rhq.enterprise.server.cloud.instance.CacheConsistencyManagerLocal;
 import org.rhq.enterprise.server.cloud.instance.ServerManagerLocal;
@@ -77,6 +78,7 @@ import org.rhq.enterprise.server.plugin.pc.ServerPluginServiceMBean;
 import org.rhq.enterprise.server.resource.ResourceTypeManagerLocal;
 import org.rhq.enterprise.server.scheduler.SchedulerLocal;
 import org.rhq.enterprise.server.scheduler.jobs.AsyncResourceDeleteJob;
+import org.rhq.enterprise.server.scheduler.jobs.BlobStoreMigrationJob;
 import org.rhq.enterprise.server.scheduler.jobs.CheckForSuspectedAgentsJob;
 import org.rhq.enterprise.server.scheduler.jobs.CheckForTimedOutConfigUpdatesJob;
 import org.rhq.enterprise.server.scheduler.jobs.CheckForTimedOutContentRequestsJob;
@@ -637,6 +639,19 @@ public class StartupBean implements StartupLocal {
             log.error("Cannot schedule purge plugins job.", e);
         }
 
+        // Blob Store Migration Job - moves content from the database once a blob store is configured
+        if (BlobStoreFactory.getBlobStore() != null) {
+            try {
+                // Do not check until we are up at least 5 mins, and every hour thereafter.
+                final long initialDelay = 1000L * 60 * 5;
+                final long interval = 1000L * 60 * 60;
+                schedulerBean.scheduleSimpleRepeatingJob(BlobStoreMigrationJob.class, true, false, initialDelay,
+                    interval);
+            } catch (Exception e) {
+                log.error("Cannot schedule blob store migration job.", e);
+            }
+        }
+
         // DynaGroup Auto-Recalculation Job
         try {
             // Do not check until we are up at least 1 min, and every minute thereafter.
@@ -52,6 +52,7 @@ import mazz.i18n.Logger;
 import org.jboss.remoting.InvokerLocator;
 import org.jboss.util.StringPropertyReplacer;
 
+import org.rhq.core.clientapi.server.codec.ReportCodec;
 import org.rhq.core.clientapi.server.configuration.ConfigurationServerService;
 import org.rhq.core.clientapi.server.content.ContentServerService;
 import org.rhq.core.clientapi.server.discovery.DiscoveryServerService;
@@ -195,6 +196,9 @@ public class ServerCommunicationsService implements ServerCommunicationsServiceM
             AutoDiscoveryListener listener = new ServerAutoDiscoveryListener(m_knownAgents);
             container.addDiscoveryListener(listener);
 
+            // agents that poll us learn about the codec and send their reports encoded with it
+            container.addParameterCodec(new ReportCodec());
+
             container.start(config.getServiceContainerPreferences().getPreferences(), config
                 .getClientCommandSenderConfiguration(), m_mbs);
 
@@ -27,7 +27,7 @@ import mazz.i18n.Logger;
 import org.rhq.core.util.obfuscation.ObfuscatedPreferences;
 import org.rhq.enterprise.communications.ServiceContainerConfiguration;
 import org.rhq.enterprise.communications.command.client.ClientCommandSenderConfiguration;
-import org.rhq.enterprise.communications.command.client.PersistentFifo;
+import org.rhq.enterprise.communications.command.client.SegmentedPersistentFifo;
 import org.rhq.enterprise.communications.command.client.RemoteInputStream;
 
 /**
@@ -248,7 +248,7 @@ public class ServerConfiguration {
 
     /**
      * Returns an array of command spool file parameters. The first element of the array is the maximum file size
-     * threshold. The second element is the purge percentage. See {@link PersistentFifo} for the meanings of these
+     * threshold. The second element is the purge percentage. See {@link SegmentedPersistentFifo} for the meanings of these
      * settings.
      *
      * <p>Because this is a weakly typed method (i.e. you have to know what the elements in the returned array
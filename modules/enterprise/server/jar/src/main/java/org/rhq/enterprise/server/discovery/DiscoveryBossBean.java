@@ -1024,6 +1024,8 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
         boolean isDebugEnabled = LOG.isDebugEnabled();
         // Cache parent resources we've already fetched from the DB, many resources will have the same parent
         Map<Integer, Resource> parentMap = new HashMap<Integer, Resource>();
+        // The new resources, they are added to the resource hierarchy closure all at once after the batch is merged
+        List<Resource> persistedResources = new ArrayList<Resource>();
 
         for (Resource resource : resourceBatch) {
             Resource existingResource;
@@ -1038,6 +1040,7 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
             } else {
                 presetAgent(resource, agent);
                 persistResource(resource, parentMap, postMergeActions);
+                persistedResources.add(resource);
             }
 
             if (isDebugEnabled) {
@@ -1046,6 +1049,8 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
             }
         }
 
+        resourceManager.updateResourceAncestors(persistedResources);
+
         // Help out the GC
         parentMap.clear();
 
@@ -1247,6 +1252,7 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
                 } else {
                     existingResource.setParentResource(Resource.ROOT);
                 }
+                resourceManager.updateResourceAncestors(existingResource);
 
             } else {
                 if (LOG.isDebugEnabled()) {
@@ -144,7 +144,16 @@ public class DiscoveryServerServiceImpl implements DiscoveryServerService {
 
     @Override
     public boolean mergeAvailabilityReport(AvailabilityReport availabilityReport) {
-        AvailabilityReportSerializer.getSingleton().lock(availabilityReport.getAgentName());
+        return AvailabilityReportSerializer.getSingleton().merge(availabilityReport,
+            new AvailabilityReportSerializer.Merger() {
+                public boolean merge(AvailabilityReport report) {
+                    return mergeAvailabilityReportLocked(report);
+                }
+            });
+    }
+
+    // called with the agent's lock held, the report may hold the data of several reports of the agent
+    private boolean mergeAvailabilityReportLocked(AvailabilityReport availabilityReport) {
         try {
             String reportToString = availabilityReport.toString(false);
             if (log.isDebugEnabled())
@@ -170,8 +179,6 @@ public class DiscoveryServerServiceImpl implements DiscoveryServerService {
             log.info("Error processing availability report from [" + availabilityReport.getAgentName() + "]: "
                 + ThrowableUtil.getAllMessages(e));
             return true; // not sure what happened, but avoid infinite recursion during error conditions; do not ask for a full report
-        } finally {
-            AvailabilityReportSerializer.getSingleton().unlock(availabilityReport.getAgentName());
         }
     }
 
@@ -28,6 +28,7 @@ import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
@@ -81,6 +82,8 @@ import org.rhq.core.util.stream.StreamUtil;
 import org.rhq.enterprise.server.RHQConstants;
 import org.rhq.enterprise.server.agentclient.AgentClient;
 import org.rhq.enterprise.server.auth.SubjectManagerLocal;
+import org.rhq.enterprise.server.blob.BlobStore;
+import org.rhq.enterprise.server.blob.BlobStoreFactory;
 import org.rhq.enterprise.server.core.AgentManagerLocal;
 import org.rhq.enterprise.server.plugin.pc.drift.DriftChangeSetSummary;
 import org.rhq.enterprise.server.util.CriteriaQueryGenerator;
@@ -109,15 +112,43 @@ public class JPADriftServerBean implements JPADriftServerLocal {
     private EntityManager entityManager;
 
     @Override
-    @TransactionAttribute(REQUIRES_NEW)
+    @TransactionAttribute(NOT_SUPPORTED)
+    @SuppressWarnings("unchecked")
     public int purgeOrphanedDriftFiles(Subject subject, long purgeMillis) {
-        Query q = entityManager.createNativeQuery(JPADriftFile.NATIVE_DELETE_ORPHANED_DRIFT_FILES);
-        q.setParameter(1, purgeMillis);
-        int count = q.executeUpdate();
+        BlobStore blobStore = BlobStoreFactory.getBlobStore();
+        List<String> orphanedHashIds = null;
+        if (blobStore != null) {
+            Query q = entityManager.createNativeQuery(JPADriftFile.NATIVE_FIND_ORPHANED_DRIFT_FILES);
+            q.setParameter(1, purgeMillis);
+            orphanedHashIds = q.getResultList();
+        }
+
+        int count = JPADriftServer.purgeOrphanedDriftFilesInNewTransaction(purgeMillis);
         log.debug("purged [" + count + "] drift files that were orphaned (that is, no longer referenced by drift)");
+
+        // The rows are deleted and committed by now, so a rollback can no longer leave them without content. The same
+        // content may have been reported again in the meantime though, so only delete what is still unreferenced.
+        if (orphanedHashIds != null) {
+            int deleted = 0;
+            for (String hashId : orphanedHashIds) {
+                if (entityManager.find(JPADriftFile.class, hashId) == null && blobStore.contains(hashId)
+                    && blobStore.delete(hashId)) {
+                    ++deleted;
+                }
+            }
+            log.debug("purged the content of [" + deleted + "] orphaned drift files from " + blobStore);
+        }
         return count;
     }
 
+    @Override
+    @TransactionAttribute(REQUIRES_NEW)
+    public int purgeOrphanedDriftFilesInNewTransaction(long purgeMillis) {
+        Query q = entityManager.createNativeQuery(JPADriftFile.NATIVE_DELETE_ORPHANED_DRIFT_FILES);
+        q.setParameter(1, purgeMillis);
+        return q.executeUpdate();
+    }
+
     @Override
     @TransactionAttribute(REQUIRES_NEW)
     public void purgeByDriftDefinitionName(Subject subject, int resourceId, String driftDefName) throws Exception {
@@ -297,6 +328,16 @@ public class JPADriftServerBean implements JPADriftServerLocal {
         if (null == df) {
             throw new IllegalArgumentException("JPADriftFile not found [" + driftFile.getHashId() + "]");
         }
+
+        BlobStore blobStore = BlobStoreFactory.getBlobStore();
+        if (blobStore != null) {
+            // the hash id is the SHA-256 of the content, which the store verifies
+            blobStore.store(driftFile.getHashId(), new BufferedInputStream(data));
+            df.setDataSize(numBytes);
+            df.setStatus(LOADED);
+            return;
+        }
+
         Session session = (Session)entityManager.getDelegate();
         df.setDataSize(numBytes);
         df.setData(session.getLobHelper().createBlob(new BufferedInputStream(data), numBytes));
@@ -550,6 +591,11 @@ public class JPADriftServerBean implements JPADriftServerLocal {
     public String getDriftFileBits(String hash) {
         // TODO add security
         try {
+            byte[] bytes = readFromBlobStore(hash);
+            if (bytes != null) {
+                return (bytes.length == 0) ? null : new String(bytes, Charset.defaultCharset().name());
+            }
+
             JPADriftFileBits content = (JPADriftFileBits) entityManager.createNamedQuery(
                 JPADriftFileBits.QUERY_FIND_BY_ID).setParameter("hashId", hash).getSingleResult();
             if (content.getDataSize() == null || content.getDataSize() < 1) {
@@ -557,7 +603,7 @@ public class JPADriftServerBean implements JPADriftServerLocal {
             }
             return IOUtils.toString(content.getBlob().getBinaryStream(), Charset.defaultCharset().name());
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("Unable to read the content of drift file [" + hash + "]", e);
             return null;
         }
     }
@@ -565,6 +611,11 @@ public class JPADriftServerBean implements JPADriftServerLocal {
     @Override
     public byte[] getDriftFileAsByteArray(String hash) {
         try {
+            byte[] bytes = readFromBlobStore(hash);
+            if (bytes != null) {
+                return bytes;
+            }
+
             JPADriftFileBits content = (JPADriftFileBits) entityManager.createNamedQuery(
                 JPADriftFileBits.QUERY_FIND_BY_ID).setParameter("hashId", hash).getSingleResult();
             if (content.getDataSize() == null || content.getDataSize() < 1) {
@@ -572,9 +623,23 @@ public class JPADriftServerBean implements JPADriftServerLocal {
             }
             return StreamUtil.slurp(content.getBlob().getBinaryStream());
         } catch (SQLException e) {
-            e.printStackTrace();
+            log.error("Unable to read the content of drift file [" + hash + "]", e);
+            return null;
+        } catch (IOException e) {
+            log.error("Unable to read the content of drift file [" + hash + "]", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the content of the drift file if it is in the blob store, otherwise <code>null</code>
+     */
+    private byte[] readFromBlobStore(String hash) throws IOException {
+        BlobStore blobStore = BlobStoreFactory.getBlobStore();
+        if (blobStore == null || !blobStore.contains(hash)) {
             return null;
         }
+        return StreamUtil.slurp(blobStore.openStream(hash));
     }
 
     private Resource getResource(int resourceId) {
@@ -144,6 +144,12 @@ public interface JPADriftServerLocal {
      */
     int purgeOrphanedDriftFiles(Subject subject, long purgeMillis);
 
+    /**
+     * For transactioning purposes only, part of purgeOrphanedDriftFiles impl. Not to be exposed outside of local
+     * interface. Deletes the orphaned drift file rows, but not their content in the blob store.
+     */
+    int purgeOrphanedDriftFilesInNewTransaction(long purgeMillis);
+
     String getDriftFileBits(String hash);
 
     byte[] getDriftFileAsByteArray(String hash);
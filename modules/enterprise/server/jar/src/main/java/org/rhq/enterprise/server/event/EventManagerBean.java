@@ -21,9 +21,12 @@ package org.rhq.enterprise.server.event;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -63,6 +66,7 @@ import org.rhq.enterprise.server.authz.AuthorizationManagerLocal;
 import org.rhq.enterprise.server.authz.PermissionException;
 import org.rhq.enterprise.server.util.CriteriaQueryGenerator;
 import org.rhq.enterprise.server.util.CriteriaQueryRunner;
+import org.rhq.enterprise.server.util.IdCache;
 
 /**
  * Manager for Handling of {@link Event}s.
@@ -83,11 +87,17 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
         + "SELECT (SELECT id FROM RHQ_Event_Def WHERE name = ? AND resource_type_id = (SELECT id FROM RHQ_Resource_Type WHERE name = ? AND plugin = ?)), ?, ? FROM RHQ_Numbers WHERE i = 42 "
         + "AND NOT EXISTS (SELECT * FROM RHQ_Event_Source WHERE event_def_id = (SELECT id FROM RHQ_Event_Def WHERE name = ? AND resource_type_id = (SELECT id FROM RHQ_Resource_Type WHERE name = ? AND plugin = ?)) AND resource_id = ? AND location = ?)";
 
+    // all the event sources of the resources, the ones asked for are picked by their EventSourceIdCache key
+    private static final String EVENT_SOURCE_ID_QUERY = "SELECT es.id, es.resource_id, ed.name, rt.name, rt.plugin, es.location "
+        + "FROM RHQ_Event_Source es, RHQ_Event_Def ed, RHQ_Resource_Type rt "
+        + "WHERE es.event_def_id = ed.id AND ed.resource_type_id = rt.id AND es.resource_id IN ( @@RESOURCE_IDS@@ )";
+
+    // The event source ids are resolved up front, see EventSourceIdCache.
     private static final String EVENT_INSERT_STMT = "INSERT INTO RHQ_Event (id, event_source_id, timestamp, severity, detail) "
-        + "VALUES (%s, (SELECT id FROM RHQ_Event_Source WHERE event_def_id = (SELECT id FROM RHQ_Event_Def WHERE name = ? AND resource_type_id = (SELECT id FROM RHQ_Resource_Type WHERE name = ? AND plugin = ?)) AND resource_id = ? AND location = ?), ?, ?, ?)";
+        + "VALUES (%s, ?, ?, ?, ?)";
 
     private static final String EVENT_INSERT_STMT_AUTOINC = "INSERT INTO RHQ_Event (event_source_id, timestamp, severity, detail) "
-        + "VALUES ((SELECT id FROM RHQ_Event_Source WHERE event_def_id = (SELECT id FROM RHQ_Event_Def WHERE name = ? AND resource_type_id = (SELECT id FROM RHQ_Resource_Type WHERE name = ? AND plugin = ?)) AND resource_id = ? AND location = ?), ?, ?, ?)";
+        + "VALUES (?, ?, ?, ?)";
 
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
     private EntityManager entityManager;
@@ -109,44 +119,28 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
         if (events == null || events.size() == 0)
             return;
 
+        IdCache<EventSourceIdCache.Key> eventSourceIdCache = EventSourceIdCache.getInstance();
         String statementSql;
         Connection conn = null;
-        PreparedStatement ps = null;
         try {
             conn = rhqDs.getConnection();
             DatabaseType dbType = DatabaseTypeFactory.getDefaultDatabaseType();
 
-            if (dbType instanceof PostgresqlDatabaseType || dbType instanceof OracleDatabaseType
-                || dbType instanceof H2DatabaseType) {
-                String nextvalSql = JDBCUtil.getNextValSql(conn, EventSource.TABLE_NAME);
-                statementSql = String.format(EVENT_SOURCE_INSERT_STMT, nextvalSql);
-            } else if (dbType instanceof SQLServerDatabaseType) {
-                statementSql = EVENT_SOURCE_INSERT_STMT_AUTOINC;
-            } else {
-                throw new IllegalArgumentException("Unknown database type, can't continue: " + dbType);
-            }
-
-            // First insert the "keys" (i.e. the EventSources).
-            ps = conn.prepareStatement(statementSql);
-            try {
-                for (EventSource eventSource : events.keySet()) {
-                    int paramIndex = 1;
-                    ps.setString(paramIndex++, eventSource.getEventDefinition().getName());
-                    ps.setString(paramIndex++, eventSource.getEventDefinition().getResourceType().getName());
-                    ps.setString(paramIndex++, eventSource.getEventDefinition().getResourceType().getPlugin());
-                    ps.setInt(paramIndex++, eventSource.getResource().getId());
-                    ps.setString(paramIndex++, eventSource.getLocation());
-                    ps.setString(paramIndex++, eventSource.getEventDefinition().getName());
-                    ps.setString(paramIndex++, eventSource.getEventDefinition().getResourceType().getName());
-                    ps.setString(paramIndex++, eventSource.getEventDefinition().getResourceType().getPlugin());
-                    ps.setInt(paramIndex++, eventSource.getResource().getId());
-                    ps.setString(paramIndex++, eventSource.getLocation());
-
-                    ps.addBatch();
+            // First resolve the ids of the "keys" (i.e. the EventSources). Only the ones we have not seen before
+            // need to be inserted and looked up.
+            Map<EventSource, Integer> eventSourceIds = new HashMap<EventSource, Integer>(events.size());
+            List<EventSource> uncachedEventSources = new ArrayList<EventSource>();
+            for (EventSource eventSource : events.keySet()) {
+                Integer eventSourceId = eventSourceIdCache.get(EventSourceIdCache.key(eventSource));
+                if (eventSourceId != null) {
+                    eventSourceIds.put(eventSource, eventSourceId);
+                } else {
+                    uncachedEventSources.add(eventSource);
                 }
-                ps.executeBatch();
-            } finally {
-                JDBCUtil.safeClose(ps);
+            }
+            if (!uncachedEventSources.isEmpty()) {
+                insertEventSources(conn, dbType, uncachedEventSources);
+                findEventSourceIds(conn, uncachedEventSources, eventSourceIds);
             }
 
             if (dbType instanceof PostgresqlDatabaseType || dbType instanceof OracleDatabaseType
@@ -160,32 +154,41 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
             }
 
             // Then insert the "values" (i.e. the Events).
-            ps = conn.prepareStatement(statementSql);
-            try {
-                for (EventSource eventSource : events.keySet()) {
-                    Set<Event> eventData = events.get(eventSource);
-                    for (Event event : eventData) {
-                        int paramIndex = 1;
-                        ps.setString(paramIndex++, eventSource.getEventDefinition().getName());
-                        ps.setString(paramIndex++, eventSource.getEventDefinition().getResourceType().getName());
-                        ps.setString(paramIndex++, eventSource.getEventDefinition().getResourceType().getPlugin());
-                        ps.setInt(paramIndex++, eventSource.getResource().getId());
-                        ps.setString(paramIndex++, eventSource.getLocation());
-                        ps.setLong(paramIndex++, event.getTimestamp());
-                        ps.setString(paramIndex++, event.getSeverity().toString());
-                        String detail = dbType.getString(event.getDetail(), Event.DETAIL_MAX_LENGTH);
-                        ps.setString(paramIndex++, detail);
-                        ps.addBatch();
-                    }
+            if (uncachedEventSources.size() == events.size()) {
+                insertEvents(conn, dbType, statementSql, events, eventSourceIds);
+            } else {
+                Savepoint savepoint = conn.setSavepoint();
+                try {
+                    insertEvents(conn, dbType, statementSql, events, eventSourceIds);
+                } catch (SQLException e) {
+                    // a cached event source may have been deleted since, e.g. with its resource uninventoried through
+                    // another server, so forget the cached ids, look them all up again and retry once
+                    log.debug("addEventData: Retrying insert of events with fresh event source ids: " + e.getMessage());
+                    conn.rollback(savepoint);
+                    eventSourceIdCache.clear();
+                    uncachedEventSources = new ArrayList<EventSource>(events.keySet());
+                    eventSourceIds.clear();
+                    insertEventSources(conn, dbType, uncachedEventSources);
+                    findEventSourceIds(conn, uncachedEventSources, eventSourceIds);
+                    insertEvents(conn, dbType, statementSql, events, eventSourceIds);
+                }
+            }
+
+            for (EventSource eventSource : uncachedEventSources) {
+                Integer eventSourceId = eventSourceIds.get(eventSource);
+                if (eventSourceId != null) {
+                    eventSourceIdCache.put(EventSourceIdCache.key(eventSource), eventSourceId);
+                }
+            }
 
+            for (EventSource eventSource : events.keySet()) {
+                if (eventSourceIds.containsKey(eventSource)) {
                     // We may have trimmed the event detail for storage reasons, but for alerting use the
                     // full, potentially larger detail string.
+                    Set<Event> eventData = events.get(eventSource);
                     notifyAlertConditionCacheManager("addEventData", eventSource,
                         eventData.toArray(new Event[eventData.size()]));
                 }
-                ps.executeBatch();
-            } finally {
-                JDBCUtil.safeClose(ps);
             }
 
         } catch (Throwable t) {
@@ -199,11 +202,122 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
                 if (t.getCause() != null)
                     log.warn("     : " + t.getCause().getMessage());
             }
+            // a cached event source may have been deleted, e.g. by another server, so look them all up again
+            eventSourceIdCache.clear();
         } finally {
             JDBCUtil.safeClose(conn);
         }
     }
 
+    private void insertEvents(Connection conn, DatabaseType dbType, String statementSql,
+        Map<EventSource, Set<Event>> events, Map<EventSource, Integer> eventSourceIds) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement(statementSql);
+        try {
+            for (EventSource eventSource : events.keySet()) {
+                Integer eventSourceId = eventSourceIds.get(eventSource);
+                if (eventSourceId == null) {
+                    // the event definition or the resource no longer exists
+                    log.debug("addEventData: Dropping events of unknown event source " + eventSource);
+                    continue;
+                }
+
+                for (Event event : events.get(eventSource)) {
+                    int paramIndex = 1;
+                    ps.setInt(paramIndex++, eventSourceId);
+                    ps.setLong(paramIndex++, event.getTimestamp());
+                    ps.setString(paramIndex++, event.getSeverity().toString());
+                    String detail = dbType.getString(event.getDetail(), Event.DETAIL_MAX_LENGTH);
+                    ps.setString(paramIndex++, detail);
+                    ps.addBatch();
+                }
+            }
+            ps.executeBatch();
+        } finally {
+            JDBCUtil.safeClose(ps);
+        }
+    }
+
+    private void insertEventSources(Connection conn, DatabaseType dbType, List<EventSource> eventSources)
+        throws SQLException {
+        String statementSql;
+        if (dbType instanceof PostgresqlDatabaseType || dbType instanceof OracleDatabaseType
+            || dbType instanceof H2DatabaseType) {
+            String nextvalSql = JDBCUtil.getNextValSql(conn, EventSource.TABLE_NAME);
+            statementSql = String.format(EVENT_SOURCE_INSERT_STMT, nextvalSql);
+        } else if (dbType instanceof SQLServerDatabaseType) {
+            statementSql = EVENT_SOURCE_INSERT_STMT_AUTOINC;
+        } else {
+            throw new IllegalArgumentException("Unknown database type, can't continue: " + dbType);
+        }
+
+        PreparedStatement ps = conn.prepareStatement(statementSql);
+        try {
+            for (EventSource eventSource : eventSources) {
+                int paramIndex = 1;
+                ps.setString(paramIndex++, eventSource.getEventDefinition().getName());
+                ps.setString(paramIndex++, eventSource.getEventDefinition().getResourceType().getName());
+                ps.setString(paramIndex++, eventSource.getEventDefinition().getResourceType().getPlugin());
+                ps.setInt(paramIndex++, eventSource.getResource().getId());
+                ps.setString(paramIndex++, eventSource.getLocation());
+                ps.setString(paramIndex++, eventSource.getEventDefinition().getName());
+                ps.setString(paramIndex++, eventSource.getEventDefinition().getResourceType().getName());
+                ps.setString(paramIndex++, eventSource.getEventDefinition().getResourceType().getPlugin());
+                ps.setInt(paramIndex++, eventSource.getResource().getId());
+                ps.setString(paramIndex++, eventSource.getLocation());
+
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } finally {
+            JDBCUtil.safeClose(ps);
+        }
+    }
+
+    /**
+     * Looks up the ids of the event sources with one query per thousand resources, rather than one per event source.
+     */
+    private void findEventSourceIds(Connection conn, List<EventSource> eventSources,
+        Map<EventSource, Integer> eventSourceIds) throws SQLException {
+        Map<EventSourceIdCache.Key, EventSource> eventSourcesByKey = new HashMap<EventSourceIdCache.Key, EventSource>(
+            eventSources.size());
+        Set<Integer> resourceIdSet = new HashSet<Integer>();
+        for (EventSource eventSource : eventSources) {
+            eventSourcesByKey.put(EventSourceIdCache.key(eventSource), eventSource);
+            resourceIdSet.add(eventSource.getResource().getId());
+        }
+
+        List<Integer> resourceIds = new ArrayList<Integer>(resourceIdSet);
+        int i = 0;
+        while (i < resourceIds.size()) {
+            // handle the oracle 1000 member IN clause issue
+            int j = Math.min(i + 1000, resourceIds.size());
+            int[] batchIds = new int[j - i];
+            for (int k = i; k < j; ++k) {
+                batchIds[k - i] = resourceIds.get(k);
+            }
+
+            PreparedStatement ps = null;
+            ResultSet rs = null;
+            try {
+                ps = conn.prepareStatement(JDBCUtil.transformQueryForMultipleInParameters(EVENT_SOURCE_ID_QUERY,
+                    "@@RESOURCE_IDS@@", batchIds.length));
+                JDBCUtil.bindNTimes(ps, batchIds, 1);
+                rs = ps.executeQuery();
+                while (rs.next()) {
+                    EventSourceIdCache.Key key = new EventSourceIdCache.Key(rs.getInt(2), rs.getString(3),
+                        rs.getString(4), rs.getString(5), rs.getString(6));
+                    EventSource eventSource = eventSourcesByKey.get(key);
+                    if (eventSource != null) {
+                        eventSourceIds.put(eventSource, rs.getInt(1));
+                    }
+                }
+            } finally {
+                JDBCUtil.safeClose(ps, rs);
+            }
+            i = j;
+        }
+    }
+
     private void notifyAlertConditionCacheManager(String callingMethod, EventSource source, Event... events) {
         AlertConditionCacheStats stats = alertConditionCacheManager.checkConditions(source, events);
 
@@ -256,6 +370,7 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
         for (EventSource source : sources) {
             entityManager.remove(source);
         }
+        EventSourceIdCache.getInstance().clear();
     }
 
     @Override
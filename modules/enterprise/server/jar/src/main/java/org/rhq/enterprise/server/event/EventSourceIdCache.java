@@ -0,0 +1,91 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.event;
+
+import org.rhq.core.domain.event.EventDefinition;
+import org.rhq.core.domain.event.EventSource;
+import org.rhq.enterprise.server.util.IdCache;
+
+/**
+ * Holds the server wide cache of {@link EventSource} ids, keyed by resource, event definition and location. The
+ * agent does not know the ids of event definitions, so the definition is identified by its name and the name and
+ * plugin of its resource type.
+ * <p/>
+ * The max size is set with the <code>rhq.server.event-source-cache.max-size</code> system property, 0 turns the
+ * cache off.
+ */
+public class EventSourceIdCache {
+
+    private static final IdCache<Key> INSTANCE = IdCache.fromSystemProperty("rhq.server.event-source-cache.max-size",
+        20000);
+
+    private EventSourceIdCache() {
+    }
+
+    public static IdCache<Key> getInstance() {
+        return INSTANCE;
+    }
+
+    public static Key key(EventSource eventSource) {
+        EventDefinition eventDefinition = eventSource.getEventDefinition();
+        return new Key(eventSource.getResource().getId(), eventDefinition.getName(), eventDefinition.getResourceType()
+            .getName(), eventDefinition.getResourceType().getPlugin(), eventSource.getLocation());
+    }
+
+    public static class Key {
+        private final int resourceId;
+        private final String definitionName;
+        private final String resourceTypeName;
+        private final String plugin;
+        private final String location;
+
+        public Key(int resourceId, String definitionName, String resourceTypeName, String plugin, String location) {
+            this.resourceId = resourceId;
+            this.definitionName = definitionName;
+            this.resourceTypeName = resourceTypeName;
+            this.plugin = plugin;
+            this.location = location;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return resourceId == key.resourceId && definitionName.equals(key.definitionName)
+                && resourceTypeName.equals(key.resourceTypeName) && plugin.equals(key.plugin)
+                && location.equals(key.location);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = resourceId;
+            result = 31 * result + definitionName.hashCode();
+            result = 31 * result + resourceTypeName.hashCode();
+            result = 31 * result + plugin.hashCode();
+            result = 31 * result + location.hashCode();
+            return result;
+        }
+    }
+}
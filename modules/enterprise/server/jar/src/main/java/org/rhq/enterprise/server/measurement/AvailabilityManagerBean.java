@@ -19,14 +19,21 @@
 
 package org.rhq.enterprise.server.measurement;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
@@ -41,6 +48,7 @@ import javax.persistence.NoResultException;
 import javax.persistence.NonUniqueResultException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.sql.DataSource;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -67,12 +75,14 @@ import org.rhq.core.domain.util.PageControl;
 import org.rhq.core.domain.util.PageList;
 import org.rhq.core.domain.util.PageOrdering;
 import org.rhq.core.util.StopWatch;
+import org.rhq.core.util.jdbc.JDBCUtil;
 import org.rhq.enterprise.server.RHQConstants;
 import org.rhq.enterprise.server.alert.engine.AlertConditionCacheManagerLocal;
 import org.rhq.enterprise.server.alert.engine.AlertConditionCacheStats;
 import org.rhq.enterprise.server.alert.engine.model.AvailabilityDurationCacheElement;
 import org.rhq.enterprise.server.authz.AuthorizationManagerLocal;
 import org.rhq.enterprise.server.authz.PermissionException;
+import org.rhq.enterprise.server.cloud.StatusManagerLocal;
 import org.rhq.enterprise.server.core.AgentManagerLocal;
 import org.rhq.enterprise.server.measurement.instrumentation.MeasurementMonitor;
 import org.rhq.enterprise.server.resource.ResourceAvailabilityManagerLocal;
@@ -111,6 +121,9 @@ public class AvailabilityManagerBean implements AvailabilityManagerLocal, Availa
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
     private EntityManager entityManager;
 
+    @javax.annotation.Resource(name = "RHQ_DS", mappedName = RHQConstants.DATASOURCE_JNDI_NAME)
+    private DataSource rhqDs;
+
     @EJB
     private AvailabilityManagerLocal availabilityManager;
     @EJB
@@ -125,6 +138,8 @@ public class AvailabilityManagerBean implements AvailabilityManagerLocal, Availa
     private ResourceAvailabilityManagerLocal resourceAvailabilityManager;
     @EJB
     private AlertConditionCacheManagerLocal alertConditionCacheManager;
+    @EJB
+    private StatusManagerLocal statusManager;
 
     // For Avail Duration Alert Condition Checks
     @javax.annotation.Resource
@@ -688,6 +703,10 @@ public class AvailabilityManagerBean implements AvailabilityManagerLocal, Availa
             try {
                 this.availabilityManager.mergeAvailabilityReport(report);
             } finally {
+                // the report carries no agent, so the agent's cached states were bypassed and are now stale, here
+                // and on the server the agent is connected to
+                AvailabilityStateCache.getInstance().evict(agent.getId());
+                statusManager.updateAvailabilityByAgent(agent.getId());
                 AvailabilityReportSerializer.getSingleton().unlock(agent.getName());
             }
         }
@@ -734,18 +753,51 @@ public class AvailabilityManagerBean implements AvailabilityManagerLocal, Availa
 
         }
 
+        // Most reports only confirm what we already know. Drop the reported avails that are not a change from the
+        // cached latest avail of their resource before going anywhere near the database.
+        AvailabilityStateCache stateCache = AvailabilityStateCache.getInstance();
+        if (agentToUpdate != null && stateCache.isEnabled()) {
+            if (!report.isChangesOnlyReport() || mergeInfo.isAskForFullReport()) {
+                // a full report or a backfilled agent, in both cases start over from what is in the database
+                stateCache.evict(agentToUpdate.intValue());
+            }
+            Map<Integer, AvailabilityStateCache.State> cachedStates = stateCache.getPartition(agentToUpdate
+                .intValue());
+            if (null == cachedStates) {
+                stateCache.load(agentToUpdate.intValue(), findLatestAvailabilityStates(agentToUpdate.intValue()));
+                cachedStates = stateCache.getPartition(agentToUpdate.intValue());
+            }
+            if (null != cachedStates) {
+                mergeInfo.setCachedStates(cachedStates);
+                removeUnchangedAvailabilities(availabilities, mergeInfo);
+            }
+        }
+
         // process the report in batches to avoid an overly long transaction and to potentially increase the
         // speed in which an avail change becomes visible.
 
-        while (!availabilities.isEmpty()) {
-            int size = availabilities.size();
-            int end = (MERGE_BATCH_SIZE < size) ? MERGE_BATCH_SIZE : size;
+        try {
+            while (!availabilities.isEmpty()) {
+                int size = availabilities.size();
+                int end = (MERGE_BATCH_SIZE < size) ? MERGE_BATCH_SIZE : size;
+
+                List<Availability> availBatch = availabilities.subList(0, end);
+                availabilityManager.mergeAvailabilitiesInNewTransaction(availBatch, mergeInfo);
 
-            List<Availability> availBatch = availabilities.subList(0, end);
-            availabilityManager.mergeAvailabilitiesInNewTransaction(availBatch, mergeInfo);
+                // only now that the batch is committed can the cache reflect it
+                if (agentToUpdate != null) {
+                    stateCache.update(agentToUpdate.intValue(), mergeInfo.getMergedStates());
+                }
+                mergeInfo.getMergedStates().clear();
 
-            // Advance our progress and possibly help GC. This will remove the processed avails from the backing list
-            availBatch.clear();
+                // Advance our progress and possibly help GC. This will remove the processed avails from the backing list
+                availBatch.clear();
+            }
+        } catch (RuntimeException e) {
+            if (agentToUpdate != null) {
+                stateCache.evict(agentToUpdate.intValue());
+            }
+            throw e;
         }
 
         MeasurementMonitor.getMBean().incrementAvailabilityReports(report.isChangesOnlyReport());
@@ -771,14 +823,86 @@ public class AvailabilityManagerBean implements AvailabilityManagerLocal, Availa
         return true; // everything is OK and things look to be in sync
     }
 
+    @SuppressWarnings("unchecked")
+    private Map<Integer, AvailabilityStateCache.State> findLatestAvailabilityStates(int agentId) {
+        Query query = entityManager.createNamedQuery(Availability.FIND_LATEST_STATE_BY_AGENT);
+        query.setParameter("agentId", agentId);
+        return toLatestStates(query.getResultList());
+    }
+
+    private static Map<Integer, AvailabilityStateCache.State> toLatestStates(List<Object[]> rows) {
+        Map<Integer, AvailabilityStateCache.State> states = new HashMap<Integer, AvailabilityStateCache.State>(
+            rows.size());
+        Set<Integer> nonUnique = new HashSet<Integer>();
+        for (Object[] row : rows) {
+            Integer resourceId = (Integer) row[0];
+            AvailabilityStateCache.State state = new AvailabilityStateCache.State((AvailabilityType) row[1],
+                (Long) row[2]);
+            if (null != states.put(resourceId, state)) {
+                nonUnique.add(resourceId);
+            }
+        }
+        // leave resources with more than one latest avail out, merging will repair them the usual way
+        for (Integer resourceId : nonUnique) {
+            states.remove(resourceId);
+        }
+
+        return states;
+    }
+
+    // removes the reported avails that the merge would not do anything with, according to the cached states. A report
+    // can hold several avails of one resource in time order (see AvailabilityReportSerializer), each of them is
+    // compared with the state the avails kept before it leave the resource in, not with the cached state.
+    static void removeUnchangedAvailabilities(List<Availability> availabilities, MergeInfo mergeInfo) {
+        Map<Integer, AvailabilityStateCache.State> cachedStates = mergeInfo.getCachedStates();
+        Map<Integer, AvailabilityStateCache.State> keptStates = new HashMap<Integer, AvailabilityStateCache.State>();
+        for (Iterator<Availability> i = availabilities.iterator(); i.hasNext();) {
+            Availability reported = i.next();
+            Integer resourceId = reported.getResource().getId();
+            AvailabilityStateCache.State latest = keptStates.containsKey(resourceId) ? keptStates.get(resourceId)
+                : cachedStates.get(resourceId);
+            AvailabilityType reportedType = reported.getAvailabilityType();
+
+            // unknown resources, MISSING and avails from the past always need the full treatment, after which the
+            // state of the resource is no longer known here
+            if (null == latest || AvailabilityType.MISSING == reportedType
+                || reported.getStartTime() < latest.getStartTime()) {
+                keptStates.put(resourceId, null);
+                continue;
+            }
+
+            if (AvailabilityType.DISABLED == latest.getAvailabilityType()) {
+                // ignored unless this is an enablement, in which case the resource must go through the merge
+                if (!(mergeInfo.isEnablementReport() && (AvailabilityType.UNKNOWN == reportedType))) {
+                    i.remove();
+                } else {
+                    keptStates.put(resourceId, new AvailabilityStateCache.State(reportedType,
+                        reported.getStartTime()));
+                }
+            } else if (latest.getAvailabilityType() == reportedType) {
+                // no change, nothing to store, and the alert condition cache already knows this state
+                i.remove();
+                // our last known state was unknown, ask for a full report to ensure we are in sync with agent
+                if (AvailabilityType.UNKNOWN == reportedType) {
+                    mergeInfo.setAskForFullReport(true);
+                }
+            } else {
+                keptStates.put(resourceId, new AvailabilityStateCache.State(reportedType, reported.getStartTime()));
+            }
+        }
+    }
+
     static class MergeInfo {
         private AvailabilityReport report;
         private int numInserted = 0;
         private boolean askForFullReport = false;
+        private Map<Integer, AvailabilityStateCache.State> cachedStates;
+        private Map<Integer, AvailabilityStateCache.State> mergedStates;
 
         public MergeInfo(AvailabilityReport report) {
             super();
             this.report = report;
+            this.mergedStates = new HashMap<Integer, AvailabilityStateCache.State>();
         }
 
         public int getNumInserted() {
@@ -805,6 +929,24 @@ public class AvailabilityManagerBean implements AvailabilityManagerLocal, Availa
             return report.isServerSideReport();
         }
 
+        /**
+         * @return the cached latest avail states of the reporting agent's resources, or null if not cached
+         */
+        public Map<Integer, AvailabilityStateCache.State> getCachedStates() {
+            return cachedStates;
+        }
+
+        public void setCachedStates(Map<Integer, AvailabilityStateCache.State> cachedStates) {
+            this.cachedStates = cachedStates;
+        }
+
+        /**
+         * @return the latest avail states as written by the current batch, to be cached once it commits
+         */
+        public Map<Integer, AvailabilityStateCache.State> getMergedStates() {
+            return mergedStates;
+        }
+
         public String toString(boolean includeAll) {
             return report.toString(includeAll);
         }
@@ -817,9 +959,18 @@ public class AvailabilityManagerBean implements AvailabilityManagerLocal, Availa
         // We will alert only on the avails for enabled resources. Keep track of any that are disabled.
         List<Availability> disabledAvailabilities = new ArrayList<Availability>();
 
+        // plain transitions of resources whose latest avail is cached are written with JDBC batches, anything the
+        // batches could not apply, and anything else, goes through the entity based merge below
+        List<Availability> toMerge = mergeTransitions(availabilities, mergeInfo);
+        if (toMerge.isEmpty()) {
+            notifyAlertConditionCacheManager("mergeAvailabilityReport",
+                availabilities.toArray(new Availability[availabilities.size()]));
+            return;
+        }
+
         Query q = entityManager.createNamedQuery(Availability.FIND_LATEST_BY_RESOURCE_IDS);
-        List<Integer> resourceIds = new ArrayList<Integer>(availabilities.size());
-        for (Availability reported : availabilities) {
+        List<Integer> resourceIds = new ArrayList<Integer>(toMerge.size());
+        for (Availability reported : toMerge) {
             resourceIds.add(reported.getResource().getId());
         }
         q.setParameter("resourceIds", resourceIds);
@@ -830,7 +981,7 @@ public class AvailabilityManagerBean implements AvailabilityManagerLocal, Availa
         // populate Map of resourceIds to latestAvailability
         // there should be a single latest avail per resource. mark any situation where we have multiple
         Object nonUniqueMarker = new Object();
-        Map<Integer, Object> latestAvailabilities = new HashMap(availabilities.size() + 100);
+        Map<Integer, Object> latestAvailabilities = new HashMap(toMerge.size() + 100);
         for (Availability latestAvailability : latestAvailabilitiesList) {
             Integer resourceId = latestAvailability.getResource().getId();
             if (latestAvailabilities.containsKey(resourceId)) {
@@ -841,9 +992,9 @@ public class AvailabilityManagerBean implements AvailabilityManagerLocal, Availa
         }
 
         // keep track of the changes in availability so we can update the relevant ResourceAvailabilities in a batch
-        List<Availability> changedAvailabilities = new ArrayList<Availability>(availabilities.size());
+        List<Availability> changedAvailabilities = new ArrayList<Availability>(toMerge.size());
 
-        for (Availability reported : availabilities) {
+        for (Availability reported : toMerge) {
 
             // availability reports only tell us the current state at the start time; end time is ignored/must be null
             reported.setEndTime(null);
@@ -1022,6 +1173,19 @@ public class AvailabilityManagerBean implements AvailabilityManagerLocal, Availa
         // update the affected ResourceAvailabilities
         updateResourceAvailabilities(changedAvailabilities);
 
+        // remember where each resource ended up, for the avail state cache
+        for (Availability reported : toMerge) {
+            Integer resourceId = reported.getResource().getId();
+            Object latestObject = latestAvailabilities.get(resourceId);
+            if (latestObject instanceof Availability) {
+                Availability latest = (Availability) latestObject;
+                mergeInfo.getMergedStates().put(resourceId,
+                    new AvailabilityStateCache.State(latest.getAvailabilityType(), latest.getStartTime()));
+            } else {
+                mergeInfo.getMergedStates().put(resourceId, null);
+            }
+        }
+
         latestAvailabilities.clear(); // done with these, perhaps helps GC
         latestAvailabilities = null;
         changedAvailabilities.clear();
@@ -1035,6 +1199,164 @@ public class AvailabilityManagerBean implements AvailabilityManagerLocal, Availa
         return;
     }
 
+    /**
+     * Writes the reported avails that are a plain transition from the cached latest avail of their resource with
+     * three JDBC batches: close the latest interval, open the new one and update the current resource avail. The
+     * latest interval is only closed if it still matches the cache, so a stale cache entry costs nothing but a
+     * fallback to the regular merge.
+     *
+     * @return the reported avails that were not written and still need merging
+     */
+    private List<Availability> mergeTransitions(List<Availability> availabilities, MergeInfo mergeInfo) {
+        Map<Integer, AvailabilityStateCache.State> cachedStates = mergeInfo.getCachedStates();
+        if (null == cachedStates) {
+            return availabilities;
+        }
+
+        List<Availability> toMerge = new ArrayList<Availability>();
+        List<Availability> transitions = new ArrayList<Availability>(availabilities.size());
+        List<AvailabilityStateCache.State> latestStates = new ArrayList<AvailabilityStateCache.State>(
+            availabilities.size());
+        Set<Integer> seen = new HashSet<Integer>();
+
+        for (Availability reported : availabilities) {
+            Integer resourceId = reported.getResource().getId();
+            AvailabilityStateCache.State latest = cachedStates.get(resourceId);
+            AvailabilityType reportedType = reported.getAvailabilityType();
+
+            // a later avail of the same resource in one batch must see the earlier ones, leave it to the entity merge
+            if (!seen.add(resourceId) || null == latest || AvailabilityType.MISSING == reportedType
+                || AvailabilityType.DISABLED == latest.getAvailabilityType()
+                || latest.getAvailabilityType() == reportedType || reported.getStartTime() < latest.getStartTime()) {
+                toMerge.add(reported);
+                continue;
+            }
+
+            // availability reports only tell us the current state at the start time; end time is ignored/must be null
+            reported.setEndTime(null);
+            transitions.add(reported);
+            latestStates.add(latest);
+        }
+
+        if (transitions.isEmpty()) {
+            return toMerge;
+        }
+
+        Connection conn = null;
+        PreparedStatement ps = null;
+        try {
+            conn = rhqDs.getConnection();
+
+            ps = conn.prepareStatement(Availability.NATIVE_UPDATE_END_LATEST);
+            for (int i = 0; i < transitions.size(); ++i) {
+                Availability reported = transitions.get(i);
+                AvailabilityStateCache.State latest = latestStates.get(i);
+                ps.setLong(1, reported.getStartTime());
+                ps.setInt(2, reported.getResource().getId());
+                ps.setLong(3, latest.getStartTime());
+                ps.setInt(4, latest.getAvailabilityType().ordinal());
+                ps.addBatch();
+            }
+            int[] updateCounts = ps.executeBatch();
+            JDBCUtil.safeClose(ps);
+            ps = null;
+
+            List<Availability> closed = new ArrayList<Availability>(transitions.size());
+            List<Availability> unverified = new ArrayList<Availability>();
+            for (int i = 0; i < transitions.size(); ++i) {
+                if (updateCounts[i] > 0) {
+                    closed.add(transitions.get(i));
+                } else if (updateCounts[i] == Statement.SUCCESS_NO_INFO) {
+                    // all some drivers (Oracle before 12c) report for batched statements
+                    unverified.add(transitions.get(i));
+                } else {
+                    // the database no longer agrees with the cache, let the entity merge sort it out
+                    toMerge.add(transitions.get(i));
+                }
+            }
+            if (!unverified.isEmpty()) {
+                // a resource whose latest interval was closed has no open interval left
+                Set<Integer> stillOpen = findOpenResourceIds(conn, unverified);
+                for (Availability reported : unverified) {
+                    if (stillOpen.contains(reported.getResource().getId())) {
+                        toMerge.add(reported);
+                    } else {
+                        closed.add(reported);
+                    }
+                }
+            }
+
+            if (!closed.isEmpty()) {
+                ps = conn.prepareStatement(String.format(Availability.NATIVE_INSERT_LATEST,
+                    JDBCUtil.getNextValSql(conn, "RHQ_AVAILABILITY")));
+                for (Availability reported : closed) {
+                    ps.setInt(1, reported.getResource().getId());
+                    ps.setLong(2, reported.getStartTime());
+                    ps.setInt(3, reported.getAvailabilityType().ordinal());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                JDBCUtil.safeClose(ps);
+                ps = null;
+
+                ps = conn.prepareStatement(ResourceAvailability.NATIVE_UPDATE_BY_RESOURCE_ID);
+                for (Availability reported : closed) {
+                    ps.setInt(1, reported.getAvailabilityType().ordinal());
+                    ps.setInt(2, reported.getResource().getId());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+
+            for (Availability reported : closed) {
+                mergeInfo.incrementNumInserted();
+                mergeInfo.getMergedStates().put(reported.getResource().getId(),
+                    new AvailabilityStateCache.State(reported.getAvailabilityType(), reported.getStartTime()));
+                // our last known state was unknown, ask for a full report to ensure we are in sync with agent
+                if (AvailabilityType.UNKNOWN == cachedStates.get(reported.getResource().getId())
+                    .getAvailabilityType()) {
+                    mergeInfo.setAskForFullReport(true);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to store availability changes: " + e.getMessage(), e);
+        } finally {
+            JDBCUtil.safeClose(ps);
+            JDBCUtil.safeClose(conn);
+        }
+
+        return toMerge;
+    }
+
+    private Set<Integer> findOpenResourceIds(Connection conn, List<Availability> availabilities) throws SQLException {
+        Set<Integer> resourceIds = new HashSet<Integer>();
+        int i = 0;
+        while (i < availabilities.size()) {
+            // handle the oracle 1000 member IN clause issue
+            int j = Math.min(i + 1000, availabilities.size());
+            int[] batchIds = new int[j - i];
+            for (int k = i; k < j; ++k) {
+                batchIds[k - i] = availabilities.get(k).getResource().getId();
+            }
+
+            PreparedStatement ps = null;
+            ResultSet rs = null;
+            try {
+                ps = conn.prepareStatement(JDBCUtil.transformQueryForMultipleInParameters(
+                    Availability.NATIVE_QUERY_OPEN_RESOURCE_IDS, "@@RESOURCE_IDS@@", batchIds.length));
+                JDBCUtil.bindNTimes(ps, batchIds, 1);
+                rs = ps.executeQuery();
+                while (rs.next()) {
+                    resourceIds.add(rs.getInt(1));
+                }
+            } finally {
+                JDBCUtil.safeClose(ps, rs);
+            }
+            i = j;
+        }
+        return resourceIds;
+    }
+
     private void updateResourceAvailability(Availability reported) {
         ResourceAvailability currentAvailability = resourceAvailabilityManager.getLatestAvailability(reported
             .getResource().getId());
@@ -1169,6 +1491,9 @@ public class AvailabilityManagerBean implements AvailabilityManagerLocal, Availa
         notifyAlertConditionCacheManager("setAllAgentResourceAvailabilities",
             newAvailabilities.toArray(new Availability[newAvailabilities.size()]));
 
+        // the agent's cached avail states were bypassed above
+        AvailabilityStateCache.getInstance().evict(agentId);
+
         if (log.isDebugEnabled()) {
             log.debug("Resources for agent #[" + agentId + "] have been fully backfilled.");
         }
@@ -0,0 +1,173 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.measurement;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.rhq.core.domain.measurement.AvailabilityType;
+
+/**
+ * Remembers, per resource, the availability type and start time of the latest (open ended) availability interval
+ * as last committed by this server. Availability reports are mostly "nothing changed", and with this cache the
+ * server can recognize those with a single read instead of merging them.
+ * <p/>
+ * The cache is partitioned by agent, since an agent's reports are only ever merged by the server it is connected
+ * to. A partition is loaded in full the first time it is needed and then kept current as reports are merged.
+ * Partitions expire after a configurable time, and are evicted whenever availabilities are changed in bulk outside
+ * of report merging (backfill, full reports, agent connects), so they are rebuilt after a restart or a failover.
+ * A server setting availabilities of an agent it is not connected to (say a resource enabled or disabled there)
+ * marks the agent's status, and the server the agent is connected to evicts the partition when it checks the agent
+ * statuses for its caches, see CacheConsistencyManagerBean.
+ * <p/>
+ * The time to live is set in minutes with the <code>rhq.server.availability.cache.ttl</code> system property,
+ * 0 turns the cache off.
+ */
+public class AvailabilityStateCache {
+
+    private static final long DEFAULT_TTL_MINUTES = 5L;
+
+    private static final AvailabilityStateCache INSTANCE = new AvailabilityStateCache(getConfiguredTtl());
+
+    private final long ttl;
+
+    private final ConcurrentMap<Integer, Partition> partitions = new ConcurrentHashMap<Integer, Partition>();
+
+    AvailabilityStateCache(long ttl) {
+        this.ttl = ttl;
+    }
+
+    public static AvailabilityStateCache getInstance() {
+        return INSTANCE;
+    }
+
+    private static long getConfiguredTtl() {
+        long minutes = DEFAULT_TTL_MINUTES;
+        try {
+            minutes = Long.parseLong(System.getProperty("rhq.server.availability.cache.ttl",
+                String.valueOf(DEFAULT_TTL_MINUTES)));
+        } catch (Throwable t) {
+            //
+        }
+        return (minutes < 0L) ? 0L : minutes * 60L * 1000L;
+    }
+
+    public boolean isEnabled() {
+        return ttl > 0L;
+    }
+
+    /**
+     * @return the cached latest availability of every resource of the agent, or null if the partition has not been
+     * loaded yet or has expired, in which case the caller is expected to {@link #load(int, Map) load} it.
+     */
+    public Map<Integer, State> getPartition(int agentId) {
+        return getPartition(agentId, System.currentTimeMillis());
+    }
+
+    Map<Integer, State> getPartition(int agentId, long now) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Partition partition = partitions.get(agentId);
+        if (null == partition) {
+            return null;
+        }
+        if (now - partition.loadTime >= ttl) {
+            partitions.remove(agentId, partition);
+            return null;
+        }
+        return partition.states;
+    }
+
+    public void load(int agentId, Map<Integer, State> states) {
+        load(agentId, states, System.currentTimeMillis());
+    }
+
+    void load(int agentId, Map<Integer, State> states, long now) {
+        if (isEnabled()) {
+            partitions.put(agentId, new Partition(new ConcurrentHashMap<Integer, State>(states), now));
+        }
+    }
+
+    /**
+     * Records the latest availability of the resources as committed to the database. Does nothing if the partition
+     * of the agent is not loaded, it will pick the changes up when it is.
+     *
+     * @param agentId the agent the resources belong to
+     * @param states the new latest availability per resource id, a null value means it is unknown
+     */
+    public void update(int agentId, Map<Integer, State> states) {
+        Partition partition = partitions.get(agentId);
+        if (null == partition) {
+            return;
+        }
+        for (Map.Entry<Integer, State> entry : states.entrySet()) {
+            if (null == entry.getValue()) {
+                partition.states.remove(entry.getKey());
+            } else {
+                partition.states.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    public void evict(int agentId) {
+        partitions.remove(agentId);
+    }
+
+    public void clear() {
+        partitions.clear();
+    }
+
+    private static class Partition {
+        private final ConcurrentMap<Integer, State> states;
+        private final long loadTime;
+
+        private Partition(ConcurrentMap<Integer, State> states, long loadTime) {
+            this.states = states;
+            this.loadTime = loadTime;
+        }
+    }
+
+    /**
+     * The latest availability interval of a resource.
+     */
+    public static class State {
+        private final AvailabilityType availabilityType;
+        private final long startTime;
+
+        public State(AvailabilityType availabilityType, long startTime) {
+            this.availabilityType = availabilityType;
+            this.startTime = startTime;
+        }
+
+        public AvailabilityType getAvailabilityType() {
+            return availabilityType;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        @Override
+        public String toString() {
+            return "State[" + availabilityType + ", " + startTime + "]";
+        }
+    }
+}
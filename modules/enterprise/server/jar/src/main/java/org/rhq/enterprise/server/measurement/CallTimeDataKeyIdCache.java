@@ -0,0 +1,70 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.measurement;
+
+import org.rhq.core.domain.measurement.calltime.CallTimeDataKey;
+import org.rhq.enterprise.server.util.IdCache;
+
+/**
+ * Holds the server wide cache of {@link CallTimeDataKey} ids, keyed by schedule and call destination. Destinations
+ * must already be clipped to {@link CallTimeDataKey#DESTINATION_MAX_LENGTH}, as they are stored.
+ * <p/>
+ * The max size is set with the <code>rhq.server.calltime-key-cache.max-size</code> system property, 0 turns the
+ * cache off.
+ */
+public class CallTimeDataKeyIdCache {
+
+    private static final IdCache<Key> INSTANCE = IdCache.fromSystemProperty("rhq.server.calltime-key-cache.max-size",
+        100000);
+
+    private CallTimeDataKeyIdCache() {
+    }
+
+    public static IdCache<Key> getInstance() {
+        return INSTANCE;
+    }
+
+    public static class Key {
+        private final int scheduleId;
+        private final String callDestination;
+
+        public Key(int scheduleId, String callDestination) {
+            this.scheduleId = scheduleId;
+            this.callDestination = callDestination;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return scheduleId == key.scheduleId && callDestination.equals(key.callDestination);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * scheduleId + callDestination.hashCode();
+        }
+    }
+}
@@ -21,9 +21,13 @@ package org.rhq.enterprise.server.measurement;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.ejb.EJB;
@@ -67,6 +71,7 @@ import org.rhq.enterprise.server.authz.PermissionException;
 import org.rhq.enterprise.server.measurement.instrumentation.MeasurementMonitor;
 import org.rhq.enterprise.server.util.CriteriaQueryGenerator;
 import org.rhq.enterprise.server.util.CriteriaQueryRunner;
+import org.rhq.enterprise.server.util.IdCache;
 
 /**
  * The manager for call-time metric data.
@@ -86,14 +91,15 @@ public class CallTimeDataManagerBean implements CallTimeDataManagerLocal, CallTi
         + "(schedule_id, call_destination) " + "SELECT ?, ? FROM RHQ_numbers WHERE i = 42 "
         + "AND NOT EXISTS (SELECT * FROM " + DATA_KEY_TABLE_NAME + " WHERE schedule_id = ? AND call_destination = ?)";
 
-    private static final String CALLTIME_VALUE_INSERT_STATEMENT = "INSERT /*+ APPEND */ INTO " + DATA_VALUE_TABLE_NAME
-        + "(id, key_id, begin_time, end_time, minimum, maximum, total, count) "
-        + "SELECT %s, key.id, ?, ?, ?, ?, ?, ? FROM " + DATA_KEY_TABLE_NAME
-        + " key WHERE key.schedule_id = ? AND key.call_destination = ?";
+    private static final String CALLTIME_KEY_ID_QUERY = "SELECT id, call_destination FROM " + DATA_KEY_TABLE_NAME
+        + " WHERE schedule_id = ?";
+
+    // The key ids are resolved up front, see CallTimeDataKeyIdCache.
+    private static final String CALLTIME_VALUE_INSERT_STATEMENT = "INSERT INTO " + DATA_VALUE_TABLE_NAME
+        + "(id, key_id, begin_time, end_time, minimum, maximum, total, count) VALUES (%s, ?, ?, ?, ?, ?, ?, ?)";
 
     private static final String CALLTIME_VALUE_INSERT_STATEMENT_AUTOINC = "INSERT INTO " + DATA_VALUE_TABLE_NAME
-        + "(key_id, begin_time, end_time, minimum, maximum, total, count) SELECT key.id, ?, ?, ?, ?, ?, ? FROM "
-        + DATA_KEY_TABLE_NAME + " key WHERE key.schedule_id = ? AND key.call_destination = ?";
+        + "(key_id, begin_time, end_time, minimum, maximum, total, count) VALUES (?, ?, ?, ?, ?, ?, ?)";
 
     private final Log log = LogFactory.getLog(CallTimeDataManagerBean.class);
 
@@ -123,11 +129,20 @@ public class CallTimeDataManagerBean implements CallTimeDataManagerLocal, CallTi
         log.debug("Persisting call-time data for " + callTimeDataSet.size() + " schedules...");
         long startTime = System.currentTimeMillis();
 
-        // First make sure a single row exists in the key table for each reported call destination.
-        callTimeDataManager.insertCallTimeDataKeys(callTimeDataSet);
+        // First make sure a single row exists in the key table for each reported call destination. Destinations
+        // whose key id is cached are known to have one.
+        Set<CallTimeData> callTimeDataWithUncachedKeys = getCallTimeDataWithUncachedKeys(callTimeDataSet);
+        if (!callTimeDataWithUncachedKeys.isEmpty()) {
+            callTimeDataManager.insertCallTimeDataKeys(callTimeDataWithUncachedKeys);
+        }
 
         // Finally, add the stats themselves to the value table.
-        callTimeDataManager.insertCallTimeDataValues(callTimeDataSet);
+        if (!callTimeDataManager.insertCallTimeDataValues(callTimeDataSet)) {
+            // a cached key may have been deleted since, e.g. with its schedule's resource uninventoried through
+            // another server; the failed insert cleared the key id cache, so retry once with the ids looked up again
+            log.debug("Retrying to persist call-time data values with fresh call-time data key ids");
+            callTimeDataManager.insertCallTimeDataValues(callTimeDataSet);
+        }
         MeasurementMonitor.getMBean().incrementCallTimeInsertTime(System.currentTimeMillis() - startTime);
 
     }
@@ -358,11 +373,12 @@ public class CallTimeDataManagerBean implements CallTimeDataManagerLocal, CallTi
      */
     @Override
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
-    public void insertCallTimeDataValues(Set<CallTimeData> callTimeDataSet) {
+    public boolean insertCallTimeDataValues(Set<CallTimeData> callTimeDataSet) {
         int[] results;
         String insertValueSql;
         PreparedStatement ps = null;
         Connection conn = null;
+        IdCache<CallTimeDataKeyIdCache.Key> keyIdCache = CallTimeDataKeyIdCache.getInstance();
 
         try {
             conn = rhqDs.getConnection();
@@ -389,22 +405,37 @@ public class CallTimeDataManagerBean implements CallTimeDataManagerLocal, CallTi
                 throw new IllegalArgumentException("Unknown database type, can't continue: " + dbType);
             }
 
+            int droppedValueCount = 0;
             ps = conn.prepareStatement(insertValueSql);
             for (CallTimeData callTimeData : callTimeDataSet) {
-                ps.setInt(7, callTimeData.getScheduleId());
+                Map<String, Integer> keyIds = null;
                 Set<String> callDestinations = callTimeData.getValues().keySet();
                 for (String callDestination : callDestinations) {
-                    CallTimeDataValue callTimeDataValue = callTimeData.getValues().get(callDestination);
-                    ps.setLong(1, callTimeDataValue.getBeginTime());
-                    ps.setLong(2, callTimeDataValue.getEndTime());
-                    ps.setDouble(3, callTimeDataValue.getMinimum());
-                    ps.setDouble(4, callTimeDataValue.getMaximum());
-                    ps.setDouble(5, callTimeDataValue.getTotal());
-                    ps.setLong(6, callTimeDataValue.getCount());
                     // make sure the destination string is safe for storage, clip as needed
                     String safeCallDestination = dbType.getString(callDestination,
                         CallTimeDataKey.DESTINATION_MAX_LENGTH);
-                    ps.setString(8, safeCallDestination);
+                    Integer keyId = keyIdCache.get(new CallTimeDataKeyIdCache.Key(callTimeData.getScheduleId(),
+                        safeCallDestination));
+                    if (keyId == null) {
+                        if (keyIds == null) {
+                            keyIds = findCallTimeDataKeyIds(conn, callTimeData.getScheduleId());
+                        }
+                        keyId = keyIds.get(safeCallDestination);
+                        if (keyId == null) {
+                            // the key could not be inserted, e.g. because the schedule has been deleted
+                            ++droppedValueCount;
+                            continue;
+                        }
+                    }
+
+                    CallTimeDataValue callTimeDataValue = callTimeData.getValues().get(callDestination);
+                    ps.setInt(1, keyId);
+                    ps.setLong(2, callTimeDataValue.getBeginTime());
+                    ps.setLong(3, callTimeDataValue.getEndTime());
+                    ps.setDouble(4, callTimeDataValue.getMinimum());
+                    ps.setDouble(5, callTimeDataValue.getMaximum());
+                    ps.setDouble(6, callTimeDataValue.getTotal());
+                    ps.setLong(7, callTimeDataValue.getCount());
                     ps.addBatch();
                 }
             }
@@ -430,15 +461,74 @@ public class CallTimeDataManagerBean implements CallTimeDataManagerLocal, CallTi
 
                 log.debug("Inserted " + insertedRowCount + " call-time data value rows.");
             }
+            if (droppedValueCount > 0) {
+                log.debug("Dropped " + droppedValueCount + " call-time data values without a call-time data key.");
+            }
+            return true;
 
         } catch (SQLException e) {
             logSQLException("Failed to persist call-time data values", e);
+            // a cached key may have been deleted, e.g. by another server, so look them all up again
+            keyIdCache.clear();
         } catch (Throwable t) {
             log.error("Failed to persist call-time data values", t);
+            keyIdCache.clear();
         } finally {
             JDBCUtil.safeClose(conn, ps, null);
         }
 
+        return false;
+    }
+
+    /**
+     * Reads the ids of all the call-time data keys of the schedule, and caches them. The keys have been committed
+     * by {@link #insertCallTimeDataKeys(Set)}, so the ids can be cached right away.
+     */
+    private Map<String, Integer> findCallTimeDataKeyIds(Connection conn, int scheduleId) throws SQLException {
+        Map<String, Integer> keyIds = new HashMap<String, Integer>();
+        IdCache<CallTimeDataKeyIdCache.Key> keyIdCache = CallTimeDataKeyIdCache.getInstance();
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = conn.prepareStatement(CALLTIME_KEY_ID_QUERY);
+            ps.setInt(1, scheduleId);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                int keyId = rs.getInt(1);
+                String callDestination = rs.getString(2);
+                keyIds.put(callDestination, keyId);
+                keyIdCache.put(new CallTimeDataKeyIdCache.Key(scheduleId, callDestination), keyId);
+            }
+        } finally {
+            JDBCUtil.safeClose(ps, rs);
+        }
+        return keyIds;
+    }
+
+    /**
+     * @return the call-time data that report at least one call destination whose key id is not cached, i.e. whose
+     * key may not exist yet
+     */
+    private Set<CallTimeData> getCallTimeDataWithUncachedKeys(Set<CallTimeData> callTimeDataSet) {
+        IdCache<CallTimeDataKeyIdCache.Key> keyIdCache = CallTimeDataKeyIdCache.getInstance();
+        if (!keyIdCache.isEnabled()) {
+            return callTimeDataSet;
+        }
+
+        DatabaseType dbType = DatabaseTypeFactory.getDefaultDatabaseType();
+        Set<CallTimeData> result = new HashSet<CallTimeData>();
+        for (CallTimeData callTimeData : callTimeDataSet) {
+            for (String callDestination : callTimeData.getValues().keySet()) {
+                String safeCallDestination = dbType.getString(callDestination, CallTimeDataKey.DESTINATION_MAX_LENGTH);
+                CallTimeDataKeyIdCache.Key key = new CallTimeDataKeyIdCache.Key(callTimeData.getScheduleId(),
+                    safeCallDestination);
+                if (keyIdCache.get(key) == null) {
+                    result.add(callTimeData);
+                    break;
+                }
+            }
+        }
+        return result;
     }
 
     private void notifyAlertConditionCacheManager(String callingMethod, CallTimeData... data) {
@@ -55,5 +55,8 @@ public interface CallTimeDataManagerLocal extends CallTimeDataManagerRemote {
      */
     void insertCallTimeDataKeys(Set<CallTimeData> callTimeDataSet);
 
-    void insertCallTimeDataValues(Set<CallTimeData> callTimeDataSet);
+    /**
+     * @return false if the values could not be stored, in which case the call-time data key id cache was cleared
+     */
+    boolean insertCallTimeDataValues(Set<CallTimeData> callTimeDataSet);
 }
@@ -587,6 +587,24 @@ public class MeasurementDataManagerBean implements MeasurementDataManagerLocal,
         }
     }
 
+    @Override
+    public Map<Integer, MeasurementDataNumeric> getCurrentNumericForSchedules(Collection<Integer> scheduleIds) {
+        MetricsServer metricsServer = storageClientManager.getMetricsServer();
+        Map<Integer, RawNumericMetric> metrics = metricsServer.findLatestValuesForResources(scheduleIds);
+        Map<Integer, MeasurementDataNumeric> results = new HashMap<Integer, MeasurementDataNumeric>();
+        long now = System.currentTimeMillis();
+        for (Integer scheduleId : scheduleIds) {
+            RawNumericMetric metric = metrics.get(scheduleId);
+            if (null != metric) {
+                results.put(scheduleId, new MeasurementDataNumeric(metric.getTimestamp(), scheduleId, metric
+                    .getValue()));
+            } else {
+                results.put(scheduleId, new MeasurementDataNumeric(now, scheduleId, Double.NaN));
+            }
+        }
+        return results;
+    }
+
     @Asynchronous
     @Override
     public void updateAlertConditionCache(String callingMethod, MeasurementData[] data) {
@@ -69,6 +69,17 @@ public interface MeasurementDataManagerLocal extends MeasurementDataManagerRemot
      */
     public MeasurementDataNumeric getCurrentNumericForSchedule(int scheduleId);
 
+    /**
+     * Return the current numeric values for the passed schedules, the same as
+     * {@link #getCurrentNumericForSchedule(int)} does for each of them but with the storage queries running
+     * concurrently
+     *
+     * @param  scheduleIds ids of MeasurementSchedules that 'point' to MeasurementDataNumeric records
+     *
+     * @return The MeasurementDataNumeric keyed on schedule id, one for each of the passed schedules
+     */
+    public Map<Integer, MeasurementDataNumeric> getCurrentNumericForSchedules(Collection<Integer> scheduleIds);
+
     /**
      * Get metric display summaries for the resources of the passed compatible group, where the
      * {@link MetricDisplaySummary} only contains the metric name and number of alerts. All other fields
@@ -25,7 +25,6 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -84,9 +83,6 @@ public class MeasurementOOBManagerBean implements MeasurementOOBManagerLocal {
     @EJB
     AuthorizationManagerLocal authMangager;
 
-    @EJB
-    MeasurementOOBManagerLocal oobManager;
-
     /**
      * Compute oobs from the values in the 1h measurement table that just got added.
      * For the total result, this is an incremental computation. The idea is that
@@ -197,95 +193,47 @@ public class MeasurementOOBManagerBean implements MeasurementOOBManagerLocal {
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     @TransactionAttribute(value = TransactionAttributeType.NOT_SUPPORTED)
     public void computeOOBsForLastHour(Subject subject, Iterable<AggregateNumericMetric> metrics) {
         log.info("Computing OOBs");
-        int count = 0;
         long startTime = System.currentTimeMillis();
+        OOBCalculator oobCalculator = new OOBCalculator(rhqDs);
 
         try {
-            Iterator<AggregateNumericMetric> iterator = metrics.iterator();
-            while (iterator.hasNext()) {
-
-                List<Integer> scheduleIds = new ArrayList<Integer>(BATCH_SIZE);
-                List<AggregateNumericMetric> metricList = new ArrayList<AggregateNumericMetric>(BATCH_SIZE);
-
-                int i = 0;
-                do {
-                    AggregateNumericMetric aggregate = iterator.next();
-                    scheduleIds.add(aggregate.getScheduleId());
-                    metricList.add(aggregate);
-                    i++;
-                } while (i < BATCH_SIZE && iterator.hasNext());
-
-                Query q  = entityManager.createNamedQuery(MeasurementBaseline.QUERY_BY_SCHEDULE_IDS);
-                q.setParameter("scheduleIds",scheduleIds);
-                List<MeasurementBaseline> tmpList = q.getResultList();
-
-                // put the result in a HashMap to speed up query later
-                Map<Integer,MeasurementBaseline> baselineMap = new HashMap<Integer, MeasurementBaseline>(tmpList.size());
-                for (MeasurementBaseline baseline : tmpList) {
-                    baselineMap.put(baseline.getScheduleId(),baseline);
-                }
-
-                for (AggregateNumericMetric metric : metricList) {
-                    MeasurementBaseline baseline = baselineMap.get(metric.getScheduleId());
-                    if (baseline==null)
-                        continue;
-
-                    try {
-                        count += oobManager.calculateOOB(metric,baseline);
-                    } catch (Exception e) {
-                        log.error("An error occurred while calculating OOBs for " + metric, e);
-                        throw new RuntimeException(e);
-                    }
-
+            oobCalculator.loadBaselines();
+
+            List<AggregateNumericMetric> batch = new ArrayList<AggregateNumericMetric>(BATCH_SIZE);
+            for (AggregateNumericMetric metric : metrics) {
+                batch.add(metric);
+                if (batch.size() == BATCH_SIZE) {
+                    oobCalculator.onPersist(batch);
+                    batch.clear();
                 }
             }
+            if (!batch.isEmpty()) {
+                oobCalculator.onPersist(batch);
+            }
+        } catch (SQLException e) {
+            log.error("An error occurred while loading baselines for OOB calculation", e);
+            throw new RuntimeException(e);
         } finally {
             long endTime = System.currentTimeMillis();
             if (log.isInfoEnabled()) {
-                log.info("Finished calculating " + count + " OOBs in " + (endTime - startTime) + " ms");
+                log.info("Finished calculating " + oobCalculator.getCount() + " OOBs in " + (endTime - startTime) +
+                    " ms");
             }
         }
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     @TransactionAttribute(value = TransactionAttributeType.REQUIRES_NEW)
     public int calculateOOB(AggregateNumericMetric metric,MeasurementBaseline baseline) {
         if (baseline==null) {
             return 0;
         }
 
-        Long upperDelta = null;
-        Long lowerDelta = null;
-
-        if (isPastUpperBound(baseline, metric)) {
-            upperDelta =
-                Math.round(((metric.getMax() - baseline.getMax()) / (baseline.getMax() - baseline.getMin())) * 100);
-        }
-
-        if (isPastLowerBound(baseline, metric)) {
-            lowerDelta =
-                Math.round(((baseline.getMin() - metric.getMin()) / (baseline.getMax() - baseline.getMin())) * 100);
-        }
-
-        Integer oobFactor;
-        if (upperDelta != null && lowerDelta == null) {
-            oobFactor = upperDelta.intValue();
-        } else if (upperDelta == null && lowerDelta != null) {
-            oobFactor = lowerDelta.intValue();
-        } else if (upperDelta != null && lowerDelta != null) {
-            if (upperDelta > lowerDelta) {
-                oobFactor = upperDelta.intValue();
-            } else {
-                oobFactor = lowerDelta.intValue();
-            }
-        } else { // both are null
-            oobFactor = null;
-        }
+        Integer oobFactor = OOBCalculator.computeOOBFactor(metric.getAvg(), metric.getMin(), metric.getMax(),
+            baseline.getMin(), baseline.getMax());
 
         if (oobFactor != null) {
             MeasurementOOB oob = new MeasurementOOB();
@@ -304,18 +252,6 @@ public class MeasurementOOBManagerBean implements MeasurementOOBManagerLocal {
         return 0;
     }
 
-    private boolean isPastUpperBound(MeasurementBaseline baseline, AggregateNumericMetric metric) {
-        return metric.getAvg() > baseline.getMax() &&
-            (baseline.getMax() - baseline.getMin() > 0.1) &&
-            (metric.getMax() - baseline.getMax() > 0);
-    }
-
-    private boolean isPastLowerBound(MeasurementBaseline baseline, AggregateNumericMetric metric) {
-        return metric.getAvg() < baseline.getMax() &&
-            (baseline.getMax() - baseline.getMin() > 0.1) &&
-            (baseline.getMin() - metric.getMin()) > 0;
-    }
-
     /**
      * Computes the OOBs for the last hour.
      * This is done by getting the latest timestamp of the 1h table and invoking
@@ -49,9 +49,8 @@ public interface MeasurementOOBManagerLocal {
 
     /**
      * Computes OOBs using the provided 1 hr data which should be the most recent 1 hr
-     * aggregates. These metrics are provided as an argument as opposed to querying for
-     * them because we already have the 1 hr aggregates load in memory when metrics
-     * aggregation runs prior to calculating OOBs.
+     * aggregates. The data calc job does not use this method; it computes OOBs with an
+     * {@link OOBCalculator} while metrics aggregation writes the 1 hr aggregates.
      *
      * @param subject
      * @param metrics The most recent 1 hr aggregates
@@ -0,0 +1,204 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.measurement;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.util.jdbc.JDBCUtil;
+import org.rhq.server.metrics.aggregation.OneHourAggregatesListener;
+import org.rhq.server.metrics.domain.AggregateNumericMetric;
+
+/**
+ * Computes OOBs for 1 hour aggregates batch by batch while they are being written during aggregation. All baselines
+ * are loaded up front into sorted primitive arrays, which is far more compact than baseline entities, and the OOBs of
+ * each batch are written with JDBC batches. Nothing is retained between batches, so memory usage does not grow with
+ * the number of schedules.
+ * <p/>
+ * {@link #loadBaselines()} has to be called before the first batch. After that {@link #onPersist(List)} may be called
+ * concurrently.
+ */
+public class OOBCalculator implements OneHourAggregatesListener {
+
+    private static final Log LOG = LogFactory.getLog(OOBCalculator.class);
+
+    private static final String QUERY_BASELINES = "" //
+        + "SELECT SCHEDULE_ID, BL_MIN, BL_MAX FROM RHQ_MEASUREMENT_BLINE ORDER BY SCHEDULE_ID";
+
+    private static final String QUERY_DELETE_OOB = "DELETE FROM RHQ_MEASUREMENT_OOB WHERE SCHEDULE_ID = ?";
+
+    private static final String QUERY_INSERT_OOB = "" //
+        + "INSERT INTO RHQ_MEASUREMENT_OOB (SCHEDULE_ID, TIME_STAMP, OOB_FACTOR) VALUES (?, ?, ?)";
+
+    private static final int BASELINES_FETCH_SIZE = 1000;
+
+    private final DataSource dataSource;
+
+    private int[] scheduleIds = new int[0];
+
+    private double[] baselineMins = new double[0];
+
+    private double[] baselineMaxes = new double[0];
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    public OOBCalculator(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Loads the current baselines of all schedules.
+     */
+    public void loadBaselines() throws SQLException {
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        int size = 0;
+        int[] ids = new int[1024];
+        double[] mins = new double[ids.length];
+        double[] maxes = new double[ids.length];
+
+        try {
+            conn = dataSource.getConnection();
+            stmt = conn.prepareStatement(QUERY_BASELINES);
+            stmt.setFetchSize(BASELINES_FETCH_SIZE);
+            rs = stmt.executeQuery();
+            while (rs.next()) {
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                    mins = Arrays.copyOf(mins, size * 2);
+                    maxes = Arrays.copyOf(maxes, size * 2);
+                }
+                ids[size] = rs.getInt(1);
+                mins[size] = rs.getDouble(2);
+                maxes[size] = rs.getDouble(3);
+                ++size;
+            }
+        } finally {
+            JDBCUtil.safeClose(conn, stmt, rs);
+        }
+
+        scheduleIds = Arrays.copyOf(ids, size);
+        baselineMins = Arrays.copyOf(mins, size);
+        baselineMaxes = Arrays.copyOf(maxes, size);
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Loaded " + size + " baselines for OOB calculation");
+        }
+    }
+
+    /**
+     * @return The number of OOBs written so far
+     */
+    public int getCount() {
+        return count.get();
+    }
+
+    /**
+     * Computes the OOBs for <code>metrics</code> and stores them, replacing the previous OOBs of the schedules.
+     * Metrics of schedules without a baseline are skipped.
+     */
+    @Override
+    public void onPersist(List<AggregateNumericMetric> metrics) {
+        int[] oobScheduleIds = new int[metrics.size()];
+        long[] oobTimestamps = new long[metrics.size()];
+        int[] oobFactors = new int[metrics.size()];
+        int size = 0;
+
+        for (AggregateNumericMetric metric : metrics) {
+            int i = Arrays.binarySearch(scheduleIds, metric.getScheduleId());
+            if (i < 0) {
+                continue;
+            }
+            Integer oobFactor = computeOOBFactor(metric.getAvg(), metric.getMin(), metric.getMax(), baselineMins[i],
+                baselineMaxes[i]);
+            if (oobFactor != null) {
+                oobScheduleIds[size] = metric.getScheduleId();
+                oobTimestamps[size] = metric.getTimestamp();
+                oobFactors[size] = oobFactor;
+                ++size;
+            }
+        }
+
+        if (size == 0) {
+            return;
+        }
+
+        Connection conn = null;
+        PreparedStatement deleteStmt = null;
+        PreparedStatement insertStmt = null;
+        try {
+            conn = dataSource.getConnection();
+            deleteStmt = conn.prepareStatement(QUERY_DELETE_OOB);
+            insertStmt = conn.prepareStatement(QUERY_INSERT_OOB);
+            for (int i = 0; i < size; ++i) {
+                deleteStmt.setInt(1, oobScheduleIds[i]);
+                deleteStmt.addBatch();
+                insertStmt.setInt(1, oobScheduleIds[i]);
+                insertStmt.setLong(2, oobTimestamps[i]);
+                insertStmt.setInt(3, oobFactors[i]);
+                insertStmt.addBatch();
+            }
+            deleteStmt.executeBatch();
+            insertStmt.executeBatch();
+            count.addAndGet(size);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to store " + size + " OOBs", e);
+        } finally {
+            JDBCUtil.safeClose(deleteStmt);
+            JDBCUtil.safeClose(conn, insertStmt, null);
+        }
+    }
+
+    /**
+     * @return The OOB factor of the 1 hour aggregate with respect to the baseline, or null if the aggregate is within
+     * the baseline bounds
+     */
+    static Integer computeOOBFactor(double avg, double min, double max, double baselineMin, double baselineMax) {
+        double range = baselineMax - baselineMin;
+        if (range <= 0.1) {
+            return null;
+        }
+
+        boolean pastUpperBound = avg > baselineMax && (max - baselineMax > 0);
+        boolean pastLowerBound = avg < baselineMax && (baselineMin - min > 0);
+        long upperDelta = pastUpperBound ? Math.round(((max - baselineMax) / range) * 100) : 0;
+        long lowerDelta = pastLowerBound ? Math.round(((baselineMin - min) / range) * 100) : 0;
+
+        if (pastUpperBound && pastLowerBound) {
+            return (int) Math.max(upperDelta, lowerDelta);
+        } else if (pastUpperBound) {
+            return (int) upperDelta;
+        } else if (pastLowerBound) {
+            return (int) lowerDelta;
+        }
+        return null;
+    }
+}
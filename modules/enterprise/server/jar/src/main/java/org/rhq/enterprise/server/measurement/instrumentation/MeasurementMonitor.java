@@ -297,6 +297,51 @@ public class MeasurementMonitor implements MeasurementMonitorMBean {
         storageClientManager.setRawDataAgeLimit(ageLimit);
     }
 
+    @Override
+    public int getRawDataBatchSize() {
+        return storageClientManager.getRawDataBatchSize();
+    }
+
+    @Override
+    public void setRawDataBatchSize(int batchSize) {
+        storageClientManager.setRawDataBatchSize(batchSize);
+    }
+
+    @Override
+    public int getRawDataMaxInFlight() {
+        return storageClientManager.getRawDataMaxInFlight();
+    }
+
+    @Override
+    public void setRawDataMaxInFlight(int maxInFlight) {
+        storageClientManager.setRawDataMaxInFlight(maxInFlight);
+    }
+
+    @Override
+    public int getRawDataInFlight() {
+        return storageClientManager.getMetricsServer().getRawDataInFlight();
+    }
+
+    @Override
+    public long getRawDataInserted() {
+        return storageClientManager.getMetricsServer().getRawDataInserted();
+    }
+
+    @Override
+    public long getRawDataInsertBatches() {
+        return storageClientManager.getMetricsServer().getRawDataInsertBatches();
+    }
+
+    @Override
+    public long getRawDataInsertFailures() {
+        return storageClientManager.getMetricsServer().getRawDataInsertFailures();
+    }
+
+    @Override
+    public long getRawDataInsertTime() {
+        return storageClientManager.getMetricsServer().getRawDataInsertTime();
+    }
+
     @PostConstruct
     private void init() {
         JMXUtil.registerMBean(this, OBJECT_NAME);
@@ -110,4 +110,22 @@ public interface MeasurementMonitorMBean {
     int getRawDataAgeLimit();
 
     void setRawDataAgeLimit(int ageLimit);
+
+    int getRawDataBatchSize();
+
+    void setRawDataBatchSize(int batchSize);
+
+    int getRawDataMaxInFlight();
+
+    void setRawDataMaxInFlight(int maxInFlight);
+
+    int getRawDataInFlight();
+
+    long getRawDataInserted();
+
+    long getRawDataInsertBatches();
+
+    long getRawDataInsertFailures();
+
+    long getRawDataInsertTime();
 }
\ No newline at end of file
@@ -0,0 +1,406 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.purge;
+
+import static org.rhq.core.db.DatabaseTypeFactory.isOracle;
+import static org.rhq.core.db.DatabaseTypeFactory.isPostgres;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.db.DatabaseType;
+import org.rhq.core.db.DatabaseTypeFactory;
+import org.rhq.core.util.jdbc.JDBCUtil;
+
+/**
+ * Purges a time-range partitioned table by dropping whole expired partitions.<br>
+ * <br>
+ * Partitioning is optional: the table is range partitioned on its purge column, with epoch milliseconds bounds, using
+ * the native partitioning of the database (declarative partitioning on Postgres 10 and later, range or interval
+ * partitioning on Oracle). {@link org.rhq.core.db.upgrade.TimePartitionedTablesUpgradeTask} converts the tables where
+ * the database supports it. The purge column must never be updated, or rows would have to move across partitions. When
+ * the table is not partitioned this way, or the database is not supported, {@link #execute()} does nothing and the
+ * {@link PurgeTemplate row deletion purge} does all the work.<br>
+ * <br>
+ * When the table is partitioned, {@link #execute()} creates the partitions of the upcoming periods, so that inserts
+ * always find one, and then drops the partitions whose upper bound is not after the purge time. Rows of the partition
+ * which contains the purge time are left to the row deletion purge, which is expected to run right after.<br>
+ * <br>
+ * DDL statements are executed outside of any transaction because Oracle implicitly commits them.
+ */
+class PartitionPurge {
+    private static final Log LOG = LogFactory.getLog(PartitionPurge.class);
+
+    private static final String PERIOD_HOURS_SYSTEM_PROPERTY = PartitionPurge.class.getName() + ".PERIOD_HOURS";
+    private static final String PRECREATED_PARTITIONS_SYSTEM_PROPERTY = PartitionPurge.class.getName()
+        + ".PRECREATED_PARTITIONS";
+    private static final long PERIOD = 60L * 60 * 1000 * Integer.getInteger(PERIOD_HOURS_SYSTEM_PROPERTY, 24);
+    private static final int PRECREATED_PARTITIONS = Integer.getInteger(PRECREATED_PARTITIONS_SYSTEM_PROPERTY, 7);
+    static {
+        LOG.info(PERIOD_HOURS_SYSTEM_PROPERTY + " = " + (PERIOD / (60L * 60 * 1000)));
+        LOG.info(PRECREATED_PARTITIONS_SYSTEM_PROPERTY + " = " + PRECREATED_PARTITIONS);
+    }
+
+    /** pg_get_partkeydef() and partitioned tables (relkind 'p') only exist as of this version */
+    private static final int POSTGRES_DECLARATIVE_PARTITIONING_MAJOR_VERSION = 10;
+
+    private static final String POSTGRES_PARTITION_KEY_QUERY = "" //
+        + "SELECT pg_get_partkeydef(c.oid) FROM pg_class c " //
+        + "WHERE c.relname = ? AND c.relkind = 'p' AND pg_table_is_visible(c.oid)";
+
+    private static final String POSTGRES_PARTITIONS_QUERY = "" //
+        + "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) FROM pg_inherits i " //
+        + "JOIN pg_class c ON c.oid = i.inhrelid " //
+        + "JOIN pg_class p ON p.oid = i.inhparent " //
+        + "WHERE p.relname = ? AND pg_table_is_visible(p.oid)";
+
+    private static final String ORACLE_PARTITION_KEY_QUERY = "" //
+        + "SELECT t.PARTITIONING_TYPE, t.INTERVAL, c.COLUMN_NAME FROM USER_PART_TABLES t " //
+        + "JOIN USER_PART_KEY_COLUMNS c ON c.NAME = t.TABLE_NAME AND c.OBJECT_TYPE = 'TABLE' " //
+        + "WHERE t.TABLE_NAME = ?";
+
+    private static final String ORACLE_PARTITIONS_QUERY = "" //
+        + "SELECT PARTITION_NAME, HIGH_VALUE FROM USER_TAB_PARTITIONS " //
+        + "WHERE TABLE_NAME = ? ORDER BY PARTITION_POSITION";
+
+    private static final Pattern POSTGRES_RANGE_KEY = Pattern.compile("RANGE \\(\"?(\\w+)\"?\\)",
+        Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern POSTGRES_RANGE_BOUND = Pattern.compile(
+        "FOR VALUES FROM \\((?:'?(-?\\d+)'?|MINVALUE)\\) TO \\((?:'?(-?\\d+)'?|MAXVALUE)\\)", Pattern.CASE_INSENSITIVE);
+
+    private final DataSource dataSource;
+    private final DatabaseType databaseType;
+    private final String entityName;
+    private final String tableName;
+    private final String partitionColumn;
+    private final long deleteUpToTime;
+
+    /**
+     * @param dataSource the source of JDBC connections to the database
+     * @param entityName the name of the data being purged, used for logging purpose
+     * @param tableName the name of the table, in upper case
+     * @param partitionColumn the column the table must be partitioned on, in upper case
+     * @param deleteUpToTime rows of partitions entirely before this time are purged
+     */
+    PartitionPurge(DataSource dataSource, String entityName, String tableName, String partitionColumn,
+        long deleteUpToTime) {
+        this.dataSource = dataSource;
+        this.entityName = entityName;
+        this.tableName = tableName;
+        this.partitionColumn = partitionColumn;
+        this.deleteUpToTime = deleteUpToTime;
+        databaseType = DatabaseTypeFactory.getDefaultDatabaseType();
+    }
+
+    /**
+     * @return the number of rows in the dropped partitions
+     */
+    public int execute() {
+        int deleted = 0;
+        Connection connection = null;
+        try {
+
+            if (!isPostgres(databaseType) && !isOracle(databaseType)) {
+                return 0;
+            }
+
+            connection = dataSource.getConnection();
+            PartitionedTable table = loadPartitionedTable(connection);
+            if (table == null) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(entityName + ": " + tableName + " is not partitioned on " + partitionColumn);
+                }
+                return 0;
+            }
+
+            createPartitions(connection, table, System.currentTimeMillis());
+
+            List<Partition> expiredPartitions = findExpiredPartitions(table.partitions, deleteUpToTime);
+            if (isOracle(databaseType) && table.interval != null && !expiredPartitions.isEmpty()) {
+                // The last range partition of an interval partitioned table cannot be dropped. Setting the interval
+                // again turns the partitions created so far into range partitions.
+                executeUpdate(connection, "ALTER TABLE " + tableName + " SET INTERVAL (" + table.interval + ")");
+            }
+            for (Partition partition : expiredPartitions) {
+                int count = countRows(connection, partition);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Dropping partition " + partition.name + " with " + count + " row(s) of " + entityName);
+                }
+                dropPartition(connection, partition);
+                deleted += count;
+            }
+
+        } catch (Exception e) {
+            LOG.error(entityName + ": could not fully process the partition purge", e);
+        } finally {
+            JDBCUtil.safeClose(connection);
+        }
+
+        return deleted;
+    }
+
+    private PartitionedTable loadPartitionedTable(Connection connection) throws SQLException {
+        PreparedStatement preparedStatement = null;
+        ResultSet resultSet = null;
+        try {
+
+            String interval = null;
+            if (isPostgres(databaseType)) {
+                int majorVersion = connection.getMetaData().getDatabaseMajorVersion();
+                if (majorVersion < POSTGRES_DECLARATIVE_PARTITIONING_MAJOR_VERSION) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug(entityName + ": Postgres " + majorVersion
+                            + " does not support declarative partitioning, partitions will not be purged");
+                    }
+                    return null;
+                }
+                preparedStatement = connection.prepareStatement(POSTGRES_PARTITION_KEY_QUERY);
+                preparedStatement.setString(1, tableName.toLowerCase());
+                resultSet = preparedStatement.executeQuery();
+                if (!resultSet.next()) {
+                    return null;
+                }
+                Matcher matcher = POSTGRES_RANGE_KEY.matcher(resultSet.getString(1));
+                if (!matcher.matches() || !matcher.group(1).equalsIgnoreCase(partitionColumn)) {
+                    LOG.warn(entityName + ": " + tableName + " is not range partitioned on " + partitionColumn
+                        + " [" + resultSet.getString(1) + "], partitions will not be purged");
+                    return null;
+                }
+            } else {
+                preparedStatement = connection.prepareStatement(ORACLE_PARTITION_KEY_QUERY);
+                preparedStatement.setString(1, tableName);
+                resultSet = preparedStatement.executeQuery();
+                if (!resultSet.next()) {
+                    return null;
+                }
+                if (!"RANGE".equals(resultSet.getString(1)) || !partitionColumn.equals(resultSet.getString(3))
+                    || resultSet.next()) {
+                    LOG.warn(entityName + ": " + tableName + " is not range partitioned on " + partitionColumn
+                        + ", partitions will not be purged");
+                    return null;
+                }
+                interval = resultSet.getString(2);
+            }
+            JDBCUtil.safeClose(preparedStatement, resultSet);
+
+            List<Partition> partitions = new ArrayList<Partition>();
+            if (isPostgres(databaseType)) {
+                preparedStatement = connection.prepareStatement(POSTGRES_PARTITIONS_QUERY);
+                preparedStatement.setString(1, tableName.toLowerCase());
+                resultSet = preparedStatement.executeQuery();
+                while (resultSet.next()) {
+                    Partition partition = parsePostgresPartition(resultSet.getString(1), resultSet.getString(2));
+                    if (partition != null) {
+                        partitions.add(partition);
+                    }
+                }
+            } else {
+                preparedStatement = connection.prepareStatement(ORACLE_PARTITIONS_QUERY);
+                preparedStatement.setString(1, tableName);
+                resultSet = preparedStatement.executeQuery();
+                Long lower = null;
+                while (resultSet.next()) {
+                    Partition partition = parseOraclePartition(resultSet.getString(1), lower, resultSet.getString(2));
+                    partitions.add(partition);
+                    lower = partition.upper;
+                }
+            }
+
+            return new PartitionedTable(partitions, interval);
+
+        } finally {
+            JDBCUtil.safeClose(preparedStatement, resultSet);
+        }
+    }
+
+    /**
+     * @return the partition, or null if the bound is not a range of epoch milliseconds (a default partition, for
+     * example)
+     */
+    static Partition parsePostgresPartition(String name, String bound) {
+        Matcher matcher = POSTGRES_RANGE_BOUND.matcher(bound == null ? "" : bound.trim());
+        if (!matcher.matches()) {
+            return null;
+        }
+        return new Partition(name, parseBound(matcher.group(1)), parseBound(matcher.group(2)));
+    }
+
+    static Partition parseOraclePartition(String name, Long lower, String highValue) {
+        String upper = highValue == null ? null : highValue.trim();
+        return new Partition(name, lower, "MAXVALUE".equalsIgnoreCase(upper) ? null : parseBound(upper));
+    }
+
+    private static Long parseBound(String bound) {
+        return bound == null ? null : Long.valueOf(bound);
+    }
+
+    /**
+     * @return the partitions which only hold rows before <code>deleteUpToTime</code>
+     */
+    static List<Partition> findExpiredPartitions(List<Partition> partitions, long deleteUpToTime) {
+        List<Partition> expired = new ArrayList<Partition>();
+        for (Partition partition : partitions) {
+            if (partition.upper != null && partition.upper <= deleteUpToTime) {
+                expired.add(partition);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * @return the <code>[lower, upper)</code> ranges of the periods from the one containing <code>now</code> to the
+     * last precreated one, which do not overlap an existing partition
+     */
+    static List<long[]> findMissingRanges(List<Partition> partitions, long now, long period, int precreated) {
+        List<long[]> missing = new ArrayList<long[]>();
+        long lower = now - (now % period);
+        for (int i = 0; i <= precreated; i++, lower += period) {
+            long upper = lower + period;
+            boolean overlaps = false;
+            for (Partition partition : partitions) {
+                if ((partition.lower == null || partition.lower < upper)
+                    && (partition.upper == null || partition.upper > lower)) {
+                    overlaps = true;
+                    break;
+                }
+            }
+            if (!overlaps) {
+                missing.add(new long[] { lower, upper });
+            }
+        }
+        return missing;
+    }
+
+    private void createPartitions(Connection connection, PartitionedTable table, long now) {
+        if (isOracle(databaseType) && table.interval != null) {
+            // Oracle creates the partitions of an interval partitioned table on insert
+            return;
+        }
+
+        for (long[] range : findMissingRanges(table.partitions, now, PERIOD, PRECREATED_PARTITIONS)) {
+            String partitionName = getPartitionName(range[0]);
+            String sql;
+            if (isPostgres(databaseType)) {
+                sql = "CREATE TABLE " + partitionName + " PARTITION OF " + tableName + " FOR VALUES FROM (" + range[0]
+                    + ") TO (" + range[1] + ")";
+            } else {
+                // Only possible above the highest partition, and without a MAXVALUE partition
+                sql = "ALTER TABLE " + tableName + " ADD PARTITION " + partitionName + " VALUES LESS THAN ("
+                    + range[1] + ")";
+            }
+            try {
+                executeUpdate(connection, sql);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Created partition " + partitionName + " of " + entityName);
+                }
+            } catch (SQLException e) {
+                LOG.warn(entityName + ": could not create partition " + partitionName + " for ["
+                    + new Date(range[0]) + ", " + new Date(range[1]) + "): " + e.getMessage());
+                break;
+            }
+        }
+    }
+
+    private String getPartitionName(long lower) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMddHH");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        // Oracle partition names are only unique within their table, and limited to 30 characters
+        return (isOracle(databaseType) ? "" : tableName + "_") + "P" + format.format(new Date(lower));
+    }
+
+    private int countRows(Connection connection, Partition partition) throws SQLException {
+        String sql;
+        if (isPostgres(databaseType)) {
+            sql = "SELECT COUNT(*) FROM \"" + partition.name + "\"";
+        } else {
+            sql = "SELECT COUNT(*) FROM " + tableName + " PARTITION (\"" + partition.name + "\")";
+        }
+        Statement statement = null;
+        ResultSet resultSet = null;
+        try {
+            statement = connection.createStatement();
+            resultSet = statement.executeQuery(sql);
+            resultSet.next();
+            return resultSet.getInt(1);
+        } finally {
+            JDBCUtil.safeClose(statement, resultSet);
+        }
+    }
+
+    private void dropPartition(Connection connection, Partition partition) throws SQLException {
+        if (isPostgres(databaseType)) {
+            executeUpdate(connection, "DROP TABLE \"" + partition.name + "\"");
+        } else {
+            executeUpdate(connection, "ALTER TABLE " + tableName + " DROP PARTITION \"" + partition.name
+                + "\" UPDATE GLOBAL INDEXES");
+        }
+    }
+
+    private void executeUpdate(Connection connection, String sql) throws SQLException {
+        Statement statement = null;
+        try {
+            statement = connection.createStatement();
+            statement.executeUpdate(sql);
+        } finally {
+            JDBCUtil.safeClose(statement);
+        }
+    }
+
+    static class Partition {
+        final String name;
+        /** Inclusive, null if unbounded */
+        final Long lower;
+        /** Exclusive, null if unbounded */
+        final Long upper;
+
+        Partition(String name, Long lower, Long upper) {
+            this.name = name;
+            this.lower = lower;
+            this.upper = upper;
+        }
+    }
+
+    private static class PartitionedTable {
+        final List<Partition> partitions;
+        /** The interval of an Oracle interval partitioned table, null otherwise */
+        final String interval;
+
+        private PartitionedTable(List<Partition> partitions, String interval) {
+            this.partitions = partitions;
+            this.interval = interval;
+        }
+    }
+}
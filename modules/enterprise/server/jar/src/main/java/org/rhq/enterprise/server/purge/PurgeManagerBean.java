@@ -74,9 +74,12 @@ public class PurgeManagerBean implements PurgeManagerLocal {
 
     @Override
     public int purgeEventData(long deleteUpToTime) {
+        PartitionPurge partitionPurge = new PartitionPurge(dataSource, "EventData", "RHQ_EVENT", "TIMESTAMP",
+            deleteUpToTime);
         EventDataPurge eventDataPurge = new EventDataPurge(dataSource, userTransaction, deleteUpToTime);
         long startTime = System.currentTimeMillis();
-        int deleted = eventDataPurge.execute();
+        int deleted = partitionPurge.execute();
+        deleted += eventDataPurge.execute();
         MeasurementMonitor.getMBean().incrementPurgeTime(System.currentTimeMillis() - startTime);
         MeasurementMonitor.getMBean().setPurgedEvents(deleted);
         return deleted;
@@ -88,10 +91,13 @@ public class PurgeManagerBean implements PurgeManagerLocal {
         //       (see http://jira.jboss.com/jira/browse/JBNADM-1606). Once we limit the number of keys per
         //       resource at insertion time (see http://jira.jboss.com/jira/browse/JBNADM-2618), the key
         //       table will not require truncation.
+        PartitionPurge partitionPurge = new PartitionPurge(dataSource, "CallTimeDataValue", "RHQ_CALLTIME_DATA_VALUE",
+            "END_TIME", deleteUpToTime);
         CallTimeDataValuePurge callTimeDataValuePurge = new CallTimeDataValuePurge(dataSource, userTransaction,
             deleteUpToTime);
         long startTime = System.currentTimeMillis();
-        int deletedRowCount = callTimeDataValuePurge.execute();
+        int deletedRowCount = partitionPurge.execute();
+        deletedRowCount += callTimeDataValuePurge.execute();
         MeasurementMonitor.getMBean().incrementPurgeTime(System.currentTimeMillis() - startTime);
         MeasurementMonitor.getMBean().setPurgedCallTimeData(deletedRowCount);
         return deletedRowCount;
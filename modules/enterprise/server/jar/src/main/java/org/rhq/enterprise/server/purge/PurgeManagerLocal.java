@@ -41,7 +41,8 @@ public interface PurgeManagerLocal {
     int purgeTraits(long oldest);
 
     /**
-     * Deletes event data older than the specified time.
+     * Deletes event data older than the specified time. If RHQ_EVENT is range partitioned on TIMESTAMP, expired
+     * partitions are dropped first (see {@link PartitionPurge}).
      *
      * @param deleteUpToTime event data older than this time will be deleted
      * @return number of deleted Events
@@ -49,7 +50,8 @@ public interface PurgeManagerLocal {
     int purgeEventData(long deleteUpToTime);
 
     /**
-     * Deletes call-time data older than the specified time.
+     * Deletes call-time data older than the specified time. If RHQ_CALLTIME_DATA_VALUE is range partitioned on
+     * END_TIME, expired partitions are dropped first (see {@link PartitionPurge}).
      *
      * @param deleteUpToTime call-time data older than this time will be deleted
      */
@@ -214,6 +214,7 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
 
         entityManager.persist(resource);
         log.debug("********* resource persisted ************");
+        updateResourceAncestors(resource);
         // Execute sub-methods as overlord to bypass additional security checks.
         Subject overlord = this.subjectManager.getOverlord();
         updateImplicitMembership(overlord, resource);
@@ -237,6 +238,122 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
         groupManager.updateImplicitGroupMembership(subject, resource);
     }
 
+    public void updateResourceAncestors(Resource resource) {
+        // native queries are not auto-flushed, and the resource row must exist before it can be referenced
+        entityManager.flush();
+
+        int resourceId = resource.getId();
+        if (!isResourceAncestorTracked(resourceId)) {
+            Query insertSelf = entityManager.createNativeQuery(Resource.QUERY_NATIVE_INSERT_ANCESTOR_SELF);
+            insertSelf.setParameter("resourceId", resourceId);
+            insertSelf.executeUpdate();
+        } else {
+            // the resource may be moving, detach its subtree from wherever it used to hang
+            Query unlink = entityManager.createNativeQuery(Resource.QUERY_NATIVE_DELETE_ANCESTORS_OF_SUBTREE);
+            unlink.setParameter("resourceId", resourceId);
+            unlink.executeUpdate();
+        }
+
+        Resource parent = resource.getParentResource();
+        if (parent != null) {
+            if (!isResourceAncestorTracked(parent.getId())) {
+                // e.g. the parent was re-inventoried without going through here, pull its lineage in first
+                updateResourceAncestors(parent);
+            }
+            Query link = entityManager.createNativeQuery(Resource.QUERY_NATIVE_INSERT_ANCESTORS_OF_SUBTREE);
+            link.setParameter("parentId", parent.getId());
+            link.setParameter("resourceId", resourceId);
+            link.executeUpdate();
+        }
+    }
+
+    public void updateResourceAncestors(List<Resource> resources) {
+        if (resources.isEmpty()) {
+            return;
+        }
+
+        // native queries are not auto-flushed, and the resource rows must exist before they can be referenced
+        entityManager.flush();
+
+        List<Integer> resourceIds = new ArrayList<Integer>(resources.size());
+        for (Resource resource : resources) {
+            resourceIds.add(resource.getId());
+        }
+        Set<Integer> tracked = getResourceAncestorTracked(resourceIds);
+
+        // group the resources by their distance from the closest parent outside of the list, a generation can only
+        // be linked once the previous one is in the closure
+        List<List<Integer>> generations = new ArrayList<List<Integer>>();
+        Map<Integer, Integer> generationById = new HashMap<Integer, Integer>();
+        Map<Integer, Resource> outsideParents = new HashMap<Integer, Resource>();
+        List<Integer> untrackedIds = new ArrayList<Integer>(resources.size());
+        for (Resource resource : resources) {
+            if (tracked.contains(resource.getId())) {
+                continue; // e.g. a resource moved under it already pulled its lineage in
+            }
+            untrackedIds.add(resource.getId());
+
+            Resource parent = resource.getParentResource();
+            Integer parentGeneration = (parent == null) ? null : generationById.get(parent.getId());
+            int generation = (parentGeneration == null) ? 0 : parentGeneration + 1;
+            if (parent != null && parentGeneration == null) {
+                outsideParents.put(parent.getId(), parent);
+            }
+            if (generation == generations.size()) {
+                generations.add(new ArrayList<Integer>());
+            }
+            generations.get(generation).add(resource.getId());
+            generationById.put(resource.getId(), generation);
+        }
+
+        // e.g. a parent that was re-inventoried without going through here, pull its lineage in first
+        Set<Integer> trackedParents = getResourceAncestorTracked(new ArrayList<Integer>(outsideParents.keySet()));
+        for (Resource parent : outsideParents.values()) {
+            if (!trackedParents.contains(parent.getId())) {
+                updateResourceAncestors(parent);
+            }
+        }
+
+        executeUpdateByResourceIds(Resource.QUERY_NATIVE_INSERT_ANCESTOR_SELF_BY_RESOURCES, untrackedIds);
+        for (List<Integer> generation : generations) {
+            executeUpdateByResourceIds(Resource.QUERY_NATIVE_INSERT_ANCESTORS_OF_PARENTS_BY_RESOURCES, generation);
+        }
+    }
+
+    private Set<Integer> getResourceAncestorTracked(List<Integer> resourceIds) {
+        Set<Integer> result = new HashSet<Integer>();
+        for (int i = 0; i < resourceIds.size(); i += 1000) {
+            Query query = entityManager.createNativeQuery(Resource.QUERY_NATIVE_FIND_ANCESTOR_SELF_BY_RESOURCES);
+            query.setParameter("resourceIds", resourceIds.subList(i, Math.min(i + 1000, resourceIds.size())));
+            result.addAll(getResourceIds(query));
+        }
+        return result;
+    }
+
+    private void executeUpdateByResourceIds(String nativeQuery, List<Integer> resourceIds) {
+        for (int i = 0; i < resourceIds.size(); i += 1000) {
+            Query query = entityManager.createNativeQuery(nativeQuery);
+            query.setParameter("resourceIds", resourceIds.subList(i, Math.min(i + 1000, resourceIds.size())));
+            query.executeUpdate();
+        }
+    }
+
+    public boolean isResourceAncestorTracked(int resourceId) {
+        Query query = entityManager.createNativeQuery(Resource.QUERY_NATIVE_COUNT_ANCESTOR_SELF);
+        query.setParameter("resourceId", resourceId);
+        return ((Number) query.getSingleResult()).intValue() > 0;
+    }
+
+    private List<Integer> getResourceIds(Query query) {
+        List<?> rl = query.getResultList();
+        List<Integer> result = new ArrayList<Integer>(rl.size());
+        for (Object id : rl) {
+            // Oracle hands back BigDecimal, Postgres Integer
+            result.add(((Number) id).intValue());
+        }
+        return result;
+    }
+
     public Resource updateResource(Subject user, Resource resource) {
         Resource persistedResource = entityManager.find(Resource.class, resource.getId());
         if (persistedResource == null) {
@@ -459,6 +576,12 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
                 markDeletedQuery.setParameter("resourceIds", idsToDelete);
                 markDeletedQuery.setParameter("status", InventoryStatus.UNINVENTORIED);
                 resourcesDeleted += markDeletedQuery.executeUpdate();
+
+                // uninventoried resources drop out of the hierarchy closure right away
+                Query deleteAncestorsQuery = entityManager
+                    .createNativeQuery(Resource.QUERY_NATIVE_DELETE_ANCESTORS_BY_RESOURCES);
+                deleteAncestorsQuery.setParameter("resourceIds", idsToDelete);
+                deleteAncestorsQuery.executeUpdate();
                 i = j;
             }
 
@@ -519,8 +642,17 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
         }
     }
 
-    @SuppressWarnings("unchecked")
     private List<Integer> getDescendents(int resourceId) {
+        Query query = entityManager.createNativeQuery(Resource.QUERY_NATIVE_FIND_DESCENDANTS_BY_ANCESTOR);
+        query.setParameter("resourceId", resourceId);
+        List<Integer> result = getResourceIds(query);
+
+        // the closure always holds the resource itself, so nothing at all means the resource is not tracked
+        return result.isEmpty() ? getDescendentsRecursive(resourceId) : result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Integer> getDescendentsRecursive(int resourceId) {
         List<Integer> result = null;
         Query query = null;
 
@@ -551,10 +683,26 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
         return result;
     }
 
-    @SuppressWarnings("unchecked")
     public List<Integer> getResourceDescendantsByTypeAndName(Subject user, int resourceId, Integer resourceTypeId,
         String name) {
 
+        name = QueryUtility.formatSearchParameter(name);
+        Query query = entityManager.createNativeQuery(Resource.QUERY_NATIVE_FIND_DESCENDANTS_BY_ANCESTOR_TYPE_AND_NAME);
+        query.setParameter("resourceId", resourceId);
+        query.setParameter("resourceTypeId", ((null != resourceTypeId) ? resourceTypeId : 0));
+        query.setParameter("resourceName", ((null != name) ? name : "$$$null$$$"));
+        List<Integer> result = getResourceIds(query);
+
+        if (result.isEmpty() && !isResourceAncestorTracked(resourceId)) {
+            result = getResourceDescendantsByTypeAndNameRecursive(resourceId, resourceTypeId, name);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Integer> getResourceDescendantsByTypeAndNameRecursive(int resourceId, Integer resourceTypeId,
+        String name) {
+
         List<Integer> result = null;
         Query query = null;
         DatabaseType dbType = DatabaseTypeFactory.getDefaultDatabaseType();
@@ -571,7 +719,6 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
 
         query.setParameter("resourceId", resourceId);
         query.setParameter("resourceTypeId", ((null != resourceTypeId) ? resourceTypeId : 0));
-        name = QueryUtility.formatSearchParameter(name);
         query.setParameter("resourceName", ((null != name) ? name : "$$$null$$$"));
 
         if (DatabaseTypeFactory.isOracle(dbType)) {
@@ -951,9 +1098,20 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
         }
     }
 
+    // the resource itself first and the platform last, or empty if the resource is not in the hierarchy closure
+    private List<Integer> getAncestorIds(int resourceId) {
+        Query query = entityManager.createNativeQuery(Resource.QUERY_NATIVE_FIND_ANCESTORS);
+        query.setParameter("resourceId", resourceId);
+        return getResourceIds(query);
+    }
+
     // lineage is a getXXX (not findXXX) because it logically returns a single object, but modeled as a list here
     public List<Integer> getResourceIdLineage(int resourceId) {
-        List<Integer> lineage = new ArrayList<Integer>();
+        List<Integer> lineage = getAncestorIds(resourceId);
+        if (!lineage.isEmpty()) {
+            // drop the resource itself, leaving the parent first and the platform last
+            return new ArrayList<Integer>(lineage.subList(1, lineage.size()));
+        }
 
         Integer child = resourceId;
         Integer parent = null;
@@ -973,6 +1131,26 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
             throw new ResourceNotFoundException(resourceId);
         }
 
+        List<Integer> ancestorIds = getAncestorIds(resourceId);
+        if (!ancestorIds.isEmpty()) {
+            Query query = entityManager.createNamedQuery(Resource.QUERY_FIND_BY_IDS_ADMIN);
+            query.setParameter("ids", ancestorIds);
+            @SuppressWarnings("unchecked")
+            List<Resource> ancestors = query.getResultList();
+            Map<Integer, Resource> ancestorsById = new HashMap<Integer, Resource>(ancestors.size());
+            for (Resource ancestor : ancestors) {
+                ancestorsById.put(ancestor.getId(), ancestor);
+            }
+            // the closure orders nearest first, the lineage is platform first
+            for (Integer ancestorId : ancestorIds) {
+                Resource ancestor = ancestorsById.get(ancestorId);
+                if (ancestor != null) {
+                    resourceLineage.addFirst(ancestor);
+                }
+            }
+            return resourceLineage;
+        }
+
         resourceLineage.add(resource);
         int childResourceId = resourceId;
         Resource parent;
@@ -73,6 +73,33 @@ public interface ResourceManagerLocal extends ResourceManagerRemote {
      */
     void createResource(Subject user, Resource resource, int parentId) throws ResourceAlreadyExistsException;
 
+    /**
+     * Records the given, already persisted, resource in the resource hierarchy closure (RHQ_RESOURCE_ANCESTOR) under
+     * its current parent. Must be called whenever a resource is added to inventory or moved to a different parent;
+     * when moved, its whole subtree moves with it.
+     *
+     * @param resource the resource whose position in the hierarchy was set or changed
+     */
+    void updateResourceAncestors(Resource resource);
+
+    /**
+     * Records the given resources, which were just persisted and have no children yet, in the resource hierarchy
+     * closure (RHQ_RESOURCE_ANCESTOR) under their parents. This is the same as calling
+     * {@link #updateResourceAncestors(Resource)} for each of them, but updates the closure with a few bulk statements.
+     * A parent must come before its children in the list.
+     *
+     * @param resources the newly persisted resources
+     */
+    void updateResourceAncestors(List<Resource> resources);
+
+    /**
+     * @param resourceId the id of a resource
+     *
+     * @return true if the resource is in the resource hierarchy closure (RHQ_RESOURCE_ANCESTOR), false if its
+     *         lineage and descendants can only be found by walking the tree
+     */
+    boolean isResourceAncestorTracked(int resourceId);
+
     /**
      * Update a Resource's editable properties (name, description, and location).
      *
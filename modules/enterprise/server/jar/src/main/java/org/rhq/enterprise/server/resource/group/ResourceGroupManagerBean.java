@@ -521,6 +521,7 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
         Connection conn = null;
         PreparedStatement insertExplicitStatement = null;
         PreparedStatement insertImplicitStatement = null;
+        PreparedStatement insertImplicitByParentsStatement = null;
         try {
             conn = rhqDs.getConnection();
 
@@ -529,16 +530,25 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
                 insertImplicitStatement = conn
                     .prepareStatement(ResourceGroup.QUERY_NATIVE_ADD_RESOURCES_TO_GROUP_IMPLICIT_RECURSIVE);
                 insertImplicitStatement.setInt(1, groupId);
-                insertImplicitStatement.setInt(9, groupId);
+                insertImplicitStatement.setInt(4, groupId);
                 for (int resourceId : resourceIdsToAdd) {
-                    insertImplicitStatement.setInt(2, resourceId);
-                    insertImplicitStatement.setInt(3, resourceId);
-                    insertImplicitStatement.setInt(4, resourceId);
-                    insertImplicitStatement.setInt(5, resourceId);
-                    insertImplicitStatement.setInt(6, resourceId);
-                    insertImplicitStatement.setInt(7, resourceId);
-                    insertImplicitStatement.setInt(8, resourceId);
-                    insertImplicitStatement.executeUpdate();
+                    if (resourceManager.isResourceAncestorTracked(resourceId)) {
+                        insertImplicitStatement.setInt(2, resourceId);
+                        insertImplicitStatement.setInt(3, resourceId);
+                        insertImplicitStatement.executeUpdate();
+                    } else {
+                        // not in the hierarchy closure, find the descendants the old way
+                        if (insertImplicitByParentsStatement == null) {
+                            insertImplicitByParentsStatement = conn
+                                .prepareStatement(ResourceGroup.QUERY_NATIVE_ADD_RESOURCES_TO_GROUP_IMPLICIT_RECURSIVE_BY_PARENTS);
+                            insertImplicitByParentsStatement.setInt(1, groupId);
+                            insertImplicitByParentsStatement.setInt(9, groupId);
+                        }
+                        for (int i = 2; i <= 8; i++) { // resourceId
+                            insertImplicitByParentsStatement.setInt(i, resourceId);
+                        }
+                        insertImplicitByParentsStatement.executeUpdate();
+                    }
                 }
             } else {
                 String insertImplicitQueryString = JDBCUtil.transformQueryForMultipleInParameters(
@@ -556,6 +566,7 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
         } finally {
             JDBCUtil.safeClose(insertExplicitStatement);
             JDBCUtil.safeClose(insertImplicitStatement);
+            JDBCUtil.safeClose(insertImplicitByParentsStatement);
             JDBCUtil.safeClose(conn);
         }
         return;
@@ -623,6 +634,7 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
         Connection conn = null;
         PreparedStatement deleteExplicitStatement = null;
         PreparedStatement deleteImplicitStatement = null;
+        PreparedStatement deleteImplicitByParentsStatement = null;
         try {
             conn = rhqDs.getConnection();
             int[] resourceIdsArray = ArrayUtils.unwrapArray(resourceIds);
@@ -632,7 +644,7 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
                 deleteImplicitStatement = conn
                     .prepareStatement(ResourceGroup.QUERY_NATIVE_REMOVE_RESOURCES_FROM_GROUP_IMPLICIT_RECURSIVE);
                 deleteImplicitStatement.setInt(1, groupId);
-                deleteImplicitStatement.setInt(9, groupId);
+                deleteImplicitStatement.setInt(4, groupId);
                 for (Integer resourceId : resourceIds) {
                     // no-op if this resource's ancestor is also in the explicit list
                     List<Integer> lineage = resourceManager.getResourceIdLineage(resourceId);
@@ -641,15 +653,25 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
                         // one or more of my parents were in the explicit list, no-op to remove me
                         continue;
                     }
-                    deleteImplicitStatement.setInt(2, resourceId);
-                    deleteImplicitStatement.setInt(3, resourceId);
-                    deleteImplicitStatement.setInt(4, resourceId);
-                    deleteImplicitStatement.setInt(5, resourceId);
-                    deleteImplicitStatement.setInt(6, resourceId);
-                    deleteImplicitStatement.setInt(7, resourceId);
-                    deleteImplicitStatement.setInt(8, resourceId);
-                    deleteImplicitStatement.setInt(10, resourceId);
-                    deleteImplicitStatement.executeUpdate();
+                    if (resourceManager.isResourceAncestorTracked(resourceId)) {
+                        deleteImplicitStatement.setInt(2, resourceId);
+                        deleteImplicitStatement.setInt(3, resourceId);
+                        deleteImplicitStatement.setInt(5, resourceId);
+                        deleteImplicitStatement.executeUpdate();
+                    } else {
+                        // not in the hierarchy closure, find the descendants the old way
+                        if (deleteImplicitByParentsStatement == null) {
+                            deleteImplicitByParentsStatement = conn
+                                .prepareStatement(ResourceGroup.QUERY_NATIVE_REMOVE_RESOURCES_FROM_GROUP_IMPLICIT_RECURSIVE_BY_PARENTS);
+                            deleteImplicitByParentsStatement.setInt(1, groupId);
+                            deleteImplicitByParentsStatement.setInt(9, groupId);
+                        }
+                        for (int i = 2; i <= 8; i++) { // resourceId
+                            deleteImplicitByParentsStatement.setInt(i, resourceId);
+                        }
+                        deleteImplicitByParentsStatement.setInt(10, resourceId);
+                        deleteImplicitByParentsStatement.executeUpdate();
+                    }
                 }
             } else {
                 String deleteImplicitQueryString = JDBCUtil.transformQueryForMultipleInParameters(
@@ -676,6 +698,7 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
         } finally {
             JDBCUtil.safeClose(deleteExplicitStatement);
             JDBCUtil.safeClose(deleteImplicitStatement);
+            JDBCUtil.safeClose(deleteImplicitByParentsStatement);
             JDBCUtil.safeClose(conn);
         }
         return;
@@ -794,18 +817,6 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
             return;
         }
 
-        /*
-         * BFS-construct the resource tree
-         */
-        List<Integer> resourceIdsToAdd = new ArrayList<Integer>();
-        List<Resource> toBeSearched = new LinkedList<Resource>();
-        toBeSearched.add(resource);
-        while (toBeSearched.size() > 0) {
-            Resource next = toBeSearched.remove(0);
-            resourceIdsToAdd.add(next.getId());
-            toBeSearched.addAll(next.getChildResources());
-        }
-
         /*
          * now add this resource and all of its descendants to whatever recursive groups it's parent is already in
          */
@@ -813,21 +824,43 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
         PreparedStatement insertImplicitStatement = null;
         try {
             conn = rhqDs.getConnection();
+            String insertImplicitQueryString;
+            int[] resourceIdsToAdd = null;
+            if (resourceManager.isResourceAncestorTracked(resource.getId())) {
+                insertImplicitQueryString = ResourceGroup.QUERY_NATIVE_ADD_DESCENDANTS_TO_GROUP_IMPLICIT;
+            } else {
+                /*
+                 * not in the hierarchy closure, BFS-construct the resource tree
+                 */
+                List<Integer> descendantIds = new ArrayList<Integer>();
+                List<Resource> toBeSearched = new LinkedList<Resource>();
+                toBeSearched.add(resource);
+                while (toBeSearched.size() > 0) {
+                    Resource next = toBeSearched.remove(0);
+                    descendantIds.add(next.getId());
+                    toBeSearched.addAll(next.getChildResources());
+                }
+                resourceIdsToAdd = ArrayUtils.unwrapCollection(descendantIds);
+                insertImplicitQueryString = JDBCUtil.transformQueryForMultipleInParameters(
+                    ResourceGroup.QUERY_NATIVE_ADD_RESOURCES_TO_GROUP_IMPLICIT, "@@RESOURCE_IDS@@",
+                    resourceIdsToAdd.length);
+            }
+            insertImplicitStatement = conn.prepareStatement(insertImplicitQueryString);
             for (Integer implicitRecursiveGroupId : implicitRecursiveGroupIds) {
                 /*
                  * do have to worry about whether these resources are already in the explicit resource list because
                  * they are being newly committed to inventory and thus shouldn't be in any group except the work
                  * being done right now.
                  *
-                 * also, since we've already computed the toAddResourceIds by recursing down the chain resource passed
-                 * to this method, we can just do simple RHQ_RESOURCE_GROUP_RES_IMP_MAP table insertions
+                 * also, the resource hierarchy closure, or else the BFS above, already holds the resource and every
+                 * one of its descendants, so we can just do simple RHQ_RESOURCE_GROUP_RES_IMP_MAP table insertions
                  */
-                String insertImplicitQueryString = JDBCUtil.transformQueryForMultipleInParameters(
-                    ResourceGroup.QUERY_NATIVE_ADD_RESOURCES_TO_GROUP_IMPLICIT, "@@RESOURCE_IDS@@",
-                    resourceIdsToAdd.size());
-                insertImplicitStatement = conn.prepareStatement(insertImplicitQueryString);
                 insertImplicitStatement.setInt(1, implicitRecursiveGroupId);
-                JDBCUtil.bindNTimes(insertImplicitStatement, ArrayUtils.unwrapCollection(resourceIdsToAdd), 2);
+                if (resourceIdsToAdd == null) {
+                    insertImplicitStatement.setInt(2, resource.getId());
+                } else {
+                    JDBCUtil.bindNTimes(insertImplicitStatement, resourceIdsToAdd, 2);
+                }
                 insertImplicitStatement.executeUpdate();
 
                 /*
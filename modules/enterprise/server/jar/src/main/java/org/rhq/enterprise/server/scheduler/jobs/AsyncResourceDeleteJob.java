@@ -28,7 +28,9 @@ import org.quartz.JobExecutionException;
 import org.rhq.core.domain.auth.Subject;
 import org.rhq.core.domain.operation.bean.ResourceOperationSchedule;
 import org.rhq.core.util.exception.ThrowableUtil;
+import org.rhq.enterprise.server.event.EventSourceIdCache;
 import org.rhq.enterprise.server.exception.UnscheduleException;
+import org.rhq.enterprise.server.measurement.CallTimeDataKeyIdCache;
 import org.rhq.enterprise.server.operation.OperationManagerLocal;
 import org.rhq.enterprise.server.resource.ResourceManagerLocal;
 import org.rhq.enterprise.server.resource.ResourceNotFoundException;
@@ -99,7 +101,14 @@ public class AsyncResourceDeleteJob extends AbstractStatefulJob {
             long startTime = System.currentTimeMillis();
 
             unscheduleJobs(overlord, doomedResourceId);
-            resourceManager.uninventoryResourceAsyncWork(overlord, doomedResourceId);
+            try {
+                resourceManager.uninventoryResourceAsyncWork(overlord, doomedResourceId);
+            } finally {
+                // the event sources and call-time data keys of the resource are gone, forget their ids only now
+                // that the deletion is committed, so that concurrent reports can't cache them again in between
+                EventSourceIdCache.getInstance().clear();
+                CallTimeDataKeyIdCache.getInstance().clear();
+            }
             stats.deletedSuccessfully++;
 
             long endTime = System.currentTimeMillis();
@@ -0,0 +1,37 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.scheduler.jobs;
+
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+
+import org.rhq.enterprise.server.util.LookupUtil;
+
+/**
+ * This job moves drift files and package bits that are still stored in the database into the configured
+ * {@link org.rhq.enterprise.server.blob.BlobStore}. It is only scheduled when a blob store is configured, and has
+ * nothing left to do once the existing content has been moved.
+ */
+public class BlobStoreMigrationJob extends AbstractStatefulJob {
+    @Override
+    public void executeJobCode(JobExecutionContext context) throws JobExecutionException {
+        LookupUtil.getBlobStoreManager().migrateToBlobStore();
+    }
+}
@@ -30,6 +30,12 @@ public class CloudManagerJob extends AbstractStatefulJob {
 
     private final Log log = LogFactory.getLog(CloudManagerJob.class);
 
+    /** The agent load is checked for imbalance far less often than the servers for their heartbeat. */
+    private static final long LOAD_BALANCE_CHECK_INTERVAL = 1000L * 60 * 60; // 1 hour
+
+    // this job is stateful, so it never runs concurrently
+    private static long lastLoadBalanceCheck = System.currentTimeMillis();
+
     @Override
     public void executeJobCode(JobExecutionContext arg0) throws JobExecutionException {
         Subject overlord = LookupUtil.getSubjectManager().getOverlord();
@@ -39,5 +45,15 @@ public class CloudManagerJob extends AbstractStatefulJob {
         } finally {
             log.debug("Finished scanning for servers that missed their heartbeat");
         }
+
+        long now = System.currentTimeMillis();
+        if ((now - lastLoadBalanceCheck) >= LOAD_BALANCE_CHECK_INTERVAL) {
+            lastLoadBalanceCheck = now;
+            try {
+                LookupUtil.getPartitionEventManager().requestLoadBalancePartition(overlord);
+            } catch (Exception e) {
+                log.warn("Failed to check the agent load balance: " + e);
+            }
+        }
     }
 }
@@ -19,7 +19,6 @@
 
 package org.rhq.enterprise.server.scheduler.jobs;
 
-import java.util.Collections;
 import java.util.Date;
 
 import org.apache.commons.logging.Log;
@@ -30,14 +29,13 @@ import org.quartz.SimpleTrigger;
 
 import org.rhq.core.domain.auth.Subject;
 import org.rhq.enterprise.server.measurement.MeasurementBaselineManagerLocal;
-import org.rhq.enterprise.server.measurement.MeasurementOOBManagerLocal;
+import org.rhq.enterprise.server.measurement.OOBCalculator;
 import org.rhq.enterprise.server.purge.PurgeManagerLocal;
 import org.rhq.enterprise.server.scheduler.SchedulerLocal;
 import org.rhq.enterprise.server.storage.StorageClientManager;
 import org.rhq.enterprise.server.system.SystemManagerLocal;
 import org.rhq.enterprise.server.util.LookupUtil;
 import org.rhq.server.metrics.MetricsServer;
-import org.rhq.server.metrics.domain.AggregateNumericMetric;
 
 /**
  * This implements {@link org.quartz.StatefulJob} (as opposed to {@link org.quartz.Job}) because we do not need nor want
@@ -80,9 +78,14 @@ public class DataCalcJob extends AbstractStatefulJob {
         LOG.info("Data Calc Job STARTING");
 
         try {
-            Iterable<AggregateNumericMetric> oneHourAggregates = compressMeasurementData();
+            // Baselines are calculated first so that OOBs can be computed against them while the 1 hr aggregates
+            // are being written, instead of holding on to all of the aggregates until compression has finished.
             calculateAutoBaselines(LookupUtil.getMeasurementBaselineManager());
-            calculateOOBs(oneHourAggregates);
+            OOBCalculator oobCalculator = prepareOOBCalculation();
+            compressMeasurementData(oobCalculator);
+            if (oobCalculator != null) {
+                LOG.info("Auto-calculation of OOBs completed with [" + oobCalculator.getCount() + "] OOBs");
+            }
         } catch (Exception e) {
             LOG.error("Data Calc Job FAILED TO COMPLETE. Cause: " + e);
         } finally {
@@ -91,17 +94,19 @@ public class DataCalcJob extends AbstractStatefulJob {
         }
     }
 
-    private Iterable<AggregateNumericMetric> compressMeasurementData() {
+    /**
+     * @param oobCalculator The calculator of the OOBs of the 1 hr aggregates, or null to only persist the aggregates
+     */
+    private void compressMeasurementData(OOBCalculator oobCalculator) {
         long timeStart = System.currentTimeMillis();
         LOG.info("Measurement data compression starting at " + new Date(timeStart));
 
         try {
             StorageClientManager storageClientManager = LookupUtil.getStorageClientManager();
             MetricsServer metricsServer = storageClientManager.getMetricsServer();
-            return metricsServer.calculateAggregates();
+            metricsServer.calculateAggregates(oobCalculator);
         } catch (Exception e) {
             LOG.error("Failed to compress measurement data. Cause: " + e, e);
-            return Collections.emptyList();
         } finally {
             long duration = System.currentTimeMillis() - timeStart;
             LOG.info("Measurement data compression completed in [" + duration + "]ms");
@@ -123,34 +128,36 @@ public class DataCalcJob extends AbstractStatefulJob {
     }
 
     /**
-     * Calculate the OOB values for the last hour.
-     * This also removes out-dated ones due to recalculated baselines.
+     * Prepares the calculation of the OOB values for the last hour, which then happens during measurement data
+     * compression. This also removes out-dated ones due to recalculated baselines.
+     *
+     * @return The calculator to hand to compression or null if OOBs cannot be calculated
      */
-    public void calculateOOBs(Iterable<AggregateNumericMetric> oneHourAggregates) {
+    private OOBCalculator prepareOOBCalculation() {
         LOG.info("Auto-calculation of OOBs starting");
 
-        Subject overlord = LookupUtil.getSubjectManager().getOverlord();
-        MeasurementOOBManagerLocal manager = LookupUtil.getOOBManager();
-        PurgeManagerLocal purgeManager = LookupUtil.getPurgeManager();
-        SystemManagerLocal systemManager = LookupUtil.getSystemManager();
-
-        // purge OOBs whose baseline just got recalculated
-        // For now just assume that our system is fast, so a cutoff of 30mins is ok,
-        // as the calculate baseline job runs hourly
-        long cutOff = System.currentTimeMillis() - (30L * 60L * 1000L);
-
-        long timeStart = System.currentTimeMillis();
+        try {
+            Subject overlord = LookupUtil.getSubjectManager().getOverlord();
+            PurgeManagerLocal purgeManager = LookupUtil.getPurgeManager();
+            SystemManagerLocal systemManager = LookupUtil.getSystemManager();
 
-        purgeManager.removeOutdatedOOBs(cutOff);
+            // purge OOBs whose baseline just got recalculated
+            // For now just assume that our system is fast, so a cutoff of 30mins is ok,
+            // as the calculate baseline job runs hourly
+            long cutOff = System.currentTimeMillis() - (30L * 60L * 1000L);
 
-        // clean up
-        systemManager.vacuum(overlord, new String[] { "RHQ_MEASUREMENT_OOB" });
+            purgeManager.removeOutdatedOOBs(cutOff);
 
-        // Now calculate the fresh OOBs
-        manager.computeOOBsForLastHour(overlord, oneHourAggregates);
+            // clean up
+            systemManager.vacuum(overlord, new String[] { "RHQ_MEASUREMENT_OOB" });
 
-        long duration = System.currentTimeMillis() - timeStart;
+            OOBCalculator oobCalculator = new OOBCalculator(LookupUtil.getDataSource());
+            oobCalculator.loadBaselines();
 
-        LOG.info("Auto-calculation of OOBs completed in [" + duration + "]ms");
+            return oobCalculator;
+        } catch (Exception e) {
+            LOG.error("Failed to prepare auto-calculation of OOBs. Cause: " + e, e);
+            return null;
+        }
     }
 }
@@ -21,6 +21,8 @@ package org.rhq.enterprise.server.storage;
 
 import static org.rhq.server.metrics.StorageClientConstants.DATA_CENTER;
 import static org.rhq.server.metrics.StorageClientConstants.LOAD_BALANCING;
+import static org.rhq.server.metrics.StorageClientConstants.REQUEST_CONCURRENCY_MAX;
+import static org.rhq.server.metrics.StorageClientConstants.REQUEST_CONCURRENCY_MIN;
 import static org.rhq.server.metrics.StorageClientConstants.REQUEST_LIMIT;
 import static org.rhq.server.metrics.StorageClientConstants.REQUEST_LIMIT_MIN;
 import static org.rhq.server.metrics.StorageClientConstants.REQUEST_TIMEOUT_DAMPENING;
@@ -32,6 +34,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.ejb.ConcurrencyManagement;
 import javax.ejb.ConcurrencyManagementType;
@@ -80,6 +83,7 @@ import org.rhq.server.metrics.MetricsConfiguration;
 import org.rhq.server.metrics.MetricsConstants;
 import org.rhq.server.metrics.MetricsDAO;
 import org.rhq.server.metrics.MetricsServer;
+import org.rhq.server.metrics.StorageRequestType;
 import org.rhq.server.metrics.StorageSession;
 
 /**
@@ -375,6 +379,28 @@ public class StorageClientManager implements StorageClientManagerMBean{
         persistStorageProperty(MetricsConstants.RAW_DATA_AGE_LIMIT, Integer.toString(ageLimit));
     }
 
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public int getRawDataBatchSize() {
+        return metricsServer.getRawDataBatchSize();
+    }
+
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void setRawDataBatchSize(int batchSize) {
+        metricsServer.setRawDataBatchSize(batchSize);
+        persistStorageProperty(MetricsConstants.RAW_DATA_BATCH_SIZE, Integer.toString(batchSize));
+    }
+
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public int getRawDataMaxInFlight() {
+        return metricsServer.getRawDataMaxInFlight();
+    }
+
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void setRawDataMaxInFlight(int maxInFlight) {
+        metricsServer.setRawDataMaxInFlight(maxInFlight);
+        persistStorageProperty(MetricsConstants.RAW_DATA_MAX_IN_FLIGHT, Integer.toString(maxInFlight));
+    }
+
     @Override
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public double getRequestLimit() {
@@ -449,7 +475,41 @@ public class StorageClientManager implements StorageClientManagerMBean{
     @Override
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public long getTotalRequests() {
-        return session.getTimeouts();
+        return session.getTotalRequests();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public Map<String, Long> getIngestionRequestStatistics() {
+        return session.getConcurrencyLimit(StorageRequestType.INGESTION).getStatistics();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public Map<String, Long> getAggregationRequestStatistics() {
+        return session.getConcurrencyLimit(StorageRequestType.AGGREGATION).getStatistics();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public Map<String, Long> getQueryRequestStatistics() {
+        return session.getConcurrencyLimit(StorageRequestType.QUERY).getStatistics();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void setMinRequestConcurrency(String requestType, int minConcurrency) {
+        StorageRequestType type = StorageRequestType.valueOf(requestType.toUpperCase());
+        session.getConcurrencyLimit(type).setMinLimit(minConcurrency);
+        persistStorageProperty(REQUEST_CONCURRENCY_MIN + type.name().toLowerCase(), Integer.toString(minConcurrency));
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void setMaxRequestConcurrency(String requestType, int maxConcurrency) {
+        StorageRequestType type = StorageRequestType.valueOf(requestType.toUpperCase());
+        session.getConcurrencyLimit(type).setMaxLimit(maxConcurrency);
+        persistStorageProperty(REQUEST_CONCURRENCY_MAX + type.name().toLowerCase(), Integer.toString(maxConcurrency));
     }
 
     @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
@@ -1,5 +1,7 @@
 package org.rhq.enterprise.server.storage;
 
+import java.util.Map;
+
 /**
  * @author John Sanda
  */
@@ -17,16 +19,59 @@ public interface StorageClientManagerMBean {
 
     void setRequestLimitTopologyDelta(double delta);
 
+    /**
+     * @deprecated Timeouts now lower the concurrency limit of their request type instead of the request limit
+     */
+    @Deprecated
     double getRequestTimeoutDelta();
 
+    /**
+     * @deprecated See {@link #getRequestTimeoutDelta()}
+     */
+    @Deprecated
     void setRequestTimeoutDelta(double requestTimeoutDelta);
 
+    /**
+     * @deprecated See {@link #getRequestTimeoutDelta()}
+     */
+    @Deprecated
     long getRequestTimeoutDampening();
 
+    /**
+     * @deprecated See {@link #getRequestTimeoutDelta()}
+     */
+    @Deprecated
     void setRequestTimeoutDampening(long requestTimeoutDampening);
 
     long getRequestTimeouts();
 
     long getTotalRequests();
 
+    /**
+     * @return The adaptive concurrency limit and request statistics of raw data inserts
+     */
+    Map<String, Long> getIngestionRequestStatistics();
+
+    /**
+     * @return The adaptive concurrency limit and request statistics of metrics aggregation
+     */
+    Map<String, Long> getAggregationRequestStatistics();
+
+    /**
+     * @return The adaptive concurrency limit and request statistics of all other requests, e.g., graph queries
+     */
+    Map<String, Long> getQueryRequestStatistics();
+
+    /**
+     * @param requestType One of ingestion, aggregation, or query
+     * @param minConcurrency The lowest value the concurrency limit of the request type is lowered to
+     */
+    void setMinRequestConcurrency(String requestType, int minConcurrency);
+
+    /**
+     * @param requestType One of ingestion, aggregation, or query
+     * @param maxConcurrency The highest value the concurrency limit of the request type is raised to
+     */
+    void setMaxRequestConcurrency(String requestType, int maxConcurrency);
+
 }
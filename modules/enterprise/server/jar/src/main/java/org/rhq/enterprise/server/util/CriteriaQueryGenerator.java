@@ -28,9 +28,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.persistence.Column;
 import javax.persistence.EntityManager;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
+import javax.persistence.Id;
 import javax.persistence.Query;
 
 import org.apache.commons.logging.Log;
@@ -94,6 +96,9 @@ public final class CriteriaQueryGenerator {
     private List<Field> persistentBagFields = new ArrayList<Field>();
     private List<Field> joinFetchFields = new ArrayList<Field>();
 
+    private boolean keysetPaging;
+    private List<Object> keysetValues;
+
     static {
         EXPRESSION_START_KEYWORDS = new ArrayList<String>(2);
         EXPRESSION_START_KEYWORDS.add("NOT");
@@ -353,6 +358,12 @@ public final class CriteriaQueryGenerator {
             query = query.replace(":requiredPermsSize", String.valueOf(requiredPerms.size()));
         }
 
+        if (!countQuery && keysetValues != null && isKeysetPagingSupported()) {
+            for (int i = keysetValues.size() - 1; i >= 0; i--) {
+                query = query.replace(":keyset" + i, getParameterReplacedValue(null, keysetValues.get(i)));
+            }
+        }
+
         return query;
     }
 
@@ -581,8 +592,11 @@ public final class CriteriaQueryGenerator {
             conjunctiveResults.append(fragment).append(' ');
         }
 
+        String keysetFragment = countQuery ? null : getKeysetFragment(pc);
+
         if (conjunctiveResults.length() > 0 || authorizationPermsFragment != null
-            || authorizationCustomConditionFragment != null || searchExpressionWhereClause != null) {
+            || authorizationCustomConditionFragment != null || searchExpressionWhereClause != null
+            || keysetFragment != null) {
             results.append("WHERE ");
             if (conjunctiveResults.length() > 0) {
                 results.append("( ").append(conjunctiveResults).append(")");
@@ -618,6 +632,13 @@ public final class CriteriaQueryGenerator {
             results.append(searchExpressionWhereClause);
         }
 
+        if (keysetFragment != null) {
+            if (!firstCrit || searchExpressionWhereClause != null) {
+                results.append(NL).append(" AND ");
+            }
+            results.append(keysetFragment);
+        }
+
         if (!countQuery) {
             // group by clause
             if (groupByClause != null) {
@@ -648,6 +669,124 @@ public final class CriteriaQueryGenerator {
         return results.toString();
     }
 
+    /**
+     * Opts in to keyset (also known as seek) pagination. Instead of skipping the rows of the previous pages with an
+     * offset, which the database has to read and discard, the data query of the next page only selects the rows sorted
+     * after the last row of the previous page, as set with {@link #setKeysetStart(Object)}. The page number is then
+     * ignored.
+     * <p/>
+     * Keyset pagination is only used if {@link #isKeysetPagingSupported()}, otherwise queries fall back to offset
+     * pagination.
+     */
+    public void setKeysetPaging(boolean keysetPaging) {
+        this.keysetPaging = keysetPaging;
+        if (!keysetPaging) {
+            this.keysetValues = null;
+        }
+    }
+
+    /**
+     * Keyset pagination is supported when it has been {@link #setKeysetPaging(boolean) enabled}, the query is paged,
+     * the projection is not altered and the results are sorted on fields of the persistent class itself (no joins
+     * and no sort overrides), up to and including the id. Sort fields other than the id must be mapped as not
+     * nullable, since the rows with a null sort field would never be sorted after the last row of a page.
+     */
+    public boolean isKeysetPagingSupported() {
+        if (!keysetPaging || projection != null || groupByClause != null || criteria.hasCustomizedSorting()) {
+            return false;
+        }
+        return getKeysetOrderingFields(getPageControl(criteria)) != null;
+    }
+
+    /**
+     * Sets the last result of the previous page, the next data query will return the results sorted after it. Passing
+     * null starts again from the first page.
+     *
+     * @return true if the next data query uses keyset pagination, false if it must fall back to offset pagination,
+     * either because keyset pagination is not supported or because a sort field of <code>lastResult</code> is null
+     */
+    public boolean setKeysetStart(Object lastResult) {
+        keysetValues = null;
+        if (lastResult == null || !isKeysetPagingSupported()) {
+            return false;
+        }
+
+        List<Object> values = new ArrayList<Object>();
+        for (OrderingField orderingField : getKeysetOrderingFields(getPageControl(criteria))) {
+            Field field = findField(orderingField.getField());
+            Object value;
+            try {
+                field.setAccessible(true);
+                value = field.get(lastResult);
+            } catch (IllegalAccessException iae) {
+                throw new RuntimeException(iae);
+            }
+            if (value == null) {
+                return false;
+            }
+            values.add(value);
+        }
+        keysetValues = values;
+        return true;
+    }
+
+    private List<OrderingField> getKeysetOrderingFields(PageControl pc) {
+        if (pc.isUnlimited()) {
+            return null;
+        }
+        List<OrderingField> orderingFields = new ArrayList<OrderingField>();
+        for (OrderingField orderingField : pc.getOrderingFields()) {
+            String fieldName = orderingField.getField();
+            if (criteria.getJPQLSortOverride(fieldName) != null || fieldName.indexOf('.') != -1) {
+                return null;
+            }
+            Field field = findField(fieldName);
+            if (field == null) {
+                return null;
+            }
+            orderingFields.add(orderingField);
+            if (fieldName.equals("id")) {
+                return orderingFields;
+            }
+            if (!isMappedNotNull(field)) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isMappedNotNull(Field field) {
+        if (field.isAnnotationPresent(Id.class)) {
+            return true;
+        }
+        Column column = field.getAnnotation(Column.class);
+        return column != null && !column.nullable();
+    }
+
+    // (f0 > :keyset0) OR (f0 = :keyset0 AND f1 > :keyset1) OR ...
+    private String getKeysetFragment(PageControl pc) {
+        if (keysetValues == null || !isKeysetPagingSupported()) {
+            return null;
+        }
+        List<OrderingField> orderingFields = getKeysetOrderingFields(pc);
+        StringBuilder fragment = new StringBuilder("( ");
+        for (int i = 0; i < orderingFields.size(); i++) {
+            if (i > 0) {
+                fragment.append(NL).append("  OR ");
+            }
+            fragment.append("( ");
+            for (int j = 0; j < i; j++) {
+                fragment.append(alias).append('.').append(orderingFields.get(j).getField()).append(" = :keyset")
+                    .append(j).append(" AND ");
+            }
+            String operator = orderingFields.get(i).getOrdering() == PageOrdering.DESC ? " < " : " > ";
+            fragment.append(alias).append('.').append(orderingFields.get(i).getField()).append(operator)
+                .append(":keyset").append(i).append(" )");
+        }
+        fragment.append(" )").append(NL);
+        return fragment.toString();
+    }
+
     private boolean isNumber(String input) {
         if (input == null) {
             return false;
@@ -889,7 +1028,15 @@ public final class CriteriaQueryGenerator {
         String queryString = getQueryString(false);
         Query query = em.createQuery(queryString);
         setBindValues(query);
-        PersistenceUtility.setDataPage(query, getPageControl(criteria));
+        PageControl pageControl = getPageControl(criteria);
+        if (keysetValues != null && isKeysetPagingSupported()) {
+            for (int i = 0; i < keysetValues.size(); i++) {
+                query.setParameter("keyset" + i, keysetValues.get(i));
+            }
+            query.setMaxResults(pageControl.getPageSize());
+        } else {
+            PersistenceUtility.setDataPage(query, pageControl);
+        }
         return query;
     }
 
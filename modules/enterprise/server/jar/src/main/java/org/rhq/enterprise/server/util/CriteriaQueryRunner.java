@@ -27,6 +27,7 @@ import java.lang.reflect.Field;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityNotFoundException;
@@ -50,10 +51,21 @@ public class CriteriaQueryRunner<T> {
     private EntityManager entityManager;
     private boolean automaticFetching;
 
+    /**
+     * The page size used by {@link #stream()} when the criteria is not paged.
+     */
+    public static final int DEFAULT_STREAM_PAGE_SIZE = 1000;
+
+    // Oracle does not accept more than 1000 expressions in an IN list
+    private static final int MAX_IN_CLAUSE_PARAMS = 1000;
+
+    private static final String FETCH_SIZE_HINT = "org.hibernate.fetchSize";
+
     private static final QueryUtility.PagedDataFetchSettings DATA_FETCH_SETTINGS;
     static {
         DATA_FETCH_SETTINGS = new QueryUtility.PagedDataFetchSettings();
         DATA_FETCH_SETTINGS.setThrowOnMaxAttempts(true);
+        DATA_FETCH_SETTINGS.setCountOnlyWhenNeeded(true);
     }
 
     public CriteriaQueryRunner(Criteria criteria, CriteriaQueryGenerator queryGenerator, EntityManager entityManager) {
@@ -120,6 +132,103 @@ public class CriteriaQueryRunner<T> {
         return results;
     }
 
+    /**
+     * Iterates over all the results of the criteria, page after page, without ever running the count query. This is
+     * meant for exports that go through a large number of results, so:
+     * <ul>
+     *     <li>pages are fetched with a JDBC fetch size of the page size,</li>
+     *     <li>if the generator has {@link CriteriaQueryGenerator#setKeysetPaging(boolean) keyset paging} enabled
+     *     and supported, each page is selected after the last result of the previous page instead of with an
+     *     offset, which gets slower page by page,</li>
+     *     <li>persistent bags are fetched for a whole page at once,</li>
+     *     <li>the entity manager is cleared before each page after the first, so that the persistence context does
+     *     not grow with every page. Results of previous pages are detached then, and changes made to them which have
+     *     not been flushed are lost.</li>
+     * </ul>
+     * The page size is the one of the criteria, or {@link #DEFAULT_STREAM_PAGE_SIZE} if the criteria is not paged.
+     * The paging of the criteria is modified while iterating. The {@link Restriction} of the criteria is ignored.
+     */
+    public Iterator<T> stream() {
+        return new StreamingIterator();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<T> fetchPage(int pageNumber, int pageSize, Object lastResult) {
+        setPaging(pageNumber, pageSize);
+        if (lastResult != null && queryGenerator.setKeysetStart(lastResult)) {
+            // the keyset predicate replaces the offset
+            setPaging(0, pageSize);
+        } else {
+            queryGenerator.setKeysetStart(null);
+        }
+
+        Query query = queryGenerator.getQuery(entityManager);
+        query.setHint(FETCH_SIZE_HINT, pageSize);
+        List<T> results = query.getResultList();
+
+        finalizeCollection(results);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Streamed page " + pageNumber + " of " + CriteriaUtil.toString(criteria) + ", resultSize="
+                + results.size());
+        }
+
+        return results;
+    }
+
+    private void setPaging(int pageNumber, int pageSize) {
+        // the paging of the criteria is ignored when there are page control overrides
+        PageControl pageControlOverrides = criteria.getPageControlOverrides();
+        if (pageControlOverrides != null) {
+            pageControlOverrides.setPageSize(pageSize);
+            pageControlOverrides.setPageNumber(pageNumber);
+        } else {
+            criteria.setPaging(pageNumber, pageSize);
+        }
+    }
+
+    private class StreamingIterator implements Iterator<T> {
+        private final int pageSize;
+        private int pageNumber;
+        private List<T> page;
+        private Iterator<T> iterator;
+        private T lastResult;
+
+        private StreamingIterator() {
+            PageControl pageControl = CriteriaQueryGenerator.getPageControl(criteria);
+            pageSize = pageControl.getPageSize() > 0 ? pageControl.getPageSize() : DEFAULT_STREAM_PAGE_SIZE;
+            pageNumber = pageControl.getPageSize() > 0 ? pageControl.getPageNumber() : 0;
+            page = fetchPage(pageNumber, pageSize, null);
+            iterator = page.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            // a page which is not full is the last one
+            if (!iterator.hasNext() && page.size() == pageSize) {
+                // the previous page has been consumed, don't keep its entities managed
+                entityManager.clear();
+                pageNumber++;
+                page = fetchPage(pageNumber, pageSize, lastResult);
+                iterator = page.iterator();
+            }
+            return iterator.hasNext();
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastResult = iterator.next();
+            return lastResult;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private Collection<? extends T> getCollection() {
         Query query = queryGenerator.getQuery(entityManager);
@@ -138,6 +247,7 @@ public class CriteriaQueryRunner<T> {
          */
         if (automaticFetching) {
             if (!queryGenerator.getPersistentBagFields().isEmpty()) {
+                fetchPersistentBags(results);
                 for (Object entity : results) {
                     initPersistentBags(entity);
                 }
@@ -150,6 +260,43 @@ public class CriteriaQueryRunner<T> {
         }
     }
 
+    /**
+     * Initializes the persistent bags of all the results with one query per bag (and per
+     * {@value #MAX_IN_CLAUSE_PARAMS} results), instead of one query per bag and per result. The results must be
+     * entities managed by the entity manager, which is the case unless the projection was altered. Bags left
+     * uninitialized, for whatever reason, are still initialized one by one afterwards.
+     */
+    private void fetchPersistentBags(List<?> results) {
+        if (queryGenerator.isProjectionAltered() || results.size() < 2) {
+            return;
+        }
+        Class<?> persistentClass = criteria.getPersistentClass();
+        for (Object entity : results) {
+            if (!persistentClass.isInstance(entity)) {
+                return;
+            }
+        }
+
+        String alias = criteria.getAlias();
+        for (Field persistentBagField : queryGenerator.getPersistentBagFields()) {
+            String queryString = "SELECT DISTINCT " + alias + " FROM " + persistentClass.getSimpleName() + " "
+                + alias + " LEFT JOIN FETCH " + alias + "." + persistentBagField.getName() + " WHERE " + alias
+                + " IN ( :entities )";
+            try {
+                for (int i = 0; i < results.size(); i += MAX_IN_CLAUSE_PARAMS) {
+                    Query query = entityManager.createQuery(queryString);
+                    query.setParameter("entities",
+                        results.subList(i, Math.min(results.size(), i + MAX_IN_CLAUSE_PARAMS)));
+                    query.getResultList();
+                }
+            } catch (Exception e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Could not fetch " + persistentBagField + " for a whole page of results", e);
+                }
+            }
+        }
+    }
+
     private int getCount() {
         Query countQuery = queryGenerator.getCountQuery(entityManager);
         long count = (Long) countQuery.getSingleResult();
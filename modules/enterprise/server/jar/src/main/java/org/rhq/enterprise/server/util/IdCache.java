@@ -0,0 +1,103 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least recently used cache of the surrogate ids of rows that are identified by a natural key, e.g. the
+ * id of an event source by its resource, event definition and location. It is meant for rows that are inserted once,
+ * guarded by a unique index on the natural key, and never updated, so that an id, once read from the database, stays
+ * valid on every server until the row is deleted. Callers must {@link #clear()} the cache when rows may have been
+ * deleted, and should treat a failure to use a cached id as a sign that another server deleted the row.
+ * <p/>
+ * A max size of 0 or less disables the cache.
+ *
+ * @param <K> the natural key, must implement equals and hashCode
+ */
+public class IdCache<K> {
+
+    private final int maxSize;
+
+    private final Map<K, Integer> ids;
+
+    public IdCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.ids = new LinkedHashMap<K, Integer>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Integer> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Creates a cache whose max size is read from the given system property.
+     */
+    public static <K> IdCache<K> fromSystemProperty(String property, int defaultMaxSize) {
+        int maxSize = defaultMaxSize;
+        try {
+            maxSize = Integer.parseInt(System.getProperty(property, String.valueOf(defaultMaxSize)));
+        } catch (Throwable t) {
+            //
+        }
+        return new IdCache<K>(maxSize);
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * @return the cached id, or null if the key is not cached
+     */
+    public Integer get(K key) {
+        if (!isEnabled()) {
+            return null;
+        }
+        synchronized (ids) {
+            return ids.get(key);
+        }
+    }
+
+    public void put(K key, int id) {
+        if (!isEnabled()) {
+            return;
+        }
+        synchronized (ids) {
+            ids.put(key, id);
+        }
+    }
+
+    public void clear() {
+        synchronized (ids) {
+            ids.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (ids) {
+            return ids.size();
+        }
+    }
+}
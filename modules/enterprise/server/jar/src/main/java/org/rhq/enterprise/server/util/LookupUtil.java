@@ -59,6 +59,8 @@ import org.rhq.enterprise.server.authz.AuthorizationManagerBean;
 import org.rhq.enterprise.server.authz.AuthorizationManagerLocal;
 import org.rhq.enterprise.server.authz.RoleManagerBean;
 import org.rhq.enterprise.server.authz.RoleManagerLocal;
+import org.rhq.enterprise.server.blob.BlobStoreManagerBean;
+import org.rhq.enterprise.server.blob.BlobStoreManagerLocal;
 import org.rhq.enterprise.server.bundle.BundleManagerBean;
 import org.rhq.enterprise.server.bundle.BundleManagerLocal;
 import org.rhq.enterprise.server.cloud.AffinityGroupManagerBean;
@@ -638,6 +640,10 @@ public final class LookupUtil {
         return lookupLocal(PurgeManagerBean.class);
     }
 
+    public static BlobStoreManagerLocal getBlobStoreManager() {
+        return lookupLocal(BlobStoreManagerBean.class);
+    }
+
     public static CoreServerMBean getCoreServer() {
         MBeanServer mbs = getJBossMBeanServer();
         CoreServerMBean rhqServer = (CoreServerMBean) MBeanProxyExt.create(CoreServerMBean.class,
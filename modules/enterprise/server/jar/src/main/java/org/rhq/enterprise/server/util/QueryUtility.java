@@ -114,10 +114,12 @@ public class QueryUtility {
      *     <li><b>maxAttempts</b> - {@link #PHANTOM_READ_MAX_ATTEMPTS}</li>
      *     <li><b>minWaitTime</b> - {@link #PHANTOM_READ_MIN_WAIT_TIME}</li>
      *     <li><b>maxWaitTime</b> - {@link #PHANTOM_READ_MAX_WAIT_TIME}</li>
+     *     <li><b>countOnlyWhenNeeded</b> - {@code false}</li>
      * </ul>
      */
     public static class PagedDataFetchSettings {
         private boolean throwOnMaxAttempts = false;
+        private boolean countOnlyWhenNeeded = false;
         private int maxAttempts = PHANTOM_READ_MAX_ATTEMPTS;
         private int minWaitTime = PHANTOM_READ_MIN_WAIT_TIME;
         private int maxWaitTime = PHANTOM_READ_MAX_WAIT_TIME;
@@ -233,6 +235,18 @@ public class QueryUtility {
             this.throwOnMaxAttempts = throwOnMaxAttempts;
         }
 
+        /**
+         * If true, the count query is not executed when the total count can be deduced from the page of data, i.e.
+         * when the query is not paged or when the page is the last one, not full and not past the end of the results.
+         */
+        public boolean isCountOnlyWhenNeeded() {
+            return countOnlyWhenNeeded;
+        }
+
+        public void setCountOnlyWhenNeeded(boolean countOnlyWhenNeeded) {
+            this.countOnlyWhenNeeded = countOnlyWhenNeeded;
+        }
+
         private void recalculateIncreaseCoeff() {
             if (maxAttempts < 3) {
                 increaseCoeff = 1; //doesn't really matter, because it is never in effect if maxAttempts < 3
@@ -293,6 +307,15 @@ public class QueryUtility {
         PersistenceUtility.setDataPage(dataQuery, pageControl);
 
         List<T> data = dataQuery.getResultList();
+        if (settings != null && settings.isCountOnlyWhenNeeded()) {
+            int startRow = pageControl.getStartRow();
+            if (pageControl.getPageSize() <= 0 && startRow == 0) {
+                return new PageList<T>(data, data.size(), pageControl);
+            }
+            if (data.size() < pageControl.getPageSize() && (!data.isEmpty() || startRow == 0)) {
+                return new PageList<T>(data, startRow + data.size(), pageControl);
+            }
+        }
         int count = (int) (long) (Long) countQuery.getSingleResult();
 
         int cnt = 0;
@@ -18,84 +18,208 @@
  */
 package org.rhq.enterprise.server.util.concurrent;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.rhq.core.domain.discovery.AvailabilityReport;
+
+/**
+ * Serializes the processing of availability reports per agent.
+ * <p/>
+ * With <code>rhq.server.availability.report.coalesce=true</code>, reports of an agent that queue up behind the one
+ * being merged are not merged one after the other. Instead the next thread to get the agent's lock merges all of
+ * them at once, and the other waiting threads find their report already done. A combined report holds the avails
+ * of all its reports in arrival order, so it can report several changes of one resource. If merging it fails, the
+ * failure is thrown to every thread whose report was part of it.
+ */
+public class AvailabilityReportSerializer {
+    private static final AvailabilityReportSerializer singleton = new AvailabilityReportSerializer(
+        Boolean.getBoolean("rhq.server.availability.report.coalesce"));
 
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
+    private final KeyedSerializer<String> serializer = new KeyedSerializer<String>(
+        AvailabilityReportSerializer.class, "agent");
 
-public class AvailabilityReportSerializer {
-    private final Log log = LogFactory.getLog(AvailabilityReportSerializer.class);
+    private final boolean coalesce;
+
+    // reports waiting for their agent's lock, only drained by the thread holding that lock
+    private final ConcurrentMap<String, Queue<PendingReport>> pendingReports = //
+        new ConcurrentHashMap<String, Queue<PendingReport>>();
+
+    private final AtomicLong coalescedReports = new AtomicLong();
 
-    private static Map<String, ReentrantReadWriteLock> locks = new HashMap<String, ReentrantReadWriteLock>();
-    private static Map<String, Long> lockTimes = Collections.synchronizedMap(new HashMap<String, Long>());
-    private static AvailabilityReportSerializer singleton = new AvailabilityReportSerializer();
+    AvailabilityReportSerializer(boolean coalesce) {
+        this.coalesce = coalesce;
+    }
 
     public static AvailabilityReportSerializer getSingleton() {
         return singleton;
     }
 
     public void lock(String agentName) {
-        String msg = "tid=" + Thread.currentThread().getId() + "; agent=" + agentName;
-        boolean debug = this.log.isDebugEnabled();
-
-        ReentrantReadWriteLock lock = null;
-        logDebug(debug, msg, ": about to synchronize");
-        synchronized (this) {
-            logDebug(debug, msg, ": synchronized");
-            lock = AvailabilityReportSerializer.locks.get(agentName);
-            if (lock == null) {
-                logDebug(debug, msg, ": creating new lock");
-                lock = new ReentrantReadWriteLock();
-                AvailabilityReportSerializer.locks.put(agentName, lock);
+        serializer.lock(agentName);
+    }
+
+    public void unlock(String agentName) {
+        serializer.unlock(agentName);
+    }
+
+    public KeyedSerializer<String> getSerializer() {
+        return serializer;
+    }
+
+    public boolean isCoalescing() {
+        return coalesce;
+    }
+
+    /**
+     * @return the number of reports that were merged as part of another thread's merge
+     */
+    public long getCoalescedReports() {
+        return coalescedReports.get();
+    }
+
+    int getPendingReportCount(String agentName) {
+        Queue<PendingReport> queue = pendingReports.get(agentName);
+        return (null == queue) ? 0 : queue.size();
+    }
+
+    /**
+     * Merges the report while holding its agent's lock, possibly together with other reports of the same agent
+     * waiting for the lock, see the class description.
+     *
+     * @param report the report to merge
+     * @param merger does the actual merge, its result is the result of every report it was given
+     *
+     * @return the merger's result for the report
+     *
+     * @throws RuntimeException whatever the merger threw while merging the report, also if it was merged by another
+     *                          thread as part of a combined report
+     */
+    public boolean merge(AvailabilityReport report, Merger merger) {
+        String agentName = report.getAgentName();
+        if (!coalesce) {
+            lock(agentName);
+            try {
+                return merger.merge(report);
+            } finally {
+                unlock(agentName);
             }
         }
 
-        logDebug(debug, msg, ": acquiring write lock");
-        long start = System.currentTimeMillis();
-        lock.writeLock().lock();
-        long end = System.currentTimeMillis();
-        long duration = end - start;
-        AvailabilityReportSerializer.lockTimes.put(agentName, Long.valueOf(end));
-        if (duration < 5000L) {
-            logDebug(debug, msg, ": acquired write lock in millis=" + duration);
-        } else {
-            this.log.info(msg + ": acquired write lock in millis=" + duration);
+        PendingReport mine = new PendingReport(report);
+        Queue<PendingReport> queue = pendingReports.get(agentName);
+        if (null == queue) {
+            Queue<PendingReport> created = new ConcurrentLinkedQueue<PendingReport>();
+            queue = pendingReports.putIfAbsent(agentName, created);
+            if (null == queue) {
+                queue = created;
+            }
+        }
+        queue.add(mine);
+
+        lock(agentName);
+        try {
+            if (!mine.done) {
+                // whatever queued up behind the last merge, ours included, in arrival order
+                List<PendingReport> batch = new ArrayList<PendingReport>();
+                PendingReport next;
+                while (null != (next = queue.poll())) {
+                    batch.add(next);
+                }
+                if (queue.isEmpty()) {
+                    pendingReports.remove(agentName, queue);
+                }
+                mergeBatch(batch, merger);
+            }
+            if (null != mine.failure) {
+                throw mine.failure;
+            }
+            return mine.result;
+        } finally {
+            unlock(agentName);
         }
-
-        return;
     }
 
-    public void unlock(String agentName) {
-        String msg = "tid=" + Thread.currentThread().getId() + "; agent=" + agentName;
-        boolean debug = this.log.isDebugEnabled();
-
-        ReentrantReadWriteLock lock = AvailabilityReportSerializer.locks.get(agentName);
+    // merges consecutive reports that can be combined as one, every report of the batch is done afterwards, if
+    // only with a failure, as its thread no longer finds it in the queue
+    private void mergeBatch(List<PendingReport> batch, Merger merger) {
+        int start = 0;
+        try {
+            while (start < batch.size()) {
+                start = mergeCombinable(batch, start, merger);
+            }
+        } finally {
+            for (int i = start; i < batch.size(); ++i) {
+                PendingReport pending = batch.get(i);
+                pending.failure = new IllegalStateException("Merge of availability report of agent ["
+                    + pending.report.getAgentName() + "] was aborted");
+                pending.done = true;
+            }
+        }
+    }
 
-        if (lock != null) {
-            Long lockedTime = AvailabilityReportSerializer.lockTimes.get(agentName);
-            long duration = System.currentTimeMillis() - ((lockedTime != null) ? lockedTime : Long.MAX_VALUE);
+    // merges the reports from start on that can be combined with it and returns the index of the first one left
+    private int mergeCombinable(List<PendingReport> batch, int start, Merger merger) {
+        AvailabilityReport first = batch.get(start).report;
+        int end = start + 1;
+        while (end < batch.size() && isCombinable(first, batch.get(end).report)) {
+            ++end;
+        }
 
-            if (duration < 5000L) {
-                logDebug(debug, msg, ": releasing write lock after being locked for millis=" + duration);
-            } else {
-                this.log.info(msg + ": releasing write lock after being locked for millis=" + duration);
+        AvailabilityReport combined = first;
+        if (end - start > 1) {
+            combined = new AvailabilityReport(first.isChangesOnlyReport(), first.getAgentName());
+            for (int i = start; i < end; ++i) {
+                for (AvailabilityReport.Datum datum : batch.get(i).report.getResourceAvailability()) {
+                    combined.addAvailability(datum);
+                }
             }
+            coalescedReports.addAndGet(end - start - 1);
+        }
 
-            lock.writeLock().unlock();
-            logDebug(debug, msg, ": released write lock");
-        } else {
-            this.log.warn(msg + ": cannot release write lock");
+        boolean result = false;
+        RuntimeException failure = null;
+        try {
+            result = merger.merge(combined);
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            for (int i = start; i < end; ++i) {
+                PendingReport pending = batch.get(i);
+                pending.result = result;
+                pending.failure = failure;
+                pending.done = true;
+            }
         }
+        return end;
+    }
+
+    private static boolean isCombinable(AvailabilityReport first, AvailabilityReport other) {
+        return first.isChangesOnlyReport() == other.isChangesOnlyReport() && !first.isServerSideReport()
+            && !other.isServerSideReport();
+    }
 
-        return;
+    /**
+     * Merges an availability report, called with the agent's lock held.
+     */
+    public interface Merger {
+        boolean merge(AvailabilityReport report);
     }
 
-    private void logDebug(boolean enabled, String arg1, String arg2) {
-        if (enabled) {
-            this.log.debug(arg1 + arg2);
+    private static class PendingReport {
+        private final AvailabilityReport report;
+        // only read and written with the agent's lock held
+        private boolean done;
+        private boolean result;
+        private RuntimeException failure;
+
+        private PendingReport(AvailabilityReport report) {
+            this.report = report;
         }
     }
-}
\ No newline at end of file
+}
@@ -18,84 +18,24 @@
  */
 package org.rhq.enterprise.server.util.concurrent;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
-
 public class InventoryReportSerializer {
-    private final Log log = LogFactory.getLog(InventoryReportSerializer.class);
+    private static final InventoryReportSerializer singleton = new InventoryReportSerializer();
 
-    private static Map<String, ReentrantReadWriteLock> locks = new HashMap<String, ReentrantReadWriteLock>();
-    private static Map<String, Long> lockTimes = Collections.synchronizedMap(new HashMap<String, Long>());
-    private static InventoryReportSerializer singleton = new InventoryReportSerializer();
+    private final KeyedSerializer<String> serializer = new KeyedSerializer<String>(InventoryReportSerializer.class, "agent");
 
     public static InventoryReportSerializer getSingleton() {
         return singleton;
     }
 
     public void lock(String agentName) {
-        String msg = "tid=" + Thread.currentThread().getId() + "; agent=" + agentName;
-        boolean debug = this.log.isDebugEnabled();
-
-        ReentrantReadWriteLock lock = null;
-        logDebug(debug, msg, ": about to synchronize");
-        synchronized (this) {
-            logDebug(debug, msg, ": synchronized");
-            lock = InventoryReportSerializer.locks.get(agentName);
-            if (lock == null) {
-                logDebug(debug, msg, ": creating new lock");
-                lock = new ReentrantReadWriteLock();
-                InventoryReportSerializer.locks.put(agentName, lock);
-            }
-        }
-
-        logDebug(debug, msg, ": acquiring write lock");
-        long start = System.currentTimeMillis();
-        lock.writeLock().lock();
-        long end = System.currentTimeMillis();
-        long duration = end - start;
-        InventoryReportSerializer.lockTimes.put(agentName, Long.valueOf(end));
-        if (duration < 5000L) {
-            logDebug(debug, msg, ": acquired write lock in millis=" + duration);
-        } else {
-            this.log.info(msg + ": acquired write lock in millis=" + duration);
-        }
-
-        return;
+        serializer.lock(agentName);
     }
 
     public void unlock(String agentName) {
-        String msg = "tid=" + Thread.currentThread().getId() + "; agent=" + agentName;
-        boolean debug = this.log.isDebugEnabled();
-
-        ReentrantReadWriteLock lock = InventoryReportSerializer.locks.get(agentName);
-
-        if (lock != null) {
-            Long lockedTime = InventoryReportSerializer.lockTimes.get(agentName);
-            long duration = System.currentTimeMillis() - ((lockedTime != null) ? lockedTime : Long.MAX_VALUE);
-
-            if (duration < 5000L) {
-                logDebug(debug, msg, ": releasing write lock after being locked for millis=" + duration);
-            } else {
-                this.log.info(msg + ": releasing write lock after being locked for millis=" + duration);
-            }
-
-            lock.writeLock().unlock();
-            logDebug(debug, msg, ": released write lock");
-        } else {
-            this.log.warn(msg + ": cannot release write lock");
-        }
-
-        return;
+        serializer.unlock(agentName);
     }
 
-    private void logDebug(boolean enabled, String arg1, String arg2) {
-        if (enabled) {
-            this.log.debug(arg1 + arg2);
-        }
+    public KeyedSerializer<String> getSerializer() {
+        return serializer;
     }
-}
\ No newline at end of file
+}
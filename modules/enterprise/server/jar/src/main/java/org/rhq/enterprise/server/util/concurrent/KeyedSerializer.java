@@ -0,0 +1,166 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.util.concurrent;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Serializes work per key (agent name, alert definition id, ...) with one lock per key. Looking up a lock does not
+ * block: the locks live in a concurrent map and each one counts the threads holding or waiting for it, so that it
+ * can be dropped as soon as nobody needs it anymore. Keys of agents that went away therefore cost nothing.
+ * <p/>
+ * The time threads spend waiting for locks is recorded in a {@link LockWaitHistogram}.
+ *
+ * @param <K> the key type
+ */
+public class KeyedSerializer<K> {
+    private final Log log;
+
+    private final String keyName;
+
+    private final ConcurrentMap<K, KeyLock> locks = new ConcurrentHashMap<K, KeyLock>();
+
+    private final LockWaitHistogram waitTimes = new LockWaitHistogram();
+
+    /**
+     * @param owner   the class the log messages are attributed to
+     * @param keyName what the key is, for the log messages
+     */
+    public KeyedSerializer(Class<?> owner, String keyName) {
+        this.log = LogFactory.getLog(owner);
+        this.keyName = keyName;
+    }
+
+    public void lock(K key) {
+        String msg = "tid=" + Thread.currentThread().getId() + "; " + keyName + "=" + key;
+        boolean debug = this.log.isDebugEnabled();
+
+        KeyLock lock = acquire(key);
+
+        logDebug(debug, msg, ": acquiring write lock");
+        long start = System.currentTimeMillis();
+        lock.lock();
+        long end = System.currentTimeMillis();
+        long duration = end - start;
+        lock.lockTime = end;
+        waitTimes.record(duration);
+        if (duration < 5000L) {
+            logDebug(debug, msg, ": acquired write lock in millis=" + duration);
+        } else {
+            this.log.info(msg + ": acquired write lock in millis=" + duration);
+        }
+    }
+
+    public void unlock(K key) {
+        String msg = "tid=" + Thread.currentThread().getId() + "; " + keyName + "=" + key;
+        boolean debug = this.log.isDebugEnabled();
+
+        KeyLock lock = locks.get(key);
+        if (lock == null || !lock.isHeldByCurrentThread()) {
+            this.log.warn(msg + ": cannot release write lock");
+            return;
+        }
+
+        long duration = System.currentTimeMillis() - lock.lockTime;
+        if (duration < 5000L) {
+            logDebug(debug, msg, ": releasing write lock after being locked for millis=" + duration);
+        } else {
+            this.log.info(msg + ": releasing write lock after being locked for millis=" + duration);
+        }
+
+        lock.unlock();
+        release(key, lock);
+        logDebug(debug, msg, ": released write lock");
+    }
+
+    /**
+     * @return the number of keys currently locked or waited for
+     */
+    public int getLockCount() {
+        return locks.size();
+    }
+
+    public LockWaitHistogram getWaitTimes() {
+        return waitTimes;
+    }
+
+    // registers the calling thread as a user of the key's lock, creating the lock if needed
+    private KeyLock acquire(K key) {
+        while (true) {
+            KeyLock lock = locks.get(key);
+            if (lock == null) {
+                KeyLock created = new KeyLock();
+                lock = locks.putIfAbsent(key, created);
+                if (lock == null) {
+                    lock = created;
+                }
+            }
+            if (lock.retain()) {
+                return lock;
+            }
+            // lost the race against the last user dropping the lock, it is gone from the map by now
+            locks.remove(key, lock);
+        }
+    }
+
+    private void release(K key, KeyLock lock) {
+        if (lock.releaseAndRetire()) {
+            locks.remove(key, lock);
+        }
+    }
+
+    private void logDebug(boolean enabled, String arg1, String arg2) {
+        if (enabled) {
+            this.log.debug(arg1 + arg2);
+        }
+    }
+
+    private static class KeyLock extends ReentrantLock {
+        private static final long serialVersionUID = 1L;
+
+        // threads holding or waiting for this lock, -1 once retired
+        private final AtomicInteger users = new AtomicInteger();
+
+        // only read and written by the thread holding the lock
+        private long lockTime;
+
+        private boolean retain() {
+            while (true) {
+                int current = users.get();
+                if (current < 0) {
+                    return false;
+                }
+                if (users.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        // true if this was the last user, in which case the lock can no longer be retained
+        private boolean releaseAndRetire() {
+            return users.decrementAndGet() == 0 && users.compareAndSet(0, -1);
+        }
+    }
+}
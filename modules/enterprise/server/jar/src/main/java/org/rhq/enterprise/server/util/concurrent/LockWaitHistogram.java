@@ -0,0 +1,86 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.util.concurrent;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts lock waits by how long they took, in buckets of increasing (roughly tenfold) upper bounds.
+ */
+public class LockWaitHistogram {
+    private static final long[] BUCKET_LIMITS = { 1L, 10L, 100L, 1000L, 5000L, 30000L };
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_LIMITS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalWaitTime = new AtomicLong();
+    private final AtomicLong maxWaitTime = new AtomicLong();
+
+    public void record(long waitTime) {
+        int bucket = 0;
+        while (bucket < BUCKET_LIMITS.length && waitTime >= BUCKET_LIMITS[bucket]) {
+            ++bucket;
+        }
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalWaitTime.addAndGet(waitTime);
+
+        long max = maxWaitTime.get();
+        while (waitTime > max && !maxWaitTime.compareAndSet(max, waitTime)) {
+            max = maxWaitTime.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMaxWaitTime() {
+        return maxWaitTime.get();
+    }
+
+    /**
+     * @return the number of waits per bucket, keyed and ordered by the bucket's range in millis, followed by the
+     * overall count, total and maximum wait time
+     */
+    public Map<String, Long> getStatistics() {
+        Map<String, Long> stats = new LinkedHashMap<String, Long>();
+        long lower = 0L;
+        for (int i = 0; i < BUCKET_LIMITS.length; ++i) {
+            stats.put(lower + "-" + BUCKET_LIMITS[i] + "ms", buckets.get(i));
+            lower = BUCKET_LIMITS[i];
+        }
+        stats.put(lower + "ms+", buckets.get(BUCKET_LIMITS.length));
+        stats.put("count", count.get());
+        stats.put("totalWaitTime", totalWaitTime.get());
+        stats.put("maxWaitTime", maxWaitTime.get());
+        return stats;
+    }
+
+    public void clear() {
+        for (int i = 0; i < buckets.length(); ++i) {
+            buckets.set(i, 0L);
+        }
+        count.set(0L);
+        totalWaitTime.set(0L);
+        maxWaitTime.set(0L);
+    }
+}
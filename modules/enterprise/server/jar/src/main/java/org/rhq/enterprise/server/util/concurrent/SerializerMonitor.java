@@ -0,0 +1,92 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.util.concurrent;
+
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.LocalBean;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.management.ObjectName;
+
+import org.rhq.core.util.ObjectNameFactory;
+import org.rhq.enterprise.server.util.JMXUtil;
+
+@Singleton
+@Startup
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.SUPPORTS)
+public class SerializerMonitor implements SerializerMonitorMBean {
+    private static final ObjectName OBJECT_NAME = ObjectNameFactory.create("rhq:service=SerializerMonitor");
+
+    public void clear() {
+        AvailabilityReportSerializer.getSingleton().getSerializer().getWaitTimes().clear();
+        InventoryReportSerializer.getSingleton().getSerializer().getWaitTimes().clear();
+        AlertSerializer.getSingleton().getSerializer().getWaitTimes().clear();
+    }
+
+    public int getAvailabilityReportLockCount() {
+        return AvailabilityReportSerializer.getSingleton().getSerializer().getLockCount();
+    }
+
+    public Map<String, Long> getAvailabilityReportWaitTimes() {
+        return AvailabilityReportSerializer.getSingleton().getSerializer().getWaitTimes().getStatistics();
+    }
+
+    public boolean isAvailabilityReportCoalescing() {
+        return AvailabilityReportSerializer.getSingleton().isCoalescing();
+    }
+
+    public long getCoalescedAvailabilityReports() {
+        return AvailabilityReportSerializer.getSingleton().getCoalescedReports();
+    }
+
+    public int getInventoryReportLockCount() {
+        return InventoryReportSerializer.getSingleton().getSerializer().getLockCount();
+    }
+
+    public Map<String, Long> getInventoryReportWaitTimes() {
+        return InventoryReportSerializer.getSingleton().getSerializer().getWaitTimes().getStatistics();
+    }
+
+    public int getAlertLockCount() {
+        return AlertSerializer.getSingleton().getSerializer().getLockCount();
+    }
+
+    public Map<String, Long> getAlertWaitTimes() {
+        return AlertSerializer.getSingleton().getSerializer().getWaitTimes().getStatistics();
+    }
+
+    @PostConstruct
+    private void init() {
+        JMXUtil.registerMBean(this, OBJECT_NAME);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        JMXUtil.unregisterMBeanQuietly(OBJECT_NAME);
+    }
+}
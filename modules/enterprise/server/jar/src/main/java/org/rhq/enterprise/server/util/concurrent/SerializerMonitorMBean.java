@@ -0,0 +1,72 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.util.concurrent;
+
+import java.util.Map;
+
+/**
+ * An MBean that exposes how much the server's per agent and per alert definition serializers are contended.
+ */
+public interface SerializerMonitorMBean {
+
+    /**
+     * Resets the wait time histograms.
+     */
+    void clear();
+
+    /**
+     * @return the number of agents whose availability reports are being merged or waited for
+     */
+    int getAvailabilityReportLockCount();
+
+    /**
+     * @return how long threads waited to merge an availability report, see {@link LockWaitHistogram#getStatistics()}
+     */
+    Map<String, Long> getAvailabilityReportWaitTimes();
+
+    /**
+     * @return whether availability reports waiting for their agent are merged together
+     */
+    boolean isAvailabilityReportCoalescing();
+
+    /**
+     * @return the number of availability reports that were merged as part of another report's merge
+     */
+    long getCoalescedAvailabilityReports();
+
+    /**
+     * @return the number of agents whose inventory reports are being merged or waited for
+     */
+    int getInventoryReportLockCount();
+
+    /**
+     * @return how long threads waited to merge an inventory report, see {@link LockWaitHistogram#getStatistics()}
+     */
+    Map<String, Long> getInventoryReportWaitTimes();
+
+    /**
+     * @return the number of alert definitions whose conditions are being processed or waited for
+     */
+    int getAlertLockCount();
+
+    /**
+     * @return how long threads waited to process alert conditions, see {@link LockWaitHistogram#getStatistics()}
+     */
+    Map<String, Long> getAlertWaitTimes();
+}
@@ -0,0 +1,225 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.alert.engine.internal;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.alert.AlertConditionOperator;
+import org.rhq.core.domain.measurement.MeasurementData;
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.enterprise.server.alert.engine.model.CacheElementActivity;
+import org.rhq.enterprise.server.alert.engine.model.MeasurementBaselineCacheElement;
+import org.rhq.enterprise.server.alert.engine.model.MeasurementNumericCacheElement;
+import org.rhq.enterprise.server.alert.engine.model.MeasurementRangeNumericCacheElement;
+import org.rhq.enterprise.server.alert.engine.model.NumericDoubleCacheElement;
+
+/**
+ * Checks that the {@link NumericConditionIndex} fires exactly the activations and deactivations that the cache
+ * elements it replaces would have fired.
+ */
+@Test
+public class NumericConditionIndexTest {
+
+    private static final AlertConditionOperator[] THRESHOLD_OPERATORS = { AlertConditionOperator.GREATER_THAN,
+        AlertConditionOperator.LESS_THAN, AlertConditionOperator.EQUALS };
+
+    private static final AlertConditionOperator[] RANGE_OPERATORS = { AlertConditionOperator.GREATER_THAN,
+        AlertConditionOperator.LESS_THAN, AlertConditionOperator.GREATER_THAN_OR_EQUAL_TO,
+        AlertConditionOperator.LESS_THAN_OR_EQUAL_TO };
+
+    public void testStatefulConditionIsDeactivatedOnce() {
+        NumericConditionIndex index = new NumericConditionIndex();
+        index.add(1, new MeasurementNumericCacheElement(AlertConditionOperator.GREATER_THAN, 10.0, 100));
+        index.build();
+
+        RecordingListener listener = new RecordingListener();
+        index.evaluate(1, 5.0, 1L, listener);
+        index.evaluate(1, 6.0, 2L, listener);
+        index.evaluate(1, 11.0, 3L, listener);
+        index.evaluate(1, 12.0, 4L, listener);
+        index.evaluate(2, 12.0, 4L, listener);
+        index.evaluate(1, Double.NaN, 5L, listener);
+
+        // the initially unknown condition is deactivated once, then activated for every match
+        assertEquals(listener.events, list("-100@1", "+100@3=11.0", "+100@4=12.0", "-100@5"));
+    }
+
+    public void testChangesWithoutPreviousValueNeverFire() {
+        NumericConditionIndex index = new NumericConditionIndex();
+        index.add(1, new MeasurementNumericCacheElement(AlertConditionOperator.CHANGES, null, 100));
+        index.add(1, new MeasurementNumericCacheElement(AlertConditionOperator.CHANGES, 1.0, 101));
+        index.build();
+
+        RecordingListener listener = new RecordingListener();
+        index.evaluate(1, 1.0, 1L, listener);
+        index.evaluate(1, 2.0, 2L, listener);
+        index.evaluate(1, 2.0, 3L, listener);
+
+        assertEquals(listener.events, list("+101@2=2.0"));
+    }
+
+    public void testCopyKeepsStateOfRemainingConditions() {
+        NumericConditionIndex index = new NumericConditionIndex();
+        index.add(1, new MeasurementNumericCacheElement(AlertConditionOperator.GREATER_THAN, 10.0, 100));
+        index.add(1, new MeasurementNumericCacheElement(AlertConditionOperator.GREATER_THAN, 20.0, 101));
+        index.add(2, new MeasurementNumericCacheElement(AlertConditionOperator.CHANGES, 1.0, 102));
+        index.build();
+
+        RecordingListener listener = new RecordingListener();
+        index.evaluate(1, 15.0, 1L, listener);
+        index.evaluate(2, 5.0, 1L, listener);
+        assertEquals(new TreeSet<String>(listener.events), new TreeSet<String>(list("-101@1", "+100@1=15.0",
+            "+102@1=5.0")));
+
+        NumericConditionIndex copy = index.copy(new TreeSet<Integer>(list(101)));
+        copy.add(2, new MeasurementNumericCacheElement(AlertConditionOperator.LESS_THAN, 0.0, 103));
+        copy.build();
+        assertEquals(copy.size(), 3);
+
+        // 100 is still active and the last value of 102 is kept, only the new 103 is unknown
+        listener = new RecordingListener();
+        copy.evaluate(1, 5.0, 2L, listener);
+        copy.evaluate(2, 5.0, 2L, listener);
+        copy.evaluate(1, 25.0, 3L, listener);
+        assertEquals(new TreeSet<String>(listener.events), new TreeSet<String>(list("-100@2", "-103@2",
+            "+100@3=25.0")));
+
+        // the original is not affected
+        assertEquals(index.size(), 3);
+    }
+
+    public void testIndexMatchesCacheElements() {
+        Random random = new Random(4711L);
+        NumericConditionIndex index = new NumericConditionIndex();
+        Map<Integer, List<NumericDoubleCacheElement>> elements = new HashMap<Integer, List<NumericDoubleCacheElement>>();
+
+        int triggerId = 0;
+        for (int scheduleId = 1; scheduleId <= 50; ++scheduleId) {
+            List<NumericDoubleCacheElement> scheduleElements = new ArrayList<NumericDoubleCacheElement>();
+            for (int i = random.nextInt(12); i >= 0; --i) {
+                NumericDoubleCacheElement element = randomElement(random, ++triggerId);
+                scheduleElements.add(element);
+                index.add(scheduleId, element);
+            }
+            // the index copies what it needs, so the elements keep their own state
+            elements.put(scheduleId, scheduleElements);
+        }
+        index.build();
+
+        for (int round = 0; round < 200; ++round) {
+            MeasurementData[] batch = new MeasurementData[20];
+            for (int i = 0; i < batch.length; ++i) {
+                int scheduleId = 1 + random.nextInt(55);
+                Double value = randomValue(random);
+                batch[i] = new MeasurementDataNumeric(round * 1000L + i, scheduleId, value);
+            }
+
+            RecordingListener expected = new RecordingListener();
+            for (MeasurementData datum : batch) {
+                process(elements.get(datum.getScheduleId()), ((MeasurementDataNumeric) datum).getValue(),
+                    datum.getTimestamp(), expected);
+            }
+
+            RecordingListener actual = new RecordingListener();
+            index.evaluate(batch, actual);
+
+            // within a schedule the order of the conditions may differ, so compare the sorted events
+            assertEquals(new TreeSet<String>(actual.events), new TreeSet<String>(expected.events), "round " + round);
+            assertEquals(actual.events.size(), expected.events.size(), "round " + round);
+        }
+    }
+
+    private NumericDoubleCacheElement randomElement(Random random, int triggerId) {
+        switch (random.nextInt(4)) {
+        case 0:
+            return new MeasurementNumericCacheElement(THRESHOLD_OPERATORS[random.nextInt(3)],
+                (double) random.nextInt(10), triggerId);
+        case 1:
+            Double baseline = random.nextBoolean() ? random.nextInt(10) * 1.5 : Double.NaN;
+            return new MeasurementBaselineCacheElement(THRESHOLD_OPERATORS[random.nextInt(3)], baseline, triggerId,
+                "mean");
+        case 2:
+            Double current = random.nextBoolean() ? (double) random.nextInt(3) : null;
+            return new MeasurementNumericCacheElement(AlertConditionOperator.CHANGES, current, triggerId);
+        default:
+            double lo = random.nextInt(10);
+            return new MeasurementRangeNumericCacheElement(RANGE_OPERATORS[random.nextInt(4)], lo, lo
+                + random.nextInt(5), triggerId);
+        }
+    }
+
+    private Double randomValue(Random random) {
+        switch (random.nextInt(20)) {
+        case 0:
+            return null;
+        case 1:
+            return Double.NaN;
+        case 2:
+            return Double.POSITIVE_INFINITY;
+        default:
+            return (double) random.nextInt(12) - 1;
+        }
+    }
+
+    // the same decisions AbstractConditionCache.processCacheElements makes
+    private void process(List<NumericDoubleCacheElement> elements, Double value, long timestamp,
+        NumericConditionIndex.Listener listener) {
+        if (elements == null) {
+            return;
+        }
+        for (NumericDoubleCacheElement element : elements) {
+            if (element.process(value)) {
+                element.setActivity(CacheElementActivity.ACTIVE);
+                listener.activate(element.getAlertConditionTriggerId(), timestamp, value);
+            } else if (element.isType(AlertConditionOperator.Type.STATEFUL) && element.getActivity().maybeActive()) {
+                element.setActivity(CacheElementActivity.INACTIVE);
+                listener.deactivate(element.getAlertConditionTriggerId(), timestamp);
+            }
+        }
+    }
+
+    private static <T> List<T> list(T... elements) {
+        List<T> list = new ArrayList<T>();
+        for (T element : elements) {
+            list.add(element);
+        }
+        return list;
+    }
+
+    private static class RecordingListener implements NumericConditionIndex.Listener {
+        private final List<String> events = new ArrayList<String>();
+
+        public void activate(int alertConditionTriggerId, long timestamp, double value) {
+            events.add("+" + alertConditionTriggerId + "@" + timestamp + "=" + value);
+        }
+
+        public void deactivate(int alertConditionTriggerId, long timestamp) {
+            events.add("-" + alertConditionTriggerId + "@" + timestamp);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.blob;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.util.MessageDigestGenerator;
+import org.rhq.core.util.file.FileUtil;
+import org.rhq.core.util.stream.StreamUtil;
+
+@Test
+public class FileSystemBlobStoreTest {
+
+    private static final byte[] CONTENT = "The quick brown fox jumps over the lazy dog".getBytes();
+
+    private File rootDir;
+
+    private FileSystemBlobStore store;
+
+    @BeforeMethod
+    public void initStore() throws Exception {
+        rootDir = new File("target", getClass().getSimpleName());
+        FileUtil.purge(rootDir, true);
+        store = new FileSystemBlobStore(rootDir);
+    }
+
+    @AfterMethod
+    public void deleteStore() {
+        FileUtil.purge(rootDir, true);
+    }
+
+    public void storeContentUnderItsSha256() throws Exception {
+        String id = store.store(new ByteArrayInputStream(CONTENT));
+
+        assertEquals(id, sha256(CONTENT));
+        assertTrue(store.contains(id));
+        assertEquals(store.length(id), CONTENT.length);
+        assertEquals(StreamUtil.slurp(store.openStream(id)), CONTENT);
+
+        File file = store.getFile(id);
+        assertEquals(file.getParentFile().getName(), id.substring(2, 4));
+        assertEquals(file.getParentFile().getParentFile().getName(), id.substring(0, 2));
+    }
+
+    public void storeSameContentTwice() throws Exception {
+        String id = store.store(new ByteArrayInputStream(CONTENT));
+        assertEquals(store.store(new ByteArrayInputStream(CONTENT)), id);
+
+        assertEquals(StreamUtil.slurp(store.openStream(id)), CONTENT);
+        assertEquals(new File(rootDir, "tmp").list().length, 0, "Temporary files should be cleaned up");
+    }
+
+    public void storeWithExpectedId() throws Exception {
+        String id = sha256(CONTENT);
+        store.store(id, new ByteArrayInputStream(CONTENT));
+
+        assertEquals(StreamUtil.slurp(store.openStream(id)), CONTENT);
+    }
+
+    public void rejectContentNotMatchingId() throws Exception {
+        String id = sha256("something else".getBytes());
+        try {
+            store.store(id, new ByteArrayInputStream(CONTENT));
+            fail("Content with a different SHA-256 should not be stored");
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertFalse(store.contains(id));
+        assertFalse(store.contains(sha256(CONTENT)));
+    }
+
+    public void transferWholeContent() throws Exception {
+        String id = store.store(new ByteArrayInputStream(CONTENT));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(store.transferTo(id, 0, -1, out), CONTENT.length);
+        assertEquals(out.toByteArray(), CONTENT);
+    }
+
+    public void transferRangeToFile() throws Exception {
+        String id = store.store(new ByteArrayInputStream(CONTENT));
+
+        File file = new File(rootDir, "range");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            assertEquals(store.transferTo(id, 4, 5, out), 5);
+            assertEquals(store.transferTo(id, 40, -1, out), CONTENT.length - 40);
+        } finally {
+            out.close();
+        }
+
+        assertEquals(new String(StreamUtil.slurp(new FileInputStream(file))), "quickdog");
+    }
+
+    public void deleteContent() throws Exception {
+        String id = store.store(new ByteArrayInputStream(CONTENT));
+
+        assertTrue(store.delete(id));
+        assertFalse(store.contains(id));
+        assertEquals(store.length(id), -1L);
+        assertFalse(store.delete(id));
+    }
+
+    public void invalidIds() throws Exception {
+        assertFalse(store.contains("../../etc/passwd"));
+        assertFalse(store.contains(sha256(CONTENT).toUpperCase()));
+        assertFalse(store.contains(null));
+
+        try {
+            store.openStream("../../etc/passwd");
+            fail("Invalid ids should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static String sha256(byte[] content) throws IOException {
+        return new MessageDigestGenerator(MessageDigestGenerator.SHA_256).calcDigestString(content);
+    }
+}
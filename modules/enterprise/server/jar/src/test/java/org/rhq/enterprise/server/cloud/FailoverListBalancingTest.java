@@ -0,0 +1,179 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.cloud;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.cloud.Server;
+import org.rhq.core.domain.cloud.composite.FailoverListComposite;
+import org.rhq.core.domain.cloud.composite.FailoverListComposite.ServerEntry;
+import org.rhq.core.domain.resource.Agent;
+
+/**
+ * Simulates the partitioning of a large agent population with very different agent loads across the servers of a
+ * cloud, outside of the container, and checks the quality of the balance.
+ */
+@Test
+public class FailoverListBalancingTest {
+
+    private final Log log = LogFactory.getLog(FailoverListBalancingTest.class);
+
+    private static final int SERVER_COUNT = 10;
+    private static final int AGENT_COUNT = 5000;
+
+    public void testAgentLoadModel() {
+        Map<Integer, Double> datapoints = new HashMap<Integer, Double>();
+        datapoints.put(1, 100.0);
+        datapoints.put(2, 500.0);
+        Map<Integer, Long> resources = new HashMap<Integer, Long>();
+        resources.put(1, 200L);
+        Map<Integer, Double> events = new HashMap<Integer, Double>();
+        events.put(2, 50.0);
+
+        // raw loads 100 + 0.5 * 200 = 200 and 500 + 2.0 * 50 = 600, averaged over 4 agents is 200
+        AgentLoadModel loads = new AgentLoadModel(4, datapoints, resources, events);
+        assertEquals(loads.getLoad(agent(1)), 1.0, 0.0001);
+        assertEquals(loads.getLoad(agent(2)), 3.0, 0.0001);
+        assertEquals(loads.getLoad(agent(3)), AgentLoadModel.MIN_LOAD, 0.0001);
+        assertEquals(loads.getLoad(null), 0.0);
+
+        AgentLoadModel uniform = new AgentLoadModel();
+        assertEquals(uniform.getLoad(agent(1)), 1.0);
+        assertEquals(new AgentLoadModel(4, new HashMap<Integer, Double>(), new HashMap<Integer, Long>(),
+            new HashMap<Integer, Double>()).getLoad(agent(1)), 1.0);
+    }
+
+    public void testNewPartition() {
+        simulate(false);
+    }
+
+    public void testRepartitionOfConnectedAgents() {
+        // the agents are connected to servers already, the primary assignment prefers to keep them there
+        simulate(true);
+    }
+
+    private void simulate(boolean connected) {
+        List<Server> servers = new ArrayList<Server>();
+        for (int i = 0; i < SERVER_COUNT; i++) {
+            Server server = new Server();
+            server.setId(i + 1);
+            server.setName("server-" + i);
+            server.setAddress("server-" + i);
+            server.setPort(7080);
+            server.setSecurePort(7443);
+            server.setOperationMode(Server.OperationMode.NORMAL);
+            servers.add(server);
+        }
+
+        Random random = new Random(42L);
+        List<Agent> agents = new ArrayList<Agent>();
+        Map<Integer, Double> datapoints = new HashMap<Integer, Double>();
+        Map<Integer, Long> resources = new HashMap<Integer, Long>();
+        Map<Integer, Double> events = new HashMap<Integer, Double>();
+        for (int i = 0; i < AGENT_COUNT; i++) {
+            Agent agent = agent(i + 1);
+            if (connected) {
+                agent.setServer(servers.get(random.nextInt(SERVER_COUNT)));
+            }
+            agents.add(agent);
+
+            // most agents manage a few hundred schedules, some manage thousands and a few tens of thousands
+            int kind = random.nextInt(200);
+            if (kind == 0) {
+                datapoints.put(agent.getId(), 20000.0 + random.nextInt(20000));
+                resources.put(agent.getId(), 2000L + random.nextInt(3000));
+                events.put(agent.getId(), 100.0 * random.nextInt(10));
+            } else if (kind < 10) {
+                datapoints.put(agent.getId(), 500.0 + random.nextInt(1500));
+                resources.put(agent.getId(), 500L + random.nextInt(500));
+                events.put(agent.getId(), 10.0 * random.nextInt(10));
+            } else {
+                datapoints.put(agent.getId(), 20.0 + random.nextInt(40));
+                resources.put(agent.getId(), 50L + random.nextInt(100));
+            }
+        }
+        AgentLoadModel loads = new AgentLoadModel(AGENT_COUNT, datapoints, resources, events);
+
+        FailoverListManagerBean bean = new FailoverListManagerBean();
+
+        long start = System.nanoTime();
+        Map<Agent, FailoverListComposite> weighted = bean.getForAgents(null, servers, agents, null, loads);
+        long weightedTime = System.nanoTime() - start;
+        Map<Agent, FailoverListComposite> byCount = bean.getForAgents(null, servers, agents, null,
+            new AgentLoadModel());
+
+        assertEquals(weighted.size(), AGENT_COUNT);
+        for (FailoverListComposite serverList : weighted.values()) {
+            Set<Integer> serverIds = new HashSet<Integer>();
+            for (int i = 0; i < serverList.size(); i++) {
+                serverIds.add(serverList.get(i).serverId);
+            }
+            assertEquals(serverIds.size(), SERVER_COUNT, "every server is in every server list exactly once");
+        }
+
+        double weightedDisparity = getDisparity(weighted, loads);
+        double byCountDisparity = getDisparity(byCount, loads);
+        log.info("Partitioned " + AGENT_COUNT + " agents across " + SERVER_COUNT + " servers in "
+            + (weightedTime / 1000000L) + " ms: primary load disparity is " + weightedDisparity
+            + " when balanced by load, " + byCountDisparity + " when balanced by agent count");
+
+        assertTrue(weightedDisparity < 0.15, "disparity " + weightedDisparity);
+        assertTrue(weightedDisparity < byCountDisparity, "disparity " + weightedDisparity + " by count "
+            + byCountDisparity);
+    }
+
+    /**
+     * @return the relative difference between the highest and the lowest primary server load
+     */
+    private double getDisparity(Map<Agent, FailoverListComposite> serverLists, AgentLoadModel loads) {
+        Map<Integer, Double> serverLoads = new HashMap<Integer, Double>();
+        for (Map.Entry<Agent, FailoverListComposite> entry : serverLists.entrySet()) {
+            ServerEntry primary = entry.getValue().get(0);
+            Double load = serverLoads.get(primary.serverId);
+            serverLoads.put(primary.serverId, ((null == load) ? 0.0 : load) + loads.getLoad(entry.getKey()));
+        }
+
+        double high = 0.0;
+        double low = Double.MAX_VALUE;
+        for (double load : serverLoads.values()) {
+            high = Math.max(high, load);
+            low = Math.min(low, load);
+        }
+        return (high - low) / high;
+    }
+
+    private Agent agent(int id) {
+        Agent agent = new Agent("agent-" + id, "host-" + id, 16163, "socket://host-" + id + ":16163", "token-" + id);
+        agent.setId(id);
+        return agent;
+    }
+}
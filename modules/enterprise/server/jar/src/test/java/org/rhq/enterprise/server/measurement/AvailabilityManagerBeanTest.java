@@ -0,0 +1,92 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.measurement;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.discovery.AvailabilityReport;
+import org.rhq.core.domain.measurement.Availability;
+import org.rhq.core.domain.measurement.AvailabilityType;
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.enterprise.server.measurement.AvailabilityManagerBean.MergeInfo;
+import org.rhq.enterprise.server.measurement.AvailabilityStateCache.State;
+
+@Test
+public class AvailabilityManagerBeanTest {
+
+    public void unchangedAvailabilitiesAreRemoved() {
+        List<Availability> availabilities = availabilities(avail(1, AvailabilityType.UP, 200L),
+            avail(2, AvailabilityType.DOWN, 200L));
+
+        AvailabilityManagerBean.removeUnchangedAvailabilities(availabilities, mergeInfo(AvailabilityType.UP));
+
+        assertEquals(availabilities.size(), 1);
+        assertEquals(availabilities.get(0).getResource().getId(), 2);
+    }
+
+    public void laterAvailabilityOfSameResourceIsComparedWithEarlierOne() {
+        // a coalesced report of a resource going down and back up while its cached state is UP
+        List<Availability> availabilities = availabilities(avail(1, AvailabilityType.DOWN, 200L),
+            avail(1, AvailabilityType.UP, 300L), avail(1, AvailabilityType.UP, 400L));
+
+        AvailabilityManagerBean.removeUnchangedAvailabilities(availabilities, mergeInfo(AvailabilityType.UP));
+
+        assertEquals(availabilities.size(), 2, "Both changes must be kept: " + availabilities);
+        assertEquals(availabilities.get(0).getAvailabilityType(), AvailabilityType.DOWN);
+        assertEquals(availabilities.get(1).getAvailabilityType(), AvailabilityType.UP);
+        assertEquals(availabilities.get(1).getStartTime().longValue(), 300L);
+    }
+
+    public void availabilitiesAfterMissingAreKept() {
+        List<Availability> availabilities = availabilities(avail(1, AvailabilityType.MISSING, 200L),
+            avail(1, AvailabilityType.UP, 300L));
+
+        AvailabilityManagerBean.removeUnchangedAvailabilities(availabilities, mergeInfo(AvailabilityType.UP));
+
+        assertEquals(availabilities.size(), 2, "The resource state after MISSING is not known: " + availabilities);
+    }
+
+    private static MergeInfo mergeInfo(AvailabilityType cachedType) {
+        Map<Integer, State> cachedStates = new HashMap<Integer, State>();
+        cachedStates.put(1, new State(cachedType, 100L));
+        cachedStates.put(2, new State(cachedType, 100L));
+        MergeInfo mergeInfo = new MergeInfo(new AvailabilityReport(true, "agent"));
+        mergeInfo.setCachedStates(cachedStates);
+        return mergeInfo;
+    }
+
+    private static Availability avail(int resourceId, AvailabilityType type, long startTime) {
+        return new Availability(new Resource(resourceId), startTime, type);
+    }
+
+    private static List<Availability> availabilities(Availability... availabilities) {
+        List<Availability> list = new ArrayList<Availability>();
+        for (Availability availability : availabilities) {
+            list.add(availability);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.measurement;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.measurement.AvailabilityType;
+import org.rhq.enterprise.server.measurement.AvailabilityStateCache.State;
+
+@Test
+public class AvailabilityStateCacheTest {
+
+    private static final long TTL = 60000L;
+
+    public void partitionIsNullUntilLoaded() {
+        AvailabilityStateCache cache = new AvailabilityStateCache(TTL);
+        assertNull(cache.getPartition(1, 0L));
+
+        cache.load(1, states(10, AvailabilityType.UP, 100L), 0L);
+        assertEquals(cache.getPartition(1, 0L).get(10).getAvailabilityType(), AvailabilityType.UP);
+        assertNull(cache.getPartition(2, 0L), "Partitions of other agents must not be affected");
+    }
+
+    public void partitionExpires() {
+        AvailabilityStateCache cache = new AvailabilityStateCache(TTL);
+        cache.load(1, states(10, AvailabilityType.UP, 100L), 1000L);
+
+        assertTrue(cache.getPartition(1, 1000L + TTL - 1) != null);
+        assertNull(cache.getPartition(1, 1000L + TTL));
+        assertNull(cache.getPartition(1, 1000L), "An expired partition must be dropped");
+    }
+
+    public void updateReplacesAndRemovesStates() {
+        AvailabilityStateCache cache = new AvailabilityStateCache(TTL);
+        Map<Integer, State> loaded = states(10, AvailabilityType.UP, 100L);
+        loaded.put(11, new State(AvailabilityType.UP, 100L));
+        cache.load(1, loaded, 0L);
+
+        Map<Integer, State> merged = states(10, AvailabilityType.DOWN, 200L);
+        merged.put(11, null);
+        cache.update(1, merged);
+
+        Map<Integer, State> partition = cache.getPartition(1, 0L);
+        assertEquals(partition.get(10).getAvailabilityType(), AvailabilityType.DOWN);
+        assertEquals(partition.get(10).getStartTime(), 200L);
+        assertFalse(partition.containsKey(11));
+    }
+
+    public void updateIgnoresUnloadedPartition() {
+        AvailabilityStateCache cache = new AvailabilityStateCache(TTL);
+        cache.update(1, states(10, AvailabilityType.DOWN, 200L));
+        assertNull(cache.getPartition(1, 0L));
+    }
+
+    public void evict() {
+        AvailabilityStateCache cache = new AvailabilityStateCache(TTL);
+        cache.load(1, states(10, AvailabilityType.UP, 100L), 0L);
+        cache.load(2, states(20, AvailabilityType.UP, 100L), 0L);
+
+        cache.evict(1);
+        assertNull(cache.getPartition(1, 0L));
+        assertTrue(cache.getPartition(2, 0L) != null);
+
+        cache.clear();
+        assertNull(cache.getPartition(2, 0L));
+    }
+
+    public void zeroTtlDisablesTheCache() {
+        AvailabilityStateCache cache = new AvailabilityStateCache(0L);
+        assertFalse(cache.isEnabled());
+
+        cache.load(1, states(10, AvailabilityType.UP, 100L), 0L);
+        assertNull(cache.getPartition(1, 0L));
+    }
+
+    private static Map<Integer, State> states(int resourceId, AvailabilityType type, long startTime) {
+        Map<Integer, State> states = new HashMap<Integer, State>();
+        states.put(resourceId, new State(type, startTime));
+        return states;
+    }
+}
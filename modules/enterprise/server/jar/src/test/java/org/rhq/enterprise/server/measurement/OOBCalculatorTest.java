@@ -0,0 +1,49 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.measurement;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import org.testng.annotations.Test;
+
+@Test
+public class OOBCalculatorTest {
+
+    public void lowerBoundViolation() {
+        assertEquals(OOBCalculator.computeOOBFactor(3.8, 2.11, 4.6, 3.9, 5.2), Integer.valueOf(138));
+    }
+
+    public void upperBoundViolation() {
+        assertEquals(OOBCalculator.computeOOBFactor(9.492, 9.481, 9.53, 7.38, 7.49), Integer.valueOf(1855));
+    }
+
+    public void lowerBoundViolationWithAvgInsideBaseline() {
+        assertEquals(OOBCalculator.computeOOBFactor(4.0, 2.0, 10.0, 3.0, 5.0), Integer.valueOf(50));
+    }
+
+    public void noOOBWithinBounds() {
+        assertNull(OOBCalculator.computeOOBFactor(3.15, 2.96, 3.59, 2.95, 3.6));
+    }
+
+    public void noOOBForNarrowBaseline() {
+        assertNull(OOBCalculator.computeOOBFactor(10.0, 1.0, 20.0, 5.0, 5.05));
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.performance.test;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.alert.AlertConditionOperator;
+import org.rhq.core.domain.measurement.MeasurementData;
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.enterprise.server.alert.engine.internal.NumericConditionIndex;
+import org.rhq.enterprise.server.alert.engine.model.CacheElementActivity;
+import org.rhq.enterprise.server.alert.engine.model.MeasurementNumericCacheElement;
+import org.rhq.enterprise.server.alert.engine.model.MeasurementRangeNumericCacheElement;
+import org.rhq.enterprise.server.alert.engine.model.NumericDoubleCacheElement;
+
+/**
+ * Compares the {@link NumericConditionIndex} with the schedule id keyed lists of cache elements the agent condition
+ * cache used to evaluate numeric measurements with. Both see the same conditions and the same measurement reports;
+ * the JMS messages are replaced by counters. Like the other tests in this package these are not run as part of the
+ * regular build.
+ */
+@Test
+public class NumericConditionIndexPerfTest {
+
+    private final Log log = LogFactory.getLog(NumericConditionIndexPerfTest.class);
+
+    private static final int REPORTS = 2000;
+    private static final int REPORT_SIZE = 1000;
+    private static final int WARMUP_REPORTS = 200;
+
+    private static final AlertConditionOperator[] THRESHOLD_OPERATORS = { AlertConditionOperator.GREATER_THAN,
+        AlertConditionOperator.LESS_THAN, AlertConditionOperator.EQUALS };
+
+    @DataProvider(name = "scheduleCounts")
+    public Object[][] scheduleCounts() {
+        return new Object[][] { { 10000 }, { 50000 }, { 200000 } };
+    }
+
+    @Test(dataProvider = "scheduleCounts")
+    public void cacheElements(int scheduleCount) {
+        Map<Integer, List<NumericDoubleCacheElement>> cache = new HashMap<Integer, List<NumericDoubleCacheElement>>();
+        for (int scheduleId = 0; scheduleId < scheduleCount; ++scheduleId) {
+            List<NumericDoubleCacheElement> elements = new ArrayList<NumericDoubleCacheElement>();
+            for (NumericDoubleCacheElement element : createConditions(scheduleId)) {
+                elements.add(element);
+            }
+            cache.put(scheduleId, elements);
+        }
+        List<MeasurementData[]> reports = createReports(scheduleCount);
+
+        int[] messages = new int[2];
+        for (int i = 0; i < WARMUP_REPORTS; ++i) {
+            process(cache, reports.get(i), messages);
+        }
+
+        messages = new int[2];
+        long collections = collectionCount();
+        long start = System.nanoTime();
+        for (int i = WARMUP_REPORTS; i < reports.size(); ++i) {
+            process(cache, reports.get(i), messages);
+        }
+        report("Cache elements", scheduleCount, start, collections, messages);
+    }
+
+    @Test(dataProvider = "scheduleCounts")
+    public void numericConditionIndex(int scheduleCount) {
+        NumericConditionIndex index = new NumericConditionIndex();
+        for (int scheduleId = 0; scheduleId < scheduleCount; ++scheduleId) {
+            for (NumericDoubleCacheElement element : createConditions(scheduleId)) {
+                index.add(scheduleId, element);
+            }
+        }
+        index.build();
+        List<MeasurementData[]> reports = createReports(scheduleCount);
+
+        CountingListener listener = new CountingListener();
+        for (int i = 0; i < WARMUP_REPORTS; ++i) {
+            index.evaluate(reports.get(i), listener);
+        }
+
+        listener = new CountingListener();
+        long collections = collectionCount();
+        long start = System.nanoTime();
+        for (int i = WARMUP_REPORTS; i < reports.size(); ++i) {
+            index.evaluate(reports.get(i), listener);
+        }
+        report("NumericConditionIndex", scheduleCount, start, collections, listener.messages);
+    }
+
+    // the same decisions AbstractConditionCache.processCacheElements makes, minus the JMS messages
+    private void process(Map<Integer, List<NumericDoubleCacheElement>> cache, MeasurementData[] report,
+        int[] messages) {
+        for (MeasurementData datum : report) {
+            List<NumericDoubleCacheElement> elements = cache.get(datum.getScheduleId());
+            if (elements == null) {
+                continue;
+            }
+            Double value = ((MeasurementDataNumeric) datum).getValue();
+            for (NumericDoubleCacheElement element : elements) {
+                if (element.process(value)) {
+                    element.setActivity(CacheElementActivity.ACTIVE);
+                    element.convertValueToString(value);
+                    messages[0]++;
+                } else if (element.isType(AlertConditionOperator.Type.STATEFUL)
+                    && element.getActivity().maybeActive()) {
+                    element.setActivity(CacheElementActivity.INACTIVE);
+                    messages[1]++;
+                }
+            }
+        }
+    }
+
+    // one to three conditions per schedule, a mix of thresholds, changes and ranges
+    private List<NumericDoubleCacheElement> createConditions(int scheduleId) {
+        List<NumericDoubleCacheElement> elements = new ArrayList<NumericDoubleCacheElement>();
+        int triggerId = scheduleId * 4;
+        elements.add(new MeasurementNumericCacheElement(THRESHOLD_OPERATORS[scheduleId % 3], 90.0, triggerId));
+        if (scheduleId % 3 == 0) {
+            elements.add(new MeasurementNumericCacheElement(AlertConditionOperator.CHANGES, 50.0, triggerId + 1));
+        }
+        if (scheduleId % 5 == 0) {
+            elements.add(new MeasurementRangeNumericCacheElement(AlertConditionOperator.GREATER_THAN, 10.0, 95.0,
+                triggerId + 2));
+        }
+        return elements;
+    }
+
+    private List<MeasurementData[]> createReports(int scheduleCount) {
+        Random random = new Random(42L);
+        List<MeasurementData[]> reports = new ArrayList<MeasurementData[]>(REPORTS);
+        for (int i = 0; i < REPORTS; ++i) {
+            MeasurementData[] report = new MeasurementData[REPORT_SIZE];
+            for (int j = 0; j < REPORT_SIZE; ++j) {
+                // values mostly stay below the thresholds, like they usually do
+                report[j] = new MeasurementDataNumeric(i * 30000L, random.nextInt(scheduleCount),
+                    random.nextGaussian() * 15.0 + 50.0);
+            }
+            reports.add(report);
+        }
+        return reports;
+    }
+
+    private long collectionCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0L, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private void report(String name, int scheduleCount, long start, long collections, int[] messages) {
+        long millis = (System.nanoTime() - start) / 1000000L;
+        log.info(name + " with " + scheduleCount + " schedules: " + (REPORTS - WARMUP_REPORTS) + " reports of "
+            + REPORT_SIZE + " values took " + millis + " ms and " + (collectionCount() - collections)
+            + " garbage collections, " + messages[0] + " activations, " + messages[1] + " deactivations");
+    }
+
+    private static class CountingListener implements NumericConditionIndex.Listener {
+        private final int[] messages = new int[2];
+
+        public void activate(int alertConditionTriggerId, long timestamp, double value) {
+            messages[0]++;
+        }
+
+        public void deactivate(int alertConditionTriggerId, long timestamp) {
+            messages[1]++;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.purge;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.db.DatabaseType;
+import org.rhq.core.db.DatabaseTypeFactory;
+import org.rhq.core.db.Postgresql91DatabaseType;
+import org.rhq.enterprise.server.purge.PartitionPurge.Partition;
+
+@Test
+public class PartitionPurgeTest {
+
+    public void parsePostgresRangeBounds() {
+        Partition partition = PartitionPurge.parsePostgresPartition("rhq_event_p1",
+            "FOR VALUES FROM ('1000') TO ('2000')");
+        assertEquals(partition.lower, Long.valueOf(1000));
+        assertEquals(partition.upper, Long.valueOf(2000));
+
+        partition = PartitionPurge.parsePostgresPartition("rhq_event_p0", "FOR VALUES FROM (MINVALUE) TO (1000)");
+        assertNull(partition.lower);
+        assertEquals(partition.upper, Long.valueOf(1000));
+
+        assertNull(PartitionPurge.parsePostgresPartition("rhq_event_default", "DEFAULT"));
+    }
+
+    public void postgresWithoutDeclarativePartitioningIsSkipped() throws Exception {
+        DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+        when(metaData.getDatabaseMajorVersion()).thenReturn(9);
+        Connection connection = mock(Connection.class);
+        when(connection.getMetaData()).thenReturn(metaData);
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+
+        DatabaseType defaultDatabaseType = DatabaseTypeFactory.getDefaultDatabaseType();
+        DatabaseTypeFactory.setDefaultDatabaseType(new Postgresql91DatabaseType());
+        try {
+            PartitionPurge purge = new PartitionPurge(dataSource, "events", "RHQ_EVENT", "TIMESTAMP", 1000L);
+            assertEquals(purge.execute(), 0);
+        } finally {
+            DatabaseTypeFactory.setDefaultDatabaseType(defaultDatabaseType);
+        }
+
+        verify(connection, never()).prepareStatement(anyString());
+        verify(connection).close();
+    }
+
+    public void parseOracleMaxValuePartition() {
+        Partition partition = PartitionPurge.parseOraclePartition("P_MAX", 2000L, "MAXVALUE");
+        assertEquals(partition.lower, Long.valueOf(2000));
+        assertNull(partition.upper);
+    }
+
+    public void onlyPartitionsEndingBeforeDeleteTimeExpire() {
+        List<Partition> partitions = Arrays.asList(new Partition("p0", null, 1000L), new Partition("p1", 1000L,
+            2000L), new Partition("p2", 2000L, 3000L), new Partition("pmax", 3000L, null));
+
+        List<Partition> expired = PartitionPurge.findExpiredPartitions(partitions, 2500);
+
+        assertEquals(expired.size(), 2);
+        assertEquals(expired.get(0).name, "p0");
+        assertEquals(expired.get(1).name, "p1");
+    }
+
+    public void missingRangesSkipExistingPartitions() {
+        List<Partition> partitions = Arrays.asList(new Partition("p1", 1000L, 2000L), new Partition("p3", 3000L,
+            4000L));
+
+        List<long[]> missing = PartitionPurge.findMissingRanges(partitions, 1500, 1000, 3);
+
+        assertEquals(missing.size(), 2);
+        assertEquals(missing.get(0)[0], 2000);
+        assertEquals(missing.get(0)[1], 3000);
+        assertEquals(missing.get(1)[0], 4000);
+        assertEquals(missing.get(1)[1], 5000);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.util;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.auth.Subject;
+import org.rhq.core.domain.criteria.SubjectCriteria;
+import org.rhq.core.domain.util.PageOrdering;
+
+@Test
+public class CriteriaQueryGeneratorTest {
+
+    public void keysetPagingSelectsResultsAfterLastResult() {
+        SubjectCriteria criteria = new SubjectCriteria();
+        criteria.addSortName(PageOrdering.DESC);
+        criteria.setPaging(3, 50);
+        CriteriaQueryGenerator generator = new CriteriaQueryGenerator(new Subject(), criteria);
+        generator.setKeysetPaging(true);
+
+        Subject lastResult = new Subject("jdoe", true, false);
+        lastResult.setId(42);
+
+        assertTrue(generator.isKeysetPagingSupported());
+        assertTrue(generator.setKeysetStart(lastResult));
+
+        String query = generator.getParameterReplacedQuery(false);
+        assertTrue(query.contains("( subject.name < 'jdoe' )"), query);
+        assertTrue(query.contains("( subject.name = 'jdoe' AND subject.id > 42 )"), query);
+        assertFalse(generator.getQueryString(true).contains(":keyset"), "The count query must not be restricted");
+    }
+
+    public void keysetPagingFallsBackOnNullSortValue() {
+        SubjectCriteria criteria = new SubjectCriteria();
+        criteria.addSortName(PageOrdering.ASC);
+        criteria.setPaging(0, 50);
+        CriteriaQueryGenerator generator = new CriteriaQueryGenerator(new Subject(), criteria);
+        generator.setKeysetPaging(true);
+
+        assertFalse(generator.setKeysetStart(new Subject()));
+        assertFalse(generator.getQueryString(false).contains(":keyset"));
+    }
+
+    public void keysetPagingIsNotSupportedOnNullableSortField() {
+        SubjectCriteria criteria = new SubjectCriteria();
+        criteria.addSortName(PageOrdering.ASC);
+        criteria.addSortDepartment(PageOrdering.ASC);
+        criteria.setPaging(0, 50);
+        CriteriaQueryGenerator generator = new CriteriaQueryGenerator(new Subject(), criteria);
+        generator.setKeysetPaging(true);
+
+        Subject lastResult = new Subject("jdoe", true, false);
+        lastResult.setId(42);
+        lastResult.setDepartment("sales");
+
+        assertFalse(generator.isKeysetPagingSupported());
+        assertFalse(generator.setKeysetStart(lastResult));
+        assertFalse(generator.getQueryString(false).contains(":keyset"));
+    }
+
+    public void keysetPagingIsNotSupportedWithoutPaging() {
+        SubjectCriteria criteria = new SubjectCriteria();
+        CriteriaQueryGenerator generator = new CriteriaQueryGenerator(new Subject(), criteria);
+        generator.setKeysetPaging(true);
+
+        assertFalse(generator.isKeysetPagingSupported());
+    }
+
+    public void keysetPagingIsNotSupportedWithAlteredProjection() {
+        SubjectCriteria criteria = new SubjectCriteria();
+        criteria.setPaging(0, 50);
+        CriteriaQueryGenerator generator = new CriteriaQueryGenerator(new Subject(), criteria);
+        generator.setKeysetPaging(true);
+        generator.alterProjection("subject.name");
+
+        assertFalse(generator.isKeysetPagingSupported());
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.util;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.auth.Subject;
+import org.rhq.core.domain.criteria.SubjectCriteria;
+import org.rhq.core.domain.util.PageOrdering;
+
+@Test
+public class CriteriaQueryRunnerTest {
+
+    private static final int ROWS = 7;
+    private static final int PAGE_SIZE = 3;
+
+    private List<Subject> table;
+    private EntityManager entityManager;
+    private List<PageQuery> pageQueries;
+    private int clears;
+
+    @BeforeMethod
+    public void setUp() {
+        table = new ArrayList<Subject>();
+        for (int i = 1; i <= ROWS; i++) {
+            Subject subject = new Subject("user" + i, true, false);
+            subject.setId(i);
+            table.add(subject);
+        }
+
+        pageQueries = new ArrayList<PageQuery>();
+        clears = 0;
+        entityManager = Mockito.mock(EntityManager.class);
+        when(entityManager.createQuery(anyString())).then(new Answer<Query>() {
+            @Override
+            public Query answer(InvocationOnMock invocation) throws Throwable {
+                PageQuery pageQuery = new PageQuery((String) invocation.getArguments()[0], clears);
+                pageQueries.add(pageQuery);
+                return pageQuery.query;
+            }
+        });
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                clears++;
+                return null;
+            }
+        }).when(entityManager).clear();
+    }
+
+    public void streamWithKeysetPaging() {
+        SubjectCriteria criteria = new SubjectCriteria();
+        criteria.addSortId(PageOrdering.ASC);
+        criteria.setPaging(0, PAGE_SIZE);
+        CriteriaQueryGenerator generator = new CriteriaQueryGenerator(new Subject(), criteria);
+        generator.setKeysetPaging(true);
+
+        assertStreamsAllRows(new CriteriaQueryRunner<Subject>(criteria, generator, entityManager, false));
+
+        assertFalse(pageQueries.get(0).queryString.contains(":keyset"), "The first page has no previous result");
+        for (PageQuery pageQuery : pageQueries.subList(1, pageQueries.size())) {
+            assertTrue(pageQuery.queryString.contains(":keyset"), pageQuery.queryString);
+            assertEquals(pageQuery.firstResult, 0, "Keyset pages must not be selected with an offset");
+        }
+    }
+
+    public void streamWithOffsetPaging() {
+        SubjectCriteria criteria = new SubjectCriteria();
+        criteria.addSortId(PageOrdering.ASC);
+        criteria.setPaging(0, PAGE_SIZE);
+        CriteriaQueryGenerator generator = new CriteriaQueryGenerator(new Subject(), criteria);
+
+        assertStreamsAllRows(new CriteriaQueryRunner<Subject>(criteria, generator, entityManager, false));
+
+        for (int i = 0; i < pageQueries.size(); i++) {
+            PageQuery pageQuery = pageQueries.get(i);
+            assertFalse(pageQuery.queryString.contains(":keyset"), pageQuery.queryString);
+            assertEquals(pageQuery.firstResult, i * PAGE_SIZE);
+        }
+    }
+
+    private void assertStreamsAllRows(CriteriaQueryRunner<Subject> runner) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (Iterator<Subject> i = runner.stream(); i.hasNext();) {
+            ids.add(i.next().getId());
+        }
+
+        List<Integer> expectedIds = new ArrayList<Integer>();
+        for (Subject subject : table) {
+            expectedIds.add(subject.getId());
+        }
+        assertEquals(ids, expectedIds);
+
+        // 3 + 3 + 1 rows
+        assertEquals(pageQueries.size(), 3, "Unexpected number of page queries");
+        for (int i = 0; i < pageQueries.size(); i++) {
+            assertEquals(pageQueries.get(i).clearsBefore, i, "The entity manager must be cleared between pages");
+        }
+        assertEquals(clears, pageQueries.size() - 1, "The entity manager must not be cleared after the last page");
+    }
+
+    /**
+     * A query over {@link #table}, sorted by id, which honours the keyset parameter as well as the offset.
+     */
+    private class PageQuery {
+        final String queryString;
+        final int clearsBefore;
+        final Query query;
+        final Map<String, Object> parameters = new HashMap<String, Object>();
+        int firstResult;
+        int maxResults = Integer.MAX_VALUE;
+
+        PageQuery(String queryString, int clearsBefore) {
+            this.queryString = queryString;
+            this.clearsBefore = clearsBefore;
+            query = Mockito.mock(Query.class);
+            when(query.setParameter(anyString(), anyObject())).then(new Answer<Query>() {
+                @Override
+                public Query answer(InvocationOnMock invocation) throws Throwable {
+                    parameters.put((String) invocation.getArguments()[0], invocation.getArguments()[1]);
+                    return query;
+                }
+            });
+            when(query.setFirstResult(anyInt())).then(new Answer<Query>() {
+                @Override
+                public Query answer(InvocationOnMock invocation) throws Throwable {
+                    firstResult = (Integer) invocation.getArguments()[0];
+                    return query;
+                }
+            });
+            when(query.setMaxResults(anyInt())).then(new Answer<Query>() {
+                @Override
+                public Query answer(InvocationOnMock invocation) throws Throwable {
+                    maxResults = (Integer) invocation.getArguments()[0];
+                    return query;
+                }
+            });
+            when(query.getResultList()).then(new Answer<List<Subject>>() {
+                @Override
+                public List<Subject> answer(InvocationOnMock invocation) throws Throwable {
+                    Integer lastId = (Integer) parameters.get("keyset0");
+                    List<Subject> results = new ArrayList<Subject>();
+                    for (Subject subject : table) {
+                        if (lastId == null || subject.getId() > lastId) {
+                            results.add(subject);
+                        }
+                    }
+                    int from = Math.min(firstResult, results.size());
+                    int to = (int) Math.min((long) from + maxResults, results.size());
+                    return new ArrayList<Subject>(results.subList(from, to));
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+
+import org.testng.annotations.Test;
+
+@Test
+public class IdCacheTest {
+
+    public void evictLeastRecentlyUsedKey() {
+        IdCache<String> cache = new IdCache<String>(2);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        assertEquals(cache.get("a"), Integer.valueOf(1));
+
+        cache.put("c", 3);
+
+        assertEquals(cache.size(), 2);
+        assertNull(cache.get("b"), "The least recently used key should have been evicted");
+        assertEquals(cache.get("a"), Integer.valueOf(1));
+        assertEquals(cache.get("c"), Integer.valueOf(3));
+    }
+
+    public void disabledCacheDoesNotStoreIds() {
+        IdCache<String> cache = new IdCache<String>(0);
+        cache.put("a", 1);
+
+        assertFalse(cache.isEnabled());
+        assertNull(cache.get("a"));
+        assertEquals(cache.size(), 0);
+    }
+
+    public void clearRemovesAllIds() {
+        IdCache<String> cache = new IdCache<String>(10);
+        cache.put("a", 1);
+        cache.put("b", 2);
+
+        cache.clear();
+
+        assertEquals(cache.size(), 0);
+        assertNull(cache.get("a"));
+    }
+
+    public void invalidSystemPropertyFallsBackToDefault() {
+        System.setProperty("rhq.test.id-cache.max-size", "not a number");
+        try {
+            IdCache<String> cache = IdCache.fromSystemProperty("rhq.test.id-cache.max-size", 1);
+            cache.put("a", 1);
+            cache.put("b", 2);
+
+            assertEquals(cache.size(), 1);
+        } finally {
+            System.clearProperty("rhq.test.id-cache.max-size");
+        }
+    }
+}
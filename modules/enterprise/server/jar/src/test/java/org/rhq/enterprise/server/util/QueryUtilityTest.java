@@ -163,6 +163,23 @@ public class QueryUtilityTest {
         assertEquals(attemptCounters[1], QueryUtility.PHANTOM_READ_MAX_ATTEMPTS);
     }
 
+    public void dataFetchSkipsCountQueryWhenNotNeeded() {
+        numberOfInconsistentResults = 0;
+
+        PageControl pc = new PageControl(0, 10);
+        QueryUtility.PagedDataFetchSettings settings = new QueryUtility.PagedDataFetchSettings();
+        settings.setCountOnlyWhenNeeded(true);
+
+        PageList<Object> result = QueryUtility.fetchPagedDataAndCount(dataQuery, countQuery, pc, settings);
+
+        assertEquals(result.size(), 1, "The result should have 1 element");
+        assertEquals(result.getTotalSize(), 1, "Unexpected total size");
+        assertTrue(result.isConsistent(), "The result should be consistent");
+
+        assertEquals(attemptCounters[0], 1);
+        assertEquals(attemptCounters[1], 0, "The count query should not have been executed");
+    }
+
     public void repeatedFetchesWaitLongEnough() {
         numberOfInconsistentResults = QueryUtility.DEFAULT_PHANTOM_READ_MAX_ATTEMPTS;
 
@@ -0,0 +1,191 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.util.concurrent;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.discovery.AvailabilityReport;
+import org.rhq.core.domain.measurement.AvailabilityType;
+
+@Test
+public class AvailabilityReportSerializerTest {
+
+    public void queuedReportsAreCoalesced() throws Exception {
+        final AvailabilityReportSerializer serializer = new AvailabilityReportSerializer(true);
+        final CountDownLatch firstMergeStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFirstMerge = new CountDownLatch(1);
+        final List<AvailabilityReport> merged = new CopyOnWriteArrayList<AvailabilityReport>();
+
+        final AvailabilityReportSerializer.Merger merger = new AvailabilityReportSerializer.Merger() {
+            public boolean merge(AvailabilityReport report) {
+                merged.add(report);
+                if (merged.size() == 1) {
+                    firstMergeStarted.countDown();
+                    try {
+                        releaseFirstMerge.await(30, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                return true;
+            }
+        };
+
+        Thread first = mergeInThread(serializer, merger, report(1));
+        assertTrue(firstMergeStarted.await(30, TimeUnit.SECONDS));
+
+        Thread second = mergeInThread(serializer, merger, report(2));
+        Thread third = mergeInThread(serializer, merger, report(3));
+        long deadline = System.currentTimeMillis() + 30000L;
+        while (serializer.getPendingReportCount("agent") < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertEquals(serializer.getPendingReportCount("agent"), 2);
+
+        releaseFirstMerge.countDown();
+        first.join(30000L);
+        second.join(30000L);
+        third.join(30000L);
+
+        assertEquals(merged.size(), 2, "The two queued reports should have been merged as one");
+        assertEquals(merged.get(1).getResourceAvailability().size(), 2);
+        assertEquals(serializer.getCoalescedReports(), 1L);
+        assertEquals(serializer.getPendingReportCount("agent"), 0);
+        assertEquals(serializer.getSerializer().getLockCount(), 0);
+    }
+
+    public void failureOfCoalescedMergeIsThrownToEveryCaller() throws Exception {
+        final AvailabilityReportSerializer serializer = new AvailabilityReportSerializer(true);
+        final CountDownLatch firstMergeStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFirstMerge = new CountDownLatch(1);
+        final List<AvailabilityReport> merged = new CopyOnWriteArrayList<AvailabilityReport>();
+
+        final AvailabilityReportSerializer.Merger merger = new AvailabilityReportSerializer.Merger() {
+            public boolean merge(AvailabilityReport report) {
+                merged.add(report);
+                if (merged.size() == 1) {
+                    firstMergeStarted.countDown();
+                    try {
+                        releaseFirstMerge.await(30, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return true;
+                }
+                throw new IllegalStateException("merge failed");
+            }
+        };
+
+        final List<Object> outcomes = new CopyOnWriteArrayList<Object>();
+        Thread first = mergeInThread(serializer, merger, report(1), outcomes);
+        assertTrue(firstMergeStarted.await(30, TimeUnit.SECONDS));
+
+        Thread second = mergeInThread(serializer, merger, report(2), outcomes);
+        Thread third = mergeInThread(serializer, merger, report(3), outcomes);
+        long deadline = System.currentTimeMillis() + 30000L;
+        while (serializer.getPendingReportCount("agent") < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertEquals(serializer.getPendingReportCount("agent"), 2);
+
+        releaseFirstMerge.countDown();
+        first.join(30000L);
+        second.join(30000L);
+        third.join(30000L);
+
+        assertEquals(merged.size(), 2);
+        assertEquals(outcomes.size(), 3);
+        int failures = 0;
+        for (Object outcome : outcomes) {
+            if (outcome instanceof IllegalStateException) {
+                ++failures;
+            } else {
+                assertEquals(outcome, Boolean.TRUE);
+            }
+        }
+        assertEquals(failures, 2, "Both callers of the combined report must see its failure");
+        assertEquals(serializer.getSerializer().getLockCount(), 0);
+    }
+
+    public void failureIsThrownWithoutCoalescing() {
+        AvailabilityReportSerializer serializer = new AvailabilityReportSerializer(false);
+        try {
+            serializer.merge(report(1), new AvailabilityReportSerializer.Merger() {
+                public boolean merge(AvailabilityReport report) {
+                    throw new IllegalStateException("merge failed");
+                }
+            });
+            fail("The merge failure should have been thrown");
+        } catch (IllegalStateException e) {
+            assertEquals(e.getMessage(), "merge failed");
+        }
+    }
+
+    public void reportsAreMergedSeparatelyWithoutCoalescing() {
+        AvailabilityReportSerializer serializer = new AvailabilityReportSerializer(false);
+        final List<AvailabilityReport> merged = new CopyOnWriteArrayList<AvailabilityReport>();
+        AvailabilityReportSerializer.Merger merger = new AvailabilityReportSerializer.Merger() {
+            public boolean merge(AvailabilityReport report) {
+                merged.add(report);
+                return false;
+            }
+        };
+
+        assertEquals(serializer.merge(report(1), merger), false);
+        assertEquals(serializer.merge(report(2), merger), false);
+        assertEquals(merged.size(), 2);
+        assertEquals(serializer.getCoalescedReports(), 0L);
+    }
+
+    private static Thread mergeInThread(AvailabilityReportSerializer serializer,
+        AvailabilityReportSerializer.Merger merger, AvailabilityReport report) {
+        return mergeInThread(serializer, merger, report, new CopyOnWriteArrayList<Object>());
+    }
+
+    // adds the result of the merge, or what it threw, to the outcomes
+    private static Thread mergeInThread(final AvailabilityReportSerializer serializer,
+        final AvailabilityReportSerializer.Merger merger, final AvailabilityReport report, final List<Object> outcomes) {
+        Thread thread = new Thread() {
+            public void run() {
+                try {
+                    outcomes.add(serializer.merge(report, merger));
+                } catch (RuntimeException e) {
+                    outcomes.add(e);
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private static AvailabilityReport report(int resourceId) {
+        AvailabilityReport report = new AvailabilityReport(true, "agent");
+        report.addAvailability(new AvailabilityReport.Datum(resourceId, AvailabilityType.UP, 1000L));
+        return report;
+    }
+}
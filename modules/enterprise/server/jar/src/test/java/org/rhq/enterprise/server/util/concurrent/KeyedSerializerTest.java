@@ -0,0 +1,110 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.util.concurrent;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+@Test
+public class KeyedSerializerTest {
+
+    public void locksAreEvictedWhenReleased() {
+        KeyedSerializer<String> serializer = new KeyedSerializer<String>(KeyedSerializerTest.class, "agent");
+
+        serializer.lock("a");
+        serializer.lock("b");
+        assertEquals(serializer.getLockCount(), 2);
+
+        // reentrant, the lock must survive the inner unlock
+        serializer.lock("a");
+        serializer.unlock("a");
+        assertEquals(serializer.getLockCount(), 2);
+
+        serializer.unlock("a");
+        serializer.unlock("b");
+        assertEquals(serializer.getLockCount(), 0);
+        assertEquals(serializer.getWaitTimes().getCount(), 3L);
+    }
+
+    public void unlockWithoutLockIsIgnored() {
+        KeyedSerializer<String> serializer = new KeyedSerializer<String>(KeyedSerializerTest.class, "agent");
+        serializer.unlock("a");
+        assertEquals(serializer.getLockCount(), 0);
+    }
+
+    public void sameKeyIsSerialized() throws Exception {
+        final KeyedSerializer<Integer> serializer = new KeyedSerializer<Integer>(KeyedSerializerTest.class, "id");
+        final AtomicInteger inside = new AtomicInteger();
+        final AtomicInteger maxInside = new AtomicInteger();
+        int threadCount = 8;
+        final CountDownLatch done = new CountDownLatch(threadCount);
+
+        for (int t = 0; t < threadCount; ++t) {
+            new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < 200; ++i) {
+                            serializer.lock(1);
+                            try {
+                                int now = inside.incrementAndGet();
+                                if (now > maxInside.get()) {
+                                    maxInside.set(now);
+                                }
+                                inside.decrementAndGet();
+                            } finally {
+                                serializer.unlock(1);
+                            }
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(maxInside.get(), 1, "Two threads held the same key's lock at once");
+        assertEquals(serializer.getLockCount(), 0, "All locks should have been evicted");
+        assertEquals(serializer.getWaitTimes().getCount(), threadCount * 200L);
+    }
+
+    public void histogramBuckets() {
+        LockWaitHistogram histogram = new LockWaitHistogram();
+        histogram.record(0L);
+        histogram.record(5L);
+        histogram.record(5L);
+        histogram.record(60000L);
+
+        assertEquals(histogram.getStatistics().get("0-1ms"), Long.valueOf(1L));
+        assertEquals(histogram.getStatistics().get("1-10ms"), Long.valueOf(2L));
+        assertEquals(histogram.getStatistics().get("30000ms+"), Long.valueOf(1L));
+        assertEquals(histogram.getStatistics().get("totalWaitTime"), Long.valueOf(60010L));
+        assertEquals(histogram.getMaxWaitTime(), 60000L);
+
+        histogram.clear();
+        assertEquals(histogram.getCount(), 0L);
+        assertEquals(histogram.getStatistics().get("1-10ms"), Long.valueOf(0L));
+    }
+}
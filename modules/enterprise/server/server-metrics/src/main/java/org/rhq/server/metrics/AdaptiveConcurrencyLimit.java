@@ -0,0 +1,199 @@
+package org.rhq.server.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A concurrency limit that adapts to the observed behavior of the storage cluster using additive increase,
+ * multiplicative decrease (AIMD). Each request that completes within the latency threshold raises the limit by
+ * <code>1 / limit</code>, i.e., by one for every limit's worth of requests, as long as the limit is actually being
+ * used. A request that times out or exceeds the latency threshold is treated as a sign of overload and multiplies the
+ * limit with the backoff ratio. The limit is lowered at most once per average request latency, so a burst of
+ * timeouts caused by the same overload only counts once and a single slow request cannot collapse throughput.
+ * <p/>
+ * Callers wait in {@link #acquire()} while the limit is reached, but never longer than the max wait time after which
+ * the request is let through and counted as throttled. This keeps callers that run on storage client threads from
+ * deadlocking.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    private static final double LATENCY_SMOOTHING = 0.1;
+
+    private final Object lock = new Object();
+
+    private double limit;
+
+    private int minLimit;
+
+    private int maxLimit;
+
+    private double backoffRatio = 0.9;
+
+    private long latencyThreshold = 1000;
+
+    private long maxWait = 10000;
+
+    private int inFlight;
+
+    private double averageLatency;
+
+    private long lastDecrease;
+
+    private long requests;
+
+    private long dropped;
+
+    private long throttled;
+
+    private long waitTime;
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    /**
+     * Blocks until the number of requests in flight is below the limit or the max wait time has elapsed. Interrupts
+     * do not end the wait early; the interrupt status is restored before returning.
+     */
+    public void acquire() {
+        boolean interrupted = false;
+        synchronized (lock) {
+            if (inFlight >= (int) limit) {
+                long start = System.currentTimeMillis();
+                long remaining = maxWait;
+                while (inFlight >= (int) limit && remaining > 0) {
+                    try {
+                        lock.wait(remaining);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                    remaining = maxWait - (System.currentTimeMillis() - start);
+                }
+                waitTime += System.currentTimeMillis() - start;
+                if (inFlight >= (int) limit) {
+                    ++throttled;
+                }
+            }
+            ++inFlight;
+            ++requests;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Must be called exactly once for each {@link #acquire()} when the request has completed.
+     *
+     * @param latencyNanos The time the request took
+     * @param dropped True if the request timed out or otherwise failed because the storage cluster is overloaded
+     */
+    public void release(long latencyNanos, boolean dropped) {
+        long latency = TimeUnit.NANOSECONDS.toMillis(latencyNanos);
+        synchronized (lock) {
+            boolean limited = inFlight * 2 >= limit;
+            --inFlight;
+            averageLatency = averageLatency == 0 ? latency :
+                (1 - LATENCY_SMOOTHING) * averageLatency + LATENCY_SMOOTHING * latency;
+
+            if (dropped || latency > latencyThreshold) {
+                if (dropped) {
+                    ++this.dropped;
+                }
+                long now = System.currentTimeMillis();
+                if (now - lastDecrease >= Math.max(1, (long) averageLatency)) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecrease = now;
+                }
+            } else if (limited) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            lock.notifyAll();
+        }
+    }
+
+    public int getLimit() {
+        synchronized (lock) {
+            return (int) limit;
+        }
+    }
+
+    public int getInFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    public int getMinLimit() {
+        synchronized (lock) {
+            return minLimit;
+        }
+    }
+
+    public void setMinLimit(int minLimit) {
+        synchronized (lock) {
+            this.minLimit = Math.max(1, minLimit);
+            limit = Math.max(this.minLimit, limit);
+            lock.notifyAll();
+        }
+    }
+
+    public int getMaxLimit() {
+        synchronized (lock) {
+            return maxLimit;
+        }
+    }
+
+    public void setMaxLimit(int maxLimit) {
+        synchronized (lock) {
+            this.maxLimit = Math.max(minLimit, maxLimit);
+            limit = Math.min(this.maxLimit, limit);
+        }
+    }
+
+    public void setBackoffRatio(double backoffRatio) {
+        synchronized (lock) {
+            this.backoffRatio = backoffRatio;
+        }
+    }
+
+    /**
+     * @param latencyThreshold Requests that take longer than this many milliseconds lower the limit
+     */
+    public void setLatencyThreshold(long latencyThreshold) {
+        synchronized (lock) {
+            this.latencyThreshold = latencyThreshold;
+        }
+    }
+
+    /**
+     * @param maxWait The maximum time in milliseconds that {@link #acquire()} waits for the number of requests in
+     * flight to drop below the limit
+     */
+    public void setMaxWait(long maxWait) {
+        synchronized (lock) {
+            this.maxWait = maxWait;
+        }
+    }
+
+    /**
+     * @return The current limit, requests in flight, total requests, dropped requests, throttled requests, i.e.,
+     * requests let through after the max wait time, total wait time in ms, and the average latency in ms
+     */
+    public Map<String, Long> getStatistics() {
+        Map<String, Long> stats = new LinkedHashMap<String, Long>();
+        synchronized (lock) {
+            stats.put("limit", (long) limit);
+            stats.put("inFlight", (long) inFlight);
+            stats.put("requests", requests);
+            stats.put("dropped", dropped);
+            stats.put("throttled", throttled);
+            stats.put("waitTime", waitTime);
+            stats.put("averageLatency", Math.round(averageLatency));
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.server.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.rhq.core.domain.measurement.composite.MeasurementDataNumericHighLowComposite;
+
+/**
+ * A primitive counterpart of {@link Buckets} for queries that fold a large number of data points, e.g., the data of
+ * every member of a compatible group, into a fixed number of buckets. The min, max, mean, and count of each bucket
+ * are kept in parallel arrays so no object is allocated per data point, and the bucket of a data point is computed
+ * instead of searched for. Data points outside of the buckets are ignored, just like with {@link Buckets}. The mean
+ * is computed incrementally in the same way as {@link ArithmeticMeanCalculator} so that both produce the same values.
+ * <p/>
+ * Instances are not thread safe.
+ */
+public class BucketAccumulator {
+
+    private final long beginTime;
+
+    private final long interval;
+
+    private final double[] min;
+
+    private final double[] max;
+
+    private final double[] mean;
+
+    private final int[] count;
+
+    public BucketAccumulator(long beginTime, long endTime, int numberOfBuckets) {
+        if (numberOfBuckets <= 0) {
+            throw new IllegalArgumentException("Number of buckets must be > 0");
+        }
+        this.beginTime = beginTime;
+        interval = (endTime - beginTime) / numberOfBuckets;
+        min = new double[numberOfBuckets];
+        max = new double[numberOfBuckets];
+        mean = new double[numberOfBuckets];
+        count = new int[numberOfBuckets];
+    }
+
+    public int getNumberOfBuckets() {
+        return count.length;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return The index of the bucket for the timestamp or -1 if the timestamp does not fall into any bucket
+     */
+    public int indexOf(long timestamp) {
+        if (interval <= 0 || timestamp < beginTime) {
+            return -1;
+        }
+        long index = (timestamp - beginTime) / interval;
+        return index < count.length ? (int) index : -1;
+    }
+
+    /**
+     * @return True if the data point was added to a bucket, false if it is outside of the buckets
+     */
+    public boolean insert(long timestamp, double avg, double min, double max) {
+        int i = indexOf(timestamp);
+        if (i < 0) {
+            return false;
+        }
+        if (count[i] == 0) {
+            this.min[i] = min;
+            this.max[i] = max;
+        } else {
+            if (min < this.min[i]) {
+                this.min[i] = min;
+            }
+            if (max > this.max[i]) {
+                this.max[i] = max;
+            }
+        }
+        count[i]++;
+        mean[i] = mean[i] + (avg - mean[i]) / count[i];
+        return true;
+    }
+
+    public long getStartTime(int index) {
+        return beginTime + (interval * index);
+    }
+
+    public int getCount(int index) {
+        return count[index];
+    }
+
+    public double getAvg(int index) {
+        return count[index] == 0 ? Double.NaN : mean[index];
+    }
+
+    public double getMin(int index) {
+        return count[index] == 0 ? Double.NaN : min[index];
+    }
+
+    public double getMax(int index) {
+        return count[index] == 0 ? Double.NaN : max[index];
+    }
+
+    public List<MeasurementDataNumericHighLowComposite> toComposites() {
+        List<MeasurementDataNumericHighLowComposite> data = new ArrayList<MeasurementDataNumericHighLowComposite>(
+            count.length);
+        for (int i = 0; i < count.length; ++i) {
+            data.add(new MeasurementDataNumericHighLowComposite(getStartTime(i), getAvg(i), getMax(i), getMin(i)));
+        }
+        return data;
+    }
+}
@@ -13,6 +13,16 @@ public class MetricsConstants {
 
     public static final String RAW_DATA_AGE_LIMIT = "rhq.metrics.data.age-limit";
 
+    public static final String RAW_DATA_BATCH_SIZE = "rhq.metrics.raw.batch-size";
+
+    public static final String RAW_DATA_MAX_IN_FLIGHT = "rhq.metrics.raw.max-in-flight";
+
+    public static final String INDEX_PARTITIONS = "rhq.metrics.index.partitions";
+
+    public static final String GROUP_QUERY_MAX_IN_FLIGHT = "rhq.metrics.group.max-in-flight";
+
+    public static final String GROUP_QUERY_TIMEOUT = "rhq.metrics.group.timeout";
+
     private MetricsConstants() {
     }
 }
@@ -26,7 +26,15 @@
 package org.rhq.server.metrics;
 
 
+import static com.datastax.driver.core.querybuilder.QueryBuilder.addAll;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.ttl;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.unloggedBatch;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.update;
+
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -34,6 +42,8 @@ import java.util.Set;
 import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.querybuilder.Batch;
+import com.google.common.collect.ImmutableMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -41,6 +51,7 @@ import org.apache.commons.logging.LogFactory;
 import org.rhq.core.domain.measurement.MeasurementDataNumeric;
 import org.rhq.server.metrics.domain.AggregateNumericMetric;
 import org.rhq.server.metrics.domain.AggregateNumericMetricMapper;
+import org.rhq.server.metrics.domain.AggregateType;
 import org.rhq.server.metrics.domain.Bucket;
 import org.rhq.server.metrics.domain.ListPagedResult;
 import org.rhq.server.metrics.domain.MetricsTable;
@@ -211,25 +222,74 @@ public class MetricsDAO {
     public StorageResultSetFuture insertRawData(MeasurementDataNumeric data) {
         BoundStatement statement = insertRawData.bind(data.getScheduleId(), new Date(data.getTimestamp()),
             data.getValue());
-        return storageSession.executeAsync(statement);
+        return storageSession.executeAsync(statement, StorageRequestType.INGESTION);
+    }
+
+    /**
+     * Inserts raw data along with its cache index entry (and optionally its metrics_cache entries) in a single
+     * unlogged batch. All of the data has to belong to the same cache partition, i.e., the same collection time slice
+     * and start schedule id. The native protocol version we use does not support batches of prepared statements, so
+     * the statements are built with the query builder instead.
+     *
+     * @param data The raw data to insert
+     * @param updateCache Whether or not metrics_cache should be updated as well
+     * @param day The 24 hour time slice of the collection time slice
+     * @param partition The cache index partition
+     * @param collectionTimeSlice The collection time slice of the data
+     * @param startScheduleId The start schedule id of the cache partition
+     * @param insertTimeSlice The time slice in which the data is inserted
+     */
+    public StorageResultSetFuture insertRawData(List<MeasurementDataNumeric> data, boolean updateCache, long day,
+        int partition, long collectionTimeSlice, int startScheduleId, long insertTimeSlice) {
+        Batch batch = unloggedBatch();
+        Set<Integer> scheduleIds = new HashSet<Integer>();
+
+        for (MeasurementDataNumeric datum : data) {
+            batch.add(insertInto(MetricsTable.RAW.getTableName())
+                .value("schedule_id", datum.getScheduleId())
+                .value("time", new Date(datum.getTimestamp()))
+                .value("value", datum.getValue())
+                .using(ttl(configuration.getRawTTL())));
+            if (updateCache) {
+                batch.add(insertInto(MetricsTable.METRICS_CACHE.getTableName())
+                    .value("bucket", MetricsTable.RAW.getTableName())
+                    .value("time_slice", new Date(collectionTimeSlice))
+                    .value("start_schedule_id", startScheduleId)
+                    .value("schedule_id", datum.getScheduleId())
+                    .value("time", new Date(datum.getTimestamp()))
+                    .value("value", ImmutableMap.of(AggregateType.VALUE.ordinal(), datum.getValue())));
+            }
+            scheduleIds.add(datum.getScheduleId());
+        }
+
+        batch.add(update(MetricsTable.METRICS_CACHE_INDEX.getTableName())
+            .with(addAll("schedule_ids", scheduleIds))
+            .where(eq("bucket", MetricsTable.RAW.getTableName()))
+            .and(eq("day", new Date(day)))
+            .and(eq("partition", partition))
+            .and(eq("collection_time_slice", new Date(collectionTimeSlice)))
+            .and(eq("start_schedule_id", startScheduleId))
+            .and(eq("insert_time_slice", new Date(insertTimeSlice))));
+
+        return storageSession.executeAsync(batch, StorageRequestType.INGESTION);
     }
 
     public StorageResultSetFuture insert1HourData(AggregateNumericMetric metric) {
         BoundStatement statement = insertOneHourData.bind(metric.getScheduleId(), new Date(metric.getTimestamp()),
             metric.getAvg(), metric.getMax(), metric.getMin());
-        return storageSession.executeAsync(statement);
+        return storageSession.executeAsync(statement, StorageRequestType.AGGREGATION);
     }
 
     public StorageResultSetFuture insert6HourData(AggregateNumericMetric metric) {
         BoundStatement statement = insertSixHourData.bind(metric.getScheduleId(), new Date(metric.getTimestamp()),
             metric.getAvg(), metric.getMax(), metric.getMin());
-        return storageSession.executeAsync(statement);
+        return storageSession.executeAsync(statement, StorageRequestType.AGGREGATION);
     }
 
     public StorageResultSetFuture insert24HourData(AggregateNumericMetric metric) {
         BoundStatement statement = insertTwentyFourHourData.bind(metric.getScheduleId(),
             new Date(metric.getTimestamp()), metric.getAvg(), metric.getMax(), metric.getMin());
-        return storageSession.executeAsync(statement);
+        return storageSession.executeAsync(statement, StorageRequestType.AGGREGATION);
     }
 
     public List<RawNumericMetric> findRawMetrics(int scheduleId, long startTime, long endTime) {
@@ -246,8 +306,13 @@ public class MetricsDAO {
     }
 
     public StorageResultSetFuture findRawMetricsAsync(int scheduleId, long startTime, long endTime) {
+        return findRawMetricsAsync(scheduleId, startTime, endTime, StorageRequestType.QUERY);
+    }
+
+    public StorageResultSetFuture findRawMetricsAsync(int scheduleId, long startTime, long endTime,
+        StorageRequestType requestType) {
         BoundStatement boundStatement = rawMetricsQuery.bind(scheduleId, new Date(startTime), new Date(endTime));
-        return storageSession.executeAsync(boundStatement);
+        return storageSession.executeAsync(boundStatement, requestType);
     }
 
     public RawNumericMetric findLatestRawMetric(int scheduleId) {
@@ -258,6 +323,11 @@ public class MetricsDAO {
         return mapper.mapOne(resultSet);
     }
 
+    public StorageResultSetFuture findLatestRawMetricAsync(int scheduleId) {
+        BoundStatement boundStatement = findLatestRawMetric.bind(scheduleId);
+        return storageSession.executeAsync(boundStatement, StorageRequestType.QUERY);
+    }
+
     public Iterable<RawNumericMetric> findRawMetrics(List<Integer> scheduleIds, long startTime, long endTime) {
         return new ListPagedResult<RawNumericMetric>(findRawMetrics, scheduleIds, startTime, endTime,
             new RawNumericMetricMapper(), storageSession);
@@ -274,28 +344,33 @@ public class MetricsDAO {
 
     public StorageResultSetFuture findAggregateMetricsAsync(int scheduleId, Bucket bucket, long startTime,
         long endTime) {
+        return findAggregateMetricsAsync(scheduleId, bucket, startTime, endTime, StorageRequestType.QUERY);
+    }
+
+    public StorageResultSetFuture findAggregateMetricsAsync(int scheduleId, Bucket bucket, long startTime,
+        long endTime, StorageRequestType requestType) {
         BoundStatement statement = findAggregateMetricsByDateRange.bind(scheduleId, bucket.toString(),
             new Date(startTime), new Date(endTime));
-        return storageSession.executeAsync(statement);
+        return storageSession.executeAsync(statement, requestType);
     }
 
     public StorageResultSetFuture findCacheEntriesAsync(MetricsTable table, long timeSlice,
         int startScheduleId) {
         BoundStatement statement = findCacheEntries.bind(table.toString(), new Date(timeSlice), startScheduleId);
-        return storageSession.executeAsync(statement);
+        return storageSession.executeAsync(statement, StorageRequestType.AGGREGATION);
     }
 
     public StorageResultSetFuture updateMetricsCache(MetricsTable table, long timeSlice, int startScheduleId,
         int scheduleId, long timestamp, Map<Integer, Double> values) {
         BoundStatement statement = insertCacheEntry.bind(table.getTableName(), new Date(timeSlice), startScheduleId,
             scheduleId, new Date(timestamp), values);
-        return storageSession.executeAsync(statement);
+        return storageSession.executeAsync(statement, StorageRequestType.AGGREGATION);
     }
 
     public StorageResultSetFuture deleteCacheEntries(MetricsTable table, long timestamp,
         int startScheduleId) {
         BoundStatement statement = deleteCacheEntries.bind(table.getTableName(), new Date(timestamp), startScheduleId);
-        return storageSession.executeAsync(statement);
+        return storageSession.executeAsync(statement, StorageRequestType.AGGREGATION);
     }
 
 //    public StorageResultSetFuture findIndexEntries(MetricsTable bucket, int partition, long timestamp) {
@@ -313,7 +388,7 @@ public class MetricsDAO {
         int startScheduleId, long insertTimeSlice, Set<Integer> scheduleIds) {
         BoundStatement statement = updateCacheIndex.bind(scheduleIds, table.getTableName(), new Date(day), partition,
             new Date(collectionTimeSlice), startScheduleId, new Date(insertTimeSlice));
-        return storageSession.executeAsync(statement);
+        return storageSession.executeAsync(statement, StorageRequestType.AGGREGATION);
     }
 
     public StorageResultSetFuture findPastCacheIndexEntriesBeforeToday(MetricsTable table, long day, int partition,
@@ -321,33 +396,33 @@ public class MetricsDAO {
 
         BoundStatement statement = findPastCacheIndexEntriesBeforeToday.bind(table.getTableName(), new Date(day),
             partition, new Date(collectionTimeSlice));
-        return storageSession.executeAsync(statement);
+        return storageSession.executeAsync(statement, StorageRequestType.AGGREGATION);
     }
 
     public StorageResultSetFuture findCacheIndexEntriesByDay(MetricsTable table, long day, int partition) {
         BoundStatement statement = findCacheIndexEntriesByDay.bind(table.getTableName(), new Date(day), partition);
-        return storageSession.executeAsync(statement);
+        return storageSession.executeAsync(statement, StorageRequestType.AGGREGATION);
     }
 
     public StorageResultSetFuture findPastCacheIndexEntriesFromToday(MetricsTable table, long day, int partition,
         long collectionTimeSlice) {
         BoundStatement statement = findPastCacheIndexEntriesFromToday.bind(table.getTableName(), new Date(day),
             partition, new Date(collectionTimeSlice));
-        return storageSession.executeAsync(statement);
+        return storageSession.executeAsync(statement, StorageRequestType.AGGREGATION);
     }
 
     public StorageResultSetFuture findCurrentCacheIndexEntries(MetricsTable table, long day, int partition,
         long collectionTimeSlice) {
         BoundStatement statement = findCurrentCacheIndexEntries.bind(table.getTableName(), new Date(day),
             partition, new Date(collectionTimeSlice));
-        return storageSession.executeAsync(statement);
+        return storageSession.executeAsync(statement, StorageRequestType.AGGREGATION);
     }
 
     public StorageResultSetFuture findCurrentCacheIndexEntries(MetricsTable table, long day, int partition,
         long collectionTimeSlice, int startScheduleId) {
         BoundStatement statement = findCurrentCacheIndexEntriesFromOffset.bind(table.getTableName(), new Date(day),
             partition, new Date(collectionTimeSlice), startScheduleId);
-        return storageSession.executeAsync(statement);
+        return storageSession.executeAsync(statement, StorageRequestType.AGGREGATION);
     }
 
     public StorageResultSetFuture deleteCacheIndexEntry(MetricsTable table, long day, int partition,
@@ -355,7 +430,7 @@ public class MetricsDAO {
 
         BoundStatement statement = deleteCacheIndexEntry.bind(table.getTableName(), new Date(day), partition,
             new Date(collectionTimeSlice), startScheduleId, new Date(insertTimeSlice));
-        return storageSession.executeAsync(statement);
+        return storageSession.executeAsync(statement, StorageRequestType.AGGREGATION);
     }
 
     public StorageResultSetFuture deleteCacheIndexEntries(MetricsTable table, long day, int partition,
@@ -363,7 +438,7 @@ public class MetricsDAO {
 
         BoundStatement statement = deleteCacheIndexEntries.bind(table.getTableName(), new Date(day), partition,
             new Date(collectionTimeSlice), startScheduleId);
-        return storageSession.executeAsync(statement);
+        return storageSession.executeAsync(statement, StorageRequestType.AGGREGATION);
     }
 
     public void deleteAggregate(AggregateNumericMetric metric) {
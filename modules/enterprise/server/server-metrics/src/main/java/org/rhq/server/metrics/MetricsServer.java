@@ -26,18 +26,26 @@
 package org.rhq.server.metrics;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
 import com.google.common.base.Stopwatch;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -53,14 +61,14 @@ import org.rhq.core.domain.measurement.MeasurementDataNumeric;
 import org.rhq.core.domain.measurement.composite.MeasurementDataNumericHighLowComposite;
 import org.rhq.core.util.exception.ThrowableUtil;
 import org.rhq.server.metrics.aggregation.AggregationManager;
+import org.rhq.server.metrics.aggregation.OneHourAggregatesListener;
 import org.rhq.server.metrics.domain.AggregateNumericMetric;
-import org.rhq.server.metrics.domain.AggregateNumericMetricMapper;
-import org.rhq.server.metrics.domain.AggregateType;
 import org.rhq.server.metrics.domain.Bucket;
 import org.rhq.server.metrics.domain.CacheIndexEntry;
 import org.rhq.server.metrics.domain.CacheIndexEntryMapper;
 import org.rhq.server.metrics.domain.MetricsTable;
 import org.rhq.server.metrics.domain.RawNumericMetric;
+import org.rhq.server.metrics.domain.RawNumericMetricMapper;
 import org.rhq.server.metrics.invalid.InvalidMetricsManager;
 
 /**
@@ -98,7 +106,50 @@ public class MetricsServer {
 
     private Days rawDataAgeLimit = Days.days(Integer.parseInt(System.getProperty("rhq.metrics.data.age-limit", "3")));
 
-    private int indexPartitions = 1;
+    /**
+     * The number of partitions over which raw data cache index entries are spread. Lowering this value while there
+     * are still index entries in the higher partitions, i.e., for data that has not been aggregated yet, means that
+     * data will not be aggregated.
+     */
+    private int indexPartitions = Integer.parseInt(System.getProperty(MetricsConstants.INDEX_PARTITIONS, "1"));
+
+    /**
+     * The maximum number of raw data points that are inserted with one batch statement.
+     */
+    private int rawDataBatchSize = Integer.parseInt(System.getProperty(MetricsConstants.RAW_DATA_BATCH_SIZE, "50"));
+
+    /**
+     * The maximum number of raw data batch statements that may be in flight at any time. Once the limit is reached,
+     * {@link #addNumericData(Set, RawDataInsertedCallback)} blocks until a batch has finished.
+     */
+    private int rawDataMaxInFlight = Integer.parseInt(System.getProperty(MetricsConstants.RAW_DATA_MAX_IN_FLIGHT,
+        "100"));
+
+    private final Object rawDataInFlightLock = new Object();
+
+    /**
+     * The maximum number of per schedule queries that {@link #findDataForGroup(List, long, long, int)} and
+     * {@link #getSummaryAggregate(List, long, long)} keep in flight at any time.
+     */
+    private int groupQueryMaxInFlight = Integer.parseInt(System.getProperty(MetricsConstants.GROUP_QUERY_MAX_IN_FLIGHT,
+        "50"));
+
+    /**
+     * The time in milliseconds that group queries wait for their per schedule queries. The data of schedules that has
+     * not arrived by then is left out and the partial result is returned.
+     */
+    private long groupQueryTimeout = Long.parseLong(System.getProperty(MetricsConstants.GROUP_QUERY_TIMEOUT,
+        "30000"));
+
+    private int rawDataInFlight;
+
+    private AtomicLong rawDataInserted = new AtomicLong();
+
+    private AtomicLong rawDataInsertBatches = new AtomicLong();
+
+    private AtomicLong rawDataInsertFailures = new AtomicLong();
+
+    private AtomicLong rawDataInsertTime = new AtomicLong();
 
     /**
      * Usage of the metrics_cache table is disabled by default. Enabling it also requires
@@ -167,6 +218,79 @@ public class MetricsServer {
         this.indexPartitions = indexPartitions;
     }
 
+    public int getRawDataBatchSize() {
+        return rawDataBatchSize;
+    }
+
+    public void setRawDataBatchSize(int rawDataBatchSize) {
+        this.rawDataBatchSize = rawDataBatchSize;
+    }
+
+    public int getRawDataMaxInFlight() {
+        return rawDataMaxInFlight;
+    }
+
+    public void setRawDataMaxInFlight(int rawDataMaxInFlight) {
+        synchronized (rawDataInFlightLock) {
+            this.rawDataMaxInFlight = rawDataMaxInFlight;
+            rawDataInFlightLock.notifyAll();
+        }
+    }
+
+    /**
+     * @return The number of raw data batch statements that are currently in flight
+     */
+    public int getRawDataInFlight() {
+        synchronized (rawDataInFlightLock) {
+            return rawDataInFlight;
+        }
+    }
+
+    public int getGroupQueryMaxInFlight() {
+        return groupQueryMaxInFlight;
+    }
+
+    public void setGroupQueryMaxInFlight(int groupQueryMaxInFlight) {
+        this.groupQueryMaxInFlight = groupQueryMaxInFlight;
+    }
+
+    public long getGroupQueryTimeout() {
+        return groupQueryTimeout;
+    }
+
+    public void setGroupQueryTimeout(long groupQueryTimeout) {
+        this.groupQueryTimeout = groupQueryTimeout;
+    }
+
+    /**
+     * @return The total number of raw data points stored since server start
+     */
+    public long getRawDataInserted() {
+        return rawDataInserted.get();
+    }
+
+    /**
+     * @return The total number of raw data batch statements executed since server start
+     */
+    public long getRawDataInsertBatches() {
+        return rawDataInsertBatches.get();
+    }
+
+    /**
+     * @return The total number of raw data batch statements that failed since server start
+     */
+    public long getRawDataInsertFailures() {
+        return rawDataInsertFailures.get();
+    }
+
+    /**
+     * @return The total time in milliseconds that raw data batch statements took to complete since server start. Each
+     * batch is measured from submission until its result is received, so concurrent batches are counted in full.
+     */
+    public long getRawDataInsertTime() {
+        return rawDataInsertTime.get();
+    }
+
     public void init() {
         numAggregationWorkers = Integer.parseInt(System.getProperty("rhq.metrics.aggregation.workers", "4"));
         // We have to have more than 1 thread, otherwise we can deadlock during aggregation task scheduling.
@@ -200,10 +324,7 @@ public class MetricsServer {
         DateTime oldestRawTime = previousHour.minus(configuration.getRawRetention());  // e.g., 7 days ago
         DateTime day = dateTimeService.current24HourTimeSlice();
 
-        CacheIndexEntryMapper mapper = new CacheIndexEntryMapper();
-        StorageResultSetFuture future = dao.findPastCacheIndexEntriesFromToday(MetricsTable.RAW, day.getMillis(), 0,
-            previousHour.getMillis());
-        List<CacheIndexEntry> indexEntries = mapper.map(future.get());
+        List<CacheIndexEntry> indexEntries = findPastRawCacheIndexEntriesFromToday(day, previousHour);
 
         if (!indexEntries.isEmpty()) {
             log.info("Raw data aggregate computations are up to date");
@@ -214,25 +335,20 @@ public class MetricsServer {
             DateTime hour;
 
             if (day.isAfter(oldestRawTime)) {
-                future = dao.findCacheIndexEntriesByDay(MetricsTable.RAW, day.getMillis(), 0);
+                indexEntries = findRawCacheIndexEntriesByDay(day);
             } else {
                 hour = day.plusHours(dateTimeService.currentHour().getHourOfDay());
-                future = dao.findPastCacheIndexEntriesBeforeToday(MetricsTable.RAW, day.getMillis(), 0,
-                    hour.getMillis());
+                indexEntries = findPastRawCacheIndexEntriesBeforeToday(day, hour);
             }
-            indexEntries = mapper.map(future.get());
 
             while (indexEntries.isEmpty() && day.isAfter(oldestRawTime)) {
-                future = dao.findCacheIndexEntriesByDay(MetricsTable.RAW, day.getMillis(), 0);
-                indexEntries = mapper.map(future.get());
+                indexEntries = findRawCacheIndexEntriesByDay(day);
                 day = day.minus(configuration.getSixHourTimeSliceDuration());
             }
 
             if (indexEntries.isEmpty()) {
                 hour = day.plusHours(dateTimeService.currentHour().getHourOfDay());
-                future = dao.findPastCacheIndexEntriesBeforeToday(MetricsTable.RAW, day.getMillis(), 0,
-                    hour.getMillis());
-                indexEntries = mapper.map(future.get());
+                indexEntries = findPastRawCacheIndexEntriesBeforeToday(day, hour);
 
                 if (indexEntries.isEmpty()) {
                     log.info("Did not find any raw data in the storage database since the last server shutdown. " +
@@ -246,10 +362,43 @@ public class MetricsServer {
         }
     }
 
+    private List<CacheIndexEntry> findPastRawCacheIndexEntriesFromToday(DateTime day, DateTime collectionTimeSlice) {
+        CacheIndexEntryMapper mapper = new CacheIndexEntryMapper();
+        List<CacheIndexEntry> indexEntries = new ArrayList<CacheIndexEntry>();
+        for (int partition = 0; partition < indexPartitions; ++partition) {
+            indexEntries.addAll(mapper.map(dao.findPastCacheIndexEntriesFromToday(MetricsTable.RAW, day.getMillis(),
+                partition, collectionTimeSlice.getMillis()).get()));
+        }
+        return indexEntries;
+    }
+
+    private List<CacheIndexEntry> findPastRawCacheIndexEntriesBeforeToday(DateTime day, DateTime collectionTimeSlice) {
+        CacheIndexEntryMapper mapper = new CacheIndexEntryMapper();
+        List<CacheIndexEntry> indexEntries = new ArrayList<CacheIndexEntry>();
+        for (int partition = 0; partition < indexPartitions; ++partition) {
+            indexEntries.addAll(mapper.map(dao.findPastCacheIndexEntriesBeforeToday(MetricsTable.RAW,
+                day.getMillis(), partition, collectionTimeSlice.getMillis()).get()));
+        }
+        return indexEntries;
+    }
+
+    private List<CacheIndexEntry> findRawCacheIndexEntriesByDay(DateTime day) {
+        CacheIndexEntryMapper mapper = new CacheIndexEntryMapper();
+        List<CacheIndexEntry> indexEntries = new ArrayList<CacheIndexEntry>();
+        for (int partition = 0; partition < indexPartitions; ++partition) {
+            indexEntries.addAll(mapper.map(dao.findCacheIndexEntriesByDay(MetricsTable.RAW, day.getMillis(),
+                partition).get()));
+        }
+        return indexEntries;
+    }
+
     private void setMostRecentRawDataPriorToStartup(List<CacheIndexEntry> indexEntries) {
-        CacheIndexEntry lastIndexEntry;
-        lastIndexEntry = indexEntries.get(indexEntries.size() - 1);
-        mostRecentRawDataPriorToStartup = lastIndexEntry.getCollectionTimeSlice();
+        // entries are ordered by collection time slice within each index partition, but not across partitions
+        long mostRecent = Long.MIN_VALUE;
+        for (CacheIndexEntry indexEntry : indexEntries) {
+            mostRecent = Math.max(mostRecent, indexEntry.getCollectionTimeSlice());
+        }
+        mostRecentRawDataPriorToStartup = mostRecent;
         pastAggregationMissed = true;
 
         log.info("Found the most recently inserted raw data prior to this server start up with a timestamp " +
@@ -271,6 +420,35 @@ public class MetricsServer {
         return dao.findLatestRawMetric(scheduleId);
     }
 
+    /**
+     * Queries the most recent raw metric of each schedule. At most {@link #getGroupQueryMaxInFlight()} queries are in
+     * flight at any time.
+     *
+     * @return The most recent raw metric keyed on schedule id, schedules without raw data are left out
+     */
+    public Map<Integer, RawNumericMetric> findLatestValuesForResources(Collection<Integer> scheduleIds) {
+        log.debug("Querying for most recent raw metrics for " + scheduleIds.size() + " schedules");
+        RawNumericMetricMapper mapper = new RawNumericMetricMapper(false);
+        List<Integer> ids = new ArrayList<Integer>(new LinkedHashSet<Integer>(scheduleIds));
+        Map<Integer, RawNumericMetric> results = new HashMap<Integer, RawNumericMetric>();
+        int window = Math.max(1, groupQueryMaxInFlight);
+
+        for (int i = 0; i < ids.size(); i += window) {
+            List<Integer> batch = ids.subList(i, Math.min(i + window, ids.size()));
+            List<StorageResultSetFuture> futures = new ArrayList<StorageResultSetFuture>(batch.size());
+            for (Integer scheduleId : batch) {
+                futures.add(dao.findLatestRawMetricAsync(scheduleId));
+            }
+            for (int j = 0; j < batch.size(); ++j) {
+                RawNumericMetric metric = mapper.mapOne(futures.get(j).get());
+                if (metric != null) {
+                    results.put(batch.get(j), metric);
+                }
+            }
+        }
+        return results;
+    }
+
     /**
      * @return The total aggregation time in milliseconds since server start. This property is updated after each of
      * raw, one hour, and six hour data are aggregated.
@@ -326,9 +504,10 @@ public class MetricsServer {
             return createRawComposites(metrics, beginTime, endTime, numberOfBuckets);
         }
         Bucket bucket = getBucket(begin);
-        List<AggregateNumericMetric> metrics = loadMetrics(scheduleIds, beginTime, endTime, bucket);
+        BucketAccumulator buckets = new BucketAccumulator(beginTime, endTime, numberOfBuckets);
+        accumulateMetrics(scheduleIds, beginTime, endTime, bucket, buckets, true);
 
-        return createComposites(metrics, beginTime, endTime, numberOfBuckets);
+        return buckets.toComposites();
     }
 
     public AggregateNumericMetric getSummaryAggregate(int scheduleId, long beginTime, long endTime) {
@@ -391,9 +570,12 @@ public class MetricsServer {
                 return calculateAggregatedRaw(metrics, beginTime);
             }
             Bucket bucket = getBucket(begin);
-            List<AggregateNumericMetric> metrics = loadMetrics(scheduleIds, beginTime, endTime, bucket);
+            BucketAccumulator summary = new BucketAccumulator(beginTime, endTime, 1);
+            accumulateMetrics(scheduleIds, beginTime, endTime, bucket, summary, false);
 
-            return calculateAggregate(metrics, beginTime, bucket);
+            // Like calculateAggregate, an empty group has an average of zero
+            double avg = summary.getCount(0) == 0 ? 0.0 : summary.getAvg(0);
+            return new AggregateNumericMetric(0, bucket, avg, summary.getMin(0), summary.getMax(0), beginTime);
         } finally {
             stopwatch.stop();
             if (log.isDebugEnabled()) {
@@ -404,24 +586,86 @@ public class MetricsServer {
         }
     }
 
-    private List<AggregateNumericMetric> loadMetrics(List<Integer> scheduleIds, long begin, long end, Bucket bucket) {
-        List<StorageResultSetFuture> futures = new ArrayList<StorageResultSetFuture>(scheduleIds.size());
-        for (Integer scheduleId : scheduleIds) {
-            futures.add(dao.findAggregateMetricsAsync(scheduleId, bucket, begin, end));
-        }
-        ListenableFuture<List<ResultSet>> resultSetsFuture = Futures.successfulAsList(futures);
+    /**
+     * Queries the data of each schedule and folds it into <code>buckets</code> as the result sets arrive, so that the
+     * data of large groups is never materialized as a whole. At most {@link #getGroupQueryMaxInFlight()} queries are
+     * in flight at any time, and the result sets are consumed on the calling thread. Failed queries are skipped. Once
+     * {@link #getGroupQueryTimeout()} has elapsed, outstanding queries are cancelled and what has been accumulated so
+     * far is kept as a partial result.
+     *
+     * @return The number of schedules whose data has been accumulated
+     */
+    private int accumulateMetrics(List<Integer> scheduleIds, long begin, long end, Bucket bucket,
+        BucketAccumulator buckets, boolean excludeInvalidMetrics) {
+        final BlockingQueue<StorageResultSetFuture> completed = new LinkedBlockingQueue<StorageResultSetFuture>();
+        Set<StorageResultSetFuture> inFlight = new HashSet<StorageResultSetFuture>();
+        Iterator<Integer> iterator = scheduleIds.iterator();
+        long deadline = System.currentTimeMillis() + groupQueryTimeout;
+        int loaded = 0;
+        int failed = 0;
+
         try {
-            List<ResultSet> resultSets = resultSetsFuture.get();
-            AggregateNumericMetricMapper mapper = new AggregateNumericMetricMapper();
-            List<AggregateNumericMetric> metrics = new ArrayList<AggregateNumericMetric>();
-            for (ResultSet resultSet : resultSets) {
-                metrics.addAll(mapper.mapAll(resultSet));
+            while (iterator.hasNext() || !inFlight.isEmpty()) {
+                while (iterator.hasNext() && inFlight.size() < Math.max(1, groupQueryMaxInFlight)) {
+                    final StorageResultSetFuture future = dao.findAggregateMetricsAsync(iterator.next(), bucket,
+                        begin, end);
+                    inFlight.add(future);
+                    future.addListener(new Runnable() {
+                        @Override
+                        public void run() {
+                            completed.add(future);
+                        }
+                    }, MoreExecutors.sameThreadExecutor());
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                StorageResultSetFuture future = remaining > 0 ? completed.poll(remaining, TimeUnit.MILLISECONDS) :
+                    null;
+                if (future == null) {
+                    break;
+                }
+                inFlight.remove(future);
+                try {
+                    accumulateResultSet(future.get(), bucket, buckets, excludeInvalidMetrics);
+                    ++loaded;
+                } catch (Exception e) {
+                    ++failed;
+                    if (log.isDebugEnabled()) {
+                        log.debug("There was an error while fetching " + bucket + " data", e);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (StorageResultSetFuture future : inFlight) {
+                future.cancel(false);
+            }
+        }
+
+        if (loaded < scheduleIds.size()) {
+            log.warn("Returning partial results for " + bucket + " data {beginTime: " + begin + ", endTime: " + end +
+                "}. Data was loaded for " + loaded + " of " + scheduleIds.size() + " schedules, " + failed +
+                " queries failed and " + (scheduleIds.size() - loaded - failed) + " did not finish in time.");
+        }
+        return loaded;
+    }
+
+    private void accumulateResultSet(ResultSet resultSet, Bucket bucket, BucketAccumulator buckets,
+        boolean excludeInvalidMetrics) {
+        for (Row row : resultSet) {
+            long timestamp = row.getDate(2).getTime();
+            double avg = row.getDouble(3);
+            double max = row.getDouble(4);
+            double min = row.getDouble(5);
+            if (excludeInvalidMetrics && InvalidMetricsManager.isInvalidMetric(avg, min, max)) {
+                AggregateNumericMetric metric = new AggregateNumericMetric(row.getInt(0), bucket, avg, min, max,
+                    timestamp);
+                log.warn("The " + bucket + " metric " + metric + " is invalid. It will be excluded from the " +
+                    "results sent to the client and we will attempt to recompute the metric.");
+                invalidMetricsManager.submit(metric);
+            } else {
+                buckets.insert(timestamp, avg, min, max);
             }
-            return metrics;
-        } catch (Exception e) {
-            log.warn("There was an error while fetching " + bucket + " data for {scheduleIds: " + scheduleIds +
-                ", beginTime: " + begin + ", endTime: " + end + "}", e);
-            return Collections.emptyList();
         }
     }
 
@@ -479,17 +723,30 @@ public class MetricsServer {
 
     }
 
+    /**
+     * Stores raw data asynchronously. The data is grouped by cache partition, i.e., collection time slice and start
+     * schedule id, and each group is written with unlogged batches of at most {@link #getRawDataBatchSize()} data
+     * points. Each batch also adds the schedule ids to the cache index entry of the group. Index entries are spread over
+     * {@link #getIndexPartitions()} partitions based on the start schedule id.
+     * <p/>
+     * This method blocks while {@link #getRawDataMaxInFlight()} batches are in flight, which pushes back on callers
+     * when the storage cluster cannot keep up.
+     * <p/>
+     * The callback's {@link RawDataInsertedCallback#onFinish() onFinish} is called exactly once, after every batch has
+     * either been stored or failed. Its <code>onFailure</code> is called at most once, with the first failure, before
+     * <code>onFinish</code>.
+     */
     public void addNumericData(final Set<MeasurementDataNumeric> dataSet, final RawDataInsertedCallback callback) {
         if (log.isDebugEnabled()) {
             log.debug("Inserting " + dataSet.size() + " raw metrics");
         }
         final Stopwatch stopwatch = new Stopwatch().start();
-        final AtomicInteger remainingInserts = new AtomicInteger(dataSet.size());
-        // TODO add support for splitting cache index partition
-        final int partition = 0;
         DateTime insertTimeSlice = dateTimeService.currentHour();
 
-        for (final MeasurementDataNumeric data : dataSet) {
+        Map<RawDataPartition, List<MeasurementDataNumeric>> partitions =
+            new LinkedHashMap<RawDataPartition, List<MeasurementDataNumeric>>();
+        int count = 0;
+        for (MeasurementDataNumeric data : dataSet) {
             DateTime collectionTimeSlice = dateTimeService.getTimeSlice(new DateTime(data.getTimestamp()),
                 configuration.getRawTimeSliceDuration());
             Days days = Days.daysBetween(collectionTimeSlice, dateTimeService.now());
@@ -499,57 +756,146 @@ public class MetricsServer {
                 continue;
             }
 
-            ListenableFuture<List<ResultSet>> insertsFuture;
-
-            int startScheduleId = calculateStartScheduleId(data.getScheduleId());
-            DateTime day = dateTimeService.get24HourTimeSlice(collectionTimeSlice);
+            RawDataPartition partition = new RawDataPartition(collectionTimeSlice.getMillis(),
+                calculateStartScheduleId(data.getScheduleId()));
+            List<MeasurementDataNumeric> partitionData = partitions.get(partition);
+            if (partitionData == null) {
+                partitionData = new ArrayList<MeasurementDataNumeric>();
+                partitions.put(partition, partitionData);
+            }
+            partitionData.add(data);
+            ++count;
+        }
 
-            if (cacheEnabled) {
-                StorageResultSetFuture rawFuture = dao.insertRawData(data);
+        if (count == 0) {
+            callback.onFinish();
+            return;
+        }
 
-                StorageResultSetFuture cacheFuture = dao.updateMetricsCache(MetricsTable.RAW,
-                    collectionTimeSlice.getMillis(), startScheduleId, data.getScheduleId(), data.getTimestamp(),
-                    ImmutableMap.of(AggregateType.VALUE.ordinal(), data.getValue()));
+        final RawDataInsertTracker tracker = new RawDataInsertTracker(count, stopwatch, callback);
+        int batchSize = Math.max(1, rawDataBatchSize);
+        int submitted = 0;
+
+        for (Map.Entry<RawDataPartition, List<MeasurementDataNumeric>> entry : partitions.entrySet()) {
+            RawDataPartition partition = entry.getKey();
+            List<MeasurementDataNumeric> partitionData = entry.getValue();
+            DateTime day = dateTimeService.get24HourTimeSlice(new DateTime(partition.collectionTimeSlice));
+            int indexPartition = (partition.startScheduleId / cacheBatchSize) % Math.max(1, indexPartitions);
+
+            for (int i = 0; i < partitionData.size(); i += batchSize) {
+                final List<MeasurementDataNumeric> batch = partitionData.subList(i,
+                    Math.min(i + batchSize, partitionData.size()));
+                try {
+                    acquireRawDataInFlightPermit();
+                } catch (InterruptedException e) {
+                    log.warn("Interrupted while waiting to insert raw data, " + (count - submitted) + " raw metrics " +
+                        "will not be stored");
+                    Thread.currentThread().interrupt();
+                    tracker.failed(count - submitted, e);
+                    return;
+                }
 
-                StorageResultSetFuture indexFuture = dao.updateCacheIndex(MetricsTable.RAW, day.getMillis(), partition,
-                    collectionTimeSlice.getMillis(), startScheduleId, insertTimeSlice.getMillis(),
-                    ImmutableSet.of(data.getScheduleId()));
+                final long batchStartTime = System.currentTimeMillis();
+                StorageResultSetFuture insertFuture;
+                try {
+                    insertFuture = dao.insertRawData(batch, cacheEnabled, day.getMillis(), indexPartition,
+                        partition.collectionTimeSlice, partition.startScheduleId, insertTimeSlice.getMillis());
+                } catch (RuntimeException e) {
+                    releaseRawDataInFlightPermit();
+                    tracker.failed(count - submitted, e);
+                    throw e;
+                }
+                submitted += batch.size();
+
+                // The permit is released on the driver's thread so that busy aggregation workers cannot hold up
+                // ingestion. The callback itself runs on the aggregation workers like before.
+                insertFuture.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        rawDataInsertTime.addAndGet(System.currentTimeMillis() - batchStartTime);
+                        rawDataInsertBatches.incrementAndGet();
+                        releaseRawDataInFlightPermit();
+                    }
+                }, MoreExecutors.sameThreadExecutor());
 
-                insertsFuture = Futures.successfulAsList(rawFuture, cacheFuture, indexFuture);
-            } else {
-                StorageResultSetFuture rawFuture = dao.insertRawData(data);
+                Futures.addCallback(insertFuture, new FutureCallback<ResultSet>() {
+                    @Override
+                    public void onSuccess(ResultSet result) {
+                        rawDataInserted.addAndGet(batch.size());
 
-                StorageResultSetFuture indexFuture = dao.updateCacheIndex(MetricsTable.RAW, day.getMillis(), partition,
-                    collectionTimeSlice.getMillis(), startScheduleId, insertTimeSlice.getMillis(),
-                    ImmutableSet.of(data.getScheduleId()));
+                        for (MeasurementDataNumeric data : batch) {
+                            callback.onSuccess(data);
+                        }
+                        tracker.resolved(batch.size());
+                    }
 
-                insertsFuture = Futures.successfulAsList(rawFuture, indexFuture);
-            }
+                    @Override
+                    public void onFailure(Throwable t) {
+                        rawDataInsertFailures.incrementAndGet();
 
-            Futures.addCallback(insertsFuture, new FutureCallback<List<ResultSet>>() {
-                @Override
-                public void onSuccess(List<ResultSet> result) {
-                    callback.onSuccess(data);
-                    if (remainingInserts.decrementAndGet() == 0) {
-                        stopwatch.stop();
                         if (log.isDebugEnabled()) {
-                            log.debug("Finished inserting " + dataSet.size() + " raw metrics in " +
-                                stopwatch.elapsed(TimeUnit.MILLISECONDS) + " ms");
+                            log.debug("An error occurred while inserting raw data", ThrowableUtil.getRootCause(t));
+                        } else {
+                            log.warn("An error occurred while inserting raw data: " + ThrowableUtil.getRootMessage(t));
                         }
-                        callback.onFinish();
+                        tracker.failed(batch.size(), t);
                     }
-                }
+                }, aggregationWorkers);
+            }
+        }
+    }
 
-                @Override
-                public void onFailure(Throwable t) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("An error occurred while inserting raw data", ThrowableUtil.getRootCause(t));
-                    } else {
-                        log.warn("An error occurred while inserting raw data: " + ThrowableUtil.getRootMessage(t));
-                    }
-                    callback.onFailure(t);
+    /**
+     * Tells the callback of {@link #addNumericData(Set, RawDataInsertedCallback)} about the first failure and when all
+     * batches are done, whatever their outcome.
+     */
+    private class RawDataInsertTracker {
+        private final int total;
+        private final AtomicInteger remaining;
+        private final AtomicBoolean failureReported = new AtomicBoolean();
+        private final Stopwatch stopwatch;
+        private final RawDataInsertedCallback callback;
+
+        RawDataInsertTracker(int total, Stopwatch stopwatch, RawDataInsertedCallback callback) {
+            this.total = total;
+            this.remaining = new AtomicInteger(total);
+            this.stopwatch = stopwatch;
+            this.callback = callback;
+        }
+
+        void failed(int count, Throwable t) {
+            if (failureReported.compareAndSet(false, true)) {
+                callback.onFailure(t);
+            }
+            resolved(count);
+        }
+
+        void resolved(int count) {
+            if (count > 0 && remaining.addAndGet(-count) == 0) {
+                stopwatch.stop();
+                if (log.isDebugEnabled()) {
+                    log.debug("Finished inserting " + total + " raw metrics in " +
+                        stopwatch.elapsed(TimeUnit.MILLISECONDS) + " ms" +
+                        (failureReported.get() ? ", some of them failed" : ""));
                 }
-            }, aggregationWorkers);
+                callback.onFinish();
+            }
+        }
+    }
+
+    private void acquireRawDataInFlightPermit() throws InterruptedException {
+        synchronized (rawDataInFlightLock) {
+            while (rawDataInFlight >= Math.max(1, rawDataMaxInFlight)) {
+                rawDataInFlightLock.wait();
+            }
+            ++rawDataInFlight;
+        }
+    }
+
+    private void releaseRawDataInFlightPermit() {
+        synchronized (rawDataInFlightLock) {
+            --rawDataInFlight;
+            rawDataInFlightLock.notifyAll();
         }
     }
 
@@ -566,6 +912,23 @@ public class MetricsServer {
      * for subsequently computing baselines.
      */
     public Iterable<AggregateNumericMetric> calculateAggregates() {
+        return calculateAggregates(null, true);
+    }
+
+    /**
+     * Same as {@link #calculateAggregates()} except that the one hour aggregates are handed to
+     * <code>oneHourAggregatesListener</code> batch by batch as they are persisted instead of being collected. When
+     * <code>oneHourAggregatesListener</code> is null the one hour aggregates are only persisted.
+     *
+     * @param oneHourAggregatesListener The listener for the one hour aggregates. May be null.
+     * @return An empty collection
+     */
+    public Iterable<AggregateNumericMetric> calculateAggregates(OneHourAggregatesListener oneHourAggregatesListener) {
+        return calculateAggregates(oneHourAggregatesListener, false);
+    }
+
+    private Iterable<AggregateNumericMetric> calculateAggregates(OneHourAggregatesListener oneHourAggregatesListener,
+        boolean collectOneHourAggregates) {
         Stopwatch stopwatch = new Stopwatch().start();
         try {
             DateTime theHour = dateTimeService.currentHour();
@@ -575,6 +938,7 @@ public class MetricsServer {
                     missedHour, aggregationBatchSize, parallelism, cacheBatchSize, configuration.getIndexPageSize());
                 aggregator.setCacheActivationTime(cacheActivationTime);
                 aggregator.setCacheActive(cacheEnabled);
+                aggregator.setIndexPartitions(indexPartitions);
                 pastAggregationMissed = false;
             }
             DateTime timeSlice = theHour.minus(configuration.getRawTimeSliceDuration());
@@ -583,6 +947,9 @@ public class MetricsServer {
                 aggregationBatchSize, parallelism, cacheBatchSize, configuration.getIndexPageSize());
             aggregator.setCacheActivationTime(cacheActivationTime);
             aggregator.setCacheActive(cacheEnabled);
+            aggregator.setIndexPartitions(indexPartitions);
+            aggregator.setOneHourAggregatesListener(oneHourAggregatesListener);
+            aggregator.setCollectOneHourAggregates(collectOneHourAggregates);
 
             return aggregator.run();
         } finally {
@@ -646,4 +1013,34 @@ public class MetricsServer {
         return new AggregateNumericMetric(0, bucket, mean.getArithmeticMean(), min, max, timestamp);
     }
 
+    /**
+     * Identifies the cache partition, and with it the cache index entry, that raw data belongs to.
+     */
+    private static class RawDataPartition {
+        private final long collectionTimeSlice;
+        private final int startScheduleId;
+
+        RawDataPartition(long collectionTimeSlice, int startScheduleId) {
+            this.collectionTimeSlice = collectionTimeSlice;
+            this.startScheduleId = startScheduleId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RawDataPartition)) {
+                return false;
+            }
+            RawDataPartition that = (RawDataPartition) o;
+            return collectionTimeSlice == that.collectionTimeSlice && startScheduleId == that.startScheduleId;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * startScheduleId + (int) (collectionTimeSlice ^ (collectionTimeSlice >>> 32));
+        }
+    }
+
 }
@@ -15,6 +15,22 @@ public class StorageClientConstants {
 
     public static final String REQUEST_TOPOLOGY_CHANGE_DELTA = "rhq.storage.request.limit.topology-delta";
 
+    /**
+     * Prefix of the initial concurrency limit per {@link StorageRequestType}, e.g.,
+     * <code>rhq.storage.request.concurrency.ingestion</code>
+     */
+    public static final String REQUEST_CONCURRENCY = "rhq.storage.request.concurrency.";
+
+    public static final String REQUEST_CONCURRENCY_MIN = "rhq.storage.request.concurrency.min.";
+
+    public static final String REQUEST_CONCURRENCY_MAX = "rhq.storage.request.concurrency.max.";
+
+    public static final String REQUEST_CONCURRENCY_BACKOFF = "rhq.storage.request.concurrency.backoff";
+
+    public static final String REQUEST_LATENCY_THRESHOLD = "rhq.storage.request.latency-threshold";
+
+    public static final String REQUEST_MAX_WAIT = "rhq.storage.request.max-wait";
+
     public static final String LOAD_BALANCING = "rhq.storage.client.load-balancing";
 
     public static final String DATA_CENTER = "rhq.storage.dc";
@@ -0,0 +1,24 @@
+package org.rhq.server.metrics;
+
+/**
+ * The classes of requests that {@link StorageSession} throttles separately, so that one class of requests cannot use
+ * up the capacity of the storage cluster at the expense of the others.
+ */
+public enum StorageRequestType {
+
+    /**
+     * Raw data inserts
+     */
+    INGESTION,
+
+    /**
+     * Reads and writes performed by metrics aggregation
+     */
+    AGGREGATION,
+
+    /**
+     * Everything else, most notably reads for graphs and the remote and REST APIs
+     */
+    QUERY
+
+}
@@ -1,7 +1,13 @@
 package org.rhq.server.metrics;
 
+import static org.rhq.server.metrics.StorageClientConstants.REQUEST_CONCURRENCY;
+import static org.rhq.server.metrics.StorageClientConstants.REQUEST_CONCURRENCY_BACKOFF;
+import static org.rhq.server.metrics.StorageClientConstants.REQUEST_CONCURRENCY_MAX;
+import static org.rhq.server.metrics.StorageClientConstants.REQUEST_CONCURRENCY_MIN;
+import static org.rhq.server.metrics.StorageClientConstants.REQUEST_LATENCY_THRESHOLD;
 import static org.rhq.server.metrics.StorageClientConstants.REQUEST_LIMIT;
 import static org.rhq.server.metrics.StorageClientConstants.REQUEST_LIMIT_MIN;
+import static org.rhq.server.metrics.StorageClientConstants.REQUEST_MAX_WAIT;
 import static org.rhq.server.metrics.StorageClientConstants.REQUEST_TIMEOUT_DAMPENING;
 import static org.rhq.server.metrics.StorageClientConstants.REQUEST_TIMEOUT_DELTA;
 import static org.rhq.server.metrics.StorageClientConstants.REQUEST_TOPOLOGY_CHANGE_DELTA;
@@ -11,7 +17,9 @@ import java.math.MathContext;
 import java.math.RoundingMode;
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -22,14 +30,21 @@ import com.datastax.driver.core.Query;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
 import com.datastax.driver.core.exceptions.NoHostAvailableException;
 import com.datastax.driver.core.exceptions.QueryTimeoutException;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.RateLimiter;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 /**
+ * Wraps the driver session to throttle requests. The overall request rate is capped by a rate limit that follows the
+ * number of storage nodes that are up. In addition each {@link StorageRequestType} has its own
+ * {@link AdaptiveConcurrencyLimit} which is lowered when requests of that type time out or slow down and raised again
+ * as they succeed. Separate limits keep, e.g., large graph queries from starving raw data inserts.
+ *
  * @author John Sanda
  */
 public class StorageSession implements Host.StateListener {
@@ -49,20 +64,40 @@ public class StorageSession implements Host.StateListener {
 
     private double timeoutDelta = Double.parseDouble(System.getProperty(REQUEST_TIMEOUT_DELTA, "0.2"));
 
-    private long permitsLastChanged = System.currentTimeMillis();
-
     private long timeoutDampening = Long.parseLong(System.getProperty(REQUEST_TIMEOUT_DAMPENING, "30000"));
 
     private double topologyDelta = Double.parseDouble(System.getProperty(REQUEST_TOPOLOGY_CHANGE_DELTA, "30000"));
 
-    private long timeouts;
+    private AtomicLong timeouts = new AtomicLong();
 
     private AtomicLong totalRequests = new AtomicLong();
 
+    private final Map<StorageRequestType, AdaptiveConcurrencyLimit> concurrencyLimits =
+        new EnumMap<StorageRequestType, AdaptiveConcurrencyLimit>(StorageRequestType.class);
+
     public StorageSession(Session wrappedSession) {
         this.wrappedSession = wrappedSession;
         this.wrappedSession.getCluster().register(this);
         calculateRequestLimit();
+        initConcurrencyLimits();
+    }
+
+    private void initConcurrencyLimits() {
+        initConcurrencyLimit(StorageRequestType.INGESTION, 200, 10, 2000);
+        initConcurrencyLimit(StorageRequestType.AGGREGATION, 100, 10, 1000);
+        initConcurrencyLimit(StorageRequestType.QUERY, 50, 5, 500);
+    }
+
+    private void initConcurrencyLimit(StorageRequestType type, int initial, int min, int max) {
+        String suffix = type.name().toLowerCase();
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(
+            Integer.parseInt(System.getProperty(REQUEST_CONCURRENCY + suffix, Integer.toString(initial))),
+            Integer.parseInt(System.getProperty(REQUEST_CONCURRENCY_MIN + suffix, Integer.toString(min))),
+            Integer.parseInt(System.getProperty(REQUEST_CONCURRENCY_MAX + suffix, Integer.toString(max))));
+        limit.setBackoffRatio(Double.parseDouble(System.getProperty(REQUEST_CONCURRENCY_BACKOFF, "0.9")));
+        limit.setLatencyThreshold(Long.parseLong(System.getProperty(REQUEST_LATENCY_THRESHOLD, "1000")));
+        limit.setMaxWait(Long.parseLong(System.getProperty(REQUEST_MAX_WAIT, "10000")));
+        concurrencyLimits.put(type, limit);
     }
 
     public void registerNewSession(Session newWrappedSession) {
@@ -100,10 +135,26 @@ public class StorageSession implements Host.StateListener {
         permits.setRate(requestLimit);
     }
 
+    /**
+     * @return The adaptive concurrency limit for requests of the given type
+     */
+    public AdaptiveConcurrencyLimit getConcurrencyLimit(StorageRequestType type) {
+        return concurrencyLimits.get(type);
+    }
+
+    /**
+     * @deprecated Timeouts no longer lower the request limit. They lower the concurrency limit of the request type,
+     * see {@link #getConcurrencyLimit(StorageRequestType)}.
+     */
+    @Deprecated
     public double getTimeoutDelta() {
         return timeoutDelta;
     }
 
+    /**
+     * @deprecated See {@link #getTimeoutDelta()}
+     */
+    @Deprecated
     public void setTimeoutDelta(double timeoutDelta) {
         this.timeoutDelta = timeoutDelta;
     }
@@ -124,10 +175,18 @@ public class StorageSession implements Host.StateListener {
         topologyDelta = delta;
     }
 
+    /**
+     * @deprecated See {@link #getTimeoutDelta()}
+     */
+    @Deprecated
     public long getTimeoutDampening() {
         return timeoutDampening;
     }
 
+    /**
+     * @deprecated See {@link #getTimeoutDelta()}
+     */
+    @Deprecated
     public void setTimeoutDampening(long timeoutDampening) {
         this.timeoutDampening = timeoutDampening;
     }
@@ -137,51 +196,86 @@ public class StorageSession implements Host.StateListener {
     }
 
     public long getTimeouts() {
-        return timeouts;
+        return timeouts.get();
+    }
+
+    public long getTotalRequests() {
+        return totalRequests.get();
     }
 
     public ResultSet execute(String query) {
-        try {
-            totalRequests.incrementAndGet();
-            permits.acquire();
-            return wrappedSession.execute(query);
-        } catch (QueryTimeoutException e) {
-            handleTimeout();
-            throw e;
-        } catch (NoHostAvailableException e) {
-            handleNoHostAvailable(e);
-            throw e;
-        }
+        return execute(new SimpleStatement(query), StorageRequestType.QUERY);
     }
 
     public ResultSet execute(Query query) {
+        return execute(query, StorageRequestType.QUERY);
+    }
+
+    public ResultSet execute(Query query, StorageRequestType type) {
+        AdaptiveConcurrencyLimit concurrencyLimit = concurrencyLimits.get(type);
+        totalRequests.incrementAndGet();
+        permits.acquire();
+        concurrencyLimit.acquire();
+        long start = System.nanoTime();
+        boolean dropped = false;
         try {
-            totalRequests.incrementAndGet();
-            permits.acquire();
             return wrappedSession.execute(query);
         } catch(QueryTimeoutException e) {
+            dropped = true;
             handleTimeout();
             throw e;
         } catch (NoHostAvailableException e) {
+            dropped = isClientTimeout(e);
             handleNoHostAvailable(e);
             throw e;
+        } finally {
+            concurrencyLimit.release(System.nanoTime() - start, dropped);
         }
     }
 
     public StorageResultSetFuture executeAsync(String query) {
-        totalRequests.incrementAndGet();
-        permits.acquire();
-        ResultSetFuture future = wrappedSession.executeAsync(query);
-        return new StorageResultSetFuture(future, this);
+        return executeAsync(new SimpleStatement(query), StorageRequestType.QUERY);
     }
 
     public StorageResultSetFuture executeAsync(Query query) {
+        return executeAsync(query, StorageRequestType.QUERY);
+    }
+
+    public StorageResultSetFuture executeAsync(Query query, StorageRequestType type) {
+        final AdaptiveConcurrencyLimit concurrencyLimit = concurrencyLimits.get(type);
         totalRequests.incrementAndGet();
         permits.acquire();
-        ResultSetFuture future = wrappedSession.executeAsync(query);
+        concurrencyLimit.acquire();
+        final long start = System.nanoTime();
+        final ResultSetFuture future;
+        try {
+            future = wrappedSession.executeAsync(query);
+        } catch (RuntimeException e) {
+            concurrencyLimit.release(System.nanoTime() - start, false);
+            throw e;
+        }
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                concurrencyLimit.release(System.nanoTime() - start, isOverloaded(future));
+            }
+        }, MoreExecutors.sameThreadExecutor());
         return new StorageResultSetFuture(future, this);
     }
 
+    private boolean isOverloaded(ResultSetFuture future) {
+        try {
+            future.getUninterruptibly();
+            return false;
+        } catch (QueryTimeoutException e) {
+            return true;
+        } catch (NoHostAvailableException e) {
+            return isClientTimeout(e);
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
     public PreparedStatement prepare(String query) {
         totalRequests.incrementAndGet();
         permits.acquire();
@@ -255,10 +349,7 @@ public class StorageSession implements Host.StateListener {
     }
 
     void handleTimeout() {
-        ++timeouts;
-        if (System.currentTimeMillis() - permitsLastChanged > timeoutDampening) {
-            decreaseRequestThroughput((int) (getRequestLimit() * timeoutDelta));
-        }
+        timeouts.incrementAndGet();
     }
 
     private void increaseRequestThroughput() {
@@ -279,7 +370,6 @@ public class StorageSession implements Host.StateListener {
             newRate = minRequestLimit;
         }
         permits.setRate(newRate);
-        permitsLastChanged = System.currentTimeMillis();
 
         log.info("Changing request throughput from " + oldRate + " request/sec to " + newRate + " requests/sec");
     }
@@ -60,6 +60,12 @@ public class AggregationManager {
 
     private boolean cacheActive = true;
 
+    private int indexPartitions = 1;
+
+    private OneHourAggregatesListener oneHourAggregatesListener;
+
+    private boolean collectOneHourAggregates = true;
+
     public AggregationManager(ListeningExecutorService aggregationTasks, MetricsDAO dao, DateTimeService dtService,
         DateTime startTime, int batchSize, int parallelism, int cacheBatchSize, int indexPageSize) {
 
@@ -96,6 +102,37 @@ public class AggregationManager {
         this.cacheActive = cacheActive;
     }
 
+    /**
+     * @param indexPartitions The number of partitions over which the raw data cache index entries are spread
+     */
+    public void setIndexPartitions(int indexPartitions) {
+        this.indexPartitions = indexPartitions;
+    }
+
+    /**
+     * When set, the 1 hour aggregates of the current time slice are handed to the listener batch by batch as they are
+     * persisted, and {@link #run()} no longer collects them. This keeps memory usage independent of the number of
+     * schedules.
+     *
+     * @param oneHourAggregatesListener The listener for the 1 hour aggregates of the current time slice
+     */
+    public void setOneHourAggregatesListener(OneHourAggregatesListener oneHourAggregatesListener) {
+        this.oneHourAggregatesListener = oneHourAggregatesListener;
+    }
+
+    /**
+     * @param collectOneHourAggregates Whether {@link #run()} collects the 1 hour aggregates of the current time slice
+     * when no {@link #setOneHourAggregatesListener(OneHourAggregatesListener) listener} is set. Defaults to true.
+     */
+    public void setCollectOneHourAggregates(boolean collectOneHourAggregates) {
+        this.collectOneHourAggregates = collectOneHourAggregates;
+    }
+
+    /**
+     * @return The 1 hour aggregates of the current time slice, or an empty set if a
+     * {@link #setOneHourAggregatesListener(OneHourAggregatesListener) listener} is set or
+     * {@link #setCollectOneHourAggregates(boolean) collection} is turned off.
+     */
     public Set<AggregateNumericMetric> run() {
         log.info("Starting aggregation for time slice " + startTime);
         Stopwatch stopwatch = new Stopwatch().start();
@@ -110,7 +147,12 @@ public class AggregationManager {
             num1Hour += counts.get(AggregationType.ONE_HOUR);
             num6Hour += counts.get(AggregationType.SIX_HOUR);
 
-            counts = createRawAggregator(persistFunctions).execute();
+            PersistFunctions rawPersistFunctions = persistFunctions;
+            if (oneHourAggregatesListener != null) {
+                rawPersistFunctions = new PersistFunctions(dao, dtService, aggregationTasks,
+                    oneHourAggregatesListener);
+            }
+            counts = createRawAggregator(rawPersistFunctions).execute();
             numRaw += counts.get(AggregationType.RAW);
 
             if (is6HourTimeSliceFinished()) {
@@ -155,6 +197,7 @@ public class AggregationManager {
         aggregator.setPersistMetrics(persistFunctions.persist1HourMetricsAndUpdateCache());
         aggregator.setCacheActive(isCacheActive());
         aggregator.setIndexPageSize(indexPageSize);
+        aggregator.setIndexPartitions(indexPartitions);
 
         return aggregator;
     }
@@ -169,15 +212,18 @@ public class AggregationManager {
         aggregator.setCurrentDay(dtService.get24HourTimeSlice(startTime));
         aggregator.setDateTimeService(dtService);
         aggregator.setPersistMetrics(persistFunctions.persist1HourMetricsAndUpdateCache());
-        aggregator.setCacheBlockFinishedListener(new CacheAggregator.CacheBlockFinishedListener() {
-            @Override
-            public void onFinish(IndexAggregatesPair pair) {
-                oneHourData.addAll(pair.metrics);
-            }
-        });
+        if (oneHourAggregatesListener == null && collectOneHourAggregates) {
+            aggregator.setCacheBlockFinishedListener(new CacheAggregator.CacheBlockFinishedListener() {
+                @Override
+                public void onFinish(IndexAggregatesPair pair) {
+                    oneHourData.addAll(pair.metrics);
+                }
+            });
+        }
         aggregator.setCacheActive(isCacheActive());
         aggregator.setResultSetMapper(new RawNumericMetricMapper());
         aggregator.setIndexPageSize(indexPageSize);
+        aggregator.setIndexPartitions(indexPartitions);
 
         return aggregator;
     }
@@ -195,6 +241,7 @@ public class AggregationManager {
         aggregator.setCacheActive(isCacheActive());
         aggregator.setResultSetMapper(new AggregateNumericMetricMapper());
         aggregator.setIndexPageSize(indexPageSize);
+        aggregator.setIndexPartitions(indexPartitions);
 
         return aggregator;
     }
@@ -212,6 +259,7 @@ public class AggregationManager {
         aggregator.setCacheActive(isCacheActive());
         aggregator.setResultSetMapper(new AggregateNumericMetricMapper());
         aggregator.setIndexPageSize(indexPageSize);
+        aggregator.setIndexPartitions(indexPartitions);
 
         return aggregator;
     }
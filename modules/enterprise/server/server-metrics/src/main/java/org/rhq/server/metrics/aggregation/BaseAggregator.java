@@ -69,6 +69,11 @@ abstract class BaseAggregator {
 
     protected int indexPageSize;
 
+    /**
+     * The number of partitions the raw data cache index is spread over.
+     */
+    protected int indexPartitions = 1;
+
     /**
      * AggregationTask is a Runnable that computes aggregates for a set of schedules in a {@link CacheIndexEntry}.
      * If there are any unexpected errors, e.g., a NullPointerException, aggregation will be aborted.
@@ -160,6 +165,10 @@ abstract class BaseAggregator {
         this.indexPageSize = indexPageSize;
     }
 
+    public void setIndexPartitions(int indexPartitions) {
+        this.indexPartitions = indexPartitions;
+    }
+
     public Map<AggregationType, Integer> execute() throws InterruptedException, AbortedException {
         LOG.debug("Starting " + getDebugType() + " aggregation");
 
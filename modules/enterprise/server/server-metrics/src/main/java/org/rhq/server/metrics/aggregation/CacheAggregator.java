@@ -17,6 +17,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.joda.time.DateTime;
 
+import org.rhq.server.metrics.StorageRequestType;
 import org.rhq.server.metrics.StorageResultSetFuture;
 import org.rhq.server.metrics.domain.AggregateNumericMetric;
 import org.rhq.server.metrics.domain.Bucket;
@@ -66,7 +67,7 @@ class CacheAggregator extends BaseAggregator {
 
     @Override
     protected List<CacheIndexEntry> getIndexEntries() {
-        IndexEntriesLoader loader = new IndexEntriesLoader(startTime, currentDay, dao);
+        IndexEntriesLoader loader = new IndexEntriesLoader(startTime, currentDay, dao, indexPartitions);
         return loader.loadCurrentCacheIndexEntries(indexPageSize, aggregationType.getCacheTable());
     }
 
@@ -142,7 +143,8 @@ class CacheAggregator extends BaseAggregator {
         List<StorageResultSetFuture> queryFutures = new ArrayList<StorageResultSetFuture>(BATCH_SIZE);
         long endTime = new DateTime(startTime).plusHours(1).getMillis();
         for (Integer scheduleId : indexEntry.getScheduleIds()) {
-            queryFutures.add(dao.findRawMetricsAsync(scheduleId, indexEntry.getCollectionTimeSlice(), endTime));
+            queryFutures.add(dao.findRawMetricsAsync(scheduleId, indexEntry.getCollectionTimeSlice(), endTime,
+                StorageRequestType.AGGREGATION));
             if (queryFutures.size() == BATCH_SIZE) {
                 processBatch(queryFutures, indexEntry, Bucket.ONE_HOUR);
                 queryFutures = new ArrayList<StorageResultSetFuture>(BATCH_SIZE);
@@ -158,7 +160,7 @@ class CacheAggregator extends BaseAggregator {
         long endTime = dateTimeService.get6HourTimeSliceEnd(new DateTime(startTime)).getMillis();
         for (Integer scheduleId : indexEntry.getScheduleIds()) {
             queryFutures.add(dao.findAggregateMetricsAsync(scheduleId, Bucket.ONE_HOUR,
-                indexEntry.getCollectionTimeSlice(), endTime));
+                indexEntry.getCollectionTimeSlice(), endTime, StorageRequestType.AGGREGATION));
             if (queryFutures.size() == BATCH_SIZE) {
                 processBatch(queryFutures, indexEntry, Bucket.SIX_HOUR);
                 queryFutures = new ArrayList<StorageResultSetFuture>(BATCH_SIZE);
@@ -174,7 +176,7 @@ class CacheAggregator extends BaseAggregator {
         long endTime = dateTimeService.get24HourTimeSliceEnd(new DateTime(startTime)).getMillis();
         for (Integer scheduleId : indexEntry.getScheduleIds()) {
             queryFutures.add(dao.findAggregateMetricsAsync(scheduleId, Bucket.SIX_HOUR,
-                indexEntry.getCollectionTimeSlice(), endTime));
+                indexEntry.getCollectionTimeSlice(), endTime, StorageRequestType.AGGREGATION));
             if (queryFutures.size() == BATCH_SIZE) {
                 processBatch(queryFutures, indexEntry, Bucket.TWENTY_FOUR_HOUR);
                 queryFutures = new ArrayList<StorageResultSetFuture>(BATCH_SIZE);
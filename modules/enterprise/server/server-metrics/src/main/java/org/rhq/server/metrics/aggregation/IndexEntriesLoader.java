@@ -1,6 +1,5 @@
 package org.rhq.server.metrics.aggregation;
 
-import static org.rhq.server.metrics.aggregation.AggregationManager.INDEX_PARTITION;
 import static org.rhq.server.metrics.domain.MetricsTable.RAW;
 
 import java.util.ArrayList;
@@ -32,10 +31,21 @@ public class IndexEntriesLoader {
 
     private CacheIndexEntryMapper mapper;
 
+    private int indexPartitions;
+
     public IndexEntriesLoader(DateTime currentTimeSlice, DateTime currentDay, MetricsDAO dao) {
+        this(currentTimeSlice, currentDay, dao, 1);
+    }
+
+    /**
+     * @param indexPartitions The number of partitions over which raw data index entries are spread. Index entries of
+     * the other tables are always stored in {@link AggregationManager#INDEX_PARTITION}.
+     */
+    public IndexEntriesLoader(DateTime currentTimeSlice, DateTime currentDay, MetricsDAO dao, int indexPartitions) {
         this.currentTimeSlice = currentTimeSlice;
         this.currentDay = currentDay;
         this.dao = dao;
+        this.indexPartitions = indexPartitions;
         mapper = new CacheIndexEntryMapper();
     }
 
@@ -48,25 +58,10 @@ public class IndexEntriesLoader {
      */
     public List<CacheIndexEntry> loadPastIndexEntries(DateTime startDay) {
         try {
-            DateTime day = startDay;
-            DateTime timeSlice = day.plusHours(currentTimeSlice.getHourOfDay());
             List<CacheIndexEntry> indexEntries = new ArrayList<CacheIndexEntry>();
-            StorageResultSetFuture future = dao.findPastCacheIndexEntriesBeforeToday(RAW, day.getMillis(),
-                INDEX_PARTITION, timeSlice.getMillis());
-
-            addResultSet(indexEntries, future);
-            day = day.plusDays(1);
-
-            while (day.isBefore(currentDay)) {
-                future = dao.findCacheIndexEntriesByDay(RAW, day.getMillis(), INDEX_PARTITION);
-                addResultSet(indexEntries, future);
-                day = day.plusDays(1);
+            for (int partition = 0; partition < getPartitions(RAW); ++partition) {
+                loadPastIndexEntries(indexEntries, startDay, partition);
             }
-
-            future = dao.findPastCacheIndexEntriesFromToday(RAW, currentDay.getMillis(), INDEX_PARTITION,
-                currentTimeSlice.getMillis());
-            addResultSet(indexEntries, future);
-
             return indexEntries;
         } catch (Exception e) {
             throw new CacheIndexQueryException("Failed to load cache index entries prior to current time slice " +
@@ -74,6 +69,26 @@ public class IndexEntriesLoader {
         }
     }
 
+    private void loadPastIndexEntries(List<CacheIndexEntry> indexEntries, DateTime startDay, int partition) {
+        DateTime day = startDay;
+        DateTime timeSlice = day.plusHours(currentTimeSlice.getHourOfDay());
+        StorageResultSetFuture future = dao.findPastCacheIndexEntriesBeforeToday(RAW, day.getMillis(), partition,
+            timeSlice.getMillis());
+
+        addResultSet(indexEntries, future);
+        day = day.plusDays(1);
+
+        while (day.isBefore(currentDay)) {
+            future = dao.findCacheIndexEntriesByDay(RAW, day.getMillis(), partition);
+            addResultSet(indexEntries, future);
+            day = day.plusDays(1);
+        }
+
+        future = dao.findPastCacheIndexEntriesFromToday(RAW, currentDay.getMillis(), partition,
+            currentTimeSlice.getMillis());
+        addResultSet(indexEntries, future);
+    }
+
     /**
      * Returns cache index entries for the current time slice.
      *
@@ -84,27 +99,9 @@ public class IndexEntriesLoader {
     public List<CacheIndexEntry> loadCurrentCacheIndexEntries(int pageSize, MetricsTable table) {
         try {
             List<CacheIndexEntry> indexEntries = new ArrayList<CacheIndexEntry>();
-            StorageResultSetFuture future = dao.findCurrentCacheIndexEntries(table, currentDay.getMillis(),
-                INDEX_PARTITION, currentTimeSlice.getMillis());
-            ResultSet resultSet = future.get();
-
-            if (resultSet.isExhausted()) {
-                return indexEntries;
-            }
-            addResultSet(indexEntries, future);
-
-            while (indexEntries.size() % pageSize == 0) {
-                int startScheduleId = indexEntries.get(indexEntries.size() - 1).getStartScheduleId();
-                future = dao.findCurrentCacheIndexEntries(table, currentDay.getMillis(), INDEX_PARTITION,
-                    currentTimeSlice.getMillis(), startScheduleId);
-                resultSet = future.get();
-
-                if (resultSet.isExhausted()) {
-                    break;
-                }
-                addResultSet(indexEntries, resultSet);
+            for (int partition = 0; partition < getPartitions(table); ++partition) {
+                indexEntries.addAll(loadCurrentCacheIndexEntries(pageSize, table, partition));
             }
-
             return indexEntries;
         } catch (Exception e) {
             throw new CacheIndexQueryException("Failed to load cache index entries for current time slice " +
@@ -112,6 +109,37 @@ public class IndexEntriesLoader {
         }
     }
 
+    private List<CacheIndexEntry> loadCurrentCacheIndexEntries(int pageSize, MetricsTable table, int partition) {
+        List<CacheIndexEntry> indexEntries = new ArrayList<CacheIndexEntry>();
+        StorageResultSetFuture future = dao.findCurrentCacheIndexEntries(table, currentDay.getMillis(), partition,
+            currentTimeSlice.getMillis());
+        ResultSet resultSet = future.get();
+
+        if (resultSet.isExhausted()) {
+            return indexEntries;
+        }
+        addResultSet(indexEntries, future);
+
+        while (indexEntries.size() % pageSize == 0) {
+            int startScheduleId = indexEntries.get(indexEntries.size() - 1).getStartScheduleId();
+            future = dao.findCurrentCacheIndexEntries(table, currentDay.getMillis(), partition,
+                currentTimeSlice.getMillis(), startScheduleId);
+            resultSet = future.get();
+
+            if (resultSet.isExhausted()) {
+                break;
+            }
+            addResultSet(indexEntries, resultSet);
+        }
+
+        return indexEntries;
+    }
+
+    private int getPartitions(MetricsTable table) {
+        // only raw index entries are spread over partitions, the others all live in INDEX_PARTITION (i.e., 0)
+        return (table == RAW) ? indexPartitions : 1;
+    }
+
     private void addResultSet(List<CacheIndexEntry> indexEntries, StorageResultSetFuture future) {
         addResultSet(indexEntries, future.get());
     }
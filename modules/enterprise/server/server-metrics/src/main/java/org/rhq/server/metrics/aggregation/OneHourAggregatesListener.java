@@ -0,0 +1,17 @@
+package org.rhq.server.metrics.aggregation;
+
+import java.util.List;
+
+import org.rhq.server.metrics.domain.AggregateNumericMetric;
+
+/**
+ * Receives the 1 hour aggregates of the current time slice as they are written during aggregation. This lets callers
+ * process the aggregates batch by batch, e.g., to compute OOBs, instead of holding on to every aggregate of the run.
+ * The listener is called from the aggregation worker threads, possibly concurrently, and once per batch of schedules
+ * after the batch has been persisted. Exceptions thrown by the listener are logged but do not fail aggregation.
+ */
+public interface OneHourAggregatesListener {
+
+    void onPersist(List<AggregateNumericMetric> metrics);
+
+}
@@ -20,6 +20,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.joda.time.DateTime;
 
+import org.rhq.server.metrics.StorageRequestType;
 import org.rhq.server.metrics.StorageResultSetFuture;
 import org.rhq.server.metrics.domain.AggregateNumericMetric;
 import org.rhq.server.metrics.domain.Bucket;
@@ -71,7 +72,7 @@ class PastDataAggregator extends BaseAggregator {
      */
     @Override
     protected List<CacheIndexEntry> getIndexEntries() {
-        IndexEntriesLoader loader = new IndexEntriesLoader(startTime, currentDay, dao);
+        IndexEntriesLoader loader = new IndexEntriesLoader(startTime, currentDay, dao, indexPartitions);
         return loader.loadPastIndexEntries(startingDay);
     }
 
@@ -184,7 +185,8 @@ class PastDataAggregator extends BaseAggregator {
                     List<StorageResultSetFuture> queryFutures = new ArrayList<StorageResultSetFuture>(BATCH_SIZE);
                     for (Integer scheduleId : indexEntry.getScheduleIds()) {
                         queryFutures.add(dao.findRawMetricsAsync(scheduleId, indexEntry.getCollectionTimeSlice(),
-                            new DateTime(indexEntry.getCollectionTimeSlice()).plusHours(1).getMillis()));
+                            new DateTime(indexEntry.getCollectionTimeSlice()).plusHours(1).getMillis(),
+                            StorageRequestType.AGGREGATION));
                         if (queryFutures.size() == BATCH_SIZE) {
                             processBatch(queryFutures, indexEntry);
                             queryFutures = new ArrayList<StorageResultSetFuture>(BATCH_SIZE);
@@ -524,7 +526,8 @@ class PastDataAggregator extends BaseAggregator {
 
                 for (AggregateNumericMetric metric : metrics) {
                     StorageResultSetFuture queryFuture = dao.findAggregateMetricsAsync(metric.getScheduleId(),
-                        Bucket.ONE_HOUR, timeSliceStart.getMillis(), timeSliceEnd.getMillis());
+                        Bucket.ONE_HOUR, timeSliceStart.getMillis(), timeSliceEnd.getMillis(),
+                        StorageRequestType.AGGREGATION);
                     ListenableFuture<CombinedMetricsPair> pairFuture = Futures.transform(queryFuture,
                         combineMetrics(metric));
                     pairFutures.add(pairFuture);
@@ -549,7 +552,8 @@ class PastDataAggregator extends BaseAggregator {
 
                 for (AggregateNumericMetric metric : metrics) {
                     StorageResultSetFuture queryFuture = dao.findAggregateMetricsAsync(metric.getScheduleId(),
-                        Bucket.SIX_HOUR, timeSliceStart.getMillis(), timeSliceEnd.getMillis());
+                        Bucket.SIX_HOUR, timeSliceStart.getMillis(), timeSliceEnd.getMillis(),
+                        StorageRequestType.AGGREGATION);
                     ListenableFuture<CombinedMetricsPair> pairFuture = Futures.transform(queryFuture,
                         combineMetrics(metric));
                     pairFutures.add(pairFuture);
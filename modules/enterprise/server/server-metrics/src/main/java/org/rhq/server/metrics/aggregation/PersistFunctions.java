@@ -8,9 +8,14 @@ import java.util.ArrayList;
 import java.util.List;
 
 import com.datastax.driver.core.ResultSet;
+import com.google.common.base.Function;
 import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 import org.rhq.server.metrics.DateTimeService;
 import org.rhq.server.metrics.MetricsDAO;
@@ -24,10 +29,16 @@ import org.rhq.server.metrics.domain.AggregateNumericMetric;
  */
 class PersistFunctions {
 
+    private final Log log = LogFactory.getLog(PersistFunctions.class);
+
     private MetricsDAO dao;
 
     private DateTimeService dateTimeService;
 
+    private ListeningExecutorService listenerExecutor;
+
+    private OneHourAggregatesListener oneHourAggregatesListener;
+
     private AsyncFunction<IndexAggregatesPair, List<ResultSet>> persist1HourMetricsAndUpdateCache;
 
     private AsyncFunction<IndexAggregatesPair, List<ResultSet>> persist1HourMetrics;
@@ -39,8 +50,20 @@ class PersistFunctions {
     private AsyncFunction<IndexAggregatesPair, List<ResultSet>> persist24HourMetrics;
 
     public PersistFunctions(MetricsDAO dao, DateTimeService dateTimeService) {
+        this(dao, dateTimeService, null, null);
+    }
+
+    /**
+     * @param listenerExecutor The executor on which <code>oneHourAggregatesListener</code> is called
+     * @param oneHourAggregatesListener Is called with each batch of 1 hour aggregates once the batch has been
+     * persisted. May be null.
+     */
+    public PersistFunctions(MetricsDAO dao, DateTimeService dateTimeService, ListeningExecutorService listenerExecutor,
+        OneHourAggregatesListener oneHourAggregatesListener) {
         this.dao = dao;
         this.dateTimeService = dateTimeService;
+        this.listenerExecutor = listenerExecutor;
+        this.oneHourAggregatesListener = oneHourAggregatesListener;
         initFunctions();
     }
 
@@ -53,7 +76,7 @@ class PersistFunctions {
                 for (AggregateNumericMetric metric : pair.metrics) {
                     futures.add(persist1HourMetric(metric));
                 }
-                return Futures.allAsList(futures);
+                return notifyOneHourAggregatesListener(Futures.allAsList(futures), pair.metrics);
             }
         };
 
@@ -73,7 +96,7 @@ class PersistFunctions {
                         start6HourTimeSlice, pair.cacheIndexEntry.getStartScheduleId(), start6HourTimeSlice,
                         pair.cacheIndexEntry.getScheduleIds()));
                 }
-                return Futures.allAsList(futures);
+                return notifyOneHourAggregatesListener(Futures.allAsList(futures), pair.metrics);
             }
         };
 
@@ -120,6 +143,25 @@ class PersistFunctions {
         };
     }
 
+    private ListenableFuture<List<ResultSet>> notifyOneHourAggregatesListener(
+        ListenableFuture<List<ResultSet>> insertsFuture, final List<AggregateNumericMetric> metrics) {
+        if (oneHourAggregatesListener == null) {
+            return insertsFuture;
+        }
+        return Futures.transform(insertsFuture, new Function<List<ResultSet>, List<ResultSet>>() {
+            @Override
+            public List<ResultSet> apply(List<ResultSet> resultSets) {
+                try {
+                    oneHourAggregatesListener.onPersist(metrics);
+                } catch (Exception e) {
+                    log.warn("An error occurred while processing " + metrics.size() + " persisted 1 hour aggregates",
+                        e);
+                }
+                return resultSets;
+            }
+        }, listenerExecutor);
+    }
+
     private StorageResultSetFuture persist1HourMetric(AggregateNumericMetric metric) {
         return dao.insert1HourData(metric);
     }
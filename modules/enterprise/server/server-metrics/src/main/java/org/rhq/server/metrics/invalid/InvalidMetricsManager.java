@@ -359,9 +359,16 @@ public class InvalidMetricsManager {
     }
 
     public boolean isInvalidMetric(AggregateNumericMetric metric) {
-        return (metric.getMax() < metric.getAvg() && Math.abs(metric.getMax() - metric.getAvg()) > THRESHOLD) ||
-            (metric.getMin() > metric.getAvg() && Math.abs(metric.getMin() - metric.getAvg()) > THRESHOLD) ||
-            (Double.isNaN(metric.getAvg()) || Double.isNaN(metric.getMin()) || Double.isNaN(metric.getMin()));
+        return isInvalidMetric(metric.getAvg(), metric.getMin(), metric.getMax());
+    }
+
+    /**
+     * Same as {@link #isInvalidMetric(AggregateNumericMetric)} for callers that read the values straight from a result
+     * set and do not want to create a metric object for every row.
+     */
+    public static boolean isInvalidMetric(double avg, double min, double max) {
+        return (max < avg && Math.abs(max - avg) > THRESHOLD) || (min > avg && Math.abs(min - avg) > THRESHOLD) ||
+            (Double.isNaN(avg) || Double.isNaN(min) || Double.isNaN(max));
     }
 
     /**
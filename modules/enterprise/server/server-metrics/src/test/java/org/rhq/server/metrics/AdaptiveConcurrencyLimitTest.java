@@ -0,0 +1,150 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.server.metrics;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(5);
+
+    @Test
+    public void increaseLimitWhenRequestsCompleteWithinThreshold() {
+        AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(10, 1, 100);
+
+        for (int i = 0; i < 10; ++i) {
+            concurrencyLimit.acquire();
+        }
+        for (int i = 0; i < 10; ++i) {
+            concurrencyLimit.release(FAST, false);
+        }
+
+        assertEquals(concurrencyLimit.getLimit(), 10, "The limit should only grow by one per limit's worth of " +
+            "requests");
+
+        for (int j = 0; j < 2; ++j) {
+            for (int i = 0; i < 10; ++i) {
+                concurrencyLimit.acquire();
+            }
+            for (int i = 0; i < 10; ++i) {
+                concurrencyLimit.release(FAST, false);
+            }
+        }
+
+        assertEquals(concurrencyLimit.getLimit(), 11);
+        assertEquals(concurrencyLimit.getInFlight(), 0);
+    }
+
+    @Test
+    public void doNotIncreaseLimitWhenItIsNotUsed() {
+        AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(10, 1, 100);
+
+        for (int i = 0; i < 100; ++i) {
+            concurrencyLimit.acquire();
+            concurrencyLimit.release(FAST, false);
+        }
+
+        assertEquals(concurrencyLimit.getLimit(), 10);
+    }
+
+    @Test
+    public void decreaseLimitOncePerLatencyWhenRequestsAreDropped() throws Exception {
+        AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(100, 1, 100);
+
+        for (int i = 0; i < 5; ++i) {
+            concurrencyLimit.acquire();
+        }
+        for (int i = 0; i < 5; ++i) {
+            concurrencyLimit.release(TimeUnit.MILLISECONDS.toNanos(200), true);
+        }
+
+        assertEquals(concurrencyLimit.getLimit(), 90, "A burst of timeouts should only lower the limit once");
+        assertEquals(concurrencyLimit.getStatistics().get("dropped"), (Long) 5L);
+
+        Thread.sleep(250);
+        concurrencyLimit.acquire();
+        concurrencyLimit.release(TimeUnit.MILLISECONDS.toNanos(200), true);
+
+        assertEquals(concurrencyLimit.getLimit(), 81);
+    }
+
+    @Test
+    public void decreaseLimitWhenLatencyExceedsThreshold() {
+        AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(50, 1, 100);
+        concurrencyLimit.setLatencyThreshold(100);
+
+        concurrencyLimit.acquire();
+        concurrencyLimit.release(TimeUnit.MILLISECONDS.toNanos(150), false);
+
+        assertEquals(concurrencyLimit.getLimit(), 45);
+        assertEquals(concurrencyLimit.getStatistics().get("dropped"), (Long) 0L);
+    }
+
+    @Test
+    public void doNotDecreaseLimitBelowMin() {
+        AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(10, 10, 100);
+
+        concurrencyLimit.acquire();
+        concurrencyLimit.release(FAST, true);
+
+        assertEquals(concurrencyLimit.getLimit(), 10);
+    }
+
+    @Test(timeOut = 5000)
+    public void letRequestThroughAfterMaxWait() {
+        AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(1, 1, 1);
+        concurrencyLimit.setMaxWait(100);
+
+        long start = System.currentTimeMillis();
+        concurrencyLimit.acquire();
+        concurrencyLimit.acquire();
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue(elapsed >= 100, "Expected the second request to wait for the max wait time");
+        assertEquals(concurrencyLimit.getInFlight(), 2);
+        assertEquals(concurrencyLimit.getStatistics().get("throttled"), (Long) 1L);
+    }
+
+    @Test(timeOut = 5000)
+    public void wakeUpWaitingRequestOnRelease() throws Exception {
+        final AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(1, 1, 1);
+        concurrencyLimit.setMaxWait(10000);
+        concurrencyLimit.acquire();
+
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                concurrencyLimit.acquire();
+            }
+        };
+        waiter.start();
+        Thread.sleep(100);
+        concurrencyLimit.release(FAST, false);
+        waiter.join();
+
+        assertEquals(concurrencyLimit.getInFlight(), 1);
+        assertEquals(concurrencyLimit.getStatistics().get("throttled"), (Long) 0L);
+    }
+}
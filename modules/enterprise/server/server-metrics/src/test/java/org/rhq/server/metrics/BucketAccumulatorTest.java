@@ -0,0 +1,92 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.server.metrics;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.measurement.composite.MeasurementDataNumericHighLowComposite;
+
+public class BucketAccumulatorTest {
+
+    @Test
+    public void matchBuckets() {
+        long beginTime = 1000000;
+        long endTime = beginTime + (30L * 24 * 60 * 60 * 1000) + 17;
+        Buckets buckets = new Buckets(beginTime, endTime, 60);
+        BucketAccumulator accumulator = new BucketAccumulator(beginTime, endTime, 60);
+        Random random = new Random(42);
+
+        for (int i = 0; i < 10000; ++i) {
+            long timestamp = beginTime - 1000 + (long) (random.nextDouble() * (endTime - beginTime + 2000));
+            double avg = random.nextDouble();
+            double min = avg - random.nextDouble();
+            double max = avg + random.nextDouble();
+            buckets.insert(timestamp, avg, min, max);
+            accumulator.insert(timestamp, avg, min, max);
+        }
+
+        List<MeasurementDataNumericHighLowComposite> composites = accumulator.toComposites();
+        assertEquals(composites.size(), buckets.getNumDataPoints());
+        for (int i = 0; i < buckets.getNumDataPoints(); ++i) {
+            Buckets.Bucket bucket = buckets.get(i);
+            MeasurementDataNumericHighLowComposite composite = composites.get(i);
+            assertEquals(composite.getTimestamp(), bucket.getStartTime(), "Start time of bucket " + i);
+            assertEquals(composite.getValue(), bucket.getAvg(), "Avg of bucket " + i);
+            assertEquals(composite.getLowValue(), bucket.getMin(), "Min of bucket " + i);
+            assertEquals(composite.getHighValue(), bucket.getMax(), "Max of bucket " + i);
+        }
+    }
+
+    @Test
+    public void ignoreDataOutsideOfBuckets() {
+        BucketAccumulator accumulator = new BucketAccumulator(100, 200, 10);
+
+        assertFalse(accumulator.insert(99, 1, 1, 1));
+        assertFalse(accumulator.insert(200, 1, 1, 1));
+        assertTrue(accumulator.insert(100, 1, 1, 1));
+        assertTrue(accumulator.insert(199, 2, 2, 2));
+
+        assertEquals(accumulator.getCount(0), 1);
+        assertEquals(accumulator.getCount(9), 1);
+        assertEquals(accumulator.getAvg(9), 2.0);
+    }
+
+    @Test
+    public void emptyBucketsAreNaN() {
+        BucketAccumulator accumulator = new BucketAccumulator(0, 60, 6);
+        accumulator.insert(15, 3, 2, 4);
+
+        assertEquals(accumulator.getStartTime(1), 10);
+        assertEquals(accumulator.getAvg(1), 3.0);
+        assertEquals(accumulator.getMin(1), 2.0);
+        assertEquals(accumulator.getMax(1), 4.0);
+        assertEquals(accumulator.getCount(2), 0);
+        assertTrue(Double.isNaN(accumulator.getAvg(2)));
+        assertTrue(Double.isNaN(accumulator.getMin(2)));
+        assertTrue(Double.isNaN(accumulator.getMax(2)));
+    }
+}
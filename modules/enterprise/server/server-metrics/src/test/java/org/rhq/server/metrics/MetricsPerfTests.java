@@ -1,5 +1,8 @@
 package org.rhq.server.metrics;
 
+import static org.testng.Assert.assertEquals;
+
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -19,10 +22,13 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.joda.time.DateTime;
 import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.composite.MeasurementDataNumericHighLowComposite;
 import org.rhq.server.metrics.domain.AggregateNumericMetric;
+import org.rhq.server.metrics.domain.Bucket;
 import org.rhq.server.metrics.domain.RawNumericMetric;
 import org.rhq.server.metrics.domain.RawNumericMetricMapper;
 
@@ -59,6 +65,8 @@ public class MetricsPerfTests extends MetricsTest {
 
     private final int NUM_SCHEDULES = 10000;
 
+    private final int GROUP_SCHEDULE_ID_OFFSET = 100000;
+
     private double requestLimit;
 
     @BeforeClass
@@ -172,4 +180,55 @@ public class MetricsPerfTests extends MetricsTest {
             (System.currentTimeMillis() - start) + " ms");
     }
 
+    @Test
+    public void insertGroupData() throws Exception {
+        log.info("Inserting 30 days of 6 hour data for " + NUM_SCHEDULES + " group members");
+
+        storageSession.setRequestLimit(10000);
+        Random random = new Random();
+        DateTime endTime = hour(0);
+        DateTime beginTime = endTime.minusDays(30);
+        WaitForWrite waitForWrite = new WaitForWrite(NUM_SCHEDULES * 120);
+        for (int i = 0; i < NUM_SCHEDULES; ++i) {
+            for (DateTime time = beginTime; time.isBefore(endTime); time = time.plusHours(6)) {
+                double avg = random.nextDouble();
+                StorageResultSetFuture future = dao.insert6HourData(new AggregateNumericMetric(
+                    GROUP_SCHEDULE_ID_OFFSET + i, Bucket.SIX_HOUR, avg, avg / 2, avg * 2, time.getMillis()));
+                Futures.addCallback(future, waitForWrite);
+            }
+        }
+        waitForWrite.await("Failed to insert 6 hour data");
+        resetRateLimits();
+    }
+
+    @DataProvider(name = "groupSizes")
+    public Object[][] groupSizes() {
+        return new Object[][] { { 100 }, { 1000 }, { 10000 } };
+    }
+
+    @Test(dependsOnMethods = "insertGroupData", dataProvider = "groupSizes")
+    public void queryGroupData(int groupSize) {
+        dateTimeService.setNow(hour(0));
+        metricsServer.setDateTimeService(dateTimeService);
+
+        List<Integer> scheduleIds = new ArrayList<Integer>(groupSize);
+        for (int i = 0; i < groupSize; ++i) {
+            scheduleIds.add(GROUP_SCHEDULE_ID_OFFSET + i);
+        }
+        long endTime = hour(0).getMillis();
+        long beginTime = hour(0).minusDays(30).getMillis();
+
+        long start = System.currentTimeMillis();
+        List<MeasurementDataNumericHighLowComposite> data = metricsServer.findDataForGroup(scheduleIds, beginTime,
+            endTime, 60);
+        log.info("Finished group chart query for " + groupSize + " schedules in " +
+            (System.currentTimeMillis() - start) + " ms");
+        assertEquals(data.size(), 60, "Expected to get back 60 data points.");
+
+        start = System.currentTimeMillis();
+        metricsServer.getSummaryAggregate(scheduleIds, beginTime, endTime);
+        log.info("Finished group summary aggregate for " + groupSize + " schedules in " +
+            (System.currentTimeMillis() - start) + " ms");
+    }
+
 }
@@ -29,10 +29,16 @@ import static java.util.Arrays.asList;
 import static org.joda.time.DateTime.now;
 import static org.rhq.test.AssertUtils.assertPropertiesMatch;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
@@ -45,6 +51,9 @@ import org.rhq.core.domain.measurement.MeasurementDataNumeric;
 import org.rhq.core.domain.measurement.composite.MeasurementDataNumericHighLowComposite;
 import org.rhq.server.metrics.domain.AggregateNumericMetric;
 import org.rhq.server.metrics.domain.Bucket;
+import org.rhq.server.metrics.domain.CacheIndexEntry;
+import org.rhq.server.metrics.domain.CacheIndexEntryMapper;
+import org.rhq.server.metrics.domain.MetricsTable;
 import org.rhq.server.metrics.domain.RawNumericMetric;
 
 /**
@@ -202,6 +211,103 @@ public class MetricsServerTest extends MetricsTest {
 //        ));
     }
 
+    @Test
+    public void spreadRawCacheIndexEntriesOverPartitions() throws Exception {
+        int scheduleId1 = 123;
+        int scheduleId2 = 124;
+        int scheduleId3 = 127;
+        Set<MeasurementDataNumeric> data = ImmutableSet.of(
+            new MeasurementDataNumeric(hour(5).plusMinutes(2).getMillis(), scheduleId1, 3.14),
+            new MeasurementDataNumeric(hour(5).plusMinutes(3).getMillis(), scheduleId2, 3.14),
+            new MeasurementDataNumeric(hour(5).plusMinutes(4).getMillis(), scheduleId3, 3.14)
+        );
+        WaitForRawInserts waitForRawInserts = new WaitForRawInserts(data.size());
+
+        metricsServer.setIndexPartitions(2);
+        metricsServer.setRawDataBatchSize(1);
+        dateTimeService.setNow(hour(5).plusMinutes(5));
+        metricsServer.addNumericData(data, waitForRawInserts);
+        waitForRawInserts.await("Failed to insert raw data");
+
+        assertRawDataEquals(scheduleId1, hour(5), hour(6),
+            new RawNumericMetric(scheduleId1, hour(5).plusMinutes(2).getMillis(), 3.14));
+        assertRawDataEquals(scheduleId2, hour(5), hour(6),
+            new RawNumericMetric(scheduleId2, hour(5).plusMinutes(3).getMillis(), 3.14));
+        assertRawDataEquals(scheduleId3, hour(5), hour(6),
+            new RawNumericMetric(scheduleId3, hour(5).plusMinutes(4).getMillis(), 3.14));
+
+        // start schedule id 120 goes into partition 0 and start schedule id 125 into partition 1
+        CacheIndexEntryMapper mapper = new CacheIndexEntryMapper();
+        List<CacheIndexEntry> partition0 = mapper.map(dao.findCurrentCacheIndexEntries(MetricsTable.RAW,
+            today().getMillis(), 0, hour(5).getMillis()).get());
+        List<CacheIndexEntry> partition1 = mapper.map(dao.findCurrentCacheIndexEntries(MetricsTable.RAW,
+            today().getMillis(), 1, hour(5).getMillis()).get());
+
+        assertEquals(partition0.size(), 1, "Expected one raw cache index entry in partition 0");
+        assertEquals(partition0.get(0).getStartScheduleId(), 120);
+        assertEquals(partition0.get(0).getScheduleIds(), ImmutableSet.of(scheduleId1, scheduleId2));
+        assertEquals(partition1.size(), 1, "Expected one raw cache index entry in partition 1");
+        assertEquals(partition1.get(0).getStartScheduleId(), 125);
+        assertEquals(partition1.get(0).getScheduleIds(), ImmutableSet.of(scheduleId3));
+        assertEquals(metricsServer.getRawDataInserted(), 3);
+        assertEquals(metricsServer.getRawDataInsertBatches(), 3);
+    }
+
+    @Test
+    public void finishRawDataInsertsWhenOneBatchFails() throws Exception {
+        final int failingScheduleId = 124;
+        Set<MeasurementDataNumeric> data = ImmutableSet.of(
+            new MeasurementDataNumeric(hour(5).plusMinutes(2).getMillis(), 123, 3.14),
+            new MeasurementDataNumeric(hour(5).plusMinutes(3).getMillis(), failingScheduleId, 3.14),
+            new MeasurementDataNumeric(hour(5).plusMinutes(4).getMillis(), 127, 3.14)
+        );
+        MetricsDAO failingDAO = new MetricsDAO(storageSession, configuration) {
+            @Override
+            public StorageResultSetFuture insertRawData(List<MeasurementDataNumeric> data, boolean updateCache,
+                long day, int partition, long collectionTimeSlice, int startScheduleId, long insertTimeSlice) {
+                if (data.get(0).getScheduleId() == failingScheduleId) {
+                    return storageSession.executeAsync("SELECT * FROM rhq.no_such_table");
+                }
+                return super.insertRawData(data, updateCache, day, partition, collectionTimeSlice,
+                    startScheduleId, insertTimeSlice);
+            }
+        };
+        final AtomicInteger successes = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch finished = new CountDownLatch(1);
+        final AtomicInteger finishes = new AtomicInteger();
+        RawDataInsertedCallback callback = new RawDataInsertedCallback() {
+            @Override
+            public void onFinish() {
+                finishes.incrementAndGet();
+                finished.countDown();
+            }
+
+            @Override
+            public void onSuccess(MeasurementDataNumeric result) {
+                successes.incrementAndGet();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                failures.incrementAndGet();
+            }
+        };
+
+        metricsServer.setDAO(failingDAO);
+        metricsServer.setRawDataBatchSize(1);
+        dateTimeService.setNow(hour(5).plusMinutes(5));
+        metricsServer.addNumericData(data, callback);
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS), "Expected onFinish to be called after a batch failed");
+        // give a late, duplicate onFinish the chance to show up
+        Thread.sleep(500);
+        assertEquals(finishes.get(), 1, "Expected onFinish to be called exactly once");
+        assertEquals(failures.get(), 1, "Expected onFailure to be called once");
+        assertEquals(successes.get(), 2);
+        assertRawDataEmpty(failingScheduleId, hour(5), hour(6));
+    }
+
     @Test
     public void doNotInsertDataThatIsTooOld() throws Exception {
         int scheduleId = 123;
@@ -521,6 +627,35 @@ public class MetricsServerTest extends MetricsTest {
         assertEquals(actual, expected, "Failed to find latest metric value for resource");
     }
 
+    @Test
+    public void findLatestValuesForResources() throws Exception {
+        int scheduleId1 = 123;
+        int scheduleId2 = 456;
+        int scheduleIdWithoutData = 789;
+
+        DateTime tenMinutesAgo = now().minusMinutes(10);
+        DateTime fiveMinutesAgo = now().minusMinutes(5);
+
+        Set<MeasurementDataNumeric> data = new HashSet<MeasurementDataNumeric>();
+        data.add(new MeasurementDataNumeric(tenMinutesAgo.getMillis(), scheduleId1, 1.1));
+        data.add(new MeasurementDataNumeric(fiveMinutesAgo.getMillis(), scheduleId1, 2.2));
+        data.add(new MeasurementDataNumeric(tenMinutesAgo.getMillis(), scheduleId2, 3.3));
+
+        WaitForRawInserts waitForRawInserts = new WaitForRawInserts(data.size());
+
+        metricsServer.addNumericData(data, waitForRawInserts);
+
+        waitForRawInserts.await("Failed to insert raw data");
+
+        Map<Integer, RawNumericMetric> actual = metricsServer.findLatestValuesForResources(asList(scheduleId1,
+            scheduleId2, scheduleIdWithoutData));
+        Map<Integer, RawNumericMetric> expected = new HashMap<Integer, RawNumericMetric>();
+        expected.put(scheduleId1, new RawNumericMetric(scheduleId1, fiveMinutesAgo.getMillis(), 2.2));
+        expected.put(scheduleId2, new RawNumericMetric(scheduleId2, tenMinutesAgo.getMillis(), 3.3));
+
+        assertEquals(actual, expected, "Failed to find latest metric values for resources");
+    }
+
     @Test
     public void getSummaryRawAggregateForResource() throws Exception {
         DateTime beginTime = now().minusHours(4);
@@ -190,9 +190,69 @@ public class BaseComponent<T extends ResourceComponent<?>> implements AS7Compone
      */
     @Override
     public void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> metrics) throws Exception {
+        getMetricValues(report, metrics, null);
+    }
 
-        for (MeasurementScheduleRequest req : metrics) {
-            getMetricValue(report, req, null);
+    /**
+     * Gets the values of the given metrics. All metrics that are read from attributes of this resource are read with
+     * a single composite operation, so that a resource with many metrics does not cost one management request per
+     * metric. Metrics whose step of the composite operation failed are read one by one as a fallback.
+     *
+     * @param report
+     * @param requests
+     * @param explicitExpressions set of metric names that could be represented by expression instead of value on AS7 (can be null)
+     */
+    protected void getMetricValues(MeasurementReport report, Set<MeasurementScheduleRequest> requests,
+        Set<String> explicitExpressions) {
+        List<MetricRequest> metricRequests = new ArrayList<MetricRequest>(requests.size());
+        for (MeasurementScheduleRequest req : requests) {
+            if (req.getName().startsWith(INTERNAL)) {
+                processPluginStats(req, report);
+            } else {
+                metricRequests.add(MetricRequest.create(req, explicitExpressions));
+            }
+        }
+
+        if (metricRequests.size() < 2) {
+            for (MetricRequest metricRequest : metricRequests) {
+                getMetricValue(report, metricRequest);
+            }
+            return;
+        }
+
+        // read every attribute only once, even if several metrics are taken from it
+        CompositeOperation composite = new CompositeOperation();
+        Map<String, String> stepByAttribute = new HashMap<String, String>();
+        for (MetricRequest metricRequest : metricRequests) {
+            if (!stepByAttribute.containsKey(metricRequest.attribute)) {
+                composite.addStep(new ReadAttribute(address, metricRequest.attribute));
+                stepByAttribute.put(metricRequest.attribute, "step-" + composite.numberOfSteps());
+            }
+        }
+
+        Result res = getASConnection().execute(composite);
+        if (res.isTimedout()) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Reading metrics " + stepByAttribute.keySet() + " at [" + address + "] timed out");
+            }
+            return;
+        }
+
+        Map<?, ?> stepResults = (res.getResult() instanceof Map) ? (Map<?, ?>) res.getResult() : null;
+        if (!res.isSuccess() && LOG.isDebugEnabled()) {
+            LOG.debug("Reading metrics " + stepByAttribute.keySet() + " at [" + address
+                + "] in one request failed, falling back to reading the failed ones individually: "
+                + res.getFailureDescription());
+        }
+
+        for (MetricRequest metricRequest : metricRequests) {
+            Object stepResult = (stepResults != null) ? stepResults.get(stepByAttribute.get(metricRequest.attribute))
+                : null;
+            if (stepResult instanceof Map && Result.SUCCESS.equals(((Map<?, ?>) stepResult).get("outcome"))) {
+                processMetricValue(report, metricRequest, ((Map<?, ?>) stepResult).get("result"));
+            } else {
+                getMetricValue(report, metricRequest);
+            }
         }
     }
 
@@ -205,83 +265,78 @@ public class BaseComponent<T extends ResourceComponent<?>> implements AS7Compone
      */
     protected ReadMetricResult getMetricValue(MeasurementReport report, MeasurementScheduleRequest req,
         Set<String> explicitExpressions) {
-        if (req.getName().startsWith(INTERNAL))
+        if (req.getName().startsWith(INTERNAL)) {
             processPluginStats(req, report);
-        else {
-            // Metrics from the application server
+            return ReadMetricResult.Success;
+        }
+        // Metrics from the application server
+        return getMetricValue(report, MetricRequest.create(req, explicitExpressions));
+    }
 
-            String reqName = req.getName();
-            boolean resolveExpression = false;
-            if (reqName.startsWith(EXPRESSION)) {
-                resolveExpression = true;
-                reqName = reqName.substring(EXPRESSION_SIZE);
-            } else if (explicitExpressions != null && explicitExpressions.contains(reqName)) {
-                resolveExpression = true;
-            }
+    private ReadMetricResult getMetricValue(MeasurementReport report, MetricRequest metricRequest) {
+        Operation op = new ReadAttribute(address, metricRequest.attribute);
 
-            ComplexRequest complexRequest = null;
-            Operation op;
-            if (reqName.contains(":")) {
-                complexRequest = ComplexRequest.create(reqName);
-                op = new ReadAttribute(address, complexRequest.getProp());
-            } else {
-                op = new ReadAttribute(address, reqName); // TODO batching
+        Result res = getASConnection().execute(op);
+        if (!res.isSuccess()) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Getting metric [" + metricRequest.request.getName() + "] at [ " + address + "] failed: "
+                    + res.getFailureDescription());
             }
+            return ReadMetricResult.RequestFailed;
+        }
 
-            Result res = getASConnection().execute(op);
-            if (!res.isSuccess()) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("Getting metric [" + req.getName() + "] at [ " + address + "] failed: "
-                        + res.getFailureDescription());
-                }
-                return ReadMetricResult.RequestFailed;
-            }
+        return processMetricValue(report, metricRequest, res.getResult());
+    }
 
-            Object val = res.getResult();
-            if (val == null) // One of the AS7 ways of telling "This is not implemented" See also AS7-1454
-                return ReadMetricResult.Null;
+    @SuppressWarnings("unchecked")
+    private ReadMetricResult processMetricValue(MeasurementReport report, MetricRequest metricRequest, Object val) {
+        MeasurementScheduleRequest req = metricRequest.request;
+        ComplexRequest complexRequest = metricRequest.complexRequest;
+        boolean resolveExpression = metricRequest.resolveExpression;
 
-            if (req.getDataType() == DataType.MEASUREMENT) {
-                if (val instanceof String && ((String) val).startsWith("JBAS018003")) // AS7 way of saying "no value available"
-                    return ReadMetricResult.Null;
-                try {
-                    if (complexRequest != null) {
-                        HashMap<String, Number> myValues = (HashMap<String, Number>) val;
-                        for (String key : myValues.keySet()) {
-                            String sub = complexRequest.getSub();
-                            if (key.equals(sub)) {
-                                addMetric2Report(report, req, myValues.get(key), resolveExpression);
-                            }
+        if (val == null) // One of the AS7 ways of telling "This is not implemented" See also AS7-1454
+            return ReadMetricResult.Null;
+
+        if (req.getDataType() == DataType.MEASUREMENT) {
+            if (val instanceof String && ((String) val).startsWith("JBAS018003")) // AS7 way of saying "no value available"
+                return ReadMetricResult.Null;
+            try {
+                if (complexRequest != null) {
+                    Map<String, Number> myValues = (Map<String, Number>) val;
+                    for (String key : myValues.keySet()) {
+                        String sub = complexRequest.getSub();
+                        if (key.equals(sub)) {
+                            addMetric2Report(report, req, myValues.get(key), resolveExpression);
                         }
-                    } else {
-                        addMetric2Report(report, req, val, resolveExpression);
                     }
-                } catch (NumberFormatException e) {
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Non numeric input for [" + req.getName() + "] : [" + val + "]");
-                    }
-                    return ReadMetricResult.ResolveFailed;
+                } else {
+                    addMetric2Report(report, req, val, resolveExpression);
                 }
-            } else if (req.getDataType() == DataType.TRAIT) {
-
-                if (resolveExpression && val instanceof Map && ((Map) val).containsKey(EXPRESSION_VALUE_KEY)) {
-                    String expression = (String) ((Map) val).get(EXPRESSION_VALUE_KEY);
-                    ResolveExpression resolveExpressionOperation = new ResolveExpression(expression);
-                    Result result = getASConnection().execute(resolveExpressionOperation);
-                    if (!result.isSuccess()) {
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("Skipping trait [" + req.getName()
-                                            + "] in measurement report. Could not resolve expression [" + expression
-                                            + "], failureDescription:" + result.getFailureDescription());
-                            return ReadMetricResult.ResolveFailed;
-                        }
-                    }
-                    val = result.getResult();
+            } catch (NumberFormatException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Non numeric input for [" + req.getName() + "] : [" + val + "]");
                 }
+                return ReadMetricResult.ResolveFailed;
+            }
+        } else if (req.getDataType() == DataType.TRAIT) {
 
-                MeasurementDataTrait data = new MeasurementDataTrait(req, getStringValue(val));
-                report.addData(data);
+            if (resolveExpression && val instanceof Map && ((Map) val).containsKey(EXPRESSION_VALUE_KEY)) {
+                String expression = (String) ((Map) val).get(EXPRESSION_VALUE_KEY);
+                ResolveExpression resolveExpressionOperation = new ResolveExpression(expression);
+                Result result = getASConnection().execute(resolveExpressionOperation);
+                if (!result.isSuccess()) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Skipping trait [" + req.getName()
+                                        + "] in measurement report. Could not resolve expression [" + expression
+                                        + "], failureDescription:" + result.getFailureDescription());
+                        return ReadMetricResult.ResolveFailed;
+                    }
+                }
+                val = result.getResult();
             }
+
+            MeasurementDataTrait data = new MeasurementDataTrait(req, getStringValue(val));
+            report.addData(data);
         }
         return ReadMetricResult.Success;
 
@@ -978,6 +1033,41 @@ public class BaseComponent<T extends ResourceComponent<?>> implements AS7Compone
         Success, RequestFailed, Null, ResolveFailed
     }
 
+    /**
+     * A metric that is read from an attribute of the resource.
+     */
+    private static class MetricRequest {
+        private final MeasurementScheduleRequest request;
+        private final String attribute;
+        private final ComplexRequest complexRequest;
+        private final boolean resolveExpression;
+
+        private MetricRequest(MeasurementScheduleRequest request, String attribute, ComplexRequest complexRequest,
+            boolean resolveExpression) {
+            this.request = request;
+            this.attribute = attribute;
+            this.complexRequest = complexRequest;
+            this.resolveExpression = resolveExpression;
+        }
+
+        static MetricRequest create(MeasurementScheduleRequest req, Set<String> explicitExpressions) {
+            String reqName = req.getName();
+            boolean resolveExpression = false;
+            if (reqName.startsWith(EXPRESSION)) {
+                resolveExpression = true;
+                reqName = reqName.substring(EXPRESSION_SIZE);
+            } else if (explicitExpressions != null && explicitExpressions.contains(reqName)) {
+                resolveExpression = true;
+            }
+
+            if (reqName.contains(":")) {
+                ComplexRequest complexRequest = ComplexRequest.create(reqName);
+                return new MetricRequest(req, complexRequest.getProp(), complexRequest, resolveExpression);
+            }
+            return new MetricRequest(req, reqName, null, resolveExpression);
+        }
+    }
+
     private static class ComplexRequest {
         private String prop;
         private String sub;
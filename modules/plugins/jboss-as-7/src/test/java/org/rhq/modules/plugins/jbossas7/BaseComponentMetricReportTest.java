@@ -20,6 +20,10 @@
 package org.rhq.modules.plugins.jbossas7;
 
 import static org.mockito.Matchers.argThat;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.rhq.core.domain.measurement.DataType.MEASUREMENT;
 import static org.rhq.core.domain.measurement.DataType.TRAIT;
@@ -29,6 +33,7 @@ import static org.rhq.modules.plugins.jbossas7.BaseComponent.INTERNAL;
 import static org.rhq.modules.plugins.jbossas7.json.Result.SUCCESS;
 import static org.testng.Assert.assertEquals;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -46,6 +51,7 @@ import org.rhq.core.domain.measurement.MeasurementDataTrait;
 import org.rhq.core.domain.measurement.MeasurementReport;
 import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
 import org.rhq.modules.plugins.jbossas7.json.Address;
+import org.rhq.modules.plugins.jbossas7.json.CompositeOperation;
 import org.rhq.modules.plugins.jbossas7.json.ReadAttribute;
 import org.rhq.modules.plugins.jbossas7.json.ResolveExpression;
 import org.rhq.modules.plugins.jbossas7.json.Result;
@@ -170,6 +176,71 @@ public class BaseComponentMetricReportTest {
         assertEquals(trait.getValue(), traitValue);
     }
 
+    @Test
+    public void testMetricsAreReadWithOneCompositeOperation() throws Exception {
+        requests.add(newMeasurementRequest("pipo"));
+        requests.add(newMeasurementRequest("molo"));
+        requests.add(newTraitRequest("marseille"));
+
+        // steps are numbered in the iteration order of the requests
+        Map<String, Object> stepResults = new HashMap<String, Object>();
+        int step = 1;
+        for (MeasurementScheduleRequest request : requests) {
+            Object value = (request.getDataType() == TRAIT) ? "paris" : Double.valueOf(13d);
+            stepResults.put("step-" + step++, stepResult(SUCCESS, value));
+        }
+
+        when(asConnection.execute(compositeOf(address, "pipo", "molo", "marseille"))).thenReturn(
+            result(stepResults));
+        sampleComponent.getValues(report, requests);
+
+        assertEquals(report.getNumericData().size(), 2);
+        for (MeasurementDataNumeric numericMetric : report.getNumericData()) {
+            assertEquals(numericMetric.getValue(), 13d);
+        }
+        assertEquals(report.getTraitData().size(), 1);
+        assertEquals(report.getTraitData().iterator().next().getValue(), "paris");
+        verify(asConnection, never()).execute(isA(ReadAttribute.class));
+    }
+
+    @Test
+    public void testFailedStepIsReadIndividually() throws Exception {
+        requests.add(newMeasurementRequest("pipo:sub1"));
+        requests.add(newMeasurementRequest("pipo:sub2"));
+        requests.add(newMeasurementRequest("molo"));
+
+        // both "pipo" sub values are read with one step, reading "molo" fails
+        Map<String, Object> pipoValue = new HashMap<String, Object>();
+        pipoValue.put("sub1", 14d);
+        pipoValue.put("sub2", 16d);
+        Map<String, Object> stepResults = new HashMap<String, Object>();
+        Set<String> attributes = new HashSet<String>();
+        int step = 1;
+        for (MeasurementScheduleRequest request : requests) {
+            String attribute = request.getName().startsWith("pipo") ? "pipo" : "molo";
+            if (attributes.add(attribute)) {
+                stepResults.put("step-" + step++,
+                    attribute.equals("pipo") ? stepResult(SUCCESS, pipoValue) : stepResult("failed", null));
+            }
+        }
+        Result composite = result(stepResults);
+        composite.setOutcome("failed");
+
+        when(asConnection.execute(compositeOf(address, "pipo", "molo"))).thenReturn(composite);
+        when(asConnection.execute(readAttribute(address, "molo"))).thenReturn(result(15d));
+        sampleComponent.getValues(report, requests);
+
+        Map<String, Double> values = new HashMap<String, Double>();
+        for (MeasurementDataNumeric numericMetric : report.getNumericData()) {
+            values.put(numericMetric.getName(), numericMetric.getValue());
+        }
+        assertEquals(values.size(), 3);
+        assertEquals(values.get("pipo:sub1"), 14d);
+        assertEquals(values.get("pipo:sub2"), 16d);
+        assertEquals(values.get("molo"), 15d);
+        verify(asConnection, times(1)).execute(isA(ReadAttribute.class));
+    }
+
     private class SampleComponent extends BaseComponent {
 
         private SampleComponent() {
@@ -196,6 +267,17 @@ public class BaseComponentMetricReportTest {
         return result;
     }
 
+    private static Map<String, Object> stepResult(String outcome, Object value) {
+        Map<String, Object> stepResult = new HashMap<String, Object>();
+        stepResult.put("outcome", outcome);
+        stepResult.put("result", value);
+        return stepResult;
+    }
+
+    private static CompositeOperation compositeOf(Address address, String... attributeNames) {
+        return argThat(new IsCompositeOfReadAttributes(address, attributeNames));
+    }
+
     private static ReadAttribute readAttribute(Address address, String requestName) {
         return argThat(new IsReadAttribute(address, requestName));
     }
@@ -231,6 +313,39 @@ public class BaseComponentMetricReportTest {
         }
     }
 
+    private static class IsCompositeOfReadAttributes extends ArgumentMatcher<CompositeOperation> {
+
+        private Address address;
+        private Set<String> attributeNames;
+
+        private IsCompositeOfReadAttributes(Address address, String... attributeNames) {
+            this.address = address;
+            this.attributeNames = new HashSet<String>(Arrays.asList(attributeNames));
+        }
+
+        @Override
+        public boolean matches(Object argument) {
+            if (!(argument instanceof CompositeOperation)) {
+                return false;
+            }
+            CompositeOperation composite = (CompositeOperation) argument;
+            if (composite.numberOfSteps() != attributeNames.size()) {
+                return false;
+            }
+            for (int i = 0; i < composite.numberOfSteps(); i++) {
+                if (!(composite.step(i) instanceof ReadAttribute)) {
+                    return false;
+                }
+                ReadAttribute readAttribute = (ReadAttribute) composite.step(i);
+                if (!address.getPath().equals(readAttribute.getAddress().getPath())
+                    || !attributeNames.contains(readAttribute.getName())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     private static class IsResolveExpression extends ArgumentMatcher<ResolveExpression> {
 
         private String expressionValue;